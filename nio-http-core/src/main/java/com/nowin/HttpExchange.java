@@ -2,6 +2,8 @@ package com.nowin;
 
 import com.nowin.http.HttpRequest;
 import com.nowin.http.HttpResponse;
+import com.nowin.sse.SseHandler;
+import com.nowin.websocket.WebSocketHandler;
 
 import java.nio.charset.StandardCharsets;
 import java.util.Optional;
@@ -78,4 +80,18 @@ public final class HttpExchange {
         }
         response.setStreamingHandler(handler);
     }
+
+    /**
+     * Answers with a server-sent event stream; see {@link HttpServerBuilder#sse}.
+     */
+    public void sse(SseHandler handler) {
+        response.setSseHandler(handler);
+    }
+
+    /**
+     * Upgrades the connection to WebSocket; see {@link HttpServerBuilder#websocket}.
+     */
+    public void websocket(WebSocketHandler handler) {
+        response.setWebSocketHandler(handler);
+    }
 }
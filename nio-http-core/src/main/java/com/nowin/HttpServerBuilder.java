@@ -8,6 +8,8 @@ import com.nowin.server.NioHttpServer;
 import com.nowin.server.ServerConfig;
 import com.nowin.server.SslContext;
 import com.nowin.server.VirtualHost;
+import com.nowin.sse.SseHandler;
+import com.nowin.websocket.WebSocketHandler;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -89,6 +91,29 @@ public final class HttpServerBuilder {
         return route("PATCH", pathPattern, handler);
     }
 
+    /**
+     * Serves a server-sent event stream on GET {@code pathPattern}. The
+     * response stays open after {@code handler} returns, without holding a
+     * thread, until the emitter is closed or the client goes away; hand the
+     * emitter to an {@link com.nowin.sse.SseBroadcaster} to fan events out.
+     */
+    public HttpServerBuilder sse(String pathPattern, SseHandler handler) {
+        Objects.requireNonNull(handler, "handler cannot be null");
+        return get(pathPattern, exchange -> exchange.sse(handler));
+    }
+
+    /**
+     * Accepts WebSocket connections on GET {@code pathPattern}. A valid
+     * opening handshake is answered with {@code 101 Switching Protocols}
+     * and the connection is handed to {@code handler}, whose callbacks run
+     * on the connection's event loop and must not block; hand sessions to a
+     * {@link com.nowin.websocket.WebSocketBroadcaster} to fan messages out.
+     */
+    public HttpServerBuilder websocket(String pathPattern, WebSocketHandler handler) {
+        Objects.requireNonNull(handler, "handler cannot be null");
+        return get(pathPattern, exchange -> exchange.websocket(handler));
+    }
+
     public HttpServerBuilder use(Middleware middleware) {
         bootstrap.use(middleware);
         return this;
@@ -3,6 +3,8 @@ package com.nowin;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Streaming HTTP response writer used by chunked HTTP/1.1 responses.
@@ -17,8 +19,36 @@ public interface HttpStream extends AutoCloseable {
         write(chunk != null ? chunk.getBytes(charset) : new byte[0]);
     }
 
+    /**
+     * Writes a chunk, waiting first while the connection has too much
+     * output pending.
+     */
     void write(byte[] chunk) throws IOException;
 
+    /**
+     * Queues a chunk without waiting. The stage completes once the chunk has
+     * been written to the socket, or exceptionally if the write failed or
+     * the stream is closed. Callers that produce faster than the client
+     * reads should check {@link #isWritable()} or wait for the stage before
+     * queuing more.
+     */
+    default CompletionStage<Void> writeAsync(byte[] chunk) {
+        try {
+            write(chunk);
+            return CompletableFuture.completedFuture(null);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * False while the connection's pending output is above its write buffer
+     * water marks.
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
     void flush() throws IOException;
 
     void trailer(String name, String value);
@@ -6,11 +6,13 @@ import com.nowin.pipeline.HttpChannelInitializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.nowin.handler.FileMetadataCache;
 import com.nowin.handler.FileRequestHandler;
 import com.nowin.handler.HealthCheckHandler;
 import com.nowin.handler.HttpHandler;
 import com.nowin.handler.MetricsHandler;
 import com.nowin.handler.Middleware;
+import com.nowin.http.CachedFile;
 import com.nowin.http.MimeTypeResolver;
 import com.nowin.pipeline.ChannelInitializer;
 import com.nowin.server.HttpServerObserver;
@@ -20,6 +22,7 @@ import com.nowin.server.Router;
 import com.nowin.server.ResourceCache;
 import com.nowin.server.SslContext;
 import com.nowin.server.VirtualHost;
+import com.nowin.transport.TransportFactory;
 
 import java.io.IOException;
 import java.nio.file.Path;
@@ -42,6 +45,7 @@ public class ServerBootstrap {
     private final List<Middleware> middlewares = new ArrayList<>();
     private ChannelInitializer channelInitializer;
     private Executor applicationExecutor;
+    private TransportFactory transportFactory;
     private boolean defaultEndpointsDisabled = false;
     private boolean autoShutdownHook = false;
     private volatile boolean frozen = false;
@@ -226,6 +230,16 @@ public class ServerBootstrap {
         return this;
     }
 
+    /**
+     * Use a specific I/O transport instead of the one named by the
+     * {@code server.transport} setting.
+     */
+    public ServerBootstrap transportFactory(TransportFactory transportFactory) {
+        checkFrozen();
+        this.transportFactory = transportFactory;
+        return this;
+    }
+
     /**
      * Configure the executor used for application route handlers.
      * <p>
@@ -261,12 +275,19 @@ public class ServerBootstrap {
 
         applyFileAndProtocolConfig();
 
-        // Create resource cache for small file caching
-        ResourceCache<String, byte[]> resourceCache = new ResourceCache<>(60000, 1000);
+        // Byte-budgeted cache for small static files
+        ResourceCache<Path, CachedFile> resourceCache = config.getStaticCacheMaxBytes() > 0
+                ? new ResourceCache<>(config.getStaticCacheMaxBytes(), CachedFile::weigh)
+                : null;
 
         // Set up default file handler if no routes configured
+        FileMetadataCache fileMetadataCache = null;
         if (router.getRoutesCount() == 0) {
-            FileRequestHandler fileHandler = new FileRequestHandler(mimeTypeResolver, resourceCache);
+            if (config.getStaticMetadataCacheMaxEntries() > 0) {
+                fileMetadataCache = new FileMetadataCache(mimeTypeResolver, config.getStaticMetadataCacheMaxEntries());
+            }
+            FileRequestHandler fileHandler = new FileRequestHandler(mimeTypeResolver, resourceCache, fileMetadataCache);
+            fileHandler.setCompression(config.isCompressionEnabled(), config.getCompressionMinSize());
             router.addRoute("/*", wrapWithMiddleware(fileHandler));
             logger.info("No routes configured, using default file handler");
         }
@@ -282,10 +303,13 @@ public class ServerBootstrap {
                 config, virtualHosts, defaultVirtualHost, router,
                 sslContext, plugins, observers, middlewares,
                 defaultEndpointsDisabled, autoShutdownHook,
-                mimeTypeResolver, resourceCache, channelInitializer
+                mimeTypeResolver, resourceCache, fileMetadataCache, channelInitializer
         );
 
         NioHttpServer server = new NioHttpServer(configuration);
+        if (transportFactory != null) {
+            server.setTransportFactory(transportFactory);
+        }
 
         // Register default endpoints after server is created (insert at front to take priority over wildcards)
         if (!defaultEndpointsDisabled) {
@@ -0,0 +1,131 @@
+package com.nowin.handler;
+
+import com.nowin.http.MimeTypeResolver;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+
+/**
+ * What {@link FileRequestHandler} needs to know about a path before serving
+ * it, read with one {@code stat} and one {@code access} call, plus the header
+ * values derived from it. A missing path is described by an instance too, so
+ * negative lookups can be cached.
+ */
+public final class FileMetadata {
+
+    private static final FileMetadata MISSING = new FileMetadata(false, false, false, false, 0, 0, null);
+
+    private final boolean exists;
+    private final boolean directory;
+    private final boolean regularFile;
+    private final boolean readable;
+    private final long size;
+    private final long lastModified;
+    private final String mimeType;
+    private final String eTag;
+    private final String lastModifiedHeader;
+
+    private FileMetadata(boolean exists, boolean directory, boolean regularFile, boolean readable,
+                         long size, long lastModified, String mimeType) {
+        this.exists = exists;
+        this.directory = directory;
+        this.regularFile = regularFile;
+        this.readable = readable;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.mimeType = mimeType;
+        this.eTag = regularFile ? eTag(size, lastModified, null) : null;
+        this.lastModifiedHeader = regularFile
+                ? FileRequestHandler.HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(lastModified)) : null;
+    }
+
+    /**
+     * Reads the metadata of {@code path}.
+     *
+     * @throws IOException if the attributes cannot be read for any reason
+     *                     other than the path not existing, e.g. access being
+     *                     denied; such a failure says nothing lasting about the
+     *                     path and must not be remembered as a missing file
+     */
+    public static FileMetadata read(Path path, MimeTypeResolver mimeTypeResolver) throws IOException {
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException | NotDirectoryException e) {
+            return MISSING;
+        } catch (FileSystemException e) {
+            // ENOTDIR, e.g. a path below a regular file, comes without a type of its own
+            Path parent = path.getParent();
+            if (parent != null && !Files.isDirectory(parent)) {
+                return MISSING;
+            }
+            throw e;
+        }
+        return new FileMetadata(true, attrs.isDirectory(), attrs.isRegularFile(), Files.isReadable(path),
+                attrs.size(), attrs.lastModifiedTime().toMillis(),
+                attrs.isRegularFile() ? mimeTypeResolver.getMimeType(path) : null);
+    }
+
+    /**
+     * Strong validator for a file of the given size and modification time,
+     * stable across restarts; {@code encoding} tells coded representations
+     * apart.
+     */
+    static String eTag(long size, long lastModified, String encoding) {
+        String tag = Long.toHexString(size) + "-" + Long.toHexString(lastModified);
+        return "\"" + (encoding != null ? tag + "-" + encoding : tag) + "\"";
+    }
+
+    public boolean exists() {
+        return exists;
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public boolean isReadable() {
+        return readable;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * MIME type of a regular file, {@code null} otherwise.
+     */
+    public String mimeType() {
+        return mimeType;
+    }
+
+    /**
+     * ETag of the file's identity representation, {@code null} unless it is a
+     * regular file.
+     */
+    public String eTag() {
+        return eTag;
+    }
+
+    /**
+     * {@code Last-Modified} header value, {@code null} unless it is a regular
+     * file.
+     */
+    public String lastModifiedHeader() {
+        return lastModifiedHeader;
+    }
+}
@@ -0,0 +1,173 @@
+package com.nowin.handler;
+
+import com.nowin.http.MimeTypeResolver;
+import com.nowin.server.ResourceCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of {@link FileMetadata} for the files under the virtual host roots,
+ * so a hot static request makes no {@code stat} calls: existence and type,
+ * size, modification time, ETag, {@code Last-Modified} value and MIME type
+ * all come from memory. Missing paths are cached as well, which covers
+ * welcome-file probes and precompressed-sibling lookups.
+ * <p>
+ * Entries are invalidated through a {@link WatchService} (inotify on Linux)
+ * watching the directory of every cached path, registered on first lookup.
+ * A path whose directory cannot be watched, because it does not exist or the
+ * watch limit is reached, is read from the file system every time. Creating
+ * or deleting a watched directory, or an event overflow, clears the whole
+ * cache. Events arrive shortly after a change, so for a few milliseconds a
+ * file may still be described as it was.
+ */
+public class FileMetadataCache implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FileMetadataCache.class);
+
+    private final MimeTypeResolver mimeTypeResolver;
+    private final ResourceCache<Path, FileMetadata> entries;
+    // null when the file system offers no watch service; nothing is cached then
+    private final WatchService watchService;
+    private final Map<Path, WatchKey> watchedDirectories = new ConcurrentHashMap<>();
+    // Bumped before every invalidation, so a lookup racing one can tell
+    private final AtomicLong generation = new AtomicLong();
+
+    public FileMetadataCache(MimeTypeResolver mimeTypeResolver, int maximumEntries) {
+        this.mimeTypeResolver = mimeTypeResolver;
+        this.entries = new ResourceCache<>(maximumEntries, (path, metadata) -> 1);
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+        } catch (IOException | UnsupportedOperationException e) {
+            logger.warn("file_metadata_watch_unavailable reason={}", e.toString());
+        }
+        this.watchService = service;
+        if (service != null) {
+            Thread watcher = new Thread(this::processEvents, "file-metadata-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    /**
+     * Metadata of {@code path}, which should be absolute and normalized.
+     * Failures other than the path not existing are thrown and not cached.
+     */
+    public FileMetadata get(Path path) throws IOException {
+        FileMetadata metadata = entries.get(path);
+        if (metadata != null) {
+            return metadata;
+        }
+        Path directory = path.getParent();
+        if (directory == null || !watch(directory)) {
+            return FileMetadata.read(path, mimeTypeResolver);
+        }
+        long observed = generation.get();
+        metadata = FileMetadata.read(path, mimeTypeResolver);
+        entries.put(path, metadata);
+        if (generation.get() != observed) {
+            // An event may have been handled between the read and the put
+            entries.remove(path);
+        }
+        return metadata;
+    }
+
+    /**
+     * Drops what is known about {@code path}, e.g. right after the handler
+     * created, changed or deleted it, without waiting for the watch event.
+     */
+    public void invalidate(Path path) {
+        generation.incrementAndGet();
+        entries.remove(path);
+        WatchKey key = watchedDirectories.remove(path);
+        if (key != null) {
+            // A directory with cached children may have been replaced or moved
+            key.cancel();
+            clear();
+        }
+    }
+
+    public void clear() {
+        generation.incrementAndGet();
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("file_metadata_watch_close_failed", e);
+            }
+        }
+        watchedDirectories.clear();
+        entries.clear();
+    }
+
+    private boolean watch(Path directory) {
+        if (watchService == null) {
+            return false;
+        }
+        if (watchedDirectories.containsKey(directory)) {
+            return true;
+        }
+        try {
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+            watchedDirectories.put(directory, key);
+            return true;
+        } catch (IOException | ClosedWatchServiceException e) {
+            logger.debug("file_metadata_watch_failed dir={} reason={}", directory, e.toString());
+            return false;
+        }
+    }
+
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                    logger.debug("file_metadata_watch_overflow dir={}", directory);
+                    clear();
+                    continue;
+                }
+                Path changed = directory.resolve((Path) event.context());
+                if (event.kind() == StandardWatchEventKinds.ENTRY_MODIFY) {
+                    generation.incrementAndGet();
+                    entries.remove(changed);
+                } else {
+                    invalidate(changed);
+                }
+            }
+            if (!key.reset()) {
+                // The directory itself is gone
+                watchedDirectories.remove(directory, key);
+                clear();
+            }
+        }
+    }
+}
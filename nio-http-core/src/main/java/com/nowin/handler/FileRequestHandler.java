@@ -1,7 +1,11 @@
 package com.nowin.handler;
 
+import com.nowin.http.ByteArrayBody;
+import com.nowin.http.CachedFile;
 import com.nowin.http.FileChannelBody;
+import com.nowin.http.HttpBody;
 import com.nowin.http.HttpPart;
+import com.nowin.http.MultipartByteRangesBody;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,13 +18,12 @@ import com.nowin.server.VirtualHost;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URLDecoder;
+import java.nio.file.AccessDeniedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.StandardCopyOption;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.time.Instant;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
@@ -30,19 +33,53 @@ public class FileRequestHandler implements HttpHandler {
     private static final Logger logger = LoggerFactory.getLogger(FileRequestHandler.class);
     private static final long MAX_CACHEABLE_SIZE = 1024 * 1024; // 1MB
     // RFC 7231 HTTP date format for headers (e.g., Last-Modified, If-*)
-    private static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz")
+    static final DateTimeFormatter HTTP_DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz")
             .withZone(ZoneId.of("GMT"));
+    // Codings served from precompressed siblings, most preferred first, and their file suffixes
+    private static final String[] PRECOMPRESSED_ENCODINGS = {"br", "zstd", "gzip"};
+    private static final String[] PRECOMPRESSED_SUFFIXES = {".br", ".zst", ".gz"};
     private final MimeTypeResolver mimeTypeResolver;
-    private final ResourceCache<String, byte[]> resourceCache;
+    private final ResourceCache<Path, CachedFile> resourceCache;
+    // Heap byte cache keyed by "path|mtime", only set through the deprecated constructor
+    private final ResourceCache<String, byte[]> legacyCache;
+    private final FileMetadataCache metadataCache;
     private final DirectoryListingRenderer directoryListingRenderer;
+    // Smallest file gzipped into the cache; negative leaves compression to the server
+    private volatile int compressionMinSize = -1;
 
     public FileRequestHandler(MimeTypeResolver mimeTypeResolver) {
-        this(mimeTypeResolver, null);
+        this(mimeTypeResolver, null, null);
     }
 
+    /**
+     * Caches small files as heap byte arrays in {@code resourceCache}.
+     *
+     * @deprecated use {@link #FileRequestHandler(MimeTypeResolver, ResourceCache, FileMetadataCache)}
+     * with a cache of {@link CachedFile}s weighed by {@link CachedFile#weigh}, which keeps the bytes in
+     * direct memory, writes them without a per-request copy and caches their gzip form
+     */
+    @Deprecated
     public FileRequestHandler(MimeTypeResolver mimeTypeResolver, ResourceCache<String, byte[]> resourceCache) {
+        this(mimeTypeResolver, null, resourceCache, null);
+    }
+
+    /**
+     * @param resourceCache if not {@code null}, holds files up to 1 MB
+     * @param metadataCache if not {@code null}, answers existence, size,
+     *                      modification time and MIME type lookups so hot files
+     *                      are served without {@code stat} calls
+     */
+    public FileRequestHandler(MimeTypeResolver mimeTypeResolver, ResourceCache<Path, CachedFile> resourceCache,
+                              FileMetadataCache metadataCache) {
+        this(mimeTypeResolver, resourceCache, null, metadataCache);
+    }
+
+    private FileRequestHandler(MimeTypeResolver mimeTypeResolver, ResourceCache<Path, CachedFile> resourceCache,
+                               ResourceCache<String, byte[]> legacyCache, FileMetadataCache metadataCache) {
         this.mimeTypeResolver = mimeTypeResolver;
         this.resourceCache = resourceCache;
+        this.legacyCache = legacyCache;
+        this.metadataCache = metadataCache;
         try {
             this.directoryListingRenderer = new DirectoryListingRenderer();
         } catch (IOException e) {
@@ -50,6 +87,17 @@ public class FileRequestHandler implements HttpHandler {
         }
     }
 
+    /**
+     * Lets the handler gzip small compressible files itself and keep the
+     * result in its cache, so each version of a file is compressed once.
+     * Needs a cache; mirror the server's compression settings. The server
+     * does not compress bodies served from the cache, so without this they
+     * go out as they are.
+     */
+    public void setCompression(boolean enabled, int minSize) {
+        this.compressionMinSize = enabled ? Math.max(0, minSize) : -1;
+    }
+
     @Override
     public void handle(HttpRequest request, HttpResponse response) throws IOException {
         // Get virtual host from request (would typically come from server configuration)
@@ -75,7 +123,16 @@ public class FileRequestHandler implements HttpHandler {
 
         // Check if path exists
         String method = request.getMethod().toUpperCase();
-        if (!Files.exists(filePath)) {
+        FileMetadata metadata;
+        try {
+            metadata = metadata(filePath);
+        } catch (AccessDeniedException e) {
+            logger.debug("Access denied: {}", filePath);
+            response.setStatusCode(403);
+            response.setBody("Forbidden: Unable to read file");
+            return;
+        }
+        if (!metadata.exists()) {
             // Allow PUT and MKCOL to create new resources
             if ("PUT".equals(method) || "MKCOL".equals(method)) {
                 handleFileRequest(filePath, request, response);
@@ -88,13 +145,27 @@ public class FileRequestHandler implements HttpHandler {
         }
 
         // Check if path is a directory
-        if (Files.isDirectory(filePath) && "GET".equalsIgnoreCase(method)) {
+        if (metadata.isDirectory() && "GET".equalsIgnoreCase(method)) {
             handleDirectoryRequest(virtualHost, filePath, requestUri, request, response);
         } else {
             handleFileRequest(filePath, request, response);
         }
     }
 
+    private FileMetadata metadata(Path path) throws IOException {
+        return metadataCache != null ? metadataCache.get(path) : FileMetadata.read(path, mimeTypeResolver);
+    }
+
+    /**
+     * Forgets cached metadata of a path this handler just changed, so the
+     * next request sees it without waiting for the watch event.
+     */
+    private void invalidate(Path path) {
+        if (metadataCache != null) {
+            metadataCache.invalidate(path);
+        }
+    }
+
     private Path resolveFilePath(VirtualHost virtualHost, String requestUri) {
         String normalizedPath = requestUri;
         if (normalizedPath.startsWith("/")) {
@@ -147,31 +218,38 @@ public class FileRequestHandler implements HttpHandler {
 
     private void handleGetRequest(Path filePath, HttpRequest request, HttpResponse response) throws IOException {
         // Check if file is readable
-        if (!Files.isReadable(filePath)) {
+        FileMetadata metadata = metadata(filePath);
+        if (!metadata.isReadable()) {
             response.setStatusCode(403);
             response.setBody("Forbidden: Unable to read file");
             return;
         }
 
         // Set content type
-        String mimeType = mimeTypeResolver.getMimeType(filePath);
+        String mimeType = metadata.mimeType();
         response.setHeader("Content-Type", mimeType);
 
         // Set content length
-        long fileSize = Files.size(filePath);
+        long fileSize = metadata.size();
+        long lastModified = metadata.lastModified();
         response.setHeader("Content-Length", String.valueOf(fileSize));
 
-        // Get file attributes
-        BasicFileAttributes attrs = Files.readAttributes(filePath, BasicFileAttributes.class);
-        long lastModified = attrs.lastModifiedTime().toMillis();
-        fileSize = attrs.size();
-
         // Set last modified header (RFC 7231 format)
-        response.setHeader("Last-Modified", HTTP_DATE_FORMAT.format(Instant.ofEpochMilli(lastModified)));
+        response.setHeader("Last-Modified", metadata.lastModifiedHeader());
 
-        // Generate ETag (stable across JVM restarts)
-        String eTag = String.format("\"%s-%s\"",
-                Long.toHexString(fileSize), Long.toHexString(lastModified));
+        // ETag is stable across JVM restarts
+        String eTag = metadata.eTag();
+
+        // Pick a content coding; ranges are only served from the identity bytes
+        boolean compressible = HttpResponse.isCompressibleContentType(mimeType);
+        EncodedVariant variant = request.getHeader("Range").isPresent()
+                ? null : selectEncoding(filePath, request, compressible, fileSize, lastModified);
+        if (compressible || variant != null) {
+            response.setHeader("Vary", "Accept-Encoding");
+        }
+        if (variant != null) {
+            eTag = variant.eTag();
+        }
         response.setHeader("ETag", eTag);
 
         // Handle If-Range before conditional checks (affects whether range is honored)
@@ -183,6 +261,12 @@ public class FileRequestHandler implements HttpHandler {
             return;
         }
 
+        if (variant != null) {
+            response.setHeader("Content-Encoding", variant.encoding());
+            response.setBody(newBody(variant));
+            return;
+        }
+
         // Handle range requests if If-Range matches (or absent)
         if (ifRangeMatches && handleRangeRequest(filePath, request, response, fileSize)) {
             return;
@@ -190,27 +274,136 @@ public class FileRequestHandler implements HttpHandler {
 
         // For large files, use zero-copy FileChannelBody to avoid loading entire file into memory
         if (fileSize > MAX_CACHEABLE_SIZE) {
-            java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(filePath);
-            response.setBody(new FileChannelBody(fileChannel, 0, fileSize));
+            response.setBody(FileChannelBody.open(filePath, 0, fileSize));
+        } else if (resourceCache != null) {
+            // Served straight from the cached direct buffer, without a per-request copy
+            response.setBody(readFileWithCache(filePath, fileSize, lastModified).newBody());
+        } else if (legacyCache != null) {
+            response.setBody(readFileWithLegacyCache(filePath, lastModified));
         } else {
-            // Read file content and set as response body
-            byte[] content = readFileWithCache(filePath, lastModified);
-            response.setBody(content);
+            response.setBody(Files.readAllBytes(filePath));
         }
     }
 
-    private byte[] readFileWithCache(Path filePath, long lastModified) throws IOException {
-        String cacheKey = filePath.toAbsolutePath().toString() + "|" + lastModified;
-        if (resourceCache != null) {
-            byte[] cached = resourceCache.get(cacheKey);
-            if (cached != null) {
-                return cached;
+    /**
+     * Chooses the coding to answer with: a precompressed sibling ({@code .br},
+     * {@code .zst}, {@code .gz}) at least as new as the file, in that order of
+     * preference, else the cached gzip variant of a small compressible file.
+     *
+     * @return {@code null} to send the file as is
+     */
+    private EncodedVariant selectEncoding(Path filePath, HttpRequest request, boolean compressible,
+                                          long fileSize, long lastModified) throws IOException {
+        Optional<String> acceptEncoding = request.getHeader("Accept-Encoding");
+        if (acceptEncoding.isEmpty()) {
+            return null;
+        }
+        String accepted = acceptEncoding.get();
+        String fileName = filePath.getFileName().toString();
+        for (int i = 0; i < PRECOMPRESSED_ENCODINGS.length; i++) {
+            if (!acceptsEncoding(accepted, PRECOMPRESSED_ENCODINGS[i])) {
+                continue;
+            }
+            Path sibling = filePath.resolveSibling(fileName + PRECOMPRESSED_SUFFIXES[i]);
+            FileMetadata attrs;
+            try {
+                attrs = metadata(sibling);
+            } catch (IOException e) {
+                continue;
+            }
+            if (attrs.isRegularFile() && attrs.isReadable() && attrs.lastModified() >= lastModified) {
+                return new EncodedVariant(PRECOMPRESSED_ENCODINGS[i],
+                        FileMetadata.eTag(attrs.size(), attrs.lastModified(), PRECOMPRESSED_ENCODINGS[i]),
+                        sibling, attrs.size(), attrs.lastModified(), null);
             }
         }
-        byte[] content = Files.readAllBytes(filePath);
-        if (resourceCache != null && content.length <= MAX_CACHEABLE_SIZE) {
-            resourceCache.put(cacheKey, content);
+
+        if (resourceCache == null || compressionMinSize < 0 || !compressible
+                || fileSize < compressionMinSize || fileSize > MAX_CACHEABLE_SIZE
+                || !acceptsEncoding(accepted, "gzip")) {
+            return null;
+        }
+        CachedFile cached = readFileWithCache(filePath, fileSize, lastModified);
+        if (!cached.hasVariant("gzip")) {
+            cached = cached.withGzipVariant();
+            resourceCache.put(filePath, cached);
+        }
+        if (cached.variantLength("gzip") < 0) {
+            return null;
         }
+        return new EncodedVariant("gzip", FileMetadata.eTag(fileSize, lastModified, "gzip"), null, 0, 0, cached);
+    }
+
+    /**
+     * Whether an {@code Accept-Encoding} value allows {@code encoding}, named
+     * or through {@code *}, with a non-zero q-value.
+     */
+    static boolean acceptsEncoding(String acceptEncoding, String encoding) {
+        boolean wildcard = false;
+        for (String element : acceptEncoding.split(",")) {
+            String[] params = element.split(";");
+            String coding = params[0].trim();
+            boolean allowed = true;
+            for (int i = 1; i < params.length; i++) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        allowed = Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        allowed = false;
+                    }
+                }
+            }
+            if (coding.equalsIgnoreCase(encoding)) {
+                return allowed;
+            }
+            if (coding.equals("*")) {
+                wildcard = allowed;
+            }
+        }
+        return wildcard;
+    }
+
+    /**
+     * A content-coded form of a file: either a precompressed sibling file or
+     * a variant held by a cache entry.
+     */
+    private record EncodedVariant(String encoding, String eTag, Path sibling, long siblingSize,
+                                  long siblingModified, CachedFile cached) {
+    }
+
+    private HttpBody newBody(EncodedVariant variant) throws IOException {
+        if (variant.cached() != null) {
+            return variant.cached().newVariantBody(variant.encoding());
+        }
+        if (variant.siblingSize() > MAX_CACHEABLE_SIZE) {
+            return FileChannelBody.open(variant.sibling(), 0, variant.siblingSize());
+        }
+        if (resourceCache != null) {
+            return readFileWithCache(variant.sibling(), variant.siblingSize(), variant.siblingModified()).newBody();
+        }
+        return new ByteArrayBody(Files.readAllBytes(variant.sibling()));
+    }
+
+    private CachedFile readFileWithCache(Path filePath, long fileSize, long lastModified) throws IOException {
+        // filePath is already absolute and normalized, so it is the key as is
+        CachedFile cached = resourceCache.get(filePath);
+        if (cached != null && cached.isCurrent(fileSize, lastModified)) {
+            return cached;
+        }
+        CachedFile content = CachedFile.read(filePath, lastModified);
+        resourceCache.put(filePath, content);
+        return content;
+    }
+
+    private byte[] readFileWithLegacyCache(Path filePath, long lastModified) throws IOException {
+        String cacheKey = filePath + "|" + lastModified;
+        byte[] cached = legacyCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        byte[] content = Files.readAllBytes(filePath);
+        legacyCache.put(cacheKey, content);
         return content;
     }
 
@@ -218,11 +411,13 @@ public class FileRequestHandler implements HttpHandler {
         // Check if parent directory exists, create if necessary
         if (!Files.exists(filePath.getParent())) {
             Files.createDirectories(filePath.getParent());
+            invalidate(filePath.getParent());
         }
 
         // Write request body to file
         byte[] requestBody = request.getBody();
         Files.write(filePath, requestBody);
+        invalidate(filePath);
 
         response.setStatusCode(201);
         response.setBody("File created or updated successfully");
@@ -256,6 +451,7 @@ public class FileRequestHandler implements HttpHandler {
             // Delete file
             Files.delete(filePath);
         }
+        invalidate(filePath);
 
         response.setStatusCode(204);
         response.setBody("File deleted successfully");
@@ -304,6 +500,7 @@ public class FileRequestHandler implements HttpHandler {
                 try (InputStream inputStream = httpPart.getInputStream()) {
                     Path uploadPath = filePath.resolve(fileName);
                     Files.copy(inputStream, uploadPath, StandardCopyOption.REPLACE_EXISTING);
+                    invalidate(uploadPath);
                 }
             }
             response.setStatusCode(200);
@@ -478,8 +675,7 @@ public class FileRequestHandler implements HttpHandler {
         response.setHeader("Content-Range", String.format("bytes %d-%d/%d", start, end, fileSize));
 
         // Use FileChannelBody for zero-copy range transfer
-        java.nio.channels.FileChannel fileChannel = java.nio.channels.FileChannel.open(filePath);
-        response.setBody(new FileChannelBody(fileChannel, start, contentLength));
+        response.setBody(FileChannelBody.open(filePath, start, contentLength));
 
         return true;
     }
@@ -488,11 +684,9 @@ public class FileRequestHandler implements HttpHandler {
                                             String rangesSpec, long fileSize) throws IOException {
         String boundary = "NIO_HTTP_" + Long.toHexString(System.currentTimeMillis());
         String mimeType = mimeTypeResolver.getMimeType(filePath);
-        List<byte[]> parts = new ArrayList<>();
-        long totalLength = 0;
+        List<long[]> ranges = new ArrayList<>();
 
-        String[] ranges = rangesSpec.split(",");
-        for (String rangeStr : ranges) {
+        for (String rangeStr : rangesSpec.split(",")) {
             rangeStr = rangeStr.trim();
             String[] rangeParts = rangeStr.split("-");
             if (rangeParts.length < 1 || rangeParts.length > 2) {
@@ -541,42 +735,13 @@ public class FileRequestHandler implements HttpHandler {
                 response.setBody("Requested range exceeds maximum allowed size");
                 return true;
             }
-
-            byte[] partHeader = String.format("\r\n--%s\r\nContent-Type: %s\r\nContent-Range: bytes %d-%d/%d\r\n\r\n",
-                    boundary, mimeType, start, end, fileSize).getBytes(StandardCharsets.UTF_8);
-
-            try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(filePath)) {
-                byte[] rangeContent = new byte[(int) contentLength];
-                ByteBuffer buffer = ByteBuffer.wrap(rangeContent);
-                channel.position(start);
-                int read = channel.read(buffer);
-                if (read != contentLength) {
-                    logger.warn("Failed to read complete range: requested {}, read {}", contentLength, read);
-                    response.setStatusCode(500);
-                    response.setBody("Internal Server Error");
-                    return true;
-                }
-                parts.add(partHeader);
-                parts.add(rangeContent);
-                totalLength += partHeader.length + rangeContent.length;
-            }
-        }
-
-        byte[] endMarker = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8);
-        totalLength += endMarker.length;
-
-        byte[] body = new byte[(int) totalLength];
-        int pos = 0;
-        for (byte[] part : parts) {
-            System.arraycopy(part, 0, body, pos, part.length);
-            pos += part.length;
+            ranges.add(new long[] {start, end});
         }
-        System.arraycopy(endMarker, 0, body, pos, endMarker.length);
 
+        // Part headers come from small buffers and every range goes out with zero-copy transfer
         response.setStatusCode(206);
         response.setHeader("Content-Type", "multipart/byteranges; boundary=" + boundary);
-        response.setHeader("Content-Length", String.valueOf(totalLength));
-        response.setBody(body);
+        response.setBody(MultipartByteRangesBody.open(filePath, mimeType, fileSize, boundary, ranges));
         return true;
     }
 
@@ -603,8 +768,12 @@ public class FileRequestHandler implements HttpHandler {
     private Path findWelcomeFile(VirtualHost virtualHost, Path directoryPath) {
         for (String welcomeFileName : virtualHost.getWelcomeFiles()) {
             Path welcomeFilePath = directoryPath.resolve(welcomeFileName);
-            if (Files.exists(welcomeFilePath) && Files.isRegularFile(welcomeFilePath)) {
-                return welcomeFilePath;
+            try {
+                if (metadata(welcomeFilePath).isRegularFile()) {
+                    return welcomeFilePath;
+                }
+            } catch (IOException e) {
+                logger.debug("Welcome file not accessible: {}", welcomeFilePath);
             }
         }
         return null;
@@ -618,6 +787,7 @@ public class FileRequestHandler implements HttpHandler {
         }
         try {
             Files.createDirectories(filePath);
+            invalidate(filePath);
             response.setStatusCode(201);
             response.setBody("Directory created");
         } catch (IOException e) {
@@ -655,6 +825,8 @@ public class FileRequestHandler implements HttpHandler {
         }
         try {
             Files.move(filePath, destPath);
+            invalidate(filePath);
+            invalidate(destPath);
             response.setStatusCode(204);
             response.setBody("Moved successfully");
         } catch (IOException e) {
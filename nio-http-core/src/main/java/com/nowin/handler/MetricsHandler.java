@@ -5,8 +5,10 @@ import com.nowin.http.HttpResponse;
 import com.nowin.server.LoadMonitor;
 import com.nowin.server.MetricsCollector;
 import com.nowin.server.NioHttpServer;
+import com.nowin.server.ResourceCache;
 import com.nowin.transport.TransportEventLoop;
 import com.nowin.transport.TransportEventLoopGroup;
+import com.nowin.util.BufferPool;
 
 public class MetricsHandler implements HttpHandler {
 
@@ -50,6 +52,18 @@ public class MetricsHandler implements HttpHandler {
         appendMetric(sb, "nio_http_bytes_written_total", "counter", "Total bytes written",
                 null, null, metrics.getTotalBytesWritten());
 
+        // TLS handshakes
+        appendMetric(sb, "nio_http_tls_handshakes_total", "counter", "TLS handshakes by result",
+                "result", "success", metrics.getTlsHandshakes());
+        appendMetric(sb, "nio_http_tls_handshakes_total", "counter", "TLS handshakes by result",
+                "result", "failure", metrics.getTlsHandshakeFailures());
+        appendMetric(sb, "nio_http_tls_handshakes_per_second", "gauge", "Completed TLS handshakes per second",
+                null, null, metrics.getTlsHandshakesPerSecond());
+        appendMetric(sb, "nio_http_tls_handshake_time_ms_avg", "gauge", "Average TLS handshake time in milliseconds",
+                null, null, metrics.getAverageTlsHandshakeTime());
+        appendMetric(sb, "nio_http_tls_handshake_time_ms_max", "gauge", "Maximum TLS handshake time in milliseconds",
+                null, null, metrics.getMaxTlsHandshakeTime());
+
         // Connection metrics
         appendMetric(sb, "nio_http_connections_current", "gauge", "Current active connections",
                 null, null, server.getConnectionCount());
@@ -66,6 +80,42 @@ public class MetricsHandler implements HttpHandler {
                     null, null, load.getRejectedRequests());
         }
 
+        // Buffer pool
+        BufferPool bufferPool = BufferPool.DEFAULT;
+        appendMetric(sb, "nio_http_buffer_pool_acquires_total", "counter", "Buffer acquires by source",
+                "source", "thread_cache", bufferPool.getThreadCacheHits());
+        appendMetric(sb, "nio_http_buffer_pool_acquires_total", "counter", "Buffer acquires by source",
+                "source", "shared", bufferPool.getSharedHits());
+        appendMetric(sb, "nio_http_buffer_pool_acquires_total", "counter", "Buffer acquires by source",
+                "source", "allocated", bufferPool.getAllocations());
+        appendMetric(sb, "nio_http_buffer_pool_releases_total", "counter", "Buffers released to the pool",
+                null, null, bufferPool.getReleases());
+        appendMetric(sb, "nio_http_buffer_pool_discarded_total", "counter", "Released buffers not kept by the pool",
+                null, null, bufferPool.getDiscarded());
+        appendMetric(sb, "nio_http_buffer_pool_outstanding", "gauge", "Buffers acquired and not yet released",
+                null, null, bufferPool.getOutstanding());
+        appendMetric(sb, "nio_http_buffer_pool_pooled_bytes", "gauge", "Direct memory idle in the pool",
+                null, null, bufferPool.getPooledBytes());
+
+        // Static file cache
+        ResourceCache<?, ?> resourceCache = server.getResourceCache();
+        if (resourceCache != null) {
+            appendMetric(sb, "nio_http_resource_cache_requests_total", "counter", "Resource cache lookups by result",
+                    "result", "hit", resourceCache.getHitCount());
+            appendMetric(sb, "nio_http_resource_cache_requests_total", "counter", "Resource cache lookups by result",
+                    "result", "miss", resourceCache.getMissCount());
+            appendMetric(sb, "nio_http_resource_cache_evictions_total", "counter", "Entries evicted or refused admission",
+                    null, null, resourceCache.getEvictionCount());
+            appendMetric(sb, "nio_http_resource_cache_evicted_bytes_total", "counter", "Bytes evicted or refused admission",
+                    null, null, resourceCache.getEvictionWeight());
+            appendMetric(sb, "nio_http_resource_cache_entries", "gauge", "Entries in the resource cache",
+                    null, null, resourceCache.size());
+            appendMetric(sb, "nio_http_resource_cache_bytes", "gauge", "Bytes held by the resource cache",
+                    null, null, resourceCache.getWeightedSize());
+            appendMetric(sb, "nio_http_resource_cache_max_bytes", "gauge", "Byte budget of the resource cache",
+                    null, null, resourceCache.getMaximumWeight());
+        }
+
         // EventLoop metrics
         TransportEventLoopGroup workerGroup = server.getWorkerGroup();
         if (workerGroup != null) {
@@ -77,6 +127,8 @@ public class MetricsHandler implements HttpHandler {
                         "id", String.valueOf(loop.getId()), loop.getSelectEmptyCount());
                 appendMetric(sb, "nio_http_eventloop_tasks_queued", "gauge", "Tasks waiting in queue",
                         "id", String.valueOf(loop.getId()), loop.getQueuedTasks());
+                appendMetric(sb, "nio_http_eventloop_wakeups_total", "counter", "Selector wakeups caused by task submission",
+                        "id", String.valueOf(loop.getId()), loop.getWakeupCount());
                 appendMetric(sb, "nio_http_eventloop_channels", "gauge", "Registered channels",
                         "id", String.valueOf(loop.getId()), loop.getChannelCount());
                 appendMetric(sb, "nio_http_eventloop_bytes_read_total", "counter", "Total bytes read by event loop",
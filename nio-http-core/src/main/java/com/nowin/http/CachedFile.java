@@ -0,0 +1,147 @@
+package com.nowin.http;
+
+import com.nowin.util.RefCountedBuffer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content of a static file as cached by
+ * {@link com.nowin.handler.FileRequestHandler}, stamped with the size and
+ * modification time it was read at so a changed file is never served from the
+ * cache.
+ * <p>
+ * The bytes are read once into direct memory, outside the GC heap, and every
+ * response gets a {@link SharedBufferBody} view of them that the channel
+ * writes without copying. The cache's own reference is never released: the
+ * memory goes back through the buffer's cleaner once the entry has been evicted
+ * and the last response using it has been written, so an eviction racing a
+ * request can never pull the bytes from under it.
+ * <p>
+ * Content codings produced from the file, such as its gzip form, are kept
+ * alongside it as variants, so they share its modification-time check and
+ * are compressed once per version of the file rather than once per request.
+ */
+public final class CachedFile {
+
+    // Marks a coding that did not make the content smaller
+    private static final RefCountedBuffer NOT_SMALLER = RefCountedBuffer.wrap(ByteBuffer.allocate(0), null);
+
+    private final RefCountedBuffer content;
+    private final long lastModified;
+    private final Map<String, RefCountedBuffer> variants;
+
+    private CachedFile(RefCountedBuffer content, long lastModified, Map<String, RefCountedBuffer> variants) {
+        this.content = content;
+        this.lastModified = lastModified;
+        this.variants = variants;
+    }
+
+    /**
+     * Reads {@code path} into direct memory.
+     *
+     * @param lastModified the modification time the caller saw before reading
+     */
+    public static CachedFile read(Path path, long lastModified) throws IOException {
+        try (FileChannel channel = FileChannel.open(path)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("File too large to cache: " + path);
+            }
+            ByteBuffer direct = ByteBuffer.allocateDirect((int) size);
+            while (direct.hasRemaining() && channel.read(direct) >= 0) {
+                // keep reading until full or the file shrank underneath us
+            }
+            direct.flip();
+            return new CachedFile(RefCountedBuffer.wrap(direct, null), lastModified, Map.of());
+        }
+    }
+
+    /**
+     * A new response body sharing the cached bytes.
+     */
+    public SharedBufferBody newBody() {
+        return new SharedBufferBody(content);
+    }
+
+    /**
+     * A new response body sharing the cached {@code encoding} variant, or
+     * {@code null} if there is none or it would not be smaller than the
+     * content.
+     */
+    public SharedBufferBody newVariantBody(String encoding) {
+        RefCountedBuffer variant = variants.get(encoding);
+        return variant != null && variant != NOT_SMALLER ? new SharedBufferBody(variant) : null;
+    }
+
+    /**
+     * Length of the {@code encoding} variant, or -1 if there is none or it
+     * would not be smaller than the content.
+     */
+    public long variantLength(String encoding) {
+        RefCountedBuffer variant = variants.get(encoding);
+        return variant != null && variant != NOT_SMALLER ? variant.remaining() : -1;
+    }
+
+    /**
+     * Whether {@code encoding} has been tried on this content, whether or not
+     * it made the content smaller.
+     */
+    public boolean hasVariant(String encoding) {
+        return variants.containsKey(encoding);
+    }
+
+    /**
+     * Gzips the content into direct memory and returns a copy of this entry
+     * that carries the result as its {@code gzip} variant. The copy weighs
+     * more, so it should replace this one in the cache.
+     */
+    public CachedFile withGzipVariant() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.max(64, length() / 3));
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out, 8192)) {
+            ByteBuffer source = content.nioBuffer().duplicate();
+            byte[] chunk = new byte[(int) Math.min(8192, Math.max(1, source.remaining()))];
+            while (source.hasRemaining()) {
+                int length = Math.min(chunk.length, source.remaining());
+                source.get(chunk, 0, length);
+                gzip.write(chunk, 0, length);
+            }
+        }
+        Map<String, RefCountedBuffer> withGzip = new HashMap<>(variants);
+        withGzip.put("gzip", out.size() < length() ? RefCountedBuffer.copyOf(out.toByteArray()) : NOT_SMALLER);
+        return new CachedFile(content, lastModified, Map.copyOf(withGzip));
+    }
+
+    public long length() {
+        return content.remaining();
+    }
+
+    public long lastModified() {
+        return lastModified;
+    }
+
+    /**
+     * Whether this copy still matches a file with the given attributes.
+     */
+    public boolean isCurrent(long size, long lastModified) {
+        return this.lastModified == lastModified && length() == size;
+    }
+
+    /**
+     * Weighs entries of a file cache by their size in bytes, variants
+     * included.
+     */
+    public static long weigh(Object path, CachedFile file) {
+        long weight = file.length();
+        for (RefCountedBuffer variant : file.variants.values()) {
+            weight += variant.remaining();
+        }
+        return weight;
+    }
+}
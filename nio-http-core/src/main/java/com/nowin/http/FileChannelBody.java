@@ -1,5 +1,6 @@
 package com.nowin.http;
 
+import com.nowin.transport.TransportSocketChannel;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -7,26 +8,79 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
 
 /**
  * Zero-copy HTTP body backed by a {@link FileChannel}.
  * Uses {@link FileChannel#transferTo(long, long, WritableByteChannel)} for
  * kernel-bypass transmission when possible.
+ * <p>
+ * A body can be cut into {@link #slice slices}, e.g. one per HTTP/2 DATA
+ * frame, that share its file channel; the channel is closed once the body
+ * and every slice are closed.
  */
 public class FileChannelBody implements HttpBody {
 
     private static final Logger logger = LoggerFactory.getLogger(FileChannelBody.class);
 
     private final FileChannel fileChannel;
+    // The file fileChannel was opened on, when known; lets native transports sendfile from their own descriptor
+    private final Path path;
+    // Identity (device and inode) of that file, which such a descriptor must match; null when unknown
+    private final Object fileKey;
     private final long position;
     private final long count;
+    // The body this one was sliced from, which owns the file channel; null for an owner
+    private final FileChannelBody owner;
     private long transferred = 0;
     private volatile boolean closed = false;
+    // Slices not closed yet; guarded by this
+    private int openSlices;
 
     public FileChannelBody(FileChannel fileChannel, long position, long count) {
+        this(fileChannel, null, null, position, count);
+    }
+
+    /**
+     * @param fileKey the {@link BasicFileAttributes#fileKey() key} of the file
+     *                {@code fileChannel} is open on; without one, transports
+     *                cannot tell whether {@code path} still names that file
+     *                and copy instead of reopening it
+     */
+    public FileChannelBody(FileChannel fileChannel, Path path, Object fileKey, long position, long count) {
+        this(fileChannel, path, fileKey, position, count, null);
+    }
+
+    private FileChannelBody(FileChannel fileChannel, Path path, Object fileKey, long position, long count,
+                            FileChannelBody owner) {
         this.fileChannel = fileChannel;
+        this.path = path;
+        this.fileKey = fileKey;
         this.position = position;
         this.count = count;
+        this.owner = owner;
+    }
+
+    /**
+     * Opens {@code path} for reading and serves {@code count} bytes of it
+     * starting at {@code position}.
+     */
+    public static FileChannelBody open(Path path, long position, long count) throws IOException {
+        Object before = fileKey(path);
+        FileChannel channel = FileChannel.open(path);
+        // The same key on both sides of the open is the key of the file the channel is on
+        Object fileKey = before != null && before.equals(fileKey(path)) ? before : null;
+        return new FileChannelBody(channel, path, fileKey, position, count);
+    }
+
+    private static Object fileKey(Path path) {
+        try {
+            return Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
     }
 
     @Override
@@ -55,7 +109,9 @@ public class FileChannelBody implements HttpBody {
             return 0;
         }
         long remaining = Math.min(count - transferred, maxBytes);
-        long written = fileChannel.transferTo(position + transferred, remaining, target);
+        long written = target instanceof TransportSocketChannel socket
+                ? socket.transferFrom(fileChannel, path, fileKey, position + transferred, remaining)
+                : fileChannel.transferTo(position + transferred, remaining, target);
         if (written > 0) {
             transferred += written;
         } else if (written == 0) {
@@ -78,19 +134,80 @@ public class FileChannelBody implements HttpBody {
         return count - transferred;
     }
 
+    /**
+     * Splits off the next {@code length} bytes (or what remains, if less) as
+     * a body of their own and counts them as transferred here. The slice
+     * reads from the same file channel and does not close it.
+     */
+    public FileChannelBody slice(long length) {
+        long sliceCount = Math.min(length, remaining());
+        FileChannelBody slice = new FileChannelBody(fileChannel, path, fileKey, position + transferred, sliceCount,
+                owner != null ? owner : this);
+        slice.owner.sliceOpened();
+        transferred += sliceCount;
+        return slice;
+    }
+
+    /**
+     * A body of its own over {@code count} bytes at {@code position} of the
+     * same file, e.g. one range of a multi-range response. Like a slice it
+     * shares the file channel, but it leaves this body's progress alone.
+     */
+    public FileChannelBody region(long position, long count) {
+        FileChannelBody region = new FileChannelBody(fileChannel, path, fileKey, position, count,
+                owner != null ? owner : this);
+        region.owner.sliceOpened();
+        return region;
+    }
+
     @Override
     public void close() throws IOException {
-        if (!closed) {
-            closed = true;
-            fileChannel.close();
-            logger.debug("FileChannelBody closed");
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (owner != null) {
+            owner.sliceClosed();
+        } else {
+            closeChannelIfUnused();
         }
     }
 
+    private synchronized void sliceOpened() {
+        openSlices++;
+    }
+
+    private void sliceClosed() throws IOException {
+        synchronized (this) {
+            openSlices--;
+        }
+        if (closed) {
+            closeChannelIfUnused();
+        }
+    }
+
+    private void closeChannelIfUnused() throws IOException {
+        synchronized (this) {
+            if (openSlices > 0 || !fileChannel.isOpen()) {
+                return;
+            }
+        }
+        fileChannel.close();
+        logger.debug("FileChannelBody closed");
+    }
+
     public FileChannel fileChannel() {
         return fileChannel;
     }
 
+    public Path path() {
+        return path;
+    }
+
+    public Object fileKey() {
+        return fileKey;
+    }
+
     public long position() {
         return position;
     }
@@ -0,0 +1,61 @@
+package com.nowin.http;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Once-per-second cache of the {@code Date} response header value.
+ * <p>
+ * The header only has second resolution, so formatting it for every response
+ * is wasted work. Whichever thread first observes a new second formats the
+ * value and publishes it; concurrent callers either see the previous second
+ * or format the same value themselves, both of which are harmless.
+ */
+final class HttpDate {
+
+    private static final DateTimeFormatter FORMAT = DateTimeFormatter
+            .ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US)
+            .withZone(ZoneId.of("GMT"));
+
+    private static volatile Snapshot current = format(System.currentTimeMillis() / 1000);
+
+    private HttpDate() {
+    }
+
+    /**
+     * Returns the formatted current date, e.g. {@code Sun, 06 Nov 1994 08:49:37 GMT}.
+     */
+    static String now() {
+        return snapshot().value;
+    }
+
+    /**
+     * Returns the encoded bytes of {@code value} if it is the cached current
+     * date, or {@code null} otherwise. The returned array must not be modified.
+     */
+    static byte[] bytesOf(String value) {
+        Snapshot snapshot = current;
+        return snapshot.value == value ? snapshot.bytes : null;
+    }
+
+    private static Snapshot snapshot() {
+        long second = System.currentTimeMillis() / 1000;
+        Snapshot snapshot = current;
+        if (snapshot.second != second) {
+            snapshot = format(second);
+            current = snapshot;
+        }
+        return snapshot;
+    }
+
+    private static Snapshot format(long second) {
+        String value = FORMAT.format(Instant.ofEpochSecond(second));
+        return new Snapshot(second, value, value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private record Snapshot(long second, String value, byte[] bytes) {
+    }
+}
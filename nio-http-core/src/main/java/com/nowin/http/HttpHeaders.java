@@ -0,0 +1,253 @@
+package com.nowin.http;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Compact, case-insensitive header storage shared by {@link HttpRequest} and
+ * {@link HttpResponse}.
+ * <p>
+ * Entries live in parallel arrays of lower-case names (interned through
+ * {@link HttpTokens} for well-known headers), their case-insensitive hashes
+ * and values. Lookups compare the pre-computed hash first and then the name
+ * with {@link String#equalsIgnoreCase(String)}, so no lower-cased key is
+ * allocated per call. Requests may adopt the raw header section produced by
+ * {@link HttpRequestParser}; those values are decoded on first access.
+ * <p>
+ * Not thread-safe; a header set belongs to one request or response.
+ */
+final class HttpHeaders {
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private String[] names;
+    private int[] hashes;
+    private String[] values;
+    private int size;
+
+    // Raw header section adopted from the parser; a null value means "decode rawBounds[2i..2i+1]".
+    private byte[] raw;
+    private int[] rawBounds;
+
+    private Map<String, String> view;
+
+    HttpHeaders() {
+        this.names = new String[INITIAL_CAPACITY];
+        this.hashes = new int[INITIAL_CAPACITY];
+        this.values = new String[INITIAL_CAPACITY];
+    }
+
+    /**
+     * Adopts the header section scanned by {@link HttpRequestParser}. Names are
+     * lower-case; each value is the {@code [start, end)} range at
+     * {@code valueBounds[2i], valueBounds[2i + 1]} of {@code block}. Repeated
+     * names are combined into a single comma-separated entry.
+     */
+    void adoptRaw(byte[] block, String[] rawNames, int[] valueBounds, int count) {
+        clear();
+        ensureCapacity(count);
+        this.raw = block;
+        this.rawBounds = new int[names.length * 2];
+        for (int i = 0; i < count; i++) {
+            String name = rawNames[i];
+            int index = indexOf(name, HttpTokens.hashIgnoreCase(name));
+            if (index >= 0) {
+                values[index] = value(index) + ", "
+                        + HttpTokens.decode(block, valueBounds[i * 2], valueBounds[i * 2 + 1]);
+                continue;
+            }
+            names[size] = name;
+            hashes[size] = HttpTokens.hashIgnoreCase(name);
+            values[size] = null;
+            rawBounds[size * 2] = valueBounds[i * 2];
+            rawBounds[size * 2 + 1] = valueBounds[i * 2 + 1];
+            size++;
+        }
+    }
+
+    String get(String name) {
+        int index = indexOf(name, HttpTokens.hashIgnoreCase(name));
+        return index >= 0 ? value(index) : null;
+    }
+
+    boolean contains(String name) {
+        return indexOf(name, HttpTokens.hashIgnoreCase(name)) >= 0;
+    }
+
+    /**
+     * Replaces any existing value for {@code name}.
+     */
+    void set(String name, String value) {
+        int hash = HttpTokens.hashIgnoreCase(name);
+        int index = indexOf(name, hash);
+        if (index >= 0) {
+            values[index] = value;
+        } else {
+            append(HttpTokens.headerName(name), hash, value);
+        }
+    }
+
+    /**
+     * Appends {@code value} to any existing value for {@code name}, comma separated.
+     */
+    void add(String name, String value) {
+        int hash = HttpTokens.hashIgnoreCase(name);
+        int index = indexOf(name, hash);
+        if (index >= 0) {
+            values[index] = value(index) + ", " + value;
+        } else {
+            append(HttpTokens.headerName(name), hash, value);
+        }
+    }
+
+    String remove(String name) {
+        int index = indexOf(name, HttpTokens.hashIgnoreCase(name));
+        if (index < 0) {
+            return null;
+        }
+        String removed = value(index);
+        int moved = size - index - 1;
+        if (moved > 0) {
+            System.arraycopy(names, index + 1, names, index, moved);
+            System.arraycopy(hashes, index + 1, hashes, index, moved);
+            System.arraycopy(values, index + 1, values, index, moved);
+            if (raw != null) {
+                System.arraycopy(rawBounds, (index + 1) * 2, rawBounds, index * 2, moved * 2);
+            }
+        }
+        size--;
+        names[size] = null;
+        values[size] = null;
+        return removed;
+    }
+
+    void clear() {
+        Arrays.fill(names, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+        raw = null;
+        rawBounds = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Returns the lower-case name of the entry at {@code index}.
+     */
+    String name(int index) {
+        return names[index];
+    }
+
+    String value(int index) {
+        String value = values[index];
+        if (value == null && raw != null) {
+            value = HttpTokens.decode(raw, rawBounds[index * 2], rawBounds[index * 2 + 1]);
+            values[index] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Returns a live, read-only {@link Map} view keyed by lower-case header
+     * name. {@code get} and {@code containsKey} on the view are case-insensitive.
+     */
+    Map<String, String> asMap() {
+        Map<String, String> result = view;
+        if (result == null) {
+            result = new View();
+            view = result;
+        }
+        return result;
+    }
+
+    private int indexOf(String name, int hash) {
+        for (int i = 0; i < size; i++) {
+            if (hashes[i] == hash) {
+                String candidate = names[i];
+                if (candidate == name || candidate.equalsIgnoreCase(name)) {
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    private void append(String lowerName, int hash, String value) {
+        ensureCapacity(size + 1);
+        names[size] = lowerName;
+        hashes[size] = hash;
+        values[size] = value;
+        size++;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= names.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, names.length * 2);
+        names = Arrays.copyOf(names, newCapacity);
+        hashes = Arrays.copyOf(hashes, newCapacity);
+        values = Arrays.copyOf(values, newCapacity);
+        if (rawBounds != null) {
+            rawBounds = Arrays.copyOf(rawBounds, newCapacity * 2);
+        }
+    }
+
+    private final class View extends AbstractMap<String, String> {
+
+        private final Set<Entry<String, String>> entries = new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<String, String>> iterator() {
+                return new Iterator<>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < size;
+                    }
+
+                    @Override
+                    public Entry<String, String> next() {
+                        if (next >= size) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(names[index], value(index));
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+
+        @Override
+        public Set<Entry<String, String>> entrySet() {
+            return entries;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public String get(Object key) {
+            return key instanceof String name ? HttpHeaders.this.get(name) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return key instanceof String name && contains(name);
+        }
+    }
+}
@@ -28,7 +28,7 @@ public class HttpRequest {
     private String method;
     private String uri;
     private String protocolVersion;
-    private final Map<String, String> headers = new HashMap<>();
+    private final HttpHeaders headers = new HttpHeaders();
     private byte[] body;
     private File tempBodyFile;
     private Map<String, List<String>> bodyParameters;
@@ -37,6 +37,8 @@ public class HttpRequest {
     private final Map<String, String> pathParameters = new HashMap<>();
     private VirtualHost virtualHost;
     private String remoteAddress;
+    private long sequenceNumber = -1;
+    private int streamId;
 
     public String getMethod() {
         return method;
@@ -66,6 +68,31 @@ public class HttpRequest {
         this.remoteAddress = remoteAddress;
     }
 
+    /**
+     * Position of this request among those received on its connection,
+     * starting at 0, or -1 if the request did not come from the HTTP/1.1 codec.
+     * Pipelined responses are written in this order.
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    public void setSequenceNumber(long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+    }
+
+    /**
+     * HTTP/2 stream the request arrived on, or 0 if it came over HTTP/1.x.
+     * The response is written on the same stream.
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public void setStreamId(int streamId) {
+        this.streamId = streamId;
+    }
+
     public void setUri(String uri) {
         this.uri = uri;
         queryParameters.clear();
@@ -94,26 +121,34 @@ public class HttpRequest {
         this.protocolVersion = protocolVersion;
     }
 
+    /**
+     * Adopts the header section scanned by {@link HttpRequestParser}. Names are
+     * already lower-cased (and interned where well known); each value is the
+     * {@code [start, end)} range at {@code valueBounds[2i], valueBounds[2i + 1]}
+     * of {@code block} and is decoded lazily.
+     */
+    void setRawHeaders(byte[] block, String[] names, int[] valueBounds, int count) {
+        headers.adoptRaw(block, names, valueBounds, count);
+    }
+
     public void addHeader(String name, String value) {
-        String lowerName = name.toLowerCase();
-        String existingValue = headers.get(lowerName);
-        if (existingValue != null) {
-            headers.put(lowerName, existingValue + ", " + value);
-        } else {
-            headers.put(lowerName, value);
-        }
+        headers.add(name, value);
     }
 
     public void setHeader(String name, String value) {
-        headers.put(name.toLowerCase(), value);
+        headers.set(name, value);
     }
 
     public Optional<String> getHeader(String name) {
-        return Optional.ofNullable(headers.get(name.toLowerCase()));
+        return Optional.ofNullable(headers.get(name));
     }
 
+    /**
+     * Returns a read-only view of the request headers keyed by lower-case name.
+     * The view reflects later header changes; lookups are case-insensitive.
+     */
     public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+        return headers.asMap();
     }
 
     public byte[] getBody() {
@@ -222,6 +257,10 @@ public class HttpRequest {
     }
 
     public boolean isKeepAlive() {
+        if (streamId > 0) {
+            // An HTTP/2 connection outlives its streams
+            return true;
+        }
         return getHeader("Connection")
                 .map(header -> header.equalsIgnoreCase("keep-alive"))
                 .orElse(protocolVersion == null || protocolVersion.equalsIgnoreCase("HTTP/1.1"));
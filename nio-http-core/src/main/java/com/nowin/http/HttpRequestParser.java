@@ -3,24 +3,30 @@ package com.nowin.http;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.nio.charset.StandardCharsets;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Incremental HTTP/1.x request parser.
+ * <p>
+ * The start line and header section are scanned byte by byte directly from the
+ * inbound buffer and validated with the lookup tables in {@link HttpTokens}.
+ * Header bytes are accumulated in a reusable per-connection block and handed to
+ * {@link HttpRequest} as a single copy; methods, versions and well-known header
+ * names are interned, and header values are only decoded into strings when the
+ * request asks for them.
+ */
 public class HttpRequestParser {
     private static final Logger logger = LoggerFactory.getLogger(HttpRequestParser.class);
-    private static final Pattern REQUEST_LINE_PATTERN = Pattern.compile("^([A-Za-z0-9!#$%&'*+\\-.^_`|~]+) (.*) (HTTP/\\d\\.\\d)$");
-    private static final byte[] CRLF_BYTES = "\r\n".getBytes(StandardCharsets.US_ASCII);
 
     private enum ParseState {
         START_LINE, HEADERS, BODY, COMPLETE, ERROR
     }
 
-    private final ByteArrayOutputStream lineBuffer = new ByteArrayOutputStream(256);
     private static final int MAX_HEADER_LINE_LENGTH = 8192; // 8KB max per header line
+    private static final int INITIAL_HEADER_BLOCK_SIZE = 1024;
+    private static final int INITIAL_HEADER_COUNT = 16;
     private final int maxHeaderSize;
     private final long maxBodySize;
     private ParseState state = ParseState.START_LINE;
@@ -29,6 +35,15 @@ public class HttpRequestParser {
     private String multipartBoundary = null;
     private final StringBuilder partHeaderBuffer = new StringBuilder();
     private int headersBytesRead = 0;
+    private Map<String, String> bodyHeaders;
+
+    // Raw header section of the request being parsed; lines are appended as they complete.
+    private byte[] headerBlock = new byte[INITIAL_HEADER_BLOCK_SIZE];
+    private int headerBlockLength = 0;
+    private int lineStart = 0;
+    private String[] headerNames = new String[INITIAL_HEADER_COUNT];
+    private int[] headerValueBounds = new int[INITIAL_HEADER_COUNT * 2];
+    private int headerCount = 0;
 
     public HttpRequestParser() {
         this(65536, 10L * 1024 * 1024);
@@ -55,6 +70,7 @@ public class HttpRequestParser {
                                 break; // setupBodyParser detected an error
                             }
                             if (hasBody) {
+                                bodyHeaders = request.getHeaders();
                                 state = ParseState.BODY;
                             } else {
                                 state = ParseState.COMPLETE;
@@ -62,7 +78,7 @@ public class HttpRequestParser {
                         }
                         break;
                     case BODY:
-                        bodyParser.parse(byteBuffer, request.getHeaders());
+                        bodyParser.parse(byteBuffer, bodyHeaders);
                         if (bodyParser.isComplete()) {
                             bodyParser.populate(request);
                             state = ParseState.COMPLETE;
@@ -86,106 +102,161 @@ public class HttpRequestParser {
     }
 
     private boolean parseStartLine(ByteBuffer buffer) {
-        if (!readLine(buffer)) {
+        int end = readLine(buffer);
+        if (end < 0) {
             return false;
         }
-        String startLine = lineBuffer.toString();
-        lineBuffer.reset();
-        if (startLine == null) {
-            return false; // Not enough data yet
+        byte[] line = headerBlock;
+        int start = lineStart;
+        lineStart = headerBlockLength;
+
+        // method: 1*tchar SP
+        int i = start;
+        while (i < end && HttpTokens.isToken(line[i])) {
+            i++;
         }
-
-        Matcher matcher = REQUEST_LINE_PATTERN.matcher(startLine);
-        if (!matcher.matches()) {
-            logger.debug("http_parse_invalid_start_line line={}", startLine);
+        // version: SP "HTTP/" DIGIT "." DIGIT at the very end of the line
+        int versionStart = end - 8;
+        if (i == start || i >= end || line[i] != ' '
+                || versionStart - 1 <= i || line[versionStart - 1] != ' '
+                || !isHttpVersion(line, versionStart)) {
+            logger.debug("http_parse_invalid_start_line line={}", HttpTokens.decode(line, start, end));
             state = ParseState.ERROR;
             return false;
         }
+        int uriStart = i + 1;
+        int uriEnd = versionStart - 1;
+        for (int j = uriStart; j < uriEnd; j++) {
+            if (line[j] == '\r' || line[j] == '\n') {
+                logger.debug("http_parse_invalid_start_line line={}", HttpTokens.decode(line, start, end));
+                state = ParseState.ERROR;
+                return false;
+            }
+        }
 
-        request.setMethod(matcher.group(1));
-        request.setUri(matcher.group(2));
-        request.setProtocolVersion(matcher.group(3));
+        request.setMethod(HttpTokens.method(line, start, i));
+        request.setUri(HttpTokens.decode(line, uriStart, uriEnd));
+        request.setProtocolVersion(HttpTokens.version(line, versionStart));
 
         return true;
     }
 
+    private static boolean isHttpVersion(byte[] line, int start) {
+        return start >= 0
+                && line[start] == 'H' && line[start + 1] == 'T' && line[start + 2] == 'T'
+                && line[start + 3] == 'P' && line[start + 4] == '/'
+                && isDigit(line[start + 5]) && line[start + 6] == '.' && isDigit(line[start + 7]);
+    }
+
+    private static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+
     private boolean parseHeaders(ByteBuffer buffer) {
-        while (readLine(buffer)) {
-            String headerLine = lineBuffer.toString();
-            lineBuffer.reset();
-            if (headerLine.isEmpty()) {
+        int end;
+        while ((end = readLine(buffer)) >= 0) {
+            byte[] line = headerBlock;
+            int start = lineStart;
+            lineStart = headerBlockLength;
+            if (end == start) {
+                request.setRawHeaders(
+                        Arrays.copyOf(headerBlock, headerBlockLength),
+                        Arrays.copyOf(headerNames, headerCount),
+                        Arrays.copyOf(headerValueBounds, headerCount * 2),
+                        headerCount);
                 return true; // read end of headers
             }
             // RFC 7230 Section 3.2.4: obs-fold (obsolete line folding) is not supported
-            if (headerLine.charAt(0) == ' ' || headerLine.charAt(0) == '\t') {
+            if (line[start] == ' ' || line[start] == '\t') {
                 logger.debug("http_parse_obs_fold_rejected method={} uri={}", request.getMethod(), request.getUri());
                 state = ParseState.ERROR;
                 return false;
             }
-            int colonIndex = headerLine.indexOf(':');
-            if (colonIndex == -1) {
+            int colonIndex = start;
+            while (colonIndex < end && line[colonIndex] != ':') {
+                colonIndex++;
+            }
+            if (colonIndex == end) {
                 logger.debug("http_parse_invalid_header method={} uri={} reason=missing_colon line={}",
-                        request.getMethod(), request.getUri(), headerLine);
+                        request.getMethod(), request.getUri(), HttpTokens.decode(line, start, end));
                 state = ParseState.ERROR;
                 return false;
             }
-            String name = headerLine.substring(0, colonIndex).trim();
-            String value = headerLine.substring(colonIndex + 1).trim();
+            int nameStart = trimStart(line, start, colonIndex);
+            int nameEnd = trimEnd(line, nameStart, colonIndex);
+            int valueStart = trimStart(line, colonIndex + 1, end);
+            int valueEnd = trimEnd(line, valueStart, end);
 
-            if (!isValidHeaderName(name)) {
+            if (!isValidHeaderName(line, nameStart, nameEnd)) {
                 logger.debug("http_parse_invalid_header_name method={} uri={} name={}",
-                        request.getMethod(), request.getUri(), name);
+                        request.getMethod(), request.getUri(), HttpTokens.decode(line, nameStart, nameEnd));
                 state = ParseState.ERROR;
                 return false;
             }
-            
+
             // verify header value
-            if (!isValidHeaderValue(value)) {
+            if (!isValidHeaderValue(line, valueStart, valueEnd)) {
                 logger.debug("http_parse_invalid_header_value method={} uri={} name={}",
-                        request.getMethod(), request.getUri(), name);
+                        request.getMethod(), request.getUri(), HttpTokens.decode(line, nameStart, nameEnd));
                 state = ParseState.ERROR;
                 return false;
             }
-            
-            request.addHeader(name, value);
+
+            addHeader(HttpTokens.headerName(line, nameStart, nameEnd), valueStart, valueEnd);
         }
         return false;
     }
-    
+
+    private void addHeader(String name, int valueStart, int valueEnd) {
+        if (headerCount == headerNames.length) {
+            headerNames = Arrays.copyOf(headerNames, headerCount * 2);
+            headerValueBounds = Arrays.copyOf(headerValueBounds, headerCount * 4);
+        }
+        headerNames[headerCount] = name;
+        headerValueBounds[headerCount * 2] = valueStart;
+        headerValueBounds[headerCount * 2 + 1] = valueEnd;
+        headerCount++;
+    }
+
+    /**
+     * Same whitespace rule as {@link String#trim()}: strips bytes {@code <= 0x20}.
+     */
+    private static int trimStart(byte[] line, int start, int end) {
+        while (start < end && (line[start] & 0xFF) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static int trimEnd(byte[] line, int start, int end) {
+        while (end > start && (line[end - 1] & 0xFF) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
     /**
      * verify header name
      * token = 1*( %x21 / %x23-27 / %x2A-2B / %x2D-2E / %x30-39 / %x41-5A / %x5E-7A / %x7C / %x7E )
      */
-    private boolean isValidHeaderName(String name) {
-        if (name.isEmpty()) {
+    private static boolean isValidHeaderName(byte[] line, int start, int end) {
+        if (start == end) {
             return false;
         }
-        for (int i = 0; i < name.length(); i++) {
-            char c = name.charAt(i);
-            if (!((c >= 'a' && c <= 'z') || 
-                  (c >= 'A' && c <= 'Z') || 
-                  (c >= '0' && c <= '9') || 
-                  c == '!' || c == '#' || c == '$' || c == '%' || c == '&' || 
-                  c == '\'' || c == '*' || c == '+' || c == '-' || c == '.' || 
-                  c == '^' || c == '_' || c == '`' || c == '|' || c == '~')) {
+        for (int i = start; i < end; i++) {
+            if (!HttpTokens.isToken(line[i])) {
                 return false;
             }
         }
         return true;
     }
-    
+
     /**
      * verify header value (no control characters)
      */
-    private boolean isValidHeaderValue(String value) {
-        for (int i = 0; i < value.length(); i++) {
-            char c = value.charAt(i);
-            // can't contain control characters, except for tab
-            if (c < 32 && c != 9) {
-                return false;
-            }
-            // can't contain DEL character
-            if (c == 127) {
+    private static boolean isValidHeaderValue(byte[] line, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (!HttpTokens.isFieldValue(line[i])) {
                 return false;
             }
         }
@@ -200,9 +271,9 @@ public class HttpRequestParser {
     }
 
     private boolean setupBodyParser() {
-        String contentType = request.getHeaders().get("Content-Type".toLowerCase());
-        String contentLengthStr = request.getHeaders().get("Content-Length".toLowerCase());
-        String transferEncoding = request.getHeaders().get("Transfer-Encoding".toLowerCase());
+        String contentType = request.getHeader("content-type").orElse(null);
+        String contentLengthStr = request.getHeader("content-length").orElse(null);
+        String transferEncoding = request.getHeader("transfer-encoding").orElse(null);
         
         // Check if request uses chunked transfer encoding
         boolean isChunked = transferEncoding != null && transferEncoding.toLowerCase().contains("chunked");
@@ -315,105 +386,86 @@ public class HttpRequestParser {
         return null;
     }
 
-    private boolean readLine(ByteBuffer buffer) {
+    /**
+     * Scans the buffer in place for the next LF and appends the bytes up to it
+     * to {@link #headerBlock}. Lines that span several reads keep accumulating
+     * there until their terminator arrives.
+     *
+     * @return the end offset (exclusive, CR stripped) of the completed line in
+     *         {@link #headerBlock}, or -1 if more data is needed or the line was rejected
+     */
+    private int readLine(ByteBuffer buffer) {
         if (!buffer.hasRemaining()) {
-            return false;
+            return -1;
         }
 
-        int lineEnd = findCRLF(buffer);
-        if (lineEnd == -1) {
-            // No CRLF found, append remaining data to lineBuffer
-            int remainingBytes = buffer.remaining();
-            // Check if adding this data would exceed max line length
-            if (lineBuffer.size() + remainingBytes > MAX_HEADER_LINE_LENGTH) {
-                logger.debug("http_parse_header_line_too_long method={} uri={} maxLength={}",
-                        request.getMethod(), request.getUri(), MAX_HEADER_LINE_LENGTH);
-                state = ParseState.ERROR;
-                return false;
-            }
-            
-            byte[] remaining = new byte[remainingBytes];
-            buffer.get(remaining);
-            try {
-                lineBuffer.write(remaining);
-            } catch (IOException e) {
-                logger.error("http_parse_line_buffer_write_failed", e);
-                state = ParseState.ERROR;
-            }
-            return false; // Not enough data yet
+        int position = buffer.position();
+        int limit = buffer.limit();
+        int lf = indexOfLf(buffer, position, limit);
+        int copyEnd = lf == -1 ? limit : lf;
+        int copyLength = copyEnd - position;
+        // Check if adding this data would exceed max line length (+1 for the CR)
+        if (headerBlockLength - lineStart + copyLength > MAX_HEADER_LINE_LENGTH + 1) {
+            logger.debug("http_parse_header_line_too_long method={} uri={} maxLength={}",
+                    request.getMethod(), request.getUri(), MAX_HEADER_LINE_LENGTH);
+            state = ParseState.ERROR;
+            return -1;
         }
+        ensureHeaderBlockCapacity(headerBlockLength + copyLength);
+        buffer.get(position, headerBlock, headerBlockLength, copyLength);
+        headerBlockLength += copyLength;
 
-        // CRLF found
-        buffer.mark();
-        byte[] lineBytes = new byte[lineEnd];
-        buffer.get(lineBytes);
-        try {
-            lineBuffer.write(lineBytes);
-        } catch (IOException e) {
-            logger.error("http_parse_line_buffer_write_failed", e);
-            state = ParseState.ERROR;
-            buffer.reset();
-            return false;
+        if (lf == -1) {
+            buffer.position(limit);
+            return -1; // Not enough data yet
         }
-        buffer.position(buffer.position() + 2); // Skip \r\n
-        // Check if line exceeds maximum allowed length
-        if (lineBuffer.size() > MAX_HEADER_LINE_LENGTH) {
-            logger.debug("http_parse_header_line_too_long method={} uri={} maxLength={}",
-                    request.getMethod(), request.getUri(), MAX_HEADER_LINE_LENGTH);
+        buffer.position(lf + 1); // Skip \n
+
+        if (headerBlockLength == lineStart || headerBlock[headerBlockLength - 1] != '\r') {
+            logger.debug("http_parse_bare_lf_rejected method={} uri={}", request.getMethod(), request.getUri());
             state = ParseState.ERROR;
-            return false;
+            return -1;
         }
+        int lineEnd = headerBlockLength - 1;
+        int lineLength = lineEnd - lineStart;
 
         // Update total headers bytes read (include CRLF)
-        headersBytesRead += lineBuffer.size() + 2;
+        headersBytesRead += lineLength + 2;
         if (headersBytesRead > maxHeaderSize) {
             logger.warn("http_parse_headers_too_large method={} uri={} bytes={} maxBytes={}",
                     request.getMethod(), request.getUri(), headersBytesRead, maxHeaderSize);
             state = ParseState.ERROR;
-            return false;
+            return -1;
         }
 
-        return true;
-    }
-
-    private int findCRLF(ByteBuffer buf) {
-        return findByteArray(buf, CRLF_BYTES);
-    }
-
-    private int findDoubleCRLF(ByteBuffer buf) {
-        byte[] doubleCRLF = "\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
-        return findByteArray(buf, doubleCRLF);
+        return lineEnd;
     }
 
-    private int findByteArray(ByteBuffer buf, byte[] target) {
-        buf.mark();
-        int position = buf.position();
-        int limit = buf.limit();
-        int targetLength = target.length;
-
-        if (limit - position < targetLength) {
-            buf.reset();
-            return -1;
-        }
-
-        for (int i = position; i <= limit - targetLength; i++) {
-            boolean found = true;
-            for (int j = 0; j < targetLength; j++) {
-                if (buf.get(i + j) != target[j]) {
-                    found = false;
-                    break;
+    private static int indexOfLf(ByteBuffer buffer, int from, int to) {
+        if (buffer.hasArray()) {
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset();
+            for (int i = from + offset, end = to + offset; i < end; i++) {
+                if (array[i] == '\n') {
+                    return i - offset;
                 }
             }
-            if (found) {
-                buf.reset();
-                return i - position;
+            return -1;
+        }
+        for (int i = from; i < to; i++) {
+            if (buffer.get(i) == '\n') {
+                return i;
             }
         }
-
-        buf.reset();
         return -1;
     }
 
+    private void ensureHeaderBlockCapacity(int capacity) {
+        if (capacity > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(capacity, headerBlock.length * 2));
+        }
+    }
+
     public boolean isComplete() {
         return state == ParseState.COMPLETE;
     }
@@ -423,7 +475,15 @@ public class HttpRequestParser {
     }
 
     public void reset() {
-        lineBuffer.reset();
+        if (headerBlock.length > MAX_HEADER_LINE_LENGTH) {
+            // don't pin an oversized block to a long-lived keep-alive connection
+            headerBlock = new byte[INITIAL_HEADER_BLOCK_SIZE];
+        }
+        headerBlockLength = 0;
+        lineStart = 0;
+        Arrays.fill(headerNames, 0, headerCount, null);
+        headerCount = 0;
+        bodyHeaders = null;
         state = ParseState.START_LINE;
         request = new HttpRequest();
         multipartBoundary = null;
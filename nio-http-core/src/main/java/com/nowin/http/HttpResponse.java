@@ -1,14 +1,13 @@
 package com.nowin.http;
 
 import com.nowin.StreamingHandler;
+import com.nowin.sse.SseHandler;
+import com.nowin.util.RefCountedBuffer;
+import com.nowin.websocket.WebSocketHandler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.format.DateTimeFormatter;
-import com.nowin.util.BufferPool;
 import java.util.*;
 import java.util.zip.GZIPOutputStream;
 import java.io.ByteArrayOutputStream;
@@ -18,54 +17,26 @@ public class HttpResponse {
     private static final Logger logger = LoggerFactory.getLogger(HttpResponse.class);
     private static final String CRLF = "\r\n";
     private static final byte[] CRLF_BYTES = "\r\n".getBytes(StandardCharsets.US_ASCII);
-    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US)
-            .withZone(ZoneId.of("GMT"));
     private static final String SERVER_HEADER = "NIO-Http/1.0";
     private static final int DEFAULT_CHUNK_SIZE = 4096;
 
-    private static final Map<String, String> CANONICAL_HEADERS = Map.ofEntries(
-            Map.entry("content-length", "Content-Length"),
-            Map.entry("content-type", "Content-Type"),
-            Map.entry("content-encoding", "Content-Encoding"),
-            Map.entry("content-range", "Content-Range"),
-            Map.entry("transfer-encoding", "Transfer-Encoding"),
-            Map.entry("connection", "Connection"),
-            Map.entry("server", "Server"),
-            Map.entry("date", "Date"),
-            Map.entry("content-disposition", "Content-Disposition"),
-            Map.entry("accept", "Accept"),
-            Map.entry("accept-encoding", "Accept-Encoding"),
-            Map.entry("accept-ranges", "Accept-Ranges"),
-            Map.entry("range", "Range"),
-            Map.entry("vary", "Vary"),
-            Map.entry("allow", "Allow"),
-            Map.entry("dav", "DAV"),
-            Map.entry("depth", "Depth"),
-            Map.entry("destination", "Destination"),
-            Map.entry("overwrite", "Overwrite"),
-            Map.entry("timeout", "Timeout"),
-            Map.entry("lock-token", "Lock-Token"),
-            Map.entry("www-authenticate", "WWW-Authenticate"),
-            Map.entry("etag", "ETag"),
-            Map.entry("last-modified", "Last-Modified"),
-            Map.entry("location", "Location")
-    );
-
     private int statusCode = 200;
     private String statusMessage = "OK";
     private String protocolVersion = "HTTP/1.1";
-    private final Map<String, String> headers = new HashMap<>();
+    private final HttpHeaders headers = new HttpHeaders();
     private final Map<String, String> trailers = new HashMap<>();
     private HttpBody httpBody;
     private List<byte[]> chunks;
     private boolean chunkedEncoding = false;
     private StreamingHandler streamingHandler;
+    private SseHandler sseHandler;
+    private WebSocketHandler webSocketHandler;
     private boolean headersWritten = false;
     private int chunkSize = DEFAULT_CHUNK_SIZE;
 
     public HttpResponse() {
         setHeader("Server", SERVER_HEADER);
-        setHeader("Date", DATE_FORMAT.format(Instant.now()));
+        setHeader("Date", HttpDate.now());
     }
 
     public int getStatusCode() {
@@ -74,7 +45,25 @@ public class HttpResponse {
 
     public void setStatusCode(int statusCode) {
         this.statusCode = statusCode;
-        this.statusMessage = switch (statusCode) {
+        this.statusMessage = reasonPhrase(statusCode);
+
+        // 204 and 304 MUST NOT include a body per RFC 7230
+        if (!isBodyAllowed()) {
+            headers.remove("content-length");
+            headers.remove("transfer-encoding");
+            closeOldBody();
+            this.httpBody = null;
+            this.chunkedEncoding = false;
+        }
+    }
+
+    /**
+     * Returns the default reason phrase for {@code statusCode}, or an empty
+     * string for codes without one.
+     */
+    static String reasonPhrase(int statusCode) {
+        return switch (statusCode) {
+            case 101 -> "Switching Protocols";
             case 200 -> "OK";
             case 201 -> "Created";
             case 204 -> "No Content";
@@ -85,6 +74,7 @@ public class HttpResponse {
             case 400 -> "Bad Request";
             case 404 -> "Not Found";
             case 500 -> "Internal Server Error";
+            case 501 -> "Not Implemented";
             case 405 -> "Method Not Allowed";
             case 409 -> "Conflict";
             case 412 -> "Precondition Failed";
@@ -92,22 +82,14 @@ public class HttpResponse {
             case 304 -> "Not Modified";
             case 416 -> "Requested Range Not Satisfiable";
             case 423 -> "Locked";
+            case 426 -> "Upgrade Required";
             case 424 -> "Failed Dependency";
             case 507 -> "Insufficient Storage";
             default -> "";
         };
-
-        // 204 and 304 MUST NOT include a body per RFC 7230
-        if (!isBodyAllowed()) {
-            headers.remove("content-length");
-            headers.remove("transfer-encoding");
-            closeOldBody();
-            this.httpBody = null;
-            this.chunkedEncoding = false;
-        }
     }
 
-    private boolean isBodyAllowed() {
+    boolean isBodyAllowed() {
         return statusCode >= 200 && statusCode != 204 && statusCode != 304;
     }
 
@@ -120,21 +102,29 @@ public class HttpResponse {
     }
 
     public void setHeader(String name, String value) {
-        headers.put(name.toLowerCase(), value);
+        headers.set(name, value);
     }
 
     public void setHeaders(Map<String, String> headers) {
         for (Map.Entry<String, String> entry : headers.entrySet()) {
-            this.headers.put(entry.getKey().toLowerCase(), entry.getValue());
+            this.headers.set(entry.getKey(), entry.getValue());
         }
     }
 
     public String getHeader(String name) {
-        return headers.get(name.toLowerCase());
+        return headers.get(name);
     }
 
+    /**
+     * Returns a read-only view of the response headers keyed by lower-case name.
+     * The view reflects later header changes; lookups are case-insensitive.
+     */
     public Map<String, String> getHeaders() {
-        return new HashMap<>(headers);
+        return headers.asMap();
+    }
+
+    HttpHeaders headers() {
+        return headers;
     }
 
     public String getProtocolVersion() {
@@ -150,7 +140,7 @@ public class HttpResponse {
             setChunkedEncoding(false);
             
             // Ensure Content-Length is set for HTTP/1.0 (unless body is not allowed)
-            if (isBodyAllowed() && !headers.containsKey("content-length")) {
+            if (isBodyAllowed() && !headers.contains("content-length")) {
                 setHeader("Content-Length", String.valueOf(httpBody != null ? httpBody.contentLength() : 0));
             }
         }
@@ -160,6 +150,9 @@ public class HttpResponse {
         if (httpBody instanceof ByteArrayBody bab) {
             return bab.data().clone();
         }
+        if (httpBody instanceof SharedBufferBody shared) {
+            return shared.toByteArray();
+        }
         return new byte[0];
     }
 
@@ -170,6 +163,8 @@ public class HttpResponse {
     public void setBody(HttpBody body) {
         closeOldBody();
         this.streamingHandler = null;
+        this.sseHandler = null;
+        this.webSocketHandler = null;
         this.httpBody = body;
         if (isBodyAllowed() && !chunkedEncoding && httpBody != null) {
             setHeader("Content-Length", String.valueOf(httpBody.contentLength()));
@@ -183,6 +178,8 @@ public class HttpResponse {
     public void setBody(String body, java.nio.charset.Charset charset) {
         closeOldBody();
         this.streamingHandler = null;
+        this.sseHandler = null;
+        this.webSocketHandler = null;
         byte[] bytes = body.getBytes(charset);
         this.httpBody = new ByteArrayBody(bytes);
         if (isBodyAllowed() && !chunkedEncoding) {
@@ -220,6 +217,8 @@ public class HttpResponse {
     public void setBody(byte[] body) {
         closeOldBody();
         this.streamingHandler = null;
+        this.sseHandler = null;
+        this.webSocketHandler = null;
         byte[] bytes = body != null ? body.clone() : new byte[0];
         this.httpBody = new ByteArrayBody(bytes);
         if (isBodyAllowed() && !chunkedEncoding) {
@@ -262,10 +261,13 @@ public class HttpResponse {
 
     public void enableCompressionIfSupported(HttpRequest request, boolean enabled, int minSize) {
         if (!enabled) return;
-        if (streamingHandler != null) return;
+        if (isStreaming()) return;
         if (chunkedEncoding && chunks != null && !chunks.isEmpty()) return;
         if (httpBody == null || httpBody.contentLength() == 0 || httpBody.contentLength() < minSize) return;
+        // A shared body comes from a cache that owns its codings; encoding it here would redo the work per request
         if (!(httpBody instanceof ByteArrayBody)) return;
+        // Already encoded, e.g. a precompressed or cached variant picked by the handler
+        if (getHeader("Content-Encoding") != null) return;
 
         String contentType = getHeader("Content-Type");
         if (contentType != null && !isCompressibleContentType(contentType)) return;
@@ -317,7 +319,11 @@ public class HttpResponse {
         }
     }
 
-    private static boolean isCompressibleContentType(String contentType) {
+    /**
+     * Whether a body of {@code contentType} is worth compressing; media and
+     * archive formats are already compressed.
+     */
+    public static boolean isCompressibleContentType(String contentType) {
         String baseType = contentType.split(";")[0].trim().toLowerCase();
         return !baseType.startsWith("image/")
                 && !baseType.startsWith("video/")
@@ -371,13 +377,53 @@ public class HttpResponse {
 
     public void setStreamingHandler(StreamingHandler streamingHandler) {
         this.streamingHandler = Objects.requireNonNull(streamingHandler, "streamingHandler cannot be null");
+        this.sseHandler = null;
+        this.webSocketHandler = null;
+        closeOldBody();
+        this.httpBody = null;
+        setChunkedEncoding(true);
+    }
+
+    public SseHandler getSseHandler() {
+        return sseHandler;
+    }
+
+    /**
+     * Answers with a {@code text/event-stream} that stays open after the
+     * route handler returns; {@code sseHandler} receives the emitter once
+     * the headers are sent.
+     */
+    public void setSseHandler(SseHandler sseHandler) {
+        this.sseHandler = Objects.requireNonNull(sseHandler, "sseHandler cannot be null");
+        this.streamingHandler = null;
+        this.webSocketHandler = null;
         closeOldBody();
         this.httpBody = null;
+        setHeader("Content-Type", "text/event-stream; charset=UTF-8");
+        setHeader("Cache-Control", "no-cache");
         setChunkedEncoding(true);
     }
 
+    public WebSocketHandler getWebSocketHandler() {
+        return webSocketHandler;
+    }
+
+    /**
+     * Upgrades the connection to WebSocket and hands it to
+     * {@code webSocketHandler}. The server checks the opening handshake
+     * before the response is written; if it is invalid the response
+     * becomes an error and the handler is never called.
+     */
+    public void setWebSocketHandler(WebSocketHandler webSocketHandler) {
+        this.webSocketHandler = Objects.requireNonNull(webSocketHandler, "webSocketHandler cannot be null");
+        this.streamingHandler = null;
+        this.sseHandler = null;
+        closeOldBody();
+        this.httpBody = null;
+    }
+
     public boolean isStreaming() {
-        return streamingHandler != null;
+        return streamingHandler != null || sseHandler != null || webSocketHandler != null;
     }
 
     /**
@@ -447,6 +493,24 @@ public class HttpResponse {
         }
     }
 
+    /**
+     * Joins the chunks added with {@link #addChunk(byte[])}, or returns
+     * {@code null} if the response is not built from chunks.
+     */
+    byte[] joinChunks() {
+        if (!chunkedEncoding || chunks == null || chunks.isEmpty()) {
+            return null;
+        }
+        int totalLength = chunks.stream().mapToInt(chunk -> chunk.length).sum();
+        byte[] joined = new byte[totalLength];
+        int position = 0;
+        for (byte[] chunk : chunks) {
+            System.arraycopy(chunk, 0, joined, position, chunk.length);
+            position += chunk.length;
+        }
+        return joined;
+    }
+
     /**
      * Gets the number of chunks in the response.
      * 
@@ -462,6 +526,38 @@ public class HttpResponse {
      * @return a ByteBuffer containing the full response
      */
     public ByteBuffer toByteBuffer() {
+        return prepareForEncode() ? assembleChunkedResponse() : assembleRegularResponse();
+    }
+
+    /**
+     * Encodes the response for a gathering write. A buffered body of at least
+     * {@code minGatherBytes} is not copied next to the head; it is returned as
+     * a read-only view behind it, i.e. {@code [head, body]}. A
+     * {@link SharedBufferBody} contributes its {@link RefCountedBuffer}
+     * reference, which the write path releases. Anything else is encoded into
+     * a single buffer as by {@link #toByteBuffer()}.
+     */
+    Object toOutboundMessage(int minGatherBytes) {
+        boolean useChunkedEncoding = prepareForEncode();
+        if (!useChunkedEncoding && httpBody instanceof ByteArrayBody bab && bab.data().length >= minGatherBytes) {
+            ByteBuffer head = HttpResponseEncoder.encodeHead(this, 0);
+            head.flip();
+            return new ByteBuffer[] {head, ByteBuffer.wrap(bab.data()).asReadOnlyBuffer()};
+        }
+        if (!useChunkedEncoding && httpBody instanceof SharedBufferBody shared && shared.contentLength() >= minGatherBytes) {
+            ByteBuffer head = HttpResponseEncoder.encodeHead(this, 0);
+            head.flip();
+            return new Object[] {head, shared.detach()};
+        }
+        return useChunkedEncoding ? assembleChunkedResponse() : assembleRegularResponse();
+    }
+
+    /**
+     * Normalizes framing headers for the protocol version and refreshes Date.
+     *
+     * @return whether the body goes out with chunked transfer coding
+     */
+    private boolean prepareForEncode() {
         // HTTP/1.0: combine explicit chunks into a single body
         if (protocolVersion.equalsIgnoreCase("HTTP/1.0") && chunkedEncoding && chunks != null && !chunks.isEmpty()) {
             int totalLength = chunks.stream().mapToInt(chunk -> chunk.length).sum();
@@ -477,7 +573,7 @@ public class HttpResponse {
         // HTTP/1.0 does not support chunked encoding
         if (protocolVersion.equalsIgnoreCase("HTTP/1.0")) {
             this.chunkedEncoding = false;
-            headers.entrySet().removeIf(entry -> entry.getKey().equalsIgnoreCase("transfer-encoding"));
+            headers.remove("transfer-encoding");
         }
 
         // HTTP/1.0 must have Content-Length
@@ -492,15 +588,13 @@ public class HttpResponse {
         if (isBodyAllowed()
                 && !chunkedEncoding
                 && httpBody == null
-                && !headers.containsKey("content-length")) {
+                && !headers.contains("content-length")) {
             setHeader("Content-Length", "0");
         }
 
-        setHeader("Date", DATE_FORMAT.format(Instant.now()));
+        setHeader("Date", HttpDate.now());
 
-        byte[] headersBytes = serializeHeaders();
-        boolean useChunkedEncoding = chunkedEncoding && !protocolVersion.equalsIgnoreCase("HTTP/1.0");
-        return useChunkedEncoding ? assembleChunkedResponse(headersBytes) : assembleRegularResponse(headersBytes);
+        return chunkedEncoding && !protocolVersion.equalsIgnoreCase("HTTP/1.0");
     }
 
     public ByteBuffer toHeadersByteBuffer() {
@@ -514,32 +608,18 @@ public class HttpResponse {
         } else if (chunkedEncoding) {
             setHeader("Transfer-Encoding", "chunked");
             headers.remove("content-length");
-        } else if (isBodyAllowed() && !headers.containsKey("content-length")) {
+        } else if (isBodyAllowed() && !headers.contains("content-length")) {
             setHeader("Content-Length", "0");
         }
-        setHeader("Date", DATE_FORMAT.format(Instant.now()));
-        byte[] headersBytes = serializeHeaders();
-        ByteBuffer buffer = allocateResponseBuffer(headersBytes.length);
-        buffer.put(headersBytes);
+        setHeader("Date", HttpDate.now());
+        ByteBuffer buffer = HttpResponseEncoder.encodeHead(this, 0);
         buffer.flip();
         headersWritten = true;
         return buffer;
     }
 
-    private byte[] serializeHeaders() {
-        StringBuilder sb = new StringBuilder();
-        sb.append(protocolVersion).append(" ").append(statusCode).append(" ").append(statusMessage).append(CRLF);
-        for (Map.Entry<String, String> entry : headers.entrySet()) {
-            String name = CANONICAL_HEADERS.getOrDefault(entry.getKey().toLowerCase(), entry.getKey());
-            sb.append(name).append(": ").append(entry.getValue()).append(CRLF);
-        }
-        sb.append(CRLF);
-        return sb.toString().getBytes(StandardCharsets.UTF_8);
-    }
-
-    private ByteBuffer assembleChunkedResponse(byte[] headersBytes) {
+    private ByteBuffer assembleChunkedResponse() {
         List<byte[]> allChunks = new ArrayList<>();
-        allChunks.add(headersBytes);
 
         if (chunks != null && !chunks.isEmpty()) {
             for (byte[] chunk : chunks) {
@@ -548,8 +628,8 @@ public class HttpResponse {
                 allChunks.add(chunk);
                 allChunks.add(CRLF_BYTES);
             }
-        } else if (httpBody instanceof ByteArrayBody bab && bab.contentLength() > 0) {
-            byte[] bodyBytes = bab.data();
+        } else if (httpBody != null && httpBody.isBuffered() && httpBody.contentLength() > 0) {
+            byte[] bodyBytes = httpBody instanceof SharedBufferBody shared ? shared.toByteArray() : ((ByteArrayBody) httpBody).data();
             for (int i = 0; i < bodyBytes.length; i += chunkSize) {
                 int length = Math.min(chunkSize, bodyBytes.length - i);
                 byte[] chunkData = Arrays.copyOfRange(bodyBytes, i, i + length);
@@ -558,8 +638,8 @@ public class HttpResponse {
                 allChunks.add(chunkData);
                 allChunks.add(CRLF_BYTES);
             }
-        } else if (httpBody instanceof FileChannelBody) {
-            throw new UnsupportedOperationException("Chunked encoding with FileChannelBody must use streaming write, not toByteBuffer()");
+        } else if (httpBody instanceof FileChannelBody || httpBody instanceof MultipartByteRangesBody) {
+            throw new UnsupportedOperationException("Chunked encoding with a file body must use streaming write, not toByteBuffer()");
         }
 
         allChunks.add("0".getBytes(StandardCharsets.UTF_8));
@@ -575,7 +655,7 @@ public class HttpResponse {
         allChunks.add(CRLF_BYTES);
 
         int totalSize = allChunks.stream().mapToInt(b -> b.length).sum();
-        ByteBuffer buffer = allocateResponseBuffer(totalSize);
+        ByteBuffer buffer = HttpResponseEncoder.encodeHead(this, totalSize);
         for (byte[] chunk : allChunks) {
             buffer.put(chunk);
         }
@@ -583,31 +663,19 @@ public class HttpResponse {
         return buffer;
     }
 
-    private ByteBuffer assembleRegularResponse(byte[] headersBytes) {
-        if (httpBody instanceof FileChannelBody) {
-            ByteBuffer buffer = allocateResponseBuffer(headersBytes.length);
-            buffer.put(headersBytes);
-            buffer.flip();
-            return buffer;
-        }
-        int bodyLength = httpBody instanceof ByteArrayBody bab ? bab.data().length : 0;
-        int totalSize = headersBytes.length + bodyLength;
-        ByteBuffer buffer = allocateResponseBuffer(totalSize);
-        buffer.put(headersBytes);
+    private ByteBuffer assembleRegularResponse() {
+        int bodyLength = httpBody instanceof ByteArrayBody || httpBody instanceof SharedBufferBody
+                ? (int) httpBody.contentLength() : 0;
+        ByteBuffer buffer = HttpResponseEncoder.encodeHead(this, bodyLength);
         if (httpBody instanceof ByteArrayBody bab) {
             buffer.put(bab.data());
+        } else if (httpBody instanceof SharedBufferBody shared) {
+            shared.copyTo(buffer);
         }
         buffer.flip();
         return buffer;
     }
 
-    private static ByteBuffer allocateResponseBuffer(int totalSize) {
-        if (totalSize <= BufferPool.MAX_BUFFER_SIZE) {
-            return BufferPool.DEFAULT.acquire(totalSize);
-        }
-        return ByteBuffer.allocate(totalSize);
-    }
-
     /**
      * Creates a response buffer for a single chunk, without the headers.
      * Useful for streaming responses where headers have already been sent.
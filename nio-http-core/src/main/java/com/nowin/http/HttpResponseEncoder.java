@@ -1,9 +1,14 @@
 package com.nowin.http;
 
+import com.nowin.util.BufferPool;
+
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 
 /**
  * Encodes HTTP response objects into outbound transport messages.
@@ -12,9 +17,41 @@ import java.util.Objects;
  * {@link HttpResponse#toByteBuffer()} method remains for source compatibility,
  * but new write paths should depend on this encoder instead of invoking model
  * serialization directly.
+ * <p>
+ * Status lines for the standard codes and the names of well-known headers are
+ * kept pre-encoded, and the {@code Date} value is formatted at most once per
+ * second, so writing a response head is mostly bulk copies into a pooled
+ * buffer.
  */
 public final class HttpResponseEncoder {
 
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Connection-specific fields, which HTTP/2 does not carry (RFC 9113 §8.2.2)
+    private static final Set<String> HTTP2_EXCLUDED_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+    private static final byte[] FIELD_SEPARATOR = {':', ' '};
+
+    /**
+     * Smallest buffered body sent as a separate gathered buffer; below this,
+     * copying it next to the head is cheaper than another iovec.
+     */
+    static final int MIN_GATHER_BODY_BYTES = 1024;
+
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+    private static final byte[][] STATUS_LINES_1_1 = new byte[MAX_STATUS + 1][];
+    private static final byte[][] STATUS_LINES_1_0 = new byte[MAX_STATUS + 1][];
+
+    static {
+        for (int status = MIN_STATUS; status <= MAX_STATUS; status++) {
+            String reason = HttpResponse.reasonPhrase(status);
+            if (!reason.isEmpty()) {
+                STATUS_LINES_1_1[status] = statusLine(HttpTokens.HTTP_1_1, status, reason);
+                STATUS_LINES_1_0[status] = statusLine(HttpTokens.HTTP_1_0, status, reason);
+            }
+        }
+    }
+
     public ByteBuffer encode(HttpResponse response) {
         Objects.requireNonNull(response, "response cannot be null");
         return response.toByteBuffer();
@@ -23,15 +60,21 @@ public final class HttpResponseEncoder {
     /**
      * Encode a response into one or more outbound messages.
      * <p>
-     * Buffered responses produce a single {@link ByteBuffer}. Zero-copy file
-     * responses produce a headers buffer followed by the {@link FileChannelBody}.
+     * Small buffered responses produce a single {@link ByteBuffer}; larger
+     * buffered bodies produce one {@code ByteBuffer[]} of {@code [headers, body]}
+     * written with a single gathering write, without copying the body. Zero-copy
+     * file responses produce a headers buffer followed by the {@link FileChannelBody},
+     * and multi-range file responses a headers buffer followed by the
+     * {@link MultipartByteRangesBody#parts() parts} of the body.
      */
     public List<Object> encodeForWrite(HttpResponse response) {
         Objects.requireNonNull(response, "response cannot be null");
         List<Object> messages = new ArrayList<>(2);
-        messages.add(response.toByteBuffer());
+        messages.add(response.toOutboundMessage(MIN_GATHER_BODY_BYTES));
         if (response.getHttpBody() instanceof FileChannelBody body) {
             messages.add(body);
+        } else if (response.getHttpBody() instanceof MultipartByteRangesBody body) {
+            messages.addAll(body.parts());
         }
         return messages;
     }
@@ -46,4 +89,154 @@ public final class HttpResponseEncoder {
         Objects.requireNonNull(response, "response cannot be null");
         return response.createFinalChunkBuffer();
     }
+
+    /**
+     * Lists the header fields of {@code response} for an HTTP/2 HEADERS
+     * frame: {@code :status} first, then every header under its lower-case
+     * name, leaving out the connection-specific ones HTTP/2 forbids. A
+     * buffered response whose length is not set yet gets its
+     * {@code content-length}; a streamed one goes without.
+     */
+    public List<Map.Entry<String, String>> encodeHttp2Head(HttpResponse response) {
+        Objects.requireNonNull(response, "response cannot be null");
+        if (response.isBodyAllowed() && !response.isStreaming() && response.getHeader("Content-Length") == null) {
+            byte[] chunks = response.joinChunks();
+            long length = chunks != null ? chunks.length
+                    : response.getHttpBody() != null ? response.getHttpBody().contentLength() : 0;
+            response.setHeader("Content-Length", String.valueOf(length));
+        }
+        response.setHeader("Date", HttpDate.now());
+        HttpHeaders headers = response.headers();
+        List<Map.Entry<String, String>> fields = new ArrayList<>(headers.size() + 1);
+        fields.add(Map.entry(":status", String.valueOf(response.getStatusCode())));
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            if (!HTTP2_EXCLUDED_HEADERS.contains(name)) {
+                fields.add(Map.entry(name, String.valueOf(headers.value(i))));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Returns the body of a buffered {@code response} as the payload of its
+     * HTTP/2 DATA frames: a {@link ByteBuffer}, a
+     * {@link com.nowin.util.RefCountedBuffer} whose reference passes to the
+     * caller, the {@link FileChannelBody} or {@link MultipartByteRangesBody}
+     * itself, or {@code null} if there is no body.
+     */
+    public Object encodeHttp2Body(HttpResponse response) {
+        Objects.requireNonNull(response, "response cannot be null");
+        byte[] chunks = response.joinChunks();
+        if (chunks != null) {
+            return chunks.length > 0 ? ByteBuffer.wrap(chunks) : null;
+        }
+        HttpBody body = response.getHttpBody();
+        if (body == null || body.contentLength() == 0) {
+            return null;
+        }
+        if (body instanceof ByteArrayBody bab) {
+            return ByteBuffer.wrap(bab.data()).asReadOnlyBuffer();
+        }
+        if (body instanceof SharedBufferBody shared) {
+            return shared.detach();
+        }
+        return body;
+    }
+
+    /**
+     * Writes the status line and header section of {@code response} into a
+     * buffer with room for {@code bodyLength} further bytes, positioned just
+     * after the blank line that ends the header section.
+     */
+    static ByteBuffer encodeHead(HttpResponse response, int bodyLength) {
+        HttpHeaders headers = response.headers();
+        byte[] statusLine = statusLine(response);
+        int headLength = statusLine.length + CRLF.length;
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            byte[] prefix = HttpTokens.fieldPrefix(name);
+            headLength += prefix != null ? prefix.length : encodedLength(name) + FIELD_SEPARATOR.length;
+            headLength += valueLength(headers.value(i)) + CRLF.length;
+        }
+
+        ByteBuffer buffer = allocate(headLength + bodyLength);
+        buffer.put(statusLine);
+        for (int i = 0; i < headers.size(); i++) {
+            String name = headers.name(i);
+            byte[] prefix = HttpTokens.fieldPrefix(name);
+            if (prefix != null) {
+                buffer.put(prefix);
+            } else {
+                put(buffer, name);
+                buffer.put(FIELD_SEPARATOR);
+            }
+            putValue(buffer, headers.value(i));
+            buffer.put(CRLF);
+        }
+        buffer.put(CRLF);
+        return buffer;
+    }
+
+    private static byte[] statusLine(HttpResponse response) {
+        int status = response.getStatusCode();
+        String version = response.getProtocolVersion();
+        String reason = response.getStatusMessage();
+        if (status >= MIN_STATUS && status <= MAX_STATUS) {
+            byte[][] lines = HttpTokens.HTTP_1_1.equals(version) ? STATUS_LINES_1_1
+                    : HttpTokens.HTTP_1_0.equals(version) ? STATUS_LINES_1_0
+                    : null;
+            if (lines != null && lines[status] != null && HttpResponse.reasonPhrase(status).equals(reason)) {
+                return lines[status];
+            }
+        }
+        return statusLine(version, status, reason);
+    }
+
+    private static byte[] statusLine(String version, int status, String reason) {
+        return (version + " " + status + " " + reason + "\r\n").getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int valueLength(String value) {
+        byte[] date = HttpDate.bytesOf(value);
+        return date != null ? date.length : encodedLength(String.valueOf(value));
+    }
+
+    private static void putValue(ByteBuffer buffer, String value) {
+        byte[] date = HttpDate.bytesOf(value);
+        if (date != null) {
+            buffer.put(date);
+        } else {
+            put(buffer, String.valueOf(value));
+        }
+    }
+
+    private static int encodedLength(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return text.length();
+    }
+
+    private static void put(ByteBuffer buffer, String text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (text.charAt(i) >= 0x80) {
+                buffer.put(text.getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        for (int i = 0; i < length; i++) {
+            buffer.put((byte) text.charAt(i));
+        }
+    }
+
+    private static ByteBuffer allocate(int size) {
+        if (size <= BufferPool.MAX_BUFFER_SIZE) {
+            return BufferPool.DEFAULT.acquire(size);
+        }
+        return ByteBuffer.allocate(size);
+    }
 }
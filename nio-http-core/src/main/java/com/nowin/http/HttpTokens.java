@@ -0,0 +1,237 @@
+package com.nowin.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Byte-level lookup tables and interned constants shared by the HTTP/1.x codec.
+ * <p>
+ * The request parser validates and interns tokens straight from the raw header
+ * bytes, so the common methods, protocol versions and header names resolve to
+ * the same {@link String} instances on every request instead of being decoded
+ * and lower-cased each time.
+ */
+final class HttpTokens {
+
+    static final String HTTP_1_0 = "HTTP/1.0";
+    static final String HTTP_1_1 = "HTTP/1.1";
+
+    /**
+     * RFC 7230 tchar:
+     * {@code %x21 / %x23-27 / %x2A-2B / %x2D-2E / %x30-39 / %x41-5A / %x5E-7A / %x7C / %x7E}
+     */
+    private static final boolean[] TOKEN = new boolean[256];
+
+    /**
+     * Bytes permitted in a field value: anything except control characters
+     * (other than horizontal tab) and DEL.
+     */
+    private static final boolean[] FIELD_VALUE = new boolean[256];
+
+    private static final String[] METHODS = {
+            "GET", "POST", "PUT", "DELETE", "HEAD", "OPTIONS", "TRACE", "PATCH", "CONNECT",
+            "PROPFIND", "PROPPATCH", "MKCOL", "COPY", "MOVE", "LOCK", "UNLOCK"
+    };
+
+    /**
+     * Well-known header names in their canonical wire form. Lookups are keyed by
+     * the lower-case form, which is also the key exposed through header maps.
+     */
+    private static final String[] CANONICAL_HEADER_NAMES = {
+            "Host", "Connection", "User-Agent", "Accept", "Accept-Encoding", "Accept-Language",
+            "Accept-Charset", "Accept-Ranges", "Cache-Control", "Pragma", "Cookie", "Set-Cookie",
+            "Authorization", "Proxy-Authorization", "WWW-Authenticate", "Content-Type", "Content-Length",
+            "Content-Encoding", "Content-Range", "Content-Disposition", "Content-Language", "Transfer-Encoding",
+            "Trailer", "TE", "Upgrade", "Expect", "Range", "If-Range", "If-Match", "If-None-Match",
+            "If-Modified-Since", "If-Unmodified-Since", "ETag", "Last-Modified", "Expires", "Age", "Vary",
+            "Allow", "Location", "Server", "Date", "Origin", "Referer", "Keep-Alive", "Via",
+            "X-Forwarded-For", "X-Forwarded-Proto", "X-Forwarded-Host", "X-Real-IP", "X-Requested-With",
+            "DNT", "Sec-Fetch-Site", "Sec-Fetch-Mode", "Sec-Fetch-Dest", "Sec-Fetch-User",
+            "Upgrade-Insecure-Requests", "Last-Event-ID", "Sec-WebSocket-Key", "Sec-WebSocket-Accept",
+            "Sec-WebSocket-Version", "Sec-WebSocket-Extensions", "Sec-WebSocket-Protocol", "HTTP2-Settings",
+            "Access-Control-Allow-Origin", "Retry-After", "Strict-Transport-Security",
+            "DAV", "Depth", "Destination", "Overwrite", "Timeout", "Lock-Token", "If"
+    };
+
+    private static final int NAME_TABLE_MASK = 255;
+    private static final String[] NAME_TABLE = new String[NAME_TABLE_MASK + 1];
+    private static final String[] CANONICAL_TABLE = new String[NAME_TABLE_MASK + 1];
+    private static final byte[][] NAME_TABLE_BYTES = new byte[NAME_TABLE_MASK + 1][];
+    // Pre-encoded "Canonical-Name: " prefixes used by the response encoder.
+    private static final byte[][] FIELD_PREFIX_TABLE = new byte[NAME_TABLE_MASK + 1][];
+
+    static {
+        for (int c = '0'; c <= '9'; c++) TOKEN[c] = true;
+        for (int c = 'A'; c <= 'Z'; c++) TOKEN[c] = true;
+        for (int c = 'a'; c <= 'z'; c++) TOKEN[c] = true;
+        for (char c : "!#$%&'*+-.^_`|~".toCharArray()) TOKEN[c] = true;
+
+        for (int c = 0; c < 256; c++) {
+            FIELD_VALUE[c] = (c >= 32 || c == '\t') && c != 127;
+        }
+
+        for (String canonical : CANONICAL_HEADER_NAMES) {
+            String name = canonical.toLowerCase(Locale.ROOT);
+            byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+            int slot = hashLowerCase(bytes, 0, bytes.length) & NAME_TABLE_MASK;
+            while (NAME_TABLE[slot] != null) {
+                slot = (slot + 1) & NAME_TABLE_MASK;
+            }
+            NAME_TABLE[slot] = name;
+            CANONICAL_TABLE[slot] = canonical;
+            NAME_TABLE_BYTES[slot] = bytes;
+            FIELD_PREFIX_TABLE[slot] = (canonical + ": ").getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private HttpTokens() {
+    }
+
+    static boolean isToken(byte b) {
+        return TOKEN[b & 0xFF];
+    }
+
+    static boolean isFieldValue(byte b) {
+        return FIELD_VALUE[b & 0xFF];
+    }
+
+    /**
+     * Returns the shared instance for a well-known method, or a new string
+     * for extension methods. Method names are case-sensitive.
+     */
+    static String method(byte[] bytes, int start, int end) {
+        int length = end - start;
+        for (String method : METHODS) {
+            if (method.length() == length && regionMatches(bytes, start, method)) {
+                return method;
+            }
+        }
+        return new String(bytes, start, length, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the shared instance for {@code HTTP/1.0} and {@code HTTP/1.1},
+     * or a new string for any other version. The caller has already checked
+     * the {@code HTTP/d.d} shape.
+     */
+    static String version(byte[] bytes, int start) {
+        if (bytes[start + 5] == '1' && bytes[start + 7] == '1') {
+            return HTTP_1_1;
+        }
+        if (bytes[start + 5] == '1' && bytes[start + 7] == '0') {
+            return HTTP_1_0;
+        }
+        return new String(bytes, start, 8, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Lower-cases a validated header name in place and returns its interned
+     * form when it is one of the well-known names.
+     */
+    static String headerName(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+            if (b >= 'A' && b <= 'Z') {
+                bytes[i] = (byte) (b + ('a' - 'A'));
+            }
+        }
+        int slot = hashLowerCase(bytes, start, end) & NAME_TABLE_MASK;
+        String candidate;
+        while ((candidate = NAME_TABLE[slot]) != null) {
+            byte[] candidateBytes = NAME_TABLE_BYTES[slot];
+            if (candidateBytes.length == end - start
+                    && Arrays.equals(candidateBytes, 0, candidateBytes.length, bytes, start, end)) {
+                return candidate;
+            }
+            slot = (slot + 1) & NAME_TABLE_MASK;
+        }
+        return new String(bytes, start, end - start, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the lower-case form of {@code name}, interned when it is one of
+     * the well-known names. Only unknown names containing upper-case letters
+     * allocate.
+     */
+    static String headerName(String name) {
+        int slot = findSlot(name);
+        return slot >= 0 ? NAME_TABLE[slot] : name.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the canonical wire form of a header name, e.g. {@code ETag} for
+     * {@code etag}. Names outside the well-known set are returned unchanged.
+     */
+    static String canonicalHeaderName(String name) {
+        int slot = findSlot(name);
+        return slot >= 0 ? CANONICAL_TABLE[slot] : name;
+    }
+
+    /**
+     * Returns the pre-encoded {@code "Canonical-Name: "} prefix of a well-known
+     * header, or {@code null} for other names. The array must not be modified.
+     */
+    static byte[] fieldPrefix(String name) {
+        int slot = findSlot(name);
+        return slot >= 0 ? FIELD_PREFIX_TABLE[slot] : null;
+    }
+
+    /**
+     * ASCII case-insensitive hash of a header name; equal for any two names
+     * that differ only in case.
+     */
+    static int hashIgnoreCase(String name) {
+        int h = 0;
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            h = 31 * h + c;
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static int findSlot(String name) {
+        int slot = hashIgnoreCase(name) & NAME_TABLE_MASK;
+        String candidate;
+        while ((candidate = NAME_TABLE[slot]) != null) {
+            if (candidate == name || candidate.equalsIgnoreCase(name)) {
+                return slot;
+            }
+            slot = (slot + 1) & NAME_TABLE_MASK;
+        }
+        return -1;
+    }
+
+    /**
+     * Decodes a header or URI byte range, taking the Latin-1 fast path when
+     * the range is pure ASCII.
+     */
+    static String decode(byte[] bytes, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < 0) {
+                return new String(bytes, start, end - start, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(bytes, start, end - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private static boolean regionMatches(byte[] bytes, int start, String ascii) {
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[start + i] != ascii.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int hashLowerCase(byte[] bytes, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) {
+            h = 31 * h + bytes[i];
+        }
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,101 @@
+package com.nowin.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@code multipart/byteranges} body over ranges of one file, as sent in a
+ * 206 response to a multi-range request. Part headers are small buffers and
+ * each range is a {@link FileChannelBody#region region} of a single file
+ * channel, so the response is written with the same zero-copy transfer as a
+ * plain file and takes constant memory whatever the sizes involved.
+ * <p>
+ * The write path never sees this type: the response encoders put its
+ * {@link #parts() parts} on the channel one after another. Like a
+ * {@link FileChannelBody}, it is meant to be written once.
+ */
+public final class MultipartByteRangesBody implements HttpBody {
+
+    // Part header buffers and file regions in wire order, ending with the close delimiter
+    private final List<Object> parts;
+    private final long contentLength;
+
+    private MultipartByteRangesBody(List<Object> parts, long contentLength) {
+        this.parts = parts;
+        this.contentLength = contentLength;
+    }
+
+    /**
+     * Opens {@code path} and lays out one part per range.
+     *
+     * @param contentType the type of the file, repeated in every part
+     * @param fileSize    the complete length reported in {@code Content-Range}
+     * @param ranges      first and last byte positions, inclusive and already
+     *                    validated against {@code fileSize}
+     */
+    public static MultipartByteRangesBody open(Path path, String contentType, long fileSize, String boundary,
+                                               List<long[]> ranges) throws IOException {
+        List<Object> parts = new ArrayList<>(ranges.size() * 2 + 1);
+        long contentLength = 0;
+        FileChannelBody file = FileChannelBody.open(path, 0, fileSize);
+        try {
+            for (long[] range : ranges) {
+                byte[] header = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                        + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + fileSize + "\r\n\r\n")
+                        .getBytes(StandardCharsets.US_ASCII);
+                long length = range[1] - range[0] + 1;
+                parts.add(ByteBuffer.wrap(header).asReadOnlyBuffer());
+                parts.add(file.region(range[0], length));
+                contentLength += header.length + length;
+            }
+        } finally {
+            // The regions keep the file channel open until they are closed
+            file.close();
+        }
+        byte[] closeDelimiter = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        parts.add(ByteBuffer.wrap(closeDelimiter).asReadOnlyBuffer());
+        contentLength += closeDelimiter.length;
+        return new MultipartByteRangesBody(Collections.unmodifiableList(parts), contentLength);
+    }
+
+    /**
+     * The body as outbound messages in wire order: {@link ByteBuffer}s with
+     * part headers and {@link FileChannelBody} regions with the ranges. The
+     * write path closes each region once it is sent.
+     */
+    public List<Object> parts() {
+        return parts;
+    }
+
+    @Override
+    public long contentLength() {
+        return contentLength;
+    }
+
+    @Override
+    public boolean isBuffered() {
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Object part : parts) {
+            if (part instanceof FileChannelBody region) {
+                try {
+                    region.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.nowin.http;
+
+import com.nowin.util.RefCountedBuffer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Buffered HTTP body backed by a {@link RefCountedBuffer}, typically content
+ * cached once in direct memory and served to many connections.
+ * <p>
+ * The body takes its own reference, so the caller keeps (and eventually
+ * releases) the one it passed in. Encoding a large body hands that reference
+ * to the channel, which releases it once the bytes are written; otherwise
+ * {@link #close()} releases it.
+ */
+public class SharedBufferBody implements HttpBody {
+
+    private RefCountedBuffer content;
+    private final long length;
+
+    public SharedBufferBody(RefCountedBuffer content) {
+        this.content = content.retainedDuplicate();
+        this.length = this.content.remaining();
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public boolean isBuffered() {
+        return true;
+    }
+
+    /**
+     * Copies the content into {@code dst} without consuming it.
+     */
+    void copyTo(ByteBuffer dst) {
+        dst.put(content().nioBuffer().duplicate());
+    }
+
+    byte[] toByteArray() {
+        byte[] bytes = new byte[(int) length];
+        content().nioBuffer().duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Transfers this body's reference to the caller, who must release it.
+     */
+    RefCountedBuffer detach() {
+        RefCountedBuffer detached = content();
+        content = null;
+        return detached;
+    }
+
+    private RefCountedBuffer content() {
+        if (content == null) {
+            throw new IllegalStateException("body content was already written or closed");
+        }
+        return content;
+    }
+
+    @Override
+    public void close() {
+        if (content != null) {
+            content.release();
+            content = null;
+        }
+    }
+}
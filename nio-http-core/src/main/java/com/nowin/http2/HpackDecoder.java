@@ -0,0 +1,179 @@
+package com.nowin.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+/**
+ * Decodes HPACK header blocks (RFC 7541) for one direction of a connection.
+ * <p>
+ * Every error is a {@link Http2Error#COMPRESSION_ERROR} connection error:
+ * once a block fails to decode, the dynamic table is out of step with the
+ * peer's and the connection cannot continue.
+ */
+public final class HpackDecoder {
+
+    private final HpackDynamicTable dynamicTable;
+    // Largest table size the peer may switch to, i.e. our SETTINGS_HEADER_TABLE_SIZE
+    private final int maxTableSizeLimit;
+    private final long maxHeaderListSize;
+
+    public HpackDecoder() {
+        this(Http2Settings.DEFAULT_HEADER_TABLE_SIZE, Http2Settings.UNLIMITED);
+    }
+
+    /**
+     * @param maxTableSize      the header table size announced to the peer
+     * @param maxHeaderListSize the largest header list delivered, as counted
+     *                          by RFC 9113 §6.5.2, or {@link Http2Settings#UNLIMITED}
+     */
+    public HpackDecoder(int maxTableSize, long maxHeaderListSize) {
+        this.dynamicTable = new HpackDynamicTable(maxTableSize);
+        this.maxTableSizeLimit = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * Decodes a complete header block, handing each field to {@code sink} in
+     * order. A block whose fields exceed the header list limit is still
+     * decoded to the end, so the dynamic table stays in step, but the fields
+     * past the limit are dropped.
+     *
+     * @return whether the whole header list was delivered
+     */
+    public boolean decode(ByteBuffer block, BiConsumer<String, String> sink) throws Http2Exception {
+        long listSize = 0;
+        boolean fieldSeen = false;
+        while (block.hasRemaining()) {
+            int b = block.get(block.position()) & 0xFF;
+            String name;
+            String value;
+            if ((b & 0x80) != 0) {
+                // Indexed header field
+                int index = decodeInteger(block, 7);
+                name = name(index);
+                value = value(index);
+            } else if ((b & 0x40) != 0) {
+                // Literal with incremental indexing
+                int index = decodeInteger(block, 6);
+                byte[] nameOctets = index == 0 ? readString(block) : null;
+                name = nameOctets != null ? decodeOctets(nameOctets) : name(index);
+                byte[] valueOctets = readString(block);
+                value = decodeOctets(valueOctets);
+                int octets = (nameOctets != null ? nameOctets.length : utf8Length(name)) + valueOctets.length;
+                dynamicTable.add(name, value, octets);
+            } else if ((b & 0x20) != 0) {
+                // Dynamic table size update, only allowed before the first field
+                if (fieldSeen) {
+                    throw compressionError("dynamic table size update after a header field");
+                }
+                int size = decodeInteger(block, 5);
+                if (size > maxTableSizeLimit) {
+                    throw compressionError("dynamic table size " + size + " exceeds " + maxTableSizeLimit);
+                }
+                dynamicTable.setMaxSize(size);
+                continue;
+            } else {
+                // Literal without indexing (0000) or never indexed (0001)
+                int index = decodeInteger(block, 4);
+                name = index == 0 ? decodeOctets(readString(block)) : name(index);
+                value = decodeOctets(readString(block));
+            }
+            fieldSeen = true;
+            listSize += name.length() + value.length() + HpackDynamicTable.ENTRY_OVERHEAD;
+            if (maxHeaderListSize == Http2Settings.UNLIMITED || listSize <= maxHeaderListSize) {
+                sink.accept(name, value);
+            }
+        }
+        return maxHeaderListSize == Http2Settings.UNLIMITED || listSize <= maxHeaderListSize;
+    }
+
+    /**
+     * Decodes an integer with an {@code prefixBits}-bit prefix (RFC 7541 §5.1).
+     */
+    static int decodeInteger(ByteBuffer block, int prefixBits) throws Http2Exception {
+        int mask = (1 << prefixBits) - 1;
+        int value = block.get() & mask;
+        if (value < mask) {
+            return value;
+        }
+        int shift = 0;
+        while (true) {
+            if (!block.hasRemaining()) {
+                throw compressionError("truncated integer");
+            }
+            int b = block.get() & 0xFF;
+            if (shift > 28 || (shift == 28 && (b & 0x7F) > 7)) {
+                throw compressionError("integer overflow");
+            }
+            value += (b & 0x7F) << shift;
+            if (value < 0) {
+                throw compressionError("integer overflow");
+            }
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+            shift += 7;
+        }
+    }
+
+    /**
+     * Reads a string literal (RFC 7541 §5.2) and returns its octets, Huffman
+     * decoded if need be.
+     */
+    private static byte[] readString(ByteBuffer block) throws Http2Exception {
+        if (!block.hasRemaining()) {
+            throw compressionError("truncated string");
+        }
+        boolean huffman = (block.get(block.position()) & 0x80) != 0;
+        int length = decodeInteger(block, 7);
+        if (length > block.remaining()) {
+            throw compressionError("string length " + length + " exceeds the block");
+        }
+        byte[] octets = new byte[length];
+        block.get(octets);
+        return huffman ? HpackHuffman.decode(octets, 0, length) : octets;
+    }
+
+    private static String decodeOctets(byte[] octets) {
+        for (byte b : octets) {
+            if (b < 0) {
+                return new String(octets, StandardCharsets.UTF_8);
+            }
+        }
+        return new String(octets, StandardCharsets.ISO_8859_1);
+    }
+
+    private static int utf8Length(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return text.getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+        return text.length();
+    }
+
+    private String name(int index) throws Http2Exception {
+        checkIndex(index);
+        return index <= HpackStaticTable.LENGTH
+                ? HpackStaticTable.name(index)
+                : dynamicTable.name(index - HpackStaticTable.LENGTH);
+    }
+
+    private String value(int index) throws Http2Exception {
+        checkIndex(index);
+        return index <= HpackStaticTable.LENGTH
+                ? HpackStaticTable.value(index)
+                : dynamicTable.value(index - HpackStaticTable.LENGTH);
+    }
+
+    private void checkIndex(int index) throws Http2Exception {
+        if (index == 0 || index > HpackStaticTable.LENGTH + dynamicTable.length()) {
+            throw compressionError("invalid header index " + index);
+        }
+    }
+
+    private static Http2Exception compressionError(String message) {
+        return Http2Exception.connectionError(Http2Error.COMPRESSION_ERROR, message);
+    }
+}
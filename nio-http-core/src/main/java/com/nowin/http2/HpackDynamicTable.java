@@ -0,0 +1,140 @@
+package com.nowin.http2;
+
+/**
+ * The HPACK dynamic table (RFC 7541 §2.3.2, §4): a FIFO of header fields
+ * bounded by the octet size of its entries, newest entry at index 1.
+ * <p>
+ * Entries live in a ring buffer; the size of each one is the octet length
+ * it had on the wire plus 32, so both sides of a connection agree on what
+ * gets evicted whatever the strings decode to.
+ */
+final class HpackDynamicTable {
+
+    static final int ENTRY_OVERHEAD = 32;
+
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int[] sizes = new int[16];
+    // Ring buffer slot of the newest entry
+    private int head;
+    private int length;
+    private int size;
+    private int maxSize;
+
+    HpackDynamicTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    int length() {
+        return length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int maxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @param index 1 for the newest entry
+     */
+    String name(int index) {
+        return names[slot(index)];
+    }
+
+    String value(int index) {
+        return values[slot(index)];
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        evict(0);
+    }
+
+    /**
+     * Inserts a field whose name and value took {@code octets} bytes. A
+     * field larger than the whole table empties it and is not stored.
+     */
+    void add(String name, String value, int octets) {
+        int entrySize = octets + ENTRY_OVERHEAD;
+        if (entrySize > maxSize) {
+            evict(maxSize);
+            return;
+        }
+        evict(entrySize);
+        if (length == names.length) {
+            grow();
+        }
+        head = (head + 1) % names.length;
+        names[head] = name;
+        values[head] = value;
+        sizes[head] = entrySize;
+        length++;
+        size += entrySize;
+    }
+
+    /**
+     * @return the index of the newest entry holding exactly this field, or -1
+     */
+    int indexOf(String name, String value) {
+        for (int i = 1; i <= length; i++) {
+            int slot = slot(i);
+            if (names[slot].equals(name) && values[slot].equals(value)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the index of the newest entry with this name, or -1
+     */
+    int indexOfName(String name) {
+        for (int i = 1; i <= length; i++) {
+            if (names[slot(i)].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int slot(int index) {
+        if (index < 1 || index > length) {
+            throw new IndexOutOfBoundsException("dynamic table index " + index + " of " + length);
+        }
+        return Math.floorMod(head - index + 1, names.length);
+    }
+
+    /**
+     * Drops the oldest entries until {@code incoming} more octets fit.
+     */
+    private void evict(int incoming) {
+        while (length > 0 && size + incoming > maxSize) {
+            int oldest = slot(length);
+            size -= sizes[oldest];
+            names[oldest] = null;
+            values[oldest] = null;
+            length--;
+        }
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        String[] grownNames = new String[capacity];
+        String[] grownValues = new String[capacity];
+        int[] grownSizes = new int[capacity];
+        // Oldest entry first, so the newest lands in slot length - 1
+        for (int i = length, j = 0; i >= 1; i--, j++) {
+            int slot = slot(i);
+            grownNames[j] = names[slot];
+            grownValues[j] = values[slot];
+            grownSizes[j] = sizes[slot];
+        }
+        names = grownNames;
+        values = grownValues;
+        sizes = grownSizes;
+        head = length - 1;
+    }
+}
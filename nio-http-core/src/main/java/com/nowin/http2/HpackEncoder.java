@@ -0,0 +1,147 @@
+package com.nowin.http2;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Encodes HPACK header blocks (RFC 7541) for one direction of a connection.
+ * <p>
+ * Fields found in the static or dynamic table are sent as an index. Others
+ * are added to the dynamic table, except fields whose values rarely repeat,
+ * which are sent without indexing, and credentials, which are marked never
+ * indexed so intermediaries do not index them either. Strings are Huffman
+ * coded whenever that makes them shorter.
+ */
+public final class HpackEncoder {
+
+    private static final Set<String> NEVER_INDEXED = Set.of("authorization", "cookie", "proxy-authorization", "set-cookie");
+    private static final Set<String> NOT_INDEXED = Set.of("content-length", "content-range", "etag", "last-modified");
+
+    private final HpackDynamicTable dynamicTable;
+    // Smallest and latest size set since the last block; both are signalled (RFC 7541 §4.2)
+    private int pendingMinTableSize = -1;
+    private int pendingTableSize = -1;
+    private byte[] out = new byte[256];
+    private int size;
+
+    public HpackEncoder() {
+        this(Http2Settings.DEFAULT_HEADER_TABLE_SIZE);
+    }
+
+    public HpackEncoder(int maxTableSize) {
+        this.dynamicTable = new HpackDynamicTable(maxTableSize);
+    }
+
+    /**
+     * Resizes the dynamic table, e.g. to honour a smaller
+     * {@code SETTINGS_HEADER_TABLE_SIZE} from the peer. The change is
+     * announced at the start of the next block.
+     */
+    public void setMaxTableSize(int maxTableSize) {
+        if (maxTableSize == dynamicTable.maxSize() && pendingTableSize < 0) {
+            return;
+        }
+        pendingMinTableSize = pendingMinTableSize < 0 ? maxTableSize : Math.min(pendingMinTableSize, maxTableSize);
+        pendingTableSize = maxTableSize;
+        dynamicTable.setMaxSize(maxTableSize);
+    }
+
+    public int getMaxTableSize() {
+        return dynamicTable.maxSize();
+    }
+
+    /**
+     * Encodes {@code fields} in order as one header block. Names must
+     * already be lower case.
+     */
+    public ByteBuffer encode(List<Map.Entry<String, String>> fields) {
+        size = 0;
+        if (pendingTableSize >= 0) {
+            if (pendingMinTableSize < pendingTableSize) {
+                encodeInteger(0x20, 5, pendingMinTableSize);
+            }
+            encodeInteger(0x20, 5, pendingTableSize);
+            pendingMinTableSize = -1;
+            pendingTableSize = -1;
+        }
+        for (Map.Entry<String, String> field : fields) {
+            encodeField(field.getKey(), field.getValue() != null ? field.getValue() : "");
+        }
+        return ByteBuffer.wrap(Arrays.copyOf(out, size));
+    }
+
+    private void encodeField(String name, String value) {
+        int index = HpackStaticTable.indexOf(name, value);
+        if (index < 0) {
+            int dynamicIndex = dynamicTable.indexOf(name, value);
+            index = dynamicIndex > 0 ? HpackStaticTable.LENGTH + dynamicIndex : -1;
+        }
+        if (index > 0) {
+            encodeInteger(0x80, 7, index);
+            return;
+        }
+        int nameIndex = HpackStaticTable.indexOfName(name);
+        if (nameIndex < 0) {
+            int dynamicIndex = dynamicTable.indexOfName(name);
+            nameIndex = dynamicIndex > 0 ? HpackStaticTable.LENGTH + dynamicIndex : 0;
+        }
+        byte[] nameOctets = name.getBytes(StandardCharsets.UTF_8);
+        byte[] valueOctets = value.getBytes(StandardCharsets.UTF_8);
+        if (NEVER_INDEXED.contains(name)) {
+            encodeInteger(0x10, 4, nameIndex);
+        } else if (NOT_INDEXED.contains(name)) {
+            encodeInteger(0x00, 4, nameIndex);
+        } else {
+            encodeInteger(0x40, 6, nameIndex);
+            dynamicTable.add(name, value, nameOctets.length + valueOctets.length);
+        }
+        if (nameIndex == 0) {
+            encodeString(nameOctets);
+        }
+        encodeString(valueOctets);
+    }
+
+    /**
+     * Encodes {@code value} with an {@code prefixBits}-bit prefix after the
+     * pattern bits in {@code first} (RFC 7541 §5.1).
+     */
+    private void encodeInteger(int first, int prefixBits, int value) {
+        ensureCapacity(6);
+        int max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out[size++] = (byte) (first | value);
+            return;
+        }
+        out[size++] = (byte) (first | max);
+        value -= max;
+        while (value >= 0x80) {
+            out[size++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[size++] = (byte) value;
+    }
+
+    private void encodeString(byte[] octets) {
+        int huffmanLength = HpackHuffman.encodedLength(octets);
+        if (huffmanLength < octets.length) {
+            encodeInteger(0x80, 7, huffmanLength);
+            ensureCapacity(huffmanLength);
+            size = HpackHuffman.encode(octets, out, size);
+        } else {
+            encodeInteger(0x00, 7, octets.length);
+            ensureCapacity(octets.length);
+            System.arraycopy(octets, 0, out, size, octets.length);
+            size += octets.length;
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > out.length) {
+            out = Arrays.copyOf(out, Math.max(out.length * 2, size + extra));
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.nowin.http2;
+
+import java.util.Arrays;
+
+/**
+ * The static Huffman code of HPACK (RFC 7541 Appendix B).
+ * <p>
+ * The code is canonical: codes of the same length are consecutive in symbol
+ * order, and each length continues from the last code of the previous one.
+ * Only the code length of each symbol is listed here; the codes and the
+ * decoding trie are derived from them.
+ */
+final class HpackHuffman {
+
+    private static final int EOS = 256;
+
+    // Symbols of each code length, in symbol order
+    private static final int[] CODE_LENGTHS = {5, 6, 7, 8, 10, 11, 12, 13, 14, 15, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 30};
+    private static final int[][] SYMBOLS = {
+            {'0', '1', '2', 'a', 'c', 'e', 'i', 'o', 's', 't'},
+            {' ', '%', '-', '.', '/', '3', '4', '5', '6', '7', '8', '9', '=', 'A', '_', 'b', 'd', 'f', 'g', 'h', 'l', 'm', 'n',
+                    'p', 'r', 'u'},
+            {':', 'B', 'C', 'D', 'E', 'F', 'G', 'H', 'I', 'J', 'K', 'L', 'M', 'N', 'O', 'P', 'Q', 'R', 'S', 'T', 'U', 'V', 'W',
+                    'Y', 'j', 'k', 'q', 'v', 'w', 'x', 'y', 'z'},
+            {'&', '*', ',', ';', 'X', 'Z'},
+            {'!', '"', '(', ')', '?'},
+            {'\'', '+', '|'},
+            {'#', '>'},
+            {0, '$', '@', '[', ']', '~'},
+            {'^', '}'},
+            {'<', '`', '{'},
+            {'\\', 195, 208},
+            {128, 130, 131, 162, 184, 194, 224, 226},
+            {153, 161, 167, 172, 176, 177, 179, 209, 216, 217, 227, 229, 230},
+            {129, 132, 133, 134, 136, 146, 154, 156, 160, 163, 164, 169, 170, 173, 178, 181, 185, 186, 187, 189, 190, 196,
+                    198, 228, 232, 233},
+            {1, 135, 137, 138, 139, 140, 141, 143, 147, 149, 150, 151, 152, 155, 157, 158, 165, 166, 168, 174, 175, 180, 182,
+                    183, 188, 191, 197, 231, 239},
+            {9, 142, 144, 145, 148, 159, 171, 206, 215, 225, 236, 237},
+            {199, 207, 234, 235},
+            {192, 193, 200, 201, 202, 205, 210, 213, 218, 219, 238, 240, 242, 243, 255},
+            {203, 204, 211, 212, 214, 221, 222, 223, 241, 244, 245, 246, 247, 248, 250, 251, 252, 253, 254},
+            {2, 3, 4, 5, 6, 7, 8, 11, 12, 14, 15, 16, 17, 18, 19, 20, 21, 23, 24, 25, 26, 27, 28, 29, 30, 31, 127, 220, 249},
+            {10, 13, 22, EOS},
+    };
+
+    private static final int[] CODES = new int[EOS + 1];
+    private static final byte[] LENGTHS = new byte[EOS + 1];
+    // Decoding trie: node n branches to TRIE[2n] on a 0 bit and TRIE[2n + 1] on a 1;
+    // a negative entry is a leaf holding ~symbol, 0 an unused branch
+    private static final int[] TRIE = new int[2 * EOS];
+
+    static {
+        int code = 0;
+        int previousLength = CODE_LENGTHS[0];
+        int nodes = 1;
+        for (int i = 0; i < CODE_LENGTHS.length; i++) {
+            int length = CODE_LENGTHS[i];
+            code <<= length - previousLength;
+            previousLength = length;
+            for (int symbol : SYMBOLS[i]) {
+                CODES[symbol] = code;
+                LENGTHS[symbol] = (byte) length;
+                int node = 0;
+                for (int bit = length - 1; bit > 0; bit--) {
+                    int branch = 2 * node + ((code >>> bit) & 1);
+                    if (TRIE[branch] == 0) {
+                        TRIE[branch] = nodes++;
+                    }
+                    node = TRIE[branch];
+                }
+                TRIE[2 * node + (code & 1)] = ~symbol;
+                code++;
+            }
+        }
+    }
+
+    private HpackHuffman() {
+    }
+
+    /**
+     * @return the number of bytes {@link #encode} produces for these octets
+     */
+    static int encodedLength(byte[] data) {
+        long bits = 0;
+        for (byte b : data) {
+            bits += LENGTHS[b & 0xFF];
+        }
+        return (int) ((bits + 7) >>> 3);
+    }
+
+    /**
+     * Encodes {@code data} into {@code dst} at {@code offset}, padding the
+     * last byte with the most significant bits of EOS.
+     *
+     * @return the offset just past the encoding
+     */
+    static int encode(byte[] data, byte[] dst, int offset) {
+        long current = 0;
+        int bits = 0;
+        for (byte b : data) {
+            int symbol = b & 0xFF;
+            current = (current << LENGTHS[symbol]) | CODES[symbol];
+            bits += LENGTHS[symbol];
+            while (bits >= 8) {
+                bits -= 8;
+                dst[offset++] = (byte) (current >>> bits);
+            }
+        }
+        if (bits > 0) {
+            dst[offset++] = (byte) ((current << (8 - bits)) | (0xFF >>> bits));
+        }
+        return offset;
+    }
+
+    /**
+     * Decodes {@code length} bytes of {@code src} from {@code offset}.
+     *
+     * @throws Http2Exception a compression error for EOS in the data or for
+     *                        padding that is longer than 7 bits or not all ones
+     */
+    static byte[] decode(byte[] src, int offset, int length) throws Http2Exception {
+        // The shortest code has 5 bits
+        byte[] out = new byte[length * 8 / 5 + 1];
+        int size = 0;
+        int node = 0;
+        // Bits read since the last complete symbol, and whether all were ones
+        int pendingBits = 0;
+        boolean allOnes = true;
+        for (int i = offset; i < offset + length; i++) {
+            int b = src[i] & 0xFF;
+            for (int bit = 7; bit >= 0; bit--) {
+                int one = (b >>> bit) & 1;
+                int next = TRIE[2 * node + one];
+                pendingBits++;
+                allOnes &= one == 1;
+                if (next < 0) {
+                    int symbol = ~next;
+                    if (symbol == EOS) {
+                        throw Http2Exception.connectionError(Http2Error.COMPRESSION_ERROR, "EOS in Huffman-encoded string");
+                    }
+                    out[size++] = (byte) symbol;
+                    node = 0;
+                    pendingBits = 0;
+                    allOnes = true;
+                } else {
+                    node = next;
+                }
+            }
+        }
+        if (pendingBits > 7 || !allOnes) {
+            throw Http2Exception.connectionError(Http2Error.COMPRESSION_ERROR, "invalid Huffman padding");
+        }
+        return size == out.length ? out : Arrays.copyOf(out, size);
+    }
+}
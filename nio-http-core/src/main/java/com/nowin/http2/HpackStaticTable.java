@@ -0,0 +1,117 @@
+package com.nowin.http2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The HPACK static table (RFC 7541 Appendix A), indexed from 1.
+ */
+final class HpackStaticTable {
+
+    private static final String[][] ENTRIES = {
+            {":authority", ""},
+            {":method", "GET"},
+            {":method", "POST"},
+            {":path", "/"},
+            {":path", "/index.html"},
+            {":scheme", "http"},
+            {":scheme", "https"},
+            {":status", "200"},
+            {":status", "204"},
+            {":status", "206"},
+            {":status", "304"},
+            {":status", "400"},
+            {":status", "404"},
+            {":status", "500"},
+            {"accept-charset", ""},
+            {"accept-encoding", "gzip, deflate"},
+            {"accept-language", ""},
+            {"accept-ranges", ""},
+            {"accept", ""},
+            {"access-control-allow-origin", ""},
+            {"age", ""},
+            {"allow", ""},
+            {"authorization", ""},
+            {"cache-control", ""},
+            {"content-disposition", ""},
+            {"content-encoding", ""},
+            {"content-language", ""},
+            {"content-length", ""},
+            {"content-location", ""},
+            {"content-range", ""},
+            {"content-type", ""},
+            {"cookie", ""},
+            {"date", ""},
+            {"etag", ""},
+            {"expect", ""},
+            {"expires", ""},
+            {"from", ""},
+            {"host", ""},
+            {"if-match", ""},
+            {"if-modified-since", ""},
+            {"if-none-match", ""},
+            {"if-range", ""},
+            {"if-unmodified-since", ""},
+            {"last-modified", ""},
+            {"link", ""},
+            {"location", ""},
+            {"max-forwards", ""},
+            {"proxy-authenticate", ""},
+            {"proxy-authorization", ""},
+            {"range", ""},
+            {"referer", ""},
+            {"refresh", ""},
+            {"retry-after", ""},
+            {"server", ""},
+            {"set-cookie", ""},
+            {"strict-transport-security", ""},
+            {"transfer-encoding", ""},
+            {"user-agent", ""},
+            {"vary", ""},
+            {"via", ""},
+            {"www-authenticate", ""},
+    };
+
+    static final int LENGTH = ENTRIES.length;
+
+    // Lowest index of each name, and the index of each name/value pair with a value
+    private static final Map<String, Integer> NAME_INDEX = new HashMap<>();
+    private static final Map<String, Integer> FIELD_INDEX = new HashMap<>();
+
+    static {
+        for (int i = LENGTH; i >= 1; i--) {
+            String[] entry = ENTRIES[i - 1];
+            NAME_INDEX.put(entry[0], i);
+            if (!entry[1].isEmpty()) {
+                FIELD_INDEX.put(entry[0] + '\0' + entry[1], i);
+            }
+        }
+    }
+
+    private HpackStaticTable() {
+    }
+
+    static String name(int index) {
+        return ENTRIES[index - 1][0];
+    }
+
+    static String value(int index) {
+        return ENTRIES[index - 1][1];
+    }
+
+    /**
+     * @return the index of the entry holding exactly this field, or -1
+     */
+    static int indexOf(String name, String value) {
+        Integer index = FIELD_INDEX.get(name + '\0' + value);
+        return index != null ? index : -1;
+    }
+
+    /**
+     * @return the lowest index of an entry with this name, or -1
+     */
+    static int indexOfName(String name) {
+        Integer index = NAME_INDEX.get(name);
+        return index != null ? index : -1;
+    }
+}
@@ -0,0 +1,45 @@
+package com.nowin.http2;
+
+/**
+ * Error codes carried by {@code RST_STREAM} and {@code GOAWAY} frames
+ * (RFC 9113 §7).
+ */
+public enum Http2Error {
+    NO_ERROR(0x0),
+    PROTOCOL_ERROR(0x1),
+    INTERNAL_ERROR(0x2),
+    FLOW_CONTROL_ERROR(0x3),
+    SETTINGS_TIMEOUT(0x4),
+    STREAM_CLOSED(0x5),
+    FRAME_SIZE_ERROR(0x6),
+    REFUSED_STREAM(0x7),
+    CANCEL(0x8),
+    COMPRESSION_ERROR(0x9),
+    CONNECT_ERROR(0xa),
+    ENHANCE_YOUR_CALM(0xb),
+    INADEQUATE_SECURITY(0xc),
+    HTTP_1_1_REQUIRED(0xd);
+
+    private final int code;
+
+    Http2Error(int code) {
+        this.code = code;
+    }
+
+    public int code() {
+        return code;
+    }
+
+    /**
+     * Returns the error with {@code code}; unknown codes are treated as
+     * {@link #INTERNAL_ERROR}, as RFC 9113 §7 allows.
+     */
+    public static Http2Error of(int code) {
+        for (Http2Error error : values()) {
+            if (error.code == code) {
+                return error;
+            }
+        }
+        return INTERNAL_ERROR;
+    }
+}
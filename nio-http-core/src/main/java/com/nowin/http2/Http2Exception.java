@@ -0,0 +1,40 @@
+package com.nowin.http2;
+
+/**
+ * An HTTP/2 protocol violation. A connection error (stream 0) ends the
+ * connection with {@code GOAWAY}; a stream error only resets its stream.
+ */
+public class Http2Exception extends Exception {
+
+    private final Http2Error error;
+    private final int streamId;
+
+    public Http2Exception(Http2Error error, int streamId, String message) {
+        super(message);
+        this.error = error;
+        this.streamId = streamId;
+    }
+
+    public static Http2Exception connectionError(Http2Error error, String message) {
+        return new Http2Exception(error, 0, message);
+    }
+
+    public static Http2Exception streamError(int streamId, Http2Error error, String message) {
+        return new Http2Exception(error, streamId, message);
+    }
+
+    public Http2Error getError() {
+        return error;
+    }
+
+    /**
+     * The stream the error applies to, or 0 for a connection error.
+     */
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public boolean isConnectionError() {
+        return streamId == 0;
+    }
+}
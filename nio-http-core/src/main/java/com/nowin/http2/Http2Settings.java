@@ -0,0 +1,212 @@
+package com.nowin.http2;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The parameters of one side of an HTTP/2 connection, as exchanged in
+ * {@code SETTINGS} frames (RFC 9113 §6.5.2). Values not yet announced keep
+ * their protocol defaults.
+ */
+public final class Http2Settings {
+
+    public static final int HEADER_TABLE_SIZE = 0x1;
+    public static final int ENABLE_PUSH = 0x2;
+    public static final int MAX_CONCURRENT_STREAMS = 0x3;
+    public static final int INITIAL_WINDOW_SIZE = 0x4;
+    public static final int MAX_FRAME_SIZE = 0x5;
+    public static final int MAX_HEADER_LIST_SIZE = 0x6;
+
+    public static final int DEFAULT_HEADER_TABLE_SIZE = 4096;
+    public static final int DEFAULT_INITIAL_WINDOW_SIZE = 65535;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+    public static final int MAX_WINDOW_SIZE = Integer.MAX_VALUE;
+    public static final int MAX_FRAME_SIZE_UPPER_BOUND = 16777215;
+    /**
+     * Value of the settings without a limit until one is announced.
+     */
+    public static final long UNLIMITED = -1;
+
+    private static final int SETTING_LENGTH = 6;
+
+    private int headerTableSize = DEFAULT_HEADER_TABLE_SIZE;
+    private boolean pushEnabled = true;
+    private long maxConcurrentStreams = UNLIMITED;
+    private int initialWindowSize = DEFAULT_INITIAL_WINDOW_SIZE;
+    private int maxFrameSize = DEFAULT_MAX_FRAME_SIZE;
+    private long maxHeaderListSize = UNLIMITED;
+
+    public Http2Settings() {
+    }
+
+    public Http2Settings(Http2Settings other) {
+        this.headerTableSize = other.headerTableSize;
+        this.pushEnabled = other.pushEnabled;
+        this.maxConcurrentStreams = other.maxConcurrentStreams;
+        this.initialWindowSize = other.initialWindowSize;
+        this.maxFrameSize = other.maxFrameSize;
+        this.maxHeaderListSize = other.maxHeaderListSize;
+    }
+
+    public int getHeaderTableSize() {
+        return headerTableSize;
+    }
+
+    public Http2Settings setHeaderTableSize(int headerTableSize) {
+        if (headerTableSize < 0) {
+            throw new IllegalArgumentException("headerTableSize must be >= 0, got: " + headerTableSize);
+        }
+        this.headerTableSize = headerTableSize;
+        return this;
+    }
+
+    public boolean isPushEnabled() {
+        return pushEnabled;
+    }
+
+    public Http2Settings setPushEnabled(boolean pushEnabled) {
+        this.pushEnabled = pushEnabled;
+        return this;
+    }
+
+    /**
+     * @return the limit, or {@link #UNLIMITED}
+     */
+    public long getMaxConcurrentStreams() {
+        return maxConcurrentStreams;
+    }
+
+    public Http2Settings setMaxConcurrentStreams(long maxConcurrentStreams) {
+        if (maxConcurrentStreams < 0 && maxConcurrentStreams != UNLIMITED || maxConcurrentStreams > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("maxConcurrentStreams out of range: " + maxConcurrentStreams);
+        }
+        this.maxConcurrentStreams = maxConcurrentStreams;
+        return this;
+    }
+
+    public int getInitialWindowSize() {
+        return initialWindowSize;
+    }
+
+    public Http2Settings setInitialWindowSize(int initialWindowSize) {
+        if (initialWindowSize < 0) {
+            throw new IllegalArgumentException("initialWindowSize must be >= 0, got: " + initialWindowSize);
+        }
+        this.initialWindowSize = initialWindowSize;
+        return this;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    public Http2Settings setMaxFrameSize(int maxFrameSize) {
+        if (maxFrameSize < DEFAULT_MAX_FRAME_SIZE || maxFrameSize > MAX_FRAME_SIZE_UPPER_BOUND) {
+            throw new IllegalArgumentException("maxFrameSize must be between "
+                    + DEFAULT_MAX_FRAME_SIZE + " and " + MAX_FRAME_SIZE_UPPER_BOUND + ", got: " + maxFrameSize);
+        }
+        this.maxFrameSize = maxFrameSize;
+        return this;
+    }
+
+    /**
+     * @return the limit, or {@link #UNLIMITED}
+     */
+    public long getMaxHeaderListSize() {
+        return maxHeaderListSize;
+    }
+
+    public Http2Settings setMaxHeaderListSize(long maxHeaderListSize) {
+        if (maxHeaderListSize < 0 && maxHeaderListSize != UNLIMITED || maxHeaderListSize > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("maxHeaderListSize out of range: " + maxHeaderListSize);
+        }
+        this.maxHeaderListSize = maxHeaderListSize;
+        return this;
+    }
+
+    /**
+     * Encodes the settings that differ from the protocol defaults as a
+     * {@code SETTINGS} frame payload.
+     */
+    public ByteBuffer encode() {
+        ByteBuffer payload = ByteBuffer.allocate(SETTING_LENGTH * 6);
+        if (headerTableSize != DEFAULT_HEADER_TABLE_SIZE) {
+            putSetting(payload, HEADER_TABLE_SIZE, headerTableSize);
+        }
+        if (!pushEnabled) {
+            putSetting(payload, ENABLE_PUSH, 0);
+        }
+        if (maxConcurrentStreams != UNLIMITED) {
+            putSetting(payload, MAX_CONCURRENT_STREAMS, maxConcurrentStreams);
+        }
+        if (initialWindowSize != DEFAULT_INITIAL_WINDOW_SIZE) {
+            putSetting(payload, INITIAL_WINDOW_SIZE, initialWindowSize);
+        }
+        if (maxFrameSize != DEFAULT_MAX_FRAME_SIZE) {
+            putSetting(payload, MAX_FRAME_SIZE, maxFrameSize);
+        }
+        if (maxHeaderListSize != UNLIMITED) {
+            putSetting(payload, MAX_HEADER_LIST_SIZE, maxHeaderListSize);
+        }
+        return payload.flip();
+    }
+
+    private static void putSetting(ByteBuffer payload, int identifier, long value) {
+        payload.putShort((short) identifier).putInt((int) value);
+    }
+
+    /**
+     * Applies the settings in a {@code SETTINGS} frame payload, in order.
+     * Unknown identifiers are ignored.
+     *
+     * @throws Http2Exception a connection error for a malformed payload or
+     *                        an out-of-range value
+     */
+    public void decode(ByteBuffer payload) throws Http2Exception {
+        if (payload.remaining() % SETTING_LENGTH != 0) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "SETTINGS length is not a multiple of 6");
+        }
+        while (payload.hasRemaining()) {
+            int identifier = payload.getShort() & 0xFFFF;
+            long value = payload.getInt() & 0xFFFFFFFFL;
+            switch (identifier) {
+                case HEADER_TABLE_SIZE -> headerTableSize = (int) Math.min(value, Integer.MAX_VALUE);
+                case ENABLE_PUSH -> {
+                    if (value > 1) {
+                        throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "invalid SETTINGS_ENABLE_PUSH " + value);
+                    }
+                    pushEnabled = value == 1;
+                }
+                case MAX_CONCURRENT_STREAMS -> maxConcurrentStreams = value;
+                case INITIAL_WINDOW_SIZE -> {
+                    if (value > MAX_WINDOW_SIZE) {
+                        throw Http2Exception.connectionError(Http2Error.FLOW_CONTROL_ERROR,
+                                "invalid SETTINGS_INITIAL_WINDOW_SIZE " + value);
+                    }
+                    initialWindowSize = (int) value;
+                }
+                case MAX_FRAME_SIZE -> {
+                    if (value < DEFAULT_MAX_FRAME_SIZE || value > MAX_FRAME_SIZE_UPPER_BOUND) {
+                        throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "invalid SETTINGS_MAX_FRAME_SIZE " + value);
+                    }
+                    maxFrameSize = (int) value;
+                }
+                case MAX_HEADER_LIST_SIZE -> maxHeaderListSize = value;
+                default -> {
+                    // RFC 9113 §6.5.2: unknown settings must be ignored
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Http2Settings{"
+                + "headerTableSize=" + headerTableSize
+                + ", pushEnabled=" + pushEnabled
+                + ", maxConcurrentStreams=" + maxConcurrentStreams
+                + ", initialWindowSize=" + initialWindowSize
+                + ", maxFrameSize=" + maxFrameSize
+                + ", maxHeaderListSize=" + maxHeaderListSize
+                + '}';
+    }
+}
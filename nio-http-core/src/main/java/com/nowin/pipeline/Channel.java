@@ -9,6 +9,8 @@ import com.nowin.server.HttpServerObserver;
 import com.nowin.transport.TransportEventLoop;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.transport.TransportSocketChannel;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.RefCountedBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -17,6 +19,8 @@ import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -28,6 +32,7 @@ public class Channel {
     private static final int DEFAULT_MAX_WRITE_QUEUE_SIZE = 100;
     private static final long DEFAULT_WRITE_BUFFER_LOW_WATER_MARK = 32L * 1024 * 1024;
     private static final long DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK = 64L * 1024 * 1024;
+    private static final int DEFAULT_MAX_PIPELINED_REQUESTS = 16;
 
     private final TransportSocketChannel transportSocketChannel;
     private final TransportEventLoop eventLoop;
@@ -45,9 +50,27 @@ public class Channel {
     private int maxWriteQueueSize = DEFAULT_MAX_WRITE_QUEUE_SIZE;
     private volatile long writeBufferLowWaterMark = DEFAULT_WRITE_BUFFER_LOW_WATER_MARK;
     private volatile long writeBufferHighWaterMark = DEFAULT_WRITE_BUFFER_HIGH_WATER_MARK;
+    // Turns false at the high water mark and true again at the low one
+    private final java.util.concurrent.atomic.AtomicBoolean writable = new java.util.concurrent.atomic.AtomicBoolean(true);
     private volatile long lastReadTime = System.currentTimeMillis();
     private final java.util.concurrent.atomic.AtomicBoolean closed = new java.util.concurrent.atomic.AtomicBoolean(false);
     private int idleTimeoutMillis = 0;
+    // HTTP/1.1 pipelining state, confined to the event loop
+    private int maxPipelinedRequests = DEFAULT_MAX_PIPELINED_REQUESTS;
+    private int inFlightRequests;
+    private Runnable readResumer;
+    // The peer half-closed; nothing more is read and the channel closes once answered
+    private boolean inputShutdown;
+    // A streamed response without a known end is being written
+    private boolean streamingResponse;
+    // Write and request timeouts, confined to the event loop. Timers are armed
+    // once and re-armed for the remainder when they fire after progress.
+    private int writeTimeoutMillis;
+    private int requestTimeoutMillis;
+    private long lastWriteProgressNanos;
+    private long oldestRequestStartNanos;
+    private ScheduledFuture<?> writeTimer;
+    private ScheduledFuture<?> requestTimer;
 
     public Channel(TransportSocketChannel transportSocketChannel, ChannelPipeline pipeline, TransportEventLoop eventLoop) {
         this.transportSocketChannel = transportSocketChannel;
@@ -94,8 +117,13 @@ public class Channel {
                 || pendingWriteBytes.get() >= writeBufferHighWaterMark;
     }
 
+    /**
+     * False from when pending bytes reach the high water mark until they
+     * drain to the low water mark. Each change fires
+     * {@link ChannelPipeline#fireChannelWritabilityChanged()} on the event loop.
+     */
     public boolean isWritable() {
-        return pendingWriteBytes.get() < writeBufferHighWaterMark;
+        return writable.get();
     }
 
     public boolean isClosed() {
@@ -106,6 +134,28 @@ public class Channel {
         return pendingWriteBytes.get();
     }
 
+    /**
+     * Counts {@code bytes} that another thread is about to hand to the event
+     * loop as pending, so the channel turns unwritable before they are
+     * queued. Safe to call from any thread; the write task must call
+     * {@link #releasePendingWriteBytes(long)} once the bytes are written
+     * through the pipeline.
+     */
+    public void reservePendingWriteBytes(long bytes) {
+        if (bytes > 0) {
+            updateWritability(pendingWriteBytes.addAndGet(bytes));
+        }
+    }
+
+    /**
+     * Returns bytes counted by {@link #reservePendingWriteBytes(long)}.
+     */
+    public void releasePendingWriteBytes(long bytes) {
+        if (bytes > 0) {
+            updateWritability(pendingWriteBytes.addAndGet(-bytes));
+        }
+    }
+
     public void setWriteBufferWaterMarks(long lowWaterMark, long highWaterMark) {
         if (lowWaterMark < 0) {
             throw new IllegalArgumentException("lowWaterMark must be >= 0");
@@ -117,6 +167,109 @@ public class Channel {
         this.writeBufferHighWaterMark = highWaterMark;
     }
 
+    public void setMaxPipelinedRequests(int maxPipelinedRequests) {
+        if (maxPipelinedRequests > 0) {
+            this.maxPipelinedRequests = maxPipelinedRequests;
+        }
+    }
+
+    public int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    public int getInFlightRequests() {
+        return inFlightRequests;
+    }
+
+    /**
+     * Counts a request handed to the application whose response has not been
+     * written yet.
+     */
+    public void requestStarted() {
+        if (inFlightRequests++ == 0) {
+            oldestRequestStartNanos = System.nanoTime();
+        }
+        if (requestTimeoutMillis > 0 && requestTimer == null && eventLoop != null) {
+            requestTimer = eventLoop.schedule(this::checkRequestTimeout, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns true once as many requests are in flight as the pipelining depth
+     * allows; the codec then stops reading until a response completes.
+     */
+    public boolean isPipelineFull() {
+        return inFlightRequests >= maxPipelinedRequests;
+    }
+
+    /**
+     * Stops reading from the socket until enough in-flight requests complete.
+     * {@code resumer} runs on the event loop once the depth drops below the
+     * limit; while suspended, read interest is not re-enabled by write
+     * backpressure either.
+     */
+    public void suspendRead(Runnable resumer) {
+        updateReadInterest(false);
+        this.readResumer = resumer;
+    }
+
+    public boolean isReadSuspended() {
+        return readResumer != null;
+    }
+
+    /**
+     * Marks the oldest in-flight request as answered and resumes a suspended
+     * read if the pipelining depth allows it again.
+     */
+    public void requestCompleted() {
+        if (inFlightRequests > 0) {
+            inFlightRequests--;
+        }
+        if (inFlightRequests > 0) {
+            // the next request is now at the head of the line
+            oldestRequestStartNanos = System.nanoTime();
+        }
+        Runnable resumer = readResumer;
+        if (resumer != null && inFlightRequests < maxPipelinedRequests && !isClosed()) {
+            readResumer = null;
+            resumer.run();
+        }
+        closeIfAnswered();
+    }
+
+    /**
+     * Called when the peer has half-closed the connection. With requests in
+     * flight or responses still queued this stops reading and lets them be
+     * written out in order, closing once none is left; otherwise the channel
+     * closes right away. A streamed response may never end, e.g. server-sent
+     * events, and end of input is how its client is seen to leave, so the
+     * channel closes right away while one is being written.
+     */
+    public void shutdownInput() {
+        if (streamingResponse) {
+            close();
+            return;
+        }
+        inputShutdown = true;
+        readResumer = null;
+        updateReadInterest(false);
+        closeIfAnswered();
+    }
+
+    public boolean isInputShutdown() {
+        return inputShutdown;
+    }
+
+    public void setStreamingResponse(boolean streamingResponse) {
+        this.streamingResponse = streamingResponse;
+    }
+
+    private void closeIfAnswered() {
+        if (inputShutdown && inFlightRequests == 0 && writeQueue.isEmpty()) {
+            close();
+        }
+    }
+
     public void updateLastReadTime() {
         this.lastReadTime = System.currentTimeMillis();
         if (eventLoop != null) {
@@ -135,6 +288,63 @@ public class Channel {
         return idleTimeoutMillis;
     }
 
+    public long getLastReadTime() {
+        return lastReadTime;
+    }
+
+    /**
+     * Closes the connection when queued output makes no progress for this
+     * long, e.g. because the peer stopped reading. Zero disables the check.
+     */
+    public void setWriteTimeout(int millis) {
+        this.writeTimeoutMillis = Math.max(0, millis);
+    }
+
+    public int getWriteTimeoutMillis() {
+        return writeTimeoutMillis;
+    }
+
+    /**
+     * Closes the connection when the oldest outstanding request has waited
+     * this long for its response to be written, measured from when it
+     * reached the head of the connection's pipeline. Zero disables the check.
+     */
+    public void setRequestTimeout(int millis) {
+        this.requestTimeoutMillis = Math.max(0, millis);
+    }
+
+    public int getRequestTimeoutMillis() {
+        return requestTimeoutMillis;
+    }
+
+    private void checkWriteTimeout() {
+        writeTimer = null;
+        if (isClosed() || writeQueue.isEmpty()) {
+            return;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(writeTimeoutMillis) - (System.nanoTime() - lastWriteProgressNanos);
+        if (remaining > 0) {
+            writeTimer = eventLoop.schedule(this::checkWriteTimeout, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        logger.warn("write_timeout remote={} pending_bytes={} timeout_ms={}", getRemoteAddress(), pendingWriteBytes.get(), writeTimeoutMillis);
+        close();
+    }
+
+    private void checkRequestTimeout() {
+        requestTimer = null;
+        if (isClosed() || inFlightRequests == 0) {
+            return;
+        }
+        long remaining = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMillis) - (System.nanoTime() - oldestRequestStartNanos);
+        if (remaining > 0) {
+            requestTimer = eventLoop.schedule(this::checkRequestTimeout, remaining, TimeUnit.NANOSECONDS);
+            return;
+        }
+        logger.warn("request_timeout remote={} in_flight={} timeout_ms={}", getRemoteAddress(), inFlightRequests, requestTimeoutMillis);
+        close();
+    }
+
     public boolean isIdleTimeoutExpired() {
         return idleTimeoutMillis > 0 && System.currentTimeMillis() - lastReadTime > idleTimeoutMillis;
     }
@@ -183,13 +393,20 @@ public class Channel {
     }
 
     public void addToWrite(Object task) {
+        if (writeQueue.isEmpty()) {
+            lastWriteProgressNanos = System.nanoTime();
+        }
         writeQueue.add(task);
+        if (writeTimeoutMillis > 0 && writeTimer == null && eventLoop != null) {
+            writeTimer = eventLoop.schedule(this::checkWriteTimeout, writeTimeoutMillis, TimeUnit.MILLISECONDS);
+        }
         writeQueueSize.incrementAndGet();
         long bytes = estimatePendingBytes(task);
         long pendingBytes = pendingWriteBytes.addAndGet(bytes);
         if (pendingBytes >= writeBufferHighWaterMark) {
             updateReadInterest(false);
         }
+        updateWritability(pendingBytes);
     }
 
     /**
@@ -205,10 +422,28 @@ public class Channel {
             if (pendingBytes <= writeBufferLowWaterMark) {
                 updateReadInterest(true);
             }
+            updateWritability(pendingBytes);
         }
         return task;
     }
 
+    /**
+     * Accounts for bytes written out of queued entries. Entries are counted at
+     * their remaining size when dequeued, so a fully flushed entry removed
+     * afterwards no longer contributes to {@link #getPendingWriteBytes()}.
+     */
+    public void onBytesFlushed(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        lastWriteProgressNanos = System.nanoTime();
+        long pendingBytes = pendingWriteBytes.addAndGet(-bytes);
+        if (pendingBytes <= writeBufferLowWaterMark && pendingBytes + bytes > writeBufferLowWaterMark) {
+            updateReadInterest(true);
+        }
+        updateWritability(pendingBytes);
+    }
+
     public Queue<Object> getWriteQueue() {
         return writeQueue;
     }
@@ -235,8 +470,11 @@ public class Channel {
 
     public void onWriteCompletion() {
         if (writeQueue.isEmpty()) {
-            logger.debug("channel_write_complete remote={} channel={}", getRemoteAddress(), transportSocketChannel);
+            if (logger.isDebugEnabled()) {
+                logger.debug("channel_write_complete remote={} channel={}", getRemoteAddress(), transportSocketChannel);
+            }
             pipeline.completePendingWriteFutures(null);
+            closeIfAnswered();
         }
     }
 
@@ -245,10 +483,15 @@ public class Channel {
             return;
         }
         pipeline.fireChannelInactive();
+        readResumer = null;
         try {
             if (eventLoop != null) {
                 eventLoop.cancelIdleCheck(this);
             }
+            cancelTimer(writeTimer);
+            cancelTimer(requestTimer);
+            writeTimer = null;
+            requestTimer = null;
             
             // cleanup request including temp file and HttpPart resources
             if (request != null) {
@@ -256,7 +499,7 @@ public class Channel {
                 request = null;
             }
             
-            // cleanup write queue - close any FileChannelBody resources
+            // cleanup write queue - close any FileChannelBody resources and release buffers
             for (Object task : writeQueue) {
                 if (task instanceof FileChannelBody body) {
                     try {
@@ -264,6 +507,8 @@ public class Channel {
                     } catch (IOException e) {
                         logger.warn("file_body_close_failed remote={} channel={}", getRemoteAddress(), transportSocketChannel, e);
                     }
+                } else {
+                    OutboundBuffers.release(task);
                 }
             }
             writeQueue.clear();
@@ -295,10 +540,19 @@ public class Channel {
         }
     }
 
+    private static void cancelTimer(ScheduledFuture<?> timer) {
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
     private long estimatePendingBytes(Object task) {
         if (task instanceof ByteBuffer buffer) {
             return buffer.remaining();
         }
+        if (task instanceof RefCountedBuffer shared) {
+            return shared.remaining();
+        }
         if (task instanceof FileChannelBody body) {
             return Math.max(0, body.remaining());
         }
@@ -308,7 +562,25 @@ public class Channel {
         return 1;
     }
 
+    private void updateWritability(long pendingBytes) {
+        boolean changed = pendingBytes >= writeBufferHighWaterMark
+                ? writable.compareAndSet(true, false)
+                : pendingBytes <= writeBufferLowWaterMark && writable.compareAndSet(false, true);
+        if (!changed || isClosed()) {
+            return;
+        }
+        // Listeners re-check isWritable(), so a late event for a flipped-back state is harmless
+        if (eventLoop != null) {
+            eventLoop.execute(pipeline::fireChannelWritabilityChanged);
+        } else {
+            pipeline.fireChannelWritabilityChanged();
+        }
+    }
+
     private void updateReadInterest(boolean enabled) {
+        if (enabled && (readResumer != null || inputShutdown)) {
+            return;
+        }
         TransportSelectionKey key = getSelectionKey();
         if (key == null || !key.isValid()) {
             return;
@@ -77,6 +77,18 @@ public class ChannelHandlerContext {
         }
     }
 
+    public void fireChannelWritabilityChanged() {
+        ChannelHandlerContext n = next;
+        while (n != null) {
+            ChannelHandler h = n.handler;
+            if (!(h instanceof ChannelOutboundHandler) || h instanceof ChannelInboundHandler) {
+                h.channelWritabilityChanged(n);
+                return;
+            }
+            n = n.next;
+        }
+    }
+
     public void fireChannelWrite(Object msg) {
         ChannelHandlerContext p = prev;
         while (p != null) {
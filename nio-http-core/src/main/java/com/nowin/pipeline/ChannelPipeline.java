@@ -67,6 +67,14 @@ public class ChannelPipeline {
         head.fireExceptionCaught(cause);
     }
 
+    public void fireChannelWritabilityChanged() {
+        try {
+            head.getHandler().channelWritabilityChanged(head);
+        } catch (Exception e) {
+            fireExceptionCaught(e);
+        }
+    }
+
     public ChannelFuture write(Object msg) {
         DefaultChannelFuture future = new DefaultChannelFuture(channel);
         writeFutures.add(future);
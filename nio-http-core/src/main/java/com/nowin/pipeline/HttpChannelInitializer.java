@@ -1,5 +1,6 @@
 package com.nowin.pipeline;
 
+import com.nowin.http2.Http2Settings;
 import com.nowin.pipeline.handler.impl.ExceptionHandler;
 import com.nowin.pipeline.handler.impl.HttpServerCodec;
 import com.nowin.pipeline.handler.impl.HttpServerHandler;
@@ -11,6 +12,7 @@ import com.nowin.server.ServerConfig;
 import com.nowin.server.SslContext;
 import com.nowin.server.VirtualHost;
 
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Executor;
 
@@ -21,6 +23,7 @@ import java.util.concurrent.Executor;
  * <pre>
  * HeadHandler → SslHandler (optional) → HttpUpgradeHandler → HttpServerCodec → HttpServerHandler → ExceptionHandler → TailHandler
  * </pre>
+ * HTTP/2 connections have an {@code Http2ServerCodec} in place of the {@code HttpServerCodec}.
  *
  * <p>Users can replace this initializer via {@link com.nowin.ServerBootstrap#channelInitializer(ChannelInitializer)}
  * to fully control pipeline assembly, or they can register additional handlers through the bootstrap
@@ -64,11 +67,18 @@ public class HttpChannelInitializer implements ChannelInitializer {
     @Override
     public void initChannel(ChannelPipeline pipeline, Channel channel) {
         if (sslContext != null) {
-            pipeline.addLast("ssl", new SslHandler(sslContext.createEngine()));
+            pipeline.addLast("ssl", new SslHandler(sslContext.createEngine(
+                    config.isHttp2Enabled() ? List.of("h2", "http/1.1") : List.of("http/1.1")),
+                    sslContext.getDelegatedTaskExecutor()));
         }
 
-        // Protocol upgrade placeholder (HTTP/2, WebSocket) — currently passes through
-        pipeline.addLast("upgrade", new HttpUpgradeHandler());
+        // Protocol upgrades; swaps the HTTP codec out for WebSocket and HTTP/2 connections
+        pipeline.addLast("upgrade", new HttpUpgradeHandler(
+                config.getWebSocketMaxMessageSize(),
+                config.getWebSocketPingInterval(),
+                config.isWebSocketCompressionEnabled(),
+                config.isHttp2Enabled() ? http2Settings() : null,
+                config.getMaxBodySize()));
 
         pipeline.addLast("codec", new HttpServerCodec(config.getMaxHeaderSize(), config.getMaxBodySize()));
         pipeline.addLast("handler", new HttpServerHandler(
@@ -80,4 +90,12 @@ public class HttpChannelInitializer implements ChannelInitializer {
                 config.getCompressionMinSize()));
         pipeline.addLast("exceptionHandler", new ExceptionHandler());
     }
+
+    private Http2Settings http2Settings() {
+        return new Http2Settings()
+                .setPushEnabled(false)
+                .setMaxConcurrentStreams(config.getHttp2MaxConcurrentStreams())
+                .setInitialWindowSize(config.getHttp2InitialWindowSize())
+                .setMaxHeaderListSize(config.getMaxHeaderSize());
+    }
 }
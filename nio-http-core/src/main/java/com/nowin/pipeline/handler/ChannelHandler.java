@@ -27,4 +27,12 @@ public interface ChannelHandler {
 
     default void channelInactive(ChannelHandlerContext ctx) {
     }
+
+    /**
+     * Called on the event loop when {@link com.nowin.pipeline.Channel#isWritable()}
+     * changes, i.e. pending output crossed the high or the low water mark.
+     */
+    default void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        ctx.fireChannelWritabilityChanged();
+    }
 }
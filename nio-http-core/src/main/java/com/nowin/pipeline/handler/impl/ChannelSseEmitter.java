@@ -0,0 +1,256 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.HttpRequest;
+import com.nowin.pipeline.Channel;
+import com.nowin.pipeline.ChannelFuture;
+import com.nowin.pipeline.ChannelHandlerContext;
+import com.nowin.sse.SseEmitter;
+import com.nowin.sse.SseEvent;
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.RefCountedBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * {@link SseEmitter} writing to one connection whose event-stream headers
+ * have been sent.
+ * <p>
+ * Events go straight to the pipeline as gathered writes around a view of
+ * the event's shared encoding; on HTTP/1.1 only the chunk-size line is
+ * allocated per connection. The idle timeout is suspended while the stream
+ * is open, since the client sends nothing, and restored when it ends.
+ * <p>
+ * On an HTTP/2 stream events go out as {@link Http2ServerCodec.Data}
+ * messages instead, and the codec looks after the idle timeout.
+ */
+final class ChannelSseEmitter implements SseEmitter {
+
+    private static final RefCountedBuffer CRLF = RefCountedBuffer.copyOf("\r\n".getBytes(StandardCharsets.US_ASCII));
+    private static final RefCountedBuffer HEARTBEAT = RefCountedBuffer.copyOf(":\n\n".getBytes(StandardCharsets.US_ASCII));
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final ChannelHandlerContext ctx;
+    private final HttpRequest request;
+    private final boolean chunked;
+    private final Consumer<Throwable> onEnd;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final List<Runnable> closeCallbacks = new CopyOnWriteArrayList<>();
+    private volatile long lastSendNanos = System.nanoTime();
+    // Event-loop confined
+    private ScheduledFuture<?> heartbeatTimer;
+    private int suspendedIdleTimeoutMillis;
+
+    /**
+     * @param onEnd runs once the stream has ended, with the write failure if
+     *              there was one; it finishes the response on the connection
+     */
+    ChannelSseEmitter(ChannelHandlerContext ctx, HttpRequest request, boolean chunked, Consumer<Throwable> onEnd) {
+        this.ctx = ctx;
+        this.request = request;
+        this.chunked = chunked;
+        this.onEnd = onEnd;
+    }
+
+    /**
+     * Suspends the idle timeout on HTTP/1.x. Must run on the event loop.
+     */
+    void opened() {
+        if (request.getStreamId() > 0) {
+            return;
+        }
+        Channel channel = ctx.channel();
+        suspendedIdleTimeoutMillis = channel.getIdleTimeoutMillis();
+        channel.setIdleTimeout(0);
+    }
+
+    @Override
+    public HttpRequest request() {
+        return request;
+    }
+
+    @Override
+    public Optional<String> lastEventId() {
+        return request.getHeader("Last-Event-ID").map(String::trim).filter(id -> !id.isEmpty());
+    }
+
+    @Override
+    public CompletionStage<Void> send(SseEvent event) {
+        if (closed.get()) {
+            return CompletableFuture.failedFuture(new IOException("event stream is closed"));
+        }
+        return write(event.encoded(), true);
+    }
+
+    @Override
+    public void heartbeat(Duration interval) {
+        long intervalNanos = interval.toNanos();
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("heartbeat interval must be positive, got: " + interval);
+        }
+        runInEventLoop(() -> {
+            cancelHeartbeat();
+            if (!isOpen()) {
+                return;
+            }
+            heartbeatTimer = ctx.channel().getEventLoop().scheduleWithFixedDelay(() -> {
+                if (isOpen() && System.nanoTime() - lastSendNanos >= intervalNanos) {
+                    write(HEARTBEAT, false);
+                }
+            }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        });
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get() && !ctx.channel().isClosed();
+    }
+
+    @Override
+    public long pendingBytes() {
+        return ctx.channel().getPendingWriteBytes();
+    }
+
+    @Override
+    public void onClose(Runnable callback) {
+        closeCallbacks.add(callback);
+        if (ended.get() && closeCallbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (ctx.channel().isClosed()) {
+            end(null);
+            return;
+        }
+        if (request.getStreamId() > 0) {
+            submit(new Http2ServerCodec.End(request.getStreamId(), null), 0, true)
+                    .whenComplete((ignored, failure) -> end(failure));
+            return;
+        }
+        ByteBuffer last = chunked ? ByteBuffer.wrap(LAST_CHUNK) : ByteBuffer.allocate(0);
+        submit(last, last.remaining(), true).whenComplete((ignored, failure) -> end(failure));
+    }
+
+    @Override
+    public void abort() {
+        closed.set(true);
+        if (request.getStreamId() > 0) {
+            // Other streams share the connection; only this one is reset
+            runInEventLoop(() -> ctx.write(new Http2ServerCodec.StreamReset(request.getStreamId())));
+            end(null);
+            return;
+        }
+        // channelInactive ends the stream
+        runInEventLoop(ctx::close);
+    }
+
+    /**
+     * The connection closed underneath the stream, typically because the
+     * client went away.
+     */
+    void channelClosed() {
+        closed.set(true);
+        end(null);
+    }
+
+    private CompletableFuture<Void> write(RefCountedBuffer encoded, boolean track) {
+        RefCountedBuffer view = encoded.retainedDuplicate();
+        int length = view.remaining();
+        if (request.getStreamId() > 0) {
+            return submit(new Http2ServerCodec.Data(request.getStreamId(), view), length, track);
+        }
+        if (!chunked) {
+            return submit(view, length, track);
+        }
+        ByteBuffer sizeLine = ByteBuffer.wrap((Integer.toHexString(length) + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        int bytes = sizeLine.remaining() + length + 2;
+        return submit(new Object[] {sizeLine, view, CRLF.retainedDuplicate()}, bytes, track);
+    }
+
+    /**
+     * Hands {@code message} to the event loop; its bytes count as pending
+     * from now on, which is what slow-consumer eviction looks at.
+     */
+    private CompletableFuture<Void> submit(Object message, int bytes, boolean track) {
+        Channel channel = ctx.channel();
+        CompletableFuture<Void> written = track ? new CompletableFuture<>() : null;
+        lastSendNanos = System.nanoTime();
+        channel.reservePendingWriteBytes(bytes);
+        runInEventLoop(() -> {
+            channel.releasePendingWriteBytes(bytes);
+            if (channel.isClosed()) {
+                OutboundBuffers.releaseAll(message instanceof Http2ServerCodec.Data data ? data.payload() : message);
+                if (written != null) {
+                    written.completeExceptionally(new IOException("channel is closed"));
+                }
+                return;
+            }
+            ChannelFuture future = ctx.write(message);
+            if (written != null) {
+                future.addListener(done -> {
+                    if (done.isSuccess()) {
+                        written.complete(null);
+                    } else {
+                        written.completeExceptionally(done.cause());
+                    }
+                });
+            }
+        });
+        return written;
+    }
+
+    private void end(Throwable failure) {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        runInEventLoop(() -> {
+            cancelHeartbeat();
+            Channel channel = ctx.channel();
+            if (!channel.isClosed() && suspendedIdleTimeoutMillis > 0) {
+                channel.setIdleTimeout(suspendedIdleTimeoutMillis);
+                channel.updateLastReadTime();
+            }
+            onEnd.accept(failure);
+        });
+        for (Runnable callback : closeCallbacks) {
+            if (closeCallbacks.remove(callback)) {
+                callback.run();
+            }
+        }
+    }
+
+    private void cancelHeartbeat() {
+        if (heartbeatTimer != null) {
+            heartbeatTimer.cancel(false);
+            heartbeatTimer = null;
+        }
+    }
+
+    private void runInEventLoop(Runnable task) {
+        TransportEventLoop eventLoop = ctx.channel().getEventLoop();
+        if (eventLoop != null && !eventLoop.inEventLoop()) {
+            eventLoop.execute(task);
+        } else {
+            task.run();
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.HttpRequest;
+import com.nowin.pipeline.Channel;
+import com.nowin.pipeline.ChannelFuture;
+import com.nowin.pipeline.ChannelHandlerContext;
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.RefCountedBuffer;
+import com.nowin.websocket.WebSocketFrame;
+import com.nowin.websocket.WebSocketHandler;
+import com.nowin.websocket.WebSocketSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * {@link WebSocketSession} of one upgraded connection.
+ * <p>
+ * Frames go straight to the pipeline as views of their shared encoding.
+ * Liveness is checked on the event loop: once nothing has arrived for a
+ * ping interval the session pings, and if nothing arrives for another
+ * interval the connection is dropped. Callbacks into the
+ * {@link WebSocketHandler} are made here, on the event loop, so that a
+ * failing handler fails only its own connection.
+ */
+final class ChannelWebSocketSession implements WebSocketSession {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChannelWebSocketSession.class);
+    private static final long CLOSE_TIMEOUT_MILLIS = 5000;
+    private static final RefCountedBuffer PING = WebSocketFrame.ping(null).encoded(false);
+    private static final WebSocketFrame NORMAL_CLOSE = WebSocketFrame.close(NORMAL_CLOSURE, "");
+
+    private final ChannelHandlerContext ctx;
+    private final HttpRequest request;
+    private final WebSocketHandler handler;
+    private final boolean compression;
+    private final long pingIntervalNanos;
+    private final AtomicBoolean closeSent = new AtomicBoolean();
+    private final AtomicBoolean ended = new AtomicBoolean();
+    private final List<Runnable> closeCallbacks = new CopyOnWriteArrayList<>();
+    // Event-loop confined
+    private boolean closeReceived;
+    private int closeCode = ABNORMAL_CLOSURE;
+    private String closeReason = "";
+    private long lastReadNanos = System.nanoTime();
+    private boolean awaitingPong;
+    private ScheduledFuture<?> pingTimer;
+    private ScheduledFuture<?> closeTimer;
+
+    ChannelWebSocketSession(ChannelHandlerContext ctx, HttpRequest request, WebSocketHandler handler,
+                            boolean compression, int pingIntervalMillis) {
+        this.ctx = ctx;
+        this.request = request;
+        this.handler = handler;
+        this.compression = compression;
+        this.pingIntervalNanos = TimeUnit.MILLISECONDS.toNanos(pingIntervalMillis);
+    }
+
+    /**
+     * Starts the liveness check and hands the session to the handler. Must
+     * run on the event loop.
+     */
+    void opened() {
+        TransportEventLoop eventLoop = ctx.channel().getEventLoop();
+        if (pingIntervalNanos > 0 && eventLoop != null) {
+            pingTimer = eventLoop.scheduleWithFixedDelay(this::checkAlive,
+                    pingIntervalNanos, pingIntervalNanos, TimeUnit.NANOSECONDS);
+        }
+        try {
+            handler.onOpen(this);
+        } catch (Throwable e) {
+            handlerFailed("onOpen", e);
+        }
+    }
+
+    @Override
+    public HttpRequest request() {
+        return request;
+    }
+
+    @Override
+    public boolean isCompressionEnabled() {
+        return compression;
+    }
+
+    @Override
+    public CompletionStage<Void> send(WebSocketFrame frame) {
+        Objects.requireNonNull(frame, "frame cannot be null");
+        if (frame.getOpcode() == WebSocketFrame.OPCODE_CLOSE) {
+            throw new IllegalArgumentException("Use close(code, reason) to send a close frame");
+        }
+        if (closeSent.get()) {
+            return CompletableFuture.failedFuture(new IOException("WebSocket is closed"));
+        }
+        return write(frame.encoded(compression), true);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closeSent.get() && !ctx.channel().isClosed();
+    }
+
+    @Override
+    public long pendingBytes() {
+        return ctx.channel().getPendingWriteBytes();
+    }
+
+    @Override
+    public void onClose(Runnable callback) {
+        closeCallbacks.add(callback);
+        if (ended.get() && closeCallbacks.remove(callback)) {
+            callback.run();
+        }
+    }
+
+    @Override
+    public void close(int code, String reason) {
+        WebSocketFrame frame = WebSocketFrame.close(code, reason);
+        if (!closeSent.compareAndSet(false, true)) {
+            return;
+        }
+        write(frame.encoded(false), true).whenComplete((ignored, failure) -> runInEventLoop(() -> {
+            if (failure != null || closeReceived) {
+                ctx.close();
+            } else if (!ctx.channel().isClosed()) {
+                closeTimer = ctx.channel().getEventLoop().schedule(this::closeTimedOut,
+                        CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }));
+    }
+
+    @Override
+    public void abort() {
+        closeSent.set(true);
+        // channelInactive ends the session
+        runInEventLoop(ctx::close);
+    }
+
+    /**
+     * Bytes arrived; the peer is alive.
+     */
+    void dataReceived() {
+        lastReadNanos = System.nanoTime();
+        awaitingPong = false;
+    }
+
+    void textReceived(String text) {
+        try {
+            handler.onText(this, text);
+        } catch (Throwable e) {
+            handlerFailed("onText", e);
+        }
+    }
+
+    void binaryReceived(ByteBuffer data) {
+        try {
+            handler.onBinary(this, data);
+        } catch (Throwable e) {
+            handlerFailed("onBinary", e);
+        }
+    }
+
+    void pingReceived(ByteBuffer data) {
+        if (closeSent.get()) {
+            return;
+        }
+        byte[] payload = new byte[data.remaining()];
+        data.get(payload);
+        write(WebSocketFrame.pong(payload).encoded(false), false);
+    }
+
+    /**
+     * The client sent a close frame: answer it unless this side already
+     * did, then drop the connection, as the server closes TCP first.
+     */
+    void closeReceived(int code, String reason) {
+        closeReceived = true;
+        closeCode = code;
+        closeReason = reason;
+        if (!closeSent.compareAndSet(false, true)) {
+            ctx.close();
+            return;
+        }
+        WebSocketFrame reply = code == NO_STATUS ? NORMAL_CLOSE : WebSocketFrame.close(code, "");
+        write(reply.encoded(false), true).whenComplete((ignored, failure) -> runInEventLoop(ctx::close));
+    }
+
+    /**
+     * Fails the connection after a protocol violation (RFC 6455 §7.1.7):
+     * sends a close frame with {@code code} if none was sent yet and drops
+     * the connection once it is written.
+     */
+    void fail(int code, String reason) {
+        logger.debug("websocket_failed remote={} code={} reason={}", request.getRemoteAddress(), code, reason);
+        if (!closeSent.compareAndSet(false, true)) {
+            ctx.close();
+            return;
+        }
+        write(WebSocketFrame.close(code, reason).encoded(false), true)
+                .whenComplete((ignored, failure) -> runInEventLoop(ctx::close));
+    }
+
+    /**
+     * The connection is gone. Runs once, on the event loop.
+     */
+    void channelClosed() {
+        if (!ended.compareAndSet(false, true)) {
+            return;
+        }
+        closeSent.set(true);
+        cancel(pingTimer);
+        cancel(closeTimer);
+        pingTimer = null;
+        closeTimer = null;
+        try {
+            handler.onClose(this, closeCode, closeReason);
+        } catch (Throwable e) {
+            logger.error("websocket_handler_failed callback=onClose uri={} remote={}",
+                    request.getUri(), request.getRemoteAddress(), e);
+        }
+        for (Runnable callback : closeCallbacks) {
+            if (closeCallbacks.remove(callback)) {
+                callback.run();
+            }
+        }
+    }
+
+    private void checkAlive() {
+        if (closeSent.get()) {
+            // the close timer takes over
+            return;
+        }
+        if (awaitingPong) {
+            logger.debug("websocket_ping_timeout remote={} interval_ms={}",
+                    request.getRemoteAddress(), TimeUnit.NANOSECONDS.toMillis(pingIntervalNanos));
+            ctx.close();
+            return;
+        }
+        if (System.nanoTime() - lastReadNanos >= pingIntervalNanos) {
+            awaitingPong = true;
+            write(PING, false);
+        }
+    }
+
+    private void closeTimedOut() {
+        closeTimer = null;
+        logger.debug("websocket_close_timeout remote={}", request.getRemoteAddress());
+        ctx.close();
+    }
+
+    private void handlerFailed(String callback, Throwable e) {
+        logger.error("websocket_handler_failed callback={} uri={} remote={}",
+                callback, request.getUri(), request.getRemoteAddress(), e);
+        fail(INTERNAL_ERROR, "");
+    }
+
+    private CompletableFuture<Void> write(RefCountedBuffer encoded, boolean track) {
+        RefCountedBuffer view = encoded.retainedDuplicate();
+        return submit(view, view.remaining(), track);
+    }
+
+    /**
+     * Hands {@code message} to the event loop; its bytes count as pending
+     * from now on, which is what slow-subscriber eviction looks at.
+     */
+    private CompletableFuture<Void> submit(Object message, int bytes, boolean track) {
+        Channel channel = ctx.channel();
+        CompletableFuture<Void> written = track ? new CompletableFuture<>() : null;
+        channel.reservePendingWriteBytes(bytes);
+        runInEventLoop(() -> {
+            channel.releasePendingWriteBytes(bytes);
+            if (channel.isClosed()) {
+                OutboundBuffers.releaseAll(message);
+                if (written != null) {
+                    written.completeExceptionally(new IOException("channel is closed"));
+                }
+                return;
+            }
+            ChannelFuture future = ctx.write(message);
+            if (written != null) {
+                future.addListener(done -> {
+                    if (done.isSuccess()) {
+                        written.complete(null);
+                    } else {
+                        written.completeExceptionally(done.cause());
+                    }
+                });
+            }
+        });
+        return written;
+    }
+
+    private static void cancel(ScheduledFuture<?> timer) {
+        if (timer != null) {
+            timer.cancel(false);
+        }
+    }
+
+    private void runInEventLoop(Runnable task) {
+        TransportEventLoop eventLoop = ctx.channel().getEventLoop();
+        if (eventLoop != null && !eventLoop.inEventLoop()) {
+            eventLoop.execute(task);
+        } else {
+            task.run();
+        }
+    }
+}
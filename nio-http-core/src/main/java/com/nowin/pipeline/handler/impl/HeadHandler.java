@@ -5,8 +5,9 @@ import com.nowin.pipeline.ChannelHandlerContext;
 import com.nowin.pipeline.handler.ChannelHandler;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.transport.TransportSocketChannel;
-import com.nowin.util.BufferPool;
 import com.nowin.util.ConnectionExceptions;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.RefCountedBuffer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -31,15 +32,15 @@ public class HeadHandler implements ChannelHandler {
         com.nowin.pipeline.Channel channel = ctx.channel();
         if (channel == null) {
             // Test environment without a real channel; skip actual I/O
-            if (msg instanceof ByteBuffer buffer) {
-                BufferPool.DEFAULT.release(buffer);
-            }
+            releaseBuffers(msg);
             return;
         }
         TransportSocketChannel clientChannel = channel.transportChannel();
         try {
-            if (msg instanceof ByteBuffer buffer) {
-                writeByteBuffer(ctx, channel, clientChannel, buffer);
+            if (OutboundBuffers.isBuffer(msg)) {
+                writeByteBuffers(ctx, channel, clientChannel, new Object[] {msg});
+            } else if (msg instanceof Object[] parts) {
+                writeByteBuffers(ctx, channel, clientChannel, parts);
             } else if (msg instanceof FileChannelBody body) {
                 writeFileChannelBody(ctx, channel, clientChannel, body);
             } else {
@@ -55,18 +56,22 @@ public class HeadHandler implements ChannelHandler {
                 ctx.fireExceptionCaught(e);
             }
             channel.getPipeline().completePendingWriteFutures(e);
-            if (msg instanceof ByteBuffer buffer) {
-                BufferPool.DEFAULT.release(buffer);
-            } else if (msg instanceof FileChannelBody body) {
+            if (msg instanceof FileChannelBody body) {
                 try {
                     body.close();
                 } catch (IOException ex) {
                     logger.warn("file_body_close_after_write_failure remote={}", safeRemoteAddress(clientChannel), ex);
                 }
+            } else {
+                releaseBuffers(msg);
             }
         }
     }
 
+    private static void releaseBuffers(Object msg) {
+        OutboundBuffers.releaseAll(msg);
+    }
+
     private Object safeRemoteAddress(TransportSocketChannel clientChannel) {
         try {
             return clientChannel != null ? clientChannel.getRemoteAddress() : "unknown";
@@ -75,42 +80,74 @@ public class HeadHandler implements ChannelHandler {
         }
     }
 
-    private void writeByteBuffer(ChannelHandlerContext ctx, com.nowin.pipeline.Channel channel,
-                                 TransportSocketChannel clientChannel, ByteBuffer buffer) throws IOException {
-        int totalWritten = 0;
-        try {
-            while (buffer.hasRemaining()) {
-                int written = clientChannel.write(buffer);
+    /**
+     * Writes a response as one gathering write, e.g. [headers, body]. Parts are
+     * pooled {@link ByteBuffer}s or {@link RefCountedBuffer} views; drained
+     * ones are released, and whatever the socket does not accept is queued
+     * behind any earlier pending writes and flushed by the event loop. Parts
+     * already handed back are nulled out so the failure path in
+     * {@link #channelWrite} does not release them twice.
+     */
+    private void writeByteBuffers(ChannelHandlerContext ctx, com.nowin.pipeline.Channel channel,
+                                  TransportSocketChannel clientChannel, Object[] parts) throws IOException {
+        ByteBuffer[] buffers;
+        if (parts instanceof ByteBuffer[] plain) {
+            buffers = plain;
+        } else {
+            buffers = new ByteBuffer[parts.length];
+            for (int i = 0; i < parts.length; i++) {
+                buffers[i] = OutboundBuffers.nioBuffer(parts[i]);
+            }
+        }
+        long totalWritten = 0;
+        int first = 0;
+        if (!channel.hasPendingWrites()) {
+            while (first < buffers.length) {
+                long written = clientChannel.write(buffers, first, buffers.length - first);
                 totalWritten += written;
                 logger.trace("head_write_bytes remote={} bytes={}", clientChannel.getRemoteAddress(), written);
+                while (first < buffers.length && !buffers[first].hasRemaining()) {
+                    OutboundBuffers.release(parts[first]);
+                    parts[first++] = null;
+                }
                 if (written == 0) {
-                    ByteBuffer remaining = buffer.slice();
-                    channel.addToWrite(remaining);
-                    logger.debug("head_write_queued remote={} remainingBytes={}",
-                            clientChannel.getRemoteAddress(), buffer.remaining());
-
-                    TransportSelectionKey key = ctx.getSelectionKey();
-                    key.interestOps(key.interestOps() | TransportSelectionKey.OP_WRITE);
-                    channel.getEventLoop().wakeup();
-                    return;
+                    break;
                 }
             }
+        }
 
-            if (totalWritten > 0 && channel.getMetricsCollector() != null) {
-                channel.getMetricsCollector().recordBytesWritten(totalWritten);
+        if (totalWritten > 0 && channel.getMetricsCollector() != null) {
+            channel.getMetricsCollector().recordBytesWritten((int) Math.min(totalWritten, Integer.MAX_VALUE));
+        }
+
+        if (first < buffers.length) {
+            long remainingBytes = 0;
+            for (int i = first; i < buffers.length; i++) {
+                remainingBytes += buffers[i].remaining();
+                channel.addToWrite(parts[i]);
+                parts[i] = null;
             }
+            logger.debug("head_write_queued remote={} remainingBytes={}",
+                    clientChannel.getRemoteAddress(), remainingBytes);
 
-            logger.debug("head_write_complete remote={} bytes={}", clientChannel.getRemoteAddress(), totalWritten);
             TransportSelectionKey key = ctx.getSelectionKey();
-            key.interestOps(key.interestOps() & ~TransportSelectionKey.OP_WRITE);
-            channel.onWriteCompletion();
-        } finally {
-            BufferPool.DEFAULT.release(buffer);
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_WRITE);
+            channel.getEventLoop().wakeup();
+            return;
         }
+
+        logger.debug("head_write_complete remote={} bytes={}", clientChannel.getRemoteAddress(), totalWritten);
+        TransportSelectionKey key = ctx.getSelectionKey();
+        key.interestOps(key.interestOps() & ~TransportSelectionKey.OP_WRITE);
+        channel.onWriteCompletion();
     }
 
     private void writeFileChannelBody(ChannelHandlerContext ctx, com.nowin.pipeline.Channel channel,
                                       TransportSocketChannel clientChannel, FileChannelBody body) throws IOException {
+        if (channel.hasPendingWrites()) {
+            queueFileBody(ctx, channel, body);
+            return;
+        }
         long totalWritten = 0;
         while (!body.isComplete() && totalWritten < MAX_FILE_BYTES_PER_WRITE) {
             long written = body.writeTo(clientChannel, MAX_FILE_BYTES_PER_WRITE - totalWritten);
@@ -0,0 +1,1384 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.BodyParser;
+import com.nowin.http.BodyParserFactory;
+import com.nowin.http.FileChannelBody;
+import com.nowin.http.HttpBody;
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+import com.nowin.http.HttpResponseEncoder;
+import com.nowin.http.MultipartByteRangesBody;
+import com.nowin.http2.HpackDecoder;
+import com.nowin.http2.HpackEncoder;
+import com.nowin.http2.Http2Error;
+import com.nowin.http2.Http2Exception;
+import com.nowin.http2.Http2Settings;
+import com.nowin.pipeline.Channel;
+import com.nowin.pipeline.ChannelHandlerContext;
+import com.nowin.pipeline.handler.ChannelHandler;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.util.BufferPool;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.RefCountedBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * HTTP/2 connection codec (RFC 9113), installed in place of
+ * {@link HttpServerCodec} by {@link HttpUpgradeHandler} when a connection
+ * opens with the client preface or upgrades with {@code Upgrade: h2c}.
+ * <p>
+ * Each stream becomes an {@link HttpRequest} that is handed to the next
+ * handler once the client has sent all of it, so routing and handlers work
+ * as on HTTP/1.1; the answer comes back as {@link Response}, {@link Data}
+ * and {@link End} messages naming the stream. Header blocks are compressed
+ * with HPACK.
+ * <p>
+ * Outbound data is held per stream until the peer's stream and connection
+ * windows admit it, then framed round-robin, one frame per stream per pass,
+ * so one large response does not hold up the others. Held bytes count
+ * towards the channel's write water marks, which is what parks streaming
+ * producers. The connection receive window is only reopened while the
+ * channel is writable, so a client that reads its responses slowly has to
+ * slow down its uploads too. File bodies go out as slices of their file
+ * channel between frame headers, without copying, unless TLS has to
+ * encrypt them.
+ * <p>
+ * Server push and stream priorities are not implemented; PRIORITY frames
+ * are accepted and ignored.
+ */
+public class Http2ServerCodec implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(Http2ServerCodec.class);
+
+    static final byte[] CLIENT_PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int FRAME_HEADER_LENGTH = 9;
+    private static final int DATA = 0x0;
+    private static final int HEADERS = 0x1;
+    private static final int PRIORITY = 0x2;
+    private static final int RST_STREAM = 0x3;
+    private static final int SETTINGS = 0x4;
+    private static final int PUSH_PROMISE = 0x5;
+    private static final int PING = 0x6;
+    private static final int GOAWAY = 0x7;
+    private static final int WINDOW_UPDATE = 0x8;
+    private static final int CONTINUATION = 0x9;
+    private static final int FLAG_END_STREAM = 0x1;
+    private static final int FLAG_ACK = 0x1;
+    private static final int FLAG_END_HEADERS = 0x4;
+    private static final int FLAG_PADDED = 0x8;
+    private static final int FLAG_PRIORITY = 0x20;
+    // Largest header block buffered across CONTINUATION frames when no header list limit is set
+    private static final int MAX_HEADER_BLOCK_SIZE = 1024 * 1024;
+    // RST_STREAM frames a client may send per window before the connection is
+    // failed, which stops HEADERS+RST floods (rapid reset, CVE-2023-44487)
+    private static final int MAX_PEER_RESETS_PER_WINDOW = 200;
+    private static final long PEER_RESET_WINDOW_NANOS = TimeUnit.SECONDS.toNanos(30);
+    // Connection-specific fields, which make a request malformed (RFC 9113 §8.2.2)
+    private static final Set<String> CONNECTION_HEADERS = Set.of(
+            "connection", "keep-alive", "proxy-connection", "transfer-encoding", "upgrade");
+    private static final HttpResponseEncoder RESPONSE_ENCODER = new HttpResponseEncoder();
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * Headers of a response on {@code streamId}, followed by its buffered
+     * body. A streamed response sends only its headers, and then
+     * {@link Data} and an {@link End}, unless {@code endStream} says that
+     * nothing follows, as for {@code HEAD}.
+     */
+    record Response(int streamId, HttpResponse response, boolean endStream) {
+    }
+
+    /**
+     * A piece of a streamed response body: a {@link ByteBuffer} or a
+     * {@link RefCountedBuffer} reference, which the codec releases.
+     */
+    record Data(int streamId, Object payload) {
+    }
+
+    /**
+     * Ends a streamed response, with trailers if there are any.
+     */
+    record End(int streamId, Map<String, String> trailers) {
+    }
+
+    /**
+     * Written by the handler to abandon a stream, read by it when the
+     * client cancelled one it had already received.
+     */
+    record StreamReset(int streamId) {
+    }
+
+    private final Http2Settings localSettings;
+    private final Http2Settings remoteSettings;
+    private final long maxBodySize;
+    private final HpackDecoder hpackDecoder;
+    private final HpackEncoder hpackEncoder = new HpackEncoder();
+    private final int connectionWindowTarget;
+    // Everything below is event-loop confined
+    private final Map<Integer, Stream> streams = new HashMap<>();
+    // Streams reset after their request was handed on but before a response
+    // came back; the handler is still busy with them, so they count against
+    // the concurrent stream limit until it writes one
+    private final Set<Integer> abandoned = new HashSet<>();
+    // Streams with queued output, served round-robin
+    private final Set<Stream> ready = new LinkedHashSet<>();
+    // Frame parts waiting to go down the pipeline, in order
+    private final ArrayDeque<Object> outbound = new ArrayDeque<>();
+    private ChannelHandlerContext ctx;
+    private String remoteAddress = "unknown";
+    private boolean zeroCopy;
+    // Bytes of an incomplete frame carried over to the next read; null when none
+    private ByteBuffer cumulation;
+    private int pendingFrameLength;
+    private boolean prefaceReceived;
+    private boolean settingsReceived;
+    private boolean settingsAcknowledged;
+    private int lastStreamId;
+    // Stream whose header block continues in CONTINUATION frames, 0 when none
+    private int headerBlockStreamId;
+    private int headerBlockFlags;
+    private ByteBuffer headerBlock;
+    private int connectionSendWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+    private int connectionReceiveWindow = Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE;
+    private int suspendedIdleTimeoutMillis = -1;
+    private boolean writing;
+    private boolean failed;
+    private boolean closed;
+    private int peerResets;
+    private long peerResetWindowStart = System.nanoTime();
+
+    /**
+     * @param localSettings  the settings announced to the client
+     * @param remoteSettings the client's settings from an {@code HTTP2-Settings}
+     *                       upgrade header, or {@code null} for the defaults
+     * @param maxBodySize    largest request body accepted, 0 for no limit
+     */
+    Http2ServerCodec(Http2Settings localSettings, Http2Settings remoteSettings, long maxBodySize) {
+        this.localSettings = new Http2Settings(localSettings);
+        this.remoteSettings = remoteSettings != null ? new Http2Settings(remoteSettings) : new Http2Settings();
+        this.maxBodySize = maxBodySize;
+        this.hpackDecoder = new HpackDecoder(localSettings.getHeaderTableSize(), localSettings.getMaxHeaderListSize());
+        this.connectionWindowTarget = Math.max(localSettings.getInitialWindowSize(), Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE);
+        hpackEncoder.setMaxTableSize(Math.min(this.remoteSettings.getHeaderTableSize(), Http2Settings.DEFAULT_HEADER_TABLE_SIZE));
+    }
+
+    /**
+     * Sends the server preface: our SETTINGS, and a connection window as
+     * large as a stream's.
+     */
+    @Override
+    public void handlerAdded(ChannelHandlerContext ctx) {
+        this.ctx = ctx;
+        Channel channel = ctx.channel();
+        if (channel != null) {
+            zeroCopy = channel.getPipeline().get("ssl") == null;
+            if (channel.getRemoteAddress() != null) {
+                remoteAddress = channel.getRemoteAddress().toString();
+            }
+        }
+        emitFrame(SETTINGS, 0, 0, localSettings.encode());
+        if (connectionWindowTarget > connectionReceiveWindow) {
+            emitWindowUpdate(0, connectionWindowTarget - connectionReceiveWindow);
+            connectionReceiveWindow = connectionWindowTarget;
+        }
+        writeOut();
+    }
+
+    /**
+     * Takes over the request that asked for {@code Upgrade: h2c} as stream
+     * 1, which the client has already sent in full (RFC 9113 §3.2 of RFC
+     * 7540). Must run right after the codec was added.
+     */
+    void upgrade(HttpRequest request) {
+        Stream stream = openStream(1);
+        stream.request = request;
+        stream.remoteClosed = true;
+        stream.dispatched = true;
+        request.setStreamId(1);
+        request.setProtocolVersion("HTTP/2.0");
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ByteBuffer buffer = (ByteBuffer) msg;
+        try {
+            if (!buffer.hasRemaining() || failed || closed) {
+                return;
+            }
+            if (cumulation == null) {
+                decode(buffer);
+                if (buffer.hasRemaining() && !failed) {
+                    cumulation = allocate(Math.max(buffer.remaining(), pendingFrameLength)).put(buffer).flip();
+                }
+            } else {
+                cumulate(buffer);
+                decode(cumulation);
+                if (!cumulation.hasRemaining() || failed) {
+                    releaseCumulation();
+                }
+            }
+        } catch (Http2Exception e) {
+            connectionError(e);
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            Channel channel = ctx.channel();
+            if (channel != null) {
+                channel.setReadBuffer(null);
+            }
+            writeOut();
+            // An unwritable channel turns reading back on once it drains
+            if (channel != null && !failed && !closed && channel.isWritable()) {
+                enableRead(ctx.getSelectionKey());
+            }
+        }
+    }
+
+    private void decode(ByteBuffer in) throws Http2Exception {
+        if (!prefaceReceived) {
+            int length = Math.min(in.remaining(), CLIENT_PREFACE.length);
+            for (int i = 0; i < length; i++) {
+                if (in.get(in.position() + i) != CLIENT_PREFACE[i]) {
+                    throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "invalid connection preface");
+                }
+            }
+            if (length < CLIENT_PREFACE.length) {
+                return;
+            }
+            in.position(in.position() + length);
+            prefaceReceived = true;
+        }
+        while (!failed && in.remaining() >= FRAME_HEADER_LENGTH) {
+            int start = in.position();
+            int length = ((in.get(start) & 0xFF) << 16) | ((in.get(start + 1) & 0xFF) << 8) | (in.get(start + 2) & 0xFF);
+            int type = in.get(start + 3) & 0xFF;
+            int flags = in.get(start + 4) & 0xFF;
+            int streamId = in.getInt(start + 5) & 0x7FFFFFFF;
+            if (length > localSettings.getMaxFrameSize()) {
+                throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR,
+                        "frame of " + length + " bytes exceeds " + localSettings.getMaxFrameSize());
+            }
+            if (in.remaining() < FRAME_HEADER_LENGTH + length) {
+                pendingFrameLength = FRAME_HEADER_LENGTH + length;
+                return;
+            }
+            pendingFrameLength = 0;
+            int payloadStart = start + FRAME_HEADER_LENGTH;
+            ByteBuffer payload = in.duplicate().position(payloadStart).limit(payloadStart + length).slice();
+            in.position(payloadStart + length);
+            try {
+                onFrame(type, flags, streamId, payload);
+            } catch (Http2Exception e) {
+                if (e.isConnectionError()) {
+                    throw e;
+                }
+                logger.debug("http2_stream_error stream={} error={} reason={} remote={}",
+                        e.getStreamId(), e.getError(), e.getMessage(), remoteAddress);
+                resetStream(e.getStreamId(), e.getError(), true);
+            }
+        }
+    }
+
+    private void onFrame(int type, int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (!settingsReceived && (type != SETTINGS || (flags & FLAG_ACK) != 0)) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "the preface must end with SETTINGS");
+        }
+        if (headerBlockStreamId != 0 && (type != CONTINUATION || streamId != headerBlockStreamId)) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR,
+                    "expected CONTINUATION for stream " + headerBlockStreamId);
+        }
+        switch (type) {
+            case DATA -> onData(flags, streamId, payload);
+            case HEADERS -> onHeaders(flags, streamId, payload);
+            case PRIORITY -> onPriority(streamId, payload);
+            case RST_STREAM -> onRstStream(streamId, payload);
+            case SETTINGS -> onSettings(flags, streamId, payload);
+            case PUSH_PROMISE -> throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "clients cannot push");
+            case PING -> onPing(flags, streamId, payload);
+            case GOAWAY -> onGoAway(streamId, payload);
+            case WINDOW_UPDATE -> onWindowUpdate(streamId, payload);
+            case CONTINUATION -> onContinuation(flags, streamId, payload);
+            default -> {
+                // RFC 9113 §4.1: frames of unknown types are ignored
+            }
+        }
+    }
+
+    private void onData(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "DATA on stream 0");
+        }
+        int frameLength = payload.remaining();
+        connectionReceiveWindow -= frameLength;
+        if (connectionReceiveWindow < 0) {
+            throw Http2Exception.connectionError(Http2Error.FLOW_CONTROL_ERROR, "connection receive window exceeded");
+        }
+        reopenConnectionWindow();
+        ByteBuffer data = removePadding(flags, payload);
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            if (streamId > lastStreamId) {
+                throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "DATA on idle stream " + streamId);
+            }
+            // A stream we reset may still have data in flight
+            return;
+        }
+        if (stream.remoteClosed) {
+            throw Http2Exception.streamError(streamId, Http2Error.STREAM_CLOSED, "DATA after END_STREAM");
+        }
+        stream.receiveWindow -= frameLength;
+        if (stream.receiveWindow < 0) {
+            throw Http2Exception.streamError(streamId, Http2Error.FLOW_CONTROL_ERROR, "stream receive window exceeded");
+        }
+        if (!stream.rejected) {
+            receiveBody(stream, data);
+        }
+        if ((flags & FLAG_END_STREAM) != 0) {
+            stream.remoteClosed = true;
+            if (!stream.rejected) {
+                requestReceived(stream);
+            }
+            closeIfDone(stream);
+        } else if (!stream.rejected && stream.receiveWindow <= localSettings.getInitialWindowSize() / 2) {
+            emitWindowUpdate(streamId, localSettings.getInitialWindowSize() - stream.receiveWindow);
+            stream.receiveWindow = localSettings.getInitialWindowSize();
+        }
+    }
+
+    private void onHeaders(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0 || (streamId & 1) == 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "HEADERS on invalid stream " + streamId);
+        }
+        ByteBuffer fragment = removePadding(flags, payload);
+        if ((flags & FLAG_PRIORITY) != 0) {
+            if (fragment.remaining() < 5) {
+                throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "truncated HEADERS priority");
+            }
+            // Stream dependency and weight; priorities are not implemented
+            fragment.position(fragment.position() + 5);
+        }
+        if ((flags & FLAG_END_HEADERS) != 0) {
+            onHeaderBlock(streamId, flags, fragment);
+            return;
+        }
+        headerBlockStreamId = streamId;
+        headerBlockFlags = flags;
+        headerBlock = ByteBuffer.allocate(Math.max(1024, fragment.remaining() * 2)).put(fragment);
+    }
+
+    private void onContinuation(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (headerBlockStreamId == 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "CONTINUATION without HEADERS");
+        }
+        long limit = localSettings.getMaxHeaderListSize() == Http2Settings.UNLIMITED
+                ? MAX_HEADER_BLOCK_SIZE : Math.max(localSettings.getMaxHeaderListSize(), 16384);
+        if (headerBlock.position() + payload.remaining() > limit) {
+            throw Http2Exception.connectionError(Http2Error.ENHANCE_YOUR_CALM, "header block exceeds " + limit + " bytes");
+        }
+        if (headerBlock.remaining() < payload.remaining()) {
+            int needed = headerBlock.position() + payload.remaining();
+            headerBlock = ByteBuffer.allocate(Math.max(needed, headerBlock.capacity() * 2)).put(headerBlock.flip());
+        }
+        headerBlock.put(payload);
+        if ((flags & FLAG_END_HEADERS) == 0) {
+            return;
+        }
+        ByteBuffer block = headerBlock.flip();
+        int blockFlags = headerBlockFlags;
+        headerBlock = null;
+        headerBlockStreamId = 0;
+        onHeaderBlock(streamId, blockFlags, block);
+    }
+
+    /**
+     * Decodes a complete header block: the request of a new stream, or the
+     * trailers of one whose body is arriving. The block is always decoded,
+     * even when the stream is refused, to keep the HPACK table in step.
+     */
+    private void onHeaderBlock(int streamId, int flags, ByteBuffer block) throws Http2Exception {
+        boolean endStream = (flags & FLAG_END_STREAM) != 0;
+        Stream stream = streams.get(streamId);
+        if (stream != null || streamId <= lastStreamId) {
+            hpackDecoder.decode(block, (name, value) -> {
+                // Request trailers are not exposed
+            });
+            if (stream == null || stream.remoteClosed) {
+                throw Http2Exception.streamError(streamId, Http2Error.STREAM_CLOSED, "HEADERS on a closed stream");
+            }
+            if (!endStream) {
+                throw Http2Exception.streamError(streamId, Http2Error.PROTOCOL_ERROR, "trailers without END_STREAM");
+            }
+            stream.remoteClosed = true;
+            if (!stream.rejected) {
+                requestReceived(stream);
+            }
+            closeIfDone(stream);
+            return;
+        }
+        lastStreamId = streamId;
+        RequestHeaders headers = new RequestHeaders();
+        boolean complete = hpackDecoder.decode(block, headers);
+        long maxStreams = localSettings.getMaxConcurrentStreams();
+        if (maxStreams != Http2Settings.UNLIMITED && streams.size() + abandoned.size() >= maxStreams) {
+            throw Http2Exception.streamError(streamId, Http2Error.REFUSED_STREAM, "too many concurrent streams");
+        }
+        stream = openStream(streamId);
+        stream.remoteClosed = endStream;
+        if (!complete) {
+            reject(stream, 431, "Request Header Fields Too Large");
+            return;
+        }
+        HttpRequest request = headers.toRequest();
+        if (request == null) {
+            throw Http2Exception.streamError(streamId, Http2Error.PROTOCOL_ERROR, headers.error);
+        }
+        request.setRemoteAddress(remoteAddress);
+        request.setStreamId(streamId);
+        stream.request = request;
+        String contentLength = request.getHeader("content-length").orElse(null);
+        if (contentLength != null) {
+            try {
+                stream.expectedLength = Long.parseLong(contentLength.trim());
+            } catch (NumberFormatException e) {
+                stream.expectedLength = -1;
+            }
+            if (stream.expectedLength < 0) {
+                throw Http2Exception.streamError(streamId, Http2Error.PROTOCOL_ERROR, "invalid content-length");
+            }
+        }
+        logger.debug("http2_stream_opened stream={} method={} uri={} remote={}",
+                streamId, request.getMethod(), request.getUri(), remoteAddress);
+        if (endStream) {
+            requestReceived(stream);
+            return;
+        }
+        if (maxBodySize > 0 && stream.expectedLength > maxBodySize) {
+            reject(stream, 413, "Payload Too Large");
+        } else if (stream.expectedLength > 0) {
+            stream.bodyParser = createBodyParser(request, stream.expectedLength);
+            if (stream.bodyParser == null) {
+                reject(stream, 400, "Bad Request");
+            }
+        }
+    }
+
+    private void onPriority(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "PRIORITY on stream 0");
+        }
+        if (payload.remaining() != 5) {
+            throw Http2Exception.streamError(streamId, Http2Error.FRAME_SIZE_ERROR, "PRIORITY must be 5 bytes");
+        }
+    }
+
+    private void onRstStream(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId == 0 || streamId > lastStreamId) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "RST_STREAM on idle stream " + streamId);
+        }
+        if (payload.remaining() != 4) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "RST_STREAM must be 4 bytes");
+        }
+        long now = System.nanoTime();
+        if (now - peerResetWindowStart > PEER_RESET_WINDOW_NANOS) {
+            peerResetWindowStart = now;
+            peerResets = 0;
+        }
+        if (++peerResets > MAX_PEER_RESETS_PER_WINDOW) {
+            throw Http2Exception.connectionError(Http2Error.ENHANCE_YOUR_CALM, "too many stream resets");
+        }
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            return;
+        }
+        logger.debug("http2_stream_reset_by_peer stream={} error={} remote={}",
+                streamId, Http2Error.of(payload.getInt()), remoteAddress);
+        ready.remove(stream);
+        boolean held = !stream.queue.isEmpty();
+        closeStream(stream);
+        if (held) {
+            // Settles the write futures of data that will never be sent
+            outbound.add(EMPTY.duplicate());
+        }
+        abandon(stream);
+    }
+
+    private void onSettings(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId != 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "SETTINGS on stream " + streamId);
+        }
+        if ((flags & FLAG_ACK) != 0) {
+            if (payload.hasRemaining()) {
+                throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "SETTINGS ACK with a payload");
+            }
+            settingsAcknowledged = true;
+            return;
+        }
+        int previousWindow = remoteSettings.getInitialWindowSize();
+        remoteSettings.decode(payload);
+        settingsReceived = true;
+        int delta = remoteSettings.getInitialWindowSize() - previousWindow;
+        if (delta != 0) {
+            for (Stream stream : streams.values()) {
+                long window = (long) stream.sendWindow + delta;
+                if (window > Http2Settings.MAX_WINDOW_SIZE) {
+                    throw Http2Exception.connectionError(Http2Error.FLOW_CONTROL_ERROR, "stream window overflow");
+                }
+                stream.sendWindow = (int) window;
+            }
+        }
+        hpackEncoder.setMaxTableSize(Math.min(remoteSettings.getHeaderTableSize(), Http2Settings.DEFAULT_HEADER_TABLE_SIZE));
+        logger.debug("http2_settings_received settings={} remote={}", remoteSettings, remoteAddress);
+        emitFrame(SETTINGS, FLAG_ACK, 0, EMPTY.duplicate());
+        if (delta > 0) {
+            flush();
+        }
+    }
+
+    private void onPing(int flags, int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId != 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "PING on stream " + streamId);
+        }
+        if (payload.remaining() != 8) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "PING must be 8 bytes");
+        }
+        if ((flags & FLAG_ACK) == 0) {
+            emitFrame(PING, FLAG_ACK, 0, ByteBuffer.allocate(8).put(payload).flip());
+        }
+    }
+
+    private void onGoAway(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (streamId != 0) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "GOAWAY on stream " + streamId);
+        }
+        if (payload.remaining() < 8) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "truncated GOAWAY");
+        }
+        // The client closes the connection once its open streams are answered
+        logger.debug("http2_goaway_received lastStreamId={} error={} remote={}",
+                payload.getInt() & 0x7FFFFFFF, Http2Error.of(payload.getInt()), remoteAddress);
+    }
+
+    private void onWindowUpdate(int streamId, ByteBuffer payload) throws Http2Exception {
+        if (payload.remaining() != 4) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "WINDOW_UPDATE must be 4 bytes");
+        }
+        int increment = payload.getInt() & 0x7FFFFFFF;
+        if (streamId == 0) {
+            if (increment == 0) {
+                throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "zero connection window increment");
+            }
+            long window = (long) connectionSendWindow + increment;
+            if (window > Http2Settings.MAX_WINDOW_SIZE) {
+                throw Http2Exception.connectionError(Http2Error.FLOW_CONTROL_ERROR, "connection window overflow");
+            }
+            connectionSendWindow = (int) window;
+        } else {
+            if (streamId > lastStreamId) {
+                throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "WINDOW_UPDATE on idle stream " + streamId);
+            }
+            if (increment == 0) {
+                throw Http2Exception.streamError(streamId, Http2Error.PROTOCOL_ERROR, "zero stream window increment");
+            }
+            Stream stream = streams.get(streamId);
+            if (stream == null) {
+                return;
+            }
+            long window = (long) stream.sendWindow + increment;
+            if (window > Http2Settings.MAX_WINDOW_SIZE) {
+                throw Http2Exception.streamError(streamId, Http2Error.FLOW_CONTROL_ERROR, "stream window overflow");
+            }
+            stream.sendWindow = (int) window;
+        }
+        flush();
+    }
+
+    private static ByteBuffer removePadding(int flags, ByteBuffer payload) throws Http2Exception {
+        if ((flags & FLAG_PADDED) == 0) {
+            return payload;
+        }
+        if (!payload.hasRemaining()) {
+            throw Http2Exception.connectionError(Http2Error.FRAME_SIZE_ERROR, "missing pad length");
+        }
+        int padLength = payload.get() & 0xFF;
+        if (padLength > payload.remaining()) {
+            throw Http2Exception.connectionError(Http2Error.PROTOCOL_ERROR, "padding exceeds the frame");
+        }
+        return payload.limit(payload.limit() - padLength);
+    }
+
+    /**
+     * Feeds request body bytes to the stream's parser, or buffers them until
+     * the body is complete when the client did not say how long it is.
+     */
+    private void receiveBody(Stream stream, ByteBuffer data) throws Http2Exception {
+        if (!data.hasRemaining()) {
+            return;
+        }
+        stream.received += data.remaining();
+        if (stream.expectedLength >= 0 && stream.received > stream.expectedLength) {
+            throw Http2Exception.streamError(stream.id, Http2Error.PROTOCOL_ERROR, "body exceeds content-length");
+        }
+        if (maxBodySize > 0 && stream.received > maxBodySize) {
+            reject(stream, 413, "Payload Too Large");
+            return;
+        }
+        if (stream.bodyParser != null) {
+            parseBody(stream, data);
+            return;
+        }
+        if (stream.body == null) {
+            stream.body = ByteBuffer.allocate(Math.max(4096, data.remaining()));
+        } else if (stream.body.remaining() < data.remaining()) {
+            int needed = stream.body.position() + data.remaining();
+            stream.body = ByteBuffer.allocate(Math.max(needed, stream.body.capacity() * 2)).put(stream.body.flip());
+        }
+        stream.body.put(data);
+    }
+
+    private void parseBody(Stream stream, ByteBuffer data) {
+        try {
+            stream.bodyParser.parse(data, stream.request.getHeaders());
+        } catch (IOException e) {
+            logger.debug("http2_body_parse_failed stream={} remote={} cause={}", stream.id, remoteAddress, e.toString());
+            reject(stream, 400, "Bad Request");
+            return;
+        }
+        if (stream.bodyParser.hasError()) {
+            reject(stream, 400, "Bad Request");
+        }
+    }
+
+    /**
+     * Completes the request once the client has ended the stream and hands
+     * it on.
+     */
+    private void requestReceived(Stream stream) throws Http2Exception {
+        if (stream.expectedLength >= 0 && stream.received != stream.expectedLength) {
+            throw Http2Exception.streamError(stream.id, Http2Error.PROTOCOL_ERROR, "body length differs from content-length");
+        }
+        if (stream.bodyParser == null && stream.body != null) {
+            stream.bodyParser = createBodyParser(stream.request, stream.received);
+            if (stream.bodyParser == null) {
+                reject(stream, 400, "Bad Request");
+                return;
+            }
+            ByteBuffer body = stream.body.flip();
+            stream.body = null;
+            parseBody(stream, body);
+            if (stream.rejected) {
+                return;
+            }
+        }
+        if (stream.bodyParser != null) {
+            if (!stream.bodyParser.isComplete()) {
+                reject(stream, 400, "Bad Request");
+                return;
+            }
+            stream.bodyParser.populate(stream.request);
+            stream.bodyParser = null;
+        }
+        stream.dispatched = true;
+        ctx.fireChannelRead(stream.request);
+    }
+
+    private BodyParser createBodyParser(HttpRequest request, long length) {
+        String contentType = request.getContentType().orElse("application/octet-stream");
+        String lowerContentType = contentType.toLowerCase(Locale.ROOT);
+        long sizeThreshold = BodyParserFactory.getDefaultSizeThreshold();
+        if (lowerContentType.startsWith("multipart/form-data")) {
+            String boundary = BodyParserFactory.extractBoundary(contentType);
+            return boundary != null ? BodyParserFactory.createMultipartParser(boundary, sizeThreshold, maxBodySize) : null;
+        }
+        if (lowerContentType.startsWith("application/x-www-form-urlencoded")) {
+            return BodyParserFactory.createUrlEncodedParser(length, maxBodySize);
+        }
+        return BodyParserFactory.createRawBodyParser(length, sizeThreshold, maxBodySize);
+    }
+
+    /**
+     * Answers a stream with an error status from the codec itself; the
+     * rest of its request body is discarded.
+     */
+    private void reject(Stream stream, int statusCode, String reason) {
+        logger.debug("http2_stream_rejected stream={} status={} remote={}", stream.id, statusCode, remoteAddress);
+        stream.rejected = true;
+        stream.bodyParser = null;
+        stream.body = null;
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(statusCode);
+        response.setBody(reason);
+        stream.headersSent = true;
+        sendResponse(stream, response, true);
+    }
+
+    @Override
+    public void channelWrite(ChannelHandlerContext ctx, Object msg) {
+        if (msg instanceof Response response) {
+            writeResponse(response);
+        } else if (msg instanceof Data data) {
+            writeData(data);
+        } else if (msg instanceof End end) {
+            writeEnd(end);
+        } else if (msg instanceof StreamReset reset) {
+            abandoned.remove(reset.streamId());
+            if (streams.containsKey(reset.streamId())) {
+                resetStream(reset.streamId(), Http2Error.INTERNAL_ERROR, false);
+            } else {
+                outbound.add(EMPTY.duplicate());
+            }
+        } else if (msg instanceof FileChannelBody || OutboundBuffers.isBuffer(msg) || msg instanceof Object[]) {
+            // HTTP/1.x bytes, such as an error page, have no place on this connection
+            logger.debug("http2_raw_write_dropped type={} remote={}", msg.getClass().getSimpleName(), remoteAddress);
+            discard(msg);
+            return;
+        } else {
+            ctx.fireChannelWrite(msg);
+            return;
+        }
+        flush();
+        writeOut();
+    }
+
+    private void writeResponse(Response message) {
+        Stream stream = streams.get(message.streamId());
+        HttpResponse response = message.response();
+        abandoned.remove(message.streamId());
+        if (stream == null || stream.headersSent || closed || failed) {
+            if (response.getHttpBody() != null) {
+                discard(response.getHttpBody());
+            }
+            outbound.add(EMPTY.duplicate());
+            return;
+        }
+        stream.headersSent = true;
+        sendResponse(stream, response, message.endStream());
+    }
+
+    private void writeData(Data message) {
+        Stream stream = streams.get(message.streamId());
+        if (stream == null || !stream.headersSent || stream.endQueued || closed || failed) {
+            discard(message.payload());
+            outbound.add(EMPTY.duplicate());
+            return;
+        }
+        enqueue(stream, message.payload());
+    }
+
+    private void writeEnd(End message) {
+        Stream stream = streams.get(message.streamId());
+        if (stream == null || !stream.headersSent || stream.endQueued || closed || failed) {
+            outbound.add(EMPTY.duplicate());
+            return;
+        }
+        stream.endQueued = true;
+        stream.queue.add(message);
+        ready.add(stream);
+    }
+
+    private void sendResponse(Stream stream, HttpResponse response, boolean endStream) {
+        List<Map.Entry<String, String>> fields = RESPONSE_ENCODER.encodeHttp2Head(response);
+        Object body = response.isStreaming() ? null : RESPONSE_ENCODER.encodeHttp2Body(response);
+        if (body == null) {
+            emitHeaders(stream.id, fields, endStream);
+            if (endStream) {
+                stream.endQueued = true;
+                localClosed(stream);
+            }
+            return;
+        }
+        emitHeaders(stream.id, fields, false);
+        if (body instanceof MultipartByteRangesBody multipart) {
+            for (Object part : multipart.parts()) {
+                enqueue(stream, part);
+            }
+        } else {
+            enqueue(stream, body);
+        }
+        stream.endQueued = true;
+        stream.queue.add(new End(stream.id, response.getTrailers()));
+    }
+
+    /**
+     * Queues body bytes on a stream. They count as pending output of the
+     * channel until they are framed.
+     */
+    private void enqueue(Stream stream, Object payload) {
+        Object item = payload instanceof ByteBuffer buffer ? BufferPool.DEFAULT.share(buffer) : payload;
+        if (!(item instanceof RefCountedBuffer) && !(item instanceof FileChannelBody)) {
+            logger.warn("http2_body_unsupported type={} remote={}", item.getClass().getName(), remoteAddress);
+            discard(item);
+            return;
+        }
+        long bytes = remaining(item);
+        stream.heldBytes += bytes;
+        if (ctx.channel() != null) {
+            ctx.channel().reservePendingWriteBytes(bytes);
+        }
+        stream.queue.add(item);
+        ready.add(stream);
+    }
+
+    /**
+     * Frames queued output while the flow-control windows allow, one frame
+     * per stream per pass.
+     */
+    private void flush() {
+        boolean progress = true;
+        while (progress && !ready.isEmpty()) {
+            progress = false;
+            Iterator<Stream> it = ready.iterator();
+            while (it.hasNext()) {
+                Stream stream = it.next();
+                progress |= writeFrame(stream);
+                if (stream.queue.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Frames the next piece of a stream's queued output.
+     *
+     * @return false if the stream is blocked by flow control
+     */
+    private boolean writeFrame(Stream stream) {
+        Object item = stream.queue.peek();
+        if (item instanceof End end) {
+            stream.queue.poll();
+            if (end.trailers() != null && !end.trailers().isEmpty()) {
+                emitHeaders(stream.id, trailerFields(end.trailers()), true);
+            } else {
+                emitFrame(DATA, FLAG_END_STREAM, stream.id, EMPTY.duplicate());
+            }
+            localClosed(stream);
+            return true;
+        }
+        long remaining = remaining(item);
+        if (remaining == 0) {
+            discard(stream.queue.poll());
+            return true;
+        }
+        int length = (int) Math.min(Math.min(remaining, remoteSettings.getMaxFrameSize()),
+                Math.min(stream.sendWindow, connectionSendWindow));
+        if (length <= 0) {
+            return false;
+        }
+        Object payload;
+        try {
+            payload = slice(item, length);
+        } catch (IOException e) {
+            logger.warn("http2_file_read_failed stream={} remote={}", stream.id, remoteAddress, e);
+            emitFrame(RST_STREAM, 0, stream.id, errorPayload(Http2Error.INTERNAL_ERROR));
+            closeStream(stream);
+            return true;
+        }
+        int flags = 0;
+        if (length == remaining) {
+            discard(stream.queue.poll());
+            if (stream.queue.peek() instanceof End end && (end.trailers() == null || end.trailers().isEmpty())) {
+                stream.queue.poll();
+                flags = FLAG_END_STREAM;
+            }
+        }
+        outbound.add(frameHeader(length, DATA, flags, stream.id));
+        outbound.add(payload);
+        stream.sendWindow -= length;
+        connectionSendWindow -= length;
+        stream.heldBytes -= length;
+        if (ctx.channel() != null) {
+            ctx.channel().releasePendingWriteBytes(length);
+        }
+        if (flags != 0) {
+            localClosed(stream);
+        }
+        return true;
+    }
+
+    /**
+     * Takes the next {@code length} bytes of a queued body: a view of a
+     * buffer, or a slice of a file that is written straight from its
+     * channel, or read into memory when TLS sits in between.
+     */
+    private Object slice(Object item, int length) throws IOException {
+        if (item instanceof RefCountedBuffer shared) {
+            RefCountedBuffer view = shared.retainedDuplicate();
+            view.nioBuffer().limit(view.nioBuffer().position() + length);
+            shared.nioBuffer().position(shared.nioBuffer().position() + length);
+            return view;
+        }
+        FileChannelBody slice = ((FileChannelBody) item).slice(length);
+        if (zeroCopy) {
+            return slice;
+        }
+        ByteBuffer buffer = allocate(length);
+        buffer.limit(length);
+        try {
+            long position = slice.position();
+            while (buffer.hasRemaining()) {
+                int read = slice.fileChannel().read(buffer, position);
+                if (read < 0) {
+                    throw new EOFException("file ended before its body did");
+                }
+                position += read;
+            }
+        } catch (IOException e) {
+            BufferPool.DEFAULT.release(buffer);
+            throw e;
+        } finally {
+            slice.close();
+        }
+        return buffer.flip();
+    }
+
+    private static List<Map.Entry<String, String>> trailerFields(Map<String, String> trailers) {
+        List<Map.Entry<String, String>> fields = new ArrayList<>(trailers.size());
+        for (Map.Entry<String, String> trailer : trailers.entrySet()) {
+            String name = trailer.getKey().toLowerCase(Locale.ROOT);
+            if (!CONNECTION_HEADERS.contains(name)) {
+                fields.add(Map.entry(name, trailer.getValue()));
+            }
+        }
+        return fields;
+    }
+
+    /**
+     * Records that our side of the stream has ended. A response that ends
+     * before its request tells the client to stop sending (RFC 9113 §8.1).
+     */
+    private void localClosed(Stream stream) {
+        stream.localClosed = true;
+        if (!stream.remoteClosed) {
+            emitFrame(RST_STREAM, 0, stream.id, errorPayload(Http2Error.NO_ERROR));
+            stream.remoteClosed = true;
+        }
+        closeIfDone(stream);
+    }
+
+    private void closeIfDone(Stream stream) {
+        if (stream.localClosed && stream.remoteClosed) {
+            closeStream(stream);
+        }
+    }
+
+    /**
+     * Resets a stream on our side: after a stream error, or for the
+     * handler when it abandons a response.
+     *
+     * @param notify whether the handler is told, if it has the request
+     */
+    private void resetStream(int streamId, Http2Error error, boolean notify) {
+        emitFrame(RST_STREAM, 0, streamId, errorPayload(error));
+        Stream stream = streams.get(streamId);
+        if (stream == null) {
+            return;
+        }
+        ready.remove(stream);
+        closeStream(stream);
+        if (notify) {
+            abandon(stream);
+        }
+    }
+
+    /**
+     * Tells the handler that a stream it has the request of was reset. Until
+     * it answers, the stream still takes a slot of the concurrency limit.
+     */
+    private void abandon(Stream stream) {
+        if (!stream.dispatched) {
+            return;
+        }
+        if (!stream.headersSent) {
+            abandoned.add(stream.id);
+        }
+        ctx.fireChannelRead(new StreamReset(stream.id));
+    }
+
+    /**
+     * Forgets a stream and drops whatever it still had queued. Leaves
+     * {@link #ready} alone, which {@link #flush()} may be iterating.
+     */
+    private void closeStream(Stream stream) {
+        if (streams.remove(stream.id) == null) {
+            return;
+        }
+        stream.localClosed = true;
+        stream.remoteClosed = true;
+        releaseStream(stream);
+        logger.trace("http2_stream_closed stream={} remote={}", stream.id, remoteAddress);
+        if (streams.isEmpty()) {
+            restoreIdleTimeout();
+        }
+    }
+
+    private void releaseStream(Stream stream) {
+        for (Object item : stream.queue) {
+            discard(item);
+        }
+        stream.queue.clear();
+        if (ctx.channel() != null) {
+            ctx.channel().releasePendingWriteBytes(stream.heldBytes);
+        }
+        stream.heldBytes = 0;
+        if (!stream.dispatched && stream.request != null) {
+            stream.request.cleanup();
+        }
+    }
+
+    private Stream openStream(int streamId) {
+        Stream stream = new Stream(streamId, remoteSettings.getInitialWindowSize(),
+                // Until our SETTINGS are acknowledged the client may still use the default window
+                settingsAcknowledged ? localSettings.getInitialWindowSize()
+                        : Math.max(localSettings.getInitialWindowSize(), Http2Settings.DEFAULT_INITIAL_WINDOW_SIZE));
+        lastStreamId = Math.max(lastStreamId, streamId);
+        if (streams.isEmpty()) {
+            suspendIdleTimeout();
+        }
+        streams.put(streamId, stream);
+        return stream;
+    }
+
+    /**
+     * The idle timeout is suspended while streams are open: a client
+     * waiting for a long response or an event stream sends nothing.
+     */
+    private void suspendIdleTimeout() {
+        Channel channel = ctx.channel();
+        if (channel != null && suspendedIdleTimeoutMillis < 0) {
+            suspendedIdleTimeoutMillis = channel.getIdleTimeoutMillis();
+            channel.setIdleTimeout(0);
+        }
+    }
+
+    private void restoreIdleTimeout() {
+        Channel channel = ctx.channel();
+        if (channel != null && suspendedIdleTimeoutMillis >= 0 && !channel.isClosed()) {
+            channel.setIdleTimeout(suspendedIdleTimeoutMillis);
+            channel.updateLastReadTime();
+        }
+        suspendedIdleTimeoutMillis = -1;
+    }
+
+    /**
+     * Tops the connection receive window back up once half of it is used,
+     * unless responses are piling up unsent.
+     */
+    private void reopenConnectionWindow() {
+        Channel channel = ctx.channel();
+        if (connectionReceiveWindow <= connectionWindowTarget / 2 && (channel == null || channel.isWritable())) {
+            emitWindowUpdate(0, connectionWindowTarget - connectionReceiveWindow);
+            connectionReceiveWindow = connectionWindowTarget;
+        }
+    }
+
+    private void emitHeaders(int streamId, List<Map.Entry<String, String>> fields, boolean endStream) {
+        ByteBuffer block = hpackEncoder.encode(fields);
+        int type = HEADERS;
+        int flags = endStream ? FLAG_END_STREAM : 0;
+        do {
+            int length = Math.min(block.remaining(), remoteSettings.getMaxFrameSize());
+            ByteBuffer fragment = block.slice(block.position(), length);
+            block.position(block.position() + length);
+            emitFrame(type, flags | (block.hasRemaining() ? 0 : FLAG_END_HEADERS), streamId, fragment);
+            type = CONTINUATION;
+            flags = 0;
+        } while (block.hasRemaining());
+    }
+
+    private void emitWindowUpdate(int streamId, int increment) {
+        emitFrame(WINDOW_UPDATE, 0, streamId, ByteBuffer.allocate(4).putInt(increment).flip());
+    }
+
+    private void emitFrame(int type, int flags, int streamId, ByteBuffer payload) {
+        outbound.add(frameHeader(payload.remaining(), type, flags, streamId));
+        if (payload.hasRemaining()) {
+            outbound.add(payload);
+        }
+    }
+
+    private static ByteBuffer frameHeader(int length, int type, int flags, int streamId) {
+        return ByteBuffer.allocate(FRAME_HEADER_LENGTH)
+                .put((byte) (length >>> 16))
+                .put((byte) (length >>> 8))
+                .put((byte) length)
+                .put((byte) type)
+                .put((byte) flags)
+                .putInt(streamId)
+                .flip();
+    }
+
+    private static ByteBuffer errorPayload(Http2Error error) {
+        return ByteBuffer.allocate(4).putInt(error.code()).flip();
+    }
+
+    /**
+     * Passes emitted frames down the pipeline in order: buffers as gathered
+     * writes, file slices on their own. Writes completing inline may emit
+     * more frames; they are appended and written by the outer call.
+     */
+    private void writeOut() {
+        if (writing || outbound.isEmpty()) {
+            return;
+        }
+        if (closed) {
+            outbound.forEach(Http2ServerCodec::discard);
+            outbound.clear();
+            return;
+        }
+        writing = true;
+        try {
+            while (!outbound.isEmpty()) {
+                if (outbound.peek() instanceof FileChannelBody slice) {
+                    outbound.poll();
+                    ctx.fireChannelWrite(slice);
+                    continue;
+                }
+                List<Object> parts = new ArrayList<>();
+                while (!outbound.isEmpty() && !(outbound.peek() instanceof FileChannelBody)) {
+                    parts.add(outbound.poll());
+                }
+                ctx.fireChannelWrite(parts.size() == 1 ? parts.get(0) : parts.toArray());
+            }
+        } finally {
+            writing = false;
+        }
+    }
+
+    /**
+     * Fails the connection with a GOAWAY naming the last stream we saw.
+     */
+    private void connectionError(Http2Exception e) {
+        logger.debug("http2_connection_error error={} reason={} remote={}", e.getError(), e.getMessage(), remoteAddress);
+        failed = true;
+        byte[] debugData = String.valueOf(e.getMessage()).getBytes(StandardCharsets.UTF_8);
+        emitFrame(GOAWAY, 0, 0, ByteBuffer.allocate(8 + debugData.length)
+                .putInt(lastStreamId)
+                .putInt(e.getError().code())
+                .put(debugData)
+                .flip());
+        writeOut();
+        ctx.close();
+    }
+
+    private static long remaining(Object item) {
+        if (item instanceof RefCountedBuffer shared) {
+            return shared.remaining();
+        }
+        if (item instanceof FileChannelBody body) {
+            return body.remaining();
+        }
+        return 0;
+    }
+
+    private static void discard(Object item) {
+        if (item instanceof HttpBody body) {
+            try {
+                body.close();
+            } catch (IOException e) {
+                logger.warn("http2_body_close_failed cause={}", e.toString());
+            }
+        } else {
+            OutboundBuffers.releaseAll(item);
+        }
+    }
+
+    private void cumulate(ByteBuffer buffer) {
+        int needed = Math.max(cumulation.remaining() + buffer.remaining(), pendingFrameLength);
+        if (cumulation.capacity() >= needed) {
+            cumulation.compact().put(buffer).flip();
+            return;
+        }
+        ByteBuffer grown = allocate(needed).put(cumulation).put(buffer).flip();
+        BufferPool.DEFAULT.release(cumulation);
+        cumulation = grown;
+    }
+
+    /**
+     * A pooled buffer when one is large enough, a heap buffer otherwise.
+     */
+    private static ByteBuffer allocate(int size) {
+        if (size <= BufferPool.MAX_BUFFER_SIZE) {
+            ByteBuffer pooled = BufferPool.DEFAULT.acquire(Math.max(size, FRAME_HEADER_LENGTH));
+            if (pooled.capacity() >= size) {
+                return pooled;
+            }
+            BufferPool.DEFAULT.release(pooled);
+        }
+        return ByteBuffer.allocate(size);
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            BufferPool.DEFAULT.release(cumulation);
+            cumulation = null;
+        }
+        pendingFrameLength = 0;
+    }
+
+    private static void enableRead(TransportSelectionKey key) {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        if (!failed && !closed) {
+            reopenConnectionWindow();
+            writeOut();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        closed = true;
+        releaseCumulation();
+        headerBlock = null;
+        for (Stream stream : streams.values()) {
+            releaseStream(stream);
+        }
+        streams.clear();
+        abandoned.clear();
+        ready.clear();
+        outbound.forEach(Http2ServerCodec::discard);
+        outbound.clear();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("http2_codec_exception cause={}", cause != null ? cause.toString() : "unknown");
+        ctx.fireExceptionCaught(cause);
+    }
+
+    private static final class Stream {
+        final int id;
+        // Bodies and the final End, in order
+        final ArrayDeque<Object> queue = new ArrayDeque<>();
+        HttpRequest request;
+        BodyParser bodyParser;
+        // Body of unknown length, parsed once complete
+        ByteBuffer body;
+        long expectedLength = -1;
+        long received;
+        int sendWindow;
+        int receiveWindow;
+        long heldBytes;
+        boolean remoteClosed;
+        boolean localClosed;
+        boolean headersSent;
+        boolean endQueued;
+        boolean dispatched;
+        boolean rejected;
+
+        Stream(int id, int sendWindow, int receiveWindow) {
+            this.id = id;
+            this.sendWindow = sendWindow;
+            this.receiveWindow = receiveWindow;
+        }
+    }
+
+    /**
+     * Collects a request header block, checking the rules of RFC 9113
+     * §8.3.1 and §8.2 as it goes.
+     */
+    private static final class RequestHeaders implements BiConsumer<String, String> {
+        private final HttpRequest request = new HttpRequest();
+        private String method;
+        private String scheme;
+        private String path;
+        private String authority;
+        private StringBuilder cookie;
+        private boolean regularSeen;
+        private String error;
+
+        @Override
+        public void accept(String name, String value) {
+            if (error != null) {
+                return;
+            }
+            if (name.startsWith(":")) {
+                if (regularSeen) {
+                    error = "pseudo-header " + name + " after a regular header";
+                    return;
+                }
+                switch (name) {
+                    case ":method" -> method = pseudoHeader(method, name, value);
+                    case ":scheme" -> scheme = pseudoHeader(scheme, name, value);
+                    case ":path" -> path = pseudoHeader(path, name, value);
+                    case ":authority" -> authority = pseudoHeader(authority, name, value);
+                    default -> error = "unknown pseudo-header " + name;
+                }
+                return;
+            }
+            regularSeen = true;
+            if (!isLowerCase(name)) {
+                error = "upper-case header name " + name;
+            } else if (CONNECTION_HEADERS.contains(name) || ("te".equals(name) && !"trailers".equals(value))) {
+                error = "connection-specific header " + name;
+            } else if ("cookie".equals(name)) {
+                // Split cookies are joined back into one field (RFC 9113 §8.2.3)
+                cookie = cookie == null ? new StringBuilder(value) : cookie.append("; ").append(value);
+            } else {
+                request.addHeader(name, value);
+            }
+        }
+
+        private String pseudoHeader(String current, String name, String value) {
+            if (current != null) {
+                error = "duplicate " + name;
+            }
+            return value;
+        }
+
+        private static boolean isLowerCase(String name) {
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return the request, or {@code null} if the header block is malformed
+         */
+        HttpRequest toRequest() {
+            if (error == null && (method == null || scheme == null || path == null || path.isEmpty())) {
+                error = "missing :method, :scheme or :path";
+            }
+            if (error != null) {
+                return null;
+            }
+            request.setMethod(method);
+            request.setUri(path);
+            request.setProtocolVersion("HTTP/2.0");
+            if (cookie != null) {
+                request.setHeader("cookie", cookie.toString());
+            }
+            if (authority != null && request.getHeader("host").isEmpty()) {
+                request.setHeader("host", authority);
+            }
+            return request;
+        }
+    }
+}
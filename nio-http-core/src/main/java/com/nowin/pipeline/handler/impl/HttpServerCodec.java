@@ -3,6 +3,7 @@ package com.nowin.pipeline.handler.impl;
 import com.nowin.exception.InvalidRequestException;
 import com.nowin.http.HttpRequest;
 import com.nowin.http.HttpRequestParser;
+import com.nowin.pipeline.Channel;
 import com.nowin.pipeline.ChannelHandlerContext;
 import com.nowin.pipeline.handler.ChannelHandler;
 import com.nowin.transport.TransportSelectionKey;
@@ -14,11 +15,24 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 
+/**
+ * HTTP/1.x request decoder.
+ * <p>
+ * Requests are numbered in arrival order so that {@link HttpServerHandler}
+ * can release pipelined responses in the same order. Once the channel's
+ * pipelining depth is reached, the codec keeps any unparsed bytes, stops
+ * reading and picks up again when a response completes.
+ */
 public class HttpServerCodec implements ChannelHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(HttpServerCodec.class);
 
     private HttpRequestParser parser;
+    private long nextSequence;
+    // Unparsed bytes held while reading is suspended; null when not suspended.
+    private ByteBuffer suspended;
+    // Set once the connection has switched protocols and a new codec took over
+    private boolean removed;
 
     public HttpServerCodec() {
         this(65536, 10L * 1024 * 1024);
@@ -49,48 +63,112 @@ public class HttpServerCodec implements ChannelHandler {
                 logger.debug("http_read_empty remote={}", remoteAddr);
                 return;
             }
+            if (suspended != null) {
+                // TLS may still deliver records that were already buffered; keep them for later.
+                logger.trace("http_read_deferred remote={} bytes={}", remoteAddr, buffer.remaining());
+                suspended = append(suspended, buffer);
+                return;
+            }
+            decode(ctx, key, buffer, remoteAddr);
+        } catch (Exception e) {
+            logger.error("http_request_parse_failed remote={}", remoteAddr, e);
+            ctx.close();
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            if (ctx.channel() != null) {
+                ctx.channel().setReadBuffer(null);
+            }
+        }
+    }
 
-            while (buffer.hasRemaining()) {
-                logger.trace("http_read_bytes remote={} bytes={}", remoteAddr, buffer.remaining());
-                HttpRequest request = parser.parse(buffer);
+    private void decode(ChannelHandlerContext ctx, TransportSelectionKey key, ByteBuffer buffer, String remoteAddr) {
+        Channel channel = ctx.channel();
+        while (buffer.hasRemaining()) {
+            logger.trace("http_read_bytes remote={} bytes={}", remoteAddr, buffer.remaining());
+            HttpRequest request = parser.parse(buffer);
 
-                if (parser.hasError()) {
-                    logger.debug("http_request_invalid remote={}", remoteAddr);
-                    parser.reset();
-                    ctx.fireExceptionCaught(new InvalidRequestException("Invalid HTTP request"));
-                    ctx.close();
-                    return;
-                }
+            if (parser.hasError()) {
+                logger.debug("http_request_invalid remote={}", remoteAddr);
+                parser.reset();
+                ctx.fireExceptionCaught(new InvalidRequestException("Invalid HTTP request"));
+                ctx.close();
+                return;
+            }
 
-                if (request == null) {
-                    // Incomplete request, need more data
-                    logger.trace("http_request_incomplete remote={}", remoteAddr);
-                    if (key != null && key.isValid()) {
-                        key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
-                    }
-                    return;
-                }
+            if (request == null) {
+                // Incomplete request, need more data
+                logger.trace("http_request_incomplete remote={}", remoteAddr);
+                enableRead(key);
+                return;
+            }
 
-                // Request parsed, process it
-                request.setRemoteAddress(remoteAddr);
-                logger.debug("http_request_parsed method={} uri={} protocol={} remote={}",
-                        request.getMethod(), request.getUri(), request.getProtocolVersion(), remoteAddr);
-                parser.reset();
-                ctx.setRequest(request);
-                ctx.fireChannelRead(request);
+            // Request parsed, process it
+            request.setRemoteAddress(remoteAddr);
+            request.setSequenceNumber(nextSequence++);
+            logger.debug("http_request_parsed method={} uri={} protocol={} remote={}",
+                    request.getMethod(), request.getUri(), request.getProtocolVersion(), remoteAddr);
+            parser.reset();
+            ctx.setRequest(request);
+            if (channel != null) {
+                channel.requestStarted();
+            }
+            ctx.fireChannelRead(request);
 
-                // Stop if channel was closed during request handling
-                if (key != null && !key.isValid()) {
-                    return;
+            // Stop if channel was closed during request handling
+            if (key != null && !key.isValid()) {
+                return;
+            }
+            if (removed) {
+                // A client must wait for the upgrade response before sending anything else
+                if (buffer.hasRemaining()) {
+                    logger.debug("http_bytes_after_upgrade remote={} bytes={}", remoteAddr, buffer.remaining());
+                    ctx.close();
                 }
+                return;
+            }
+            // Nothing after a request that closes the connection is answered
+            if (!request.isKeepAlive()) {
+                return;
+            }
+            if (channel != null && channel.isPipelineFull()) {
+                logger.debug("http_read_suspended remote={} inFlight={} buffered={}",
+                        remoteAddr, channel.getInFlightRequests(), buffer.remaining());
+                suspended = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+                channel.suspendRead(() -> resume(ctx));
+                return;
             }
-        } catch (Exception e) {
-            logger.error("http_request_parse_failed remote={}", remoteAddr, e);
-            ctx.close();
-        } finally {
-            BufferPool.DEFAULT.release(buffer);
-            ctx.channel().setReadBuffer(null);
         }
+        // Every buffered request was dispatched; read ahead for pipelined ones
+        enableRead(key);
+    }
+
+    private void resume(ChannelHandlerContext ctx) {
+        ByteBuffer pending = suspended;
+        suspended = null;
+        logger.debug("http_read_resumed remote={} buffered={}",
+                ctx.channel().getRemoteAddress(), pending.remaining());
+        if (pending.hasRemaining()) {
+            channelRead(ctx, pending);
+        } else {
+            enableRead(ctx.getSelectionKey());
+        }
+    }
+
+    private static ByteBuffer append(ByteBuffer pending, ByteBuffer data) {
+        ByteBuffer combined = ByteBuffer.allocate(pending.remaining() + data.remaining());
+        return combined.put(pending).put(data).flip();
+    }
+
+    private static void enableRead(TransportSelectionKey key) {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) {
+        removed = true;
+        suspended = null;
     }
 
     @Override
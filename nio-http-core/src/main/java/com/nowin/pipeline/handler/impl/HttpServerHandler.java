@@ -7,6 +7,7 @@ import com.nowin.handler.HttpHandler;
 import com.nowin.http.HttpRequest;
 import com.nowin.http.HttpResponse;
 import com.nowin.http.HttpResponseEncoder;
+import com.nowin.pipeline.Channel;
 import com.nowin.pipeline.ChannelFuture;
 import com.nowin.pipeline.ChannelHandlerContext;
 import com.nowin.pipeline.handler.ChannelHandler;
@@ -14,6 +15,7 @@ import com.nowin.server.LoadMonitor;
 import com.nowin.server.HttpServerObserver;
 import com.nowin.server.Router;
 import com.nowin.server.VirtualHost;
+import com.nowin.sse.SseHandler;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.util.ConnectionExceptions;
 import org.slf4j.Logger;
@@ -22,12 +24,21 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class HttpServerHandler implements ChannelHandler {
 
@@ -40,6 +51,15 @@ public class HttpServerHandler implements ChannelHandler {
     private final Executor applicationExecutor;
     private final boolean compressionEnabled;
     private final int compressionMinSize;
+    // Pipelined responses waiting for their turn; event-loop confined like the fields below
+    private final PipelinedResponseQueue pendingResponses = new PipelinedResponseQueue(16);
+    private boolean streamInProgress;
+    // Producers of the responses being streamed, woken on writability changes; several on HTTP/2
+    private final Set<StreamingHttpStream> activeStreams = ConcurrentHashMap.newKeySet();
+    // Open server-sent event streams, ended when the channel closes
+    private final Set<ChannelSseEmitter> activeEmitters = ConcurrentHashMap.newKeySet();
+    private boolean closeAfterWrite;
+    private boolean flushing;
 
     public HttpServerHandler(Map<String, VirtualHost> virtualHosts, VirtualHost defaultVirtualHost, Router router) {
         this(virtualHosts, defaultVirtualHost, router, null);
@@ -69,8 +89,18 @@ public class HttpServerHandler implements ChannelHandler {
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
         long startTime = System.currentTimeMillis();
+        if (msg instanceof Http2ServerCodec.StreamReset reset) {
+            streamReset(reset.streamId());
+            return;
+        }
         HttpRequest request = (HttpRequest) msg;
-        if (applicationExecutor != null) {
+        if (request.getStreamId() == 0) {
+            HttpUpgradeHandler upgradeHandler = upgradeHandler(ctx);
+            if (upgradeHandler != null) {
+                upgradeHandler.upgradeToHttp2(ctx, request);
+            }
+        }
+        if (applicationExecutor != null && !allowsBlocking(ctx)) {
             try {
                 applicationExecutor.execute(() -> processRequest(ctx, request, startTime));
             } catch (RuntimeException e) {
@@ -185,7 +215,11 @@ public class HttpServerHandler implements ChannelHandler {
     }
 
     private void writeResponse(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
-        Runnable writeTask = () -> {
+        runInEventLoop(ctx, () -> {
+            if (response.getWebSocketHandler() != null) {
+                webSocketHandshake(ctx, request, response);
+            }
+
             // Auto-enable compression for applicable responses
             if (!"HEAD".equalsIgnoreCase(request.getMethod()) && !response.isStreaming()) {
                 response.enableCompressionIfSupported(request, compressionEnabled, compressionMinSize);
@@ -200,13 +234,26 @@ public class HttpServerHandler implements ChannelHandler {
                 }
             }
 
-            // Set connection header based on keep-alive
-            if (request.isKeepAlive()) {
+            if (request.getStreamId() > 0) {
+                writeHttp2Response(ctx, request, response);
+                return;
+            }
+
+            // Set connection header based on keep-alive; an upgrade keeps its own
+            if (response.getStatusCode() == 101) {
+                // Connection: Upgrade
+            } else if (request.isKeepAlive()) {
                 response.setHeader("Connection", "keep-alive");
             } else {
                 response.setHeader("Connection", "close");
             }
 
+            if (request.getSequenceNumber() >= 0 && ctx.channel() != null) {
+                pendingResponses.offer(request.getSequenceNumber(), request, response);
+                flushPendingResponses(ctx);
+                return;
+            }
+
             if (response.isStreaming()) {
                 writeStreamingResponse(ctx, request, response);
                 return;
@@ -219,74 +266,347 @@ public class HttpServerHandler implements ChannelHandler {
             if (writeFuture == null) {
                 writeFuture = ctx.write(RESPONSE_ENCODER.encode(response));
             }
-            writeFuture.addListener(future -> {
-                logger.debug("response_write_complete method={} uri={} protocol={} status={} remote={}",
-                        request.getMethod(), request.getUri(), request.getProtocolVersion(),
-                        response.getStatusCode(), request.getRemoteAddress());
-                try {
-                    // clean up request resources
-                    request.cleanup();
-                } catch (Exception e) {
-                    logger.error("request_cleanup_failed method={} uri={} protocol={} remote={}",
-                            request.getMethod(), request.getUri(), request.getProtocolVersion(),
-                            request.getRemoteAddress(), e);
-                }
-                if (!future.isSuccess()) {
-                    if (ConnectionExceptions.isClientDisconnect(future.cause())) {
-                        logger.debug("client_disconnected_during_write method={} uri={} status={} remote={} cause={}",
-                                request.getMethod(), request.getUri(), response.getStatusCode(),
-                                request.getRemoteAddress(),
-                                future.cause() != null ? future.cause().getMessage() : "unknown");
-                    } else {
-                        logger.error("response_write_failed method={} uri={} protocol={} status={} remote={}",
-                                request.getMethod(), request.getUri(), request.getProtocolVersion(),
-                                response.getStatusCode(), request.getRemoteAddress(), future.cause());
+            writeFuture.addListener(future -> onResponseWritten(ctx, request, response, future, false));
+        });
+    }
+
+    /**
+     * Answers a request that came in on an HTTP/2 stream. Streams are
+     * independent, so responses go out as soon as they are ready, in any
+     * order. Runs on the event loop.
+     */
+    private void writeHttp2Response(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
+        if (response.isStreaming()) {
+            writeStreamingResponse(ctx, request, response);
+            return;
+        }
+        ctx.write(new Http2ServerCodec.Response(request.getStreamId(), response, true))
+                .addListener(future -> onResponseWritten(ctx, request, response, future, false));
+    }
+
+    /**
+     * The client cancelled an HTTP/2 stream whose request was handed to us;
+     * its producer or event stream is stopped.
+     */
+    private void streamReset(int streamId) {
+        for (StreamingHttpStream stream : activeStreams) {
+            if (stream.request.getStreamId() == streamId) {
+                stream.reset();
+            }
+        }
+        for (ChannelSseEmitter emitter : activeEmitters) {
+            if (emitter.request().getStreamId() == streamId) {
+                emitter.channelClosed();
+            }
+        }
+    }
+
+    /**
+     * Writes every response that is next in request order. Consecutive buffered
+     * responses are gathered into one write; a streaming response holds back
+     * the ones behind it until its stream ends, and nothing after a
+     * {@code Connection: close} response is sent. Must run on the event loop.
+     */
+    private void flushPendingResponses(ChannelHandlerContext ctx) {
+        if (flushing) {
+            // A write completed inline and re-entered; the outer loop picks up new entries
+            return;
+        }
+        flushing = true;
+        List<Object> batch = new ArrayList<>();
+        List<PipelinedResponseQueue.Entry> batched = new ArrayList<>();
+        try {
+            while (true) {
+                PipelinedResponseQueue.Entry entry = streamInProgress || closeAfterWrite ? null : pendingResponses.poll();
+                if (entry == null) {
+                    if (batch.isEmpty()) {
+                        return;
                     }
-                    ctx.close();
-                    return;
+                    writeBatch(ctx, batch, batched);
+                    continue;
                 }
-                if (!request.isKeepAlive()) {  // check if we need to close the channel
-                    ctx.close();
-                } else {
-                    TransportSelectionKey key = ctx.channel().getSelectionKey();
-                    if (key != null && key.isValid()) {
-                        key.interestOps(key.interestOps() & ~TransportSelectionKey.OP_WRITE | TransportSelectionKey.OP_READ);
-                    }
+                HttpRequest request = entry.request();
+                HttpResponse response = entry.response();
+                closeAfterWrite = !request.isKeepAlive();
+                if (response.isStreaming()) {
+                    writeBatch(ctx, batch, batched);
+                    streamInProgress = true;
+                    ctx.channel().setStreamingResponse(true);
+                    writeStreamingResponse(ctx, request, response);
+                    continue;
+                }
+                List<Object> messages = RESPONSE_ENCODER.encodeForWrite(response);
+                addBuffers(batch, messages.get(0));
+                if (messages.size() == 1) {
+                    batched.add(entry);
+                    continue;
+                }
+                // Zero-copy file body: its head joins the batch, the body follows on its own
+                writeBatch(ctx, batch, batched);
+                ChannelFuture bodyFuture = null;
+                for (int i = 1; i < messages.size(); i++) {
+                    bodyFuture = ctx.write(messages.get(i));
+                }
+                bodyFuture.addListener(future -> onResponseWritten(ctx, request, response, future, true));
+            }
+        } finally {
+            flushing = false;
+        }
+    }
+
+    private void writeBatch(ChannelHandlerContext ctx, List<Object> batch, List<PipelinedResponseQueue.Entry> batched) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        Object message = batch.size() == 1 ? batch.get(0) : batch.toArray();
+        List<PipelinedResponseQueue.Entry> entries = batched.isEmpty() ? List.of() : List.copyOf(batched);
+        batch.clear();
+        batched.clear();
+        if (entries.size() > 1) {
+            logger.debug("pipelined_responses_batched count={} remote={}",
+                    entries.size(), entries.get(0).request().getRemoteAddress());
+        }
+        ChannelFuture writeFuture = ctx.write(message);
+        if (!entries.isEmpty()) {
+            writeFuture.addListener(future -> {
+                for (PipelinedResponseQueue.Entry entry : entries) {
+                    onResponseWritten(ctx, entry.request(), entry.response(), future, true);
                 }
             });
-        };
+        }
+    }
+
+    private static void addBuffers(List<Object> batch, Object message) {
+        if (message instanceof Object[] parts) {
+            Collections.addAll(batch, parts);
+        } else {
+            batch.add(message);
+        }
+    }
+
+    private void onResponseWritten(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response,
+                                   ChannelFuture future, boolean pipelined) {
+        logger.debug("response_write_complete method={} uri={} protocol={} status={} remote={}",
+                request.getMethod(), request.getUri(), request.getProtocolVersion(),
+                response.getStatusCode(), request.getRemoteAddress());
+        try {
+            // clean up request resources
+            request.cleanup();
+        } catch (Exception e) {
+            logger.error("request_cleanup_failed method={} uri={} protocol={} remote={}",
+                    request.getMethod(), request.getUri(), request.getProtocolVersion(),
+                    request.getRemoteAddress(), e);
+        }
+        if (!future.isSuccess()) {
+            if (ConnectionExceptions.isClientDisconnect(future.cause())) {
+                logger.debug("client_disconnected_during_write method={} uri={} status={} remote={} cause={}",
+                        request.getMethod(), request.getUri(), response.getStatusCode(),
+                        request.getRemoteAddress(),
+                        future.cause() != null ? future.cause().getMessage() : "unknown");
+            } else {
+                logger.error("response_write_failed method={} uri={} protocol={} status={} remote={}",
+                        request.getMethod(), request.getUri(), request.getProtocolVersion(),
+                        response.getStatusCode(), request.getRemoteAddress(), future.cause());
+            }
+            ctx.close();
+            return;
+        }
+        if (!request.isKeepAlive()) {  // check if we need to close the channel
+            ctx.close();
+            return;
+        }
+        TransportSelectionKey key = ctx.channel().getSelectionKey();
+        if (key != null && key.isValid()) {
+            int ops = key.interestOps() & ~TransportSelectionKey.OP_WRITE;
+            // a codec paused at the pipelining limit resumes through requestCompleted()
+            boolean readable = !ctx.channel().isReadSuspended() && !ctx.channel().isInputShutdown();
+            key.interestOps(readable ? ops | TransportSelectionKey.OP_READ : ops);
+        }
+        if (pipelined) {
+            ctx.channel().requestCompleted();
+        }
+    }
+
+    /**
+     * Called once a streaming response has ended. On HTTP/1.x a failure or
+     * {@code Connection: close} closes the connection; on HTTP/2 a failure
+     * resets just the stream.
+     */
+    private void endStreamingResponse(ChannelHandlerContext ctx, HttpRequest request, Throwable failure) {
+        if (request.getStreamId() > 0) {
+            if (failure != null) {
+                runInEventLoop(ctx, () -> ctx.write(new Http2ServerCodec.StreamReset(request.getStreamId())));
+            }
+        } else if (failure != null || !request.isKeepAlive() || ctx.channel().isClosed()) {
+            ctx.close();
+        } else {
+            finishStreamingResponse(ctx, request);
+        }
+    }
+
+    /**
+     * Called once a pipelined streaming response has ended on a connection that
+     * stays open; releases the responses queued behind it.
+     */
+    private void finishStreamingResponse(ChannelHandlerContext ctx, HttpRequest request) {
+        if (request.getSequenceNumber() < 0 || ctx.channel() == null) {
+            return;
+        }
+        runInEventLoop(ctx, () -> {
+            streamInProgress = false;
+            ctx.channel().setStreamingResponse(false);
+            ctx.channel().requestCompleted();
+            flushPendingResponses(ctx);
+        });
+    }
+
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+        for (StreamingHttpStream stream : activeStreams) {
+            stream.onWritabilityChanged();
+        }
+        ctx.fireChannelWritabilityChanged();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        for (StreamingHttpStream stream : activeStreams) {
+            stream.onWritabilityChanged();
+        }
+        for (ChannelSseEmitter emitter : activeEmitters) {
+            emitter.channelClosed();
+        }
+        for (PipelinedResponseQueue.Entry entry : pendingResponses.drain()) {
+            logger.debug("pipelined_response_discarded method={} uri={} remote={}",
+                    entry.request().getMethod(), entry.request().getUri(), entry.request().getRemoteAddress());
+            try {
+                entry.request().cleanup();
+                if (entry.response().getHttpBody() != null) {
+                    entry.response().getHttpBody().close();
+                }
+            } catch (Exception e) {
+                logger.warn("pipelined_response_cleanup_failed uri={} remote={}",
+                        entry.request().getUri(), entry.request().getRemoteAddress(), e);
+            }
+        }
+    }
+
+    /**
+     * Whether the connection is served by a thread that may block, so the
+     * hop to the application executor would only add a context switch.
+     */
+    private static boolean allowsBlocking(ChannelHandlerContext ctx) {
+        return ctx.channel() != null
+                && ctx.channel().getEventLoop() != null
+                && ctx.channel().getEventLoop().allowsBlocking();
+    }
 
+    private static void runInEventLoop(ChannelHandlerContext ctx, Runnable task) {
         if (ctx.channel() != null
                 && ctx.channel().getEventLoop() != null
                 && !ctx.channel().getEventLoop().inEventLoop()) {
-            ctx.channel().getEventLoop().execute(writeTask);
+            ctx.channel().getEventLoop().execute(task);
         } else {
-            writeTask.run();
+            task.run();
         }
     }
 
     private void writeStreamingResponse(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
-        ChannelFuture headerFuture = ctx.write(response.toHeadersByteBuffer());
+        if (response.getWebSocketHandler() != null) {
+            upgradeHandler(ctx).upgrade(ctx, request, response);
+            cleanupAfterWrite(ctx, request, response, null);
+            return;
+        }
+        boolean head = "HEAD".equalsIgnoreCase(request.getMethod());
+        Object headers = request.getStreamId() > 0
+                ? new Http2ServerCodec.Response(request.getStreamId(), response, head)
+                : response.toHeadersByteBuffer();
+        ChannelFuture headerFuture = ctx.write(headers);
         headerFuture.addListener(future -> {
             if (!future.isSuccess()) {
                 cleanupAfterWrite(ctx, request, response, future.cause());
                 return;
             }
-            if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+            if (head) {
                 cleanupAfterWrite(ctx, request, response, null);
-                if (!request.isKeepAlive()) {
-                    ctx.close();
-                }
+                endStreamingResponse(ctx, request, null);
                 return;
             }
-            runStreamingProducer(ctx, request, response);
+            if (response.getSseHandler() != null) {
+                openEventStream(ctx, request, response);
+            } else {
+                runStreamingProducer(ctx, request, response);
+            }
         });
     }
 
+    /**
+     * Checks the opening handshake of a request routed to a WebSocket
+     * handler; an invalid one turns the response into an error. Runs on the
+     * event loop.
+     */
+    private static void webSocketHandshake(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
+        HttpUpgradeHandler upgradeHandler = upgradeHandler(ctx);
+        if (upgradeHandler == null) {
+            logger.warn("websocket_unsupported uri={} remote={}", request.getUri(), request.getRemoteAddress());
+            response.setStatusCode(501);
+            response.setBody("WebSocket is not supported");
+            return;
+        }
+        upgradeHandler.handshake(request, response);
+    }
+
+    private static HttpUpgradeHandler upgradeHandler(ChannelHandlerContext ctx) {
+        if (ctx.channel() == null) {
+            return null;
+        }
+        return ctx.channel().getPipeline().get("upgrade") instanceof HttpUpgradeHandler upgradeHandler
+                ? upgradeHandler : null;
+    }
+
+    /**
+     * Hands the emitter of an event stream whose headers were just written to
+     * the route's {@link SseHandler}. Unlike a streaming producer, nothing
+     * runs for the lifetime of the stream; it ends when the emitter is
+     * closed or the connection goes away. Runs on the event loop.
+     */
+    private void openEventStream(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
+        boolean chunked = !response.getProtocolVersion().equalsIgnoreCase("HTTP/1.0");
+        ChannelSseEmitter emitter = new ChannelSseEmitter(ctx, request, chunked, failure -> {
+            activeEmitters.removeIf(open -> open.request() == request);
+            cleanupAfterWrite(ctx, request, response, failure);
+            endStreamingResponse(ctx, request, failure);
+        });
+        emitter.opened();
+        activeEmitters.add(emitter);
+        SseHandler handler = response.getSseHandler();
+        Runnable open = () -> {
+            try {
+                handler.onOpen(emitter);
+            } catch (Throwable e) {
+                logger.error("sse_open_failed method={} uri={} protocol={} remote={}",
+                        request.getMethod(), request.getUri(), request.getProtocolVersion(), request.getRemoteAddress(), e);
+                emitter.abort();
+            }
+        };
+        if (applicationExecutor != null && !allowsBlocking(ctx)) {
+            try {
+                applicationExecutor.execute(open);
+            } catch (RuntimeException e) {
+                logger.error("sse_dispatch_failed method={} uri={} protocol={} remote={}",
+                        request.getMethod(), request.getUri(), request.getProtocolVersion(), request.getRemoteAddress(), e);
+                emitter.abort();
+            }
+        } else {
+            open.run();
+        }
+    }
+
     private void runStreamingProducer(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
         Runnable producerTask = () -> {
             StreamingHandler producer = response.getStreamingHandler();
             StreamingHttpStream stream = new StreamingHttpStream(ctx, response, request);
+            activeStreams.add(stream);
             Throwable failure = null;
             try {
                 producer.stream(stream);
@@ -304,10 +624,9 @@ public class HttpServerHandler implements ChannelHandler {
                         failure.addSuppressed(e);
                     }
                 }
+                activeStreams.remove(stream);
                 cleanupAfterWrite(ctx, request, response, failure);
-                if (failure != null || !request.isKeepAlive()) {
-                    ctx.close();
-                }
+                endStreamingResponse(ctx, request, failure);
             }
         };
 
@@ -407,13 +726,24 @@ public class HttpServerHandler implements ChannelHandler {
         response.setBody(trace.toString());
     }
 
+    /**
+     * Chunks are handed to the event loop without waiting for each one to be
+     * written; {@link #write(byte[])} parks the producer only while the
+     * channel is unwritable, and is woken by the channel's writability event.
+     * On HTTP/2 the chunks become {@link Http2ServerCodec.Data} messages for
+     * the request's stream, and writes fail once the client resets it.
+     */
     private static final class StreamingHttpStream implements HttpStream {
         private static final long WRITE_WAIT_TIMEOUT_SECONDS = 30;
+        private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
 
         private final ChannelHandlerContext ctx;
         private final HttpResponse response;
         private final HttpRequest request;
         private final AtomicBoolean closed = new AtomicBoolean(false);
+        private volatile boolean reset;
+        private final ReentrantLock writabilityLock = new ReentrantLock();
+        private final Condition writabilityChanged = writabilityLock.newCondition();
 
         private StreamingHttpStream(ChannelHandlerContext ctx, HttpResponse response, HttpRequest request) {
             this.ctx = ctx;
@@ -426,14 +756,36 @@ public class HttpServerHandler implements ChannelHandler {
             if (closed.get()) {
                 throw new IOException("stream is closed");
             }
+            if (reset) {
+                throw new IOException("stream reset by client");
+            }
             if (chunk == null || chunk.length == 0) {
                 return;
             }
             awaitWritable();
-            ByteBuffer buffer = response.getProtocolVersion().equalsIgnoreCase("HTTP/1.0")
-                    ? ByteBuffer.wrap(chunk.clone())
-                    : RESPONSE_ENCODER.encodeChunk(response, chunk);
-            writeAndWait(buffer);
+            submit(encode(chunk), false);
+        }
+
+        @Override
+        public CompletionStage<Void> writeAsync(byte[] chunk) {
+            if (closed.get()) {
+                return CompletableFuture.failedFuture(new IOException("stream is closed"));
+            }
+            if (reset) {
+                return CompletableFuture.failedFuture(new IOException("stream reset by client"));
+            }
+            if (ctx.channel() == null || ctx.channel().isClosed()) {
+                return CompletableFuture.failedFuture(new IOException("channel is closed"));
+            }
+            if (chunk == null || chunk.length == 0) {
+                return CompletableFuture.completedFuture(null);
+            }
+            return submit(encode(chunk), true);
+        }
+
+        @Override
+        public boolean isWritable() {
+            return ctx.channel() != null && !ctx.channel().isClosed() && ctx.channel().isWritable();
         }
 
         @Override
@@ -446,61 +798,136 @@ public class HttpServerHandler implements ChannelHandler {
             response.setTrailer(name, value);
         }
 
+        /**
+         * Ends the stream and waits until everything written has reached the
+         * socket, so the connection can be closed or reused right after.
+         */
         @Override
         public void close() throws IOException {
             if (!closed.compareAndSet(false, true)) {
                 return;
             }
-            if (!response.getProtocolVersion().equalsIgnoreCase("HTTP/1.0")) {
-                writeAndWait(RESPONSE_ENCODER.encodeFinalChunk(response));
+            if (ctx.channel() == null || ctx.channel().isClosed()) {
+                throw new IOException("channel is closed");
+            }
+            if (reset) {
+                throw new IOException("stream reset by client");
+            }
+            if (request.getStreamId() > 0) {
+                await(submit(new Http2ServerCodec.End(request.getStreamId(), response.getTrailers()), true));
+                return;
+            }
+            ByteBuffer last = response.getProtocolVersion().equalsIgnoreCase("HTTP/1.0")
+                    ? EMPTY.duplicate()
+                    : RESPONSE_ENCODER.encodeFinalChunk(response);
+            await(submit(last, true));
+        }
+
+        /**
+         * The client reset the HTTP/2 stream; the producer's next write fails.
+         */
+        void reset() {
+            reset = true;
+            onWritabilityChanged();
+        }
+
+        /**
+         * Wakes a producer parked in {@link #awaitWritable()}; called on
+         * writability changes and when the channel closes.
+         */
+        void onWritabilityChanged() {
+            writabilityLock.lock();
+            try {
+                writabilityChanged.signalAll();
+            } finally {
+                writabilityLock.unlock();
+            }
+        }
+
+        private Object encode(byte[] chunk) {
+            if (request.getStreamId() > 0) {
+                return new Http2ServerCodec.Data(request.getStreamId(), ByteBuffer.wrap(chunk.clone()));
             }
+            return response.getProtocolVersion().equalsIgnoreCase("HTTP/1.0")
+                    ? ByteBuffer.wrap(chunk.clone())
+                    : RESPONSE_ENCODER.encodeChunk(response, chunk);
         }
 
         private void awaitWritable() throws IOException {
-            while (ctx.channel() != null && !ctx.channel().isClosed() && !ctx.channel().isWritable()) {
+            Channel channel = ctx.channel();
+            if (channel != null && !channel.isWritable() && !channel.isClosed()) {
+                writabilityLock.lock();
                 try {
-                    Thread.sleep(1);
+                    while (!channel.isWritable() && !channel.isClosed() && !reset) {
+                        writabilityChanged.await();
+                    }
                 } catch (InterruptedException e) {
                     Thread.currentThread().interrupt();
                     InterruptedIOException interrupted = new InterruptedIOException("interrupted while waiting for stream backpressure");
                     interrupted.initCause(e);
                     throw interrupted;
+                } finally {
+                    writabilityLock.unlock();
                 }
             }
-            if (ctx.channel() == null || ctx.channel().isClosed()) {
+            if (channel == null || channel.isClosed()) {
                 throw new IOException("channel is closed");
             }
         }
 
-        private void writeAndWait(ByteBuffer buffer) throws IOException {
-            CountDownLatch latch = new CountDownLatch(1);
-            AtomicReference<Throwable> failure = new AtomicReference<>();
-            Runnable writeTask = () -> {
-                ChannelFuture future = ctx.write(buffer);
-                future.addListener(done -> {
-                    if (!done.isSuccess()) {
-                        failure.set(done.cause());
+        /**
+         * Hands {@code message} to the event loop. Its bytes count as pending
+         * from now on, so producers on other threads see the channel turn
+         * unwritable before the loop has caught up with them.
+         *
+         * @param track whether to return a stage for the write; the blocking
+         *              path does not need one and learns of failures when
+         *              the channel closes
+         */
+        private CompletableFuture<Void> submit(Object message, boolean track) {
+            Channel channel = ctx.channel();
+            CompletableFuture<Void> written = track ? new CompletableFuture<>() : null;
+            int bytes = message instanceof Http2ServerCodec.Data data
+                    ? ((ByteBuffer) data.payload()).remaining()
+                    : message instanceof ByteBuffer buffer ? buffer.remaining() : 0;
+            channel.reservePendingWriteBytes(bytes);
+            runInEventLoop(ctx, () -> {
+                ChannelFuture future;
+                try {
+                    future = ctx.write(message);
+                } catch (RuntimeException e) {
+                    if (written != null) {
+                        written.completeExceptionally(e);
                     }
-                    latch.countDown();
-                });
-            };
-            if (ctx.channel().getEventLoop() != null && !ctx.channel().getEventLoop().inEventLoop()) {
-                ctx.channel().getEventLoop().execute(writeTask);
-            } else {
-                writeTask.run();
-            }
-            try {
-                if (!latch.await(WRITE_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
-                    throw new IOException("timed out while writing streaming response for " + request.getUri());
+                    throw e;
+                } finally {
+                    channel.releasePendingWriteBytes(bytes);
+                }
+                if (written != null) {
+                    future.addListener(done -> {
+                        if (done.isSuccess()) {
+                            written.complete(null);
+                        } else {
+                            written.completeExceptionally(done.cause());
+                        }
+                    });
                 }
+            });
+            return written;
+        }
+
+        private void await(CompletableFuture<Void> written) throws IOException {
+            try {
+                written.get(WRITE_WAIT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (TimeoutException e) {
+                throw new IOException("timed out while writing streaming response for " + request.getUri());
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
                 InterruptedIOException interrupted = new InterruptedIOException("interrupted while writing streaming response");
                 interrupted.initCause(e);
                 throw interrupted;
-            }
-            Throwable cause = failure.get();
-            if (cause != null) {
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
                 if (cause instanceof IOException io) {
                     throw io;
                 }
@@ -1,27 +1,125 @@
 package com.nowin.pipeline.handler.impl;
 
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+import com.nowin.http2.Http2Exception;
+import com.nowin.http2.Http2Settings;
+import com.nowin.pipeline.Channel;
 import com.nowin.pipeline.ChannelHandlerContext;
+import com.nowin.pipeline.ChannelPipeline;
 import com.nowin.pipeline.handler.ChannelHandler;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.util.BufferPool;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.Locale;
 
 /**
  * Protocol upgrade handler that sits between SSL and HTTP codec.
  * <p>
- * Currently acts as a pass-through for HTTP/1.x traffic. This is an
- * intentional placeholder that will be extended in the future to support:
- * <ul>
- *   <li>HTTP/2 upgrade via {@code Upgrade: h2c} header (cleartext)</li>
- *   <li>HTTP/2 via TLS ALPN ({@code h2})</li>
- *   <li>WebSocket upgrade ({@code Upgrade: websocket})</li>
- * </ul>
- *
- * <p>When an upgrade is detected, this handler will replace itself and the
- * downstream HTTP/1 codec with the protocol-specific handlers.
+ * HTTP/1.x traffic passes straight through. A request routed to a
+ * WebSocket handler ({@code Upgrade: websocket}) is answered with the
+ * RFC 6455 handshake by {@link #handshake}, after which {@link #upgrade}
+ * replaces the downstream HTTP/1 codec with a {@link WebSocketFrameCodec}.
+ * {@code permessage-deflate} (RFC 7692) is negotiated when enabled.
+ * <p>
+ * When HTTP/2 is enabled, a connection that opens with the HTTP/2 client
+ * preface gets an {@link Http2ServerCodec} straight away (prior
+ * knowledge), and a request carrying {@code Upgrade: h2c} is answered with
+ * {@code 101 Switching Protocols} by {@link #upgradeToHttp2} and becomes
+ * stream 1 of the new connection. Over TLS the protocol is settled by
+ * ALPN instead: {@link SslHandler} calls {@link #startHttp2} once the
+ * handshake has selected {@code h2}.
  */
 public class HttpUpgradeHandler implements ChannelHandler {
 
+    private static final Logger logger = LoggerFactory.getLogger(HttpUpgradeHandler.class);
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final String WEBSOCKET_VERSION = "13";
+    private static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final int maxMessageSize;
+    private final int pingIntervalMillis;
+    private final boolean compressionEnabled;
+    private final Http2Settings http2Settings;
+    private final long maxBodySize;
+    // Whether the connection's first bytes were checked for the HTTP/2 preface
+    private boolean prefaceChecked;
+    // Start of a preface split across reads
+    private ByteBuffer prefacePrefix;
+
+    public HttpUpgradeHandler() {
+        this(1024 * 1024, 30000, true);
+    }
+
+    /**
+     * @param maxMessageSize     largest WebSocket message accepted, after reassembly and decompression
+     * @param pingIntervalMillis quiet time after which a WebSocket peer is pinged, 0 for never
+     * @param compressionEnabled whether {@code permessage-deflate} is offered
+     */
+    public HttpUpgradeHandler(int maxMessageSize, int pingIntervalMillis, boolean compressionEnabled) {
+        this(maxMessageSize, pingIntervalMillis, compressionEnabled, null, 0);
+    }
+
+    /**
+     * @param maxMessageSize     largest WebSocket message accepted, after reassembly and decompression
+     * @param pingIntervalMillis quiet time after which a WebSocket peer is pinged, 0 for never
+     * @param compressionEnabled whether {@code permessage-deflate} is offered
+     * @param http2Settings      settings announced on HTTP/2 connections, {@code null} to disable HTTP/2
+     * @param maxBodySize        largest HTTP/2 request body accepted, 0 for no limit
+     */
+    public HttpUpgradeHandler(int maxMessageSize, int pingIntervalMillis, boolean compressionEnabled,
+                              Http2Settings http2Settings, long maxBodySize) {
+        this.maxMessageSize = maxMessageSize;
+        this.pingIntervalMillis = pingIntervalMillis;
+        this.compressionEnabled = compressionEnabled;
+        this.http2Settings = http2Settings != null ? new Http2Settings(http2Settings) : null;
+        this.maxBodySize = maxBodySize;
+    }
+
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        ctx.fireChannelRead(msg);
+        if (prefaceChecked || http2Settings == null || !(msg instanceof ByteBuffer buffer) || !buffer.hasRemaining()) {
+            ctx.fireChannelRead(msg);
+            return;
+        }
+        if (prefacePrefix != null) {
+            ByteBuffer combined = ByteBuffer.allocate(prefacePrefix.remaining() + buffer.remaining())
+                    .put(prefacePrefix).put(buffer).flip();
+            BufferPool.DEFAULT.release(buffer);
+            prefacePrefix = null;
+            buffer = combined;
+        }
+        byte[] preface = Http2ServerCodec.CLIENT_PREFACE;
+        int length = Math.min(buffer.remaining(), preface.length);
+        boolean matches = true;
+        for (int i = 0; i < length && matches; i++) {
+            matches = buffer.get(buffer.position() + i) == preface[i];
+        }
+        if (matches && length < preface.length) {
+            // Too short to tell yet; a request line never starts with "PRI *"
+            prefacePrefix = ByteBuffer.allocate(buffer.remaining()).put(buffer).flip();
+            BufferPool.DEFAULT.release(buffer);
+            Channel channel = ctx.channel();
+            if (channel != null) {
+                channel.setReadBuffer(null);
+            }
+            enableRead(ctx.getSelectionKey());
+            return;
+        }
+        prefaceChecked = true;
+        ChannelPipeline pipeline = ctx.channel() != null ? ctx.channel().getPipeline() : null;
+        if (matches && pipeline != null && pipeline.get("codec") instanceof HttpServerCodec) {
+            logger.debug("http2_prior_knowledge remote={}", ctx.channel().getRemoteAddress());
+            pipeline.replace("codec", new Http2ServerCodec(http2Settings, null, maxBodySize));
+        }
+        ctx.fireChannelRead(buffer);
     }
 
     @Override
@@ -33,4 +131,227 @@ public class HttpUpgradeHandler implements ChannelHandler {
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
         ctx.fireExceptionCaught(cause);
     }
+
+    /**
+     * Answers a request routed to a WebSocket handler. A valid opening
+     * handshake (RFC 6455 §4.2.1) turns {@code response} into
+     * {@code 101 Switching Protocols}; otherwise it becomes a 400, or a 426
+     * naming the supported version, and the WebSocket handler is dropped.
+     *
+     * @return whether the connection is to be upgraded
+     */
+    public boolean handshake(HttpRequest request, HttpResponse response) {
+        String key = request.getHeader("Sec-WebSocket-Key").map(String::trim).orElse("");
+        String rejection = null;
+        if (!"GET".equalsIgnoreCase(request.getMethod()) || "HTTP/1.0".equalsIgnoreCase(request.getProtocolVersion())
+                || request.getStreamId() > 0) {
+            rejection = "WebSocket upgrade requires GET over HTTP/1.1";
+        } else if (!hasToken(request.getHeader("Upgrade").orElse(""), "websocket")
+                || !hasToken(request.getHeader("Connection").orElse(""), "upgrade")) {
+            rejection = "Missing WebSocket upgrade headers";
+        } else if (!isValidKey(key)) {
+            rejection = "Invalid Sec-WebSocket-Key";
+        } else if (!WEBSOCKET_VERSION.equals(request.getHeader("Sec-WebSocket-Version").map(String::trim).orElse(""))) {
+            response.setStatusCode(426);
+            response.setHeader("Sec-WebSocket-Version", WEBSOCKET_VERSION);
+            response.setBody("Unsupported WebSocket version");
+            return false;
+        }
+        if (rejection != null) {
+            logger.debug("websocket_handshake_rejected uri={} remote={} reason={}",
+                    request.getUri(), request.getRemoteAddress(), rejection);
+            response.setStatusCode(400);
+            response.setBody(rejection);
+            return false;
+        }
+        response.setStatusCode(101);
+        response.setHeader("Upgrade", "websocket");
+        response.setHeader("Connection", "Upgrade");
+        response.setHeader("Sec-WebSocket-Accept", acceptKey(key));
+        if (compressionEnabled && acceptsDeflate(request.getHeader("Sec-WebSocket-Extensions").orElse(""))) {
+            // No server context takeover lets one compressed frame serve every connection
+            response.setHeader("Sec-WebSocket-Extensions", PERMESSAGE_DEFLATE + "; server_no_context_takeover");
+        }
+        return true;
+    }
+
+    /**
+     * Switches the connection to WebSocket once its {@code 101} response is
+     * next to be written: the HTTP codec named {@code "codec"} is replaced
+     * by a frame codec before the response goes out, so the first frame the
+     * client sends is already read as one. Must run on the event loop.
+     */
+    public void upgrade(ChannelHandlerContext ctx, HttpRequest request, HttpResponse response) {
+        Channel channel = ctx.channel();
+        ChannelPipeline pipeline = channel.getPipeline();
+        if (channel.getInFlightRequests() > 1 || !(pipeline.get("codec") instanceof HttpServerCodec)) {
+            // Requests pipelined behind the upgrade cannot be answered any more
+            logger.debug("websocket_upgrade_refused uri={} remote={} inFlight={}",
+                    request.getUri(), request.getRemoteAddress(), channel.getInFlightRequests());
+            ctx.close();
+            return;
+        }
+        boolean compression = response.getHeader("Sec-WebSocket-Extensions") != null;
+        ChannelWebSocketSession session = new ChannelWebSocketSession(
+                ctx, request, response.getWebSocketHandler(), compression, pingIntervalMillis);
+        pipeline.replace("codec", new WebSocketFrameCodec(session, maxMessageSize, compression));
+        channel.requestCompleted();
+        ctx.write(response.toHeadersByteBuffer()).addListener(future -> {
+            if (!future.isSuccess()) {
+                ctx.close();
+            }
+        });
+        // The HTTP codec may have stopped reading when it saw it was replaced
+        TransportSelectionKey key = channel.getSelectionKey();
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
+        }
+        logger.debug("websocket_upgraded uri={} remote={} compression={}",
+                request.getUri(), request.getRemoteAddress(), compression);
+        session.opened();
+    }
+
+    /**
+     * Switches the connection to HTTP/2 if {@code request} asks for it with
+     * {@code Upgrade: h2c} and a valid {@code HTTP2-Settings} header (RFC
+     * 7540 §3.2). The {@code 101} response is written at once, the HTTP/1
+     * codec is replaced, and the request becomes stream 1, to be answered
+     * as HTTP/2. An upgrade that cannot be honoured is ignored and the
+     * request is answered over HTTP/1.1. Must run on the event loop.
+     *
+     * @return whether the connection was upgraded
+     */
+    public boolean upgradeToHttp2(ChannelHandlerContext ctx, HttpRequest request) {
+        if (http2Settings == null || request.getStreamId() > 0
+                || !hasToken(request.getHeader("Upgrade").orElse(""), "h2c")
+                || !hasToken(request.getHeader("Connection").orElse(""), "upgrade")) {
+            return false;
+        }
+        Http2Settings clientSettings = decodeSettings(request.getHeader("HTTP2-Settings").orElse(null));
+        if (clientSettings == null) {
+            logger.debug("http2_upgrade_ignored uri={} remote={} reason=invalid HTTP2-Settings",
+                    request.getUri(), request.getRemoteAddress());
+            return false;
+        }
+        Channel channel = ctx.channel();
+        ChannelPipeline pipeline = channel.getPipeline();
+        if (pipeline.get("ssl") != null || channel.getInFlightRequests() > 1
+                || !(pipeline.get("codec") instanceof HttpServerCodec)) {
+            logger.debug("http2_upgrade_ignored uri={} remote={} inFlight={}",
+                    request.getUri(), request.getRemoteAddress(), channel.getInFlightRequests());
+            return false;
+        }
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(101);
+        response.setHeader("Connection", "Upgrade");
+        response.setHeader("Upgrade", "h2c");
+        // The 101 has to go out ahead of the codec's SETTINGS
+        ctx.write(response.toHeadersByteBuffer()).addListener(future -> {
+            if (!future.isSuccess()) {
+                ctx.close();
+            }
+        });
+        Http2ServerCodec codec = new Http2ServerCodec(http2Settings, clientSettings, maxBodySize);
+        pipeline.replace("codec", codec);
+        codec.upgrade(request);
+        channel.requestCompleted();
+        prefaceChecked = true;
+        enableRead(channel.getSelectionKey());
+        logger.debug("http2_upgraded uri={} remote={}", request.getUri(), request.getRemoteAddress());
+        return true;
+    }
+
+    /**
+     * Switches a TLS connection that negotiated {@code h2} with ALPN to
+     * HTTP/2 before any application data has been read; the client preface
+     * is then expected as the first bytes. Must run on the event loop.
+     *
+     * @return whether the codec was replaced
+     */
+    boolean startHttp2(ChannelPipeline pipeline) {
+        if (http2Settings == null || !(pipeline.get("codec") instanceof HttpServerCodec)) {
+            return false;
+        }
+        prefaceChecked = true;
+        pipeline.replace("codec", new Http2ServerCodec(http2Settings, null, maxBodySize));
+        return true;
+    }
+
+    private static Http2Settings decodeSettings(String header) {
+        if (header == null) {
+            return null;
+        }
+        try {
+            Http2Settings settings = new Http2Settings();
+            settings.decode(ByteBuffer.wrap(Base64.getUrlDecoder().decode(header.trim())));
+            return settings;
+        } catch (IllegalArgumentException | Http2Exception e) {
+            return null;
+        }
+    }
+
+    private static void enableRead(TransportSelectionKey key) {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
+        }
+    }
+
+    static String acceptKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1")
+                    .digest((key + WEBSOCKET_GUID).getBytes(StandardCharsets.US_ASCII));
+            return Base64.getEncoder().encodeToString(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 is not available", e);
+        }
+    }
+
+    private static boolean isValidKey(String key) {
+        try {
+            return Base64.getDecoder().decode(key).length == 16;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasToken(String header, String token) {
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether one of the client's {@code permessage-deflate} offers can be
+     * accepted. The JDK's deflater always uses a 32K window, so offers that
+     * limit the server's window are declined; the client's own window needs
+     * no answer, as the inflater handles every size.
+     */
+    static boolean acceptsDeflate(String extensions) {
+        for (String offer : extensions.split(",")) {
+            String[] params = offer.split(";");
+            if (!params[0].trim().equalsIgnoreCase(PERMESSAGE_DEFLATE)) {
+                continue;
+            }
+            boolean acceptable = true;
+            for (int i = 1; i < params.length && acceptable; i++) {
+                String param = params[i].trim();
+                int eq = param.indexOf('=');
+                String name = (eq < 0 ? param : param.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+                String value = eq < 0 ? null : param.substring(eq + 1).trim().replace("\"", "");
+                acceptable = switch (name) {
+                    case "server_no_context_takeover", "client_no_context_takeover" -> value == null;
+                    case "client_max_window_bits" -> value == null || value.matches("8|9|1[0-5]");
+                    case "server_max_window_bits" -> "15".equals(value);
+                    default -> false;
+                };
+            }
+            if (acceptable) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
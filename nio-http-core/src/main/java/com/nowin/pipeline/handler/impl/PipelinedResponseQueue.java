@@ -0,0 +1,106 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reorder buffer for HTTP/1.1 pipelining on a single connection.
+ * <p>
+ * {@link HttpServerCodec} numbers requests in arrival order, but with an
+ * application executor their responses may be produced in any order. Ready
+ * responses are parked in a ring indexed by sequence number until every
+ * earlier response has been released, so they leave strictly in request
+ * order. The ring grows if a response arrives further ahead than it can hold.
+ * <p>
+ * Not thread-safe; confined to the channel's event loop.
+ */
+final class PipelinedResponseQueue {
+
+    record Entry(long sequence, HttpRequest request, HttpResponse response) {
+    }
+
+    private Entry[] slots;
+    private long nextSequence;
+    private int size;
+
+    PipelinedResponseQueue(int initialCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, initialCapacity - 1)) << 1;
+        this.slots = new Entry[capacity];
+    }
+
+    /**
+     * Parks the response to the request numbered {@code sequence}.
+     *
+     * @throws IllegalStateException if that request was already answered
+     */
+    void offer(long sequence, HttpRequest request, HttpResponse response) {
+        Entry existing = slots[index(sequence)];
+        if (sequence < nextSequence || existing != null && existing.sequence == sequence) {
+            throw new IllegalStateException("response for request " + sequence + " was already queued");
+        }
+        while (sequence - nextSequence >= slots.length) {
+            grow();
+        }
+        slots[index(sequence)] = new Entry(sequence, request, response);
+        size++;
+    }
+
+    /**
+     * Returns the response to the oldest unanswered request if it is ready,
+     * or {@code null} if it is still being produced.
+     */
+    Entry poll() {
+        int index = index(nextSequence);
+        Entry entry = slots[index];
+        if (entry == null) {
+            return null;
+        }
+        slots[index] = null;
+        nextSequence++;
+        size--;
+        return entry;
+    }
+
+    /**
+     * Sequence number of the next response to be released.
+     */
+    long nextSequence() {
+        return nextSequence;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes and returns every parked response, e.g. when the connection closes.
+     */
+    List<Entry> drain() {
+        List<Entry> drained = new ArrayList<>(size);
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] != null) {
+                drained.add(slots[i]);
+                slots[i] = null;
+            }
+        }
+        size = 0;
+        return drained;
+    }
+
+    private int index(long sequence) {
+        return (int) (sequence & (slots.length - 1));
+    }
+
+    private void grow() {
+        Entry[] old = slots;
+        slots = new Entry[old.length << 1];
+        for (Entry entry : old) {
+            if (entry != null) {
+                slots[index(entry.sequence)] = entry;
+            }
+        }
+    }
+}
@@ -1,150 +1,571 @@
 package com.nowin.pipeline.handler.impl;
 
+import com.nowin.http.FileChannelBody;
+import com.nowin.pipeline.Channel;
 import com.nowin.pipeline.ChannelHandlerContext;
 import com.nowin.pipeline.handler.ChannelHandler;
+import com.nowin.server.MetricsCollector;
+import com.nowin.transport.TransportEventLoop;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.util.BufferPool;
+import com.nowin.util.OutboundBuffers;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLEngineResult;
 import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+/**
+ * TLS record layer between the socket and the HTTP codecs.
+ * <p>
+ * Everything one socket read carries is unwrapped into a single pooled
+ * direct buffer that becomes the downstream read buffer, so small records
+ * are aggregated and the codec releases the buffer as it would a plain
+ * read. Bytes of a record that is not complete yet are kept for the next
+ * read. Writes are wrapped with a single {@link SSLEngine#wrap(ByteBuffer[], ByteBuffer)}
+ * over all parts of a gathered message, packing as many records as fit into
+ * one pooled buffer. File bodies are read into pooled buffers and wrapped
+ * the same way.
+ * <p>
+ * Delegated handshake tasks (key exchange and certificate work) run on the
+ * executor given to the constructor, if any, instead of blocking the event
+ * loop; reading and writing pause until they are done. Handshake counts and
+ * latency go to the channel's {@link MetricsCollector}.
+ */
 public class SslHandler implements ChannelHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(SslHandler.class);
+    private static final ByteBuffer[] EMPTY = {ByteBuffer.allocate(0)};
+    // Plaintext bytes the engine puts into one record
+    private static final int MAX_RECORD_PLAINTEXT = 16384;
+    private static final int FILE_CHUNK_SIZE = 4 * MAX_RECORD_PLAINTEXT;
 
     private final SSLEngine engine;
-    private ByteBuffer unwrapBuffer;
-    private ByteBuffer wrapBuffer;
-    private boolean handshakeComplete = false;
+    private final Executor delegatedTaskExecutor;
+    private int packetBufferSize;
+    private int applicationBufferSize;
+    // Encrypted bytes of an incomplete record carried over to the next read, flipped; null when none
+    private ByteBuffer cumulation;
+    // Writes held back while the engine cannot wrap them
+    private final Deque<Object> pendingWrites = new ArrayDeque<>();
+    private boolean handshakeComplete;
+    private boolean handshakeFailed;
+    private long handshakeStartNanos;
+    private boolean taskRunning;
+    private boolean reading;
 
     public SslHandler(SSLEngine engine) {
+        this(engine, null);
+    }
+
+    /**
+     * @param delegatedTaskExecutor runs the engine's delegated tasks; when
+     *                              null or saturated they run on the event loop
+     */
+    public SslHandler(SSLEngine engine, Executor delegatedTaskExecutor) {
         this.engine = engine;
-        this.unwrapBuffer = BufferPool.DEFAULT.acquire(engine.getSession().getApplicationBufferSize());
-        this.wrapBuffer = BufferPool.DEFAULT.acquire(engine.getSession().getPacketBufferSize());
+        this.delegatedTaskExecutor = delegatedTaskExecutor;
+        this.packetBufferSize = engine.getSession().getPacketBufferSize();
+        this.applicationBufferSize = engine.getSession().getApplicationBufferSize();
     }
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) {
-        ByteBuffer encryptedBuffer = (ByteBuffer) msg;
+        ByteBuffer encrypted = (ByteBuffer) msg;
+        if (handshakeStartNanos == 0) {
+            handshakeStartNanos = System.nanoTime();
+        }
+        reading = true;
+        try {
+            ByteBuffer source = cumulate(encrypted);
+            if (!taskRunning) {
+                unwrap(ctx, source);
+            }
+            keepRemainder(source);
+            flushPendingWrites(ctx);
+        } catch (SSLException e) {
+            failed(ctx, e);
+        } finally {
+            reading = false;
+            BufferPool.DEFAULT.release(encrypted);
+            Channel channel = ctx.channel();
+            channel.setReadBuffer(null);
+            if (channel.isClosed()) {
+                releaseCumulation();
+            } else if (!taskRunning) {
+                enableRead(ctx);
+            }
+        }
+    }
+
+    @Override
+    public void channelWrite(ChannelHandlerContext ctx, Object msg) {
+        if (taskRunning || !pendingWrites.isEmpty()) {
+            pendingWrites.add(msg);
+            return;
+        }
+        if (!write(ctx, msg)) {
+            pendingWrites.add(msg);
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        if (!handshakeComplete && handshakeStartNanos != 0) {
+            recordHandshakeFailure(ctx);
+        }
+        if (!reading) {
+            releaseCumulation();
+        }
+        Object pending;
+        while ((pending = pendingWrites.poll()) != null) {
+            if (pending instanceof FileChannelBody body) {
+                closeQuietly(body);
+            } else {
+                OutboundBuffers.releaseAll(pending);
+            }
+        }
+    }
+
+    /**
+     * @return the protocol selected by ALPN, or an empty string if none was
+     *         negotiated or the handshake has not finished
+     */
+    public String getApplicationProtocol() {
+        String protocol = engine.getApplicationProtocol();
+        return protocol != null ? protocol : "";
+    }
+
+    private boolean write(ChannelHandlerContext ctx, Object msg) {
+        return msg instanceof FileChannelBody body ? wrapFile(ctx, body) : wrapMessage(ctx, msg);
+    }
+
+    /**
+     * Reads a file body chunk by chunk into pooled buffers and wraps them;
+     * the file cannot be sent to the socket directly under TLS. A chunk the
+     * engine is not ready for is queued ahead of the rest of the body.
+     */
+    private boolean wrapFile(ChannelHandlerContext ctx, FileChannelBody body) {
         try {
-            while (encryptedBuffer.hasRemaining()) {
-                unwrapBuffer.clear();
-                SSLEngineResult result = engine.unwrap(encryptedBuffer, unwrapBuffer);
-                logger.debug("SSL unwrap: status={}, handshakeStatus={}", result.getStatus(), result.getHandshakeStatus());
+            while (!body.isComplete() && !ctx.channel().isClosed()) {
+                ByteBuffer chunk = allocate(FILE_CHUNK_SIZE);
+                FileChannelBody slice = body.slice(chunk.capacity());
+                try {
+                    chunk.limit((int) slice.count());
+                    long position = slice.position();
+                    while (chunk.hasRemaining()) {
+                        int read = slice.fileChannel().read(chunk, position);
+                        if (read < 0) {
+                            throw new EOFException("file ended before its body did");
+                        }
+                        position += read;
+                    }
+                } catch (IOException e) {
+                    BufferPool.DEFAULT.release(chunk);
+                    throw e;
+                } finally {
+                    slice.close();
+                }
+                chunk.flip();
+                if (!wrapMessage(ctx, chunk)) {
+                    pendingWrites.addFirst(chunk);
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            logger.warn("tls_file_read_failed remote={} cause={}", ctx.channel().getRemoteAddress(), e.toString());
+            ctx.close();
+        }
+        closeQuietly(body);
+        return true;
+    }
 
+    private static void closeQuietly(FileChannelBody body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            logger.debug("file_body_close_failed cause={}", e.toString());
+        }
+    }
+
+    /**
+     * Wraps all of {@code msg} and releases it, or returns false, leaving it
+     * untouched past what was already sent, if the engine has to finish a
+     * handshake step first.
+     */
+    private boolean wrapMessage(ChannelHandlerContext ctx, Object msg) {
+        Object[] parts = msg instanceof Object[] gathered ? gathered : new Object[] {msg};
+        ByteBuffer[] plainBuffers = new ByteBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            plainBuffers[i] = OutboundBuffers.nioBuffer(parts[i]);
+        }
+        try {
+            while (hasRemaining(plainBuffers)) {
+                SSLEngineResult result = wrap(ctx, plainBuffers);
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    break;
+                }
+                handshake(ctx, result.getHandshakeStatus());
+                if (taskRunning || (result.bytesConsumed() == 0 && hasRemaining(plainBuffers))) {
+                    return false;
+                }
+            }
+        } catch (SSLException e) {
+            failed(ctx, e);
+        }
+        OutboundBuffers.releaseAll(parts);
+        return true;
+    }
+
+    private void flushPendingWrites(ChannelHandlerContext ctx) {
+        Object pending;
+        while (!taskRunning && (pending = pendingWrites.peek()) != null) {
+            if (!write(ctx, pending)) {
+                return;
+            }
+            pendingWrites.poll();
+        }
+    }
+
+    /**
+     * Unwraps every complete record in {@code source}, firing the plaintext
+     * downstream in as few buffers as possible.
+     */
+    private void unwrap(ChannelHandlerContext ctx, ByteBuffer source) throws SSLException {
+        ByteBuffer plain = null;
+        try {
+            while (source.hasRemaining() && !taskRunning && !ctx.channel().isClosed()) {
+                if (plain == null) {
+                    plain = allocate(applicationBufferSize);
+                }
+                SSLEngineResult result = engine.unwrap(source, plain);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("tls_unwrap status={} handshakeStatus={} consumed={} produced={}",
+                            result.getStatus(), result.getHandshakeStatus(), result.bytesConsumed(), result.bytesProduced());
+                }
                 switch (result.getStatus()) {
                     case OK:
-                        unwrapBuffer.flip();
-                        if (unwrapBuffer.hasRemaining()) {
-                            ByteBuffer plain = ByteBuffer.allocate(unwrapBuffer.remaining());
-                            plain.put(unwrapBuffer);
-                            plain.flip();
-                            ctx.fireChannelRead(plain);
-                        }
                         break;
                     case BUFFER_OVERFLOW:
-                        // Need larger application buffer
-                        unwrapBuffer = BufferPool.DEFAULT.acquire(engine.getSession().getApplicationBufferSize());
+                        if (plain.position() > 0) {
+                            fireRead(ctx, plain);
+                        } else {
+                            // The session now allows larger records
+                            BufferPool.DEFAULT.release(plain);
+                            applicationBufferSize = engine.getSession().getApplicationBufferSize();
+                        }
+                        plain = null;
                         continue;
                     case BUFFER_UNDERFLOW:
-                        // Need more data
+                        packetBufferSize = engine.getSession().getPacketBufferSize();
                         return;
                     case CLOSED:
-                        logger.debug("SSL connection closed by peer");
+                        logger.debug("tls_closed_by_peer remote={}", ctx.channel().getRemoteAddress());
+                        fireRead(ctx, plain);
+                        plain = null;
                         ctx.close();
                         return;
                 }
-
-                handleHandshakeStatus(ctx, result.getHandshakeStatus());
+                SSLEngineResult.HandshakeStatus status = result.getHandshakeStatus();
+                if (status != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING || !handshakeComplete) {
+                    // Data read so far predates whatever the handshake step changes, e.g. the codec
+                    fireRead(ctx, plain);
+                    plain = null;
+                    handshake(ctx, status);
+                }
             }
-        } catch (SSLException e) {
-            logger.error("SSL unwrap error", e);
-            ctx.close();
         } finally {
-            BufferPool.DEFAULT.release(encryptedBuffer);
-            ctx.channel().setReadBuffer(null);
-            // Always re-enable OP_READ to wait for more data (handshake or application data)
-            TransportSelectionKey key = ctx.getSelectionKey();
-            if (key != null && key.isValid()) {
-                key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
-            }
+            fireRead(ctx, plain);
         }
     }
 
-    @Override
-    public void channelWrite(ChannelHandlerContext ctx, Object msg) {
-        ByteBuffer plainBuffer = (ByteBuffer) msg;
+    private void fireRead(ChannelHandlerContext ctx, ByteBuffer plain) {
+        if (plain == null) {
+            return;
+        }
+        if (plain.position() == 0 || ctx.channel().isClosed()) {
+            BufferPool.DEFAULT.release(plain);
+            return;
+        }
+        plain.flip();
+        ctx.fireChannelRead(plain);
+    }
+
+    /**
+     * Wraps as much of {@code sources} as the engine takes before it needs
+     * something else, several records to a buffer, and fires the records
+     * towards the socket.
+     */
+    private SSLEngineResult wrap(ChannelHandlerContext ctx, ByteBuffer[] sources) throws SSLException {
+        ByteBuffer out = null;
+        SSLEngineResult result;
         try {
-            while (plainBuffer.hasRemaining()) {
-                wrapBuffer.clear();
-                SSLEngineResult result = engine.wrap(plainBuffer, wrapBuffer);
-                logger.debug("SSL wrap: status={}, handshakeStatus={}", result.getStatus(), result.getHandshakeStatus());
-
-                if (result.getStatus() == SSLEngineResult.Status.OK || result.getStatus() == SSLEngineResult.Status.CLOSED) {
-                    wrapBuffer.flip();
-                    if (wrapBuffer.hasRemaining()) {
-                        ByteBuffer encrypted = BufferPool.DEFAULT.acquire(wrapBuffer.remaining());
-                        encrypted.put(wrapBuffer);
-                        encrypted.flip();
-                        ctx.fireChannelWrite(encrypted);
+            while (true) {
+                if (out == null) {
+                    out = allocate(outputSize(sources));
+                }
+                result = engine.wrap(sources, out);
+                if (logger.isTraceEnabled()) {
+                    logger.trace("tls_wrap status={} handshakeStatus={} consumed={} produced={}",
+                            result.getStatus(), result.getHandshakeStatus(), result.bytesConsumed(), result.bytesProduced());
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                    if (out.position() > 0) {
+                        fireWrite(ctx, out);
+                    } else {
+                        BufferPool.DEFAULT.release(out);
+                        packetBufferSize = engine.getSession().getPacketBufferSize();
                     }
-                } else {
-                    logger.error("SSL wrap unexpected status: {}", result.getStatus());
-                    break;
+                    out = null;
+                    continue;
                 }
+                boolean more = sources == EMPTY
+                        ? result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP
+                        : result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING
+                                && hasRemaining(sources);
+                if (result.getStatus() != SSLEngineResult.Status.OK || !more
+                        || (result.bytesConsumed() == 0 && result.bytesProduced() == 0)) {
+                    return result;
+                }
+            }
+        } finally {
+            fireWrite(ctx, out);
+        }
+    }
+
+    private void fireWrite(ChannelHandlerContext ctx, ByteBuffer out) {
+        if (out == null) {
+            return;
+        }
+        if (out.position() == 0) {
+            BufferPool.DEFAULT.release(out);
+            return;
+        }
+        out.flip();
+        ctx.fireChannelWrite(out);
+    }
 
-                handleHandshakeStatus(ctx, result.getHandshakeStatus());
+    /**
+     * Room for the records {@code sources} turns into, up to the largest
+     * pooled buffer.
+     */
+    private int outputSize(ByteBuffer[] sources) {
+        long plainBytes = 0;
+        for (ByteBuffer source : sources) {
+            plainBytes += source.remaining();
+        }
+        long records = Math.max(1, (plainBytes + MAX_RECORD_PLAINTEXT - 1) / MAX_RECORD_PLAINTEXT);
+        return (int) Math.min(BufferPool.MAX_BUFFER_SIZE, records * packetBufferSize);
+    }
 
-                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+    private void handshake(ChannelHandlerContext ctx, SSLEngineResult.HandshakeStatus status) throws SSLException {
+        while (true) {
+            switch (status) {
+                case NEED_WRAP:
+                    SSLEngineResult result = wrap(ctx, EMPTY);
+                    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                        return;
+                    }
+                    status = result.getHandshakeStatus();
                     break;
-                }
+                case NEED_TASK:
+                    if (offloadDelegatedTasks(ctx)) {
+                        return;
+                    }
+                    status = engine.getHandshakeStatus();
+                    break;
+                case FINISHED:
+                case NOT_HANDSHAKING:
+                    if (!handshakeComplete) {
+                        handshakeComplete = true;
+                        handshakeFinished(ctx);
+                    }
+                    return;
+                default:
+                    // NEED_UNWRAP: wait for the peer
+                    return;
+            }
+        }
+    }
+
+    /**
+     * Hands the engine's delegated tasks to the executor.
+     *
+     * @return false if they ran on the calling thread instead
+     */
+    private boolean offloadDelegatedTasks(ChannelHandlerContext ctx) {
+        TransportEventLoop eventLoop = ctx.channel().getEventLoop();
+        if (delegatedTaskExecutor != null && eventLoop != null) {
+            taskRunning = true;
+            try {
+                delegatedTaskExecutor.execute(() -> {
+                    runDelegatedTasks();
+                    eventLoop.execute(() -> delegatedTasksDone(ctx));
+                });
+                return true;
+            } catch (RejectedExecutionException e) {
+                taskRunning = false;
+                logger.debug("tls_delegated_task_rejected remote={}", ctx.channel().getRemoteAddress());
+            }
+        }
+        runDelegatedTasks();
+        return false;
+    }
+
+    private void runDelegatedTasks() {
+        Runnable task;
+        while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+        }
+    }
+
+    /**
+     * Picks up where the handshake stopped for the delegated tasks, on the
+     * event loop.
+     */
+    private void delegatedTasksDone(ChannelHandlerContext ctx) {
+        taskRunning = false;
+        if (ctx.channel().isClosed()) {
+            return;
+        }
+        reading = true;
+        try {
+            handshake(ctx, engine.getHandshakeStatus());
+            if (!taskRunning && cumulation != null) {
+                unwrap(ctx, cumulation);
+                keepRemainder(cumulation);
             }
+            flushPendingWrites(ctx);
         } catch (SSLException e) {
-            logger.error("SSL wrap error", e);
-            ctx.close();
+            failed(ctx, e);
         } finally {
-            BufferPool.DEFAULT.release(plainBuffer);
-        }
-    }
-
-    private void handleHandshakeStatus(ChannelHandlerContext ctx, SSLEngineResult.HandshakeStatus status) throws SSLException {
-        switch (status) {
-            case NEED_UNWRAP:
-                // Need more data, stop processing
-                // OP_READ will be re-enabled in finally block
-                break;
-            case NEED_WRAP:
-                // Generate handshake response
-                wrapBuffer.clear();
-                SSLEngineResult result = engine.wrap(ByteBuffer.allocate(0), wrapBuffer);
-                wrapBuffer.flip();
-                if (wrapBuffer.hasRemaining()) {
-                    ByteBuffer encrypted = BufferPool.DEFAULT.acquire(wrapBuffer.remaining());
-                    encrypted.put(wrapBuffer);
-                    encrypted.flip();
-                    ctx.fireChannelWrite(encrypted);
-                }
-                handleHandshakeStatus(ctx, result.getHandshakeStatus());
-                break;
-            case NEED_TASK:
-                // Run delegated tasks
-                Runnable task;
-                while ((task = engine.getDelegatedTask()) != null) {
-                    task.run();
-                }
-                handleHandshakeStatus(ctx, engine.getHandshakeStatus());
-                break;
-            case FINISHED:
-                logger.info("SSL handshake completed");
-                handshakeComplete = true;
-                break;
-            case NOT_HANDSHAKING:
-                handshakeComplete = true;
-                break;
+            reading = false;
+            if (ctx.channel().isClosed()) {
+                releaseCumulation();
+            } else if (!taskRunning) {
+                enableRead(ctx);
+            }
+        }
+    }
+
+    /**
+     * Hands an ALPN {@code h2} connection to HTTP/2. This has to happen
+     * before the rest of the current read is unwrapped, as the client
+     * preface may follow the handshake in the same packet.
+     */
+    private void handshakeFinished(ChannelHandlerContext ctx) {
+        Channel channel = ctx.channel();
+        String protocol = getApplicationProtocol();
+        long nanos = System.nanoTime() - handshakeStartNanos;
+        MetricsCollector metrics = channel.getMetricsCollector();
+        if (metrics != null) {
+            metrics.recordTlsHandshake(nanos);
+        }
+        logger.debug("tls_handshake_complete remote={} protocol={} cipherSuite={} micros={}",
+                channel.getRemoteAddress(), protocol.isEmpty() ? "http/1.1" : protocol,
+                engine.getSession().getCipherSuite(), nanos / 1000);
+        if ("h2".equals(protocol)
+                && channel.getPipeline().get("upgrade") instanceof HttpUpgradeHandler upgrade
+                && upgrade.startHttp2(channel.getPipeline())) {
+            logger.debug("http2_alpn remote={}", channel.getRemoteAddress());
+        }
+    }
+
+    private void failed(ChannelHandlerContext ctx, SSLException e) {
+        if (handshakeComplete) {
+            logger.warn("tls_error remote={} cause={}", ctx.channel().getRemoteAddress(), e.toString());
+        } else {
+            logger.debug("tls_handshake_failed remote={} cause={}", ctx.channel().getRemoteAddress(), e.toString());
+            recordHandshakeFailure(ctx);
+        }
+        ctx.close();
+    }
+
+    private void recordHandshakeFailure(ChannelHandlerContext ctx) {
+        if (handshakeFailed) {
+            return;
+        }
+        handshakeFailed = true;
+        MetricsCollector metrics = ctx.channel() != null ? ctx.channel().getMetricsCollector() : null;
+        if (metrics != null) {
+            metrics.recordTlsHandshakeFailure();
+        }
+    }
+
+    /**
+     * Appends {@code encrypted} to the bytes left over from the previous
+     * read, if any, and returns what is to be unwrapped.
+     */
+    private ByteBuffer cumulate(ByteBuffer encrypted) {
+        if (cumulation == null) {
+            return encrypted;
+        }
+        cumulation.compact();
+        if (cumulation.remaining() < encrypted.remaining()) {
+            ByteBuffer larger = allocate(cumulation.position() + encrypted.remaining());
+            cumulation.flip();
+            larger.put(cumulation);
+            BufferPool.DEFAULT.release(cumulation);
+            cumulation = larger;
+        }
+        cumulation.put(encrypted).flip();
+        return cumulation;
+    }
+
+    /**
+     * Keeps the unconsumed part of {@code source} for the next read.
+     */
+    private void keepRemainder(ByteBuffer source) {
+        if (source == cumulation) {
+            if (!cumulation.hasRemaining()) {
+                releaseCumulation();
+            }
+        } else if (source.hasRemaining()) {
+            cumulation = allocate(Math.max(source.remaining(), packetBufferSize));
+            cumulation.put(source).flip();
+        }
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            BufferPool.DEFAULT.release(cumulation);
+            cumulation = null;
+        }
+    }
+
+    /**
+     * A pooled buffer of at least {@code size} bytes, or a heap buffer past
+     * the largest pooled size.
+     */
+    private static ByteBuffer allocate(int size) {
+        if (size > BufferPool.MAX_BUFFER_SIZE) {
+            return ByteBuffer.allocate(size);
+        }
+        return BufferPool.DEFAULT.acquire(size);
+    }
+
+    private static boolean hasRemaining(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void enableRead(ChannelHandlerContext ctx) {
+        // Unless the HTTP codec paused reading at its pipelining limit
+        TransportSelectionKey key = ctx.getSelectionKey();
+        if (key != null && key.isValid() && !ctx.channel().isReadSuspended()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
         }
     }
 
@@ -0,0 +1,393 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.pipeline.Channel;
+import com.nowin.pipeline.ChannelHandlerContext;
+import com.nowin.pipeline.handler.ChannelHandler;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.util.BufferPool;
+import com.nowin.websocket.WebSocketFrame;
+import com.nowin.websocket.WebSocketSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * WebSocket frame decoder, installed in place of {@link HttpServerCodec}
+ * once a connection is upgraded.
+ * <p>
+ * Frames that arrive whole are unmasked in place in the pooled read buffer
+ * and handed to the application as views of it; only a frame split across
+ * reads is copied, into a buffer sized for the whole frame once its header
+ * is known. Fragmented and compressed messages are reassembled before they
+ * are delivered. Protocol violations fail the connection with the status
+ * RFC 6455 prescribes.
+ */
+public class WebSocketFrameCodec implements ChannelHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketFrameCodec.class);
+    private static final byte[] DEFLATE_TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+    private static final int MAX_HEADER_LENGTH = 14;
+
+    private final ChannelWebSocketSession session;
+    private final int maxMessageSize;
+    private final Inflater inflater;
+    private final CharsetDecoder utf8 = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    // Bytes of an incomplete frame carried over to the next read; null when none
+    private ByteBuffer cumulation;
+    // Length of the frame waiting in the cumulation, once its header has arrived
+    private int pendingFrameLength;
+    // Opcode of the fragmented message being reassembled, -1 when none
+    private int fragmentedOpcode = -1;
+    private boolean fragmentedCompressed;
+    private ByteBuffer fragments;
+    private boolean closeReceived;
+    private boolean failed;
+
+    WebSocketFrameCodec(ChannelWebSocketSession session, int maxMessageSize, boolean compression) {
+        this.session = session;
+        this.maxMessageSize = maxMessageSize;
+        this.inflater = compression ? new Inflater(true) : null;
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        ByteBuffer buffer = (ByteBuffer) msg;
+        try {
+            if (!buffer.hasRemaining() || failed || closeReceived) {
+                return;
+            }
+            session.dataReceived();
+            if (cumulation == null) {
+                decode(buffer);
+                if (buffer.hasRemaining() && !failed && !closeReceived) {
+                    cumulation = allocate(Math.max(buffer.remaining(), pendingFrameLength)).put(buffer).flip();
+                }
+            } else {
+                cumulate(buffer);
+                decode(cumulation);
+                if (!cumulation.hasRemaining() || failed || closeReceived) {
+                    releaseCumulation();
+                }
+            }
+        } finally {
+            BufferPool.DEFAULT.release(buffer);
+            Channel channel = ctx.channel();
+            if (channel != null) {
+                channel.setReadBuffer(null);
+                // An unwritable channel turns reading back on once it drains
+                if (!failed && !closeReceived && channel.isWritable()) {
+                    enableRead(ctx.getSelectionKey());
+                }
+            }
+        }
+    }
+
+    private void decode(ByteBuffer buffer) {
+        while (!failed && !closeReceived && buffer.remaining() >= 2) {
+            int start = buffer.position();
+            int b0 = buffer.get(start) & 0xFF;
+            int b1 = buffer.get(start + 1) & 0xFF;
+            boolean fin = (b0 & 0x80) != 0;
+            boolean rsv1 = (b0 & 0x40) != 0;
+            int opcode = b0 & 0x0F;
+            if ((b0 & 0x30) != 0) {
+                fail(WebSocketSession.PROTOCOL_ERROR, "reserved bits set");
+                return;
+            }
+            if ((b1 & 0x80) == 0) {
+                fail(WebSocketSession.PROTOCOL_ERROR, "client frames must be masked");
+                return;
+            }
+            int lengthField = b1 & 0x7F;
+            int headerLength = 2 + (lengthField == 126 ? 2 : lengthField == 127 ? 8 : 0) + 4;
+            if (buffer.remaining() < headerLength) {
+                return;
+            }
+            long payloadLength = lengthField < 126 ? lengthField
+                    : lengthField == 126 ? buffer.getShort(start + 2) & 0xFFFF
+                    : buffer.getLong(start + 2);
+            if (!checkFrame(fin, rsv1, opcode, payloadLength)) {
+                return;
+            }
+            int frameLength = headerLength + (int) payloadLength;
+            if (buffer.remaining() < frameLength) {
+                pendingFrameLength = frameLength;
+                return;
+            }
+            pendingFrameLength = 0;
+            int payloadStart = start + headerLength;
+            unmask(buffer, payloadStart, (int) payloadLength, buffer.getInt(payloadStart - 4));
+            ByteBuffer payload = buffer.duplicate().position(payloadStart).limit(payloadStart + (int) payloadLength).slice();
+            buffer.position(start + frameLength);
+            onFrame(fin, rsv1, opcode, payload);
+        }
+    }
+
+    /**
+     * Validates a frame header before its payload is buffered.
+     */
+    private boolean checkFrame(boolean fin, boolean rsv1, int opcode, long payloadLength) {
+        switch (opcode) {
+            case WebSocketFrame.OPCODE_CLOSE, WebSocketFrame.OPCODE_PING, WebSocketFrame.OPCODE_PONG -> {
+                if (!fin || rsv1 || payloadLength > 125) {
+                    fail(WebSocketSession.PROTOCOL_ERROR, "invalid control frame");
+                    return false;
+                }
+                return true;
+            }
+            case WebSocketFrame.OPCODE_TEXT, WebSocketFrame.OPCODE_BINARY -> {
+                if (fragmentedOpcode != -1) {
+                    fail(WebSocketSession.PROTOCOL_ERROR, "expected a continuation frame");
+                    return false;
+                }
+                if (rsv1 && inflater == null) {
+                    fail(WebSocketSession.PROTOCOL_ERROR, "compression was not negotiated");
+                    return false;
+                }
+            }
+            case WebSocketFrame.OPCODE_CONTINUATION -> {
+                if (fragmentedOpcode == -1 || rsv1) {
+                    fail(WebSocketSession.PROTOCOL_ERROR, "unexpected continuation frame");
+                    return false;
+                }
+            }
+            default -> {
+                fail(WebSocketSession.PROTOCOL_ERROR, "unknown opcode " + opcode);
+                return false;
+            }
+        }
+        long messageLength = payloadLength + (fragments != null ? fragments.position() : 0);
+        if (payloadLength < 0 || messageLength > maxMessageSize) {
+            fail(WebSocketSession.MESSAGE_TOO_BIG, "message exceeds " + maxMessageSize + " bytes");
+            return false;
+        }
+        return true;
+    }
+
+    private void onFrame(boolean fin, boolean rsv1, int opcode, ByteBuffer payload) {
+        switch (opcode) {
+            case WebSocketFrame.OPCODE_CLOSE -> onClose(payload);
+            case WebSocketFrame.OPCODE_PING -> session.pingReceived(payload);
+            case WebSocketFrame.OPCODE_PONG -> {
+                // dataReceived() already noted that the peer is alive
+            }
+            case WebSocketFrame.OPCODE_CONTINUATION -> {
+                appendFragment(payload);
+                if (fin) {
+                    ByteBuffer message = fragments.flip();
+                    int messageOpcode = fragmentedOpcode;
+                    boolean compressed = fragmentedCompressed;
+                    fragments = null;
+                    fragmentedOpcode = -1;
+                    deliver(messageOpcode, compressed, message);
+                }
+            }
+            default -> {
+                if (fin) {
+                    deliver(opcode, rsv1, payload);
+                } else {
+                    fragmentedOpcode = opcode;
+                    fragmentedCompressed = rsv1;
+                    appendFragment(payload);
+                }
+            }
+        }
+    }
+
+    private void deliver(int opcode, boolean compressed, ByteBuffer message) {
+        if (compressed) {
+            message = inflate(message);
+            if (message == null) {
+                return;
+            }
+        }
+        if (opcode == WebSocketFrame.OPCODE_BINARY) {
+            session.binaryReceived(message.asReadOnlyBuffer());
+            return;
+        }
+        String text;
+        try {
+            text = utf8.decode(message).toString();
+        } catch (CharacterCodingException e) {
+            fail(WebSocketSession.INVALID_PAYLOAD, "invalid UTF-8");
+            return;
+        }
+        session.textReceived(text);
+    }
+
+    private void onClose(ByteBuffer payload) {
+        if (payload.remaining() == 1) {
+            fail(WebSocketSession.PROTOCOL_ERROR, "truncated close frame");
+            return;
+        }
+        int code = WebSocketSession.NO_STATUS;
+        String reason = "";
+        if (payload.remaining() >= 2) {
+            code = payload.getShort() & 0xFFFF;
+            if (!WebSocketFrame.isValidCloseCode(code)) {
+                fail(WebSocketSession.PROTOCOL_ERROR, "invalid close code " + code);
+                return;
+            }
+            try {
+                reason = utf8.decode(payload).toString();
+            } catch (CharacterCodingException e) {
+                fail(WebSocketSession.INVALID_PAYLOAD, "invalid UTF-8");
+                return;
+            }
+        }
+        closeReceived = true;
+        releaseFragments();
+        session.closeReceived(code, reason);
+    }
+
+    /**
+     * Inflates a {@code permessage-deflate} message. The client may keep
+     * its compression context between messages, so the inflater is only
+     * reset if the client ends a stream explicitly.
+     */
+    private ByteBuffer inflate(ByteBuffer compressed) {
+        // One byte over the limit tells a message of exactly the limit from a larger one
+        int capacity = maxMessageSize + 1;
+        byte[] out = new byte[(int) Math.min(capacity, Math.max(256L, compressed.remaining() * 4L))];
+        int size = 0;
+        try {
+            for (ByteBuffer input : new ByteBuffer[] {compressed, ByteBuffer.wrap(DEFLATE_TAIL)}) {
+                inflater.setInput(input);
+                while (!inflater.needsInput() && !inflater.finished() && !inflater.needsDictionary()) {
+                    if (size == out.length) {
+                        if (out.length == capacity) {
+                            break;
+                        }
+                        out = Arrays.copyOf(out, (int) Math.min(capacity, out.length * 2L));
+                    }
+                    size += inflater.inflate(out, size, out.length - size);
+                }
+                if (inflater.finished()) {
+                    inflater.reset();
+                    break;
+                }
+            }
+        } catch (DataFormatException e) {
+            fail(WebSocketSession.INVALID_PAYLOAD, "invalid compressed data");
+            return null;
+        }
+        if (size > maxMessageSize) {
+            fail(WebSocketSession.MESSAGE_TOO_BIG, "message exceeds " + maxMessageSize + " bytes");
+            return null;
+        }
+        return ByteBuffer.wrap(out, 0, size);
+    }
+
+    private void appendFragment(ByteBuffer payload) {
+        if (fragments == null) {
+            fragments = ByteBuffer.allocate(Math.min(maxMessageSize, Math.max(4096, payload.remaining() * 2)));
+        } else if (fragments.remaining() < payload.remaining()) {
+            int needed = fragments.position() + payload.remaining();
+            ByteBuffer grown = ByteBuffer.allocate((int) Math.min(maxMessageSize, Math.max(needed, fragments.capacity() * 2L)));
+            fragments = grown.put(fragments.flip());
+        }
+        fragments.put(payload);
+    }
+
+    /**
+     * XORs {@code length} bytes at {@code offset} with the masking key, eight
+     * bytes at a time. Each long covers the key exactly twice, so the key
+     * lines up with every long and only the tail needs per-byte offsets.
+     */
+    static void unmask(ByteBuffer buffer, int offset, int length, int maskKey) {
+        long mask = (maskKey & 0xFFFFFFFFL) | ((long) maskKey << 32);
+        int end = offset + length;
+        int i = offset;
+        if (buffer.order() == ByteOrder.BIG_ENDIAN) {
+            for (; i + 8 <= end; i += 8) {
+                buffer.putLong(i, buffer.getLong(i) ^ mask);
+            }
+        }
+        for (; i < end; i++) {
+            int shift = 24 - 8 * ((i - offset) & 3);
+            buffer.put(i, (byte) (buffer.get(i) ^ (maskKey >>> shift)));
+        }
+    }
+
+    private void cumulate(ByteBuffer buffer) {
+        int needed = Math.max(cumulation.remaining() + buffer.remaining(), pendingFrameLength);
+        if (cumulation.capacity() >= needed) {
+            cumulation.compact().put(buffer).flip();
+            return;
+        }
+        ByteBuffer grown = allocate(needed).put(cumulation).put(buffer).flip();
+        BufferPool.DEFAULT.release(cumulation);
+        cumulation = grown;
+    }
+
+    /**
+     * A pooled buffer when one is large enough, a heap buffer otherwise.
+     */
+    private static ByteBuffer allocate(int size) {
+        if (size <= BufferPool.MAX_BUFFER_SIZE) {
+            ByteBuffer pooled = BufferPool.DEFAULT.acquire(Math.max(size, MAX_HEADER_LENGTH));
+            if (pooled.capacity() >= size) {
+                return pooled;
+            }
+            BufferPool.DEFAULT.release(pooled);
+        }
+        return ByteBuffer.allocate(size);
+    }
+
+    private void fail(int code, String reason) {
+        failed = true;
+        releaseFragments();
+        session.fail(code, reason);
+    }
+
+    private void releaseCumulation() {
+        if (cumulation != null) {
+            BufferPool.DEFAULT.release(cumulation);
+            cumulation = null;
+        }
+        pendingFrameLength = 0;
+    }
+
+    private void releaseFragments() {
+        fragments = null;
+        fragmentedOpcode = -1;
+    }
+
+    private static void enableRead(TransportSelectionKey key) {
+        if (key != null && key.isValid()) {
+            key.interestOps(key.interestOps() | TransportSelectionKey.OP_READ);
+        }
+    }
+
+    @Override
+    public void channelWrite(ChannelHandlerContext ctx, Object msg) {
+        ctx.fireChannelWrite(msg);
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) {
+        releaseCumulation();
+        releaseFragments();
+        if (inflater != null) {
+            inflater.end();
+        }
+        session.channelClosed();
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        logger.debug("websocket_codec_exception cause={}", cause != null ? cause.toString() : "unknown");
+        ctx.fireExceptionCaught(cause);
+    }
+}
@@ -5,7 +5,8 @@
  * Each channel is bound to a single event-loop thread. All handler
  * callbacks — {@code channelRead}, {@code channelWrite},
  * {@code exceptionCaught}, {@code channelActive}, {@code channelInactive},
- * {@code handlerAdded}, {@code handlerRemoved} — are invoked serially on
+ * {@code channelWritabilityChanged}, {@code handlerAdded},
+ * {@code handlerRemoved} — are invoked serially on
  * that thread. Handler implementations do not need synchronization for
  * per-channel state. Shared state across channels must still be
  * thread-safe.
@@ -21,6 +21,10 @@ public class MetricsCollector implements HttpServerObserver {
     private final AtomicLong minResponseTime = new AtomicLong(Long.MAX_VALUE);
     private final AtomicLong maxResponseTime = new AtomicLong(0);
     private final LongAdder totalResponseTime = new LongAdder();
+    private final LongAdder tlsHandshakes = new LongAdder();
+    private final LongAdder tlsHandshakeFailures = new LongAdder();
+    private final LongAdder totalTlsHandshakeNanos = new LongAdder();
+    private final AtomicLong maxTlsHandshakeNanos = new AtomicLong(0);
 
     public void recordRequest() {
         totalRequests.increment();
@@ -72,6 +76,27 @@ public class MetricsCollector implements HttpServerObserver {
         } while (!maxResponseTime.compareAndSet(currentMax, timeMs));
     }
 
+    /**
+     * A TLS handshake completed, {@code durationNanos} after its first
+     * record arrived.
+     */
+    public void recordTlsHandshake(long durationNanos) {
+        tlsHandshakes.increment();
+        totalTlsHandshakeNanos.add(durationNanos);
+        long currentMax;
+        do {
+            currentMax = maxTlsHandshakeNanos.get();
+            if (durationNanos <= currentMax) break;
+        } while (!maxTlsHandshakeNanos.compareAndSet(currentMax, durationNanos));
+    }
+
+    /**
+     * A TLS handshake failed or the connection closed before it completed.
+     */
+    public void recordTlsHandshakeFailure() {
+        tlsHandshakeFailures.increment();
+    }
+
     public void recordBytesRead(long bytes) {
         totalBytesRead.add(bytes);
     }
@@ -127,6 +152,30 @@ public class MetricsCollector implements HttpServerObserver {
         return (double) totalRequests.sum() / elapsedSeconds;
     }
 
+    public long getTlsHandshakes() {
+        return tlsHandshakes.sum();
+    }
+
+    public long getTlsHandshakeFailures() {
+        return tlsHandshakeFailures.sum();
+    }
+
+    public double getTlsHandshakesPerSecond() {
+        long elapsedSeconds = (System.currentTimeMillis() - startTime.get()) / 1000;
+        if (elapsedSeconds == 0) return 0.0;
+        return (double) tlsHandshakes.sum() / elapsedSeconds;
+    }
+
+    public double getAverageTlsHandshakeTime() {
+        long total = tlsHandshakes.sum();
+        if (total == 0) return 0.0;
+        return totalTlsHandshakeNanos.sum() / 1_000_000.0 / total;
+    }
+
+    public double getMaxTlsHandshakeTime() {
+        return maxTlsHandshakeNanos.get() / 1_000_000.0;
+    }
+
     public void reset() {
         totalRequests.reset();
         successfulRequests.reset();
@@ -134,6 +183,10 @@ public class MetricsCollector implements HttpServerObserver {
         totalBytesRead.reset();
         totalBytesWritten.reset();
         totalResponseTime.reset();
+        tlsHandshakes.reset();
+        tlsHandshakeFailures.reset();
+        totalTlsHandshakeNanos.reset();
+        maxTlsHandshakeNanos.set(0);
         minResponseTime.set(Long.MAX_VALUE);
         maxResponseTime.set(0);
         startTime.set(System.currentTimeMillis());
@@ -1,16 +1,23 @@
 package com.nowin.server;
 
+import com.nowin.handler.FileMetadataCache;
+import com.nowin.http.CachedFile;
 import com.nowin.transport.nio.NioServerAcceptProcessor;
+import com.nowin.transport.TransportEventLoop;
 import com.nowin.transport.TransportEventLoopGroup;
+import com.nowin.transport.TransportFactories;
 import com.nowin.transport.TransportFactory;
 import com.nowin.transport.TransportServerChannel;
 import com.nowin.transport.TransportSelectionKey;
-import com.nowin.transport.nio.NioTransportFactory;
+import com.nowin.util.BufferPool;
+import com.nowin.util.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -24,16 +31,21 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class NioHttpServer {
 
     private static final Logger logger = LoggerFactory.getLogger(NioHttpServer.class);
+    private static final long BUFFER_POOL_TRIM_INTERVAL_SECONDS = 30;
 
     private TransportEventLoopGroup bossGroup;
     private TransportEventLoopGroup workerGroup;
     private TransportServerChannel serverChannel;
-    private TransportFactory transportFactory = NioTransportFactory.INSTANCE;
+    // Every listening socket; more than one in SO_REUSEPORT mode
+    private final List<TransportServerChannel> serverChannels = new ArrayList<>();
+    // Resolved from server.transport at start unless set explicitly
+    private TransportFactory transportFactory;
 
     private Map<String, VirtualHost> virtualHosts;
     private VirtualHost defaultVirtualHost;
     private Router router = new Router();
-    private ResourceCache<String, byte[]> resourceCache;
+    private ResourceCache<Path, CachedFile> resourceCache;
+    private FileMetadataCache fileMetadataCache;
     private SslContext sslContext;
     private PluginManager pluginManager;
     private LoadMonitor loadMonitor;
@@ -59,10 +71,18 @@ public class NioHttpServer {
         }
     }
 
+    /**
+     * Use {@code transportFactory} instead of the one named by
+     * {@code server.transport}. Must be called before {@link #start()}.
+     */
     public void setTransportFactory(TransportFactory transportFactory) {
         this.transportFactory = transportFactory;
     }
 
+    public TransportFactory getTransportFactory() {
+        return transportFactory;
+    }
+
     /**
      * Create a server from a fully assembled {@link ServerConfiguration}.
      * This is the preferred way when using {@link com.nowin.ServerBootstrap}.
@@ -73,6 +93,7 @@ public class NioHttpServer {
         this.defaultVirtualHost = configuration.getDefaultVirtualHost();
         this.router = configuration.getRouter();
         this.resourceCache = configuration.getResourceCache();
+        this.fileMetadataCache = configuration.getFileMetadataCache();
         this.sslContext = configuration.getSslContext();
         this.shutdownHookEnabled = configuration.isAutoShutdownHook();
         this.channelInitializer = configuration.getChannelInitializer();
@@ -144,13 +165,10 @@ public class NioHttpServer {
     }
 
     private void initEventLoopGroup() {
-        logger.info("Initializing event loop groups.");
-        if (config.getBossThreads() == 1) {
-            bossGroup = transportFactory.createEventLoopGroup(1);
-        } else {
-            bossGroup = transportFactory.createEventLoopGroup(config.getBossThreads());
+        if (transportFactory == null) {
+            transportFactory = TransportFactories.resolve(config.getTransport());
         }
-
+        logger.info("Initializing event loop groups for the {} transport.", transportFactory.name());
         int workerThreads = config.getWorkerThreads() <= 0 ? Runtime.getRuntime().availableProcessors() * 2
                 : config.getWorkerThreads();
         workerGroup = transportFactory.createEventLoopGroup(workerThreads);
@@ -158,16 +176,105 @@ public class NioHttpServer {
 
     private void bind() throws IOException {
         logger.info("Binding to {}:{}", config.getHost(), config.getPort());
-        serverChannel = transportFactory.createServerChannel();
-        serverChannel.configureBlocking(false);
-        serverChannel.setOption(java.net.StandardSocketOptions.SO_REUSEADDR, config.isSoReuseAddr());
-        if (config.getBacklogSize() > 0) {
-            serverChannel.bind(new InetSocketAddress(config.getHost(), config.getPort()), config.getBacklogSize());
-        } else {
-            serverChannel.bind(new InetSocketAddress(config.getHost(), config.getPort()));
+        ConnectionLimiter connectionLimiter = createConnectionLimiter();
+        TokenBucket acceptRateLimiter = config.getAcceptRateLimit() > 0
+                ? new TokenBucket(config.getAcceptRateLimit(),
+                        config.getAcceptRateBurst() > 0 ? config.getAcceptRateBurst() : config.getAcceptRateLimit())
+                : null;
+        if (config.isReusePort() && bindReusePort(connectionLimiter, acceptRateLimiter)) {
+            return;
+        }
+
+        bossGroup = transportFactory.createEventLoopGroup(config.getBossThreads());
+        serverChannel = openServerChannel(config.getPort(), false);
+        serverChannels.add(serverChannel);
+        NioServerAcceptProcessor acceptProcessor = new NioServerAcceptProcessor(
+                workerGroup, connectionLimiter, config, loadMonitor, metricsCollector, observer, channelInitializer, serverChannel);
+        TransportEventLoop acceptLoop = bossGroup.next();
+        acceptProcessor.setAcceptLoop(acceptLoop);
+        acceptProcessor.setAcceptRateLimiter(acceptRateLimiter);
+        acceptLoop.register(serverChannel, TransportSelectionKey.OP_ACCEPT, acceptProcessor);
+    }
+
+    /**
+     * Binds one {@code SO_REUSEPORT} listening socket per worker loop, each
+     * accepting straight onto its own loop. Returns false, having closed
+     * anything it opened, when the platform does not support the option or
+     * the transport has no fixed set of worker loops.
+     */
+    private boolean bindReusePort(ConnectionLimiter connectionLimiter, TokenBucket acceptRateLimiter) throws IOException {
+        if (workerGroup.getEventLoops().isEmpty()) {
+            logger.warn("The {} transport has no fixed worker loops to bind SO_REUSEPORT listeners to, using a single acceptor",
+                    transportFactory.name());
+            return false;
+        }
+        List<TransportServerChannel> opened = new ArrayList<>();
+        try {
+            int port = config.getPort();
+            for (TransportEventLoop loop : workerGroup.getEventLoops()) {
+                TransportServerChannel channel = openServerChannel(port, true);
+                opened.add(channel);
+                // An ephemeral port is chosen by the first bind; the rest share it
+                port = channel.getLocalAddress().getPort();
+            }
+        } catch (UnsupportedOperationException e) {
+            logger.warn("SO_REUSEPORT is not supported on this platform, falling back to a single acceptor: {}", e.getMessage());
+            for (TransportServerChannel channel : opened) {
+                closeQuietly(channel);
+            }
+            return false;
+        } catch (IOException e) {
+            for (TransportServerChannel channel : opened) {
+                closeQuietly(channel);
+            }
+            throw e;
+        }
+
+        List<TransportEventLoop> loops = workerGroup.getEventLoops();
+        for (int i = 0; i < opened.size(); i++) {
+            TransportServerChannel channel = opened.get(i);
+            TransportEventLoop loop = loops.get(i);
+            NioServerAcceptProcessor acceptProcessor = new NioServerAcceptProcessor(
+                    loop, connectionLimiter, config, loadMonitor, metricsCollector, observer, channelInitializer, channel);
+            acceptProcessor.setAcceptRateLimiter(acceptRateLimiter);
+            loop.register(channel, TransportSelectionKey.OP_ACCEPT, acceptProcessor);
         }
+        serverChannels.addAll(opened);
+        serverChannel = opened.get(0);
+        logger.info("Bound {} SO_REUSEPORT acceptors on port {}", opened.size(), serverChannel.getLocalAddress().getPort());
+        return true;
+    }
 
-        ConnectionLimiter connectionLimiter = new ConnectionLimiter() {
+    private TransportServerChannel openServerChannel(int port, boolean reusePort) throws IOException {
+        TransportServerChannel channel = transportFactory.createServerChannel();
+        try {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, config.isSoReuseAddr());
+            if (reusePort) {
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            if (config.getBacklogSize() > 0) {
+                channel.bind(new InetSocketAddress(config.getHost(), port), config.getBacklogSize());
+            } else {
+                channel.bind(new InetSocketAddress(config.getHost(), port));
+            }
+            return channel;
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(TransportServerChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Error closing server socket", e);
+        }
+    }
+
+    private ConnectionLimiter createConnectionLimiter() {
+        return new ConnectionLimiter() {
             @Override
             public boolean incrementConnectionCount() {
                 return NioHttpServer.this.incrementConnectionCount();
@@ -188,13 +295,13 @@ public class NioHttpServer {
                 activeChannels.remove(channel);
             }
         };
-
-        NioServerAcceptProcessor acceptProcessor = new NioServerAcceptProcessor(
-                workerGroup, connectionLimiter, config, loadMonitor, metricsCollector, observer, channelInitializer, serverChannel);
-        bossGroup.next().register(serverChannel, TransportSelectionKey.OP_ACCEPT, acceptProcessor);
     }
 
     private void startAcceptor() {
+        if (bossGroup == null) {
+            // SO_REUSEPORT listeners accept on the worker loops
+            return;
+        }
         logger.info("Starting acceptor.");
         bossGroup.start();
     }
@@ -202,6 +309,8 @@ public class NioHttpServer {
     private void startWorker() {
         logger.info("Starting worker.");
         workerGroup.start();
+        workerGroup.next().scheduleWithFixedDelay(BufferPool.DEFAULT::trim,
+                BUFFER_POOL_TRIM_INTERVAL_SECONDS, BUFFER_POOL_TRIM_INTERVAL_SECONDS, TimeUnit.SECONDS);
     }
 
     public CompletableFuture<Void> shutdown() {
@@ -213,12 +322,12 @@ public class NioHttpServer {
             return shutdownFuture;
         }
         logger.info("Stopping NioHttpServer...");
-        try {
-            if (serverChannel != null) {
-                serverChannel.close();
+        for (TransportServerChannel channel : serverChannels) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.error("Error closing server socket", e);
             }
-        } catch (IOException e) {
-            logger.error("Error closing server socket", e);
         }
 
         // Graceful drain: wait for active connections to finish
@@ -253,6 +362,9 @@ public class NioHttpServer {
         if (resourceCache != null) {
             resourceCache.shutdown();
         }
+        if (fileMetadataCache != null) {
+            fileMetadataCache.close();
+        }
         logger.info("NioHttpServer stopped.");
         shutdownFuture.complete(null);
         return shutdownFuture;
@@ -270,14 +382,22 @@ public class NioHttpServer {
         this.router = router;
     }
 
-    public void setResourceCache(ResourceCache<String, byte[]> resourceCache) {
+    public void setResourceCache(ResourceCache<Path, CachedFile> resourceCache) {
         this.resourceCache = resourceCache;
     }
 
-    public ResourceCache<String, byte[]> getResourceCache() {
+    public ResourceCache<Path, CachedFile> getResourceCache() {
         return resourceCache;
     }
 
+    public void setFileMetadataCache(FileMetadataCache fileMetadataCache) {
+        this.fileMetadataCache = fileMetadataCache;
+    }
+
+    public FileMetadataCache getFileMetadataCache() {
+        return fileMetadataCache;
+    }
+
     public void setSslContext(SslContext sslContext) {
         this.sslContext = sslContext;
     }
@@ -3,48 +3,116 @@ package com.nowin.server;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * Weight-bounded in-memory cache with W-TinyLFU admission, used by
+ * {@link com.nowin.handler.FileRequestHandler} for small static files and
+ * available to any handler that keeps computed resources around.
+ * <p>
+ * Every entry is weighed by the {@link Weigher} (bytes, for static files) and
+ * the total is kept under {@code maximumWeight}. New entries land in a small
+ * LRU admission window. When the window overflows, its oldest entry is only
+ * admitted to the main region if a count-min sketch says it is used more often
+ * than the main region's eviction victim, so a one-off crawl over thousands of
+ * files churns through the window instead of flushing the hot set. The main
+ * region is a segmented LRU: an entry read again while on probation is promoted
+ * to the protected segment.
+ * <p>
+ * Reads are a {@link ConcurrentHashMap} lookup plus a lossy append to a striped
+ * buffer; the policy itself is updated under a lock by writers, and by the
+ * reader that fills a buffer stripe. All policy operations are O(1). Expired
+ * entries are dropped when read or when they reach the eviction end of a
+ * queue; no background thread is involved.
+ */
 public class ResourceCache<K, V> {
 
     private static final Logger logger = LoggerFactory.getLogger(ResourceCache.class);
 
-    private static class CacheEntry<V> {
-        final V value;
-        final long createdAt;
-        final long expiresAt;
+    /**
+     * Computes the weight of an entry, e.g. its size in bytes. Called once,
+     * when the entry is stored.
+     */
+    @FunctionalInterface
+    public interface Weigher<K, V> {
+        long weigh(K key, V value);
+    }
 
-        CacheEntry(V value, long ttlMs) {
-            this.value = value;
-            this.createdAt = System.currentTimeMillis();
-            this.expiresAt = ttlMs > 0 ? this.createdAt + ttlMs : Long.MAX_VALUE;
-        }
+    // Which queue a node is in; DEAD once it has left the cache
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int DEAD = 3;
 
-        boolean isExpired() {
-            return System.currentTimeMillis() > expiresAt;
-        }
-    }
+    private static final double WINDOW_PERCENT = 0.01;
+    private static final double PROTECTED_PERCENT = 0.80;
+    private static final int READ_BUFFER_STRIPES =
+            Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) << 1);
 
-    private final Map<K, CacheEntry<V>> cache = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final Weigher<? super K, ? super V> weigher;
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
     private final long defaultTtlMs;
-    private final int maxSize;
-    private final ScheduledExecutorService cleanupScheduler;
+    private final ReadBuffer[] readBuffers = new ReadBuffer[READ_BUFFER_STRIPES];
+    private final ReentrantLock evictionLock = new ReentrantLock();
 
+    // Guarded by evictionLock
+    private final AccessOrderQueue<K, V> window = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> probation = new AccessOrderQueue<>();
+    private final AccessOrderQueue<K, V> protectedQueue = new AccessOrderQueue<>();
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long windowWeight;
+    private long protectedWeight;
+    // Written under evictionLock, read by metrics
+    private volatile long weightedSize;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder evictedWeight = new LongAdder();
+
+    public ResourceCache(long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this(maximumWeight, weigher, 0);
+    }
+
+    /**
+     * Holds at most {@code maxSize} entries, each living {@code defaultTtlMs}.
+     *
+     * @deprecated use {@link #ResourceCache(long, Weigher, long)}, weighing
+     * every entry as 1 to bound the cache by entry count
+     */
+    @Deprecated
     public ResourceCache(long defaultTtlMs, int maxSize) {
+        this(maxSize, (key, value) -> 1, defaultTtlMs);
+    }
+
+    /**
+     * @param maximumWeight the total weight the cache may hold
+     * @param weigher       weighs each entry against {@code maximumWeight}
+     * @param defaultTtlMs  how long entries live after being stored; zero or
+     *                      less keeps them until evicted
+     */
+    public ResourceCache(long maximumWeight, Weigher<? super K, ? super V> weigher, long defaultTtlMs) {
+        if (maximumWeight < 0) {
+            throw new IllegalArgumentException("maximumWeight must be >= 0, got: " + maximumWeight);
+        }
+        this.maximumWeight = maximumWeight;
+        this.weigher = Objects.requireNonNull(weigher, "weigher cannot be null");
         this.defaultTtlMs = defaultTtlMs;
-        this.maxSize = maxSize;
-        this.cleanupScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
-            Thread t = new Thread(r, "resource-cache-cleanup");
-            t.setDaemon(true);
-            return t;
-        });
-        
-        cleanupScheduler.scheduleAtFixedRate(this::cleanup, 60, 60, TimeUnit.SECONDS);
-        logger.info("ResourceCache initialized with TTL={}ms, maxSize={}", defaultTtlMs, maxSize);
+        this.windowMaximum = (long) (maximumWeight * WINDOW_PERCENT);
+        this.protectedMaximum = (long) ((maximumWeight - windowMaximum) * PROTECTED_PERCENT);
+        for (int i = 0; i < readBuffers.length; i++) {
+            readBuffers[i] = new ReadBuffer();
+        }
+        sketch.ensureCapacity(64);
+        logger.info("ResourceCache initialized with maximumWeight={}, TTL={}ms", maximumWeight, defaultTtlMs);
     }
 
     public void put(K key, V value) {
@@ -52,87 +120,437 @@ public class ResourceCache<K, V> {
     }
 
     public void put(K key, V value, long ttlMs) {
-        if (cache.size() >= maxSize) {
-            evictOldest();
+        Objects.requireNonNull(key, "key cannot be null");
+        Objects.requireNonNull(value, "value cannot be null");
+        long weight = weigher.weigh(key, value);
+        if (weight < 0) {
+            throw new IllegalArgumentException("Negative weight " + weight + " for key " + key);
+        }
+        long expiresAt = ttlMs > 0 ? System.currentTimeMillis() + ttlMs : Long.MAX_VALUE;
+        Node<K, V> node = new Node<>(key, value, weight, expiresAt);
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            if (weight > maximumWeight) {
+                // Could never fit; drop any older value rather than keep serving it
+                Node<K, V> old = data.remove(key);
+                if (old != null) {
+                    removeFromPolicy(old);
+                }
+                return;
+            }
+            Node<K, V> old = data.put(key, node);
+            if (old != null) {
+                removeFromPolicy(old);
+            }
+            sketch.ensureCapacity(data.size());
+            sketch.increment(key);
+            node.queue = WINDOW;
+            window.addLast(node);
+            windowWeight += weight;
+            weightedSize += weight;
+            evictEntries();
+        } finally {
+            evictionLock.unlock();
         }
-        cache.put(key, new CacheEntry<>(value, ttlMs));
-        logger.debug("Cached entry: key={}, ttl={}ms", key, ttlMs);
     }
 
     public V get(K key) {
-        CacheEntry<V> entry = cache.get(key);
-        if (entry == null) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            misses.increment();
             return null;
         }
-        if (entry.isExpired()) {
-            cache.remove(key);
-            logger.debug("Cache entry expired: key={}", key);
+        if (node.isExpired()) {
+            if (data.remove(key, node)) {
+                evictionLock.lock();
+                try {
+                    removeFromPolicy(node);
+                } finally {
+                    evictionLock.unlock();
+                }
+            }
+            misses.increment();
             return null;
         }
-        logger.debug("Cache hit: key={}", key);
-        return entry.value;
+        hits.increment();
+        recordRead(node);
+        return node.value;
     }
 
     public boolean containsKey(K key) {
-        CacheEntry<V> entry = cache.get(key);
-        return entry != null && !entry.isExpired();
+        Node<K, V> node = data.get(key);
+        return node != null && !node.isExpired();
     }
 
     public void remove(K key) {
-        cache.remove(key);
-        logger.debug("Removed cache entry: key={}", key);
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                removeFromPolicy(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
     }
 
     public void clear() {
-        cache.clear();
+        evictionLock.lock();
+        try {
+            drainReadBuffers();
+            for (Node<K, V> node : data.values()) {
+                removeFromPolicy(node);
+            }
+            data.clear();
+        } finally {
+            evictionLock.unlock();
+        }
         logger.info("Cache cleared");
     }
 
+    /**
+     * Drops every entry. The cache holds no threads, so this is the same as
+     * {@link #clear()}; it stays for the server's shutdown sequence.
+     */
+    public void shutdown() {
+        clear();
+        logger.info("ResourceCache shutdown");
+    }
+
     public int size() {
-        return cache.size();
+        return data.size();
+    }
+
+    public long getWeightedSize() {
+        return weightedSize;
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
     }
 
-    private void cleanup() {
-        int removed = 0;
-        for (Map.Entry<K, CacheEntry<V>> entry : cache.entrySet()) {
-            if (entry.getValue().isExpired()) {
-                cache.remove(entry.getKey());
-                removed++;
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getEvictionWeight() {
+        return evictedWeight.sum();
+    }
+
+    /**
+     * Queues a read for the policy. Reads are dropped rather than waited on
+     * when a stripe is full or contended; frequency is an estimate anyway.
+     */
+    private void recordRead(Node<K, V> node) {
+        ReadBuffer buffer = readBuffers[(int) Thread.currentThread().threadId() & (READ_BUFFER_STRIPES - 1)];
+        if (buffer.offer(node) && evictionLock.tryLock()) {
+            try {
+                drainReadBuffers();
+            } finally {
+                evictionLock.unlock();
             }
         }
-        if (removed > 0) {
-            logger.debug("Cleaned up {} expired cache entries", removed);
+    }
+
+    // Guarded by evictionLock
+    @SuppressWarnings("unchecked")
+    private void drainReadBuffers() {
+        for (ReadBuffer buffer : readBuffers) {
+            long head = buffer.readCounter.get();
+            long tail = buffer.writeCounter.get();
+            for (; head < tail; head++) {
+                int index = (int) (head & ReadBuffer.MASK);
+                Node<K, V> node = (Node<K, V>) buffer.slots.get(index);
+                if (node == null) {
+                    // Claimed but not published yet; pick it up next time
+                    break;
+                }
+                buffer.slots.lazySet(index, null);
+                onAccess(node);
+            }
+            buffer.readCounter.lazySet(head);
+        }
+    }
+
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == DEAD) {
+            return;
+        }
+        sketch.increment(node.key);
+        switch (node.queue) {
+            case WINDOW -> window.moveToBack(node);
+            case PROBATION -> {
+                probation.unlink(node);
+                node.queue = PROTECTED;
+                protectedQueue.addLast(node);
+                protectedWeight += node.weight;
+                while (protectedWeight > protectedMaximum) {
+                    Node<K, V> demoted = protectedQueue.first;
+                    if (demoted == node) {
+                        break;
+                    }
+                    protectedQueue.unlink(demoted);
+                    protectedWeight -= demoted.weight;
+                    demoted.queue = PROBATION;
+                    probation.addLast(demoted);
+                }
+            }
+            case PROTECTED -> protectedQueue.moveToBack(node);
+            default -> {
+            }
         }
     }
 
-    private void evictOldest() {
-        K oldestKey = null;
-        long oldestTime = Long.MAX_VALUE;
-        
-        for (Map.Entry<K, CacheEntry<V>> entry : cache.entrySet()) {
-            if (entry.getValue().createdAt < oldestTime) {
-                oldestTime = entry.getValue().createdAt;
-                oldestKey = entry.getKey();
+    private void evictEntries() {
+        while (windowWeight > windowMaximum && window.first != null) {
+            Node<K, V> candidate = window.first;
+            window.unlink(candidate);
+            windowWeight -= candidate.weight;
+            candidate.queue = PROBATION;
+            probation.addLast(candidate);
+            if (weightedSize > maximumWeight) {
+                admit(candidate);
             }
         }
-        
-        if (oldestKey != null) {
-            cache.remove(oldestKey);
-            logger.debug("Evicted oldest cache entry: key={}", oldestKey);
+        // The window fits but the main region is full: evict its LRU entries
+        while (weightedSize > maximumWeight) {
+            Node<K, V> victim = probation.first != null ? probation.first
+                    : protectedQueue.first != null ? protectedQueue.first : window.first;
+            evict(victim);
         }
     }
 
-    public void shutdown() {
-        cleanupScheduler.shutdown();
-        try {
-            if (!cleanupScheduler.awaitTermination(5, TimeUnit.SECONDS)) {
-                cleanupScheduler.shutdownNow();
+    /**
+     * Makes room for {@code candidate}, just moved to the back of probation,
+     * by evicting main-region victims that are used less often than it is; if
+     * a victim is used at least as often, the candidate goes instead.
+     */
+    private void admit(Node<K, V> candidate) {
+        int candidateFrequency = sketch.frequency(candidate.key);
+        while (weightedSize > maximumWeight) {
+            Node<K, V> victim = probation.first != candidate ? probation.first : protectedQueue.first;
+            if (victim == null) {
+                evict(candidate);
+                return;
+            }
+            if (victim.isExpired() || candidateFrequency > sketch.frequency(victim.key)) {
+                evict(victim);
+            } else {
+                evict(candidate);
+                return;
             }
-        } catch (InterruptedException e) {
-            cleanupScheduler.shutdownNow();
-            Thread.currentThread().interrupt();
         }
-        cache.clear();
-        logger.info("ResourceCache shutdown");
+    }
+
+    private void evict(Node<K, V> node) {
+        data.remove(node.key, node);
+        removeFromPolicy(node);
+        evictions.increment();
+        evictedWeight.add(node.weight);
+    }
+
+    // Guarded by evictionLock
+    private void removeFromPolicy(Node<K, V> node) {
+        switch (node.queue) {
+            case WINDOW -> {
+                window.unlink(node);
+                windowWeight -= node.weight;
+            }
+            case PROBATION -> probation.unlink(node);
+            case PROTECTED -> {
+                protectedQueue.unlink(node);
+                protectedWeight -= node.weight;
+            }
+            default -> {
+                return;
+            }
+        }
+        node.queue = DEAD;
+        weightedSize -= node.weight;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        final V value;
+        final long weight;
+        final long expiresAt;
+        // Guarded by evictionLock
+        int queue = DEAD;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, long weight, long expiresAt) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired() {
+            return expiresAt != Long.MAX_VALUE && System.currentTimeMillis() > expiresAt;
+        }
+    }
+
+    /**
+     * Intrusive doubly-linked list, least recently used first.
+     */
+    private static final class AccessOrderQueue<K, V> {
+        Node<K, V> first;
+        Node<K, V> last;
+
+        void addLast(Node<K, V> node) {
+            node.prev = last;
+            node.next = null;
+            if (last == null) {
+                first = node;
+            } else {
+                last.next = node;
+            }
+            last = node;
+        }
+
+        void unlink(Node<K, V> node) {
+            if (node.prev == null) {
+                first = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                last = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToBack(Node<K, V> node) {
+            if (node != last) {
+                unlink(node);
+                addLast(node);
+            }
+        }
+    }
+
+    /**
+     * Bounded multi-producer ring of reads awaiting the policy. Producers
+     * claim a slot by CAS and give up instead of spinning.
+     */
+    private static final class ReadBuffer {
+        static final int SIZE = 64;
+        static final long MASK = SIZE - 1;
+
+        final AtomicReferenceArray<Node<?, ?>> slots = new AtomicReferenceArray<>(SIZE);
+        final AtomicLong writeCounter = new AtomicLong();
+        final AtomicLong readCounter = new AtomicLong();
+
+        /**
+         * @return whether the buffer is full and should be drained
+         */
+        boolean offer(Node<?, ?> node) {
+            long tail = writeCounter.get();
+            long size = tail - readCounter.get();
+            if (size >= SIZE) {
+                return true;
+            }
+            if (writeCounter.compareAndSet(tail, tail + 1)) {
+                slots.lazySet((int) (tail & MASK), node);
+                return size + 1 >= SIZE;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Count-min sketch of 4-bit counters, four per key, that halves every
+     * counter once it has seen ten samples per slot so old popularity fades.
+     * Grows with the number of entries; growing forgets the history.
+     */
+    static final class FrequencySketch {
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long ONE_MASK = 0x1111111111111111L;
+
+        private long[] table;
+        private int tableMask;
+        private int sampleSize;
+        private int size;
+
+        void ensureCapacity(long expectedEntries) {
+            int capacity = (int) Math.min(Math.max(expectedEntries, 16), 1 << 30);
+            if (table != null && table.length >= capacity) {
+                return;
+            }
+            int length = Integer.highestOneBit(capacity - 1) << 1;
+            table = new long[length];
+            tableMask = length - 1;
+            sampleSize = 10 * length;
+            size = 0;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                int index = indexOf(hash, i);
+                int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++) {
+                added |= incrementAt(indexOf(hash, i), start + i);
+            }
+            if (added && ++size >= sampleSize) {
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int counter) {
+            int offset = counter << 2;
+            long mask = 0xfL << offset;
+            if ((table[index] & mask) != mask) {
+                table[index] += 1L << offset;
+                return true;
+            }
+            return false;
+        }
+
+        private void reset() {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++) {
+                odd += Long.bitCount(table[i] & ONE_MASK);
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size = (size >>> 1) - (odd >>> 2);
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & tableMask;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
     }
 }
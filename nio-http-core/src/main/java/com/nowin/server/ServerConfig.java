@@ -15,16 +15,24 @@ public class ServerConfig {
     private int workerThreads;
     private int maxConnections;
     private int backlogSize;
+    private int acceptBatchSize;
+    private int acceptRateLimit;
+    private int acceptRateBurst;
     private int receiveBufferSize;
     private int sendBufferSize;
     private boolean tcpNoDelay;
     private boolean soKeepAlive;
     private boolean soReuseAddr;
+    private boolean reusePort;
+    private String transport;
     private int soLinger;
     private int writeQueueCapacity;
     private long writeBufferLowWaterMark;
     private long writeBufferHighWaterMark;
+    private int maxPipelinedRequests;
     private int socketTimeout;
+    private int writeTimeout;
+    private int requestTimeout;
     private boolean tcpKeepAlive;
     private int tcpKeepIdle;
     private int tcpKeepInterval;
@@ -36,7 +44,15 @@ public class ServerConfig {
     private String sslKeyStorePassword;
     private boolean compressionEnabled;
     private int compressionMinSize;
+    private int webSocketMaxMessageSize;
+    private int webSocketPingInterval;
+    private boolean webSocketCompressionEnabled;
+    private boolean http2Enabled;
+    private int http2MaxConcurrentStreams;
+    private int http2InitialWindowSize;
     private String staticWelcomeFiles;
+    private long staticCacheMaxBytes;
+    private int staticMetadataCacheMaxEntries;
     private String mimeTypesFile;
 
     public ServerConfig() {
@@ -46,16 +62,24 @@ public class ServerConfig {
         this.workerThreads = Runtime.getRuntime().availableProcessors() * 2;
         this.maxConnections = 10000;
         this.backlogSize = 1024;
+        this.acceptBatchSize = 64;
+        this.acceptRateLimit = 0;
+        this.acceptRateBurst = 0;
         this.receiveBufferSize = 131072;
         this.sendBufferSize = 131072;
         this.tcpNoDelay = true;
         this.soKeepAlive = true;
         this.soReuseAddr = true;
+        this.reusePort = false;
+        this.transport = "nio";
         this.soLinger = -1;
         this.writeQueueCapacity = 100;
         this.writeBufferLowWaterMark = 32L * 1024 * 1024;
         this.writeBufferHighWaterMark = 64L * 1024 * 1024;
+        this.maxPipelinedRequests = 16;
         this.socketTimeout = 0;
+        this.writeTimeout = 0;
+        this.requestTimeout = 0;
         this.tcpKeepAlive = true;
         this.tcpKeepIdle = 7200;
         this.tcpKeepInterval = 75;
@@ -67,7 +91,15 @@ public class ServerConfig {
         this.sslKeyStorePassword = null;
         this.compressionEnabled = true;
         this.compressionMinSize = 512;
+        this.webSocketMaxMessageSize = 1024 * 1024;
+        this.webSocketPingInterval = 30000;
+        this.webSocketCompressionEnabled = true;
+        this.http2Enabled = true;
+        this.http2MaxConcurrentStreams = 100;
+        this.http2InitialWindowSize = 65535;
         this.staticWelcomeFiles = null;
+        this.staticCacheMaxBytes = 64L * 1024 * 1024;
+        this.staticMetadataCacheMaxEntries = 100_000;
         this.mimeTypesFile = null;
     }
 
@@ -90,6 +122,18 @@ public class ServerConfig {
         if (backlogSize < 1) {
             throw new IllegalArgumentException("Backlog size must be >= 1, got: " + backlogSize);
         }
+        if (transport == null || transport.isBlank()) {
+            throw new IllegalArgumentException("Transport must be set");
+        }
+        if (acceptBatchSize < 1) {
+            throw new IllegalArgumentException("Accept batch size must be >= 1, got: " + acceptBatchSize);
+        }
+        if (acceptRateLimit < 0) {
+            throw new IllegalArgumentException("Accept rate limit must be >= 0, got: " + acceptRateLimit);
+        }
+        if (acceptRateBurst < 0) {
+            throw new IllegalArgumentException("Accept rate burst must be >= 0, got: " + acceptRateBurst);
+        }
         if (receiveBufferSize < 0) {
             throw new IllegalArgumentException("Receive buffer size must be >= 0, got: " + receiveBufferSize);
         }
@@ -105,6 +149,15 @@ public class ServerConfig {
         if (writeBufferHighWaterMark <= 0 || writeBufferHighWaterMark < writeBufferLowWaterMark) {
             throw new IllegalArgumentException("Write buffer high water mark must be > 0 and >= low water mark, got: " + writeBufferHighWaterMark);
         }
+        if (maxPipelinedRequests < 1) {
+            throw new IllegalArgumentException("Max pipelined requests must be >= 1, got: " + maxPipelinedRequests);
+        }
+        if (writeTimeout < 0) {
+            throw new IllegalArgumentException("Write timeout must be >= 0, got: " + writeTimeout);
+        }
+        if (requestTimeout < 0) {
+            throw new IllegalArgumentException("Request timeout must be >= 0, got: " + requestTimeout);
+        }
         if (soLinger < -1) {
             throw new IllegalArgumentException("SO_LINGER must be >= -1, got: " + soLinger);
         }
@@ -126,6 +179,25 @@ public class ServerConfig {
         if (compressionMinSize < 0) {
             throw new IllegalArgumentException("Compression min size must be >= 0, got: " + compressionMinSize);
         }
+        if (webSocketMaxMessageSize < 1) {
+            throw new IllegalArgumentException("WebSocket max message size must be >= 1, got: " + webSocketMaxMessageSize);
+        }
+        if (webSocketPingInterval < 0) {
+            throw new IllegalArgumentException("WebSocket ping interval must be >= 0, got: " + webSocketPingInterval);
+        }
+        if (http2MaxConcurrentStreams < 1) {
+            throw new IllegalArgumentException("HTTP/2 max concurrent streams must be >= 1, got: " + http2MaxConcurrentStreams);
+        }
+        if (http2InitialWindowSize < 1) {
+            throw new IllegalArgumentException("HTTP/2 initial window size must be >= 1, got: " + http2InitialWindowSize);
+        }
+        if (staticCacheMaxBytes < 0) {
+            throw new IllegalArgumentException("Static cache max bytes must be >= 0, got: " + staticCacheMaxBytes);
+        }
+        if (staticMetadataCacheMaxEntries < 0) {
+            throw new IllegalArgumentException(
+                    "Static metadata cache max entries must be >= 0, got: " + staticMetadataCacheMaxEntries);
+        }
         if (sslEnabled && (sslKeyStorePath == null || sslKeyStorePath.isBlank())) {
             throw new IllegalArgumentException("SSL key store path must be set when SSL is enabled");
         }
@@ -142,16 +214,24 @@ public class ServerConfig {
         copy.workerThreads = this.workerThreads;
         copy.maxConnections = this.maxConnections;
         copy.backlogSize = this.backlogSize;
+        copy.acceptBatchSize = this.acceptBatchSize;
+        copy.acceptRateLimit = this.acceptRateLimit;
+        copy.acceptRateBurst = this.acceptRateBurst;
         copy.receiveBufferSize = this.receiveBufferSize;
         copy.sendBufferSize = this.sendBufferSize;
         copy.tcpNoDelay = this.tcpNoDelay;
         copy.soKeepAlive = this.soKeepAlive;
         copy.soReuseAddr = this.soReuseAddr;
+        copy.reusePort = this.reusePort;
+        copy.transport = this.transport;
         copy.soLinger = this.soLinger;
         copy.writeQueueCapacity = this.writeQueueCapacity;
         copy.writeBufferLowWaterMark = this.writeBufferLowWaterMark;
         copy.writeBufferHighWaterMark = this.writeBufferHighWaterMark;
+        copy.maxPipelinedRequests = this.maxPipelinedRequests;
         copy.socketTimeout = this.socketTimeout;
+        copy.writeTimeout = this.writeTimeout;
+        copy.requestTimeout = this.requestTimeout;
         copy.tcpKeepAlive = this.tcpKeepAlive;
         copy.tcpKeepIdle = this.tcpKeepIdle;
         copy.tcpKeepInterval = this.tcpKeepInterval;
@@ -163,7 +243,15 @@ public class ServerConfig {
         copy.sslKeyStorePassword = this.sslKeyStorePassword;
         copy.compressionEnabled = this.compressionEnabled;
         copy.compressionMinSize = this.compressionMinSize;
+        copy.webSocketMaxMessageSize = this.webSocketMaxMessageSize;
+        copy.webSocketPingInterval = this.webSocketPingInterval;
+        copy.webSocketCompressionEnabled = this.webSocketCompressionEnabled;
+        copy.http2Enabled = this.http2Enabled;
+        copy.http2MaxConcurrentStreams = this.http2MaxConcurrentStreams;
+        copy.http2InitialWindowSize = this.http2InitialWindowSize;
         copy.staticWelcomeFiles = this.staticWelcomeFiles;
+        copy.staticCacheMaxBytes = this.staticCacheMaxBytes;
+        copy.staticMetadataCacheMaxEntries = this.staticMetadataCacheMaxEntries;
         copy.mimeTypesFile = this.mimeTypesFile;
         return copy;
     }
@@ -205,16 +293,24 @@ public class ServerConfig {
         props.setProperty("server.workerThreads", String.valueOf(workerThreads));
         props.setProperty("server.maxConnections", String.valueOf(maxConnections));
         props.setProperty("server.backlogSize", String.valueOf(backlogSize));
+        props.setProperty("server.acceptBatchSize", String.valueOf(acceptBatchSize));
+        props.setProperty("server.acceptRateLimit", String.valueOf(acceptRateLimit));
+        props.setProperty("server.acceptRateBurst", String.valueOf(acceptRateBurst));
         props.setProperty("server.receiveBufferSize", String.valueOf(receiveBufferSize));
         props.setProperty("server.sendBufferSize", String.valueOf(sendBufferSize));
         props.setProperty("server.tcpNoDelay", String.valueOf(tcpNoDelay));
         props.setProperty("server.soKeepAlive", String.valueOf(soKeepAlive));
         props.setProperty("server.soReuseAddr", String.valueOf(soReuseAddr));
+        props.setProperty("server.reusePort", String.valueOf(reusePort));
+        props.setProperty("server.transport", transport);
         props.setProperty("server.soLinger", String.valueOf(soLinger));
         props.setProperty("server.writeQueueCapacity", String.valueOf(writeQueueCapacity));
         props.setProperty("server.writeBufferLowWaterMark", String.valueOf(writeBufferLowWaterMark));
         props.setProperty("server.writeBufferHighWaterMark", String.valueOf(writeBufferHighWaterMark));
+        props.setProperty("server.maxPipelinedRequests", String.valueOf(maxPipelinedRequests));
         props.setProperty("server.socketTimeout", String.valueOf(socketTimeout));
+        props.setProperty("server.writeTimeout", String.valueOf(writeTimeout));
+        props.setProperty("server.requestTimeout", String.valueOf(requestTimeout));
         props.setProperty("server.tcpKeepAlive", String.valueOf(tcpKeepAlive));
         props.setProperty("server.tcpKeepIdle", String.valueOf(tcpKeepIdle));
         props.setProperty("server.tcpKeepInterval", String.valueOf(tcpKeepInterval));
@@ -230,9 +326,17 @@ public class ServerConfig {
         }
         props.setProperty("compression.enabled", String.valueOf(compressionEnabled));
         props.setProperty("compression.minSize", String.valueOf(compressionMinSize));
+        props.setProperty("websocket.maxMessageSize", String.valueOf(webSocketMaxMessageSize));
+        props.setProperty("websocket.pingInterval", String.valueOf(webSocketPingInterval));
+        props.setProperty("websocket.compressionEnabled", String.valueOf(webSocketCompressionEnabled));
+        props.setProperty("http2.enabled", String.valueOf(http2Enabled));
+        props.setProperty("http2.maxConcurrentStreams", String.valueOf(http2MaxConcurrentStreams));
+        props.setProperty("http2.initialWindowSize", String.valueOf(http2InitialWindowSize));
         if (staticWelcomeFiles != null) {
             props.setProperty("static.welcomeFiles", staticWelcomeFiles);
         }
+        props.setProperty("static.cache.maxBytes", String.valueOf(staticCacheMaxBytes));
+        props.setProperty("static.metadataCache.maxEntries", String.valueOf(staticMetadataCacheMaxEntries));
         if (mimeTypesFile != null) {
             props.setProperty("mime.typesFile", mimeTypesFile);
         }
@@ -258,6 +362,15 @@ public class ServerConfig {
         if (props.containsKey("server.backlogSize")) {
             this.backlogSize = Integer.parseInt(props.getProperty("server.backlogSize"));
         }
+        if (props.containsKey("server.acceptBatchSize")) {
+            this.acceptBatchSize = Integer.parseInt(props.getProperty("server.acceptBatchSize"));
+        }
+        if (props.containsKey("server.acceptRateLimit")) {
+            this.acceptRateLimit = Integer.parseInt(props.getProperty("server.acceptRateLimit"));
+        }
+        if (props.containsKey("server.acceptRateBurst")) {
+            this.acceptRateBurst = Integer.parseInt(props.getProperty("server.acceptRateBurst"));
+        }
         if (props.containsKey("server.receiveBufferSize")) {
             this.receiveBufferSize = Integer.parseInt(props.getProperty("server.receiveBufferSize"));
         }
@@ -273,6 +386,12 @@ public class ServerConfig {
         if (props.containsKey("server.soReuseAddr")) {
             this.soReuseAddr = Boolean.parseBoolean(props.getProperty("server.soReuseAddr"));
         }
+        if (props.containsKey("server.reusePort")) {
+            this.reusePort = Boolean.parseBoolean(props.getProperty("server.reusePort"));
+        }
+        if (props.containsKey("server.transport")) {
+            this.transport = props.getProperty("server.transport").trim();
+        }
         if (props.containsKey("server.soLinger")) {
             this.soLinger = Integer.parseInt(props.getProperty("server.soLinger"));
         }
@@ -285,9 +404,18 @@ public class ServerConfig {
         if (props.containsKey("server.writeBufferHighWaterMark")) {
             this.writeBufferHighWaterMark = Long.parseLong(props.getProperty("server.writeBufferHighWaterMark"));
         }
+        if (props.containsKey("server.maxPipelinedRequests")) {
+            this.maxPipelinedRequests = Integer.parseInt(props.getProperty("server.maxPipelinedRequests"));
+        }
         if (props.containsKey("server.socketTimeout")) {
             this.socketTimeout = Integer.parseInt(props.getProperty("server.socketTimeout"));
         }
+        if (props.containsKey("server.writeTimeout")) {
+            this.writeTimeout = Integer.parseInt(props.getProperty("server.writeTimeout"));
+        }
+        if (props.containsKey("server.requestTimeout")) {
+            this.requestTimeout = Integer.parseInt(props.getProperty("server.requestTimeout"));
+        }
         if (props.containsKey("server.tcpKeepAlive")) {
             this.tcpKeepAlive = Boolean.parseBoolean(props.getProperty("server.tcpKeepAlive"));
         }
@@ -321,9 +449,34 @@ public class ServerConfig {
         if (props.containsKey("compression.minSize")) {
             this.compressionMinSize = Integer.parseInt(props.getProperty("compression.minSize"));
         }
+        if (props.containsKey("websocket.maxMessageSize")) {
+            this.webSocketMaxMessageSize = Integer.parseInt(props.getProperty("websocket.maxMessageSize"));
+        }
+        if (props.containsKey("websocket.pingInterval")) {
+            this.webSocketPingInterval = Integer.parseInt(props.getProperty("websocket.pingInterval"));
+        }
+        if (props.containsKey("websocket.compressionEnabled")) {
+            this.webSocketCompressionEnabled = Boolean.parseBoolean(props.getProperty("websocket.compressionEnabled"));
+        }
+        if (props.containsKey("http2.enabled")) {
+            this.http2Enabled = Boolean.parseBoolean(props.getProperty("http2.enabled"));
+        }
+        if (props.containsKey("http2.maxConcurrentStreams")) {
+            this.http2MaxConcurrentStreams = Integer.parseInt(props.getProperty("http2.maxConcurrentStreams"));
+        }
+        if (props.containsKey("http2.initialWindowSize")) {
+            this.http2InitialWindowSize = Integer.parseInt(props.getProperty("http2.initialWindowSize"));
+        }
         if (props.containsKey("static.welcomeFiles")) {
             this.staticWelcomeFiles = props.getProperty("static.welcomeFiles");
         }
+        if (props.containsKey("static.cache.maxBytes")) {
+            this.staticCacheMaxBytes = Long.parseLong(props.getProperty("static.cache.maxBytes"));
+        }
+        if (props.containsKey("static.metadataCache.maxEntries")) {
+            this.staticMetadataCacheMaxEntries =
+                    Integer.parseInt(props.getProperty("static.metadataCache.maxEntries"));
+        }
         if (props.containsKey("mime.typesFile")) {
             this.mimeTypesFile = props.getProperty("mime.typesFile");
         }
@@ -383,6 +536,45 @@ public class ServerConfig {
         return this;
     }
 
+    public int getAcceptBatchSize() {
+        return acceptBatchSize;
+    }
+
+    /**
+     * Maximum number of connections an acceptor takes off the backlog per
+     * readiness event.
+     */
+    public ServerConfig setAcceptBatchSize(int acceptBatchSize) {
+        this.acceptBatchSize = acceptBatchSize;
+        return this;
+    }
+
+    public int getAcceptRateLimit() {
+        return acceptRateLimit;
+    }
+
+    /**
+     * Maximum new connections accepted per second across all acceptors;
+     * connections beyond it wait in the kernel backlog. Zero disables the limit.
+     */
+    public ServerConfig setAcceptRateLimit(int acceptRateLimit) {
+        this.acceptRateLimit = acceptRateLimit;
+        return this;
+    }
+
+    public int getAcceptRateBurst() {
+        return acceptRateBurst;
+    }
+
+    /**
+     * Connections that may be accepted back to back before the rate limit
+     * applies. Zero means one second's worth of {@link #getAcceptRateLimit()}.
+     */
+    public ServerConfig setAcceptRateBurst(int acceptRateBurst) {
+        this.acceptRateBurst = acceptRateBurst;
+        return this;
+    }
+
     public int getReceiveBufferSize() {
         return receiveBufferSize;
     }
@@ -428,6 +620,36 @@ public class ServerConfig {
         return this;
     }
 
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * Binds one {@code SO_REUSEPORT} listening socket per worker event loop,
+     * so the kernel spreads new connections across loops and each loop
+     * accepts its own. Boss threads are not used in this mode. Falls back to
+     * a single acceptor where the option is unsupported.
+     */
+    public ServerConfig setReusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    public String getTransport() {
+        return transport;
+    }
+
+    /**
+     * I/O transport: {@code nio} (default), {@code virtual} (a virtual
+     * thread per connection), {@code auto}, or the name of a transport
+     * registered through {@link java.util.ServiceLoader}. See
+     * {@link com.nowin.transport.TransportFactories}.
+     */
+    public ServerConfig setTransport(String transport) {
+        this.transport = transport;
+        return this;
+    }
+
     public int getSoLinger() {
         return soLinger;
     }
@@ -464,6 +686,20 @@ public class ServerConfig {
         return this;
     }
 
+    public int getMaxPipelinedRequests() {
+        return maxPipelinedRequests;
+    }
+
+    /**
+     * Maximum number of HTTP/1.1 requests per connection that may be awaiting
+     * a response. Once reached, the server stops reading from the connection
+     * until a response has been written.
+     */
+    public ServerConfig setMaxPipelinedRequests(int maxPipelinedRequests) {
+        this.maxPipelinedRequests = maxPipelinedRequests;
+        return this;
+    }
+
     public int getSocketTimeout() {
         return socketTimeout;
     }
@@ -473,6 +709,33 @@ public class ServerConfig {
         return this;
     }
 
+    public int getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * Milliseconds a connection's queued output may go without any bytes
+     * being flushed before the connection is closed. Zero disables it.
+     */
+    public ServerConfig setWriteTimeout(int writeTimeout) {
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    /**
+     * Milliseconds the oldest outstanding request on a connection may wait
+     * for its response to be written before the connection is closed.
+     * Zero disables it.
+     */
+    public ServerConfig setRequestTimeout(int requestTimeout) {
+        this.requestTimeout = requestTimeout;
+        return this;
+    }
+
     public boolean isTcpKeepAlive() {
         return tcpKeepAlive;
     }
@@ -572,6 +835,60 @@ public class ServerConfig {
         return this;
     }
 
+    public int getWebSocketMaxMessageSize() {
+        return webSocketMaxMessageSize;
+    }
+
+    public ServerConfig setWebSocketMaxMessageSize(int webSocketMaxMessageSize) {
+        this.webSocketMaxMessageSize = webSocketMaxMessageSize;
+        return this;
+    }
+
+    public int getWebSocketPingInterval() {
+        return webSocketPingInterval;
+    }
+
+    public ServerConfig setWebSocketPingInterval(int webSocketPingInterval) {
+        this.webSocketPingInterval = webSocketPingInterval;
+        return this;
+    }
+
+    public boolean isWebSocketCompressionEnabled() {
+        return webSocketCompressionEnabled;
+    }
+
+    public ServerConfig setWebSocketCompressionEnabled(boolean webSocketCompressionEnabled) {
+        this.webSocketCompressionEnabled = webSocketCompressionEnabled;
+        return this;
+    }
+
+    public boolean isHttp2Enabled() {
+        return http2Enabled;
+    }
+
+    public ServerConfig setHttp2Enabled(boolean http2Enabled) {
+        this.http2Enabled = http2Enabled;
+        return this;
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    public ServerConfig setHttp2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+        return this;
+    }
+
+    public int getHttp2InitialWindowSize() {
+        return http2InitialWindowSize;
+    }
+
+    public ServerConfig setHttp2InitialWindowSize(int http2InitialWindowSize) {
+        this.http2InitialWindowSize = http2InitialWindowSize;
+        return this;
+    }
+
     public String getStaticWelcomeFiles() {
         return staticWelcomeFiles;
     }
@@ -581,6 +898,32 @@ public class ServerConfig {
         return this;
     }
 
+    public long getStaticCacheMaxBytes() {
+        return staticCacheMaxBytes;
+    }
+
+    /**
+     * Memory budget of the cache the default file handler keeps small static
+     * files in; 0 disables it.
+     */
+    public ServerConfig setStaticCacheMaxBytes(long staticCacheMaxBytes) {
+        this.staticCacheMaxBytes = staticCacheMaxBytes;
+        return this;
+    }
+
+    public int getStaticMetadataCacheMaxEntries() {
+        return staticMetadataCacheMaxEntries;
+    }
+
+    /**
+     * Number of paths whose attributes the default file handler keeps in
+     * memory, invalidated by file system watches; 0 disables the cache.
+     */
+    public ServerConfig setStaticMetadataCacheMaxEntries(int staticMetadataCacheMaxEntries) {
+        this.staticMetadataCacheMaxEntries = staticMetadataCacheMaxEntries;
+        return this;
+    }
+
     public String getMimeTypesFile() {
         return mimeTypesFile;
     }
@@ -599,16 +942,24 @@ public class ServerConfig {
                 ", workerThreads=" + workerThreads +
                 ", maxConnections=" + maxConnections +
                 ", backlogSize=" + backlogSize +
+                ", acceptBatchSize=" + acceptBatchSize +
+                ", acceptRateLimit=" + acceptRateLimit +
+                ", acceptRateBurst=" + acceptRateBurst +
                 ", receiveBufferSize=" + receiveBufferSize +
                 ", sendBufferSize=" + sendBufferSize +
                 ", tcpNoDelay=" + tcpNoDelay +
                 ", soKeepAlive=" + soKeepAlive +
                 ", soReuseAddr=" + soReuseAddr +
+                ", reusePort=" + reusePort +
+                ", transport='" + transport + '\'' +
                 ", soLinger=" + soLinger +
                 ", writeQueueCapacity=" + writeQueueCapacity +
                 ", writeBufferLowWaterMark=" + writeBufferLowWaterMark +
                 ", writeBufferHighWaterMark=" + writeBufferHighWaterMark +
+                ", maxPipelinedRequests=" + maxPipelinedRequests +
                 ", socketTimeout=" + socketTimeout +
+                ", writeTimeout=" + writeTimeout +
+                ", requestTimeout=" + requestTimeout +
                 ", tcpKeepAlive=" + tcpKeepAlive +
                 ", tcpKeepIdle=" + tcpKeepIdle +
                 ", tcpKeepInterval=" + tcpKeepInterval +
@@ -619,7 +970,15 @@ public class ServerConfig {
                 ", sslKeyStorePath='" + sslKeyStorePath + '\'' +
                 ", compressionEnabled=" + compressionEnabled +
                 ", compressionMinSize=" + compressionMinSize +
+                ", webSocketMaxMessageSize=" + webSocketMaxMessageSize +
+                ", webSocketPingInterval=" + webSocketPingInterval +
+                ", webSocketCompressionEnabled=" + webSocketCompressionEnabled +
+                ", http2Enabled=" + http2Enabled +
+                ", http2MaxConcurrentStreams=" + http2MaxConcurrentStreams +
+                ", http2InitialWindowSize=" + http2InitialWindowSize +
                 ", staticWelcomeFiles='" + staticWelcomeFiles + '\'' +
+                ", staticCacheMaxBytes=" + staticCacheMaxBytes +
+                ", staticMetadataCacheMaxEntries=" + staticMetadataCacheMaxEntries +
                 ", mimeTypesFile='" + mimeTypesFile + '\'' +
                 '}';
     }
@@ -1,10 +1,13 @@
 package com.nowin.server;
 
+import com.nowin.handler.FileMetadataCache;
 import com.nowin.handler.HttpHandler;
 import com.nowin.handler.Middleware;
+import com.nowin.http.CachedFile;
 import com.nowin.http.MimeTypeResolver;
 import com.nowin.pipeline.ChannelInitializer;
 
+import java.nio.file.Path;
 import java.util.*;
 
 /**
@@ -27,7 +30,8 @@ public class ServerConfiguration {
     private final boolean defaultEndpointsDisabled;
     private final boolean autoShutdownHook;
     private final MimeTypeResolver mimeTypeResolver;
-    private final ResourceCache<String, byte[]> resourceCache;
+    private final ResourceCache<Path, CachedFile> resourceCache;
+    private final FileMetadataCache fileMetadataCache;
     private final ChannelInitializer channelInitializer;
 
     public ServerConfiguration(ServerConfig serverConfig,
@@ -41,7 +45,8 @@ public class ServerConfiguration {
                         boolean defaultEndpointsDisabled,
                         boolean autoShutdownHook,
                         MimeTypeResolver mimeTypeResolver,
-                        ResourceCache<String, byte[]> resourceCache,
+                        ResourceCache<Path, CachedFile> resourceCache,
+                        FileMetadataCache fileMetadataCache,
             ChannelInitializer channelInitializer) {
         this.serverConfig = Objects.requireNonNull(serverConfig, "serverConfig");
         this.virtualHosts = Map.copyOf(virtualHosts);
@@ -55,9 +60,32 @@ public class ServerConfiguration {
         this.autoShutdownHook = autoShutdownHook;
         this.mimeTypeResolver = Objects.requireNonNull(mimeTypeResolver, "mimeTypeResolver");
         this.resourceCache = resourceCache;
+        this.fileMetadataCache = fileMetadataCache;
         this.channelInitializer = channelInitializer;
     }
 
+    /**
+     * @deprecated the server no longer owns a cache; a {@code resourceCache}
+     * passed here is not used, hand it to the {@link HttpHandler} that reads it
+     */
+    @Deprecated
+    public ServerConfiguration(ServerConfig serverConfig,
+                        Map<String, VirtualHost> virtualHosts,
+                        VirtualHost defaultVirtualHost,
+                        Router router,
+                        SslContext sslContext,
+                        List<Plugin> plugins,
+                        List<HttpServerObserver> observers,
+                        List<Middleware> middlewares,
+                        boolean defaultEndpointsDisabled,
+                        boolean autoShutdownHook,
+                        MimeTypeResolver mimeTypeResolver,
+                        ResourceCache<String, byte[]> resourceCache,
+            ChannelInitializer channelInitializer) {
+        this(serverConfig, virtualHosts, defaultVirtualHost, router, sslContext, plugins, observers, middlewares,
+                defaultEndpointsDisabled, autoShutdownHook, mimeTypeResolver, null, null, channelInitializer);
+    }
+
     public ServerConfig getServerConfig() {
         return serverConfig;
     }
@@ -102,10 +130,14 @@ public class ServerConfiguration {
         return mimeTypeResolver;
     }
 
-    public ResourceCache<String, byte[]> getResourceCache() {
+    public ResourceCache<Path, CachedFile> getResourceCache() {
         return resourceCache;
     }
 
+    public FileMetadataCache getFileMetadataCache() {
+        return fileMetadataCache;
+    }
+
     public ChannelInitializer getChannelInitializer() {
         return channelInitializer;
     }
@@ -5,10 +5,20 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLEngine;
 import java.io.FileInputStream;
 import java.security.KeyStore;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class SslContext {
 
+    private static final int DELEGATED_TASK_QUEUE_CAPACITY = 1024;
+    private static final AtomicInteger delegatedTaskThreadIds = new AtomicInteger();
+
     private final SSLContext sslContext;
+    private volatile Executor delegatedTaskExecutor;
 
     public SslContext(String keyStorePath, String keyStorePassword) throws Exception {
         KeyStore keyStore = KeyStore.getInstance("JKS");
@@ -26,9 +36,66 @@ public class SslContext {
         return sslContext;
     }
 
+    /**
+     * Executor for the engines' delegated handshake tasks. Unless one was
+     * set, a bounded pool of daemon threads, one per two cores, is created
+     * on first use; its threads exit when idle.
+     */
+    public Executor getDelegatedTaskExecutor() {
+        Executor executor = delegatedTaskExecutor;
+        if (executor == null) {
+            synchronized (this) {
+                executor = delegatedTaskExecutor;
+                if (executor == null) {
+                    int threads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+                    ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<>(DELEGATED_TASK_QUEUE_CAPACITY), runnable -> {
+                                Thread thread = new Thread(runnable,
+                                        "ssl-delegated-task-" + delegatedTaskThreadIds.incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            });
+                    pool.allowCoreThreadTimeOut(true);
+                    delegatedTaskExecutor = executor = pool;
+                }
+            }
+        }
+        return executor;
+    }
+
+    /**
+     * Runs delegated handshake tasks on {@code executor} instead of the
+     * default pool. A rejected task runs on the event loop.
+     */
+    public SslContext setDelegatedTaskExecutor(Executor executor) {
+        this.delegatedTaskExecutor = executor;
+        return this;
+    }
+
     public SSLEngine createEngine() {
         SSLEngine engine = sslContext.createSSLEngine();
         engine.setUseClientMode(false);
         return engine;
     }
+
+    /**
+     * Creates a server engine that negotiates one of {@code applicationProtocols}
+     * with ALPN, in our order of preference. A client offering none of them,
+     * or not using ALPN, gets no protocol and is served HTTP/1.1.
+     */
+    public SSLEngine createEngine(List<String> applicationProtocols) {
+        SSLEngine engine = createEngine();
+        if (!applicationProtocols.isEmpty()) {
+            List<String> supported = List.copyOf(applicationProtocols);
+            engine.setHandshakeApplicationProtocolSelector((ignored, offered) -> {
+                for (String protocol : supported) {
+                    if (offered.contains(protocol)) {
+                        return protocol;
+                    }
+                }
+                return "";
+            });
+        }
+        return engine;
+    }
 }
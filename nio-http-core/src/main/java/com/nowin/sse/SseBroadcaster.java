@@ -0,0 +1,177 @@
+package com.nowin.sse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends every event to all subscribed emitters.
+ * <p>
+ * An event is encoded once and each subscriber's connection queues a view
+ * of the same buffer. The last {@code replayCapacity} events are kept so a
+ * client reconnecting with {@code Last-Event-ID} receives the ones it
+ * missed. A subscriber whose unwritten output exceeds
+ * {@code maxPendingBytes} when an event is broadcast is dropped rather than
+ * buffered without bound; the client reconnects and catches up from the
+ * replay buffer.
+ */
+public class SseBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(SseBroadcaster.class);
+    private static final int DEFAULT_REPLAY_CAPACITY = 256;
+    private static final long DEFAULT_MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final int replayCapacity;
+    private final long maxPendingBytes;
+    private final Set<SseEmitter> subscribers = ConcurrentHashMap.newKeySet();
+    // Guards the replay buffer and keeps replay and broadcast in one order
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ArrayDeque<SseEvent> replay;
+    private final AtomicLong evictedCount = new AtomicLong();
+    private volatile Duration heartbeatInterval;
+
+    public SseBroadcaster() {
+        this(DEFAULT_REPLAY_CAPACITY, DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    /**
+     * @param replayCapacity  events kept for {@code Last-Event-ID} replay, 0 for none
+     * @param maxPendingBytes unwritten bytes beyond which a subscriber is dropped
+     */
+    public SseBroadcaster(int replayCapacity, long maxPendingBytes) {
+        if (replayCapacity < 0) {
+            throw new IllegalArgumentException("Replay capacity must be >= 0, got: " + replayCapacity);
+        }
+        if (maxPendingBytes < 1) {
+            throw new IllegalArgumentException("Max pending bytes must be >= 1, got: " + maxPendingBytes);
+        }
+        this.replayCapacity = replayCapacity;
+        this.maxPendingBytes = maxPendingBytes;
+        this.replay = new ArrayDeque<>(replayCapacity);
+    }
+
+    /**
+     * Starts a heartbeat on every emitter subscribed from now on.
+     */
+    public SseBroadcaster setHeartbeatInterval(Duration heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+        return this;
+    }
+
+    /**
+     * Adds {@code emitter}, first sending the retained events after its
+     * {@code Last-Event-ID}. If that id is no longer retained, every
+     * retained event is sent. The emitter leaves once its stream ends.
+     */
+    public void subscribe(SseEmitter emitter) {
+        Objects.requireNonNull(emitter, "emitter cannot be null");
+        lock.lock();
+        try {
+            Optional<String> lastEventId = emitter.lastEventId();
+            if (lastEventId.isPresent()) {
+                for (SseEvent missed : eventsAfter(lastEventId.get())) {
+                    emitter.send(missed);
+                }
+            }
+            subscribers.add(emitter);
+        } finally {
+            lock.unlock();
+        }
+        Duration interval = heartbeatInterval;
+        if (interval != null) {
+            emitter.heartbeat(interval);
+        }
+        emitter.onClose(() -> subscribers.remove(emitter));
+    }
+
+    public boolean unsubscribe(SseEmitter emitter) {
+        return subscribers.remove(emitter);
+    }
+
+    /**
+     * Sends {@code event} to every subscriber, dropping the ones that have
+     * fallen too far behind.
+     *
+     * @return the number of subscribers the event was queued for
+     */
+    public int broadcast(SseEvent event) {
+        Objects.requireNonNull(event, "event cannot be null");
+        event.encoded();
+        int delivered = 0;
+        lock.lock();
+        try {
+            if (replayCapacity > 0) {
+                if (replay.size() == replayCapacity) {
+                    replay.removeFirst();
+                }
+                replay.addLast(event);
+            }
+            for (Iterator<SseEmitter> it = subscribers.iterator(); it.hasNext(); ) {
+                SseEmitter emitter = it.next();
+                if (!emitter.isOpen()) {
+                    it.remove();
+                } else if (emitter.pendingBytes() > maxPendingBytes) {
+                    it.remove();
+                    evictedCount.incrementAndGet();
+                    logger.warn("sse_subscriber_evicted remote={} pending_bytes={} limit={}",
+                            emitter.request().getRemoteAddress(), emitter.pendingBytes(), maxPendingBytes);
+                    emitter.abort();
+                } else {
+                    emitter.send(event);
+                    delivered++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return delivered;
+    }
+
+    public int broadcast(String data) {
+        return broadcast(SseEvent.of(data));
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Subscribers dropped for reading too slowly.
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Ends every subscriber's stream.
+     */
+    public void close() {
+        List<SseEmitter> open = new ArrayList<>(subscribers);
+        subscribers.clear();
+        for (SseEmitter emitter : open) {
+            emitter.close();
+        }
+    }
+
+    private List<SseEvent> eventsAfter(String lastEventId) {
+        List<SseEvent> missed = new ArrayList<>();
+        for (SseEvent retained : replay) {
+            missed.add(retained);
+            if (lastEventId.equals(retained.getId())) {
+                missed.clear();
+            }
+        }
+        return missed;
+    }
+}
@@ -0,0 +1,66 @@
+package com.nowin.sse;
+
+import com.nowin.http.HttpRequest;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * One client's {@code text/event-stream} response. Methods may be called
+ * from any thread; sends never block and are written in the order they
+ * were made.
+ */
+public interface SseEmitter extends AutoCloseable {
+
+    HttpRequest request();
+
+    /**
+     * The {@code Last-Event-ID} the client sent when reconnecting, if any.
+     */
+    Optional<String> lastEventId();
+
+    /**
+     * Queues {@code event} for this client. The stage completes once the
+     * event has been written to the socket, or exceptionally if the stream
+     * is closed or the write failed.
+     */
+    CompletionStage<Void> send(SseEvent event);
+
+    default CompletionStage<Void> send(String data) {
+        return send(SseEvent.of(data));
+    }
+
+    /**
+     * Sends a comment line whenever nothing else was sent for
+     * {@code interval}, so proxies keep the connection open and a dead
+     * client is noticed. The timer runs on the connection's event loop.
+     */
+    void heartbeat(Duration interval);
+
+    boolean isOpen();
+
+    /**
+     * Bytes sent to this client that have not reached the socket yet.
+     */
+    long pendingBytes();
+
+    /**
+     * Runs {@code callback} once the stream has ended, however it ended; at
+     * once if it already has.
+     */
+    void onClose(Runnable callback);
+
+    /**
+     * Ends the response once everything sent so far is written. The
+     * connection stays open for further requests if it is keep-alive.
+     */
+    @Override
+    void close();
+
+    /**
+     * Drops the connection without waiting for pending events, e.g. for a
+     * client that reads too slowly to keep up.
+     */
+    void abort();
+}
@@ -0,0 +1,154 @@
+package com.nowin.sse;
+
+import com.nowin.util.RefCountedBuffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An immutable server-sent event.
+ * <p>
+ * The event is encoded in {@code text/event-stream} format once, on first
+ * use, into a {@link RefCountedBuffer}; every connection it is sent to
+ * writes a view of that same memory.
+ */
+public final class SseEvent {
+
+    private final String id;
+    private final String event;
+    private final String data;
+    private final long retryMillis;
+    private volatile RefCountedBuffer encoded;
+
+    private SseEvent(Builder builder) {
+        this.id = builder.id;
+        this.event = builder.event;
+        this.data = builder.data;
+        this.retryMillis = builder.retryMillis;
+    }
+
+    /**
+     * An unnamed event carrying {@code data}, which may span several lines.
+     */
+    public static SseEvent of(String data) {
+        return builder().data(data).build();
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getEvent() {
+        return event;
+    }
+
+    public String getData() {
+        return data;
+    }
+
+    /**
+     * Reconnection delay sent to the client, or -1 if none.
+     */
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    /**
+     * The encoded event. Writers take their own reference with
+     * {@link RefCountedBuffer#retainedDuplicate()}; this one belongs to the
+     * event and is never released, so the memory is reclaimed with it.
+     */
+    public RefCountedBuffer encoded() {
+        RefCountedBuffer result = encoded;
+        if (result == null) {
+            synchronized (this) {
+                result = encoded;
+                if (result == null) {
+                    result = RefCountedBuffer.copyOf(encode().getBytes(StandardCharsets.UTF_8));
+                    encoded = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private String encode() {
+        StringBuilder out = new StringBuilder(64 + (data != null ? data.length() : 0));
+        if (event != null) {
+            out.append("event: ").append(event).append('\n');
+        }
+        if (id != null) {
+            out.append("id: ").append(id).append('\n');
+        }
+        if (retryMillis >= 0) {
+            out.append("retry: ").append(retryMillis).append('\n');
+        }
+        if (data != null) {
+            for (String line : data.split("\r\n|\r|\n", -1)) {
+                out.append("data: ").append(line).append('\n');
+            }
+        }
+        return out.append('\n').toString();
+    }
+
+    @Override
+    public String toString() {
+        return "SseEvent[id=" + id + ", event=" + event + ", data=" + data + "]";
+    }
+
+    public static final class Builder {
+        private String id;
+        private String event;
+        private String data;
+        private long retryMillis = -1;
+
+        private Builder() {
+        }
+
+        /**
+         * Id the client echoes in {@code Last-Event-ID} when it reconnects.
+         */
+        public Builder id(String id) {
+            this.id = singleLine(id, "id");
+            if (id != null && id.indexOf('\0') >= 0) {
+                throw new IllegalArgumentException("id must not contain NUL");
+            }
+            return this;
+        }
+
+        /**
+         * Event type; clients dispatch unnamed events as {@code message}.
+         */
+        public Builder event(String event) {
+            this.event = singleLine(event, "event");
+            return this;
+        }
+
+        public Builder data(String data) {
+            this.data = data;
+            return this;
+        }
+
+        public Builder retry(long retryMillis) {
+            if (retryMillis < 0) {
+                throw new IllegalArgumentException("retry must be >= 0, got: " + retryMillis);
+            }
+            this.retryMillis = retryMillis;
+            return this;
+        }
+
+        public SseEvent build() {
+            return new SseEvent(this);
+        }
+
+        private static String singleLine(String value, String field) {
+            if (value != null && (value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0)) {
+                throw new IllegalArgumentException(field + " must be a single line");
+            }
+            return value;
+        }
+    }
+}
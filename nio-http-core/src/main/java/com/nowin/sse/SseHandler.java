@@ -0,0 +1,14 @@
+package com.nowin.sse;
+
+/**
+ * Called once an event stream's response headers have been sent.
+ * <p>
+ * The stream stays open after {@code onOpen} returns, until the emitter is
+ * closed or the client disconnects, so the handler typically hands the
+ * emitter to a {@link SseBroadcaster} or keeps it to send events later.
+ */
+@FunctionalInterface
+public interface SseHandler {
+
+    void onOpen(SseEmitter emitter) throws Exception;
+}
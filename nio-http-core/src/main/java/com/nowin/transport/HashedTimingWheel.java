@@ -0,0 +1,130 @@
+package com.nowin.transport;
+
+import java.util.List;
+
+/**
+ * Hashed timing wheel driven by the event loop thread.
+ * <p>
+ * Timeouts hash into one of a power-of-two number of buckets by the tick
+ * their deadline falls in; adding and cancelling are O(1) list operations,
+ * and each pass only visits the buckets whose ticks have elapsed. Entries
+ * more than one revolution away simply stay in their bucket until a visit
+ * finds their absolute deadline has passed, so a loop that falls behind by
+ * more than a revolution catches up correctly.
+ * <p>
+ * Not thread-safe; confined to the owning event loop.
+ */
+final class HashedTimingWheel {
+
+    private final long tickNanos;
+    private final WheelTimeout[] buckets;
+    private final int mask;
+    private final long originNanos;
+    // next tick whose bucket has not been expired yet
+    private long currentTick;
+    private int size;
+
+    HashedTimingWheel(long tickNanos, int ticksPerWheel, long nowNanos) {
+        if (tickNanos <= 0) {
+            throw new IllegalArgumentException("tickNanos must be > 0");
+        }
+        int capacity = Integer.highestOneBit(Math.max(2, ticksPerWheel - 1)) << 1;
+        this.tickNanos = tickNanos;
+        this.buckets = new WheelTimeout[capacity];
+        this.mask = capacity - 1;
+        this.originNanos = nowNanos;
+    }
+
+    void add(WheelTimeout timeout) {
+        long tick = Math.max(currentTick, ceilDiv(timeout.deadlineNanos - originNanos, tickNanos));
+        int index = (int) (tick & mask);
+        WheelTimeout head = buckets[index];
+        timeout.bucket = index;
+        timeout.prev = null;
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        buckets[index] = timeout;
+        size++;
+    }
+
+    void remove(WheelTimeout timeout) {
+        if (timeout.bucket < 0) {
+            return;
+        }
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.bucket = -1;
+        size--;
+    }
+
+    /**
+     * Unlinks every timeout whose deadline is at or before {@code nowNanos}
+     * into {@code expired}, in no particular order. The caller runs them
+     * afterwards, so tasks may freely add or cancel timeouts.
+     */
+    void expire(long nowNanos, List<WheelTimeout> expired) {
+        long targetTick = Math.floorDiv(nowNanos - originNanos, tickNanos);
+        if (targetTick < currentTick) {
+            return;
+        }
+        // Beyond one revolution every bucket has been visited once already
+        long firstTick = Math.max(currentTick, targetTick - mask);
+        for (long tick = firstTick; tick <= targetTick && size > 0; tick++) {
+            WheelTimeout timeout = buckets[(int) (tick & mask)];
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                if (timeout.deadlineNanos - nowNanos <= 0) {
+                    remove(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        currentTick = targetTick + 1;
+    }
+
+    /**
+     * Nanoseconds until the next tick boundary, i.e. the longest the loop may
+     * block without delaying a due timeout by more than one tick.
+     */
+    long nanosUntilNextTick(long nowNanos) {
+        return originNanos + currentTick * tickNanos - nowNanos;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Unlinks and returns every pending timeout, e.g. on shutdown.
+     */
+    void clear(List<WheelTimeout> pending) {
+        for (int i = 0; i < buckets.length; i++) {
+            WheelTimeout timeout = buckets[i];
+            while (timeout != null) {
+                WheelTimeout next = timeout.next;
+                timeout.prev = null;
+                timeout.next = null;
+                timeout.bucket = -1;
+                pending.add(timeout);
+                timeout = next;
+            }
+            buckets[i] = null;
+        }
+        size = 0;
+    }
+
+    private static long ceilDiv(long x, long y) {
+        return -Math.floorDiv(-x, y);
+    }
+}
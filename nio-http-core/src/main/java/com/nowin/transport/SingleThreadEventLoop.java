@@ -0,0 +1,643 @@
+package com.nowin.transport;
+
+import com.nowin.http.FileChannelBody;
+import com.nowin.pipeline.Channel;
+import com.nowin.util.BufferPool;
+import com.nowin.util.ConnectionExceptions;
+import com.nowin.util.MpscQueue;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.PriorityTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Event loop skeleton shared by the transports: one thread, per-priority
+ * task queues, a hashed timing wheel for timeouts, and the read and
+ * gathering-write paths for HTTP channels.
+ * <p>
+ * Subclasses supply the readiness mechanism (a {@link java.nio.channels.Selector},
+ * epoll, ...) through {@link #select}, {@link #selectNow},
+ * {@link #processSelected}, {@link #wakeupSelector} and
+ * {@link #closeSelector}, and call {@link #handleRead} and
+ * {@link #handleWrite} when a connection is ready.
+ */
+public abstract class SingleThreadEventLoop implements TransportEventLoop {
+
+    private static final Logger logger = LoggerFactory.getLogger(SingleThreadEventLoop.class);
+    private static final long MAX_BYTES_PER_WRITE_FLUSH = 2L * 1024 * 1024;
+    private static final long MAX_WRITE_FLUSH_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final int MAX_GATHER_BUFFERS = 64;
+    private static final int MAX_TASKS_PER_ITERATION = 100;
+    private static final long MAX_TASK_NANOS_PER_ITERATION = TimeUnit.MILLISECONDS.toNanos(50);
+    private static final long SELECT_TIMEOUT_MILLIS = 100;
+    private static final long TIMER_TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final int TIMER_TICKS_PER_WHEEL = 512;
+
+    // Wakeup states: producers only wake the selector while the loop is blocked in it
+    private static final int AWAKE = 0;
+    private static final int SELECTING = 1;
+    private static final int WOKEN = 2;
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final Thread thread;
+    private final int id;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    // One FIFO per PriorityTask.Priority, indexed by ordinal
+    private final MpscQueue<Runnable>[] taskQueues = newTaskQueues();
+    private final AtomicInteger wakeupState = new AtomicInteger(AWAKE);
+    // Timers are only touched on the event loop thread
+    private final HashedTimingWheel timerWheel = new HashedTimingWheel(TIMER_TICK_NANOS, TIMER_TICKS_PER_WHEEL, System.nanoTime());
+    private final List<WheelTimeout> expiredTimeouts = new ArrayList<>();
+    private final Map<Channel, WheelTimeout> idleTimeouts = new HashMap<>();
+    // Scratch array for gathering writes; only touched on the event loop thread.
+    private final ByteBuffer[] gatherBuffers = new ByteBuffer[MAX_GATHER_BUFFERS];
+    // Queue entries behind gatherBuffers, released once fully written
+    private final Object[] gatherParts = new Object[MAX_GATHER_BUFFERS];
+
+    // Metrics counters
+    private final AtomicLong selectCount = new AtomicLong(0);
+    private final AtomicLong selectEmptyCount = new AtomicLong(0);
+    private final AtomicLong bytesReadTotal = new AtomicLong(0);
+    private final AtomicLong bytesWrittenTotal = new AtomicLong(0);
+    private final AtomicLong wakeupCount = new AtomicLong(0);
+
+    protected SingleThreadEventLoop(String threadNamePrefix) {
+        this.id = nextId.getAndIncrement();
+        this.thread = new Thread(this::run);
+        this.thread.setName(threadNamePrefix + "-" + this.id);
+    }
+
+    /**
+     * Blocks until a channel is ready, a wakeup arrives or
+     * {@code timeoutMillis} elapses.
+     *
+     * @return the number of ready channels
+     */
+    protected abstract int select(long timeoutMillis) throws IOException;
+
+    /**
+     * Polls for ready channels without blocking.
+     *
+     * @return the number of ready channels
+     */
+    protected abstract int selectNow() throws IOException;
+
+    /**
+     * Dispatches the channels found ready by the last select.
+     */
+    protected abstract void processSelected();
+
+    /**
+     * Makes a blocked or the next {@link #select} return immediately.
+     */
+    protected abstract void wakeupSelector();
+
+    /**
+     * Releases the readiness mechanism; called on the loop thread as it exits.
+     */
+    protected abstract void closeSelector();
+
+    /**
+     * Whether the transport already has ready work of its own, in which
+     * case the loop polls instead of blocking.
+     */
+    protected boolean hasPendingIo() {
+        return false;
+    }
+
+    public void start() {
+        if (running.compareAndSet(false, true)) {
+            thread.start();
+        }
+    }
+
+    public void shutdown() {
+        if (running.compareAndSet(true, false)) {
+            wakeupSelector();
+            try {
+                if (thread.isAlive()) {
+                    thread.join(10000);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                logger.error("Interrupted while waiting for {} thread to terminate", thread.getName(), e);
+            }
+        }
+    }
+
+    public void run() {
+        try {
+            while (running.get() && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // handle tasks firstly
+                    processTasks();
+                    runExpiredTimeouts();
+
+                    // Announce the blocking select before re-checking the queues, so a
+                    // producer either sees SELECTING and wakes us or its task is seen here
+                    wakeupState.set(SELECTING);
+                    int selected;
+                    if (hasPendingTasks() || hasPendingIo()) {
+                        wakeupState.set(AWAKE);
+                        selected = selectNow();  // non-blocking
+                    } else {
+                        selected = select(selectTimeoutMillis());  // blocking
+                        wakeupState.set(AWAKE);
+                    }
+
+                    selectCount.incrementAndGet();
+                    if (selected == 0) {
+                        selectEmptyCount.incrementAndGet();
+                    }
+                    processSelected();
+                } catch (Exception e) {
+                    logger.error("Error in event loop", e);
+                }
+            }
+        } finally {
+            cancelPendingTimeouts();
+            closeSelector();
+        }
+    }
+
+    /**
+     * handle tasks in the task queues, highest priority first and FIFO within a priority
+     * @return true: there are tasks to process, otherwise false
+     */
+    private boolean processTasks() {
+        boolean hasTasks = false;
+        Runnable task;
+        int processedTasks = 0;
+        long deadline = System.nanoTime() + MAX_TASK_NANOS_PER_ITERATION;
+
+        while (processedTasks < MAX_TASKS_PER_ITERATION && (task = pollTask()) != null) {
+            hasTasks = true;
+            processedTasks++;
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("Error in task", e);
+            }
+            if (System.nanoTime() - deadline > 0) {
+                break;
+            }
+        }
+
+        return hasTasks;
+    }
+
+    private Runnable pollTask() {
+        for (MpscQueue<Runnable> queue : taskQueues) {
+            Runnable task = queue.poll();
+            if (task != null) {
+                return task;
+            }
+        }
+        return null;
+    }
+
+    private boolean hasPendingTasks() {
+        for (MpscQueue<Runnable> queue : taskQueues) {
+            if (!queue.isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the timeouts whose deadline has passed. Periodic ones are re-armed
+     * after running, unless they were cancelled or threw.
+     */
+    private void runExpiredTimeouts() {
+        if (timerWheel.size() == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        timerWheel.expire(now, expiredTimeouts);
+        for (int i = 0; i < expiredTimeouts.size(); i++) {
+            WheelTimeout timeout = expiredTimeouts.get(i);
+            expiredTimeouts.set(i, null);
+            if (timeout.isDone()) {
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (Throwable t) {
+                logger.error("Error in scheduled task", t);
+                timeout.complete(t);
+                continue;
+            }
+            if (!timeout.isPeriodic()) {
+                timeout.complete(null);
+            } else if (!timeout.isDone()) {
+                timeout.deadlineNanos = timeout.periodNanos > 0
+                        ? timeout.deadlineNanos + timeout.periodNanos
+                        : System.nanoTime() - timeout.periodNanos;
+                timerWheel.add(timeout);
+            }
+        }
+        expiredTimeouts.clear();
+    }
+
+    /**
+     * Blocks no longer than the next timer tick while timeouts are pending.
+     */
+    private long selectTimeoutMillis() {
+        if (timerWheel.size() == 0) {
+            return SELECT_TIMEOUT_MILLIS;
+        }
+        long nanos = timerWheel.nanosUntilNextTick(System.nanoTime());
+        long millis = TimeUnit.NANOSECONDS.toMillis(nanos + TimeUnit.MILLISECONDS.toNanos(1) - 1);
+        return Math.max(1, Math.min(SELECT_TIMEOUT_MILLIS, millis));
+    }
+
+    private void cancelPendingTimeouts() {
+        List<WheelTimeout> pending = new ArrayList<>();
+        timerWheel.clear(pending);
+        idleTimeouts.clear();
+        for (WheelTimeout timeout : pending) {
+            timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Reads once into a pooled buffer and hands it to the channel's pipeline.
+     * Read interest is dropped first; the pipeline turns it back on when it
+     * is ready for more.
+     */
+    protected void handleRead(Channel channel) throws IOException {
+        TransportSelectionKey key = channel.getSelectionKey();
+        key.interestOps(key.interestOps() & ~TransportSelectionKey.OP_READ); // remove read interest
+        if (channel.isInputShutdown()) {
+            return;
+        }
+        ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+        try {
+            int bytesRead = channel.transportChannel().read(buffer);
+            if (bytesRead == -1) {
+                BufferPool.DEFAULT.release(buffer);
+                // a half-close still gets the responses to what was read
+                channel.shutdownInput();
+                return;
+            }
+            if (bytesRead > 0) {
+                buffer.flip();
+                channel.setReadBuffer(buffer);
+                bytesReadTotal.addAndGet(bytesRead);
+                if (channel.getMetricsCollector() != null) {
+                    channel.getMetricsCollector().recordBytesRead(bytesRead);
+                }
+                channel.updateLastReadTime();
+                channel.process(key);
+            } else {
+                BufferPool.DEFAULT.release(buffer);
+            }
+        } catch (IOException e) {
+            BufferPool.DEFAULT.release(buffer);
+            throw e;
+        }
+    }
+
+    /**
+     * Flushes the channel's write queue within a byte and time budget, and
+     * keeps {@code OP_WRITE} armed while anything is left.
+     */
+    protected void handleWrite(Channel channel) throws IOException {
+        TransportSelectionKey key = channel.getSelectionKey();
+        Queue<Object> writeQueue = channel.getWriteQueue();
+        TransportSocketChannel clientChannel = channel.transportChannel();
+        long totalWritten = 0;
+        long flushDeadline = System.nanoTime() + MAX_WRITE_FLUSH_NANOS;
+        while (!writeQueue.isEmpty()) {
+            long remainingBudget = MAX_BYTES_PER_WRITE_FLUSH - totalWritten;
+            if (remainingBudget <= 0 || System.nanoTime() >= flushDeadline) {
+                key.interestOps(key.interestOps() | TransportSelectionKey.OP_WRITE);
+                break;
+            }
+            Object task = writeQueue.peek();
+            if (OutboundBuffers.isBuffer(task)) {
+                int count = gatherBuffers(writeQueue);
+                long offered = 0;
+                for (int i = 0; i < count; i++) {
+                    offered += gatherBuffers[i].remaining();
+                }
+                long written = clientChannel.write(gatherBuffers, 0, count);
+                totalWritten += written;
+                if (logger.isDebugEnabled()) {
+                    logger.debug("gathering write {} of {} bytes from {} buffers to {}",
+                            written, offered, count, clientChannel.getRemoteAddress());
+                }
+                releaseWrittenBuffers(channel, count, written);
+                if (written < offered) {
+                    key.interestOps(key.interestOps() | TransportSelectionKey.OP_WRITE);
+                    break; // socket buffer is full
+                }
+            } else if (task instanceof FileChannelBody body) {
+                long written = body.writeTo(clientChannel, remainingBudget);
+                totalWritten += written;
+                channel.onBytesFlushed(written);
+                if (logger.isDebugEnabled()) {
+                    logger.debug("transferTo wrote {} bytes to {}", written, clientChannel.getRemoteAddress());
+                }
+                if (body.isComplete()) {
+                    channel.removeFromWriteQueue();
+                    body.close();
+                } else {
+                    if (written == 0) {
+                        key.interestOps(key.interestOps() | TransportSelectionKey.OP_WRITE);
+                    }
+                    // If written > 0 but not complete, loop continues to try again
+                    // If written == 0, break to wait for next writable event
+                    if (written == 0) {
+                        break;
+                    }
+                }
+            } else {
+                logger.warn("Unknown task type in writeQueue: {}", task.getClass().getName());
+                channel.removeFromWriteQueue();
+            }
+        }
+        if (totalWritten > 0) {
+            bytesWrittenTotal.addAndGet(totalWritten);
+        }
+        if (writeQueue.isEmpty()) {
+            handleWriteCompletion(channel);
+        } else if (logger.isDebugEnabled()) {
+            logger.debug("write data to {} not completed", clientChannel.getRemoteAddress());
+        }
+    }
+
+    /**
+     * Collects the run of buffers (pooled or shared) at the head of the write
+     * queue, so consecutive responses queued on a connection leave in one writev.
+     */
+    private int gatherBuffers(Queue<Object> writeQueue) {
+        int count = 0;
+        for (Object task : writeQueue) {
+            if (!OutboundBuffers.isBuffer(task) || count == MAX_GATHER_BUFFERS) {
+                break;
+            }
+            gatherParts[count] = task;
+            gatherBuffers[count++] = OutboundBuffers.nioBuffer(task);
+        }
+        return count;
+    }
+
+    private void releaseWrittenBuffers(Channel channel, int count, long written) {
+        channel.onBytesFlushed(written);
+        for (int i = 0; i < count; i++) {
+            ByteBuffer buffer = gatherBuffers[i];
+            Object part = gatherParts[i];
+            gatherBuffers[i] = null;
+            gatherParts[i] = null;
+            if (buffer.hasRemaining()) {
+                // partially written; it and everything behind it stay queued
+                Arrays.fill(gatherBuffers, i + 1, count, null);
+                Arrays.fill(gatherParts, i + 1, count, null);
+                return;
+            }
+            channel.removeFromWriteQueue();
+            OutboundBuffers.release(part);
+        }
+    }
+
+    public void handleWriteCompletion(Channel channel) {
+        TransportSelectionKey key = channel.getSelectionKey();
+        if (key != null) {
+            key.interestOps(key.interestOps() & ~TransportSelectionKey.OP_WRITE);
+        }
+        channel.onWriteCompletion();
+    }
+
+    /**
+     * Reports an I/O failure on a connection: a client disconnect just closes
+     * it, anything else goes through the pipeline's exception path.
+     */
+    protected void handleChannelFailure(Object attachment, Exception e) {
+        if (e instanceof IOException && ConnectionExceptions.isClientDisconnect(e)) {
+            logger.debug("Client disconnected during event loop processing: {}", e.getMessage());
+            if (attachment instanceof Channel channel) {
+                channel.getPipeline().completePendingWriteFutures(e);
+                channel.close();
+            }
+            return;
+        }
+        logger.error("Error in event loop", e);
+        if (attachment instanceof Channel channel) {
+            channel.getPipeline().completePendingWriteFutures(e);
+            channel.getPipeline().fireExceptionCaught(e);
+        }
+    }
+
+    public boolean inEventLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    public void execute(Runnable task) {
+        execute(task, PriorityTask.Priority.NORMAL);
+    }
+
+    public void execute(Runnable task, PriorityTask.Priority priority) {
+        if (task == null) {
+            return;
+        }
+        if (inEventLoop()) {
+            task.run();
+        } else {
+            taskQueues[priority.ordinal()].offer(task);
+            wakeupIfSelecting();
+        }
+    }
+
+    /**
+     * Wakes the selector only if the loop is blocked in select and no other
+     * producer has already woken it; otherwise the loop will see the task on
+     * its next pass without a wakeup syscall.
+     */
+    protected void wakeupIfSelecting() {
+        if (wakeupState.get() == SELECTING && wakeupState.compareAndSet(SELECTING, WOKEN)) {
+            wakeupCount.incrementAndGet();
+            wakeupSelector();
+        }
+    }
+
+    public void executeHighPriority(Runnable task) {
+        execute(task, PriorityTask.Priority.HIGH);
+    }
+
+    public void executeLowPriority(Runnable task) {
+        execute(task, PriorityTask.Priority.LOW);
+    }
+
+    /**
+     * Schedules {@code command} on this loop's timing wheel. Like every other
+     * task it runs on the event loop thread, so it must not block; deadlines
+     * are honoured to within one 10ms tick.
+     */
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return scheduleTimeout(command, unit.toNanos(delay), 0);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        if (period <= 0) {
+            throw new IllegalArgumentException("period must be > 0");
+        }
+        return scheduleTimeout(command, unit.toNanos(initialDelay), unit.toNanos(period));
+    }
+
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        if (delay <= 0) {
+            throw new IllegalArgumentException("delay must be > 0");
+        }
+        return scheduleTimeout(command, unit.toNanos(initialDelay), -unit.toNanos(delay));
+    }
+
+    private WheelTimeout scheduleTimeout(Runnable command, long delayNanos, long periodNanos) {
+        if (command == null) {
+            throw new NullPointerException("command");
+        }
+        WheelTimeout timeout = new WheelTimeout(this, command, System.nanoTime() + Math.max(0, delayNanos), periodNanos);
+        if (inEventLoop()) {
+            timerWheel.add(timeout);
+        } else {
+            execute(() -> {
+                if (!timeout.isDone()) {
+                    timerWheel.add(timeout);
+                }
+            });
+        }
+        return timeout;
+    }
+
+    /**
+     * Unlinks a cancelled timeout; called by {@link WheelTimeout#cancel}.
+     */
+    void cancelTimeout(WheelTimeout timeout) {
+        if (inEventLoop()) {
+            timerWheel.remove(timeout);
+        } else {
+            execute(() -> timerWheel.remove(timeout));
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public long getSelectCount() {
+        return selectCount.get();
+    }
+
+    public long getSelectEmptyCount() {
+        return selectEmptyCount.get();
+    }
+
+    public long getBytesReadTotal() {
+        return bytesReadTotal.get();
+    }
+
+    public long getBytesWrittenTotal() {
+        return bytesWrittenTotal.get();
+    }
+
+    public int getQueuedTasks() {
+        int queued = 0;
+        for (MpscQueue<Runnable> queue : taskQueues) {
+            queued += queue.size();
+        }
+        return queued;
+    }
+
+    @Override
+    public long getWakeupCount() {
+        return wakeupCount.get();
+    }
+
+    /**
+     * Arms the idle timeout of a channel. Called on every read, so it is
+     * O(1): an armed timer whose deadline is not later than the new one is
+     * left alone, and re-arms itself for the remaining time when it fires
+     * on a channel that has seen reads since.
+     */
+    public void scheduleIdleCheck(Channel channel) {
+        if (channel.getIdleTimeoutMillis() <= 0) {
+            return;
+        }
+        if (!inEventLoop()) {
+            execute(() -> scheduleIdleCheck(channel));
+            return;
+        }
+        long remainingMillis = channel.getIdleTimeoutMillis() - (System.currentTimeMillis() - channel.getLastReadTime());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        WheelTimeout armed = idleTimeouts.get(channel);
+        if (armed != null) {
+            if (armed.deadlineNanos - deadline <= 0) {
+                return;
+            }
+            armed.cancel(false);
+        }
+        WheelTimeout timeout = new WheelTimeout(this, () -> checkIdle(channel), deadline, 0);
+        timerWheel.add(timeout);
+        idleTimeouts.put(channel, timeout);
+    }
+
+    /**
+     * Cancel idle timeout check for a channel.
+     */
+    public void cancelIdleCheck(Channel channel) {
+        if (!inEventLoop()) {
+            execute(() -> cancelIdleCheck(channel));
+            return;
+        }
+        WheelTimeout armed = idleTimeouts.remove(channel);
+        if (armed != null) {
+            armed.cancel(false);
+        }
+    }
+
+    private void checkIdle(Channel channel) {
+        idleTimeouts.remove(channel);
+        if (channel.isClosed() || channel.transportChannel() == null || !channel.transportChannel().isOpen()) {
+            return;
+        }
+        if (channel.isIdleTimeoutExpired()) {
+            logger.warn("Idle timeout expired for channel {}, closing", channel.transportChannel());
+            channel.close();
+        } else {
+            // Read since the timer was armed; wait out the remainder
+            scheduleIdleCheck(channel);
+        }
+    }
+
+    /**
+     * Number of timeouts currently parked on this loop's timing wheel.
+     */
+    public int getPendingTimeouts() {
+        return timerWheel.size();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static MpscQueue<Runnable>[] newTaskQueues() {
+        MpscQueue<Runnable>[] queues = new MpscQueue[PriorityTask.Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new MpscQueue<>();
+        }
+        return queues;
+    }
+}
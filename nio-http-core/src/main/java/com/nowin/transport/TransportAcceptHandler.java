@@ -0,0 +1,10 @@
+package com.nowin.transport;
+
+/**
+ * Attachment of a listening channel: called by the event loop when the
+ * channel has connections waiting to be accepted.
+ */
+public interface TransportAcceptHandler {
+
+    void acceptReady(TransportSelectionKey key);
+}
@@ -57,7 +57,23 @@ public interface TransportEventLoop {
 
     int getQueuedTasks();
 
+    /**
+     * Number of times a task submission had to wake a blocked selector.
+     */
+    default long getWakeupCount() {
+        return 0;
+    }
+
     int getChannelCount();
 
+    /**
+     * Whether code running on this loop may block, as on a transport that
+     * serves each connection from its own virtual thread. Request handlers
+     * then run in place rather than on the application executor.
+     */
+    default boolean allowsBlocking() {
+        return false;
+    }
+
     int getId();
 }
@@ -0,0 +1,89 @@
+package com.nowin.transport;
+
+import com.nowin.transport.nio.NioTransportFactory;
+import com.nowin.transport.virtual.VirtualThreadTransportFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+
+/**
+ * Resolves the {@code server.transport} setting to a {@link TransportFactory}.
+ * <p>
+ * {@code nio} and {@code virtual} (a blocking thread per connection) are
+ * built in. Other transports (native epoll, io_uring, ...) are discovered
+ * with {@link ServiceLoader} and matched by {@link TransportFactory#name()}.
+ * {@code auto} picks the first available discovered transport; it never
+ * picks {@code virtual}, which changes how handlers are run. A transport
+ * that is unknown, or not available on this platform, falls back to NIO
+ * with a warning, so a configuration written for one host still starts on
+ * another.
+ */
+public final class TransportFactories {
+
+    private static final Logger logger = LoggerFactory.getLogger(TransportFactories.class);
+
+    public static final String NIO = "nio";
+    public static final String VIRTUAL = "virtual";
+    public static final String AUTO = "auto";
+
+    private TransportFactories() {
+    }
+
+    public static TransportFactory resolve(String name) {
+        if (name == null || name.isBlank() || NIO.equalsIgnoreCase(name.trim())) {
+            return NioTransportFactory.INSTANCE;
+        }
+        return resolve(name, discover());
+    }
+
+    static TransportFactory resolve(String name, List<TransportFactory> candidates) {
+        String wanted = name == null || name.isBlank() ? NIO : name.trim().toLowerCase(Locale.ROOT);
+        if (NIO.equals(wanted)) {
+            return NioTransportFactory.INSTANCE;
+        }
+        if (VIRTUAL.equals(wanted)) {
+            return VirtualThreadTransportFactory.INSTANCE;
+        }
+        for (TransportFactory candidate : candidates) {
+            if (!AUTO.equals(wanted) && !wanted.equals(candidate.name())) {
+                continue;
+            }
+            if (candidate.isAvailable()) {
+                return candidate;
+            }
+            if (!AUTO.equals(wanted)) {
+                logger.warn("transport_unavailable name={} fallback={}", wanted, NIO);
+                return NioTransportFactory.INSTANCE;
+            }
+        }
+        if (!AUTO.equals(wanted)) {
+            logger.warn("transport_unknown name={} fallback={}", wanted, NIO);
+        }
+        return NioTransportFactory.INSTANCE;
+    }
+
+    /**
+     * Transports registered as {@code META-INF/services/com.nowin.transport.TransportFactory}.
+     */
+    public static List<TransportFactory> discover() {
+        List<TransportFactory> factories = new ArrayList<>();
+        ServiceLoader<TransportFactory> loader = ServiceLoader.load(TransportFactory.class);
+        var iterator = loader.iterator();
+        while (true) {
+            try {
+                if (!iterator.hasNext()) {
+                    break;
+                }
+                factories.add(iterator.next());
+            } catch (ServiceConfigurationError | LinkageError e) {
+                logger.warn("transport_provider_failed cause={}", e.getMessage());
+            }
+        }
+        return factories;
+    }
+}
@@ -8,6 +8,20 @@ import java.io.IOException;
  */
 public interface TransportFactory {
 
+    /**
+     * Name matched against the {@code server.transport} setting.
+     */
+    String name();
+
+    /**
+     * Whether this transport can run on the current platform, e.g. the kernel
+     * supports it and any native library loads. Checked before the factory is
+     * used, so unavailable transports can fall back.
+     */
+    default boolean isAvailable() {
+        return true;
+    }
+
     TransportEventLoopGroup createEventLoopGroup(int nThreads);
 
     TransportServerChannel createServerChannel() throws IOException;
@@ -2,17 +2,61 @@ package com.nowin.transport;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
 
 /**
  * Client-side transport channel representing an established connection.
  */
-public interface TransportSocketChannel extends TransportChannel, ReadableByteChannel, WritableByteChannel {
+public interface TransportSocketChannel extends TransportChannel, ReadableByteChannel, GatheringByteChannel {
 
     /**
      * Returns the selection key associated with this channel after registration.
      * May be null if the channel has not yet been registered with an event loop.
      */
     TransportSelectionKey selectionKey();
+
+    /**
+     * Writes a sequence of buffers. The default implementation writes them one
+     * at a time and stops at the first buffer that is not fully drained;
+     * transports with a native vectored write should override it.
+     */
+    @Override
+    default long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer src = srcs[i];
+            if (!src.hasRemaining()) {
+                continue;
+            }
+            total += write(src);
+            if (src.hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    default long write(ByteBuffer[] srcs) throws IOException {
+        return write(srcs, 0, srcs.length);
+    }
+
+    /**
+     * Writes up to {@code count} bytes of {@code file}, starting at
+     * {@code position}, without copying them through the Java heap where the
+     * transport can. {@code path} names the same file when known, for
+     * transports that open their own descriptor to sendfile from, and
+     * {@code fileKey} is the {@link java.nio.file.attribute.BasicFileAttributes#fileKey()
+     * key} of the file {@code file} was opened on, which such a descriptor
+     * must match; either may be null.
+     *
+     * @return the number of bytes written, possibly zero
+     */
+    default long transferFrom(FileChannel file, Path path, Object fileKey, long position, long count)
+            throws IOException {
+        return file.transferTo(position, count, this);
+    }
 }
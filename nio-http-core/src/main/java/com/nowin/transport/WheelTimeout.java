@@ -0,0 +1,141 @@
+package com.nowin.transport;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A task parked in a {@link HashedTimingWheel}. Doubles as the
+ * {@link ScheduledFuture} handed back by {@link SingleThreadEventLoop#schedule}.
+ * <p>
+ * The wheel links are confined to the event loop; only {@link #state} is
+ * touched by other threads, so cancellation from any thread is a single CAS
+ * and the loop unlinks the entry on its next pass.
+ */
+final class WheelTimeout implements ScheduledFuture<Object> {
+
+    static final int PENDING = 0;
+    static final int CANCELLED = 1;
+    static final int DONE = 2;
+
+    private static final AtomicIntegerFieldUpdater<WheelTimeout> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(WheelTimeout.class, "state");
+
+    final Runnable task;
+    // > 0: fixed rate, < 0: fixed delay, 0: one-shot (same convention as ScheduledThreadPoolExecutor)
+    final long periodNanos;
+    volatile long deadlineNanos;
+
+    // Wheel bucket links; event loop only
+    WheelTimeout prev;
+    WheelTimeout next;
+    int bucket = -1;
+
+    private final SingleThreadEventLoop eventLoop;
+    private volatile int state = PENDING;
+    private Throwable failure;
+
+    WheelTimeout(SingleThreadEventLoop eventLoop, Runnable task, long deadlineNanos, long periodNanos) {
+        this.eventLoop = eventLoop;
+        this.task = task;
+        this.deadlineNanos = deadlineNanos;
+        this.periodNanos = periodNanos;
+    }
+
+    boolean isPeriodic() {
+        return periodNanos != 0;
+    }
+
+    /**
+     * Marks a one-shot or failed timeout as finished and wakes waiting {@link #get} callers.
+     */
+    void complete(Throwable cause) {
+        synchronized (this) {
+            failure = cause;
+            if (STATE.compareAndSet(this, PENDING, DONE)) {
+                notifyAll();
+            }
+        }
+    }
+
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+            notifyAll();
+        }
+        if (eventLoop != null) {
+            eventLoop.cancelTimeout(this);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state != PENDING;
+    }
+
+    @Override
+    public Object get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (state == PENDING) {
+                wait();
+            }
+        }
+        return report();
+    }
+
+    @Override
+    public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            long remaining;
+            while (state == PENDING) {
+                remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return report();
+    }
+
+    private Object report() throws ExecutionException {
+        if (state == CANCELLED) {
+            throw new CancellationException();
+        }
+        Throwable cause;
+        synchronized (this) {
+            cause = failure;
+        }
+        if (cause != null) {
+            throw new ExecutionException(cause);
+        }
+        return null;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other == this) {
+            return 0;
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
@@ -6,6 +6,7 @@ import com.nowin.transport.TransportEventLoopGroup;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class NioEventLoopGroup implements TransportEventLoopGroup {
 
@@ -14,7 +15,8 @@ public class NioEventLoopGroup implements TransportEventLoopGroup {
 
     private final List<NioEventLoop> eventLoops;
     private final int nThreads;
-    private int next = 0;
+    // next() is called from the acceptor and from application threads
+    private final AtomicInteger next = new AtomicInteger();
 
     public NioEventLoopGroup() {
         this(DEFAULT_EVENT_LOOP_THREADS, null);
@@ -44,9 +46,7 @@ public class NioEventLoopGroup implements TransportEventLoopGroup {
 
     @Override
     public TransportEventLoop next() {
-        NioEventLoop loop = eventLoops.get(next);
-        next = (next + 1) % nThreads;
-        return loop;
+        return eventLoops.get(Math.floorMod(next.getAndIncrement(), nThreads));
     }
 
     @Override
@@ -8,11 +8,13 @@ import com.nowin.server.HttpServerObserver;
 import com.nowin.server.LoadMonitor;
 import com.nowin.server.MetricsCollector;
 import com.nowin.server.ServerConfig;
+import com.nowin.transport.TransportAcceptHandler;
 import com.nowin.transport.TransportEventLoop;
 import com.nowin.transport.TransportEventLoopGroup;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.transport.TransportServerChannel;
 import com.nowin.transport.TransportSocketChannel;
+import com.nowin.util.TokenBucket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -20,10 +22,16 @@ import java.io.IOException;
 import java.net.SocketOption;
 import java.net.StandardSocketOptions;
 import java.nio.channels.SelectionKey;
+import java.util.concurrent.TimeUnit;
 
-public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
+public class NioServerAcceptProcessor implements NioSelectionKeyProcessor, TransportAcceptHandler {
 
     private static final Logger logger = LoggerFactory.getLogger(NioServerAcceptProcessor.class);
+    // Resolved once rather than reflected on for every accepted socket
+    private static final SocketOption<Integer> TCP_KEEPIDLE = extendedOption("TCP_KEEPIDLE");
+    private static final SocketOption<Integer> TCP_KEEPINTERVAL = extendedOption("TCP_KEEPINTERVAL");
+    private static final SocketOption<Integer> TCP_KEEPCOUNT = extendedOption("TCP_KEEPCOUNT");
+    private static volatile boolean keepAliveTuningSupported = true;
 
     private final TransportEventLoopGroup eventLoopGroup;
     private final ConnectionLimiter connectionLimiter;
@@ -33,6 +41,10 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
     private final HttpServerObserver observer;
     private final ChannelInitializer channelInitializer;
     private final TransportServerChannel serverChannel;
+    // Set when this acceptor runs on a worker loop with its own SO_REUSEPORT socket
+    private final TransportEventLoop ownerLoop;
+    private TransportEventLoop acceptLoop;
+    private TokenBucket acceptRateLimiter;
 
     public NioServerAcceptProcessor(TransportEventLoopGroup eventLoopGroup,
                                  ConnectionLimiter connectionLimiter,
@@ -42,7 +54,40 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
                                  HttpServerObserver observer,
                                  ChannelInitializer channelInitializer,
                                  TransportServerChannel serverChannel) {
+        this(eventLoopGroup, null, connectionLimiter, config, loadMonitor, metricsCollector, observer,
+                channelInitializer, serverChannel);
+    }
+
+    /**
+     * Creates an acceptor that keeps every connection on {@code ownerLoop},
+     * the worker loop its listening socket is registered with. Used for
+     * {@code SO_REUSEPORT} listeners, where the kernel already spreads
+     * connections across loops and no hand-off is needed.
+     */
+    public NioServerAcceptProcessor(TransportEventLoop ownerLoop,
+                                 ConnectionLimiter connectionLimiter,
+                                 ServerConfig config,
+                                 LoadMonitor loadMonitor,
+                                 MetricsCollector metricsCollector,
+                                 HttpServerObserver observer,
+                                 ChannelInitializer channelInitializer,
+                                 TransportServerChannel serverChannel) {
+        this(null, ownerLoop, connectionLimiter, config, loadMonitor, metricsCollector, observer,
+                channelInitializer, serverChannel);
+    }
+
+    private NioServerAcceptProcessor(TransportEventLoopGroup eventLoopGroup,
+                                     TransportEventLoop ownerLoop,
+                                     ConnectionLimiter connectionLimiter,
+                                     ServerConfig config,
+                                     LoadMonitor loadMonitor,
+                                     MetricsCollector metricsCollector,
+                                     HttpServerObserver observer,
+                                     ChannelInitializer channelInitializer,
+                                     TransportServerChannel serverChannel) {
         this.eventLoopGroup = eventLoopGroup;
+        this.ownerLoop = ownerLoop;
+        this.acceptLoop = ownerLoop;
         this.connectionLimiter = connectionLimiter;
         this.config = config;
         this.loadMonitor = loadMonitor;
@@ -52,24 +97,72 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
         this.serverChannel = serverChannel;
     }
 
+    /**
+     * Sets the loop this acceptor's key is registered on, used to re-arm
+     * {@code OP_ACCEPT} after pausing for the accept-rate limit. Owner-loop
+     * acceptors already know it.
+     */
+    public void setAcceptLoop(TransportEventLoop acceptLoop) {
+        this.acceptLoop = acceptLoop;
+    }
+
+    /**
+     * Limits how fast connections are taken off the listen backlog; shared
+     * by every acceptor of a server. {@code null} disables the limit.
+     */
+    public void setAcceptRateLimiter(TokenBucket acceptRateLimiter) {
+        this.acceptRateLimiter = acceptRateLimiter;
+    }
+
     @Override
     public void process(SelectionKey key) {
+        acceptReady(new NioSelectionKey(key, serverChannel));
+    }
+
+    /**
+     * Drains up to {@link ServerConfig#getAcceptBatchSize()} pending
+     * connections per readiness event. When the accept-rate limit runs out,
+     * the rest stay in the kernel backlog and {@code OP_ACCEPT} is paused
+     * until the next permit is due, so a reconnect storm cannot monopolise
+     * the loop.
+     */
+    @Override
+    public void acceptReady(TransportSelectionKey key) {
+        int batchSize = config.getAcceptBatchSize();
+        for (int i = 0; i < batchSize; i++) {
+            if (acceptRateLimiter != null && !acceptRateLimiter.tryAcquire()) {
+                pauseAccepting(key);
+                return;
+            }
+            if (!acceptOne()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Accepts and sets up one connection.
+     *
+     * @return false once the backlog is empty or accepting failed
+     */
+    private boolean acceptOne() {
         boolean connectionCountIncremented = false;
         try {
             if (connectionLimiter != null && !connectionLimiter.incrementConnectionCount()) {
-                rejectConnection();
-                return;
+                return rejectConnection();
             }
             connectionCountIncremented = connectionLimiter != null;
 
             if (loadMonitor != null && loadMonitor.shouldRejectNewConnection()) {
-                rejectConnection();
-                loadMonitor.requestRejected();
                 if (connectionLimiter != null) {
                     connectionLimiter.decrementConnectionCount();
                     connectionCountIncremented = false;
                 }
-                return;
+                boolean rejected = rejectConnection();
+                if (rejected) {
+                    loadMonitor.requestRejected();
+                }
+                return rejected;
             }
 
             TransportSocketChannel clientChannel = serverChannel.accept();
@@ -78,12 +171,13 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
                     connectionLimiter.decrementConnectionCount();
                     connectionCountIncremented = false;
                 }
-                return;
+                releaseAcceptPermit();
+                return false;
             }
             clientChannel.configureBlocking(false);
             configureSocketChannel(clientChannel);
 
-            TransportEventLoop eventLoop = eventLoopGroup.next();
+            TransportEventLoop eventLoop = ownerLoop != null ? ownerLoop : eventLoopGroup.next();
             ChannelPipeline pipeline = new ChannelPipeline();
             Channel channel = new Channel(clientChannel, pipeline, eventLoop);
             channel.setConnectionLimiter(connectionLimiter);
@@ -92,7 +186,10 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
             channel.setObserver(observer);
             channel.setWriteQueueCapacity(config.getWriteQueueCapacity());
             channel.setWriteBufferWaterMarks(config.getWriteBufferLowWaterMark(), config.getWriteBufferHighWaterMark());
+            channel.setMaxPipelinedRequests(config.getMaxPipelinedRequests());
             channel.setIdleTimeout(config.getSocketTimeout());
+            channel.setWriteTimeout(config.getWriteTimeout());
+            channel.setRequestTimeout(config.getRequestTimeout());
 
             channelInitializer.initChannel(pipeline, channel);
 
@@ -106,24 +203,59 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
                 loadMonitor.connectionAccepted();
             }
             logger.debug("Accepted new connection from {}", clientChannel.getRemoteAddress());
+            return true;
         } catch (IOException e) {
             if (connectionLimiter != null && connectionCountIncremented) {
                 connectionLimiter.decrementConnectionCount();
             }
             logger.error("Error accepting new connection", e);
+            return false;
         }
     }
 
-    private void rejectConnection() throws IOException {
+    /**
+     * Returns the permit taken for an accept that found the backlog empty, so
+     * the last pass of every batch does not halve the configured rate.
+     */
+    private void releaseAcceptPermit() {
+        if (acceptRateLimiter != null) {
+            acceptRateLimiter.release();
+        }
+    }
+
+    private void pauseAccepting(TransportSelectionKey key) {
+        if (acceptLoop == null) {
+            // Nothing can re-arm the key; leave it ready and retry on the next select
+            return;
+        }
+        long delay = Math.max(TimeUnit.MILLISECONDS.toNanos(1), acceptRateLimiter.nanosUntilAvailable());
+        key.interestOps(0);
+        logger.debug("accept_rate_limited resume_in_ms={}", TimeUnit.NANOSECONDS.toMillis(delay));
+        acceptLoop.schedule(() -> {
+            if (key.isValid()) {
+                key.interestOps(TransportSelectionKey.OP_ACCEPT);
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes one connection off the backlog and closes it.
+     *
+     * @return false if the backlog was already empty
+     */
+    private boolean rejectConnection() throws IOException {
         TransportSocketChannel clientChannel = serverChannel.accept();
+        if (clientChannel == null) {
+            releaseAcceptPermit();
+            return false;
+        }
         logger.warn("Connection rejected");
         try {
-            if (clientChannel != null) {
-                clientChannel.close();
-            }
+            clientChannel.close();
         } catch (IOException e) {
             logger.error("Error closing rejected connection", e);
         }
+        return true;
     }
 
     private void configureSocketChannel(TransportSocketChannel channel) throws IOException {
@@ -149,28 +281,42 @@ public class NioServerAcceptProcessor implements NioSelectionKeyProcessor {
     }
 
     private void applyTcpKeepAliveOptions(TransportSocketChannel channel) {
+        if (!config.isTcpKeepAlive() || !keepAliveTuningSupported) {
+            return;
+        }
         try {
-            Class<?> extendedOptionsClass = Class.forName("jdk.net.ExtendedSocketOptions");
-            if (config.isTcpKeepAlive()) {
-                if (config.getTcpKeepIdle() > 0) {
-                    Object option = extendedOptionsClass.getField("TCP_KEEPIDLE").get(null);
-                    channel.setOption((SocketOption<Integer>) option, config.getTcpKeepIdle());
-                }
-                if (config.getTcpKeepInterval() > 0) {
-                    Object option = extendedOptionsClass.getField("TCP_KEEPINTERVAL").get(null);
-                    channel.setOption((SocketOption<Integer>) option, config.getTcpKeepInterval());
-                }
-                if (config.getTcpKeepCount() > 0) {
-                    Object option = extendedOptionsClass.getField("TCP_KEEPCOUNT").get(null);
-                    channel.setOption((SocketOption<Integer>) option, config.getTcpKeepCount());
-                }
+            if (config.getTcpKeepIdle() > 0 && TCP_KEEPIDLE != null) {
+                channel.setOption(TCP_KEEPIDLE, config.getTcpKeepIdle());
+            }
+            if (config.getTcpKeepInterval() > 0 && TCP_KEEPINTERVAL != null) {
+                channel.setOption(TCP_KEEPINTERVAL, config.getTcpKeepInterval());
+            }
+            if (config.getTcpKeepCount() > 0 && TCP_KEEPCOUNT != null) {
+                channel.setOption(TCP_KEEPCOUNT, config.getTcpKeepCount());
             }
-        } catch (ClassNotFoundException e) {
-            logger.debug("ExtendedSocketOptions not available on this JDK, skipping TCP keep-alive parameters");
         } catch (UnsupportedOperationException e) {
+            // Same answer for every socket; stop trying
+            keepAliveTuningSupported = false;
             logger.debug("TCP keep-alive parameters not supported on this platform: {}", e.getMessage());
         } catch (Exception e) {
             logger.warn("Failed to apply TCP keep-alive options", e);
         }
     }
+
+    /**
+     * Resolves a {@code jdk.net.ExtendedSocketOptions} constant once, or
+     * returns null when the JDK does not provide it.
+     */
+    @SuppressWarnings("unchecked")
+    private static SocketOption<Integer> extendedOption(String name) {
+        try {
+            Class<?> extendedOptionsClass = Class.forName("jdk.net.ExtendedSocketOptions");
+            return (SocketOption<Integer>) extendedOptionsClass.getField(name).get(null);
+        } catch (ClassNotFoundException e) {
+            logger.debug("ExtendedSocketOptions not available on this JDK, skipping {}", name);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.debug("Extended socket option {} not available: {}", name, e.toString());
+        }
+        return null;
+    }
 }
@@ -7,7 +7,9 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketOption;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
 
 public class NioSocketChannel implements TransportSocketChannel {
 
@@ -41,6 +43,21 @@ public class NioSocketChannel implements TransportSocketChannel {
         return channel.write(src);
     }
 
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        return channel.write(srcs, offset, length);
+    }
+
+    /**
+     * Hands the JDK socket to {@link FileChannel#transferTo} so it can use
+     * sendfile; passing this wrapper would fall back to copying.
+     */
+    @Override
+    public long transferFrom(FileChannel file, Path path, Object fileKey, long position, long count)
+            throws IOException {
+        return file.transferTo(position, count, channel);
+    }
+
     @Override
     public boolean isOpen() {
         return channel.isOpen();
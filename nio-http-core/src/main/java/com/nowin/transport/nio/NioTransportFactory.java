@@ -16,6 +16,11 @@ public class NioTransportFactory implements TransportFactory {
 
     private NioTransportFactory() {}
 
+    @Override
+    public String name() {
+        return "nio";
+    }
+
     @Override
     public TransportEventLoopGroup createEventLoopGroup(int nThreads) {
         return new NioEventLoopGroup(nThreads);
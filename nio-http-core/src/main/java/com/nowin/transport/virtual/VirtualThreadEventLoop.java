@@ -0,0 +1,551 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.http.FileChannelBody;
+import com.nowin.pipeline.Channel;
+import com.nowin.transport.TransportAcceptHandler;
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.util.BufferPool;
+import com.nowin.util.ConnectionExceptions;
+import com.nowin.util.OutboundBuffers;
+import com.nowin.util.PriorityTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Queue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves one channel from its own virtual thread with blocking reads and
+ * writes.
+ * <p>
+ * The loop is a lock rather than a thread. The pipeline runs while the
+ * lock is held, and {@link #execute} from any other thread runs the task in
+ * place once the lock is free, so handlers see the same one-at-a-time
+ * discipline as on a selector loop. The channel's thread reads without the
+ * lock, so a producer streaming a response from another thread is not held
+ * up by a read waiting for the next request. Request handlers run on the
+ * channel's thread (see {@link #allowsBlocking()}) and may block; while one
+ * does, that connection's timers wait for it, and no other connection is
+ * affected.
+ * <p>
+ * Timers are kept by the group's scheduler, which hands each one that fires
+ * to a new virtual thread to take the lock.
+ */
+public class VirtualThreadEventLoop implements TransportEventLoop {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadEventLoop.class);
+
+    private static final AtomicInteger nextId = new AtomicInteger();
+
+    private final VirtualThreadEventLoopGroup group;
+    private final int id = nextId.getAndIncrement();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition interestChanged = lock.newCondition();
+    private volatile VirtualThreadSelectionKey key;
+    private volatile Thread thread;
+    // Guarded by lock
+    private ScheduledFuture<?> idleTimer;
+    private long idleDeadlineNanos;
+
+    private final AtomicLong readCount = new AtomicLong();
+    private final AtomicLong bytesReadTotal = new AtomicLong();
+    private final AtomicLong bytesWrittenTotal = new AtomicLong();
+
+    VirtualThreadEventLoop(VirtualThreadEventLoopGroup group) {
+        this.group = group;
+    }
+
+    /**
+     * The channel's thread starts when it is registered.
+     */
+    @Override
+    public void start() {
+    }
+
+    /**
+     * Closes the registered channel, which ends its thread.
+     */
+    @Override
+    public void shutdown() {
+        VirtualThreadSelectionKey registered = key;
+        if (registered == null) {
+            return;
+        }
+        try {
+            registered.channel().close();
+        } catch (IOException e) {
+            logger.debug("Error closing {}: {}", registered.channel(), e.toString());
+        }
+    }
+
+    /**
+     * Waits up to {@code deadlineNanos} for the channel's thread to end.
+     */
+    void awaitTermination(long deadlineNanos) throws InterruptedException {
+        Thread running = thread;
+        if (running == null) {
+            return;
+        }
+        long remaining = deadlineNanos - System.nanoTime();
+        if (remaining > 0) {
+            running.join(TimeUnit.NANOSECONDS.toMillis(remaining) + 1);
+        }
+    }
+
+    @Override
+    public boolean inEventLoop() {
+        return lock.isHeldByCurrentThread();
+    }
+
+    @Override
+    public boolean allowsBlocking() {
+        return true;
+    }
+
+    /**
+     * Runs {@code task} now if the caller holds the loop, and otherwise on
+     * the caller's thread once the loop is free.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (task == null) {
+            return;
+        }
+        if (inEventLoop()) {
+            task.run();
+            return;
+        }
+        lock();
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.error("Error in task", e);
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Same as {@link #execute(Runnable)}: nothing queues, so there is
+     * nothing to reorder.
+     */
+    @Override
+    public void execute(Runnable task, PriorityTask.Priority priority) {
+        execute(task);
+    }
+
+    @Override
+    public void executeHighPriority(Runnable task) {
+        execute(task);
+    }
+
+    @Override
+    public void executeLowPriority(Runnable task) {
+        execute(task);
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return group.scheduler().schedule(() -> fire(command), delay, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return group.scheduler().scheduleAtFixedRate(() -> fire(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return group.scheduler().scheduleWithFixedDelay(() -> fire(command), initialDelay, delay, unit);
+    }
+
+    /**
+     * Runs a timer that fired, off the scheduler thread, which must never
+     * wait for a busy connection.
+     */
+    private void fire(Runnable command) {
+        Thread.startVirtualThread(() -> execute(command));
+    }
+
+    @Override
+    public void register(TransportChannel channel, int ops, Object attachment) {
+        if (key != null) {
+            throw new IllegalStateException("a virtual-thread loop serves a single channel");
+        }
+        VirtualThreadSelectionKey registered = new VirtualThreadSelectionKey(this, channel, ops, attachment);
+        Runnable body;
+        if (channel instanceof VirtualThreadSocketChannel socket) {
+            socket.setSelectionKey(registered);
+            body = () -> serve(socket, registered);
+        } else if (channel instanceof VirtualThreadServerChannel server) {
+            server.setSelectionKey(registered);
+            body = () -> acceptConnections(server, registered);
+        } else {
+            throw new IllegalArgumentException("not a virtual-thread channel: " + channel);
+        }
+        key = registered;
+        thread = group.startThread(this, body);
+    }
+
+    /**
+     * The channel's thread: waits for read interest, reads, and runs the
+     * pipeline on what was read, until the channel closes.
+     */
+    private void serve(VirtualThreadSocketChannel socket, VirtualThreadSelectionKey registered) {
+        Channel channel = (Channel) registered.attachment();
+        try {
+            while (awaitReadInterest(registered)) {
+                ByteBuffer buffer = BufferPool.DEFAULT.acquire();
+                int bytesRead;
+                try {
+                    bytesRead = socket.read(buffer);
+                } catch (IOException | RuntimeException e) {
+                    BufferPool.DEFAULT.release(buffer);
+                    throw e;
+                }
+                lock();
+                try {
+                    deliver(channel, registered, buffer, bytesRead);
+                } finally {
+                    unlock();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            lock();
+            try {
+                handleChannelFailure(channel, e);
+            } finally {
+                unlock();
+            }
+        } finally {
+            if (!channel.isClosed()) {
+                execute(channel::close);
+            }
+            group.deregister(this);
+        }
+    }
+
+    /**
+     * Blocks until the pipeline wants to read. Read interest is dropped
+     * before returning, as on a selector loop; the pipeline turns it back
+     * on when it is ready for more.
+     *
+     * @return false once the key is cancelled
+     */
+    private boolean awaitReadInterest(VirtualThreadSelectionKey registered) {
+        lock();
+        try {
+            while (registered.isValid()) {
+                int ops = registered.interestOps();
+                if ((ops & TransportSelectionKey.OP_READ) != 0) {
+                    registered.interestOps(ops & ~TransportSelectionKey.OP_READ);
+                    return true;
+                }
+                interestChanged.await();
+            }
+            return false;
+        } catch (InterruptedException e) {
+            return false;
+        } finally {
+            unlock();
+        }
+    }
+
+    private void deliver(Channel channel, VirtualThreadSelectionKey registered, ByteBuffer buffer, int bytesRead) {
+        readCount.incrementAndGet();
+        if (channel.isClosed()) {
+            BufferPool.DEFAULT.release(buffer);
+            return;
+        }
+        if (bytesRead < 0) {
+            BufferPool.DEFAULT.release(buffer);
+            // a half-close still gets the responses to what was read
+            channel.shutdownInput();
+            return;
+        }
+        buffer.flip();
+        channel.setReadBuffer(buffer);
+        bytesReadTotal.addAndGet(bytesRead);
+        if (channel.getMetricsCollector() != null) {
+            channel.getMetricsCollector().recordBytesRead(bytesRead);
+        }
+        channel.updateLastReadTime();
+        registered.readyOps = TransportSelectionKey.OP_READ;
+        try {
+            channel.process(registered);
+        } finally {
+            registered.readyOps = 0;
+        }
+    }
+
+    /**
+     * The listener's thread: waits for a connection while accept interest
+     * is set, then lets the accept handler collect it.
+     */
+    private void acceptConnections(VirtualThreadServerChannel server, VirtualThreadSelectionKey registered) {
+        TransportAcceptHandler handler = (TransportAcceptHandler) registered.attachment();
+        try {
+            while (awaitInterest(registered, TransportSelectionKey.OP_ACCEPT)) {
+                try {
+                    server.awaitConnection();
+                } catch (IOException e) {
+                    if (!server.isOpen()) {
+                        return;
+                    }
+                    // e.g. out of descriptors: back off instead of failing in a loop
+                    logger.warn("accept failed on {}: {}", server, e.toString());
+                    Thread.sleep(100);
+                    continue;
+                }
+                lock();
+                try {
+                    registered.readyOps = TransportSelectionKey.OP_ACCEPT;
+                    handler.acceptReady(registered);
+                } catch (RuntimeException e) {
+                    logger.error("Error accepting new connection", e);
+                } finally {
+                    registered.readyOps = 0;
+                    unlock();
+                }
+            }
+        } catch (InterruptedException e) {
+            logger.debug("Accept thread of {} interrupted", server);
+        } finally {
+            try {
+                server.discardPending();
+            } catch (IOException e) {
+                logger.debug("Error closing an uncollected connection: {}", e.toString());
+            }
+            group.deregister(this);
+        }
+    }
+
+    /**
+     * Blocks until {@code op} is in the key's interest set.
+     *
+     * @return false once the key is cancelled
+     */
+    private boolean awaitInterest(VirtualThreadSelectionKey registered, int op) throws InterruptedException {
+        lock();
+        try {
+            while (registered.isValid()) {
+                if ((registered.interestOps() & op) != 0) {
+                    return true;
+                }
+                interestChanged.await();
+            }
+            return false;
+        } finally {
+            unlock();
+        }
+    }
+
+    /**
+     * Wakes the channel's thread if it waits for interest; called by the key.
+     */
+    void interestChanged() {
+        lock.lock();
+        try {
+            interestChanged.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void lock() {
+        lock.lock();
+    }
+
+    /**
+     * Leaves the loop, first flushing output the pipeline queued while
+     * {@code OP_WRITE} is wanted: writes block, so the queue is drained
+     * before anyone else gets the loop.
+     */
+    private void unlock() {
+        try {
+            if (lock.getHoldCount() == 1) {
+                flushIfWanted();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushIfWanted() {
+        VirtualThreadSelectionKey registered = key;
+        if (registered == null || !registered.isValid()
+                || (registered.interestOps() & TransportSelectionKey.OP_WRITE) == 0
+                || !(registered.attachment() instanceof Channel channel)) {
+            return;
+        }
+        registered.readyOps = TransportSelectionKey.OP_WRITE;
+        try {
+            flush(channel, registered);
+        } catch (IOException | RuntimeException e) {
+            handleChannelFailure(channel, e);
+        } finally {
+            registered.readyOps = 0;
+        }
+    }
+
+    /**
+     * Writes out the channel's queue, blocking until it is empty.
+     */
+    private void flush(Channel channel, VirtualThreadSelectionKey registered) throws IOException {
+        Queue<Object> writeQueue = channel.getWriteQueue();
+        TransportSocketChannel socket = channel.transportChannel();
+        Object task;
+        while ((task = writeQueue.peek()) != null) {
+            if (task instanceof FileChannelBody body) {
+                while (!body.isComplete()) {
+                    long written = body.writeTo(socket);
+                    bytesWrittenTotal.addAndGet(written);
+                    channel.onBytesFlushed(written);
+                }
+                channel.removeFromWriteQueue();
+                body.close();
+            } else if (OutboundBuffers.isBuffer(task)) {
+                long written = socket.write(OutboundBuffers.nioBuffer(task));
+                bytesWrittenTotal.addAndGet(written);
+                channel.onBytesFlushed(written);
+                channel.removeFromWriteQueue();
+                OutboundBuffers.release(task);
+            } else {
+                logger.warn("Unknown task type in writeQueue: {}", task.getClass().getName());
+                channel.removeFromWriteQueue();
+            }
+        }
+        registered.interestOps(registered.interestOps() & ~TransportSelectionKey.OP_WRITE);
+        channel.onWriteCompletion();
+    }
+
+    /**
+     * Reports an I/O failure on a connection: a disconnect, or the socket
+     * being closed under a blocked read, just closes it; anything else goes
+     * through the pipeline's exception path first.
+     */
+    private void handleChannelFailure(Channel channel, Exception e) {
+        if (channel.isClosed()) {
+            return;
+        }
+        channel.getPipeline().completePendingWriteFutures(e);
+        if (e instanceof ClosedChannelException || ConnectionExceptions.isClientDisconnect(e)) {
+            logger.debug("Client disconnected: {}", e.toString());
+        } else {
+            logger.error("Error serving {}", channel.transportChannel(), e);
+            channel.getPipeline().fireExceptionCaught(e);
+        }
+        channel.close();
+    }
+
+    @Override
+    public void wakeup() {
+    }
+
+    /**
+     * Arms the idle timeout of the channel. Called on every read, so an
+     * armed timer whose deadline is not later than the new one is left
+     * alone, and re-arms itself for the remaining time when it fires on a
+     * channel that has seen reads since.
+     */
+    @Override
+    public void scheduleIdleCheck(Channel channel) {
+        if (channel.getIdleTimeoutMillis() <= 0) {
+            return;
+        }
+        if (!inEventLoop()) {
+            execute(() -> scheduleIdleCheck(channel));
+            return;
+        }
+        long remainingMillis = channel.getIdleTimeoutMillis() - (System.currentTimeMillis() - channel.getLastReadTime());
+        long delayNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, remainingMillis));
+        long deadline = System.nanoTime() + delayNanos;
+        if (idleTimer != null) {
+            if (idleDeadlineNanos - deadline <= 0) {
+                return;
+            }
+            idleTimer.cancel(false);
+        }
+        idleDeadlineNanos = deadline;
+        idleTimer = schedule(() -> checkIdle(channel), delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void cancelIdleCheck(Channel channel) {
+        if (!inEventLoop()) {
+            execute(() -> cancelIdleCheck(channel));
+            return;
+        }
+        if (idleTimer != null) {
+            idleTimer.cancel(false);
+            idleTimer = null;
+        }
+    }
+
+    private void checkIdle(Channel channel) {
+        idleTimer = null;
+        if (channel.isClosed() || channel.transportChannel() == null || !channel.transportChannel().isOpen()) {
+            return;
+        }
+        if (channel.isIdleTimeoutExpired()) {
+            logger.warn("Idle timeout expired for channel {}, closing", channel.transportChannel());
+            channel.close();
+        } else {
+            // Read since the timer was armed; wait out the remainder
+            scheduleIdleCheck(channel);
+        }
+    }
+
+    /**
+     * Number of blocking reads performed, the counterpart of a select.
+     */
+    @Override
+    public long getSelectCount() {
+        return readCount.get();
+    }
+
+    @Override
+    public long getSelectEmptyCount() {
+        return 0;
+    }
+
+    @Override
+    public long getBytesReadTotal() {
+        return bytesReadTotal.get();
+    }
+
+    @Override
+    public long getBytesWrittenTotal() {
+        return bytesWrittenTotal.get();
+    }
+
+    /**
+     * Threads waiting for the loop to run a task.
+     */
+    @Override
+    public int getQueuedTasks() {
+        return lock.getQueueLength();
+    }
+
+    @Override
+    public int getChannelCount() {
+        VirtualThreadSelectionKey registered = key;
+        return registered != null && registered.isValid() ? 1 : 0;
+    }
+
+    @Override
+    public int getId() {
+        return id;
+    }
+}
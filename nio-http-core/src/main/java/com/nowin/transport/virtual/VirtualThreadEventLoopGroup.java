@@ -0,0 +1,117 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.transport.TransportEventLoopGroup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hands out one {@link VirtualThreadEventLoop} per channel and shares a
+ * scheduler thread between them.
+ * <p>
+ * There is no fixed set of loops, so {@link #getEventLoops()} is empty:
+ * per-loop metrics would be per-connection here, and {@code SO_REUSEPORT}
+ * mode, which binds a listener per loop, falls back to a single acceptor.
+ */
+public class VirtualThreadEventLoopGroup implements TransportEventLoopGroup {
+
+    private static final Logger logger = LoggerFactory.getLogger(VirtualThreadEventLoopGroup.class);
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 10000;
+
+    private final ThreadFactory threadFactory = Thread.ofVirtual().name("VirtualThreadEventLoop-", 0).factory();
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Set<VirtualThreadEventLoop> activeLoops = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean shutdown = new AtomicBoolean();
+
+    public VirtualThreadEventLoopGroup() {
+        scheduler = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "VirtualThreadEventLoop-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        // Like a stopped selector loop, accept timers after shutdown and never run them
+        scheduler.setRejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy());
+    }
+
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Starts the thread of a loop whose channel was just registered.
+     */
+    Thread startThread(VirtualThreadEventLoop loop, Runnable body) {
+        activeLoops.add(loop);
+        Thread thread = threadFactory.newThread(body);
+        thread.start();
+        if (shutdown.get()) {
+            // Registered while shutting down: it is not in the snapshot being closed
+            loop.shutdown();
+        }
+        return thread;
+    }
+
+    void deregister(VirtualThreadEventLoop loop) {
+        activeLoops.remove(loop);
+    }
+
+    /**
+     * Nothing to start: each loop's thread starts with its channel.
+     */
+    @Override
+    public void start() {
+    }
+
+    /**
+     * Closes every channel still served by the group and waits for their
+     * threads to end.
+     */
+    @Override
+    public void shutdown() {
+        if (!shutdown.compareAndSet(false, true)) {
+            return;
+        }
+        List<VirtualThreadEventLoop> loops = List.copyOf(activeLoops);
+        for (VirtualThreadEventLoop loop : loops) {
+            loop.shutdown();
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_TIMEOUT_MILLIS);
+        try {
+            for (VirtualThreadEventLoop loop : loops) {
+                loop.awaitTermination(deadline);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.error("Interrupted while waiting for virtual-thread loops to terminate", e);
+        }
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public TransportEventLoop next() {
+        return new VirtualThreadEventLoop(this);
+    }
+
+    @Override
+    public List<TransportEventLoop> getEventLoops() {
+        return List.of();
+    }
+
+    /**
+     * Number of channels currently served, each by its own thread.
+     */
+    public int getActiveChannelCount() {
+        return activeLoops.size();
+    }
+}
@@ -0,0 +1,94 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportSelectionKey;
+
+/**
+ * Registration of a channel with its {@link VirtualThreadEventLoop}.
+ * <p>
+ * Interest ops keep their selector meaning: the loop's thread only reads
+ * while {@code OP_READ} is wanted, flushes queued output while
+ * {@code OP_WRITE} is, and hands connections to the accept handler while
+ * {@code OP_ACCEPT} is. Ready ops are set while the loop dispatches.
+ */
+public class VirtualThreadSelectionKey implements TransportSelectionKey {
+
+    private final VirtualThreadEventLoop eventLoop;
+    private final TransportChannel channel;
+    private volatile Object attachment;
+    private volatile int interestOps;
+    private volatile boolean valid = true;
+
+    // Set by the loop while it holds its lock
+    int readyOps;
+
+    VirtualThreadSelectionKey(VirtualThreadEventLoop eventLoop, TransportChannel channel, int interestOps, Object attachment) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.interestOps = interestOps;
+        this.attachment = attachment;
+    }
+
+    @Override
+    public TransportChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public void cancel() {
+        if (!valid) {
+            return;
+        }
+        valid = false;
+        eventLoop.interestChanged();
+    }
+
+    @Override
+    public int interestOps() {
+        return interestOps;
+    }
+
+    @Override
+    public void interestOps(int ops) {
+        if (interestOps == ops) {
+            return;
+        }
+        interestOps = ops;
+        eventLoop.interestChanged();
+    }
+
+    @Override
+    public boolean isReadable() {
+        return (readyOps & OP_READ) != 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return (readyOps & OP_WRITE) != 0;
+    }
+
+    @Override
+    public boolean isAcceptable() {
+        return (readyOps & OP_ACCEPT) != 0;
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadSelectionKey[" + channel + ", interestOps=" + interestOps + (valid ? "" : ", cancelled") + "]";
+    }
+}
@@ -0,0 +1,129 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Listening socket in blocking mode. Its loop's virtual thread waits in
+ * {@link #awaitConnection()} and then lets the accept handler collect the
+ * connection through {@link #accept()}, which never blocks, so the handler
+ * sees the same contract as on a selector.
+ */
+public class VirtualThreadServerChannel implements TransportServerChannel {
+
+    private final ServerSocketChannel channel;
+    private volatile TransportSelectionKey selectionKey;
+    // Accept thread only
+    private SocketChannel pending;
+
+    public VirtualThreadServerChannel(ServerSocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public ServerSocketChannel javaChannel() {
+        return channel;
+    }
+
+    void setSelectionKey(TransportSelectionKey key) {
+        this.selectionKey = key;
+    }
+
+    /**
+     * Blocks until a connection is waiting to be collected, unless one
+     * already is, e.g. because accepting was paused by a rate limit.
+     */
+    void awaitConnection() throws IOException {
+        if (pending == null) {
+            pending = channel.accept();
+        }
+    }
+
+    @Override
+    public TransportSocketChannel accept() {
+        SocketChannel accepted = pending;
+        pending = null;
+        return accepted != null ? new VirtualThreadSocketChannel(accepted) : null;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        channel.bind(address, backlog);
+    }
+
+    @Override
+    public void bind(InetSocketAddress address) throws IOException {
+        channel.bind(address);
+    }
+
+    @Override
+    public boolean isBound() {
+        return channel.socket().isBound();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes a connection accepted but never collected; called by the accept
+     * thread as it exits.
+     */
+    void discardPending() throws IOException {
+        SocketChannel accepted = pending;
+        pending = null;
+        if (accepted != null) {
+            accepted.close();
+        }
+    }
+
+    /**
+     * Closes the socket and cancels its key, which ends the accept thread
+     * even while accepting is paused.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            TransportSelectionKey key = selectionKey;
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public <T> void setOption(SocketOption<T> option, T value) throws IOException {
+        channel.setOption(option, value);
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> option) throws IOException {
+        return channel.getOption(option);
+    }
+
+    /**
+     * Ignored: see the class comment.
+     */
+    @Override
+    public void configureBlocking(boolean block) {
+    }
+}
@@ -0,0 +1,132 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportSocketChannel;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+
+/**
+ * A connection in blocking mode, read and written by the virtual thread of
+ * its {@link VirtualThreadEventLoop}: reads wait for data and writes return
+ * once every byte has been handed to the kernel.
+ */
+public class VirtualThreadSocketChannel implements TransportSocketChannel {
+
+    private final SocketChannel channel;
+    private volatile TransportSelectionKey selectionKey;
+
+    public VirtualThreadSocketChannel(SocketChannel channel) {
+        this.channel = channel;
+    }
+
+    public SocketChannel javaChannel() {
+        return channel;
+    }
+
+    void setSelectionKey(TransportSelectionKey key) {
+        this.selectionKey = key;
+    }
+
+    @Override
+    public TransportSelectionKey selectionKey() {
+        return selectionKey;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        return channel.read(dst);
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        int written = 0;
+        while (src.hasRemaining()) {
+            written += channel.write(src);
+        }
+        return written;
+    }
+
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long written = 0;
+        int first = offset;
+        int end = offset + length;
+        while (first < end) {
+            written += channel.write(srcs, first, end - first);
+            while (first < end && !srcs[first].hasRemaining()) {
+                first++;
+            }
+        }
+        return written;
+    }
+
+    /**
+     * Hands the JDK socket to {@link FileChannel#transferTo} so it can use
+     * sendfile; passing this wrapper would fall back to copying.
+     */
+    @Override
+    public long transferFrom(FileChannel file, Path path, Object fileKey, long position, long count)
+            throws IOException {
+        return file.transferTo(position, count, channel);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    /**
+     * Closes the socket and, as closing a selectable channel would, cancels
+     * its key, which lets the loop's thread finish.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            channel.close();
+        } finally {
+            TransportSelectionKey key = selectionKey;
+            if (key != null) {
+                key.cancel();
+            }
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() throws IOException {
+        return (InetSocketAddress) channel.getRemoteAddress();
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    @Override
+    public <T> void setOption(SocketOption<T> option, T value) throws IOException {
+        channel.setOption(option, value);
+    }
+
+    @Override
+    public <T> T getOption(SocketOption<T> option) throws IOException {
+        return channel.getOption(option);
+    }
+
+    /**
+     * Ignored: the socket stays blocking, which costs a virtual thread
+     * nothing but its stack while it waits.
+     */
+    @Override
+    public void configureBlocking(boolean block) {
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadSocketChannel[" + channel + "]";
+    }
+}
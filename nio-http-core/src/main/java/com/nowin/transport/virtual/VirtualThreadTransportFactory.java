@@ -0,0 +1,47 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.transport.TransportEventLoopGroup;
+import com.nowin.transport.TransportFactory;
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+
+import java.io.IOException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Blocking transport that serves each connection from its own virtual
+ * thread. Request handlers run on that thread and may block, so there is
+ * no hand-off from an event loop to the application executor; the cost is
+ * a thread stack and a pending read per idle connection.
+ * <p>
+ * The thread count passed to {@link #createEventLoopGroup(int)} is ignored:
+ * the JDK schedules virtual threads over its own carrier pool.
+ */
+public class VirtualThreadTransportFactory implements TransportFactory {
+
+    public static final VirtualThreadTransportFactory INSTANCE = new VirtualThreadTransportFactory();
+
+    private VirtualThreadTransportFactory() {
+    }
+
+    @Override
+    public String name() {
+        return "virtual";
+    }
+
+    @Override
+    public TransportEventLoopGroup createEventLoopGroup(int nThreads) {
+        return new VirtualThreadEventLoopGroup();
+    }
+
+    @Override
+    public TransportServerChannel createServerChannel() throws IOException {
+        return new VirtualThreadServerChannel(ServerSocketChannel.open());
+    }
+
+    @Override
+    public TransportSocketChannel createSocketChannel() throws IOException {
+        return new VirtualThreadSocketChannel(SocketChannel.open());
+    }
+}
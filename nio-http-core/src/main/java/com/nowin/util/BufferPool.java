@@ -1,50 +1,92 @@
 package com.nowin.util;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import java.nio.ByteBuffer;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * Pool of direct buffers in fixed size classes.
+ * <p>
+ * Each platform thread (in practice the event-loop threads, which do nearly
+ * all acquiring and releasing) keeps a small cache per size class that is
+ * used without any synchronization. Releases that overflow it go to a shared
+ * lock-free stack per size class, from which other threads draw when their own
+ * cache is empty; virtual threads only use the shared stacks. Nothing is
+ * allocated up front; buffers are created on a miss and kept once released.
+ * <p>
+ * {@link #trim()} frees memory that stayed idle since the previous call:
+ * buffers that were never drawn from a shared stack are dropped, and each
+ * thread cache hands its idle buffers back to the shared stacks the next time
+ * its thread uses the pool.
+ * <p>
+ * With leak detection enabled ({@code -Dnowin.bufferPool.leakDetection=true}
+ * for {@link #DEFAULT}, or {@link #setLeakDetection(boolean)}), the acquiring
+ * stack of every outstanding buffer is recorded and reported by
+ * {@link #reportLeaks()}. This is expensive and meant for tests.
+ */
 public class BufferPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
     // pre-defined buffer sizes
     private static final int[] BUFFER_SIZES = {4096, 8192, 16384, 32768, 65536, 128000};
     private static final int DEFAULT_READ_BUFFER_SIZE = 8192;
     private static final int DEFAULT_WRITE_BUFFER_SIZE = 16384;
-    private static final int DEFAULT_INITIAL_CAPACITY = 100;
+    private static final int DEFAULT_MAX_SHARED_PER_SIZE = 100;
+    // Upper bound on the bytes one thread may hold per size class
+    private static final int THREAD_CACHE_BYTES_PER_SIZE = 512 * 1024;
+    private static final int MIN_THREAD_CACHE_BUFFERS = 2;
     public static final int MAX_BUFFER_SIZE = 128000;
 
-    private final Map<Integer, LinkedBlockingQueue<ByteBuffer>> readBufferPools = new HashMap<>();
-    private final Map<Integer, LinkedBlockingQueue<ByteBuffer>> writeBufferPools = new HashMap<>();
+    private final int[] bufferSizes;
+    private final SizeClass[] sizeClasses;
     private final int maxBufferSize;
+    private final ThreadLocal<ThreadCache> threadCaches = ThreadLocal.withInitial(ThreadCache::new);
+    private volatile int trimEpoch;
+
+    private final LongAdder threadCacheHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder allocations = new LongAdder();
+    private final LongAdder releases = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder pooledBytes = new LongAdder();
+
+    private volatile boolean leakDetection;
+    private final Map<ByteBuffer, Throwable> outstanding = Collections.synchronizedMap(new IdentityHashMap<>());
 
     /**
      * create a default buffer pool
      */
     public BufferPool() {
-        this(BUFFER_SIZES, DEFAULT_INITIAL_CAPACITY, MAX_BUFFER_SIZE);
+        this(BUFFER_SIZES, DEFAULT_MAX_SHARED_PER_SIZE, MAX_BUFFER_SIZE);
     }
 
     /**
      * Create a custom multi - level buffer pool
+     *
+     * @param bufferSizes       size classes in ascending order
+     * @param maxSharedPerSize  maximum number of idle buffers kept in each shared stack
+     * @param maxBufferSize     largest size handed out; bigger requests are capped to it
      */
-    public BufferPool(int[] bufferSizes, int initialCapacity, int maxBufferSize) {
+    public BufferPool(int[] bufferSizes, int maxSharedPerSize, int maxBufferSize) {
+        this.bufferSizes = bufferSizes.clone();
+        Arrays.sort(this.bufferSizes);
         this.maxBufferSize = maxBufferSize;
-        
-        // initial all read & write buffer pools
-        for (int size : bufferSizes) {
-            // init read buffer pool
-            LinkedBlockingQueue<ByteBuffer> readPool = new LinkedBlockingQueue<>(initialCapacity);
-            for (int i = 0; i < initialCapacity; i++) {
-                readPool.offer(ByteBuffer.allocateDirect(size));
-            }
-            readBufferPools.put(size, readPool);
-            
-            // init write buffer pool
-            LinkedBlockingQueue<ByteBuffer> writePool = new LinkedBlockingQueue<>(initialCapacity);
-            for (int i = 0; i < initialCapacity; i++) {
-                writePool.offer(ByteBuffer.allocateDirect(size));
-            }
-            writeBufferPools.put(size, writePool);
+        this.sizeClasses = new SizeClass[this.bufferSizes.length];
+        for (int i = 0; i < this.bufferSizes.length; i++) {
+            int size = this.bufferSizes[i];
+            int threadCacheCapacity = Math.max(MIN_THREAD_CACHE_BUFFERS, THREAD_CACHE_BYTES_PER_SIZE / size);
+            sizeClasses[i] = new SizeClass(size, maxSharedPerSize, threadCacheCapacity);
         }
     }
 
@@ -53,18 +95,7 @@ public class BufferPool {
     }
 
     public ByteBuffer acquireReadBuffer(int minSize) {
-        int appropriateSize = findAppropriateSize(minSize);
-        
-        LinkedBlockingQueue<ByteBuffer> pool = readBufferPools.get(appropriateSize);
-        if (pool != null) {
-            ByteBuffer buffer = pool.poll();
-            if (buffer != null) {
-                return buffer;
-            }
-        }
-        
-        // 如果池中空了，创建一个新的缓冲区
-        return ByteBuffer.allocateDirect(appropriateSize);
+        return acquire(minSize);
     }
 
     public ByteBuffer acquireWriteBuffer() {
@@ -72,91 +103,366 @@ public class BufferPool {
     }
 
     public ByteBuffer acquireWriteBuffer(int minSize) {
-        int appropriateSize = findAppropriateSize(minSize);
-        
-        LinkedBlockingQueue<ByteBuffer> pool = writeBufferPools.get(appropriateSize);
-        if (pool != null) {
-            ByteBuffer buffer = pool.poll();
-            if (buffer != null) {
-                return buffer;
-            }
-        }
-        
-        // create a new buffer if necessary
-        return ByteBuffer.allocateDirect(appropriateSize);
+        return acquire(minSize);
     }
 
     public void releaseReadBuffer(ByteBuffer buffer) {
-        releaseBuffer(buffer, readBufferPools);
+        release(buffer);
     }
 
     public void releaseWriteBuffer(ByteBuffer buffer) {
-        releaseBuffer(buffer, writeBufferPools);
+        release(buffer);
+    }
+
+    public ByteBuffer acquire() {
+        return acquireReadBuffer();
     }
 
     /**
-     * release the buffer back to the specified pool
+     * Returns a cleared direct buffer of the smallest size class that holds
+     * {@code minSize} bytes, or of the largest class if none does.
      */
-    private void releaseBuffer(ByteBuffer buffer, Map<Integer, LinkedBlockingQueue<ByteBuffer>> bufferPools) {
+    public ByteBuffer acquire(int minSize) {
+        int index = sizeClassIndex(minSize);
+        SizeClass sizeClass = sizeClasses[index];
+        ByteBuffer buffer = null;
+
+        ThreadCache cache = threadCache();
+        if (cache != null) {
+            buffer = cache.pop(index);
+            if (buffer != null) {
+                threadCacheHits.increment();
+            }
+        }
+        if (buffer == null) {
+            buffer = sizeClass.pop();
+            if (buffer != null) {
+                sharedHits.increment();
+            }
+        }
         if (buffer == null) {
+            allocations.increment();
+            buffer = ByteBuffer.allocateDirect(sizeClass.size);
+        } else {
+            pooledBytes.add(-sizeClass.size);
+        }
+        if (leakDetection) {
+            outstanding.put(buffer, new Throwable("buffer of " + sizeClass.size + " bytes acquired here"));
+        }
+        return buffer;
+    }
+
+    /**
+     * Returns a buffer to the pool. Heap, read-only and foreign-sized buffers
+     * travel the same write paths as pooled ones and are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        // only direct, writable buffers can have come from this pool; wrapped
+        // response bodies and read-only views travel the same write path
+        if (buffer == null || !buffer.isDirect() || buffer.isReadOnly()) {
             return;
         }
-        
-        int capacity = buffer.capacity();
-        LinkedBlockingQueue<ByteBuffer> pool = bufferPools.get(capacity);
-        if (pool != null) {
-            buffer.clear();
-            if (!pool.offer(buffer)) {
-                // Pool is full; for direct buffers, try explicit cleanup to relieve native memory pressure.
-                // In Java 21 direct buffers are cleaned by GC via Cleaner, but proactive cleanup helps.
-                if (buffer.isDirect()) {
-                    try {
-                        java.lang.reflect.Method cleanerMethod = buffer.getClass().getMethod("cleaner");
-                        cleanerMethod.setAccessible(true);
-                        Object cleaner = cleanerMethod.invoke(buffer);
-                        if (cleaner != null) {
-                            cleaner.getClass().getMethod("clean").invoke(cleaner);
-                        }
-                    } catch (Exception e) {
-                        // Ignore: fall back to GC Cleaner
-                    }
+        int index = exactSizeClassIndex(buffer.capacity());
+        if (index < 0) {
+            discarded.increment();
+            return;
+        }
+        if (leakDetection && outstanding.remove(buffer) == null) {
+            logger.warn("buffer_release_untracked capacity={}", buffer.capacity(),
+                    new Throwable("released here"));
+        }
+        releases.increment();
+        buffer.clear();
+
+        ThreadCache cache = threadCache();
+        if (cache != null && cache.push(index, buffer)) {
+            pooledBytes.add(buffer.capacity());
+            return;
+        }
+        if (sizeClasses[index].push(buffer)) {
+            pooledBytes.add(buffer.capacity());
+        } else {
+            // shared stack is full; let the GC cleaner free the native memory
+            discarded.increment();
+        }
+    }
+
+    /**
+     * Shares the remaining bytes of a buffer acquired from this pool, e.g. a
+     * rendered response written to several connections. The buffer returns
+     * to the pool when the last reference is released and must not be
+     * modified or released directly afterwards.
+     */
+    public RefCountedBuffer share(ByteBuffer pooled) {
+        return RefCountedBuffer.wrap(pooled, () -> release(pooled));
+    }
+
+    /**
+     * Frees pooled memory that has been idle since the previous call. Intended
+     * to be called periodically, e.g. every few tens of seconds.
+     */
+    public void trim() {
+        long freed = 0;
+        for (SizeClass sizeClass : sizeClasses) {
+            int idle = sizeClass.resetLowWaterMark();
+            for (int i = 0; i < idle; i++) {
+                ByteBuffer buffer = sizeClass.pop();
+                if (buffer == null) {
+                    break;
                 }
+                pooledBytes.add(-sizeClass.size);
+                freed += sizeClass.size;
             }
         }
-        // if the pool is not found, do nothing
+        trimEpoch++;
+        if (freed > 0) {
+            logger.debug("buffer_pool_trimmed freedBytes={}", freed);
+        }
     }
 
-    public ByteBuffer acquire() {
-        return acquireReadBuffer();
+    public void setLeakDetection(boolean enabled) {
+        this.leakDetection = enabled;
+        if (!enabled) {
+            outstanding.clear();
+        }
     }
 
-    public ByteBuffer acquire(int minSize) {
-        return acquireReadBuffer(minSize);
+    public boolean isLeakDetection() {
+        return leakDetection;
     }
 
-    public void release(ByteBuffer buffer) {
-        releaseReadBuffer(buffer);
+    /**
+     * Logs and returns the acquiring stacks of buffers that are still
+     * outstanding. Empty unless leak detection is enabled.
+     */
+    public List<Throwable> reportLeaks() {
+        List<Throwable> leaks;
+        synchronized (outstanding) {
+            leaks = new ArrayList<>(outstanding.values());
+        }
+        for (Throwable leak : leaks) {
+            logger.error("buffer_leak_detected", leak);
+        }
+        return leaks;
     }
 
     /**
-     * find the appropriate size
+     * Acquires served from the calling thread's own cache.
      */
-    private int findAppropriateSize(int minSize) {
-        // if minSize is greater than maxBufferSize, return maxBufferSize
+    public long getThreadCacheHits() {
+        return threadCacheHits.sum();
+    }
+
+    /**
+     * Acquires served from a shared stack.
+     */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    /**
+     * Acquires that had to allocate a new direct buffer.
+     */
+    public long getAllocations() {
+        return allocations.sum();
+    }
+
+    public long getAcquires() {
+        return getThreadCacheHits() + getSharedHits() + getAllocations();
+    }
+
+    public long getReleases() {
+        return releases.sum();
+    }
+
+    /**
+     * Released direct buffers that were not kept: foreign capacities and
+     * overflow of a full shared stack.
+     */
+    public long getDiscarded() {
+        return discarded.sum();
+    }
+
+    /**
+     * Buffers acquired and not yet released.
+     */
+    public long getOutstanding() {
+        return getAcquires() - getReleases();
+    }
+
+    /**
+     * Bytes of direct memory currently idle in the pool.
+     */
+    public long getPooledBytes() {
+        return pooledBytes.sum();
+    }
+
+    private ThreadCache threadCache() {
+        if (Thread.currentThread().isVirtual()) {
+            return null;
+        }
+        ThreadCache cache = threadCaches.get();
+        int epoch = trimEpoch;
+        if (cache.epoch != epoch) {
+            cache.epoch = epoch;
+            cache.trim();
+        }
+        return cache;
+    }
+
+    /**
+     * find the appropriate size class
+     */
+    private int sizeClassIndex(int minSize) {
+        // requests above maxBufferSize get the largest class
         if (minSize > maxBufferSize) {
-            return maxBufferSize;
+            minSize = maxBufferSize;
         }
-        
-        // find the first size that is greater than or equal to minSize
-        for (int size : BUFFER_SIZES) {
-            if (size >= minSize) {
-                return size;
+        for (int i = 0; i < bufferSizes.length; i++) {
+            if (bufferSizes[i] >= minSize) {
+                return i;
+            }
+        }
+        return bufferSizes.length - 1;
+    }
+
+    private int exactSizeClassIndex(int capacity) {
+        for (int i = 0; i < bufferSizes.length; i++) {
+            if (bufferSizes[i] == capacity) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Shared Treiber stack of idle buffers of one size.
+     */
+    private static final class SizeClass {
+        final int size;
+        final int maxShared;
+        final int threadCacheCapacity;
+        private final AtomicReference<Node> head = new AtomicReference<>();
+        private final AtomicInteger count = new AtomicInteger();
+        // Smallest stack depth since the last trim; that many buffers were never needed
+        private volatile int lowWaterMark;
+
+        SizeClass(int size, int maxShared, int threadCacheCapacity) {
+            this.size = size;
+            this.maxShared = maxShared;
+            this.threadCacheCapacity = threadCacheCapacity;
+        }
+
+        boolean push(ByteBuffer buffer) {
+            if (count.incrementAndGet() > maxShared) {
+                count.decrementAndGet();
+                return false;
+            }
+            Node node = new Node(buffer);
+            Node current;
+            do {
+                current = head.get();
+                node.next = current;
+            } while (!head.compareAndSet(current, node));
+            return true;
+        }
+
+        ByteBuffer pop() {
+            Node current;
+            do {
+                current = head.get();
+                if (current == null) {
+                    lowWaterMark = 0;
+                    return null;
+                }
+            } while (!head.compareAndSet(current, current.next));
+            int remaining = count.decrementAndGet();
+            if (remaining < lowWaterMark) {
+                lowWaterMark = remaining;
+            }
+            return current.buffer;
+        }
+
+        int resetLowWaterMark() {
+            int idle = lowWaterMark;
+            lowWaterMark = count.get() - idle;
+            return idle;
+        }
+    }
+
+    private static final class Node {
+        final ByteBuffer buffer;
+        Node next;
+
+        Node(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    /**
+     * Per-thread stacks, one per size class; only touched by the owning thread.
+     */
+    private final class ThreadCache {
+        final ByteBuffer[][] stacks = new ByteBuffer[sizeClasses.length][];
+        final int[] counts = new int[sizeClasses.length];
+        final int[] lowWaterMarks = new int[sizeClasses.length];
+        int epoch = trimEpoch;
+
+        ThreadCache() {
+            for (int i = 0; i < sizeClasses.length; i++) {
+                stacks[i] = new ByteBuffer[sizeClasses[i].threadCacheCapacity];
+            }
+        }
+
+        ByteBuffer pop(int index) {
+            int count = counts[index];
+            if (count == 0) {
+                lowWaterMarks[index] = 0;
+                return null;
+            }
+            count--;
+            ByteBuffer buffer = stacks[index][count];
+            stacks[index][count] = null;
+            counts[index] = count;
+            if (count < lowWaterMarks[index]) {
+                lowWaterMarks[index] = count;
+            }
+            return buffer;
+        }
+
+        boolean push(int index, ByteBuffer buffer) {
+            ByteBuffer[] stack = stacks[index];
+            int count = counts[index];
+            if (count == stack.length) {
+                return false;
+            }
+            stack[count] = buffer;
+            counts[index] = count + 1;
+            return true;
+        }
+
+        /**
+         * Hands buffers that were not needed since the previous trim over to
+         * the shared stacks, where the next trim frees them if still idle.
+         */
+        void trim() {
+            for (int i = 0; i < stacks.length; i++) {
+                int idle = lowWaterMarks[i];
+                for (int j = 0; j < idle; j++) {
+                    ByteBuffer buffer = pop(i);
+                    if (!sizeClasses[i].push(buffer)) {
+                        pooledBytes.add(-buffer.capacity());
+                        discarded.increment();
+                    }
+                }
+                lowWaterMarks[i] = counts[i];
             }
         }
-        
-        // return default size if no size is found
-        return DEFAULT_READ_BUFFER_SIZE;
     }
 
     public static final BufferPool DEFAULT = new BufferPool();
+
+    static {
+        DEFAULT.setLeakDetection(Boolean.getBoolean("nowin.bufferPool.leakDetection"));
+    }
 }
@@ -33,6 +33,7 @@ public final class ConnectionExceptions {
                 || normalized.contains("broken pipe")
                 || normalized.contains("connection aborted")
                 || normalized.contains("forcibly closed")
+                || normalized.contains("stream reset by client")
                 || message.contains("你的主机中的软件中止了一个已建立的连接")
                 || message.contains("远程主机强迫关闭了一个现有的连接");
     }
@@ -0,0 +1,94 @@
+package com.nowin.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Unbounded lock-free multi-producer/single-consumer FIFO queue.
+ * <p>
+ * Producers append with a single {@code getAndSet} on the tail and never
+ * block each other or the consumer; the consumer unlinks from the head with
+ * plain writes. Any thread may {@link #offer}, but {@link #poll},
+ * {@link #peek} and {@link #isEmpty} must only be called by the one
+ * consuming thread.
+ * <p>
+ * A producer that has swapped the tail but not yet linked its node makes the
+ * queue look empty to the consumer for a moment. Callers that park the
+ * consumer must therefore re-check after announcing that they are about to
+ * sleep, as {@code NioEventLoop} does.
+ */
+public final class MpscQueue<E> {
+
+    private static final class Node<E> {
+        E value;
+        volatile Node<E> next;
+
+        Node(E value) {
+            this.value = value;
+        }
+    }
+
+    private final AtomicReference<Node<E>> tail;
+    // Consumer-owned; head is always a consumed (or stub) node
+    private Node<E> head;
+    private final LongAdder offered = new LongAdder();
+    private volatile long polled;
+
+    public MpscQueue() {
+        Node<E> stub = new Node<>(null);
+        this.head = stub;
+        this.tail = new AtomicReference<>(stub);
+    }
+
+    /**
+     * Appends {@code value}; safe to call from any thread.
+     */
+    public void offer(E value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        Node<E> node = new Node<>(value);
+        Node<E> previous = tail.getAndSet(node);
+        previous.next = node;
+        offered.increment();
+    }
+
+    /**
+     * Removes and returns the oldest element, or {@code null} if none is
+     * visible yet. Consumer thread only.
+     */
+    public E poll() {
+        Node<E> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        E value = next.value;
+        next.value = null;
+        head = next;
+        polled = polled + 1;
+        return value;
+    }
+
+    /**
+     * Returns the oldest element without removing it. Consumer thread only.
+     */
+    public E peek() {
+        Node<E> next = head.next;
+        return next == null ? null : next.value;
+    }
+
+    /**
+     * Consumer thread only; see the class comment for the linking window.
+     */
+    public boolean isEmpty() {
+        return head.next == null && head == tail.get();
+    }
+
+    /**
+     * Approximate number of queued elements; safe to call from any thread.
+     */
+    public int size() {
+        long size = offered.sum() - polled;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, size));
+    }
+}
@@ -0,0 +1,52 @@
+package com.nowin.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Helpers for the buffer messages that travel the write path: plain
+ * {@link ByteBuffer}s, usually from {@link BufferPool}, and views of a
+ * {@link RefCountedBuffer}. A gathered message is an {@code Object[]} (or
+ * {@code ByteBuffer[]}) of either.
+ */
+public final class OutboundBuffers {
+
+    private OutboundBuffers() {
+    }
+
+    public static boolean isBuffer(Object part) {
+        return part instanceof ByteBuffer || part instanceof RefCountedBuffer;
+    }
+
+    /**
+     * Returns the bytes to write for {@code part}; for a shared buffer this is
+     * its own view, so progress is kept between partial writes.
+     */
+    public static ByteBuffer nioBuffer(Object part) {
+        return part instanceof RefCountedBuffer shared ? shared.nioBuffer() : (ByteBuffer) part;
+    }
+
+    /**
+     * Hands a written or discarded part back: shared buffers drop their
+     * reference, pooled buffers return to {@link BufferPool#DEFAULT}.
+     */
+    public static void release(Object part) {
+        if (part instanceof RefCountedBuffer shared) {
+            shared.release();
+        } else if (part instanceof ByteBuffer buffer) {
+            BufferPool.DEFAULT.release(buffer);
+        }
+    }
+
+    /**
+     * Releases a single part or every non-null element of a gathered message.
+     */
+    public static void releaseAll(Object msg) {
+        if (msg instanceof Object[] parts) {
+            for (Object part : parts) {
+                release(part);
+            }
+        } else {
+            release(msg);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.nowin.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Read-only view of a buffer whose memory is shared through a reference count.
+ * <p>
+ * The creator holds the first reference. {@link #retainedDuplicate()} hands out
+ * another view with its own position and limit over the same memory, e.g. one
+ * per connection writing a cached asset; each view is released once after use.
+ * When the last reference is released the optional deallocator runs, which for
+ * pooled memory returns the buffer to {@link BufferPool}.
+ * <p>
+ * The count is thread-safe; a single view's position is not, so each writer
+ * takes its own duplicate.
+ */
+public final class RefCountedBuffer {
+
+    private final ByteBuffer view;
+    private final Count count;
+
+    private RefCountedBuffer(ByteBuffer view, Count count) {
+        this.view = view;
+        this.count = count;
+    }
+
+    /**
+     * Shares the remaining bytes of {@code content} without copying them.
+     * {@code content} must not be modified afterwards; {@code deallocator} may
+     * be {@code null} for memory left to the garbage collector.
+     */
+    public static RefCountedBuffer wrap(ByteBuffer content, Runnable deallocator) {
+        return new RefCountedBuffer(content.slice().asReadOnlyBuffer(), new Count(deallocator));
+    }
+
+    /**
+     * Copies {@code bytes} once into direct memory.
+     */
+    public static RefCountedBuffer copyOf(byte[] bytes) {
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes).flip();
+        return wrap(direct, null);
+    }
+
+    /**
+     * The read-only view owned by this reference. Writing from it advances
+     * only this view's position.
+     */
+    public ByteBuffer nioBuffer() {
+        return view;
+    }
+
+    public int remaining() {
+        return view.remaining();
+    }
+
+    public int refCnt() {
+        return count.get();
+    }
+
+    public RefCountedBuffer retain() {
+        count.retain();
+        return this;
+    }
+
+    /**
+     * Takes a new reference and returns it as an independent view of the
+     * bytes this view has not consumed yet.
+     */
+    public RefCountedBuffer retainedDuplicate() {
+        count.retain();
+        return new RefCountedBuffer(view.duplicate(), count);
+    }
+
+    /**
+     * Drops one reference.
+     *
+     * @return true if this was the last one and the memory was deallocated
+     * @throws IllegalStateException if every reference was already released
+     */
+    public boolean release() {
+        return count.release();
+    }
+
+    @Override
+    public String toString() {
+        return "RefCountedBuffer[remaining=" + view.remaining() + ", refCnt=" + count.get() + "]";
+    }
+
+    private static final class Count extends AtomicInteger {
+        private final Runnable deallocator;
+
+        Count(Runnable deallocator) {
+            super(1);
+            this.deallocator = deallocator;
+        }
+
+        void retain() {
+            int current;
+            do {
+                current = get();
+                if (current <= 0) {
+                    throw new IllegalStateException("buffer was already released");
+                }
+            } while (!compareAndSet(current, current + 1));
+        }
+
+        boolean release() {
+            int remaining = decrementAndGet();
+            if (remaining > 0) {
+                return false;
+            }
+            if (remaining < 0) {
+                set(0);
+                throw new IllegalStateException("buffer was released more often than retained");
+            }
+            if (deallocator != null) {
+                deallocator.run();
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.nowin.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket, kept as a single "theoretical arrival time" (the
+ * generic cell rate algorithm): each permit pushes that time forward by one
+ * emission interval, and a permit is granted while it is no more than
+ * {@code burst} intervals ahead of now. Equivalent to a bucket of
+ * {@code burst} tokens refilled at {@code permitsPerSecond}, but one CAS per
+ * acquisition and no refill bookkeeping.
+ * <p>
+ * Thread-safe; shared by every acceptor of a server.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstToleranceNanos;
+    private final LongSupplier clock;
+    private final AtomicLong arrivalTime;
+
+    public TokenBucket(int permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    TokenBucket(int permitsPerSecond, int burst, LongSupplier clock) {
+        if (permitsPerSecond <= 0) {
+            throw new IllegalArgumentException("permitsPerSecond must be > 0");
+        }
+        if (burst <= 0) {
+            throw new IllegalArgumentException("burst must be > 0");
+        }
+        this.intervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+        this.burstToleranceNanos = intervalNanos * (burst - 1);
+        this.clock = clock;
+        // Start full
+        this.arrivalTime = new AtomicLong(clock.getAsLong() - burstToleranceNanos);
+    }
+
+    /**
+     * Takes one permit if available.
+     */
+    public boolean tryAcquire() {
+        long now = clock.getAsLong();
+        while (true) {
+            long current = arrivalTime.get();
+            long start = current - now < 0 ? now : current;
+            if (start - now > burstToleranceNanos) {
+                return false;
+            }
+            if (arrivalTime.compareAndSet(current, start + intervalNanos)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Gives back a permit taken with {@link #tryAcquire()} that turned out
+     * not to be needed, e.g. because there was nothing to admit.
+     */
+    public void release() {
+        arrivalTime.addAndGet(-intervalNanos);
+    }
+
+    /**
+     * Nanoseconds until {@link #tryAcquire()} can next succeed; zero if a
+     * permit is available now.
+     */
+    public long nanosUntilAvailable() {
+        long wait = arrivalTime.get() - burstToleranceNanos - clock.getAsLong();
+        return Math.max(0, wait);
+    }
+}
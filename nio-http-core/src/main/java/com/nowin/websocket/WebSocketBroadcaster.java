@@ -0,0 +1,127 @@
+package com.nowin.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Sends every message to all subscribed sessions.
+ * <p>
+ * A message is encoded once, plus once more compressed if any subscriber
+ * negotiated {@code permessage-deflate}, and each subscriber's connection
+ * queues a view of the same buffer. A subscriber whose unwritten output
+ * exceeds {@code maxPendingBytes} when a message is broadcast is dropped
+ * rather than buffered without bound.
+ */
+public class WebSocketBroadcaster {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebSocketBroadcaster.class);
+    private static final long DEFAULT_MAX_PENDING_BYTES = 1024 * 1024;
+
+    private final long maxPendingBytes;
+    private final Set<WebSocketSession> subscribers = ConcurrentHashMap.newKeySet();
+    // Keeps concurrent broadcasts in one order across subscribers
+    private final ReentrantLock lock = new ReentrantLock();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public WebSocketBroadcaster() {
+        this(DEFAULT_MAX_PENDING_BYTES);
+    }
+
+    /**
+     * @param maxPendingBytes unwritten bytes beyond which a subscriber is dropped
+     */
+    public WebSocketBroadcaster(long maxPendingBytes) {
+        if (maxPendingBytes < 1) {
+            throw new IllegalArgumentException("Max pending bytes must be >= 1, got: " + maxPendingBytes);
+        }
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * Adds {@code session}; it leaves once its connection ends.
+     */
+    public void subscribe(WebSocketSession session) {
+        Objects.requireNonNull(session, "session cannot be null");
+        subscribers.add(session);
+        session.onClose(() -> subscribers.remove(session));
+    }
+
+    public boolean unsubscribe(WebSocketSession session) {
+        return subscribers.remove(session);
+    }
+
+    /**
+     * Sends {@code frame} to every subscriber, dropping the ones that have
+     * fallen too far behind.
+     *
+     * @return the number of subscribers the frame was queued for
+     */
+    public int broadcast(WebSocketFrame frame) {
+        Objects.requireNonNull(frame, "frame cannot be null");
+        if (frame.getOpcode() == WebSocketFrame.OPCODE_CLOSE) {
+            throw new IllegalArgumentException("Use close() to end the subscribers' sessions");
+        }
+        int delivered = 0;
+        lock.lock();
+        try {
+            for (Iterator<WebSocketSession> it = subscribers.iterator(); it.hasNext(); ) {
+                WebSocketSession session = it.next();
+                if (!session.isOpen()) {
+                    it.remove();
+                } else if (session.pendingBytes() > maxPendingBytes) {
+                    it.remove();
+                    evictedCount.incrementAndGet();
+                    logger.warn("websocket_subscriber_evicted remote={} pending_bytes={} limit={}",
+                            session.request().getRemoteAddress(), session.pendingBytes(), maxPendingBytes);
+                    session.abort();
+                } else {
+                    session.send(frame);
+                    delivered++;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return delivered;
+    }
+
+    public int broadcast(String text) {
+        return broadcast(WebSocketFrame.text(text));
+    }
+
+    public int broadcast(byte[] data) {
+        return broadcast(WebSocketFrame.binary(data));
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Subscribers dropped for reading too slowly.
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Starts the closing handshake on every subscriber with
+     * {@link WebSocketSession#GOING_AWAY}.
+     */
+    public void close() {
+        List<WebSocketSession> open = new ArrayList<>(subscribers);
+        subscribers.clear();
+        for (WebSocketSession session : open) {
+            session.close(WebSocketSession.GOING_AWAY, "");
+        }
+    }
+}
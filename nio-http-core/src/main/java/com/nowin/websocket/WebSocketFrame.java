@@ -0,0 +1,208 @@
+package com.nowin.websocket;
+
+import com.nowin.util.RefCountedBuffer;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * An immutable WebSocket frame as the server sends it: final, unmasked and
+ * unfragmented.
+ * <p>
+ * The frame is encoded once, on first use, into a {@link RefCountedBuffer}
+ * and every connection it is sent to writes a view of that same memory.
+ * Connections that negotiated {@code permessage-deflate} share a second,
+ * compressed encoding; since the server never keeps compression context
+ * between messages, one compressed frame is valid for all of them.
+ */
+public final class WebSocketFrame {
+
+    public static final int OPCODE_CONTINUATION = 0x0;
+    public static final int OPCODE_TEXT = 0x1;
+    public static final int OPCODE_BINARY = 0x2;
+    public static final int OPCODE_CLOSE = 0x8;
+    public static final int OPCODE_PING = 0x9;
+    public static final int OPCODE_PONG = 0xA;
+
+    static final int MAX_CONTROL_PAYLOAD = 125;
+    // Smaller messages are sent as they are; deflate framing would eat the gain
+    static final int COMPRESSION_MIN_SIZE = 64;
+    private static final byte[] EMPTY = new byte[0];
+    private static final BlockingQueue<Deflater> DEFLATERS =
+            new ArrayBlockingQueue<>(Runtime.getRuntime().availableProcessors());
+
+    private final int opcode;
+    private final byte[] payload;
+    private volatile RefCountedBuffer encoded;
+    private volatile RefCountedBuffer compressed;
+
+    private WebSocketFrame(int opcode, byte[] payload) {
+        this.opcode = opcode;
+        this.payload = payload;
+    }
+
+    public static WebSocketFrame text(String text) {
+        return new WebSocketFrame(OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static WebSocketFrame binary(byte[] data) {
+        return new WebSocketFrame(OPCODE_BINARY, data.clone());
+    }
+
+    public static WebSocketFrame binary(ByteBuffer data) {
+        byte[] copy = new byte[data.remaining()];
+        data.duplicate().get(copy);
+        return new WebSocketFrame(OPCODE_BINARY, copy);
+    }
+
+    public static WebSocketFrame ping(byte[] data) {
+        return control(OPCODE_PING, data);
+    }
+
+    public static WebSocketFrame pong(byte[] data) {
+        return control(OPCODE_PONG, data);
+    }
+
+    /**
+     * A close frame; {@code reason} may be empty.
+     */
+    public static WebSocketFrame close(int code, String reason) {
+        if (!isValidCloseCode(code)) {
+            throw new IllegalArgumentException("Invalid close code: " + code);
+        }
+        byte[] reasonBytes = reason != null ? reason.getBytes(StandardCharsets.UTF_8) : EMPTY;
+        byte[] data = new byte[2 + reasonBytes.length];
+        data[0] = (byte) (code >>> 8);
+        data[1] = (byte) code;
+        System.arraycopy(reasonBytes, 0, data, 2, reasonBytes.length);
+        return control(OPCODE_CLOSE, data);
+    }
+
+    private static WebSocketFrame control(int opcode, byte[] data) {
+        byte[] copy = data != null ? data.clone() : EMPTY;
+        if (copy.length > MAX_CONTROL_PAYLOAD) {
+            throw new IllegalArgumentException("Control frame payload must be <= " + MAX_CONTROL_PAYLOAD
+                    + " bytes, got: " + copy.length);
+        }
+        return new WebSocketFrame(opcode, copy);
+    }
+
+    /**
+     * Whether {@code code} may appear in a close frame (RFC 6455 §7.4).
+     */
+    public static boolean isValidCloseCode(int code) {
+        return (code >= 1000 && code <= 1003)
+                || (code >= 1007 && code <= 1014)
+                || (code >= 3000 && code <= 4999);
+    }
+
+    public int getOpcode() {
+        return opcode;
+    }
+
+    public boolean isControl() {
+        return opcode >= OPCODE_CLOSE;
+    }
+
+    public int getPayloadLength() {
+        return payload.length;
+    }
+
+    /**
+     * The encoded frame. With {@code compress}, a data frame large enough to
+     * benefit is deflated and flagged with RSV1; otherwise the plain encoding
+     * is returned. Writers take their own reference with
+     * {@link RefCountedBuffer#retainedDuplicate()}; this one belongs to the
+     * frame and is never released.
+     */
+    public RefCountedBuffer encoded(boolean compress) {
+        if (compress && !isControl() && payload.length >= COMPRESSION_MIN_SIZE) {
+            RefCountedBuffer result = compressed;
+            if (result == null) {
+                synchronized (this) {
+                    result = compressed;
+                    if (result == null) {
+                        byte[] deflated = deflate(payload);
+                        result = deflated.length < payload.length
+                                ? RefCountedBuffer.copyOf(encode(opcode, true, deflated))
+                                : encoded(false);
+                        compressed = result;
+                    }
+                }
+            }
+            return result;
+        }
+        RefCountedBuffer result = encoded;
+        if (result == null) {
+            synchronized (this) {
+                result = encoded;
+                if (result == null) {
+                    result = RefCountedBuffer.copyOf(encode(opcode, false, payload));
+                    encoded = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    static byte[] encode(int opcode, boolean rsv1, byte[] data) {
+        int length = data.length;
+        int headerLength = length < 126 ? 2 : length <= 0xFFFF ? 4 : 10;
+        byte[] frame = new byte[headerLength + length];
+        frame[0] = (byte) (0x80 | (rsv1 ? 0x40 : 0) | opcode);
+        if (length < 126) {
+            frame[1] = (byte) length;
+        } else if (length <= 0xFFFF) {
+            frame[1] = 126;
+            frame[2] = (byte) (length >>> 8);
+            frame[3] = (byte) length;
+        } else {
+            frame[1] = 127;
+            for (int i = 0; i < 8; i++) {
+                frame[2 + i] = (byte) ((long) length >>> (56 - 8 * i));
+            }
+        }
+        System.arraycopy(data, 0, frame, headerLength, length);
+        return frame;
+    }
+
+    /**
+     * Compresses one message for {@code permessage-deflate}: a sync flush
+     * with the trailing empty stored block removed (RFC 7692 §7.2.1).
+     */
+    static byte[] deflate(byte[] data) {
+        Deflater deflater = DEFLATERS.poll();
+        if (deflater == null) {
+            deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        }
+        try {
+            deflater.setInput(data);
+            byte[] out = new byte[data.length / 2 + 64];
+            int size = 0;
+            while (true) {
+                int written = deflater.deflate(out, size, out.length - size, Deflater.SYNC_FLUSH);
+                size += written;
+                if (size < out.length) {
+                    break;
+                }
+                out = Arrays.copyOf(out, out.length * 2);
+            }
+            // The sync flush always ends in 00 00 ff ff
+            return Arrays.copyOf(out, size - 4);
+        } finally {
+            deflater.reset();
+            if (!DEFLATERS.offer(deflater)) {
+                deflater.end();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "WebSocketFrame[opcode=" + opcode + ", length=" + payload.length + "]";
+    }
+}
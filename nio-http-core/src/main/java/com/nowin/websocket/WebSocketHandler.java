@@ -0,0 +1,41 @@
+package com.nowin.websocket;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Receives the events of one WebSocket connection.
+ * <p>
+ * Callbacks run on the connection's event loop, one at a time and in the
+ * order the frames arrived, so they must not block; hand slow work to
+ * another thread and reply through the session, whose methods may be
+ * called from anywhere. Pings, pongs and the closing handshake are handled
+ * by the server.
+ */
+public interface WebSocketHandler {
+
+    default void onOpen(WebSocketSession session) throws Exception {
+    }
+
+    /**
+     * A complete text message, reassembled if it arrived in fragments.
+     */
+    default void onText(WebSocketSession session, String text) throws Exception {
+    }
+
+    /**
+     * A complete binary message. {@code data} may point into the
+     * connection's read buffer and is only valid until this method returns;
+     * copy it to keep it.
+     */
+    default void onBinary(WebSocketSession session, ByteBuffer data) throws Exception {
+    }
+
+    /**
+     * The connection has ended. {@code code} is the status from the
+     * client's close frame, {@link WebSocketSession#NO_STATUS} if it had
+     * none, or {@link WebSocketSession#ABNORMAL_CLOSURE} if the connection
+     * ended without one.
+     */
+    default void onClose(WebSocketSession session, int code, String reason) {
+    }
+}
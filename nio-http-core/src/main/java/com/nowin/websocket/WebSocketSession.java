@@ -0,0 +1,85 @@
+package com.nowin.websocket;
+
+import com.nowin.http.HttpRequest;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * One open WebSocket connection. Methods may be called from any thread;
+ * sends never block and are written in the order they were made.
+ */
+public interface WebSocketSession extends AutoCloseable {
+
+    int NORMAL_CLOSURE = 1000;
+    int GOING_AWAY = 1001;
+    int PROTOCOL_ERROR = 1002;
+    int UNSUPPORTED_DATA = 1003;
+    int NO_STATUS = 1005;
+    int ABNORMAL_CLOSURE = 1006;
+    int INVALID_PAYLOAD = 1007;
+    int POLICY_VIOLATION = 1008;
+    int MESSAGE_TOO_BIG = 1009;
+    int INTERNAL_ERROR = 1011;
+
+    /**
+     * The upgrade request that opened the connection.
+     */
+    HttpRequest request();
+
+    /**
+     * Whether {@code permessage-deflate} was negotiated.
+     */
+    boolean isCompressionEnabled();
+
+    /**
+     * Queues {@code frame}. The stage completes once the frame has been
+     * written to the socket, or exceptionally if the session is closing or
+     * the write failed. Close frames go through {@link #close(int, String)}.
+     */
+    CompletionStage<Void> send(WebSocketFrame frame);
+
+    default CompletionStage<Void> sendText(String text) {
+        return send(WebSocketFrame.text(text));
+    }
+
+    default CompletionStage<Void> sendBinary(byte[] data) {
+        return send(WebSocketFrame.binary(data));
+    }
+
+    /**
+     * Open until a close frame has been sent or the connection is gone.
+     */
+    boolean isOpen();
+
+    /**
+     * Bytes sent on this connection that have not reached the socket yet.
+     */
+    long pendingBytes();
+
+    /**
+     * Runs {@code callback} once the connection has ended, however it
+     * ended; at once if it already has.
+     */
+    void onClose(Runnable callback);
+
+    /**
+     * Starts the closing handshake with {@link #NORMAL_CLOSURE}.
+     */
+    @Override
+    default void close() {
+        close(NORMAL_CLOSURE, "");
+    }
+
+    /**
+     * Sends a close frame after everything queued so far. The connection is
+     * dropped once the client answers, or after a grace period if it does
+     * not.
+     */
+    void close(int code, String reason);
+
+    /**
+     * Drops the connection without a closing handshake, e.g. for a client
+     * that reads too slowly to keep up.
+     */
+    void abort();
+}
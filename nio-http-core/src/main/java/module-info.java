@@ -9,8 +9,14 @@ module com.nowin.niohttp {
     exports com.nowin;
     exports com.nowin.handler;
     exports com.nowin.http;
+    exports com.nowin.http2;
     exports com.nowin.server;
+    exports com.nowin.sse;
     exports com.nowin.transport;
+    exports com.nowin.websocket;
+
+    // Native transports register themselves as providers
+    uses com.nowin.transport.TransportFactory;
 
     // Internal packages - not exported by default
     // Users should not depend on these directly
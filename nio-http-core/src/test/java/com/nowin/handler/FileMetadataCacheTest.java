@@ -0,0 +1,156 @@
+package com.nowin.handler;
+
+import com.nowin.http.MimeTypeResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileMetadataCacheTest {
+
+    @TempDir
+    Path root;
+
+    private final FileMetadataCache cache = new FileMetadataCache(new MimeTypeResolver(), 1000);
+
+    @AfterEach
+    void tearDown() {
+        cache.close();
+    }
+
+    @Test
+    void testMetadataIsReadOnceAndCached() throws Exception {
+        Path file = root.resolve("style.css");
+        Files.writeString(file, "body{}");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+
+        FileMetadata first = cache.get(file);
+        FileMetadata second = cache.get(file);
+
+        assertSame(first, second);
+        assertTrue(first.exists());
+        assertTrue(first.isRegularFile());
+        assertTrue(first.isReadable());
+        assertEquals(6, first.size());
+        assertEquals(1_000_000, first.lastModified());
+        assertEquals("\"6-f4240\"", first.eTag());
+        assertEquals("Thu, 01 Jan 1970 00:16:40 GMT", first.lastModifiedHeader());
+        assertTrue(first.mimeType().startsWith("text/css"), first.mimeType());
+    }
+
+    @Test
+    void testModifiedFileIsInvalidatedByWatch() throws Exception {
+        Path file = root.resolve("index.html");
+        Files.writeString(file, "old");
+        assertEquals(3, cache.get(file).size());
+
+        Files.writeString(file, "new content");
+
+        awaitTrue(() -> cache.get(file).size() == 11);
+    }
+
+    @Test
+    void testMissingFileIsCachedUntilCreated() throws Exception {
+        Path file = root.resolve("index.htm");
+        FileMetadata missing = cache.get(file);
+        assertFalse(missing.exists());
+        assertSame(missing, cache.get(file));
+
+        Files.writeString(file, "hello");
+
+        awaitTrue(() -> cache.get(file).isRegularFile());
+    }
+
+    @Test
+    void testDeletedDirectoryClearsItsEntries() throws Exception {
+        Path dir = Files.createDirectory(root.resolve("docs"));
+        Path file = Files.writeString(dir.resolve("a.txt"), "a");
+        assertTrue(cache.get(dir).isDirectory());
+        assertTrue(cache.get(file).exists());
+
+        Files.delete(file);
+        Files.delete(dir);
+
+        awaitTrue(() -> !cache.get(file).exists() && !cache.get(dir).exists());
+    }
+
+    @Test
+    void testExplicitInvalidationIsImmediate() throws Exception {
+        Path file = root.resolve("data.json");
+        Files.writeString(file, "{}");
+        assertEquals(2, cache.get(file).size());
+
+        Files.writeString(file, "{\"a\":1}");
+        cache.invalidate(file);
+
+        assertEquals(7, cache.get(file).size());
+    }
+
+    @Test
+    void testUnwatchableDirectoryIsReadThrough() throws Exception {
+        Path file = root.resolve("missing-dir").resolve("a.txt");
+        assertFalse(cache.get(file).exists());
+        assertEquals(0, cache.size());
+
+        Files.createDirectory(file.getParent());
+        Files.writeString(file, "a");
+
+        assertTrue(cache.get(file).exists());
+    }
+
+    @Test
+    void testPathUnderFileIsMissing() throws Exception {
+        Path file = Files.writeString(root.resolve("plain.txt"), "x");
+
+        assertFalse(cache.get(file.resolve("child")).exists());
+    }
+
+    @Test
+    void testFailuresOtherThanMissingAreThrownAndNotCached() throws Exception {
+        // ENAMETOOLONG: the lookup fails, but the path is not known to be missing
+        Path file = root.resolve("x".repeat(300));
+
+        IOException e = assertThrows(IOException.class, () -> cache.get(file));
+        assertFalse(e instanceof NoSuchFileException || e instanceof NotDirectoryException, e.toString());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void testAccessDeniedIsNotCachedAsMissing() throws Exception {
+        Path dir = Files.createDirectory(root.resolve("private"));
+        Path file = Files.writeString(dir.resolve("secret.txt"), "s");
+        Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("---------"));
+        try {
+            assumeTrue(!Files.isReadable(dir), "permissions are not enforced for this user");
+
+            assertThrows(IOException.class, () -> cache.get(file));
+            assertEquals(0, cache.size());
+        } finally {
+            Files.setPosixFilePermissions(dir, PosixFilePermissions.fromString("rwx------"));
+        }
+        assertTrue(cache.get(file).isRegularFile());
+    }
+
+    @FunctionalInterface
+    private interface Condition {
+        boolean test() throws IOException;
+    }
+
+    private static void awaitTrue(Condition condition) throws Exception {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.test()) {
+            assertTrue(System.currentTimeMillis() < deadline, "watch event not observed");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.nowin.handler;
+
+import com.nowin.http.ByteArrayBody;
+import com.nowin.http.CachedFile;
+import com.nowin.http.FileChannelBody;
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+import com.nowin.http.MimeTypeResolver;
+import com.nowin.http.SharedBufferBody;
+import com.nowin.server.ResourceCache;
+import com.nowin.server.VirtualHost;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileRequestHandlerTest {
+
+    @TempDir
+    Path root;
+
+    private final ResourceCache<Path, CachedFile> cache = new ResourceCache<>(1024 * 1024, CachedFile::weigh);
+
+    @Test
+    void testSmallFilesAreServedFromSharedOffHeapCopy() throws Exception {
+        Files.writeString(root.resolve("app.js"), "console.log('hello');");
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+
+        HttpResponse first = get(handler, "/app.js");
+        HttpResponse second = get(handler, "/app.js");
+
+        assertInstanceOf(SharedBufferBody.class, first.getHttpBody());
+        assertInstanceOf(SharedBufferBody.class, second.getHttpBody());
+        assertEquals("console.log('hello');", new String(second.getBody(), StandardCharsets.UTF_8));
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.getHitCount());
+        assertEquals(21, cache.getWeightedSize());
+    }
+
+    @Test
+    void testModifiedFileIsReloaded() throws Exception {
+        Path file = root.resolve("index.html");
+        Files.writeString(file, "old");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_000_000));
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+        assertEquals("old", new String(get(handler, "/index.html").getBody(), StandardCharsets.UTF_8));
+
+        Files.writeString(file, "new content");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000));
+
+        assertEquals("new content", new String(get(handler, "/index.html").getBody(), StandardCharsets.UTF_8));
+        assertEquals(11, cache.getWeightedSize());
+    }
+
+    @Test
+    void testWithoutCacheFilesAreReadPerRequest() throws Exception {
+        Files.writeString(root.resolve("a.txt"), "plain");
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver());
+
+        HttpResponse response = get(handler, "/a.txt");
+
+        assertInstanceOf(ByteArrayBody.class, response.getHttpBody());
+        assertEquals("plain", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testLegacyByteArrayCacheStillServesFiles() throws Exception {
+        Files.writeString(root.resolve("a.txt"), "plain");
+        ResourceCache<String, byte[]> legacy = new ResourceCache<>(0, 100);
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), legacy);
+
+        assertEquals("plain", new String(get(handler, "/a.txt").getBody(), StandardCharsets.UTF_8));
+        assertEquals("plain", new String(get(handler, "/a.txt").getBody(), StandardCharsets.UTF_8));
+        assertEquals(1, legacy.size());
+        assertEquals(1, legacy.getHitCount());
+    }
+
+    @Test
+    void testPrecompressedSiblingIsPreferred() throws Exception {
+        Files.writeString(root.resolve("app.js"), "console.log('identity');");
+        Files.writeString(root.resolve("app.js.gz"), "gzip bytes");
+        Files.writeString(root.resolve("app.js.br"), "brotli bytes");
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+
+        HttpResponse br = get(handler, "/app.js", "Accept-Encoding", "gzip, deflate, br");
+        assertEquals("br", br.getHeader("Content-Encoding"));
+        assertEquals("brotli bytes", new String(br.getBody(), StandardCharsets.UTF_8));
+        assertEquals("Accept-Encoding", br.getHeader("Vary"));
+        assertTrue(br.getHeader("ETag").endsWith("-br\""), br.getHeader("ETag"));
+        assertTrue(br.getHeader("Content-Type").startsWith("text/javascript")
+                || br.getHeader("Content-Type").startsWith("application/javascript"), br.getHeader("Content-Type"));
+
+        HttpResponse gzip = get(handler, "/app.js", "Accept-Encoding", "br;q=0, gzip");
+        assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+        assertEquals("gzip bytes", new String(gzip.getBody(), StandardCharsets.UTF_8));
+
+        HttpResponse identity = get(handler, "/app.js");
+        assertNull(identity.getHeader("Content-Encoding"));
+        assertEquals("console.log('identity');", new String(identity.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testStaleSiblingIsIgnored() throws Exception {
+        Path file = root.resolve("style.css");
+        Files.writeString(root.resolve("style.css.gz"), "old gzip");
+        Files.setLastModifiedTime(root.resolve("style.css.gz"), FileTime.fromMillis(1_000_000));
+        Files.writeString(file, "body{}");
+        Files.setLastModifiedTime(file, FileTime.fromMillis(2_000_000));
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+
+        HttpResponse response = get(handler, "/style.css", "Accept-Encoding", "gzip");
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals("body{}", new String(response.getBody(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testLargePrecompressedSiblingIsSentZeroCopy() throws Exception {
+        Files.writeString(root.resolve("bundle.js"), "x");
+        byte[] gzip = new byte[2 * 1024 * 1024];
+        Files.write(root.resolve("bundle.js.gz"), gzip);
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+
+        HttpResponse response = get(handler, "/bundle.js", "Accept-Encoding", "gzip");
+
+        assertEquals("gzip", response.getHeader("Content-Encoding"));
+        assertInstanceOf(FileChannelBody.class, response.getHttpBody());
+        assertEquals(String.valueOf(gzip.length), response.getHeader("Content-Length"));
+        response.getHttpBody().close();
+    }
+
+    @Test
+    void testGzipVariantIsCompressedOnceAndCached() throws Exception {
+        String text = "function hello() { return 'hello world'; }\n".repeat(200);
+        Files.writeString(root.resolve("lib.js"), text);
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+        handler.setCompression(true, 512);
+
+        HttpResponse first = get(handler, "/lib.js", "Accept-Encoding", "gzip");
+        long weight = cache.getWeightedSize();
+        HttpResponse second = get(handler, "/lib.js", "Accept-Encoding", "gzip");
+
+        assertEquals("gzip", second.getHeader("Content-Encoding"));
+        assertInstanceOf(SharedBufferBody.class, second.getHttpBody());
+        assertArrayEquals(first.getBody(), second.getBody());
+        assertEquals(text, gunzip(second.getBody()));
+        assertEquals(String.valueOf(second.getBody().length), second.getHeader("Content-Length"));
+        assertTrue(weight > text.length() && weight < 2L * text.length(), "identity and gzip cached: " + weight);
+        assertEquals(weight, cache.getWeightedSize(), "second request compresses nothing");
+
+        // A range is served from the identity bytes
+        HttpResponse range = get(handler, "/lib.js", "Accept-Encoding", "gzip", "Range", "bytes=0-7");
+        assertEquals(206, range.getStatusCode());
+        assertNull(range.getHeader("Content-Encoding"));
+        range.getHttpBody().close();
+    }
+
+    @Test
+    void testIncompressibleCachedFileIsNotReencoded() throws Exception {
+        byte[] noise = new byte[8192];
+        new Random(42).nextBytes(noise);
+        Files.write(root.resolve("noise.js"), noise);
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+        handler.setCompression(true, 512);
+
+        for (int i = 0; i < 2; i++) {
+            HttpRequest request = request("/noise.js", "Accept-Encoding", "gzip, deflate");
+            HttpResponse response = new HttpResponse();
+            handler.handle(request, response);
+            // What HttpServerHandler does before writing
+            response.enableCompressionIfSupported(request, true, 512);
+
+            assertNull(response.getHeader("Content-Encoding"));
+            assertEquals("Accept-Encoding", response.getHeader("Vary"));
+            assertInstanceOf(SharedBufferBody.class, response.getHttpBody());
+            assertArrayEquals(noise, response.getBody());
+        }
+        assertEquals(noise.length, cache.getWeightedSize(), "gzip tried once and found no smaller");
+    }
+
+    @Test
+    void testCompressionIsLeftToServerWhenNotEnabled() throws Exception {
+        Files.writeString(root.resolve("lib.js"), "x".repeat(4096));
+        FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, null);
+
+        HttpResponse response = get(handler, "/lib.js", "Accept-Encoding", "gzip");
+
+        assertNull(response.getHeader("Content-Encoding"));
+        assertEquals(4096, cache.getWeightedSize());
+    }
+
+    @Test
+    void testPutIsVisibleThroughMetadataCacheImmediately() throws Exception {
+        Files.writeString(root.resolve("notes.txt"), "draft");
+        try (FileMetadataCache metadataCache = new FileMetadataCache(new MimeTypeResolver(), 1000)) {
+            FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, metadataCache);
+            assertEquals("draft", new String(get(handler, "/notes.txt").getBody(), StandardCharsets.UTF_8));
+
+            HttpRequest put = new HttpRequest();
+            put.setMethod("PUT");
+            put.setUri("/notes.txt");
+            put.setProtocolVersion("HTTP/1.1");
+            put.setBody("final version".getBytes(StandardCharsets.UTF_8));
+            put.setVirtualHost(new VirtualHost("localhost", root));
+            handler.handle(put, new HttpResponse());
+
+            HttpResponse response = get(handler, "/notes.txt");
+            assertEquals("13", response.getHeader("Content-Length"));
+            assertEquals("final version", new String(response.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testUnreadableFileIsForbiddenNotMissing() throws Exception {
+        Path file = Files.writeString(root.resolve("secret.txt"), "s");
+        Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("---------"));
+        try (FileMetadataCache metadataCache = new FileMetadataCache(new MimeTypeResolver(), 1000)) {
+            assumeTrue(!Files.isReadable(file),
+                    "permissions are not enforced for this user");
+            FileRequestHandler handler = new FileRequestHandler(new MimeTypeResolver(), cache, metadataCache);
+
+            HttpRequest request = new HttpRequest();
+            request.setMethod("GET");
+            request.setUri("/secret.txt");
+            request.setProtocolVersion("HTTP/1.1");
+            request.setVirtualHost(new VirtualHost("localhost", root));
+            HttpResponse response = new HttpResponse();
+            handler.handle(request, response);
+
+            assertEquals(403, response.getStatusCode());
+        } finally {
+            Files.setPosixFilePermissions(file, PosixFilePermissions.fromString("rw-------"));
+        }
+    }
+
+    @Test
+    void testAcceptsEncoding() {
+        assertTrue(FileRequestHandler.acceptsEncoding("gzip, deflate, br", "br"));
+        assertTrue(FileRequestHandler.acceptsEncoding("GZIP;q=0.5", "gzip"));
+        assertFalse(FileRequestHandler.acceptsEncoding("gzip;q=0", "gzip"));
+        assertFalse(FileRequestHandler.acceptsEncoding("deflate", "gzip"));
+        assertTrue(FileRequestHandler.acceptsEncoding("*", "zstd"));
+        assertFalse(FileRequestHandler.acceptsEncoding("*, zstd;q=0", "zstd"));
+        assertFalse(FileRequestHandler.acceptsEncoding("*;q=0", "br"));
+    }
+
+    private static String gunzip(byte[] bytes) throws Exception {
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes))) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private HttpResponse get(FileRequestHandler handler, String uri, String... headers) throws Exception {
+        HttpResponse response = new HttpResponse();
+        handler.handle(request(uri, headers), response);
+        assertTrue(response.getStatusCode() == 200 || response.getStatusCode() == 206);
+        return response;
+    }
+
+    private HttpRequest request(String uri, String... headers) {
+        HttpRequest request = new HttpRequest();
+        request.setMethod("GET");
+        request.setUri(uri);
+        request.setProtocolVersion("HTTP/1.1");
+        for (int i = 0; i < headers.length; i += 2) {
+            request.setHeader(headers[i], headers[i + 1]);
+        }
+        request.setVirtualHost(new VirtualHost("localhost", root));
+        return request;
+    }
+}
@@ -13,6 +13,7 @@ import java.nio.file.StandardOpenOption;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class FileChannelBodyTest {
 
@@ -39,6 +40,30 @@ class FileChannelBodyTest {
         }
     }
 
+    @Test
+    void slicesShareTheChannelUntilAllAreClosed() throws Exception {
+        Path file = tempDir.resolve("sliced.bin");
+        Files.write(file, new byte[10000]);
+        FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        FileChannelBody body = new FileChannelBody(fileChannel, 0, Files.size(file));
+
+        FileChannelBody first = body.slice(4096);
+        FileChannelBody second = body.slice(8192);
+
+        assertEquals(4096, first.contentLength());
+        assertEquals(4096, second.position());
+        assertEquals(10000 - 4096, second.contentLength());
+        assertTrue(body.isComplete());
+
+        body.close();
+        first.close();
+        assertTrue(fileChannel.isOpen(), "an open slice keeps the channel open");
+        CountingWritableChannel target = new CountingWritableChannel();
+        assertEquals(second.contentLength(), second.writeTo(target));
+        second.close();
+        assertFalse(fileChannel.isOpen());
+    }
+
     private static final class CountingWritableChannel implements WritableByteChannel {
         private long bytesWritten;
         private boolean open = true;
@@ -0,0 +1,85 @@
+package com.nowin.http;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpHeadersTest {
+
+    @Test
+    void testLookupIsCaseInsensitive() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Content-Type", "text/plain");
+
+        assertEquals("text/plain", headers.get("content-type"));
+        assertEquals("text/plain", headers.get("CONTENT-TYPE"));
+        assertTrue(headers.contains("Content-type"));
+        assertEquals("content-type", headers.name(0));
+        assertSame(headers.name(0), HttpTokens.headerName("Content-Type"));
+    }
+
+    @Test
+    void testSetReplacesAndAddCombines() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("X-Custom", "a");
+        headers.set("x-custom", "b");
+        assertEquals("b", headers.get("X-Custom"));
+
+        headers.add("X-CUSTOM", "c");
+        assertEquals("b, c", headers.get("x-custom"));
+        assertEquals(1, headers.size());
+        assertEquals("x-custom", headers.name(0));
+    }
+
+    @Test
+    void testRemoveKeepsRemainingEntriesInOrder() {
+        HttpHeaders headers = new HttpHeaders();
+        for (int i = 0; i < 20; i++) {
+            headers.set("X-Header-" + i, String.valueOf(i));
+        }
+
+        assertEquals("3", headers.remove("x-header-3"));
+        assertNull(headers.remove("x-header-3"));
+        assertEquals(19, headers.size());
+        assertEquals("x-header-4", headers.name(3));
+        assertEquals("19", headers.get("X-Header-19"));
+    }
+
+    @Test
+    void testAdoptRawDecodesLazilyAndCombinesDuplicates() {
+        byte[] block = "text/htmlgzipbr".getBytes(StandardCharsets.US_ASCII);
+        String[] names = {"accept", "accept-encoding", "accept-encoding"};
+        int[] bounds = {0, 9, 9, 13, 13, 15};
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.adoptRaw(block, names, bounds, 3);
+
+        assertEquals(2, headers.size());
+        assertEquals("text/html", headers.get("Accept"));
+        assertEquals("gzip, br", headers.get("accept-encoding"));
+
+        headers.remove("accept");
+        headers.set("Host", "localhost");
+        assertEquals("gzip, br", headers.value(0));
+        assertEquals("localhost", headers.value(1));
+    }
+
+    @Test
+    void testMapViewIsReadOnlyAndLive() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Host", "localhost");
+        Map<String, String> view = headers.asMap();
+
+        assertEquals("localhost", view.get("HOST"));
+        assertThrows(UnsupportedOperationException.class, () -> view.put("x", "y"));
+
+        headers.set("Connection", "close");
+        assertEquals(2, view.size());
+        assertTrue(view.containsKey("connection"));
+        assertEquals(Map.of("host", "localhost", "connection", "close"), Map.copyOf(view));
+        assertSame(view, headers.asMap());
+    }
+}
@@ -1,5 +1,6 @@
 package com.nowin.http;
 
+import com.nowin.util.RefCountedBuffer;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.io.TempDir;
 
@@ -10,6 +11,7 @@ import java.nio.file.Path;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -35,6 +37,63 @@ class HttpResponseEncoderTest {
         assertTrue(encoded.endsWith("hello"));
     }
 
+    @Test
+    void encodesLargeBufferedBodyAsGatheredHeadersAndBody() {
+        byte[] body = new byte[HttpResponseEncoder.MIN_GATHER_BODY_BYTES * 4];
+        java.util.Arrays.fill(body, (byte) 'x');
+        HttpResponse response = new HttpResponse();
+        response.setBody(body);
+
+        List<Object> messages = encoder.encodeForWrite(response);
+
+        assertEquals(1, messages.size());
+        ByteBuffer[] buffers = assertInstanceOf(ByteBuffer[].class, messages.getFirst());
+        assertEquals(2, buffers.length);
+        String encodedHeaders = StandardCharsets.UTF_8.decode(buffers[0]).toString();
+        assertTrue(encodedHeaders.contains("Content-Length: " + body.length));
+        assertTrue(encodedHeaders.endsWith("\r\n\r\n"));
+        assertTrue(buffers[1].isReadOnly());
+        assertEquals(body.length, buffers[1].remaining());
+    }
+
+    @Test
+    void encodesLargeSharedBodyByReferenceWithoutCopying() throws Exception {
+        byte[] body = new byte[HttpResponseEncoder.MIN_GATHER_BODY_BYTES * 4];
+        java.util.Arrays.fill(body, (byte) 'y');
+        RefCountedBuffer cached = RefCountedBuffer.copyOf(body);
+        HttpResponse response = new HttpResponse();
+        response.setBody(new SharedBufferBody(cached));
+        assertEquals(2, cached.refCnt());
+
+        List<Object> messages = encoder.encodeForWrite(response);
+        response.getHttpBody().close();
+
+        Object[] parts = assertInstanceOf(Object[].class, messages.getFirst());
+        assertEquals(2, parts.length);
+        assertTrue(StandardCharsets.UTF_8.decode((ByteBuffer) parts[0]).toString()
+                .contains("Content-Length: " + body.length));
+        RefCountedBuffer shared = assertInstanceOf(RefCountedBuffer.class, parts[1]);
+        assertEquals(body.length, shared.remaining());
+        assertEquals(2, cached.refCnt(), "The encoded message owns the body's reference");
+
+        shared.release();
+        assertEquals(1, cached.refCnt());
+    }
+
+    @Test
+    void copiesSmallSharedBodyNextToHeaders() throws Exception {
+        RefCountedBuffer cached = RefCountedBuffer.copyOf("tiny".getBytes(StandardCharsets.UTF_8));
+        HttpResponse response = new HttpResponse();
+        response.setBody(new SharedBufferBody(cached));
+
+        List<Object> messages = encoder.encodeForWrite(response);
+        response.getHttpBody().close();
+
+        ByteBuffer buffer = assertInstanceOf(ByteBuffer.class, messages.getFirst());
+        assertTrue(StandardCharsets.UTF_8.decode(buffer).toString().endsWith("tiny"));
+        assertEquals(1, cached.refCnt());
+    }
+
     @Test
     void encodesFileResponseAsHeadersAndBodyMessages() throws Exception {
         Path file = tempDir.resolve("large.txt");
@@ -67,4 +126,64 @@ class HttpResponseEncoderTest {
         assertTrue(chunk.contains("3\r\nabc\r\n"));
         assertEquals("0\r\n\r\n", finalChunk);
     }
+
+    @Test
+    void writesCanonicalHeaderNamesAndCachedDate() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(404);
+        response.setHeader("etag", "\"v1\"");
+        response.setHeader("X-Custom", "caf\u00e9");
+        response.setBody("missing");
+
+        String encoded = StandardCharsets.UTF_8.decode(encoder.encode(response)).toString();
+
+        assertTrue(encoded.startsWith("HTTP/1.1 404 Not Found\r\n"));
+        assertTrue(encoded.contains("\r\nETag: \"v1\"\r\n"));
+        assertTrue(encoded.contains("\r\nx-custom: caf\u00e9\r\n"));
+        assertTrue(encoded.contains("\r\nDate: " + response.getHeader("Date") + "\r\n"));
+        assertTrue(encoded.endsWith("\r\n\r\nmissing"));
+    }
+
+    @Test
+    void writesCustomReasonPhraseAndVersion() {
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(200);
+        response.setStatusMessage("Fine");
+        response.setProtocolVersion("HTTP/1.0");
+
+        String encoded = StandardCharsets.UTF_8.decode(encoder.encode(response)).toString();
+
+        assertTrue(encoded.startsWith("HTTP/1.0 200 Fine\r\n"));
+        assertTrue(encoded.contains("\r\nContent-Length: 0\r\n"));
+    }
+
+    @Test
+    void encodesMultiRangeResponseAsHeadersAndParts() throws Exception {
+        Path file = tempDir.resolve("video.bin");
+        Files.writeString(file, "0123456789", StandardCharsets.UTF_8);
+
+        HttpResponse response = new HttpResponse();
+        response.setStatusCode(206);
+        response.setBody(MultipartByteRangesBody.open(file, "video/mp4", 10, "B",
+                List.of(new long[] {0, 1}, new long[] {8, 9})));
+
+        List<Object> messages = encoder.encodeForWrite(response);
+
+        assertEquals(6, messages.size());
+        String head = StandardCharsets.UTF_8.decode(assertInstanceOf(ByteBuffer.class, messages.getFirst())).toString();
+        String firstPart = "\r\n--B\r\nContent-Type: video/mp4\r\nContent-Range: bytes 0-1/10\r\n\r\n";
+        String closeDelimiter = "\r\n--B--\r\n";
+        assertTrue(head.contains("Content-Length: " + (2 * firstPart.length() + 4 + closeDelimiter.length())), head);
+        assertEquals(firstPart, StandardCharsets.UTF_8.decode((ByteBuffer) messages.get(1)).toString());
+        FileChannelBody second = assertInstanceOf(FileChannelBody.class, messages.get(4));
+        assertEquals(8, second.position());
+        assertEquals(2, second.count());
+        assertEquals(closeDelimiter, StandardCharsets.UTF_8.decode((ByteBuffer) messages.get(5)).toString());
+
+        FileChannelBody first = (FileChannelBody) messages.get(2);
+        first.close();
+        assertTrue(second.fileChannel().isOpen(), "ranges share one channel until the last is closed");
+        second.close();
+        assertFalse(second.fileChannel().isOpen());
+    }
 }
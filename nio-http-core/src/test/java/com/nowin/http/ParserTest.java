@@ -173,4 +173,71 @@ public class ParserTest {
         assertNull(request, "Request with tab-indented obs-fold should be rejected");
         assertTrue(parser.hasError());
     }
+
+    @Test
+    void testCrLfSplitAcrossReads() {
+        HttpRequestParser parser = new HttpRequestParser();
+
+        assertNull(parser.parse(ByteBuffer.wrap("GET /split HTTP/1.1\r".getBytes(StandardCharsets.US_ASCII))));
+        assertNull(parser.parse(ByteBuffer.wrap("\nHost: localhost\r".getBytes(StandardCharsets.US_ASCII))));
+        HttpRequest request = parser.parse(ByteBuffer.wrap("\n\r\n".getBytes(StandardCharsets.US_ASCII)));
+
+        assertNotNull(request);
+        assertEquals("/split", request.getUri());
+        assertEquals("localhost", request.getHeader("Host").orElse(null));
+    }
+
+    @Test
+    void testBareLfIsRejected() {
+        String raw = "GET /api HTTP/1.1\nHost: localhost\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser();
+        assertNull(parser.parse(ByteBuffer.wrap(raw.getBytes(StandardCharsets.US_ASCII))));
+        assertTrue(parser.hasError());
+    }
+
+    @Test
+    void testMethodVersionAndHeaderNamesAreInterned() {
+        String raw = "GET / HTTP/1.1\r\nCONTENT-type: text/plain\r\nX-Custom: a\r\nx-custom: b\r\n\r\n";
+        HttpRequestParser parser = new HttpRequestParser();
+        HttpRequest request = parser.parse(ByteBuffer.wrap(raw.getBytes(StandardCharsets.US_ASCII)));
+
+        assertNotNull(request);
+        assertSame("GET", request.getMethod());
+        assertSame("HTTP/1.1", request.getProtocolVersion());
+        assertEquals("text/plain", request.getHeader("Content-Type").orElse(null));
+        assertEquals("a, b", request.getHeader("X-CUSTOM").orElse(null));
+        assertTrue(request.getHeaders().containsKey("content-type"));
+    }
+
+    @Test
+    void testNonAsciiUriAndHeaderValueDecodedAsUtf8() {
+        byte[] raw = "GET /caf\u00e9 HTTP/1.1\r\nX-Name: \u00fcber\r\n\r\n".getBytes(StandardCharsets.UTF_8);
+        HttpRequestParser parser = new HttpRequestParser();
+        HttpRequest request = parser.parse(ByteBuffer.wrap(raw));
+
+        assertNotNull(request);
+        assertEquals("/caf\u00e9", request.getUri());
+        assertEquals("\u00fcber", request.getHeader("x-name").orElse(null));
+    }
+
+    @Test
+    void testStartLineWithoutVersionIsRejected() {
+        HttpRequestParser parser = new HttpRequestParser();
+        assertNull(parser.parse(ByteBuffer.wrap("GET HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII))));
+        assertTrue(parser.hasError());
+    }
+
+    @Test
+    void testDirectBufferIsScannedInPlace() {
+        byte[] raw = "GET /direct HTTP/1.0\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(raw.length);
+        buffer.put(raw).flip();
+
+        HttpRequest request = new HttpRequestParser().parse(buffer);
+
+        assertNotNull(request);
+        assertEquals("/direct", request.getUri());
+        assertSame("HTTP/1.0", request.getProtocolVersion());
+        assertFalse(buffer.hasRemaining());
+    }
 }
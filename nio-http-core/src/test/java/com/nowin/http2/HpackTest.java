@@ -0,0 +1,156 @@
+package com.nowin.http2;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HpackTest {
+
+    @Test
+    void testHuffmanVectorsFromRfc7541() throws Exception {
+        assertHuffman("www.example.com", "f1e3c2e5f23a6ba0ab90f4ff");
+        assertHuffman("no-cache", "a8eb10649cbf");
+        assertHuffman("custom-key", "25a849e95ba97d7f");
+        assertHuffman("custom-value", "25a849e95bb8e8b4bf");
+        assertHuffman("302", "6402");
+        assertHuffman("private", "aec3771a4b");
+        assertHuffman("Mon, 21 Oct 2013 20:13:21 GMT", "d07abe941054d444a8200595040b8166e082a62d1bff");
+        assertHuffman("https://www.example.com", "9d29ad171863c78f0b97c8e9ae82ae43d3");
+    }
+
+    @Test
+    void testHuffmanRoundTripsEveryOctet() throws Exception {
+        byte[] data = new byte[256];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        byte[] encoded = new byte[HpackHuffman.encodedLength(data)];
+        assertEquals(encoded.length, HpackHuffman.encode(data, encoded, 0));
+
+        assertArrayEquals(data, HpackHuffman.decode(encoded, 0, encoded.length));
+    }
+
+    @Test
+    void testHuffmanRejectsInvalidPadding() {
+        // "0" is 00000 followed by 3 zero bits of padding instead of ones
+        Http2Exception error = assertThrows(Http2Exception.class, () -> HpackHuffman.decode(new byte[] {0x00}, 0, 1));
+        assertEquals(Http2Error.COMPRESSION_ERROR, error.getError());
+        // A full byte of ones is padding longer than 7 bits
+        assertThrows(Http2Exception.class, () -> HpackHuffman.decode(new byte[] {0x07, (byte) 0xFF}, 0, 2));
+    }
+
+    @Test
+    void testDecodesRequestsFromRfc7541AppendixC4() throws Exception {
+        HpackDecoder decoder = new HpackDecoder();
+
+        assertEquals(List.of(":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com"),
+                decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff"));
+        assertEquals(List.of(":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com",
+                        "cache-control: no-cache"),
+                decode(decoder, "828684be5886a8eb10649cbf"));
+        assertEquals(List.of(":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+                        "custom-key: custom-value"),
+                decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf"));
+    }
+
+    @Test
+    void testDecodesResponsesFromRfc7541AppendixC6WithEviction() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(256, Http2Settings.UNLIMITED);
+
+        assertEquals(List.of(":status: 302", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                        "location: https://www.example.com"),
+                decode(decoder, "488264025885aec3771a4b6196d07abe941054d444a8200595040b8166e082a62d1bff"
+                        + "6e919d29ad171863c78f0b97c8e9ae82ae43d3"));
+        assertEquals(List.of(":status: 307", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:21 GMT",
+                        "location: https://www.example.com"),
+                decode(decoder, "4883640effc1c0bf"));
+        assertEquals(List.of(":status: 200", "cache-control: private", "date: Mon, 21 Oct 2013 20:13:22 GMT",
+                        "location: https://www.example.com", "content-encoding: gzip",
+                        "set-cookie: foo=ASDJKHQKBZXOQWEOPIUAXQWEOIU; max-age=3600; version=1"),
+                decode(decoder, "88c16196d07abe941054d444a8200595040b8166e084a62d1bffc05a839bd9ab77ad94e782"
+                        + "1dd7f2e6c7b335dfdfcd5b3960d5af27087f3672c1ab270fb5291f9587316065c003ed4ee5b1063d5007"));
+    }
+
+    @Test
+    void testDecoderRejectsInvalidIndexAndLateSizeUpdate() {
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(), "be"), "empty dynamic table");
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(), "80"), "index 0");
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(), "8220"), "size update after a field");
+        assertThrows(Http2Exception.class, () -> decode(new HpackDecoder(), "3fe21f"), "size above the limit");
+    }
+
+    @Test
+    void testDecoderDropsFieldsPastTheHeaderListLimit() throws Exception {
+        HpackDecoder decoder = new HpackDecoder(4096, 100);
+        List<String> fields = new ArrayList<>();
+
+        boolean complete = decoder.decode(hex("828684418cf1e3c2e5f23a6ba0ab90f4ff"),
+                (name, value) -> fields.add(name));
+
+        assertFalse(complete);
+        assertEquals(List.of(":method", ":scheme"), fields);
+    }
+
+    @Test
+    void testEncoderRoundTripsAndIndexesRepeatedFields() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        HpackDecoder decoder = new HpackDecoder();
+        List<Map.Entry<String, String>> fields = List.of(
+                Map.entry(":status", "200"),
+                Map.entry("content-type", "text/html; charset=UTF-8"),
+                Map.entry("content-length", "1234"),
+                Map.entry("set-cookie", "session=secret"),
+                Map.entry("x-unicode", "café"));
+
+        ByteBuffer first = encoder.encode(fields);
+        ByteBuffer second = encoder.encode(fields);
+
+        List<String> expected = List.of(":status: 200", "content-type: text/html; charset=UTF-8",
+                "content-length: 1234", "set-cookie: session=secret", "x-unicode: café");
+        assertEquals(expected, decode(decoder, first));
+        assertEquals(expected, decode(decoder, second));
+        assertTrue(second.capacity() < first.capacity() / 2, "indexed fields shrink the second block");
+    }
+
+    @Test
+    void testEncoderSignalsTableSizeChanges() throws Exception {
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setMaxTableSize(0);
+        encoder.setMaxTableSize(1024);
+
+        ByteBuffer block = encoder.encode(List.of(Map.entry("x-a", "b")));
+
+        assertEquals(0x20, block.get(0) & 0xFF, "smallest size first");
+        assertEquals(0x3F, block.get(1) & 0xFF, "then the final size");
+        assertEquals(List.of("x-a: b"), decode(new HpackDecoder(), block));
+    }
+
+    private static void assertHuffman(String text, String expectedHex) throws Exception {
+        byte[] data = text.getBytes(StandardCharsets.ISO_8859_1);
+        byte[] encoded = new byte[HpackHuffman.encodedLength(data)];
+        HpackHuffman.encode(data, encoded, 0);
+        assertEquals(expectedHex, HexFormat.of().formatHex(encoded), text);
+        assertEquals(text, new String(HpackHuffman.decode(encoded, 0, encoded.length), StandardCharsets.ISO_8859_1));
+    }
+
+    private static List<String> decode(HpackDecoder decoder, String hex) throws Http2Exception {
+        return decode(decoder, hex(hex));
+    }
+
+    private static List<String> decode(HpackDecoder decoder, ByteBuffer block) throws Http2Exception {
+        List<String> fields = new ArrayList<>();
+        decoder.decode(block, (name, value) -> fields.add(name + ": " + value));
+        return fields;
+    }
+
+    private static ByteBuffer hex(String hex) {
+        return ByteBuffer.wrap(HexFormat.of().parseHex(hex));
+    }
+}
@@ -0,0 +1,335 @@
+package com.nowin.http2;
+
+import com.nowin.HttpServer;
+import com.nowin.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class Http2IntegrationTest {
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    @TempDir
+    Path root;
+
+    private final Set<String> remoteAddresses = ConcurrentHashMap.newKeySet();
+    // Holds requests to /blocked until the test ends
+    private final CountDownLatch unblock = new CountDownLatch(1);
+    private byte[] largeFile;
+    private HttpServer server;
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        unblock.countDown();
+        if (server != null) {
+            server.stop().join();
+        }
+    }
+
+    @Test
+    void testH2cUpgradeMultiplexesConcurrentRequestsOnOneConnection() throws Exception {
+        start(new ServerConfig());
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+        HttpResponse<String> first = client.send(get("/echo?n=0"), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, first.version());
+        assertEquals("echo-0", first.body());
+
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            responses.add(client.sendAsync(get("/echo?n=" + i), HttpResponse.BodyHandlers.ofString()));
+        }
+        CompletableFuture<HttpResponse<byte[]>> file =
+                client.sendAsync(get("/large.bin"), HttpResponse.BodyHandlers.ofByteArray());
+        for (int i = 1; i <= 20; i++) {
+            HttpResponse<String> response = responses.get(i - 1).join();
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals("echo-" + i, response.body());
+        }
+        assertArrayEquals(largeFile, file.join().body(), "file larger than the flow-control window");
+        assertEquals(1, remoteAddresses.size(), "one connection: " + remoteAddresses);
+    }
+
+    @Test
+    void testRequestBodiesAndStreamingResponses() throws Exception {
+        start(new ServerConfig());
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        client.send(get("/echo?n=0"), HttpResponse.BodyHandlers.ofString());
+
+        byte[] upload = new byte[200_000];
+        ThreadLocalRandom.current().nextBytes(upload);
+        HttpResponse<String> posted = client.send(HttpRequest.newBuilder(uri("/upload"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(upload)).build(), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, posted.version());
+        assertEquals("received " + upload.length, posted.body());
+
+        HttpResponse<String> streamed = client.send(get("/stream"), HttpResponse.BodyHandlers.ofString());
+        assertEquals(HttpClient.Version.HTTP_2, streamed.version());
+        assertEquals("part-0part-1part-2", streamed.body());
+    }
+
+    @Test
+    void testPriorKnowledgeFramesAndPing() throws Exception {
+        start(new ServerConfig());
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+
+            Frame settings = readFrame(in);
+            assertEquals(0x4, settings.type);
+            assertEquals(0, settings.flags);
+
+            HpackEncoder encoder = new HpackEncoder();
+            writeHeaders(out, encoder, 1, "/echo?n=1");
+            writeHeaders(out, encoder, 3, "/echo?n=3");
+            writeFrame(out, 0x6, 0, 0, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+
+            HpackDecoder decoder = new HpackDecoder();
+            Map<Integer, Map<String, String>> headers = new HashMap<>();
+            Map<Integer, StringBuilder> bodies = new HashMap<>();
+            boolean settingsAcked = false;
+            boolean pingAcked = false;
+            int ended = 0;
+            while (ended < 2 || !settingsAcked || !pingAcked) {
+                Frame frame = readFrame(in);
+                switch (frame.type) {
+                    case 0x0 -> bodies.computeIfAbsent(frame.streamId, id -> new StringBuilder())
+                            .append(new String(frame.payload, StandardCharsets.UTF_8));
+                    case 0x1 -> {
+                        Map<String, String> fields = new HashMap<>();
+                        decoder.decode(ByteBuffer.wrap(frame.payload), fields::put);
+                        headers.put(frame.streamId, fields);
+                    }
+                    case 0x4 -> settingsAcked |= frame.flags == 0x1;
+                    case 0x6 -> {
+                        assertEquals(0x1, frame.flags);
+                        assertArrayEquals(new byte[] {1, 2, 3, 4, 5, 6, 7, 8}, frame.payload);
+                        pingAcked = true;
+                    }
+                    default -> {
+                    }
+                }
+                if ((frame.type == 0x0 || frame.type == 0x1) && (frame.flags & 0x1) != 0) {
+                    ended++;
+                }
+            }
+
+            assertEquals("200", headers.get(1).get(":status"));
+            assertEquals("6", headers.get(1).get("content-length"));
+            assertNull(headers.get(1).get("connection"));
+            assertEquals("echo-1", bodies.get(1).toString());
+            assertEquals("echo-3", bodies.get(3).toString());
+        }
+    }
+
+    @Test
+    void testProtocolErrorSendsGoAway() throws Exception {
+        start(new ServerConfig());
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+            // DATA on stream 0
+            writeFrame(out, 0x0, 0, 0, new byte[] {1});
+
+            Frame frame;
+            do {
+                frame = readFrame(in);
+            } while (frame.type != 0x7);
+            assertEquals(Http2Error.PROTOCOL_ERROR.code(), ByteBuffer.wrap(frame.payload).getInt(4));
+            assertEquals(-1, in.read(), "the server closes the connection");
+        }
+    }
+
+    @Test
+    void testResetStreamsCountAgainstTheLimitUntilHandled() throws Exception {
+        start(new ServerConfig().setHttp2MaxConcurrentStreams(2));
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+
+            HpackEncoder encoder = new HpackEncoder();
+            for (int streamId = 1; streamId <= 5; streamId += 2) {
+                writeHeaders(out, encoder, streamId, "/blocked");
+                writeFrame(out, 0x3, 0, streamId, cancel());
+            }
+
+            Frame frame;
+            do {
+                frame = readFrame(in);
+            } while (frame.type != 0x3);
+            assertEquals(5, frame.streamId, "streams 1 and 3 are still being handled");
+            assertEquals(Http2Error.REFUSED_STREAM.code(), ByteBuffer.wrap(frame.payload).getInt());
+        }
+    }
+
+    @Test
+    void testRapidResetFloodSendsGoAway() throws Exception {
+        start(new ServerConfig());
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            out.write(PREFACE);
+            writeFrame(out, 0x4, 0, 0, new byte[0]);
+
+            HpackEncoder encoder = new HpackEncoder();
+            // More pairs than both the concurrent stream limit and the reset budget
+            for (int i = 0; i <= 200; i++) {
+                writeHeaders(out, encoder, 2 * i + 1, "/blocked");
+                writeFrame(out, 0x3, 0, 2 * i + 1, cancel());
+            }
+
+            Frame frame;
+            do {
+                frame = readFrame(in);
+            } while (frame.type != 0x7);
+            assertEquals(Http2Error.ENHANCE_YOUR_CALM.code(), ByteBuffer.wrap(frame.payload).getInt(4));
+            assertEquals(-1, in.read(), "the server closes the connection");
+        }
+    }
+
+    @Test
+    void testDisabledHttp2AnswersUpgradeRequestsOverHttp1() throws Exception {
+        start(new ServerConfig().setHttp2Enabled(false));
+        HttpClient client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+
+        HttpResponse<String> response = client.send(get("/echo?n=7"), HttpResponse.BodyHandlers.ofString());
+
+        assertEquals(HttpClient.Version.HTTP_1_1, response.version());
+        assertEquals("echo-7", response.body());
+    }
+
+    private void start(ServerConfig config) throws IOException {
+        largeFile = new byte[300_000];
+        ThreadLocalRandom.current().nextBytes(largeFile);
+        Files.write(root.resolve("large.bin"), largeFile);
+        port = findAvailablePort();
+        server = HttpServer.builder()
+                .config(config)
+                .host("127.0.0.1")
+                .port(port)
+                .disableDefaultEndpoints()
+                .get("/echo", exchange -> {
+                    remoteAddresses.add(exchange.request().getRemoteAddress());
+                    exchange.text("echo-" + exchange.request().getQueryParameter("n").orElse("?"));
+                })
+                .get("/blocked", exchange -> {
+                    try {
+                        unblock.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.text("unblocked");
+                })
+                .post("/upload", exchange -> {
+                    byte[] body = exchange.request().getBody();
+                    exchange.text("received " + (body != null ? body.length : 0));
+                })
+                .get("/stream", exchange -> exchange.stream("text/plain", stream -> {
+                    for (int i = 0; i < 3; i++) {
+                        stream.write("part-" + i);
+                    }
+                }))
+                .staticFiles(root)
+                .build();
+        server.start().join();
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).GET().build();
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + port + path);
+    }
+
+    private void writeHeaders(OutputStream out, HpackEncoder encoder, int streamId, String path) throws IOException {
+        ByteBuffer block = encoder.encode(List.of(
+                Map.entry(":method", "GET"),
+                Map.entry(":scheme", "http"),
+                Map.entry(":path", path),
+                Map.entry(":authority", "127.0.0.1:" + port)));
+        byte[] payload = new byte[block.remaining()];
+        block.get(payload);
+        writeFrame(out, 0x1, 0x1 | 0x4, streamId, payload);
+    }
+
+    private static byte[] cancel() {
+        return ByteBuffer.allocate(4).putInt(Http2Error.CANCEL.code()).array();
+    }
+
+    private static void writeFrame(OutputStream out, int type, int flags, int streamId, byte[] payload) throws IOException {
+        ByteBuffer frame = ByteBuffer.allocate(9 + payload.length)
+                .put((byte) (payload.length >>> 16))
+                .put((byte) (payload.length >>> 8))
+                .put((byte) payload.length)
+                .put((byte) type)
+                .put((byte) flags)
+                .putInt(streamId)
+                .put(payload);
+        out.write(frame.array());
+        out.flush();
+    }
+
+    private static Frame readFrame(DataInputStream in) throws IOException {
+        byte[] header = new byte[9];
+        in.readFully(header);
+        ByteBuffer buffer = ByteBuffer.wrap(header);
+        int length = ((buffer.get() & 0xFF) << 16) | ((buffer.get() & 0xFF) << 8) | (buffer.get() & 0xFF);
+        int type = buffer.get() & 0xFF;
+        int flags = buffer.get() & 0xFF;
+        int streamId = buffer.getInt() & 0x7FFFFFFF;
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame(type, flags, streamId, payload);
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Frame(int type, int flags, int streamId, byte[] payload) {
+    }
+}
@@ -45,6 +45,40 @@ class ChannelTest {
         }
     }
 
+    @Test
+    void testStalledWriteQueueClosesChannelAfterWriteTimeout() throws InterruptedException {
+        channel.setWriteTimeout(50);
+        channel.addToWrite(ByteBuffer.allocate(1024));
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(channel.isClosed(), "Output that never drains should hit the write timeout");
+    }
+
+    @Test
+    void testDrainedWriteQueueDoesNotTimeOut() throws InterruptedException {
+        channel.setWriteTimeout(50);
+        channel.addToWrite(ByteBuffer.allocate(16));
+        channel.removeFromWriteQueue();
+
+        Thread.sleep(150);
+        assertFalse(channel.isClosed());
+    }
+
+    @Test
+    void testUnansweredRequestClosesChannelAfterRequestTimeout() throws InterruptedException {
+        channel.setRequestTimeout(50);
+        eventLoop.execute(channel::requestStarted);
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (!channel.isClosed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(channel.isClosed(), "A request left unanswered should hit the request timeout");
+    }
+
     @Test
     void testWriteQueueSizeManagement() {
         // 测试写队列大小管理
@@ -194,6 +228,41 @@ class ChannelTest {
         assertTrue(backpressureChannel.isWritable(), "Channel should be writable again below high watermark");
     }
 
+    @Test
+    void testWritabilityChangesFireOnceAtEachWaterMark() throws InterruptedException {
+        TestSelectionKey key = new TestSelectionKey(TransportSelectionKey.OP_READ);
+        Channel backpressureChannel = new Channel(new TestSocketChannel(key), pipeline, eventLoop);
+        backpressureChannel.setWriteBufferWaterMarks(512, 1024);
+        java.util.List<Boolean> events = new java.util.concurrent.CopyOnWriteArrayList<>();
+        pipeline.addLast("probe", new ChannelHandler() {
+            @Override
+            public void channelWritabilityChanged(ChannelHandlerContext ctx) {
+                // The events are asynchronous, so the state may have flipped back by now
+                events.add(eventLoop.inEventLoop());
+            }
+        });
+
+        backpressureChannel.addToWrite(ByteBuffer.allocate(600));
+        assertTrue(backpressureChannel.isWritable());
+        backpressureChannel.addToWrite(ByteBuffer.allocate(500));
+        assertFalse(backpressureChannel.isWritable(), "Crossing the high water mark turns the channel unwritable");
+
+        // Bytes another thread is about to submit count as pending too
+        backpressureChannel.reservePendingWriteBytes(100);
+        backpressureChannel.removeFromWriteQueue();
+        assertEquals(600, backpressureChannel.getPendingWriteBytes());
+        assertFalse(backpressureChannel.isWritable(), "Still above the low water mark");
+        backpressureChannel.releasePendingWriteBytes(100);
+        assertTrue(backpressureChannel.isWritable(), "Draining to the low water mark makes it writable again");
+
+        long deadline = System.currentTimeMillis() + 2000;
+        while (events.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(50);
+        assertEquals(java.util.List.of(true, true), events, "One event per state change, fired on the event loop");
+    }
+
     @Test
     void testPendingWriteBytesAccounting() {
         ByteBuffer buffer = ByteBuffer.allocate(16);
@@ -4,8 +4,11 @@ import com.nowin.pipeline.Channel;
 import com.nowin.pipeline.ChannelHandlerContext;
 import com.nowin.pipeline.ChannelPipeline;
 import com.nowin.pipeline.handler.ChannelHandler;
+import com.nowin.transport.TransportChannel;
 import com.nowin.transport.TransportSelectionKey;
 import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.nio.NioEventLoop;
+import com.nowin.util.RefCountedBuffer;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
@@ -14,8 +17,10 @@ import java.net.SocketOption;
 import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicReference;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class HeadHandlerTest {
@@ -44,6 +49,218 @@ class HeadHandlerTest {
         assertNull(propagated.get(), "Client disconnect should not be propagated as a pipeline error");
     }
 
+    @Test
+    void gatheredBuffersAreWrittenWithOneCall() {
+        GatheringSocketChannel socket = new GatheringSocketChannel(Integer.MAX_VALUE);
+        ChannelPipeline pipeline = new ChannelPipeline();
+        Channel channel = new Channel(socket, pipeline, null);
+        pipeline.setChannel(channel);
+
+        var future = pipeline.write(new ByteBuffer[] {
+                ByteBuffer.wrap(new byte[] {1, 2, 3}), ByteBuffer.wrap(new byte[] {4, 5, 6, 7}).asReadOnlyBuffer()});
+
+        assertTrue(future.isSuccess());
+        assertEquals(1, socket.gatheringWrites);
+        assertEquals(7, socket.written);
+        assertFalse(channel.hasPendingWrites());
+    }
+
+    @Test
+    void partiallyWrittenGatherQueuesRemainderInOrder() {
+        NioEventLoop eventLoop = new NioEventLoop(null);
+        eventLoop.start();
+        try {
+            GatheringSocketChannel socket = new GatheringSocketChannel(5);
+            ChannelPipeline pipeline = new ChannelPipeline();
+            Channel channel = new Channel(socket, pipeline, eventLoop);
+            pipeline.setChannel(channel);
+            ByteBuffer head = ByteBuffer.wrap(new byte[] {1, 2, 3});
+            ByteBuffer body = ByteBuffer.wrap(new byte[] {4, 5, 6, 7});
+
+            pipeline.write(new ByteBuffer[] {head, body});
+
+            assertEquals(1, channel.getWriteQueue().size());
+            assertSame(body, channel.getWriteQueue().peek());
+            assertEquals(2, body.remaining());
+            assertEquals(2, channel.getPendingWriteBytes());
+            assertTrue((socket.key.interestOps() & TransportSelectionKey.OP_WRITE) != 0);
+
+            // later writes must not overtake the queued remainder
+            pipeline.write(ByteBuffer.wrap(new byte[] {8}));
+            assertEquals(2, channel.getWriteQueue().size());
+            assertEquals(5, socket.written);
+        } finally {
+            eventLoop.shutdown();
+        }
+    }
+
+    @Test
+    void sharedBufferIsReleasedOnceWritten() {
+        GatheringSocketChannel socket = new GatheringSocketChannel(Integer.MAX_VALUE);
+        ChannelPipeline pipeline = new ChannelPipeline();
+        Channel channel = new Channel(socket, pipeline, null);
+        pipeline.setChannel(channel);
+        RefCountedBuffer cached = RefCountedBuffer.copyOf(new byte[] {4, 5, 6, 7});
+
+        var future = pipeline.write(new Object[] {ByteBuffer.wrap(new byte[] {1, 2, 3}), cached.retainedDuplicate()});
+
+        assertTrue(future.isSuccess());
+        assertEquals(1, socket.gatheringWrites);
+        assertEquals(7, socket.written);
+        assertEquals(1, cached.refCnt(), "The write path must drop the reference it was given");
+        assertEquals(4, cached.remaining(), "Writing a duplicate must not consume the cached view");
+    }
+
+    @Test
+    void partiallyWrittenSharedBufferStaysReferencedWhileQueued() {
+        NioEventLoop eventLoop = new NioEventLoop(null);
+        eventLoop.start();
+        try {
+            GatheringSocketChannel socket = new GatheringSocketChannel(2);
+            ChannelPipeline pipeline = new ChannelPipeline();
+            Channel channel = new Channel(socket, pipeline, eventLoop);
+            pipeline.setChannel(channel);
+            RefCountedBuffer cached = RefCountedBuffer.copyOf(new byte[] {1, 2, 3, 4});
+            RefCountedBuffer view = cached.retainedDuplicate();
+
+            pipeline.write(view);
+
+            assertSame(view, channel.getWriteQueue().peek());
+            assertEquals(2, view.remaining());
+            assertEquals(2, channel.getPendingWriteBytes());
+            assertEquals(2, cached.refCnt());
+
+            channel.close();
+            assertEquals(1, cached.refCnt(), "Closing the channel releases queued shared buffers");
+        } finally {
+            eventLoop.shutdown();
+        }
+    }
+
+    private static final class GatheringSocketChannel implements TransportSocketChannel {
+        private final KeyStub key = new KeyStub();
+        private long budget;
+        private int gatheringWrites;
+        private long written;
+
+        private GatheringSocketChannel(long budget) {
+            this.budget = budget;
+        }
+
+        @Override
+        public TransportSelectionKey selectionKey() {
+            return key;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            return 0;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            return (int) write(new ByteBuffer[] {src}, 0, 1);
+        }
+
+        @Override
+        public long write(ByteBuffer[] srcs, int offset, int length) {
+            gatheringWrites++;
+            long total = 0;
+            for (int i = offset; i < offset + length && budget > 0; i++) {
+                int n = (int) Math.min(srcs[i].remaining(), budget);
+                srcs[i].position(srcs[i].position() + n);
+                budget -= n;
+                total += n;
+            }
+            written += total;
+            return total;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return new InetSocketAddress("127.0.0.1", 8080);
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return new InetSocketAddress("127.0.0.1", 0);
+        }
+
+        @Override
+        public <T> void setOption(SocketOption<T> option, T value) {
+        }
+
+        @Override
+        public <T> T getOption(SocketOption<T> option) {
+            return null;
+        }
+
+        @Override
+        public void configureBlocking(boolean block) {
+        }
+    }
+
+    private static final class KeyStub implements TransportSelectionKey {
+        private int ops = OP_READ;
+
+        @Override
+        public TransportChannel channel() {
+            return null;
+        }
+
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public int interestOps() {
+            return ops;
+        }
+
+        @Override
+        public void interestOps(int ops) {
+            this.ops = ops;
+        }
+
+        @Override
+        public boolean isReadable() {
+            return (ops & OP_READ) != 0;
+        }
+
+        @Override
+        public boolean isWritable() {
+            return (ops & OP_WRITE) != 0;
+        }
+
+        @Override
+        public boolean isAcceptable() {
+            return false;
+        }
+
+        @Override
+        public Object attachment() {
+            return null;
+        }
+
+        @Override
+        public void attach(Object attachment) {
+        }
+    }
+
     private static final class DisconnectingSocketChannel implements TransportSocketChannel {
         @Override
         public TransportSelectionKey selectionKey() {
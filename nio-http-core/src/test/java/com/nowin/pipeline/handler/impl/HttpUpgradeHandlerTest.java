@@ -0,0 +1,85 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+import com.nowin.http2.Http2Settings;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HttpUpgradeHandlerTest {
+
+    @Test
+    void testAcceptKeyFromRfc6455() {
+        assertEquals("s3pPLMBiTxaQ9kYGzzhZRbK+xOo=", HttpUpgradeHandler.acceptKey("dGhlIHNhbXBsZSBub25jZQ=="));
+    }
+
+    @Test
+    void testDeflateOffers() {
+        assertTrue(HttpUpgradeHandler.acceptsDeflate("permessage-deflate"));
+        assertTrue(HttpUpgradeHandler.acceptsDeflate("permessage-deflate; client_max_window_bits"));
+        assertTrue(HttpUpgradeHandler.acceptsDeflate("x-webkit-deflate-frame, permessage-deflate; server_max_window_bits=15"));
+        assertTrue(HttpUpgradeHandler.acceptsDeflate(
+                "permessage-deflate; server_max_window_bits=10, permessage-deflate"), "falls back to the second offer");
+        assertFalse(HttpUpgradeHandler.acceptsDeflate("permessage-deflate; server_max_window_bits=10"));
+        assertFalse(HttpUpgradeHandler.acceptsDeflate("permessage-deflate; unknown_param"));
+        assertFalse(HttpUpgradeHandler.acceptsDeflate(""));
+    }
+
+    @Test
+    void testHandshakeRejectsPost() {
+        HttpRequest request = new HttpRequest();
+        request.setMethod("POST");
+        request.setProtocolVersion("HTTP/1.1");
+        HttpResponse response = new HttpResponse();
+
+        assertFalse(new HttpUpgradeHandler().handshake(request, response));
+        assertEquals(400, response.getStatusCode());
+    }
+
+    @Test
+    void testH2cUpgradeNeedsValidSettingsHeader() {
+        HttpUpgradeHandler handler = new HttpUpgradeHandler(1024, 0, false, new Http2Settings(), 0);
+        HttpRequest request = new HttpRequest();
+        request.setMethod("GET");
+        request.setProtocolVersion("HTTP/1.1");
+        request.setHeader("Upgrade", "h2c");
+        request.setHeader("Connection", "Upgrade, HTTP2-Settings");
+        request.setHeader("HTTP2-Settings", "not base64!");
+
+        assertFalse(handler.upgradeToHttp2(null, request));
+        assertFalse(new HttpUpgradeHandler().upgradeToHttp2(null, request), "HTTP/2 disabled");
+    }
+
+    @Test
+    void testHandshakeRejectsHttp2Streams() {
+        HttpRequest request = new HttpRequest();
+        request.setMethod("GET");
+        request.setProtocolVersion("HTTP/2.0");
+        request.setStreamId(3);
+        HttpResponse response = new HttpResponse();
+
+        assertFalse(new HttpUpgradeHandler().handshake(request, response));
+        assertEquals(400, response.getStatusCode());
+    }
+
+    @Test
+    void testUnmaskMatchesBytewiseXor() {
+        byte[] data = new byte[37];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        int mask = 0x1A2B3C4D;
+        ByteBuffer buffer = ByteBuffer.wrap(data.clone());
+
+        WebSocketFrameCodec.unmask(buffer, 3, 30, mask);
+
+        byte[] key = ByteBuffer.allocate(4).putInt(mask).array();
+        for (int i = 0; i < data.length; i++) {
+            byte expected = i >= 3 && i < 33 ? (byte) (data[i] ^ key[(i - 3) & 3]) : data[i];
+            assertEquals(expected, buffer.get(i), "byte " + i);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.nowin.pipeline.handler.impl;
+
+import com.nowin.http.HttpRequest;
+import com.nowin.http.HttpResponse;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipelinedResponseQueueTest {
+
+    @Test
+    void testReleasesOnlyInSequenceOrder() {
+        PipelinedResponseQueue queue = new PipelinedResponseQueue(4);
+        HttpResponse second = new HttpResponse();
+        HttpResponse first = new HttpResponse();
+
+        queue.offer(1, new HttpRequest(), second);
+        assertNull(queue.poll(), "Response 1 must wait for response 0");
+
+        queue.offer(0, new HttpRequest(), first);
+        assertSame(first, queue.poll().response());
+        assertSame(second, queue.poll().response());
+        assertNull(queue.poll());
+        assertEquals(2, queue.nextSequence());
+    }
+
+    @Test
+    void testGrowsWhenResponsesRunFarAhead() {
+        PipelinedResponseQueue queue = new PipelinedResponseQueue(2);
+        for (int i = 10; i >= 1; i--) {
+            queue.offer(i, new HttpRequest(), new HttpResponse());
+        }
+        assertNull(queue.poll());
+        assertEquals(10, queue.size());
+
+        queue.offer(0, new HttpRequest(), new HttpResponse());
+        for (long expected = 0; expected <= 10; expected++) {
+            assertEquals(expected, queue.poll().sequence());
+        }
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    void testRejectsDuplicateAndStaleSequences() {
+        PipelinedResponseQueue queue = new PipelinedResponseQueue(4);
+        queue.offer(1, new HttpRequest(), new HttpResponse());
+        assertThrows(IllegalStateException.class, () -> queue.offer(1, new HttpRequest(), new HttpResponse()));
+
+        queue.offer(0, new HttpRequest(), new HttpResponse());
+        queue.poll();
+        assertThrows(IllegalStateException.class, () -> queue.offer(0, new HttpRequest(), new HttpResponse()));
+    }
+
+    @Test
+    void testDrainReturnsParkedResponses() {
+        PipelinedResponseQueue queue = new PipelinedResponseQueue(4);
+        queue.offer(2, new HttpRequest(), new HttpResponse());
+        queue.offer(3, new HttpRequest(), new HttpResponse());
+
+        assertEquals(2, queue.drain().size());
+        assertEquals(0, queue.size());
+    }
+}
@@ -0,0 +1,99 @@
+package com.nowin.server;
+
+import com.nowin.ServerBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AcceptIntegrationTest {
+
+    private NioHttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void testBurstOfConnectionsIsAcceptedInBatches() throws Exception {
+        int port = startServer(new ServerConfig().setAcceptBatchSize(4));
+
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 20; i++) {
+                sockets.add(new Socket("localhost", port));
+            }
+            for (Socket socket : sockets) {
+                assertTrue(exchange(socket).endsWith("pong"));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+    }
+
+    @Test
+    void testAcceptRateLimitSpacesOutNewConnections() throws Exception {
+        int port = startServer(new ServerConfig().setAcceptRateLimit(10).setAcceptRateBurst(1));
+
+        long start = System.nanoTime();
+        List<Socket> sockets = new ArrayList<>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                sockets.add(new Socket("localhost", port));
+            }
+            for (Socket socket : sockets) {
+                assertTrue(exchange(socket).endsWith("pong"));
+            }
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        // One connection up front, then one every 100ms
+        assertTrue(elapsedMillis >= 250, "Connections were accepted too quickly: " + elapsedMillis + "ms");
+    }
+
+    private int startServer(ServerConfig config) throws Exception {
+        int port = findAvailablePort();
+        server = ServerBootstrap.create()
+                .config(config.setPort(port))
+                .addRoute("/ping", (request, response) -> response.setBody("pong"))
+                .startSync();
+        return port;
+    }
+
+    private static String exchange(Socket socket) throws IOException {
+        socket.setSoTimeout(5000);
+        socket.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                .getBytes(StandardCharsets.US_ASCII));
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            received.write(buffer, 0, read);
+        }
+        return received.toString(StandardCharsets.US_ASCII);
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.nowin.server;
+
+import com.nowin.ServerBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PipeliningIntegrationTest {
+
+    private NioHttpServer server;
+    private ExecutorService executor;
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.shutdown();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testResponsesFollowRequestOrderWhenCompletedOutOfOrder() throws Exception {
+        startServer(new ServerConfig());
+
+        String response = sendPipelined(
+                "GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "GET /echo?n=1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "GET /echo?n=2 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n");
+
+        int slow = response.indexOf("slow-done");
+        int first = response.indexOf("echo-1");
+        int second = response.indexOf("echo-2");
+        assertTrue(slow >= 0 && first >= 0 && second >= 0, "All three responses expected: " + response);
+        assertTrue(slow < first && first < second, "Responses must follow request order: " + response);
+    }
+
+    @Test
+    void testRequestsBeyondPipelineDepthAreServedAfterEarlierResponses() throws Exception {
+        startServer(new ServerConfig().setMaxPipelinedRequests(1));
+
+        StringBuilder requests = new StringBuilder();
+        for (int i = 1; i <= 4; i++) {
+            requests.append("GET /echo?n=").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n");
+            if (i == 4) {
+                requests.append("Connection: close\r\n");
+            }
+            requests.append("\r\n");
+        }
+        String response = sendPipelined(requests.toString());
+
+        int previous = -1;
+        for (int i = 1; i <= 4; i++) {
+            int index = response.indexOf("echo-" + i);
+            assertTrue(index > previous, "Response " + i + " missing or out of order: " + response);
+            previous = index;
+        }
+    }
+
+    @Test
+    void testPipelinedRequestsFollowedByHalfCloseStillReceiveAllResponses() throws Exception {
+        startServer(new ServerConfig());
+
+        String response = sendPipelined(
+                "GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "GET /echo?n=1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                        + "GET /echo?n=2 HTTP/1.1\r\nHost: localhost\r\n\r\n", true);
+
+        int slow = response.indexOf("slow-done");
+        int first = response.indexOf("echo-1");
+        int second = response.indexOf("echo-2");
+        assertTrue(slow >= 0 && first >= 0 && second >= 0, "All three responses expected: " + response);
+        assertTrue(slow < first && first < second, "Responses must follow request order: " + response);
+    }
+
+    @Test
+    void testSlowRequestFollowedByHalfCloseIsAnswered() throws Exception {
+        startServer(new ServerConfig());
+
+        String response = sendPipelined("GET /slow HTTP/1.1\r\nHost: localhost\r\n\r\n", true);
+
+        assertTrue(response.startsWith("HTTP/1.1 200"), "Response expected: " + response);
+        assertTrue(response.endsWith("slow-done"), "Complete body expected: " + response);
+    }
+
+    private void startServer(ServerConfig config) throws Exception {
+        port = findAvailablePort();
+        executor = Executors.newFixedThreadPool(4);
+        server = ServerBootstrap.create()
+                .config(config.setPort(port))
+                .applicationExecutor(executor)
+                .addRoute("/slow", (request, response) -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    response.setBody("slow-done");
+                })
+                .addRoute("/echo", (request, response) ->
+                        response.setBody("echo-" + request.getQueryParameter("n").orElse("?")))
+                .start();
+        for (int i = 0; i < 50; i++) {
+            Thread.sleep(100);
+            try (Socket testSocket = new Socket("localhost", port)) {
+                break;
+            } catch (IOException e) {
+                // not ready yet
+            }
+        }
+    }
+
+    private String sendPipelined(String requests) throws IOException {
+        return sendPipelined(requests, false);
+    }
+
+    /**
+     * Sends {@code requests} in one write and reads until the server closes,
+     * optionally shutting down the output side right after the write.
+     */
+    private String sendPipelined(String requests, boolean halfClose) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            OutputStream out = socket.getOutputStream();
+            out.write(requests.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+            if (halfClose) {
+                socket.shutdownOutput();
+            }
+
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                received.write(buffer, 0, read);
+            }
+            return received.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private int findAvailablePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.nowin.server;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ResourceCacheTest {
+
+    private static ResourceCache<String, byte[]> bytesCache(long maximumBytes) {
+        return new ResourceCache<>(maximumBytes, (key, value) -> value.length);
+    }
+
+    @Test
+    void testWeightStaysWithinBudget() {
+        ResourceCache<String, byte[]> cache = bytesCache(10_000);
+        for (int i = 0; i < 100; i++) {
+            cache.put("file-" + i, new byte[1000]);
+            assertTrue(cache.getWeightedSize() <= 10_000, "weighted size " + cache.getWeightedSize());
+        }
+        assertTrue(cache.size() <= 10);
+        assertTrue(cache.getEvictionCount() >= 90);
+        assertEquals(cache.getEvictionCount() * 1000, cache.getEvictionWeight());
+    }
+
+    @Test
+    void testHotEntriesSurviveScan() {
+        ResourceCache<String, byte[]> cache = bytesCache(100_000);
+        for (int i = 0; i < 50; i++) {
+            cache.put("hot-" + i, new byte[1000]);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertNotNull(cache.get("hot-" + i));
+            }
+        }
+        // A crawl touching each of many files once
+        for (int i = 0; i < 10_000; i++) {
+            String key = "crawl-" + i;
+            if (cache.get(key) == null) {
+                cache.put(key, new byte[1000]);
+            }
+        }
+
+        int hotHits = 0;
+        for (int i = 0; i < 50; i++) {
+            if (cache.get("hot-" + i) != null) {
+                hotHits++;
+            }
+        }
+        assertTrue(hotHits >= 45, "hot entries kept: " + hotHits);
+        assertTrue(cache.getWeightedSize() <= 100_000);
+    }
+
+    @Test
+    void testRepeatedlyRequestedEntryIsAdmitted() {
+        ResourceCache<String, byte[]> cache = bytesCache(10_000);
+        for (int i = 0; i < 10; i++) {
+            cache.put("old-" + i, new byte[1000]);
+        }
+        for (int i = 0; i < 5; i++) {
+            if (cache.get("new") == null) {
+                cache.put("new", new byte[1000]);
+            }
+        }
+        assertNotNull(cache.get("new"));
+    }
+
+    @Test
+    void testReplacingAnEntryReweighsIt() {
+        ResourceCache<String, byte[]> cache = bytesCache(10_000);
+        cache.put("a", new byte[1000]);
+        cache.put("a", new byte[3000]);
+
+        assertEquals(1, cache.size());
+        assertEquals(3000, cache.getWeightedSize());
+        assertEquals(3000, cache.get("a").length);
+
+        cache.remove("a");
+        assertEquals(0, cache.getWeightedSize());
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    void testOversizedEntryIsNotCached() {
+        ResourceCache<String, byte[]> cache = bytesCache(1000);
+        cache.put("small", new byte[10]);
+        cache.put("big", new byte[1001]);
+
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("small"));
+        assertEquals(10, cache.getWeightedSize());
+    }
+
+    @Test
+    void testExpiredEntriesAreDroppedOnRead() throws Exception {
+        ResourceCache<String, byte[]> cache = new ResourceCache<>(1000, (key, value) -> value.length, 20);
+        cache.put("a", new byte[10]);
+        cache.put("b", new byte[10], 0);
+        Thread.sleep(50);
+
+        assertFalse(cache.containsKey("a"));
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertEquals(10, cache.getWeightedSize());
+    }
+
+    @Test
+    void testHitAndMissCounts() {
+        ResourceCache<String, byte[]> cache = bytesCache(1000);
+        cache.put("a", new byte[1]);
+        cache.get("a");
+        cache.get("a");
+        cache.get("missing");
+
+        assertEquals(2, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getWeightedSize());
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    void testEntryCountConstructorBoundsEntriesAndAppliesTtl() throws Exception {
+        ResourceCache<String, byte[]> cache = new ResourceCache<>(20, 3);
+        for (int i = 0; i < 10; i++) {
+            cache.put("key-" + i, new byte[1000]);
+        }
+        assertEquals(3, cache.size());
+        assertEquals(3, cache.getWeightedSize());
+
+        Thread.sleep(50);
+        for (int i = 0; i < 10; i++) {
+            assertNull(cache.get("key-" + i));
+        }
+    }
+
+    @Test
+    void testConcurrentReadsAndWrites() throws Exception {
+        ResourceCache<Integer, byte[]> cache = new ResourceCache<>(50_000, (key, value) -> value.length);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 20_000; i++) {
+                        int key = random.nextInt(200);
+                        byte[] value = cache.get(key);
+                        if (value == null) {
+                            cache.put(key, new byte[500 + key]);
+                        } else {
+                            assertEquals(500 + key, value.length);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        assertTrue(cache.getWeightedSize() <= 50_000);
+        long sum = 0;
+        for (int key = 0; key < 200; key++) {
+            if (cache.containsKey(key)) {
+                sum += 500 + key;
+            }
+        }
+        assertEquals(sum, cache.getWeightedSize(), "weights match the entries present");
+        assertTrue(cache.getHitCount() > 0);
+    }
+}
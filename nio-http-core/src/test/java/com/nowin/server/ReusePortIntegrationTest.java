@@ -0,0 +1,87 @@
+package com.nowin.server;
+
+import com.nowin.ServerBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReusePortIntegrationTest {
+
+    private NioHttpServer server;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void testServesConnectionsWithPerLoopAcceptors() throws Exception {
+        int port = findAvailablePort();
+        server = ServerBootstrap.create()
+                .config(new ServerConfig().setPort(port).setWorkerThreads(3).setReusePort(true))
+                .addRoute("/ping", (request, response) -> response.setBody("pong"))
+                .startSync();
+
+        assertTrue(server.isBound());
+        assertEquals(port, server.getBoundAddress().getPort());
+        for (int i = 0; i < 12; i++) {
+            String response = get(port, "/ping");
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    @Test
+    void testShutdownReleasesEveryListeningSocket() throws Exception {
+        int port = findAvailablePort();
+        server = ServerBootstrap.create()
+                .config(new ServerConfig().setPort(port).setWorkerThreads(2).setReusePort(true))
+                .addRoute("/ping", (request, response) -> response.setBody("pong"))
+                .startSync();
+        assertTrue(get(port, "/ping").endsWith("pong"));
+
+        server.shutdown().join();
+        server = null;
+
+        assertThrows(IOException.class, () -> {
+            try (Socket socket = new Socket("localhost", port)) {
+                socket.setSoTimeout(1000);
+                socket.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+                if (socket.getInputStream().read() == -1) {
+                    throw new IOException("closed");
+                }
+            }
+        });
+    }
+
+    private static String get(int port, String path) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                received.write(buffer, 0, read);
+            }
+            return received.toString(StandardCharsets.US_ASCII);
+        }
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
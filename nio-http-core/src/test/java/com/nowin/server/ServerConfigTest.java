@@ -18,6 +18,13 @@ public class ServerConfigTest {
         assertEquals(10L * 1024 * 1024, config.getMaxBodySize());
         assertEquals(32L * 1024 * 1024, config.getWriteBufferLowWaterMark());
         assertEquals(64L * 1024 * 1024, config.getWriteBufferHighWaterMark());
+        assertEquals(16, config.getMaxPipelinedRequests());
+        assertEquals(0, config.getWriteTimeout());
+        assertEquals(0, config.getRequestTimeout());
+        assertFalse(config.isReusePort());
+        assertEquals(64, config.getAcceptBatchSize());
+        assertEquals(0, config.getAcceptRateLimit());
+        assertEquals("nio", config.getTransport());
     }
 
     @Test
@@ -67,6 +74,50 @@ public class ServerConfigTest {
         assertTrue(highEx.getMessage().contains("high water mark"));
     }
 
+    @Test
+    void testInvalidMaxPipelinedRequestsThrows() {
+        ServerConfig config = new ServerConfig().setMaxPipelinedRequests(0);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, config::validate);
+        assertTrue(ex.getMessage().contains("Max pipelined requests"));
+    }
+
+    @Test
+    void testNegativeTimeoutsThrow() {
+        IllegalArgumentException write = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setWriteTimeout(-1)::validate);
+        assertTrue(write.getMessage().contains("Write timeout"));
+        IllegalArgumentException request = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setRequestTimeout(-1)::validate);
+        assertTrue(request.getMessage().contains("Request timeout"));
+    }
+
+    @Test
+    void testInvalidAcceptSettingsThrow() {
+        IllegalArgumentException batch = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setAcceptBatchSize(0)::validate);
+        assertTrue(batch.getMessage().contains("Accept batch size"));
+        IllegalArgumentException rate = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setAcceptRateLimit(-1)::validate);
+        assertTrue(rate.getMessage().contains("Accept rate limit"));
+    }
+
+    @Test
+    void testInvalidHttp2SettingsThrow() {
+        IllegalArgumentException streams = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setHttp2MaxConcurrentStreams(0)::validate);
+        assertTrue(streams.getMessage().contains("HTTP/2 max concurrent streams"));
+        IllegalArgumentException window = assertThrows(IllegalArgumentException.class,
+                new ServerConfig().setHttp2InitialWindowSize(0)::validate);
+        assertTrue(window.getMessage().contains("HTTP/2 initial window size"));
+    }
+
+    @Test
+    void testBlankTransportThrows() {
+        ServerConfig config = new ServerConfig().setTransport(" ");
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, config::validate);
+        assertTrue(ex.getMessage().contains("Transport"));
+    }
+
     @Test
     void testCopyCreatesIndependentInstance() {
         ServerConfig original = new ServerConfig();
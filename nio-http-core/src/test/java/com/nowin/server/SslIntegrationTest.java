@@ -2,6 +2,7 @@ package com.nowin.server;
 
 import com.nowin.ServerBootstrap;
 import com.nowin.handler.HttpHandler;
+import com.nowin.http.FileChannelBody;
 import com.nowin.http.HttpRequest;
 import com.nowin.http.HttpResponse;
 import org.junit.jupiter.api.AfterEach;
@@ -10,23 +11,38 @@ import org.junit.jupiter.api.Test;
 
 import javax.net.ssl.*;
 import java.io.*;
+import java.net.URI;
+import java.net.http.HttpClient;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 public class SslIntegrationTest {
 
+    private static final byte[] LARGE_BODY = new byte[300_000];
+
+    static {
+        new java.util.Random(42).nextBytes(LARGE_BODY);
+    }
+
     private NioHttpServer server;
     private int port;
     private Path keystorePath;
+    private Path largeFile;
 
     @BeforeEach
     void setUp() throws Exception {
         port = findAvailablePort();
         keystorePath = generateTestKeystore();
+        largeFile = keystorePath.resolveSibling("large.bin");
+        Files.write(largeFile, LARGE_BODY);
         SslContext sslContext = new SslContext(keystorePath.toString(), "testpass");
         server = ServerBootstrap.create()
                 .port(port)
@@ -37,6 +53,25 @@ public class SslIntegrationTest {
                         response.setBody("Hello Secure World");
                     }
                 })
+                .addRoute("/large", new HttpHandler() {
+                    @Override
+                    public void handle(HttpRequest request, HttpResponse response) {
+                        response.setBody(LARGE_BODY);
+                    }
+                })
+                .addRoute("/file", new HttpHandler() {
+                    @Override
+                    public void handle(HttpRequest request, HttpResponse response) throws IOException {
+                        response.setBody(FileChannelBody.open(largeFile, 0, LARGE_BODY.length));
+                    }
+                })
+                .addRoute("/upload", new HttpHandler() {
+                    @Override
+                    public void handle(HttpRequest request, HttpResponse response) {
+                        byte[] body = request.getBody();
+                        response.setBody("received " + (body != null ? java.util.Arrays.hashCode(body) : 0));
+                    }
+                })
                 .start();
         // Wait for server to be ready
         for (int i = 0; i < 50; i++) {
@@ -57,25 +92,18 @@ public class SslIntegrationTest {
         if (keystorePath != null) {
             Files.deleteIfExists(keystorePath);
         }
+        if (largeFile != null) {
+            Files.deleteIfExists(largeFile);
+        }
     }
 
     @Test
     void testSslRequest() throws Exception {
-        // Create a trust-all SSL context for testing
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
-            @Override
-            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
-            @Override
-            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
-            @Override
-            public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
-        }}, new java.security.SecureRandom());
-
-        SSLSocketFactory factory = sslContext.getSocketFactory();
+        SSLSocketFactory factory = trustAllContext().getSocketFactory();
         try (SSLSocket socket = (SSLSocket) factory.createSocket("localhost", port)) {
             socket.setSoTimeout(5000);
             socket.startHandshake();
+            assertEquals("", socket.getApplicationProtocol(), "no ALPN offered, none selected");
 
             OutputStream out = socket.getOutputStream();
             String request = "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n";
@@ -92,6 +120,119 @@ public class SslIntegrationTest {
         }
     }
 
+    @Test
+    void testAlpnNegotiatesHttp2() throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .sslContext(trustAllContext())
+                .version(HttpClient.Version.HTTP_2)
+                .build();
+        java.net.http.HttpRequest request = java.net.http.HttpRequest.newBuilder(
+                URI.create("https://localhost:" + port + "/hello")).build();
+
+        List<CompletableFuture<java.net.http.HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            responses.add(client.sendAsync(request, java.net.http.HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<java.net.http.HttpResponse<String>> future : responses) {
+            java.net.http.HttpResponse<String> response = future.get(10, TimeUnit.SECONDS);
+            assertEquals(HttpClient.Version.HTTP_2, response.version());
+            assertEquals(200, response.statusCode());
+            assertEquals("Hello Secure World", response.body());
+        }
+    }
+
+    @Test
+    void testAlpnFallsBackToHttp11() throws Exception {
+        SSLSocketFactory factory = trustAllContext().getSocketFactory();
+        try (SSLSocket socket = (SSLSocket) factory.createSocket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            SSLParameters parameters = socket.getSSLParameters();
+            parameters.setApplicationProtocols(new String[] {"spdy/3", "http/1.1"});
+            socket.setSSLParameters(parameters);
+            socket.startHandshake();
+            assertEquals("http/1.1", socket.getApplicationProtocol());
+
+            OutputStream out = socket.getOutputStream();
+            out.write("GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+
+            byte[] buffer = new byte[1024];
+            int read = socket.getInputStream().read(buffer);
+            assertTrue(read > 0, "Should read response");
+            assertTrue(new String(buffer, 0, read, StandardCharsets.US_ASCII).startsWith("HTTP/1.1 200 OK"));
+        }
+    }
+
+    @Test
+    void testBodiesSpanningManyRecords() throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .sslContext(trustAllContext())
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        byte[] upload = new byte[500_000];
+        new java.util.Random(7).nextBytes(upload);
+
+        java.net.http.HttpResponse<byte[]> large = client.send(java.net.http.HttpRequest.newBuilder(
+                URI.create("https://localhost:" + port + "/large")).build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+        java.net.http.HttpResponse<String> posted = client.send(java.net.http.HttpRequest.newBuilder(
+                        URI.create("https://localhost:" + port + "/upload"))
+                .POST(java.net.http.HttpRequest.BodyPublishers.ofByteArray(upload)).build(),
+                java.net.http.HttpResponse.BodyHandlers.ofString());
+
+        assertArrayEquals(LARGE_BODY, large.body());
+        assertEquals("received " + java.util.Arrays.hashCode(upload), posted.body());
+    }
+
+    @Test
+    void testFileBodiesAreEncrypted() throws Exception {
+        for (HttpClient.Version version : HttpClient.Version.values()) {
+            HttpClient client = HttpClient.newBuilder()
+                    .sslContext(trustAllContext())
+                    .version(version)
+                    .build();
+
+            java.net.http.HttpResponse<byte[]> response = client.send(java.net.http.HttpRequest.newBuilder(
+                    URI.create("https://localhost:" + port + "/file")).build(), java.net.http.HttpResponse.BodyHandlers.ofByteArray());
+
+            assertEquals(version, response.version());
+            assertArrayEquals(LARGE_BODY, response.body(), version.toString());
+        }
+    }
+
+    @Test
+    void testHandshakesAreCounted() throws Exception {
+        MetricsCollector metrics = server.getMetricsCollector();
+        long failuresBefore = metrics.getTlsHandshakeFailures();
+
+        for (int i = 0; i < 3; i++) {
+            try (SSLSocket socket = (SSLSocket) trustAllContext().getSocketFactory().createSocket("localhost", port)) {
+                socket.setSoTimeout(5000);
+                socket.startHandshake();
+                OutputStream out = socket.getOutputStream();
+                out.write("GET /hello HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                assertTrue(new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII)
+                        .contains("Hello Secure World"));
+            }
+        }
+        try (java.net.Socket socket = new java.net.Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertEquals(-1, socket.getInputStream().read(), "not a TLS record");
+        }
+
+        assertTrue(metrics.getTlsHandshakes() >= 3, "handshakes: " + metrics.getTlsHandshakes());
+        assertTrue(metrics.getAverageTlsHandshakeTime() > 0);
+        assertTrue(metrics.getMaxTlsHandshakeTime() >= metrics.getAverageTlsHandshakeTime());
+        long deadline = System.currentTimeMillis() + 5000;
+        while (metrics.getTlsHandshakeFailures() == failuresBefore && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(failuresBefore + 1, metrics.getTlsHandshakeFailures());
+    }
+
     @Test
     void testPlainHttpToSslPort() throws Exception {
         // Plain HTTP to SSL port should fail handshake or get no valid HTTP response
@@ -110,6 +251,19 @@ public class SslIntegrationTest {
         }
     }
 
+    private static SSLContext trustAllContext() throws Exception {
+        SSLContext sslContext = SSLContext.getInstance("TLS");
+        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+            @Override
+            public void checkClientTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public void checkServerTrusted(X509Certificate[] chain, String authType) {}
+            @Override
+            public X509Certificate[] getAcceptedIssuers() { return new X509Certificate[0]; }
+        }}, new java.security.SecureRandom());
+        return sslContext;
+    }
+
     private int findAvailablePort() throws IOException {
         try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
             return socket.getLocalPort();
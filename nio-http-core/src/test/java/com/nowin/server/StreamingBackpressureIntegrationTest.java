@@ -0,0 +1,164 @@
+package com.nowin.server;
+
+import com.nowin.HttpStream;
+import com.nowin.ServerBootstrap;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StreamingBackpressureIntegrationTest {
+
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int CHUNKS = 1024;
+
+    private NioHttpServer server;
+    private int port;
+    private final AtomicBoolean sawUnwritable = new AtomicBoolean();
+    private final AtomicReference<HttpStream> finishedStream = new AtomicReference<>();
+    private final CountDownLatch producerDone = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.shutdown();
+        }
+    }
+
+    @Test
+    void testBlockingWritesParkWhileTheClientIsSlow() throws Exception {
+        startServer();
+
+        byte[] body = readStream("/blocking", 500);
+        assertBody(body);
+        assertTrue(sawUnwritable.get(), "a slow reader should have made the stream unwritable");
+    }
+
+    @Test
+    void testAsyncWritesDeliverEveryChunkInOrder() throws Exception {
+        startServer();
+
+        byte[] body = readStream("/async", 500);
+        assertBody(body);
+        assertTrue(sawUnwritable.get(), "a slow reader should have made the stream unwritable");
+        assertTrue(producerDone.await(5, TimeUnit.SECONDS));
+
+        CompletionStage<Void> late = finishedStream.get().writeAsync("late".getBytes(StandardCharsets.US_ASCII));
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> late.toCompletableFuture().get(5, TimeUnit.SECONDS));
+        assertInstanceOf(IOException.class, failure.getCause());
+    }
+
+    private void startServer() throws Exception {
+        port = findAvailablePort();
+        server = ServerBootstrap.create()
+                .config(new ServerConfig()
+                        .setPort(port)
+                        .setWriteBufferLowWaterMark(32 * 1024)
+                        .setWriteBufferHighWaterMark(128 * 1024))
+                .addRoute("/blocking", (request, response) -> response.setStreamingHandler(stream -> {
+                    for (int i = 0; i < CHUNKS; i++) {
+                        if (!stream.isWritable()) {
+                            sawUnwritable.set(true);
+                        }
+                        stream.write(chunk(i));
+                    }
+                }))
+                .addRoute("/async", (request, response) -> response.setStreamingHandler(stream -> {
+                    CompletionStage<Void> last = CompletableFuture.completedFuture(null);
+                    for (int i = 0; i < CHUNKS; i++) {
+                        if (!stream.isWritable()) {
+                            sawUnwritable.set(true);
+                            // Wait for what is already queued instead of piling on more
+                            last.toCompletableFuture().get(10, TimeUnit.SECONDS);
+                        }
+                        last = stream.writeAsync(chunk(i));
+                    }
+                    last.toCompletableFuture().get(10, TimeUnit.SECONDS);
+                    finishedStream.set(stream);
+                    producerDone.countDown();
+                }))
+                .startSync();
+    }
+
+    private static byte[] chunk(int index) {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        Arrays.fill(chunk, (byte) ('a' + index % 26));
+        return chunk;
+    }
+
+    private static void assertBody(byte[] body) {
+        assertEquals(CHUNK_SIZE * CHUNKS, body.length);
+        for (int i = 0; i < CHUNKS; i++) {
+            byte expected = (byte) ('a' + i % 26);
+            for (int j = 0; j < CHUNK_SIZE; j += 1024) {
+                assertEquals(expected, body[i * CHUNK_SIZE + j], "chunk " + i + " out of place");
+            }
+        }
+    }
+
+    /**
+     * Requests {@code path} with a small receive buffer, stalls before
+     * reading so the server's output backs up, then decodes the chunked body.
+     */
+    private byte[] readStream(String path, long stallMillis) throws Exception {
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(8 * 1024);
+            socket.connect(new java.net.InetSocketAddress("localhost", port));
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            Thread.sleep(stallMillis);
+            InputStream in = socket.getInputStream();
+            String head = readLine(in);
+            assertTrue(head.startsWith("HTTP/1.1 200"), head);
+            while (!readLine(in).isEmpty()) {
+                // skip headers
+            }
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            while (true) {
+                int size = Integer.parseInt(readLine(in).trim(), 16);
+                if (size == 0) {
+                    break;
+                }
+                body.write(in.readNBytes(size));
+                assertEquals("", readLine(in));
+            }
+            return body.toByteArray();
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed mid-line: " + line);
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private int findAvailablePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -229,4 +229,61 @@ public class ZeroCopyFileTransferTest {
             }
         }
     }
+
+    @Test
+    void testMultiRangeRequestZeroCopy() throws Exception {
+        long[][] ranges = {{0, 99}, {1_500_000, LARGE_FILE_SIZE - 1}, {5000, 5009}};
+        String contentType = new MimeTypeResolver().getMimeType(largeFile);
+
+        try (Socket socket = new Socket("localhost", port);
+             OutputStream out = socket.getOutputStream();
+             InputStream in = new BufferedInputStream(socket.getInputStream())) {
+            socket.setSoTimeout(10000);
+
+            // Twice on one connection, so the second response proves the framing of the first
+            for (int round = 0; round < 2; round++) {
+                out.write(("GET /large.bin HTTP/1.1\r\nHost: localhost\r\n"
+                        + "Range: bytes=0-99, 1500000-, 5000-5009\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+
+                String headers = readHeaders(in);
+                assertTrue(headers.startsWith("HTTP/1.1 206"), headers);
+                int boundaryAt = headers.indexOf("boundary=");
+                assertTrue(boundaryAt > 0, headers);
+                String boundary = headers.substring(boundaryAt + 9, headers.indexOf("\r\n", boundaryAt));
+                int lengthAt = headers.indexOf("Content-Length: ") + 16;
+                int contentLength = Integer.parseInt(headers.substring(lengthAt, headers.indexOf("\r\n", lengthAt)));
+
+                byte[] body = in.readNBytes(contentLength);
+                assertEquals(contentLength, body.length);
+
+                int offset = 0;
+                for (long[] range : ranges) {
+                    String partHeader = "\r\n--" + boundary + "\r\nContent-Type: " + contentType
+                            + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + LARGE_FILE_SIZE
+                            + "\r\n\r\n";
+                    assertEquals(partHeader,
+                            new String(body, offset, partHeader.length(), StandardCharsets.US_ASCII));
+                    offset += partHeader.length();
+                    for (long position = range[0]; position <= range[1]; position++) {
+                        assertEquals((byte) (position % 1024 % 256), body[offset++], "byte at file offset " + position);
+                    }
+                }
+                assertEquals("\r\n--" + boundary + "--\r\n",
+                        new String(body, offset, body.length - offset, StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        ByteArrayOutputStream headers = new ByteArrayOutputStream();
+        int matched = 0;
+        while (matched < 4) {
+            int b = in.read();
+            assertTrue(b >= 0, "Connection closed before end of headers");
+            headers.write(b);
+            matched = b == (matched % 2 == 0 ? '\r' : '\n') ? matched + 1 : (b == '\r' ? 1 : 0);
+        }
+        return headers.toString(StandardCharsets.US_ASCII);
+    }
 }
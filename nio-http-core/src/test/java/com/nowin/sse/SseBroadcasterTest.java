@@ -0,0 +1,173 @@
+package com.nowin.sse;
+
+import com.nowin.http.HttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseBroadcasterTest {
+
+    @Test
+    void testBroadcastReachesEverySubscriber() {
+        SseBroadcaster broadcaster = new SseBroadcaster();
+        TestEmitter first = new TestEmitter(null);
+        TestEmitter second = new TestEmitter(null);
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        SseEvent event = SseEvent.of("tick");
+        assertEquals(2, broadcaster.broadcast(event));
+
+        assertEquals(List.of(event), first.sent);
+        assertEquals(List.of(event), second.sent);
+    }
+
+    @Test
+    void testReplaysEventsAfterLastEventId() {
+        SseBroadcaster broadcaster = new SseBroadcaster(3, 1024);
+        for (int i = 1; i <= 4; i++) {
+            broadcaster.broadcast(SseEvent.builder().id(String.valueOf(i)).data("event " + i).build());
+        }
+
+        TestEmitter resumed = new TestEmitter("3");
+        broadcaster.subscribe(resumed);
+        assertEquals(List.of("4"), ids(resumed.sent));
+
+        // Id 1 fell out of the three retained events: send all of them
+        TestEmitter stale = new TestEmitter("1");
+        broadcaster.subscribe(stale);
+        assertEquals(List.of("2", "3", "4"), ids(stale.sent));
+
+        TestEmitter fresh = new TestEmitter(null);
+        broadcaster.subscribe(fresh);
+        assertTrue(fresh.sent.isEmpty(), "A first connection gets no replay");
+    }
+
+    @Test
+    void testSlowSubscriberIsEvicted() {
+        SseBroadcaster broadcaster = new SseBroadcaster(0, 1024);
+        TestEmitter slow = new TestEmitter(null);
+        TestEmitter fast = new TestEmitter(null);
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+
+        slow.pendingBytes = 4096;
+        assertEquals(1, broadcaster.broadcast(SseEvent.of("tick")));
+
+        assertTrue(slow.aborted);
+        assertTrue(slow.sent.isEmpty());
+        assertEquals(1, fast.sent.size());
+        assertEquals(1, broadcaster.getSubscriberCount());
+        assertEquals(1, broadcaster.getEvictedCount());
+    }
+
+    @Test
+    void testClosedSubscriberLeaves() {
+        SseBroadcaster broadcaster = new SseBroadcaster();
+        TestEmitter emitter = new TestEmitter(null);
+        broadcaster.subscribe(emitter);
+
+        emitter.close();
+
+        assertEquals(0, broadcaster.getSubscriberCount());
+        assertEquals(0, broadcaster.broadcast(SseEvent.of("tick")));
+    }
+
+    @Test
+    void testHeartbeatStartsOnSubscribe() {
+        SseBroadcaster broadcaster = new SseBroadcaster().setHeartbeatInterval(Duration.ofSeconds(15));
+        TestEmitter emitter = new TestEmitter(null);
+
+        broadcaster.subscribe(emitter);
+
+        assertEquals(Duration.ofSeconds(15), emitter.heartbeat);
+    }
+
+    @Test
+    void testCloseEndsEveryStream() {
+        SseBroadcaster broadcaster = new SseBroadcaster();
+        TestEmitter first = new TestEmitter(null);
+        TestEmitter second = new TestEmitter(null);
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        broadcaster.close();
+
+        assertFalse(first.isOpen());
+        assertFalse(second.isOpen());
+        assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    private static List<String> ids(List<SseEvent> events) {
+        return events.stream().map(SseEvent::getId).toList();
+    }
+
+    private static final class TestEmitter implements SseEmitter {
+        private final String lastEventId;
+        private final List<SseEvent> sent = new ArrayList<>();
+        private final List<Runnable> closeCallbacks = new ArrayList<>();
+        private long pendingBytes;
+        private boolean open = true;
+        private boolean aborted;
+        private Duration heartbeat;
+
+        TestEmitter(String lastEventId) {
+            this.lastEventId = lastEventId;
+        }
+
+        @Override
+        public HttpRequest request() {
+            return new HttpRequest();
+        }
+
+        @Override
+        public Optional<String> lastEventId() {
+            return Optional.ofNullable(lastEventId);
+        }
+
+        @Override
+        public CompletionStage<Void> send(SseEvent event) {
+            sent.add(event);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public void heartbeat(Duration interval) {
+            heartbeat = interval;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public long pendingBytes() {
+            return pendingBytes;
+        }
+
+        @Override
+        public void onClose(Runnable callback) {
+            closeCallbacks.add(callback);
+        }
+
+        @Override
+        public void close() {
+            open = false;
+            closeCallbacks.forEach(Runnable::run);
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+            close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.nowin.sse;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseEventTest {
+
+    @Test
+    void testEncodesEveryFieldAndSplitsDataLines() {
+        SseEvent event = SseEvent.builder()
+                .id("42")
+                .event("price")
+                .retry(3000)
+                .data("first\nsecond\r\nthird")
+                .build();
+
+        assertEquals("event: price\nid: 42\nretry: 3000\ndata: first\ndata: second\ndata: third\n\n", text(event));
+    }
+
+    @Test
+    void testPlainMessage() {
+        assertEquals("data: hello\n\n", text(SseEvent.of("hello")));
+        assertEquals("data: \n\n", text(SseEvent.of("")));
+    }
+
+    @Test
+    void testEncodedOnceAndShared() {
+        SseEvent event = SseEvent.of("shared");
+
+        assertSame(event.encoded(), event.encoded());
+        assertEquals(1, event.encoded().refCnt());
+        var view = event.encoded().retainedDuplicate();
+        assertEquals(2, event.encoded().refCnt());
+        view.release();
+        assertEquals(1, event.encoded().refCnt());
+    }
+
+    @Test
+    void testRejectsMultiLineIdAndEvent() {
+        assertThrows(IllegalArgumentException.class, () -> SseEvent.builder().id("a\nb"));
+        assertThrows(IllegalArgumentException.class, () -> SseEvent.builder().event("a\rb"));
+        assertThrows(IllegalArgumentException.class, () -> SseEvent.builder().id("a\0b"));
+        assertThrows(IllegalArgumentException.class, () -> SseEvent.builder().retry(-1));
+    }
+
+    private static String text(SseEvent event) {
+        var bytes = event.encoded().nioBuffer().duplicate();
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+}
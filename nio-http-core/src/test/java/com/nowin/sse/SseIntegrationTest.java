@@ -0,0 +1,190 @@
+package com.nowin.sse;
+
+import com.nowin.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SseIntegrationTest {
+
+    private final SseBroadcaster broadcaster = new SseBroadcaster(16, 1024 * 1024)
+            .setHeartbeatInterval(Duration.ofMillis(100));
+    private HttpServer server;
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop().join();
+        }
+    }
+
+    @Test
+    void testBroadcastEventsReachTheClient() throws Exception {
+        start();
+
+        try (Socket socket = open("/events", null)) {
+            InputStream in = socket.getInputStream();
+            String headers = readHeaders(in);
+            assertTrue(headers.startsWith("HTTP/1.1 200"), headers);
+            assertTrue(headers.toLowerCase().contains("content-type: text/event-stream"), headers);
+            assertTrue(headers.toLowerCase().contains("transfer-encoding: chunked"), headers);
+            awaitTrue(() -> broadcaster.getSubscriberCount() == 1);
+
+            broadcaster.broadcast(SseEvent.builder().id("1").event("greeting").data("hello").build());
+            broadcaster.broadcast(SseEvent.builder().id("2").data("two\nlines").build());
+
+            assertEquals(List.of("event: greeting\nid: 1\ndata: hello\n\n", "id: 2\ndata: two\ndata: lines\n\n"),
+                    readEvents(in, 2));
+        }
+    }
+
+    @Test
+    void testHeartbeatWhileIdle() throws Exception {
+        start();
+
+        try (Socket socket = open("/events", null)) {
+            InputStream in = socket.getInputStream();
+            readHeaders(in);
+            assertEquals(":\n\n", readChunk(in));
+        }
+    }
+
+    @Test
+    void testReconnectReplaysMissedEvents() throws Exception {
+        start();
+        for (int i = 1; i <= 3; i++) {
+            broadcaster.broadcast(SseEvent.builder().id(String.valueOf(i)).data("event " + i).build());
+        }
+
+        try (Socket socket = open("/events", "1")) {
+            InputStream in = socket.getInputStream();
+            readHeaders(in);
+            assertEquals(List.of("id: 2\ndata: event 2\n\n", "id: 3\ndata: event 3\n\n"), readEvents(in, 2));
+        }
+    }
+
+    @Test
+    void testDisconnectedClientLeaves() throws Exception {
+        start();
+
+        try (Socket socket = open("/events", null)) {
+            readHeaders(socket.getInputStream());
+            awaitTrue(() -> broadcaster.getSubscriberCount() == 1);
+        }
+        awaitTrue(() -> broadcaster.getSubscriberCount() == 0);
+    }
+
+    @Test
+    void testClosedStreamKeepsTheConnection() throws Exception {
+        start();
+
+        try (Socket socket = open("/once", null)) {
+            InputStream in = socket.getInputStream();
+            readHeaders(in);
+            assertEquals("data: only\n\n", readChunk(in));
+            assertEquals("", readChunk(in), "the stream ends with the last chunk");
+
+            socket.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n"
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(in.readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    private void start() throws IOException {
+        port = findAvailablePort();
+        server = HttpServer.builder()
+                .host("127.0.0.1")
+                .port(port)
+                .disableDefaultEndpoints()
+                .sse("/events", broadcaster::subscribe)
+                .sse("/once", emitter -> {
+                    emitter.send("only");
+                    emitter.close();
+                })
+                .get("/ping", exchange -> exchange.text("pong"))
+                .build();
+        server.start().join();
+    }
+
+    private Socket open(String path, String lastEventId) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5000);
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nAccept: text/event-stream\r\n"
+                + (lastEventId != null ? "Last-Event-ID: " + lastEventId + "\r\n" : "")
+                + "\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        return socket;
+    }
+
+    /**
+     * Reads {@code count} events, skipping heartbeats.
+     */
+    private static List<String> readEvents(InputStream in, int count) throws IOException {
+        List<String> events = new ArrayList<>();
+        while (events.size() < count) {
+            String chunk = readChunk(in);
+            if (!chunk.startsWith(":")) {
+                events.add(chunk);
+            }
+        }
+        return events;
+    }
+
+    private static String readChunk(InputStream in) throws IOException {
+        int size = Integer.parseInt(readLine(in), 16);
+        String chunk = new String(in.readNBytes(size), StandardCharsets.UTF_8);
+        assertEquals("", readLine(in));
+        return chunk;
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            headers.append(line).append('\n');
+        }
+        return headers.toString();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed mid-line: " + line);
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.nowin.transport;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+
+    private static final long TICK = 10;
+
+    private static WheelTimeout timeout(long deadline) {
+        return new WheelTimeout(null, () -> {}, deadline, 0);
+    }
+
+    @Test
+    void expiresTimeoutsOnlyOnceTheirDeadlinePasses() {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, 8, 0);
+        WheelTimeout early = timeout(25);
+        WheelTimeout late = timeout(45);
+        wheel.add(early);
+        wheel.add(late);
+        List<WheelTimeout> expired = new ArrayList<>();
+
+        wheel.expire(24, expired);
+        assertTrue(expired.isEmpty());
+
+        wheel.expire(30, expired);
+        assertEquals(List.of(early), expired);
+        assertEquals(1, wheel.size());
+
+        expired.clear();
+        wheel.expire(50, expired);
+        assertEquals(List.of(late), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void keepsTimeoutsThatAreMoreThanOneRevolutionAway() {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, 4, 0);
+        WheelTimeout far = timeout(125); // three revolutions of 40
+        wheel.add(far);
+        List<WheelTimeout> expired = new ArrayList<>();
+
+        for (long now = 0; now < 120; now += TICK) {
+            wheel.expire(now, expired);
+        }
+        assertTrue(expired.isEmpty());
+
+        wheel.expire(130, expired);
+        assertEquals(List.of(far), expired);
+    }
+
+    @Test
+    void catchesUpAfterFallingBehindByMoreThanARevolution() {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, 4, 0);
+        List<WheelTimeout> all = new ArrayList<>();
+        for (long deadline = 5; deadline < 200; deadline += 7) {
+            WheelTimeout timeout = timeout(deadline);
+            wheel.add(timeout);
+            all.add(timeout);
+        }
+        List<WheelTimeout> expired = new ArrayList<>();
+
+        wheel.expire(1000, expired);
+
+        assertEquals(all.size(), expired.size());
+        assertTrue(expired.containsAll(all));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void removedTimeoutsNeverExpire() {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, 8, 0);
+        WheelTimeout first = timeout(15);
+        WheelTimeout middle = timeout(15);
+        WheelTimeout last = timeout(15);
+        wheel.add(first);
+        wheel.add(middle);
+        wheel.add(last);
+
+        wheel.remove(middle);
+        wheel.remove(middle);
+        List<WheelTimeout> expired = new ArrayList<>();
+        wheel.expire(20, expired);
+
+        assertEquals(2, expired.size());
+        assertFalse(expired.contains(middle));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void overdueTimeoutsExpireOnTheNextPass() {
+        HashedTimingWheel wheel = new HashedTimingWheel(TICK, 8, 0);
+        List<WheelTimeout> expired = new ArrayList<>();
+        wheel.expire(100, expired);
+
+        WheelTimeout overdue = timeout(50);
+        wheel.add(overdue);
+        assertEquals(10, wheel.nanosUntilNextTick(100));
+
+        wheel.expire(110, expired);
+        assertEquals(List.of(overdue), expired);
+    }
+}
@@ -0,0 +1,51 @@
+package com.nowin.transport;
+
+import com.nowin.transport.nio.NioTransportFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TransportFactoriesTest {
+
+    @Test
+    void nioAndBlankResolveToBuiltIn() {
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve("nio"));
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve(" NIO "));
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve(null));
+    }
+
+    @Test
+    void unknownOrUnavailableTransportFallsBackToNio() {
+        TransportFactory epoll = new StubFactory("epoll", false);
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve("epoll", List.of(epoll)));
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve("io_uring", List.of(epoll)));
+    }
+
+    @Test
+    void namedAndAutoPickAvailableProvider() {
+        TransportFactory unavailable = new StubFactory("io_uring", false);
+        TransportFactory epoll = new StubFactory("epoll", true);
+        assertSame(epoll, TransportFactories.resolve("epoll", List.of(unavailable, epoll)));
+        assertSame(epoll, TransportFactories.resolve("auto", List.of(unavailable, epoll)));
+        assertSame(NioTransportFactory.INSTANCE, TransportFactories.resolve("auto", List.of(unavailable)));
+    }
+
+    private record StubFactory(String name, boolean isAvailable) implements TransportFactory {
+        @Override
+        public TransportEventLoopGroup createEventLoopGroup(int nThreads) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TransportServerChannel createServerChannel() {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public TransportSocketChannel createSocketChannel() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
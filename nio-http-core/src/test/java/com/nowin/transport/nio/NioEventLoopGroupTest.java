@@ -0,0 +1,47 @@
+package com.nowin.transport.nio;
+
+import com.nowin.transport.TransportEventLoop;
+import org.junit.jupiter.api.Test;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NioEventLoopGroupTest {
+
+    @Test
+    void nextRoundRobinsAcrossLoops() {
+        NioEventLoopGroup group = new NioEventLoopGroup(3);
+        Map<TransportEventLoop, Integer> counts = new IdentityHashMap<>();
+        for (int i = 0; i < 9; i++) {
+            counts.merge(group.next(), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        counts.values().forEach(count -> assertEquals(3, count));
+    }
+
+    @Test
+    void concurrentCallersShareLoopsEvenly() throws InterruptedException {
+        NioEventLoopGroup group = new NioEventLoopGroup(4);
+        Map<TransportEventLoop, AtomicInteger> counts = new ConcurrentHashMap<>();
+        int threads = 8;
+        int perThread = 10_000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    counts.computeIfAbsent(group.next(), loop -> new AtomicInteger()).incrementAndGet();
+                }
+                done.countDown();
+            }).start();
+        }
+        assertTrue(done.await(10, java.util.concurrent.TimeUnit.SECONDS));
+
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertEquals(threads * perThread / 4, count.get()));
+    }
+}
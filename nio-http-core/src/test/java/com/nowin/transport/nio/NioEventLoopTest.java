@@ -19,7 +19,9 @@ import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -114,6 +116,116 @@ class NioEventLoopTest {
         assertArrayEquals(expectedOrder, actualOrder, "Tasks should be executed in the order they were submitted");
     }
 
+    @Test
+    void testHigherPriorityTasksRunFirstAndEachPriorityIsFifo() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(6);
+        StringBuffer order = new StringBuffer();
+        eventLoop.execute(() -> {
+            try {
+                blocker.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        eventLoop.executeLowPriority(() -> { order.append("L1 "); done.countDown(); });
+        eventLoop.execute(() -> { order.append("N1 "); done.countDown(); });
+        eventLoop.executeHighPriority(() -> { order.append("H1 "); done.countDown(); });
+        eventLoop.execute(() -> { order.append("N2 "); done.countDown(); });
+        eventLoop.executeLowPriority(() -> { order.append("L2 "); done.countDown(); });
+        eventLoop.executeHighPriority(() -> { order.append("H2 "); done.countDown(); });
+        blocker.countDown();
+
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+        assertEquals("H1 H2 N1 N2 L1 L2 ", order.toString());
+    }
+
+    @Test
+    void testSelectorIsWokenOnlyWhileBlocked() throws InterruptedException {
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1000);
+        CountDownLatch started = new CountDownLatch(1);
+        eventLoop.execute(() -> {
+            started.countDown();
+            try {
+                blocker.await(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(1, TimeUnit.SECONDS));
+        long wakeupsBefore = eventLoop.getWakeupCount();
+
+        // The loop is busy running a task, not selecting, so none of these may wake it
+        for (int i = 0; i < 1000; i++) {
+            eventLoop.execute(done::countDown);
+        }
+        assertEquals(wakeupsBefore, eventLoop.getWakeupCount());
+        assertEquals(1000, eventLoop.getQueuedTasks());
+
+        blocker.countDown();
+        assertTrue(done.await(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTaskSubmittedWhileSelectingWakesLoopPromptly() throws InterruptedException {
+        // Let the loop settle into a blocking select with nothing queued
+        Thread.sleep(50);
+        CountDownLatch latch = new CountDownLatch(1);
+        long start = System.nanoTime();
+
+        eventLoop.execute(latch::countDown);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(90),
+                "The task should not wait out the select timeout");
+        assertTrue(eventLoop.getWakeupCount() >= 1);
+    }
+
+    @Test
+    void testScheduledTasksRunOnTheEventLoopThread() throws Exception {
+        AtomicBoolean onLoop = new AtomicBoolean(false);
+
+        ScheduledFuture<?> future = eventLoop.schedule(() -> onLoop.set(eventLoop.inEventLoop()), 20, TimeUnit.MILLISECONDS);
+
+        future.get(1, TimeUnit.SECONDS);
+        assertTrue(future.isDone());
+        assertTrue(onLoop.get());
+        assertEquals(0, eventLoop.getPendingTimeouts());
+    }
+
+    @Test
+    void testCancelledScheduledTaskDoesNotRun() throws InterruptedException {
+        AtomicBoolean ran = new AtomicBoolean(false);
+
+        ScheduledFuture<?> future = eventLoop.schedule(() -> ran.set(true), 50, TimeUnit.MILLISECONDS);
+        assertTrue(future.cancel(false));
+
+        Thread.sleep(150);
+        assertFalse(ran.get());
+        assertTrue(future.isCancelled());
+        assertThrows(CancellationException.class, future::get);
+    }
+
+    @Test
+    void testFixedRateTaskRepeatsUntilCancelled() throws InterruptedException {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch threeRuns = new CountDownLatch(3);
+
+        ScheduledFuture<?> future = eventLoop.scheduleAtFixedRate(() -> {
+            runs.incrementAndGet();
+            threeRuns.countDown();
+        }, 0, 20, TimeUnit.MILLISECONDS);
+
+        assertTrue(threeRuns.await(1, TimeUnit.SECONDS));
+        future.cancel(false);
+        Thread.sleep(50);
+        int afterCancel = runs.get();
+        Thread.sleep(100);
+        assertEquals(afterCancel, runs.get());
+    }
+
     @Test
     void testTaskQueueSizeLimit() throws InterruptedException {
         AtomicInteger taskCount = new AtomicInteger(0);
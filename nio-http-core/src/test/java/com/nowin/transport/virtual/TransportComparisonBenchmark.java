@@ -0,0 +1,190 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.ServerBootstrap;
+import com.nowin.server.NioHttpServer;
+import com.nowin.server.ServerConfig;
+import com.nowin.transport.TransportFactories;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the selector transport with the virtual-thread transport under
+ * many concurrent keep-alive connections. Not run by the build; start it by
+ * hand with a raised open-file limit:
+ *
+ * <pre>
+ * ulimit -n 65536
+ * java -cp ... com.nowin.transport.virtual.TransportComparisonBenchmark [connections] [requests] [blockMillis]
+ * </pre>
+ *
+ * Every connection is opened first and held open, then each sends
+ * {@code requests} requests one after another. {@code blockMillis} makes the
+ * handler sleep, standing in for a blocking call to a database or another
+ * service. Defaults: 10000 connections, 20 requests, 0 ms.
+ */
+public class TransportComparisonBenchmark {
+
+    private static final byte[] REQUEST = "GET /hello HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final String BODY = "hello";
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int requests = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        long blockMillis = args.length > 2 ? Long.parseLong(args[2]) : 0;
+
+        System.out.printf("%d connections, %d requests each, handler blocks %d ms%n", connections, requests, blockMillis);
+        for (String transport : List.of(TransportFactories.NIO, TransportFactories.VIRTUAL)) {
+            // Warm-up round, then the measured one
+            run(transport, Math.min(connections, 1000), requests, blockMillis);
+            Result result = run(transport, connections, requests, blockMillis);
+            System.out.printf("%-8s %10.0f req/s   p50 %8.3f ms   p99 %8.3f ms   max %8.3f ms   errors %d%n",
+                    transport, result.throughput(), result.percentileMillis(0.50), result.percentileMillis(0.99),
+                    result.percentileMillis(1.0), result.errors());
+        }
+    }
+
+    private static Result run(String transport, int connections, int requests, long blockMillis) throws Exception {
+        int port = findAvailablePort();
+        ExecutorService handlers = Executors.newVirtualThreadPerTaskExecutor();
+        NioHttpServer server = ServerBootstrap.create()
+                .config(new ServerConfig()
+                        .setPort(port)
+                        // The load monitor turns connections away above 90% of the limit
+                        .setMaxConnections(connections * 2)
+                        .setBacklogSize(Math.max(1024, connections))
+                        .setSocketTimeout(120000))
+                .transportFactory(TransportFactories.resolve(transport))
+                // What the selector transport needs for blocking handlers; the virtual one ignores it
+                .applicationExecutor(handlers)
+                .addRoute("/hello", (request, response) -> {
+                    if (blockMillis > 0) {
+                        try {
+                            Thread.sleep(blockMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    response.setBody(BODY);
+                })
+                .startSync();
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            CountDownLatch connected = new CountDownLatch(connections);
+            CountDownLatch go = new CountDownLatch(1);
+            List<Future<long[]>> futures = new ArrayList<>(connections);
+            for (int i = 0; i < connections; i++) {
+                futures.add(clients.submit(() -> client(port, requests, connected, go)));
+            }
+            if (!connected.await(120, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("only " + (connections - connected.getCount()) + " connections opened");
+            }
+            long started = System.nanoTime();
+            go.countDown();
+            long[] latencies = new long[connections * requests];
+            int count = 0;
+            int errors = 0;
+            for (Future<long[]> future : futures) {
+                try {
+                    long[] samples = future.get(300, TimeUnit.SECONDS);
+                    System.arraycopy(samples, 0, latencies, count, samples.length);
+                    count += samples.length;
+                } catch (Exception e) {
+                    if (errors++ == 0) {
+                        System.err.println(transport + ": first failed connection: " + e);
+                    }
+                }
+            }
+            long elapsed = System.nanoTime() - started;
+            long[] measured = Arrays.copyOf(latencies, count);
+            Arrays.sort(measured);
+            return new Result(measured, elapsed, errors);
+        } finally {
+            clients.shutdownNow();
+            server.shutdown();
+            handlers.shutdownNow();
+        }
+    }
+
+    /**
+     * One keep-alive connection: opens, waits for the others, then times
+     * each request until its whole response has arrived.
+     */
+    private static long[] client(int port, int requests, CountDownLatch connected, CountDownLatch go) throws Exception {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(120000);
+            socket.setTcpNoDelay(true);
+            connected.countDown();
+            go.await();
+            OutputStream out = socket.getOutputStream();
+            InputStream in = socket.getInputStream();
+            long[] latencies = new long[requests];
+            for (int i = 0; i < requests; i++) {
+                long started = System.nanoTime();
+                out.write(REQUEST);
+                readResponse(in);
+                latencies[i] = System.nanoTime() - started;
+            }
+            return latencies;
+        } catch (Exception e) {
+            connected.countDown();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads one response with a Content-Length body and discards it.
+     */
+    private static void readResponse(InputStream in) throws IOException {
+        StringBuilder head = new StringBuilder();
+        while (head.length() < 4 || !head.substring(head.length() - 4).equals("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed mid-response");
+            }
+            head.append((char) b);
+        }
+        int length = 0;
+        for (String line : head.toString().split("\r\n")) {
+            if (line.regionMatches(true, 0, "content-length:", 0, 15)) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        if (in.readNBytes(length).length != length) {
+            throw new IOException("connection closed mid-body");
+        }
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Result(long[] sortedLatencies, long elapsedNanos, int errors) {
+
+        double throughput() {
+            return sortedLatencies.length / (elapsedNanos / 1e9);
+        }
+
+        double percentileMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return Double.NaN;
+            }
+            int index = (int) Math.ceil(percentile * sortedLatencies.length) - 1;
+            return sortedLatencies[Math.max(0, index)] / 1e6;
+        }
+    }
+}
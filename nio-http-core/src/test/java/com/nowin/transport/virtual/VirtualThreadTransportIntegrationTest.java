@@ -0,0 +1,270 @@
+package com.nowin.transport.virtual;
+
+import com.nowin.ServerBootstrap;
+import com.nowin.handler.FileRequestHandler;
+import com.nowin.http.MimeTypeResolver;
+import com.nowin.server.NioHttpServer;
+import com.nowin.server.ServerConfig;
+import com.nowin.server.VirtualHost;
+import com.nowin.transport.TransportFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VirtualThreadTransportIntegrationTest {
+
+    private NioHttpServer server;
+    private Path tempDir;
+    private final AtomicInteger executorTasks = new AtomicInteger();
+    private final AtomicReference<Thread> handlerThread = new AtomicReference<>();
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null) {
+            server.shutdown();
+        }
+        if (tempDir != null) {
+            try (var files = Files.walk(tempDir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @Test
+    void testResolvedByName() {
+        assertSame(VirtualThreadTransportFactory.INSTANCE, TransportFactories.resolve("virtual"));
+    }
+
+    @Test
+    void testHandlersRunOnTheConnectionThread() throws Exception {
+        int port = start(new ServerConfig());
+
+        assertEquals("virtual", server.getTransportFactory().name());
+        for (int i = 0; i < 5; i++) {
+            String response = new String(get(port, "/ping"), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("pong"), response);
+        }
+        Thread thread = handlerThread.get();
+        assertTrue(thread.isVirtual());
+        assertTrue(thread.getName().startsWith("VirtualThreadEventLoop-"), thread.getName());
+        assertEquals(0, executorTasks.get(), "no request should go through the application executor");
+    }
+
+    @Test
+    void testKeepAliveAndPipelinedRequests() throws Exception {
+        int port = start(new ServerConfig());
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            String request = "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+            assertTrue(readResponse(socket.getInputStream()).endsWith("pong"));
+            socket.getOutputStream().write((request.repeat(5)
+                    + "GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertEquals(6, response.split("HTTP/1.1 200", -1).length - 1, response);
+        }
+    }
+
+    @Test
+    void testBlockingHandlersDoNotHoldUpOtherConnections() throws Exception {
+        int port = start(new ServerConfig());
+        int connections = 50;
+
+        ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor();
+        try {
+            long started = System.nanoTime();
+            List<Future<byte[]>> responses = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                responses.add(clients.submit(() -> get(port, "/sleep")));
+            }
+            for (Future<byte[]> response : responses) {
+                assertTrue(new String(response.get(10, TimeUnit.SECONDS), StandardCharsets.US_ASCII).endsWith("slept"));
+            }
+            // 50 handlers sleeping 200ms each, served one after another, would take 10s
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(5));
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void testLargeBodies() throws Exception {
+        tempDir = Files.createTempDirectory("nio-http-virtual-test");
+        byte[] content = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(tempDir.resolve("large.bin"), content);
+        int port = start(new ServerConfig());
+
+        String text = new String(get(port, "/large"), StandardCharsets.US_ASCII);
+        assertTrue(text.startsWith("HTTP/1.1 200"), text.substring(0, Math.min(200, text.length())));
+        assertTrue(text.endsWith("x".repeat(64)));
+
+        byte[] response = get(port, "/large.bin");
+        int bodyStart = indexOf(response, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII)) + 4;
+        assertTrue(new String(response, 0, bodyStart, StandardCharsets.US_ASCII).startsWith("HTTP/1.1 200"));
+        assertArrayEquals(content, Arrays.copyOfRange(response, bodyStart, response.length));
+    }
+
+    @Test
+    void testStreamingResponse() throws Exception {
+        int port = start(new ServerConfig());
+
+        String response = new String(get(port, "/stream"), StandardCharsets.US_ASCII);
+        assertTrue(response.startsWith("HTTP/1.1 200"), response);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(response.contains("chunk-" + i), response);
+        }
+        assertTrue(response.endsWith("0\r\n\r\n"), response);
+    }
+
+    @Test
+    void testIdleConnectionIsClosed() throws Exception {
+        int port = start(new ServerConfig().setSocketTimeout(300));
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            long started = System.nanoTime();
+            assertEquals(-1, socket.getInputStream().read());
+            assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(4));
+        }
+    }
+
+    @Test
+    void testReusePortFallsBackToOneAcceptor() throws Exception {
+        int port = start(new ServerConfig().setReusePort(true));
+
+        for (int i = 0; i < 5; i++) {
+            assertTrue(new String(get(port, "/ping"), StandardCharsets.US_ASCII).endsWith("pong"));
+        }
+    }
+
+    @Test
+    void testShutdownClosesConnectionsAndReleasesPort() throws Exception {
+        int port = start(new ServerConfig());
+
+        try (Socket idle = new Socket("localhost", port)) {
+            idle.setSoTimeout(5000);
+            idle.getOutputStream().write("GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+            assertTrue(readResponse(idle.getInputStream()).endsWith("pong"));
+
+            server.shutdown();
+            server = null;
+            assertEquals(-1, idle.getInputStream().read());
+        }
+        try (ServerSocket rebound = new ServerSocket(port)) {
+            assertEquals(port, rebound.getLocalPort());
+        }
+    }
+
+    private int start(ServerConfig config) throws Exception {
+        int port = findAvailablePort();
+        ServerBootstrap bootstrap = ServerBootstrap.create()
+                .config(config.setPort(port))
+                .transportFactory(VirtualThreadTransportFactory.INSTANCE)
+                .applicationExecutor(task -> {
+                    executorTasks.incrementAndGet();
+                    Thread.startVirtualThread(task);
+                })
+                .addRoute("/ping", (request, response) -> {
+                    handlerThread.set(Thread.currentThread());
+                    response.setBody("pong");
+                })
+                .addRoute("/sleep", (request, response) -> {
+                    try {
+                        Thread.sleep(200);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    response.setBody("slept");
+                })
+                .addRoute("/large", (request, response) -> response.setBody("x".repeat(2 * 1024 * 1024)))
+                .addRoute("/stream", (request, response) -> response.setStreamingHandler(stream -> {
+                    for (int i = 0; i < 10; i++) {
+                        stream.write(("chunk-" + i + "\n").getBytes(StandardCharsets.US_ASCII));
+                    }
+                }));
+        if (tempDir != null) {
+            VirtualHost virtualHost = new VirtualHost("localhost", tempDir);
+            FileRequestHandler fileHandler = new FileRequestHandler(new MimeTypeResolver());
+            bootstrap.addVirtualHost(virtualHost)
+                    .setDefaultVirtualHost(virtualHost)
+                    .addRoute("/*", fileHandler::handle);
+        }
+        server = bootstrap.startSync();
+        return port;
+    }
+
+    private static byte[] get(int port, String path) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            return socket.getInputStream().readAllBytes();
+        }
+    }
+
+    /**
+     * Reads one response with a Content-Length body.
+     */
+    private static String readResponse(InputStream in) throws IOException {
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        while (!head.toString(StandardCharsets.US_ASCII).endsWith("\r\n\r\n")) {
+            int b = in.read();
+            if (b < 0) {
+                throw new IOException("connection closed mid-response");
+            }
+            head.write(b);
+        }
+        String headers = head.toString(StandardCharsets.US_ASCII);
+        int length = 0;
+        for (String line : headers.split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                length = Integer.parseInt(line.substring(15).trim());
+            }
+        }
+        return headers + new String(in.readNBytes(length), StandardCharsets.US_ASCII);
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
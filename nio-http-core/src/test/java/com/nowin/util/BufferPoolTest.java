@@ -4,6 +4,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.nio.ByteBuffer;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -131,4 +132,88 @@ class BufferPoolTest {
         assertEquals(128000, writeBuffer.capacity());
         bufferPool.releaseWriteBuffer(writeBuffer);
     }
+
+    @Test
+    void testReleasedBufferIsReusedBySameThread() {
+        ByteBuffer buffer = bufferPool.acquire();
+        buffer.put((byte) 1);
+        bufferPool.release(buffer);
+
+        ByteBuffer reused = bufferPool.acquire();
+        assertSame(buffer, reused);
+        assertEquals(0, reused.position(), "Pooled buffers must be cleared");
+        assertEquals(1, bufferPool.getThreadCacheHits());
+        assertEquals(1, bufferPool.getAllocations());
+        assertEquals(1, bufferPool.getOutstanding());
+        bufferPool.release(reused);
+        assertEquals(0, bufferPool.getOutstanding());
+    }
+
+    @Test
+    void testBuffersReleasedOnOtherThreadsAreShared() throws Exception {
+        int count = 64;
+        ByteBuffer[] buffers = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            buffers[i] = bufferPool.acquire(4096);
+        }
+        // a virtual thread bypasses its own cache, so every release lands in the shared stack
+        Thread releaser = Thread.startVirtualThread(() -> {
+            for (ByteBuffer buffer : buffers) {
+                bufferPool.release(buffer);
+            }
+        });
+        releaser.join();
+
+        ByteBuffer buffer = bufferPool.acquire(4096);
+        assertEquals(1, bufferPool.getSharedHits());
+        assertEquals(count, bufferPool.getAllocations());
+        bufferPool.release(buffer);
+    }
+
+    @Test
+    void testForeignBuffersAreNotPooled() {
+        bufferPool.release(ByteBuffer.allocateDirect(1000));
+        bufferPool.release(ByteBuffer.allocate(8192));
+
+        assertEquals(1, bufferPool.getDiscarded());
+        assertEquals(0, bufferPool.getReleases());
+        assertEquals(0, bufferPool.getPooledBytes());
+    }
+
+    @Test
+    void testTrimFreesIdleBuffers() throws Exception {
+        BufferPool pool = new BufferPool(new int[] {4096}, 100, 4096);
+        ByteBuffer[] buffers = new ByteBuffer[10];
+        for (int i = 0; i < buffers.length; i++) {
+            buffers[i] = pool.acquire();
+        }
+        Thread releaser = Thread.startVirtualThread(() -> {
+            for (ByteBuffer buffer : buffers) {
+                pool.release(buffer);
+            }
+        });
+        releaser.join();
+        assertEquals(10 * 4096, pool.getPooledBytes());
+
+        // the first trim only starts measuring; nothing was drawn afterwards, so the second frees all
+        pool.trim();
+        pool.trim();
+        assertEquals(0, pool.getPooledBytes());
+    }
+
+    @Test
+    void testLeakDetectionReportsUnreleasedBuffers() {
+        bufferPool.setLeakDetection(true);
+        ByteBuffer released = bufferPool.acquire();
+        ByteBuffer leaked = bufferPool.acquire(20000);
+        bufferPool.release(released);
+
+        List<Throwable> leaks = bufferPool.reportLeaks();
+        assertEquals(1, leaks.size());
+        assertTrue(leaks.get(0).getMessage().contains("32768"));
+        assertTrue(leaks.get(0).getStackTrace().length > 0);
+
+        bufferPool.release(leaked);
+        assertTrue(bufferPool.reportLeaks().isEmpty());
+    }
 }
@@ -0,0 +1,65 @@
+package com.nowin.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RefCountedBufferTest {
+
+    @Test
+    void duplicatesShareContentButNotPosition() {
+        RefCountedBuffer buffer = RefCountedBuffer.copyOf(new byte[] {1, 2, 3, 4});
+        RefCountedBuffer duplicate = buffer.retainedDuplicate();
+
+        duplicate.nioBuffer().get();
+        duplicate.nioBuffer().get();
+
+        assertEquals(2, duplicate.remaining());
+        assertEquals(4, buffer.remaining());
+        assertEquals(2, buffer.refCnt());
+        assertTrue(buffer.nioBuffer().isReadOnly());
+    }
+
+    @Test
+    void deallocatorRunsOnceWhenLastReferenceIsReleased() {
+        AtomicInteger deallocations = new AtomicInteger();
+        RefCountedBuffer buffer = RefCountedBuffer.wrap(ByteBuffer.allocate(8), deallocations::incrementAndGet);
+        RefCountedBuffer duplicate = buffer.retainedDuplicate();
+        buffer.retain();
+
+        assertFalse(buffer.release());
+        assertFalse(duplicate.release());
+        assertEquals(0, deallocations.get());
+        assertTrue(buffer.release());
+        assertEquals(1, deallocations.get());
+        assertEquals(0, buffer.refCnt());
+    }
+
+    @Test
+    void overReleaseAndRetainAfterFreeAreRejected() {
+        RefCountedBuffer buffer = RefCountedBuffer.copyOf(new byte[] {1});
+        assertTrue(buffer.release());
+
+        assertThrows(IllegalStateException.class, buffer::release);
+        assertThrows(IllegalStateException.class, buffer::retain);
+        assertThrows(IllegalStateException.class, buffer::retainedDuplicate);
+    }
+
+    @Test
+    void sharedPoolBufferReturnsToPoolAfterLastRelease() {
+        BufferPool pool = new BufferPool();
+        ByteBuffer pooled = pool.acquire(4096);
+        pooled.put(new byte[] {9, 9}).flip();
+        RefCountedBuffer shared = pool.share(pooled);
+        RefCountedBuffer inFlight = shared.retainedDuplicate();
+        long releases = pool.getReleases();
+
+        shared.release();
+        assertEquals(releases, pool.getReleases());
+        inFlight.release();
+        assertEquals(releases + 1, pool.getReleases());
+    }
+}
@@ -0,0 +1,132 @@
+package com.nowin.websocket;
+
+import com.nowin.http.HttpRequest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketBroadcasterTest {
+
+    @Test
+    void testBroadcastSendsOneFrameToEverySubscriber() {
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        TestSession first = new TestSession();
+        TestSession second = new TestSession();
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        assertEquals(2, broadcaster.broadcast("tick"));
+
+        assertEquals(1, first.sent.size());
+        assertSame(first.sent.get(0), second.sent.get(0), "the frame is built once");
+    }
+
+    @Test
+    void testSlowSubscriberIsEvicted() {
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(1024);
+        TestSession slow = new TestSession();
+        TestSession fast = new TestSession();
+        broadcaster.subscribe(slow);
+        broadcaster.subscribe(fast);
+
+        slow.pendingBytes = 4096;
+        assertEquals(1, broadcaster.broadcast(new byte[] {1, 2, 3}));
+
+        assertTrue(slow.aborted);
+        assertTrue(slow.sent.isEmpty());
+        assertEquals(1, fast.sent.size());
+        assertEquals(1, broadcaster.getSubscriberCount());
+        assertEquals(1, broadcaster.getEvictedCount());
+    }
+
+    @Test
+    void testClosedSubscriberLeaves() {
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        TestSession session = new TestSession();
+        broadcaster.subscribe(session);
+
+        session.close(WebSocketSession.NORMAL_CLOSURE, "");
+
+        assertEquals(0, broadcaster.getSubscriberCount());
+        assertEquals(0, broadcaster.broadcast("tick"));
+    }
+
+    @Test
+    void testRejectsCloseFrames() {
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+
+        assertThrows(IllegalArgumentException.class,
+                () -> broadcaster.broadcast(WebSocketFrame.close(WebSocketSession.NORMAL_CLOSURE, "")));
+    }
+
+    @Test
+    void testCloseEndsEverySession() {
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        TestSession first = new TestSession();
+        TestSession second = new TestSession();
+        broadcaster.subscribe(first);
+        broadcaster.subscribe(second);
+
+        broadcaster.close();
+
+        assertEquals(WebSocketSession.GOING_AWAY, first.closeCode);
+        assertEquals(WebSocketSession.GOING_AWAY, second.closeCode);
+        assertEquals(0, broadcaster.getSubscriberCount());
+    }
+
+    private static final class TestSession implements WebSocketSession {
+        private final List<WebSocketFrame> sent = new ArrayList<>();
+        private final List<Runnable> closeCallbacks = new ArrayList<>();
+        private long pendingBytes;
+        private int closeCode;
+        private boolean aborted;
+
+        @Override
+        public HttpRequest request() {
+            return new HttpRequest();
+        }
+
+        @Override
+        public boolean isCompressionEnabled() {
+            return false;
+        }
+
+        @Override
+        public CompletionStage<Void> send(WebSocketFrame frame) {
+            sent.add(frame);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return closeCode == 0 && !aborted;
+        }
+
+        @Override
+        public long pendingBytes() {
+            return pendingBytes;
+        }
+
+        @Override
+        public void onClose(Runnable callback) {
+            closeCallbacks.add(callback);
+        }
+
+        @Override
+        public void close(int code, String reason) {
+            closeCode = code;
+            closeCallbacks.forEach(Runnable::run);
+        }
+
+        @Override
+        public void abort() {
+            aborted = true;
+            closeCallbacks.forEach(Runnable::run);
+        }
+    }
+}
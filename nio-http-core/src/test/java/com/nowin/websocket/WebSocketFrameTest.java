@@ -0,0 +1,90 @@
+package com.nowin.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketFrameTest {
+
+    @Test
+    void testLengthEncodings() {
+        assertHeader(WebSocketFrame.binary(new byte[125]), 2, 125);
+        assertHeader(WebSocketFrame.binary(new byte[126]), 4, 126);
+        assertHeader(WebSocketFrame.binary(new byte[65535]), 4, 65535);
+        assertHeader(WebSocketFrame.binary(new byte[65536]), 10, 65536);
+    }
+
+    @Test
+    void testTextFrame() {
+        ByteBuffer frame = WebSocketFrame.text("hi").encoded(false).nioBuffer();
+
+        assertEquals((byte) 0x81, frame.get(0), "FIN set, text opcode");
+        assertEquals(2, frame.get(1), "server frames are not masked");
+        assertEquals("hi", StandardCharsets.UTF_8.decode(frame.position(2)).toString());
+    }
+
+    @Test
+    void testCompressedFrameInflatesToThePayload() throws Exception {
+        byte[] payload = "compressible ".repeat(100).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = WebSocketFrame.binary(payload).encoded(true).nioBuffer();
+
+        assertEquals((byte) 0xC2, frame.get(0), "FIN and RSV1 set, binary opcode");
+        int length = frame.get(1) & 0x7F;
+        assertTrue(length < 126);
+        byte[] compressed = new byte[length + 4];
+        frame.position(2).get(compressed, 0, length);
+        System.arraycopy(new byte[] {0x00, 0x00, (byte) 0xFF, (byte) 0xFF}, 0, compressed, length, 4);
+
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(compressed);
+        byte[] inflated = new byte[payload.length];
+        assertEquals(payload.length, inflater.inflate(inflated));
+        inflater.end();
+        assertArrayEquals(payload, inflated);
+    }
+
+    @Test
+    void testSmallPayloadIsNotCompressed() {
+        WebSocketFrame frame = WebSocketFrame.text("tiny");
+
+        assertSame(frame.encoded(false), frame.encoded(true));
+        assertSame(frame.encoded(true), frame.encoded(true), "the encoding is shared");
+    }
+
+    @Test
+    void testCloseFrame() {
+        ByteBuffer frame = WebSocketFrame.close(WebSocketSession.GOING_AWAY, "bye").encoded(false).nioBuffer();
+
+        assertEquals((byte) 0x88, frame.get(0));
+        assertEquals(5, frame.get(1));
+        assertEquals(WebSocketSession.GOING_AWAY, frame.getShort(2));
+        assertEquals("bye", StandardCharsets.UTF_8.decode(frame.position(4)).toString());
+    }
+
+    @Test
+    void testRejectsInvalidControlFrames() {
+        assertThrows(IllegalArgumentException.class, () -> WebSocketFrame.close(WebSocketSession.NO_STATUS, ""));
+        assertThrows(IllegalArgumentException.class, () -> WebSocketFrame.close(999, ""));
+        assertThrows(IllegalArgumentException.class, () -> WebSocketFrame.ping(new byte[126]));
+        assertTrue(WebSocketFrame.isValidCloseCode(4000));
+        assertFalse(WebSocketFrame.isValidCloseCode(1004));
+    }
+
+    private static void assertHeader(WebSocketFrame frame, int headerLength, int payloadLength) {
+        ByteBuffer encoded = frame.encoded(false).nioBuffer();
+        assertEquals(headerLength + payloadLength, encoded.remaining());
+        byte[] header = new byte[headerLength];
+        encoded.get(header);
+        long length = switch (headerLength) {
+            case 2 -> header[1];
+            case 4 -> ByteBuffer.wrap(header, 2, 2).getShort() & 0xFFFF;
+            default -> ByteBuffer.wrap(header, 2, 8).getLong();
+        };
+        assertEquals(payloadLength, length, Arrays.toString(header));
+    }
+}
@@ -0,0 +1,337 @@
+package com.nowin.websocket;
+
+import com.nowin.HttpServer;
+import com.nowin.server.ServerConfig;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WebSocketIntegrationTest {
+
+    private static final String KEY = "dGhlIHNhbXBsZSBub25jZQ==";
+
+    private final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+    private final CompletableFuture<Integer> closeCode = new CompletableFuture<>();
+    private HttpServer server;
+    private int port;
+
+    @AfterEach
+    void tearDown() {
+        if (server != null) {
+            server.stop().join();
+        }
+    }
+
+    @Test
+    void testHandshakeAndEcho() throws Exception {
+        start(0);
+
+        try (Socket socket = open("/echo", null)) {
+            String headers = readHeaders(socket.getInputStream());
+            assertTrue(headers.startsWith("HTTP/1.1 101"), headers);
+            assertTrue(headers.contains("Sec-WebSocket-Accept: s3pPLMBiTxaQ9kYGzzhZRbK+xOo="), headers);
+            assertFalse(headers.toLowerCase().contains("sec-websocket-extensions"), headers);
+
+            sendFrame(socket, 0x81, "héllo".getBytes(StandardCharsets.UTF_8));
+            assertFrame(readFrame(socket), 0x81, "héllo");
+
+            byte[] large = new byte[70000];
+            ThreadLocalRandom.current().nextBytes(large);
+            sendFrame(socket, 0x82, large);
+            Frame echoed = readFrame(socket);
+            assertEquals(0x82, echoed.header);
+            assertArrayEquals(large, echoed.payload);
+        }
+    }
+
+    @Test
+    void testFragmentedMessageWithInterleavedPing() throws Exception {
+        start(0);
+
+        try (Socket socket = open("/echo", null)) {
+            readHeaders(socket.getInputStream());
+
+            sendFrame(socket, 0x01, bytes("frag"));
+            sendFrame(socket, 0x89, bytes("are you there"));
+            sendFrame(socket, 0x00, bytes("men"));
+            sendFrame(socket, 0x80, bytes("ted"));
+
+            assertFrame(readFrame(socket), 0x8A, "are you there");
+            assertFrame(readFrame(socket), 0x81, "fragmented");
+        }
+    }
+
+    @Test
+    void testServerPingsAnIdlePeer() throws Exception {
+        start(200);
+
+        try (Socket socket = open("/echo", null)) {
+            readHeaders(socket.getInputStream());
+
+            assertFrame(readFrame(socket), 0x89, "");
+        }
+    }
+
+    @Test
+    void testCloseHandshake() throws Exception {
+        start(0);
+
+        try (Socket socket = open("/echo", null)) {
+            readHeaders(socket.getInputStream());
+
+            sendFrame(socket, 0x88, new byte[] {0x03, (byte) 0xE8, 'o', 'k'});
+            Frame reply = readFrame(socket);
+            assertEquals(0x88, reply.header);
+            assertEquals(WebSocketSession.NORMAL_CLOSURE, ByteBuffer.wrap(reply.payload).getShort());
+            assertEquals(-1, socket.getInputStream().read(), "the server closes the connection");
+        }
+        assertEquals(WebSocketSession.NORMAL_CLOSURE, closeCode.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testUnmaskedFrameFailsTheConnection() throws Exception {
+        start(0);
+
+        try (Socket socket = open("/echo", null)) {
+            readHeaders(socket.getInputStream());
+
+            socket.getOutputStream().write(new byte[] {(byte) 0x81, 0x02, 'h', 'i'});
+            Frame reply = readFrame(socket);
+            assertEquals(0x88, reply.header);
+            assertEquals(WebSocketSession.PROTOCOL_ERROR, ByteBuffer.wrap(reply.payload).getShort());
+        }
+        assertEquals(WebSocketSession.ABNORMAL_CLOSURE, closeCode.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testInvalidHandshakesAreRejected() throws Exception {
+        start(0);
+
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET /echo HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 400"), response);
+        }
+        try (Socket socket = new Socket("127.0.0.1", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET /echo HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                    + "Connection: Upgrade, close\r\nSec-WebSocket-Key: " + KEY + "\r\nSec-WebSocket-Version: 8\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 426"), response);
+            assertTrue(response.contains("Sec-WebSocket-Version: 13"), response);
+        }
+    }
+
+    @Test
+    void testCompressedMessages() throws Exception {
+        start(0);
+
+        try (Socket socket = open("/echo", "permessage-deflate; client_max_window_bits")) {
+            String headers = readHeaders(socket.getInputStream());
+            assertTrue(headers.contains("Sec-WebSocket-Extensions: permessage-deflate; server_no_context_takeover"),
+                    headers);
+
+            String text = "compress me please ".repeat(50);
+            sendFrame(socket, 0xC1, deflate(bytes(text)));
+            Frame reply = readFrame(socket);
+            assertEquals(0xC1, reply.header, "the echo is compressed too");
+            assertTrue(reply.payload.length < text.length());
+            assertEquals(text, new String(inflate(reply.payload), StandardCharsets.UTF_8));
+
+            sendFrame(socket, 0x81, bytes("short"));
+            assertFrame(readFrame(socket), 0x81, "short");
+        }
+    }
+
+    @Test
+    void testBroadcastReachesEveryClient() throws Exception {
+        start(0);
+
+        try (Socket first = open("/broadcast", null); Socket second = open("/broadcast", null)) {
+            readHeaders(first.getInputStream());
+            readHeaders(second.getInputStream());
+            awaitTrue(() -> broadcaster.getSubscriberCount() == 2);
+
+            assertEquals(2, broadcaster.broadcast("news"));
+
+            assertFrame(readFrame(first), 0x81, "news");
+            assertFrame(readFrame(second), 0x81, "news");
+        }
+        awaitTrue(() -> broadcaster.getSubscriberCount() == 0);
+    }
+
+    private void start(int pingInterval) throws IOException {
+        port = findAvailablePort();
+        server = HttpServer.builder()
+                .config(new ServerConfig().setWebSocketPingInterval(pingInterval))
+                .host("127.0.0.1")
+                .port(port)
+                .disableDefaultEndpoints()
+                .websocket("/echo", new WebSocketHandler() {
+                    @Override
+                    public void onText(WebSocketSession session, String text) {
+                        session.sendText(text);
+                    }
+
+                    @Override
+                    public void onBinary(WebSocketSession session, ByteBuffer data) {
+                        session.send(WebSocketFrame.binary(data));
+                    }
+
+                    @Override
+                    public void onClose(WebSocketSession session, int code, String reason) {
+                        closeCode.complete(code);
+                    }
+                })
+                .websocket("/broadcast", new WebSocketHandler() {
+                    @Override
+                    public void onOpen(WebSocketSession session) {
+                        broadcaster.subscribe(session);
+                    }
+                })
+                .build();
+        server.start().join();
+    }
+
+    private Socket open(String path, String extensions) throws IOException {
+        Socket socket = new Socket("127.0.0.1", port);
+        socket.setSoTimeout(5000);
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\nUpgrade: websocket\r\n"
+                + "Connection: Upgrade\r\nSec-WebSocket-Key: " + KEY + "\r\nSec-WebSocket-Version: 13\r\n"
+                + (extensions != null ? "Sec-WebSocket-Extensions: " + extensions + "\r\n" : "")
+                + "\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        return socket;
+    }
+
+    private static void sendFrame(Socket socket, int header, byte[] payload) throws IOException {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(header);
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else if (payload.length <= 0xFFFF) {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >>> 8);
+            frame.write(payload.length);
+        } else {
+            frame.write(0x80 | 127);
+            frame.writeBytes(ByteBuffer.allocate(8).putLong(payload.length).array());
+        }
+        byte[] mask = new byte[4];
+        ThreadLocalRandom.current().nextBytes(mask);
+        frame.writeBytes(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ mask[i & 3]);
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write(frame.toByteArray());
+        out.flush();
+    }
+
+    private static Frame readFrame(Socket socket) throws IOException {
+        InputStream in = socket.getInputStream();
+        byte[] head = in.readNBytes(2);
+        assertEquals(2, head.length, "connection closed before a frame");
+        assertEquals(0, head[1] & 0x80, "server frames are not masked");
+        long length = head[1] & 0x7F;
+        if (length == 126) {
+            length = ByteBuffer.wrap(in.readNBytes(2)).getShort() & 0xFFFF;
+        } else if (length == 127) {
+            length = ByteBuffer.wrap(in.readNBytes(8)).getLong();
+        }
+        return new Frame(head[0] & 0xFF, in.readNBytes((int) length));
+    }
+
+    private static void assertFrame(Frame frame, int header, String payload) {
+        assertEquals(header, frame.header);
+        assertEquals(payload, new String(frame.payload, StandardCharsets.UTF_8));
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(data);
+        byte[] out = new byte[data.length + 64];
+        int size = deflater.deflate(out, 0, out.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        return Arrays.copyOf(out, size - 4);
+    }
+
+    private static byte[] inflate(byte[] data) throws Exception {
+        Inflater inflater = new Inflater(true);
+        byte[] input = Arrays.copyOf(data, data.length + 4);
+        input[data.length + 2] = (byte) 0xFF;
+        input[data.length + 3] = (byte) 0xFF;
+        inflater.setInput(input);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] chunk = new byte[4096];
+        while (!inflater.needsInput()) {
+            out.write(chunk, 0, inflater.inflate(chunk));
+        }
+        inflater.end();
+        return out.toByteArray();
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String readHeaders(InputStream in) throws IOException {
+        StringBuilder headers = new StringBuilder();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            headers.append(line).append('\n');
+        }
+        return headers.toString();
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("connection closed mid-line: " + line);
+            }
+            if (b != '\r') {
+                line.append((char) b);
+            }
+        }
+        return line.toString();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private record Frame(int header, byte[] payload) {
+    }
+}
@@ -0,0 +1,41 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.unix.AbstractUnixChannel;
+
+import java.io.IOException;
+
+/**
+ * A non-blocking socket registered with an {@link EpollEventLoop}.
+ */
+abstract class AbstractEpollChannel extends AbstractUnixChannel {
+
+    private volatile EpollSelectionKey selectionKey;
+
+    AbstractEpollChannel(int fd, int family) {
+        super(fd, family, false);
+    }
+
+    EpollSelectionKey key() {
+        return selectionKey;
+    }
+
+    void setSelectionKey(EpollSelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    @Override
+    protected void doClose() throws IOException {
+        EpollSelectionKey key = selectionKey;
+        if (key != null) {
+            key.cancel();
+        }
+        onClose();
+        closeDescriptor();
+    }
+
+    /**
+     * Releases resources tied to this channel before its descriptor is closed.
+     */
+    protected void onClose() {
+    }
+}
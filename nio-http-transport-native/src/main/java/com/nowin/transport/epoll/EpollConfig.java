@@ -0,0 +1,105 @@
+package com.nowin.transport.epoll;
+
+/**
+ * Settings of the epoll transport. The defaults can be overridden with
+ * {@code nowin.epoll.*} system properties when the transport is picked up
+ * through {@code server.transport=epoll}, or by passing a config to
+ * {@link EpollTransportFactory#EpollTransportFactory(EpollConfig)}.
+ */
+public class EpollConfig {
+
+    private boolean edgeTriggered = true;
+    private boolean tcpCork = true;
+    private int tcpNotSentLowat = 0;
+    private int maxEvents = 512;
+
+    /**
+     * Reads {@code nowin.epoll.edgeTriggered}, {@code nowin.epoll.tcpCork},
+     * {@code nowin.epoll.tcpNotSentLowat} and {@code nowin.epoll.maxEvents}.
+     */
+    public static EpollConfig fromSystemProperties() {
+        EpollConfig config = new EpollConfig();
+        String edgeTriggered = System.getProperty("nowin.epoll.edgeTriggered");
+        if (edgeTriggered != null) {
+            config.setEdgeTriggered(Boolean.parseBoolean(edgeTriggered));
+        }
+        String tcpCork = System.getProperty("nowin.epoll.tcpCork");
+        if (tcpCork != null) {
+            config.setTcpCork(Boolean.parseBoolean(tcpCork));
+        }
+        config.setTcpNotSentLowat(Integer.getInteger("nowin.epoll.tcpNotSentLowat", config.tcpNotSentLowat));
+        config.setMaxEvents(Integer.getInteger("nowin.epoll.maxEvents", config.maxEvents));
+        return config;
+    }
+
+    public boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+
+    /**
+     * Register sockets edge-triggered ({@code EPOLLET}) for both directions
+     * once, and track interest in Java, instead of an {@code epoll_ctl} per
+     * interest change as in level-triggered mode.
+     */
+    public EpollConfig setEdgeTriggered(boolean edgeTriggered) {
+        this.edgeTriggered = edgeTriggered;
+        return this;
+    }
+
+    public boolean isTcpCork() {
+        return tcpCork;
+    }
+
+    /**
+     * Cork the socket while a queued response head and its file body are
+     * flushed, so the head leaves in the same segment as the first file bytes.
+     */
+    public EpollConfig setTcpCork(boolean tcpCork) {
+        this.tcpCork = tcpCork;
+        return this;
+    }
+
+    public int getTcpNotSentLowat() {
+        return tcpNotSentLowat;
+    }
+
+    /**
+     * {@code TCP_NOTSENT_LOWAT} for accepted sockets in bytes; {@code 0}
+     * keeps the system default.
+     */
+    public EpollConfig setTcpNotSentLowat(int tcpNotSentLowat) {
+        this.tcpNotSentLowat = tcpNotSentLowat;
+        return this;
+    }
+
+    public int getMaxEvents() {
+        return maxEvents;
+    }
+
+    /**
+     * Events returned by one {@code epoll_wait}.
+     */
+    public EpollConfig setMaxEvents(int maxEvents) {
+        this.maxEvents = maxEvents;
+        return this;
+    }
+
+    public void validate() {
+        if (tcpNotSentLowat < 0) {
+            throw new IllegalArgumentException("TCP_NOTSENT_LOWAT must be >= 0, got: " + tcpNotSentLowat);
+        }
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("Max events must be >= 1, got: " + maxEvents);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EpollConfig{" +
+                "edgeTriggered=" + edgeTriggered +
+                ", tcpCork=" + tcpCork +
+                ", tcpNotSentLowat=" + tcpNotSentLowat +
+                ", maxEvents=" + maxEvents +
+                '}';
+    }
+}
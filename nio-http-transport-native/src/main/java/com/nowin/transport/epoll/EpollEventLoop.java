@@ -0,0 +1,401 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.http.FileChannelBody;
+import com.nowin.pipeline.Channel;
+import com.nowin.transport.SingleThreadEventLoop;
+import com.nowin.transport.TransportAcceptHandler;
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.unix.Native;
+import com.nowin.util.OutboundBuffers;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_LONG_UNALIGNED;
+
+/**
+ * Event loop driven by {@code epoll_wait}, woken through an {@code eventfd}.
+ * <p>
+ * Level-triggered, it mirrors a selector: interest changes become
+ * {@code epoll_ctl} calls, and a channel with no interest is removed from
+ * the set so hang-ups cannot spin the loop. Edge-triggered, every socket is
+ * registered once for both directions and interest lives only in its
+ * {@link EpollSelectionKey}; keys still ready after being processed, or
+ * whose interest is turned back on while ready, are queued and processed
+ * on the next pass instead of waiting for another edge.
+ */
+public class EpollEventLoop extends SingleThreadEventLoop {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpollEventLoop.class);
+    // fd -1 never occurs in a channel token
+    private static final long WAKEUP_TOKEN = -1L;
+    private static final int READ_EVENTS = EpollNative.EPOLLIN | EpollNative.EPOLLERR | EpollNative.EPOLLHUP | EpollNative.EPOLLRDHUP;
+    private static final int WRITE_EVENTS = EpollNative.EPOLLOUT | EpollNative.EPOLLERR | EpollNative.EPOLLHUP;
+
+    private final EpollConfig config;
+    private final boolean edgeTriggered;
+    private final int epfd;
+    private final int eventFd;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment events;
+    private final MemorySegment wakeupValue;
+    private final MemorySegment drainValue;
+    private final AtomicInteger channelCount = new AtomicInteger();
+    // Guards eventFd against a wakeup racing the loop closing it
+    private final Object eventFdLock = new Object();
+    private boolean eventFdClosed;
+    // Event loop only
+    private EpollSelectionKey[] keysByFd = new EpollSelectionKey[1024];
+    private final ArrayDeque<EpollSelectionKey> readyKeys = new ArrayDeque<>();
+    private int nextRegistrationId;
+    private int readyCount;
+
+    public EpollEventLoop(EpollConfig config) {
+        super("EpollEventLoop");
+        this.config = config;
+        this.edgeTriggered = config.isEdgeTriggered();
+        this.events = arena.allocate(EpollNative.EPOLL_EVENT_SIZE * config.getMaxEvents(), 8);
+        this.wakeupValue = arena.allocate(JAVA_LONG);
+        this.wakeupValue.set(JAVA_LONG, 0, 1L);
+        this.drainValue = arena.allocate(JAVA_LONG);
+        Native.Scratch s = Native.scratch();
+        this.epfd = EpollNative.epollCreate1(s, EpollNative.EPOLL_CLOEXEC);
+        if (epfd < 0) {
+            arena.close();
+            throw new RuntimeException("failed to open epoll", Native.newIOException("epoll_create1", s.errno()));
+        }
+        this.eventFd = Native.eventfd(s, 0, Native.EFD_NONBLOCK | Native.EFD_CLOEXEC);
+        if (eventFd < 0 || EpollNative.epollCtl(s, epfd, EpollNative.EPOLL_CTL_ADD, eventFd, EpollNative.EPOLLIN, WAKEUP_TOKEN) != 0) {
+            IOException cause = Native.newIOException("eventfd", s.errno());
+            if (eventFd >= 0) {
+                Native.close(s, eventFd);
+            }
+            Native.close(s, epfd);
+            arena.close();
+            throw new RuntimeException("failed to open epoll", cause);
+        }
+    }
+
+    @Override
+    protected int select(long timeoutMillis) throws IOException {
+        return epollWait((int) Math.min(Integer.MAX_VALUE, timeoutMillis));
+    }
+
+    @Override
+    protected int selectNow() throws IOException {
+        return epollWait(0);
+    }
+
+    private int epollWait(int timeoutMillis) throws IOException {
+        Native.Scratch s = Native.scratch();
+        int n = EpollNative.epollWait(s, epfd, events, config.getMaxEvents(), timeoutMillis);
+        if (n < 0) {
+            int errno = s.errno();
+            if (errno == Native.EINTR) {
+                n = 0;
+            } else {
+                throw Native.newIOException("epoll_wait", errno);
+            }
+        }
+        readyCount = n;
+        return n;
+    }
+
+    @Override
+    protected boolean hasPendingIo() {
+        return !readyKeys.isEmpty();
+    }
+
+    @Override
+    protected void processSelected() {
+        int n = readyCount;
+        readyCount = 0;
+        for (int i = 0; i < n; i++) {
+            long offset = i * EpollNative.EPOLL_EVENT_SIZE;
+            int ready = events.get(JAVA_INT_UNALIGNED, offset);
+            long token = events.get(JAVA_LONG_UNALIGNED, offset + EpollNative.EPOLL_DATA_OFFSET);
+            if (token == WAKEUP_TOKEN) {
+                drainWakeup();
+                continue;
+            }
+            int fd = (int) token;
+            EpollSelectionKey key = fd < keysByFd.length ? keysByFd[fd] : null;
+            if (key == null || key.token != token || !key.isValid()) {
+                continue; // cancelled since the event was queued
+            }
+            int ops;
+            if (edgeTriggered) {
+                if ((ready & READ_EVENTS) != 0) {
+                    key.readReady = true;
+                }
+                if ((ready & WRITE_EVENTS) != 0) {
+                    key.writeReady = true;
+                }
+                ops = key.pendingOps();
+            } else {
+                int interest = key.interestOps();
+                ops = 0;
+                if ((ready & READ_EVENTS) != 0) {
+                    ops |= interest & (TransportSelectionKey.OP_READ | TransportSelectionKey.OP_ACCEPT);
+                }
+                if ((ready & WRITE_EVENTS) != 0) {
+                    ops |= interest & TransportSelectionKey.OP_WRITE;
+                }
+            }
+            if (ops != 0) {
+                processKey(key, ops);
+            }
+        }
+        processReadyKeys();
+    }
+
+    /**
+     * Runs the edge-triggered keys queued before this pass; keys queued
+     * while doing so wait for the next one, after tasks and timers.
+     */
+    private void processReadyKeys() {
+        for (int i = readyKeys.size(); i > 0; i--) {
+            EpollSelectionKey key = readyKeys.poll();
+            key.queued = false;
+            if (!key.isValid()) {
+                continue;
+            }
+            int ops = key.pendingOps();
+            if (ops != 0) {
+                processKey(key, ops);
+            }
+        }
+    }
+
+    private void processKey(EpollSelectionKey key, int ops) {
+        Object attachment = key.attachment();
+        key.readyOps = ops;
+        try {
+            if ((ops & TransportSelectionKey.OP_ACCEPT) != 0) {
+                ((TransportAcceptHandler) attachment).acceptReady(key);
+            }
+            if ((ops & TransportSelectionKey.OP_READ) != 0) {
+                handleRead((Channel) attachment);
+                if (!key.isValid()) {
+                    return;
+                }
+            }
+            if ((ops & TransportSelectionKey.OP_WRITE) != 0) {
+                handleWrite((Channel) attachment);
+            }
+        } catch (Exception e) {
+            handleChannelFailure(attachment, e);
+        } finally {
+            key.readyOps = 0;
+        }
+        if (edgeTriggered) {
+            // e.g. the accept batch or write budget ran out before EAGAIN
+            enqueueIfReady(key);
+        }
+    }
+
+    /**
+     * Corks the socket while a queued response head is flushed together
+     * with the file body behind it, so the head does not leave as a segment
+     * of its own.
+     */
+    @Override
+    protected void handleWrite(Channel channel) throws IOException {
+        EpollSocketChannel socket = (EpollSocketChannel) channel.transportChannel();
+        boolean cork = config.isTcpCork() && headBeforeFileBody(channel);
+        if (cork) {
+            socket.setCorked(true);
+        }
+        try {
+            super.handleWrite(channel);
+        } finally {
+            if (cork && socket.isOpen()) {
+                socket.setCorked(false);
+            }
+        }
+    }
+
+    private static boolean headBeforeFileBody(Channel channel) {
+        boolean sawBuffer = false;
+        for (Object task : channel.getWriteQueue()) {
+            if (OutboundBuffers.isBuffer(task)) {
+                sawBuffer = true;
+            } else {
+                return sawBuffer && task instanceof FileChannelBody;
+            }
+        }
+        return false;
+    }
+
+    private void enqueueIfReady(EpollSelectionKey key) {
+        if (key.isValid() && !key.queued && key.pendingOps() != 0) {
+            key.queued = true;
+            readyKeys.add(key);
+        }
+    }
+
+    void interestOpsChanged(EpollSelectionKey key) {
+        if (edgeTriggered) {
+            if (key.pendingOps() == 0) {
+                return;
+            }
+            if (inEventLoop()) {
+                enqueueIfReady(key);
+            } else {
+                execute(() -> enqueueIfReady(key));
+            }
+            return;
+        }
+        updateRegistration(key);
+    }
+
+    /**
+     * Level-triggered: brings the epoll set in line with the key's interest.
+     * Safe from any thread; {@code epoll_ctl} takes effect even while the
+     * loop is blocked in {@code epoll_wait}.
+     */
+    private void updateRegistration(EpollSelectionKey key) {
+        synchronized (key) {
+            if (!key.isValid()) {
+                return;
+            }
+            int interest = key.interestOps();
+            int events = 0;
+            if ((interest & TransportSelectionKey.OP_ACCEPT) != 0) {
+                events |= EpollNative.EPOLLIN;
+            }
+            if ((interest & TransportSelectionKey.OP_READ) != 0) {
+                events |= EpollNative.EPOLLIN | EpollNative.EPOLLRDHUP;
+            }
+            if ((interest & TransportSelectionKey.OP_WRITE) != 0) {
+                events |= EpollNative.EPOLLOUT;
+            }
+            if (events == key.registeredEvents) {
+                return;
+            }
+            int op = key.registeredEvents == 0 ? EpollNative.EPOLL_CTL_ADD
+                    : events == 0 ? EpollNative.EPOLL_CTL_DEL
+                    : EpollNative.EPOLL_CTL_MOD;
+            Native.Scratch s = Native.scratch();
+            if (EpollNative.epollCtl(s, epfd, op, key.epollChannel().fd(), events, key.token) != 0) {
+                logger.debug("epoll_ctl failed for {}: {}", key, Native.strerror(s.errno()));
+                return;
+            }
+            key.registeredEvents = events;
+        }
+    }
+
+    @Override
+    public void register(TransportChannel channel, int ops, Object attachment) {
+        if (inEventLoop()) {
+            register0(channel, ops, attachment);
+        } else {
+            execute(() -> register0(channel, ops, attachment));
+        }
+    }
+
+    private void register0(TransportChannel channel, int ops, Object attachment) {
+        if (!(channel instanceof AbstractEpollChannel epollChannel)) {
+            throw new IllegalArgumentException("Not an epoll channel: " + channel);
+        }
+        int fd = epollChannel.fd();
+        long token = ((long) nextRegistrationId++ << 32) | (fd & 0xffffffffL);
+        EpollSelectionKey key = new EpollSelectionKey(this, epollChannel, token, ops, attachment);
+        if (fd >= keysByFd.length) {
+            keysByFd = Arrays.copyOf(keysByFd, Math.max(fd + 1, keysByFd.length * 2));
+        }
+        keysByFd[fd] = key;
+        epollChannel.setSelectionKey(key);
+        channelCount.incrementAndGet();
+        if (!edgeTriggered) {
+            updateRegistration(key);
+            return;
+        }
+        int events = channel instanceof EpollServerChannel
+                ? EpollNative.EPOLLIN | EpollNative.EPOLLET
+                : EpollNative.EPOLLIN | EpollNative.EPOLLOUT | EpollNative.EPOLLRDHUP | EpollNative.EPOLLET;
+        Native.Scratch s = Native.scratch();
+        if (EpollNative.epollCtl(s, epfd, EpollNative.EPOLL_CTL_ADD, fd, events, token) != 0) {
+            throw new RuntimeException("failed to register channel", Native.newIOException("epoll_ctl", s.errno()));
+        }
+        key.registeredEvents = events;
+    }
+
+    /**
+     * Removes a cancelled key. An open channel is taken out of the epoll
+     * set here; a closing one leaves it when its descriptor is closed.
+     */
+    void cancel(EpollSelectionKey key) {
+        channelCount.decrementAndGet();
+        AbstractEpollChannel channel = key.epollChannel();
+        synchronized (key) {
+            if (key.registeredEvents != 0 && channel.isOpen()) {
+                EpollNative.epollCtl(Native.scratch(), epfd, EpollNative.EPOLL_CTL_DEL, channel.fd(), 0, 0);
+            }
+            key.registeredEvents = 0;
+        }
+        if (inEventLoop()) {
+            removeKey(key);
+        } else {
+            execute(() -> removeKey(key));
+        }
+    }
+
+    private void removeKey(EpollSelectionKey key) {
+        int fd = key.epollChannel().fd();
+        if (fd < keysByFd.length && keysByFd[fd] == key) {
+            keysByFd[fd] = null;
+        }
+    }
+
+    @Override
+    protected void wakeupSelector() {
+        synchronized (eventFdLock) {
+            if (!eventFdClosed) {
+                Native.write(Native.scratch(), eventFd, wakeupValue, 8);
+            }
+        }
+    }
+
+    private void drainWakeup() {
+        Native.read(Native.scratch(), eventFd, drainValue, 8);
+    }
+
+    /**
+     * Interest changes reach the kernel directly, or the loop through
+     * {@link #execute}, so there is nothing to wake for.
+     */
+    @Override
+    public void wakeup() {
+    }
+
+    @Override
+    protected void closeSelector() {
+        Native.Scratch s = Native.scratch();
+        synchronized (eventFdLock) {
+            eventFdClosed = true;
+            Native.close(s, eventFd);
+        }
+        Native.close(s, epfd);
+        arena.close();
+        logger.info("EpollEventLoop {} closed", getId());
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+
+    public boolean isEdgeTriggered() {
+        return edgeTriggered;
+    }
+}
@@ -0,0 +1,48 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.transport.TransportEventLoopGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class EpollEventLoopGroup implements TransportEventLoopGroup {
+
+    private final List<EpollEventLoop> eventLoops;
+    private final int nThreads;
+    // next() is called from the acceptor and from application threads
+    private final AtomicInteger next = new AtomicInteger();
+
+    public EpollEventLoopGroup(int nThreads, EpollConfig config) {
+        this.nThreads = nThreads;
+        this.eventLoops = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            eventLoops.add(new EpollEventLoop(config));
+        }
+    }
+
+    @Override
+    public void start() {
+        for (EpollEventLoop loop : eventLoops) {
+            loop.start();
+        }
+    }
+
+    @Override
+    public TransportEventLoop next() {
+        return eventLoops.get(Math.floorMod(next.getAndIncrement(), nThreads));
+    }
+
+    @Override
+    public void shutdown() {
+        for (EpollEventLoop loop : eventLoops) {
+            loop.shutdown();
+        }
+    }
+
+    @Override
+    public List<TransportEventLoop> getEventLoops() {
+        return new ArrayList<>(eventLoops);
+    }
+}
@@ -0,0 +1,76 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.unix.Native;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * The {@code epoll} system calls and {@code struct epoll_event} layout;
+ * everything else comes from {@link Native}.
+ */
+final class EpollNative {
+
+    static final int EPOLLIN = 0x1;
+    static final int EPOLLOUT = 0x4;
+    static final int EPOLLERR = 0x8;
+    static final int EPOLLHUP = 0x10;
+    static final int EPOLLRDHUP = 0x2000;
+    static final int EPOLLET = 1 << 31;
+    static final int EPOLL_CTL_ADD = 1;
+    static final int EPOLL_CTL_DEL = 2;
+    static final int EPOLL_CTL_MOD = 3;
+    static final int EPOLL_CLOEXEC = 0x80000;
+
+    // struct epoll_event is packed on x86_64 only
+    static final boolean PACKED_EPOLL_EVENT = "amd64".equals(System.getProperty("os.arch"))
+            || "x86_64".equals(System.getProperty("os.arch"));
+    static final long EPOLL_EVENT_SIZE = PACKED_EPOLL_EVENT ? 12 : 16;
+    static final long EPOLL_DATA_OFFSET = PACKED_EPOLL_EVENT ? 4 : 8;
+
+    private static final MethodHandle EPOLL_CREATE1 = Native.errnoCall("epoll_create1", JAVA_INT, JAVA_INT);
+    private static final MethodHandle EPOLL_CTL = Native.errnoCall("epoll_ctl", JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS);
+    private static final MethodHandle EPOLL_WAIT = Native.errnoCall("epoll_wait", JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT, JAVA_INT);
+
+    private EpollNative() {
+    }
+
+    static int epollCreate1(Native.Scratch s, int flags) {
+        try {
+            return (int) EPOLL_CREATE1.invokeExact(s.capture, flags);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    static int epollCtl(Native.Scratch s, int epfd, int op, int fd, MemorySegment event) {
+        try {
+            return (int) EPOLL_CTL.invokeExact(s.capture, epfd, op, fd, event);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    static int epollWait(Native.Scratch s, int epfd, MemorySegment events, int maxEvents, int timeoutMillis) {
+        try {
+            return (int) EPOLL_WAIT.invokeExact(s.capture, epfd, events, maxEvents, timeoutMillis);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    /**
+     * Registers or modifies {@code fd} in {@code epfd} with the given events
+     * and user data.
+     */
+    static int epollCtl(Native.Scratch s, int epfd, int op, int fd, int events, long data) {
+        MemorySegment event = s.value;
+        event.set(JAVA_INT, 0, events);
+        event.set(ValueLayout.JAVA_LONG_UNALIGNED, EPOLL_DATA_OFFSET, data);
+        return epollCtl(s, epfd, op, fd, event);
+    }
+}
@@ -0,0 +1,136 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportSelectionKey;
+
+/**
+ * Registration of a channel with an {@link EpollEventLoop}.
+ * <p>
+ * In edge-triggered mode the kernel reports each direction once per edge,
+ * so the key remembers that a direction is ready until a short read or
+ * write shows it drained; turning interest back on for a direction that
+ * is still ready makes the loop process the key without waiting for an
+ * event that will not come.
+ */
+public class EpollSelectionKey implements TransportSelectionKey {
+
+    private final EpollEventLoop eventLoop;
+    private final AbstractEpollChannel channel;
+    // epoll_data: registration id in the high word, fd in the low word
+    final long token;
+    private volatile Object attachment;
+    private volatile int interestOps;
+    private volatile boolean valid = true;
+
+    // Edge-triggered readiness, set from events and cleared on EAGAIN
+    volatile boolean readReady;
+    volatile boolean writeReady;
+
+    // Event loop only
+    int readyOps;
+    boolean queued;
+    // Events in the epoll set; guarded by this key's monitor
+    int registeredEvents;
+
+    EpollSelectionKey(EpollEventLoop eventLoop, AbstractEpollChannel channel, long token, int interestOps, Object attachment) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.token = token;
+        this.interestOps = interestOps;
+        this.attachment = attachment;
+    }
+
+    AbstractEpollChannel epollChannel() {
+        return channel;
+    }
+
+    /**
+     * Ops both wanted and, as far as the key knows, ready; edge-triggered only.
+     */
+    int pendingOps() {
+        int ops = interestOps;
+        int pending = 0;
+        if (readReady) {
+            pending |= ops & (OP_READ | OP_ACCEPT);
+        }
+        if (writeReady) {
+            pending |= ops & OP_WRITE;
+        }
+        return pending;
+    }
+
+    void readDrained() {
+        readReady = false;
+    }
+
+    void writeDrained() {
+        writeReady = false;
+    }
+
+    @Override
+    public TransportChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            if (!valid) {
+                return;
+            }
+            valid = false;
+        }
+        eventLoop.cancel(this);
+    }
+
+    @Override
+    public int interestOps() {
+        return interestOps;
+    }
+
+    @Override
+    public void interestOps(int ops) {
+        if (interestOps == ops) {
+            return;
+        }
+        interestOps = ops;
+        if (valid) {
+            eventLoop.interestOpsChanged(this);
+        }
+    }
+
+    @Override
+    public boolean isReadable() {
+        return (readyOps & OP_READ) != 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return (readyOps & OP_WRITE) != 0;
+    }
+
+    @Override
+    public boolean isAcceptable() {
+        return (readyOps & OP_ACCEPT) != 0;
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    public String toString() {
+        return "EpollSelectionKey[" + channel + ", interestOps=" + interestOps + (valid ? "" : ", cancelled") + "]";
+    }
+}
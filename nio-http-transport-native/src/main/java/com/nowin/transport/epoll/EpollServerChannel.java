@@ -0,0 +1,93 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.AbstractUnixChannel;
+import com.nowin.transport.unix.Native;
+import com.nowin.transport.unix.SocketAddresses;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * Listening socket accepting with {@code accept4}, so accepted sockets are
+ * non-blocking and close-on-exec without further syscalls.
+ */
+public class EpollServerChannel extends AbstractEpollChannel implements TransportServerChannel {
+
+    // Same default as ServerSocketChannel
+    private static final int DEFAULT_BACKLOG = 50;
+
+    private final EpollConfig config;
+    private volatile boolean bound;
+
+    EpollServerChannel(EpollConfig config) throws IOException {
+        this(AbstractUnixChannel.openSocket(true), config);
+    }
+
+    private EpollServerChannel(int[] socket, EpollConfig config) {
+        super(socket[0], socket[1]);
+        this.config = config;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        int length = SocketAddresses.encode(address, family, s.sockaddr);
+        if (Native.bind(s, fd, s.sockaddr, length) != 0) {
+            throw Native.newIOException("bind " + address, s.errno());
+        }
+        if (Native.listen(s, fd, backlog < 1 ? DEFAULT_BACKLOG : backlog) != 0) {
+            throw Native.newIOException("listen", s.errno());
+        }
+        bound = true;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address) throws IOException {
+        bind(address, 0);
+    }
+
+    /**
+     * @return the accepted connection, or null once the backlog is empty
+     */
+    @Override
+    public TransportSocketChannel accept() throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        while (true) {
+            s.socklen.set(JAVA_INT, 0, Native.SOCKADDR_STORAGE_SIZE);
+            int client = Native.accept4(s, fd, s.sockaddr, s.socklen, Native.SOCK_NONBLOCK | Native.SOCK_CLOEXEC);
+            if (client >= 0) {
+                EpollSocketChannel channel = new EpollSocketChannel(client, family, SocketAddresses.decode(s.sockaddr));
+                channel.applyConfig(config);
+                return channel;
+            }
+            int errno = s.errno();
+            if (errno == Native.EINTR || errno == Native.ECONNABORTED) {
+                continue;
+            }
+            if (errno == Native.EAGAIN) {
+                EpollSelectionKey key = key();
+                if (key != null) {
+                    key.readDrained();
+                }
+                return null;
+            }
+            throw Native.newIOException("accept4", errno);
+        }
+    }
+
+    @Override
+    public boolean isBound() {
+        return bound;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+}
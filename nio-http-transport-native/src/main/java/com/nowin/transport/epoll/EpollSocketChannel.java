@@ -0,0 +1,259 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.Native;
+import com.nowin.transport.unix.ReopenedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Connected socket doing I/O with {@code read}, {@code writev} and
+ * {@code sendfile}. A short read or write tells the selection key the
+ * socket is drained in that direction, which edge-triggered loops need to
+ * know when to wait for the next edge.
+ */
+public class EpollSocketChannel extends AbstractEpollChannel implements TransportSocketChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpollSocketChannel.class);
+
+    private final InetSocketAddress remoteAddress;
+    private boolean corked;
+    // Descriptor sendfile reads from; event loop only
+    private final ReopenedFile sendfileSource = new ReopenedFile();
+
+    EpollSocketChannel(int fd, int family, InetSocketAddress remoteAddress) {
+        super(fd, family);
+        this.remoteAddress = remoteAddress;
+    }
+
+    void applyConfig(EpollConfig config) {
+        if (config.getTcpNotSentLowat() > 0) {
+            try {
+                setOption(EpollSocketOptions.TCP_NOTSENT_LOWAT, config.getTcpNotSentLowat());
+            } catch (IOException e) {
+                logger.debug("TCP_NOTSENT_LOWAT not applied: {}", e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public TransportSelectionKey selectionKey() {
+        return key();
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        int requested = dst.remaining();
+        if (requested == 0) {
+            return 0;
+        }
+        Native.Scratch s = Native.scratch();
+        boolean direct = dst.isDirect();
+        if (!direct) {
+            requested = Math.min(requested, Native.Scratch.BOUNCE_SIZE);
+        }
+        MemorySegment target = direct ? Native.segment(dst) : s.bounce;
+        long n;
+        do {
+            n = Native.read(s, fd, target, requested);
+        } while (n < 0 && s.errno() == Native.EINTR);
+        if (n < 0) {
+            int errno = s.errno();
+            if (errno == Native.EAGAIN) {
+                readDrained();
+                return 0;
+            }
+            throw Native.newIOException("read", errno);
+        }
+        if (n == 0) {
+            return -1;
+        }
+        if (!direct) {
+            MemorySegment.copy(s.bounce, JAVA_BYTE, 0, dst.array(), dst.arrayOffset() + dst.position(), (int) n);
+        }
+        dst.position(dst.position() + (int) n);
+        if (n < requested) {
+            readDrained();
+        }
+        return (int) n;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int offered = src.remaining();
+        if (offered == 0) {
+            return 0;
+        }
+        Native.Scratch s = Native.scratch();
+        MemorySegment source;
+        if (src.isDirect()) {
+            source = Native.segment(src);
+        } else {
+            offered = Math.min(offered, Native.Scratch.BOUNCE_SIZE);
+            MemorySegment.copy(Native.segment(src), 0, s.bounce, 0, offered);
+            source = s.bounce;
+        }
+        long n;
+        do {
+            n = Native.write(s, fd, source, offered);
+        } while (n < 0 && s.errno() == Native.EINTR);
+        if (n < 0) {
+            return (int) writeFailed(s.errno(), "write");
+        }
+        src.position(src.position() + (int) n);
+        if (n < offered) {
+            writeDrained();
+        }
+        return (int) n;
+    }
+
+    /**
+     * One {@code writev} over up to {@link Native.Scratch#MAX_IOV} buffers.
+     * Heap buffers are copied into the thread's bounce area, and gathering
+     * stops when it is full.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        MemorySegment iov = s.iov;
+        int count = 0;
+        long offered = 0;
+        long bounceUsed = 0;
+        int end = offset + length;
+        for (int i = offset; i < end && count < Native.Scratch.MAX_IOV; i++) {
+            ByteBuffer src = srcs[i];
+            int remaining = src.remaining();
+            if (remaining == 0) {
+                continue;
+            }
+            long address;
+            if (src.isDirect()) {
+                address = Native.segment(src).address();
+            } else {
+                int room = (int) Math.min(remaining, Native.Scratch.BOUNCE_SIZE - bounceUsed);
+                if (room == 0) {
+                    break;
+                }
+                MemorySegment.copy(Native.segment(src), 0, s.bounce, bounceUsed, room);
+                address = s.bounce.address() + bounceUsed;
+                bounceUsed += room;
+                remaining = room;
+            }
+            iov.set(JAVA_LONG, count * Native.IOVEC_SIZE, address);
+            iov.set(JAVA_LONG, count * Native.IOVEC_SIZE + 8, remaining);
+            count++;
+            offered += remaining;
+            if (remaining < src.remaining()) {
+                break; // bounce area full; the rest of this buffer goes next time
+            }
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long n;
+        do {
+            n = Native.writev(s, fd, iov, count);
+        } while (n < 0 && s.errno() == Native.EINTR);
+        if (n < 0) {
+            return writeFailed(s.errno(), "writev");
+        }
+        long left = n;
+        for (int i = offset; i < end && left > 0; i++) {
+            ByteBuffer src = srcs[i];
+            int advance = (int) Math.min(left, src.remaining());
+            src.position(src.position() + advance);
+            left -= advance;
+        }
+        if (n < offered) {
+            writeDrained();
+        }
+        return n;
+    }
+
+    /**
+     * Sends straight from the page cache with {@code sendfile}, from a
+     * descriptor {@link ReopenedFile} opens by {@code path}; without one,
+     * falls back to {@link FileChannel#transferTo}.
+     */
+    @Override
+    public long transferFrom(FileChannel file, Path path, Object fileKey, long position, long count)
+            throws IOException {
+        ensureOpen();
+        if (count <= 0) {
+            return 0;
+        }
+        int in = sendfileSource.descriptorFor(file, path, fileKey);
+        if (in < 0) {
+            return TransportSocketChannel.super.transferFrom(file, path, fileKey, position, count);
+        }
+        Native.Scratch s = Native.scratch();
+        s.offset.set(JAVA_LONG, 0, position);
+        long n;
+        do {
+            n = Native.sendfile(s, fd, in, s.offset, count);
+        } while (n < 0 && s.errno() == Native.EINTR);
+        if (n < 0) {
+            return writeFailed(s.errno(), "sendfile");
+        }
+        if (n < count) {
+            writeDrained();
+        }
+        return n;
+    }
+
+    private long writeFailed(int errno, String op) throws IOException {
+        if (errno == Native.EAGAIN) {
+            writeDrained();
+            return 0;
+        }
+        throw Native.newIOException(op, errno);
+    }
+
+    /**
+     * Sets {@code TCP_CORK} unless it already has that state.
+     */
+    void setCorked(boolean cork) throws IOException {
+        if (corked != cork) {
+            setOption(EpollSocketOptions.TCP_CORK, cork);
+            corked = cork;
+        }
+    }
+
+    private void readDrained() {
+        EpollSelectionKey key = key();
+        if (key != null) {
+            key.readDrained();
+        }
+    }
+
+    private void writeDrained() {
+        EpollSelectionKey key = key();
+        if (key != null) {
+            key.writeDrained();
+        }
+    }
+
+    @Override
+    protected void onClose() {
+        sendfileSource.close();
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,33 @@
+package com.nowin.transport.epoll;
+
+import java.net.SocketOption;
+
+/**
+ * Linux TCP options accepted by the epoll transport's channels in addition
+ * to the {@link java.net.StandardSocketOptions} and the keep-alive options
+ * of {@code jdk.net.ExtendedSocketOptions}.
+ */
+public final class EpollSocketOptions {
+
+    /**
+     * Holds back partial frames while set; clearing it sends what is queued.
+     */
+    public static final SocketOption<Boolean> TCP_CORK = new Option<>("TCP_CORK", Boolean.class);
+
+    /**
+     * Bytes of unsent data above which the socket stops reporting writable,
+     * keeping the kernel send queue short so responses are not stuck behind
+     * a deep buffer. {@code 0} leaves the system default.
+     */
+    public static final SocketOption<Integer> TCP_NOTSENT_LOWAT = new Option<>("TCP_NOTSENT_LOWAT", Integer.class);
+
+    private EpollSocketOptions() {
+    }
+
+    private record Option<T>(String name, Class<T> type) implements SocketOption<T> {
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.transport.TransportEventLoopGroup;
+import com.nowin.transport.TransportFactory;
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Linux epoll transport, selected with {@code server.transport=epoll}.
+ * <p>
+ * System calls go through the Foreign Function &amp; Memory API, a preview
+ * API in Java 21, so the JVM must run with {@code --enable-preview}
+ * (and, to silence the restricted-method warning,
+ * {@code --enable-native-access=ALL-UNNAMED}). Without it, or off Linux,
+ * {@link #isAvailable()} is false and the server falls back to NIO.
+ */
+public class EpollTransportFactory implements TransportFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(EpollTransportFactory.class);
+    private static volatile Boolean available;
+
+    private final EpollConfig config;
+
+    /**
+     * Used by {@link java.util.ServiceLoader}; reads {@code nowin.epoll.*}
+     * system properties.
+     */
+    public EpollTransportFactory() {
+        this(EpollConfig.fromSystemProperties());
+    }
+
+    public EpollTransportFactory(EpollConfig config) {
+        config.validate();
+        this.config = config;
+    }
+
+    @Override
+    public String name() {
+        return "epoll";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            result = probe();
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * Loads the native bindings once; any linkage failure, such as running
+     * without {@code --enable-preview}, means the transport is unavailable.
+     */
+    private static boolean probe() {
+        String reason = Platform.unsupportedReason();
+        if (reason != null) {
+            logger.debug("epoll transport unavailable: {}", reason);
+            return false;
+        }
+        try {
+            Class.forName("com.nowin.transport.epoll.EpollNative", true, EpollTransportFactory.class.getClassLoader());
+            return true;
+        } catch (Throwable t) {
+            logger.warn("epoll transport unavailable: {}", t.toString());
+            return false;
+        }
+    }
+
+    public EpollConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public TransportEventLoopGroup createEventLoopGroup(int nThreads) {
+        return new EpollEventLoopGroup(nThreads, config);
+    }
+
+    @Override
+    public TransportServerChannel createServerChannel() throws IOException {
+        return new EpollServerChannel(config);
+    }
+
+    /**
+     * Outbound connections are not part of this transport; the server only
+     * accepts.
+     */
+    @Override
+    public TransportSocketChannel createSocketChannel() {
+        throw new UnsupportedOperationException("The epoll transport does not open client connections");
+    }
+}
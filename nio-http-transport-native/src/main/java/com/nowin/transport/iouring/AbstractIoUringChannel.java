@@ -0,0 +1,114 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.unix.AbstractUnixChannel;
+
+import java.io.IOException;
+
+/**
+ * A socket whose I/O is submitted to an {@link IoUringEventLoop}.
+ * <p>
+ * Descriptors stay in blocking mode: io_uring never blocks the loop on
+ * them, polling internally for sockets that are not ready, and splices run
+ * in the kernel's worker threads, which need blocking sockets to make
+ * progress. Once registered, a channel is closed on its loop after its
+ * operations in flight have completed, so the kernel never writes into
+ * memory that has been released.
+ */
+abstract class AbstractIoUringChannel extends AbstractUnixChannel {
+
+    private volatile IoUringEventLoop eventLoop;
+    private volatile IoUringSelectionKey selectionKey;
+
+    // Event loop only
+    int slot = -1;
+    int inflight;
+    boolean closing;
+
+    AbstractIoUringChannel(int fd, int family) {
+        super(fd, family, true);
+    }
+
+    IoUringEventLoop eventLoop() {
+        return eventLoop;
+    }
+
+    void setEventLoop(IoUringEventLoop eventLoop) {
+        this.eventLoop = eventLoop;
+    }
+
+    IoUringSelectionKey key() {
+        return selectionKey;
+    }
+
+    void setSelectionKey(IoUringSelectionKey selectionKey) {
+        this.selectionKey = selectionKey;
+    }
+
+    /**
+     * Ignored: see the class comment.
+     */
+    @Override
+    public void configureBlocking(boolean block) throws IOException {
+        ensureOpen();
+    }
+
+    /**
+     * Ops the channel could perform now, as {@link com.nowin.transport.TransportSelectionKey} bits.
+     */
+    abstract int readyOps();
+
+    /**
+     * Submits the operations a newly registered channel starts with.
+     */
+    abstract void registered() throws IOException;
+
+    /**
+     * Interest changed; submits operations the new interest calls for.
+     */
+    void interestChanged(int interestOps) throws IOException {
+    }
+
+    /**
+     * Records the result of operation {@code op}.
+     */
+    abstract void completed(int op, int tag, int res, int flags) throws IOException;
+
+    /**
+     * Starts closing: cancels operations that would otherwise wait for the
+     * peer. Operations that finish on their own, such as sends, are left
+     * to complete.
+     */
+    abstract void beginClose() throws IOException;
+
+    /**
+     * Whether nothing is left to submit, so the channel can be released
+     * once its operations in flight have completed.
+     */
+    boolean drained() {
+        return true;
+    }
+
+    /**
+     * Returns the memory and descriptors held besides the socket; called
+     * once no operation is in flight.
+     */
+    abstract void release();
+
+    @Override
+    protected void doClose() throws IOException {
+        IoUringEventLoop loop = eventLoop;
+        if (loop == null) {
+            closeDescriptor();
+            return;
+        }
+        loop.close(this);
+    }
+
+    /**
+     * Closes the descriptor on behalf of the event loop.
+     */
+    void closeNow() throws IOException {
+        release();
+        closeDescriptor();
+    }
+}
@@ -0,0 +1,126 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.unix.Native;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Receive buffers provided to the kernel through a registered buffer ring
+ * ({@code IORING_REGISTER_PBUF_RING}). A receive picks a buffer only once
+ * data arrives, so idle connections hold no receive memory; the buffer is
+ * handed back with {@link #recycle} once its bytes are consumed.
+ * Event loop only.
+ */
+final class BufferRing implements AutoCloseable {
+
+    static final short GROUP_ID = 0;
+
+    private final IoUring ring;
+    private final int count;
+    private final int mask;
+    private final int bufferSize;
+    private final MemorySegment entries;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment buffers;
+    private short tail;
+    private boolean closed;
+
+    private BufferRing(IoUring ring, int count, int bufferSize, MemorySegment entries) {
+        this.ring = ring;
+        this.count = count;
+        this.mask = count - 1;
+        this.bufferSize = bufferSize;
+        this.entries = entries;
+        this.buffers = arena.allocate((long) count * bufferSize, 64);
+    }
+
+    /**
+     * Registers {@code count} buffers of {@code bufferSize} bytes with
+     * {@code ring}; {@code count} must be a power of two.
+     */
+    static BufferRing register(IoUring ring, int count, int bufferSize) throws IOException {
+        Native.Scratch s = Native.scratch();
+        // must be page aligned; an anonymous mapping is
+        MemorySegment entries = IoUringNative.mmap(s, IoUringNative.BUF_SIZE * count, IoUringNative.PROT_READ_WRITE,
+                IoUringNative.MAP_PRIVATE_ANONYMOUS, -1, 0);
+        if (entries == null) {
+            throw Native.newIOException("mmap", s.errno());
+        }
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment reg = arena.allocate(IoUringNative.BUF_REG_SIZE, 8);
+            reg.set(JAVA_LONG, 0, entries.address());
+            reg.set(JAVA_INT, 8, count);
+            reg.set(JAVA_SHORT, 12, GROUP_ID);
+            if (IoUringNative.ioUringRegister(s, ring.fd(), IoUringNative.IORING_REGISTER_PBUF_RING, reg, 1) != 0) {
+                IOException e = Native.newIOException("io_uring_register PBUF_RING (kernel 5.19 or later is required)", s.errno());
+                IoUringNative.munmap(s, entries);
+                throw e;
+            }
+        }
+        BufferRing bufferRing = new BufferRing(ring, count, bufferSize, entries);
+        for (int id = 0; id < count; id++) {
+            bufferRing.add(id);
+        }
+        bufferRing.publish();
+        return bufferRing;
+    }
+
+    int bufferSize() {
+        return bufferSize;
+    }
+
+    /**
+     * The first {@code length} bytes of buffer {@code id}.
+     */
+    MemorySegment buffer(int id, int length) {
+        return buffers.asSlice((long) id * bufferSize, length);
+    }
+
+    /**
+     * Gives buffer {@code id} back to the kernel.
+     */
+    void recycle(int id) {
+        add(id);
+        publish();
+    }
+
+    private void add(int id) {
+        // set field by field: the tail lives in the reserved field of entry 0
+        long entry = (long) (tail & mask) * IoUringNative.BUF_SIZE;
+        entries.set(JAVA_LONG, entry, buffers.address() + (long) id * bufferSize);
+        entries.set(JAVA_INT, entry + 8, bufferSize);
+        entries.set(JAVA_SHORT, entry + 12, (short) id);
+        tail++;
+    }
+
+    private void publish() {
+        IoUringNative.SHORT_HANDLE.setRelease(entries, IoUringNative.BUF_RING_TAIL, tail);
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Native.Scratch s = Native.scratch();
+        try (Arena scratch = Arena.ofConfined()) {
+            MemorySegment reg = scratch.allocate(IoUringNative.BUF_REG_SIZE, 8);
+            reg.set(JAVA_SHORT, 12, GROUP_ID);
+            IoUringNative.ioUringRegister(s, ring.fd(), IoUringNative.IORING_UNREGISTER_PBUF_RING, reg, 1);
+        }
+        IoUringNative.munmap(s, entries);
+        arena.close();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferRing[" + count + " x " + bufferSize + "]";
+    }
+}
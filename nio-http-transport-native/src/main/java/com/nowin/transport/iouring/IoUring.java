@@ -0,0 +1,282 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.unix.Native;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * One submission/completion queue pair. Submission entries are filled in
+ * place and handed to the kernel in one {@code io_uring_enter} per loop
+ * pass; completions are consumed straight from the shared ring without a
+ * system call. Not thread-safe: owned by one event loop.
+ */
+final class IoUring implements AutoCloseable {
+
+    /**
+     * Receives the completions consumed by {@link #drainCompletions}.
+     */
+    interface CompletionHandler {
+        void complete(long userData, int res, int flags);
+    }
+
+    private final int ringFd;
+    private final int features;
+    private final MemorySegment sqRing;
+    private final MemorySegment cqRing;
+    private final MemorySegment sqes;
+    private final long sqHeadOffset;
+    private final long sqTailOffset;
+    private final int sqMask;
+    private final int sqEntries;
+    private final long cqHeadOffset;
+    private final long cqTailOffset;
+    private final int cqMask;
+    private final long cqesOffset;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment waitArg;
+    private final MemorySegment timespec;
+    // Entries filled since the last submit; the kernel's head trails our tail by this much
+    private int sqTail;
+    private int unsubmitted;
+    private boolean closed;
+
+    private IoUring(int ringFd, MemorySegment params, MemorySegment sqRing, MemorySegment cqRing, MemorySegment sqes) {
+        this.ringFd = ringFd;
+        this.features = params.get(JAVA_INT, IoUringNative.PARAMS_FEATURES);
+        this.sqRing = sqRing;
+        this.cqRing = cqRing;
+        this.sqes = sqes;
+        long sqOff = IoUringNative.PARAMS_SQ_OFF;
+        long cqOff = IoUringNative.PARAMS_CQ_OFF;
+        this.sqHeadOffset = params.get(JAVA_INT, sqOff + IoUringNative.SQ_OFF_HEAD);
+        this.sqTailOffset = params.get(JAVA_INT, sqOff + IoUringNative.SQ_OFF_TAIL);
+        this.sqMask = sqRing.get(JAVA_INT, params.get(JAVA_INT, sqOff + IoUringNative.SQ_OFF_RING_MASK));
+        this.sqEntries = params.get(JAVA_INT, IoUringNative.PARAMS_SQ_ENTRIES);
+        this.cqHeadOffset = params.get(JAVA_INT, cqOff + IoUringNative.CQ_OFF_HEAD);
+        this.cqTailOffset = params.get(JAVA_INT, cqOff + IoUringNative.CQ_OFF_TAIL);
+        this.cqMask = cqRing.get(JAVA_INT, params.get(JAVA_INT, cqOff + IoUringNative.CQ_OFF_RING_MASK));
+        this.cqesOffset = params.get(JAVA_INT, cqOff + IoUringNative.CQ_OFF_CQES);
+        this.sqTail = (int) IoUringNative.INT_HANDLE.getAcquire(sqRing, sqTailOffset);
+        // Entry i of the submission array always names sqe i
+        long array = params.get(JAVA_INT, sqOff + IoUringNative.SQ_OFF_ARRAY);
+        for (int i = 0; i < sqEntries; i++) {
+            sqRing.set(JAVA_INT, array + 4L * i, i);
+        }
+        this.waitArg = arena.allocate(IoUringNative.GETEVENTS_ARG_SIZE, 8);
+        this.timespec = arena.allocate(IoUringNative.TIMESPEC_SIZE, 8);
+        waitArg.set(JAVA_LONG, IoUringNative.GETEVENTS_ARG_TS, timespec.address());
+    }
+
+    /**
+     * Sets up a ring of {@code entries} submission entries. Completions are
+     * posted as they happen rather than deferred to the next
+     * {@code io_uring_enter} ({@code IORING_SETUP_COOP_TASKRUN}), since a
+     * loop with tasks queued polls the ring without entering the kernel.
+     */
+    static IoUring open(int entries) throws IOException {
+        Native.Scratch s = Native.scratch();
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment params = arena.allocate(IoUringNative.PARAMS_SIZE, 8);
+            params.set(JAVA_INT, IoUringNative.PARAMS_FLAGS, IoUringNative.IORING_SETUP_SUBMIT_ALL);
+            int fd = IoUringNative.ioUringSetup(s, entries, params);
+            if (fd < 0 && s.errno() == Native.EINVAL) {
+                // pre-5.18 kernel; plain setup
+                params.fill((byte) 0);
+                fd = IoUringNative.ioUringSetup(s, entries, params);
+            }
+            if (fd < 0) {
+                throw Native.newIOException("io_uring_setup", s.errno());
+            }
+            try {
+                return map(fd, params);
+            } catch (IOException | RuntimeException e) {
+                Native.close(s, fd);
+                throw e;
+            }
+        }
+    }
+
+    private static IoUring map(int fd, MemorySegment params) throws IOException {
+        Native.Scratch s = Native.scratch();
+        int features = params.get(JAVA_INT, IoUringNative.PARAMS_FEATURES);
+        if ((features & IoUringNative.IORING_FEAT_EXT_ARG) == 0 || (features & IoUringNative.IORING_FEAT_NODROP) == 0) {
+            throw new IOException("io_uring lacks IORING_FEAT_EXT_ARG or IORING_FEAT_NODROP; kernel 5.11 or later is required");
+        }
+        int sqEntries = params.get(JAVA_INT, IoUringNative.PARAMS_SQ_ENTRIES);
+        int cqEntries = params.get(JAVA_INT, IoUringNative.PARAMS_CQ_ENTRIES);
+        long sqSize = params.get(JAVA_INT, IoUringNative.PARAMS_SQ_OFF + IoUringNative.SQ_OFF_ARRAY) + 4L * sqEntries;
+        long cqSize = params.get(JAVA_INT, IoUringNative.PARAMS_CQ_OFF + IoUringNative.CQ_OFF_CQES) + IoUringNative.CQE_SIZE * cqEntries;
+        boolean singleMmap = (features & IoUringNative.IORING_FEAT_SINGLE_MMAP) != 0;
+        if (singleMmap) {
+            sqSize = cqSize = Math.max(sqSize, cqSize);
+        }
+        MemorySegment sqRing = IoUringNative.mmap(s, sqSize, IoUringNative.PROT_READ_WRITE,
+                IoUringNative.MAP_SHARED_POPULATE, fd, IoUringNative.IORING_OFF_SQ_RING);
+        if (sqRing == null) {
+            throw Native.newIOException("mmap", s.errno());
+        }
+        MemorySegment cqRing = sqRing;
+        if (!singleMmap) {
+            cqRing = IoUringNative.mmap(s, cqSize, IoUringNative.PROT_READ_WRITE,
+                    IoUringNative.MAP_SHARED_POPULATE, fd, IoUringNative.IORING_OFF_CQ_RING);
+            if (cqRing == null) {
+                IOException e = Native.newIOException("mmap", s.errno());
+                IoUringNative.munmap(s, sqRing);
+                throw e;
+            }
+        }
+        MemorySegment sqes = IoUringNative.mmap(s, IoUringNative.SQE_SIZE * sqEntries, IoUringNative.PROT_READ_WRITE,
+                IoUringNative.MAP_SHARED_POPULATE, fd, IoUringNative.IORING_OFF_SQES);
+        if (sqes == null) {
+            IOException e = Native.newIOException("mmap", s.errno());
+            IoUringNative.munmap(s, sqRing);
+            if (cqRing != sqRing) {
+                IoUringNative.munmap(s, cqRing);
+            }
+            throw e;
+        }
+        return new IoUring(fd, params, sqRing, cqRing, sqes);
+    }
+
+    int fd() {
+        return ringFd;
+    }
+
+    int features() {
+        return features;
+    }
+
+    /**
+     * A zeroed submission entry, submitting what is queued first if the
+     * ring is full.
+     */
+    MemorySegment nextSqe() throws IOException {
+        if (unsubmitted == sqEntries) {
+            submit();
+        }
+        MemorySegment sqe = sqes.asSlice((long) (sqTail & sqMask) * IoUringNative.SQE_SIZE, IoUringNative.SQE_SIZE);
+        sqe.fill((byte) 0);
+        sqTail++;
+        unsubmitted++;
+        return sqe;
+    }
+
+    static void prepare(MemorySegment sqe, byte opcode, int fd, long address, int length, long offset, long userData) {
+        sqe.set(JAVA_BYTE, IoUringNative.SQE_OPCODE, opcode);
+        sqe.set(JAVA_INT, IoUringNative.SQE_FD, fd);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_OFF, offset);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_ADDR, address);
+        sqe.set(JAVA_INT, IoUringNative.SQE_LEN, length);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_USER_DATA, userData);
+    }
+
+    boolean hasUnsubmitted() {
+        return unsubmitted > 0;
+    }
+
+    /**
+     * Hands the queued entries to the kernel without waiting.
+     */
+    void submit() throws IOException {
+        enter(0, -1);
+    }
+
+    /**
+     * Submits the queued entries and waits up to {@code timeoutMillis} for
+     * at least one completion; a timeout of {@code 0} does not wait.
+     */
+    void submitAndWait(long timeoutMillis) throws IOException {
+        enter(timeoutMillis > 0 ? 1 : 0, timeoutMillis);
+    }
+
+    private void enter(int minComplete, long timeoutMillis) throws IOException {
+        if (unsubmitted == 0 && minComplete == 0) {
+            return;
+        }
+        IoUringNative.INT_HANDLE.setRelease(sqRing, sqTailOffset, sqTail);
+        Native.Scratch s = Native.scratch();
+        int flags = 0;
+        MemorySegment arg = MemorySegment.NULL;
+        long argSize = 0;
+        if (minComplete > 0) {
+            flags = IoUringNative.IORING_ENTER_GETEVENTS | IoUringNative.IORING_ENTER_EXT_ARG;
+            timespec.set(JAVA_LONG, 0, timeoutMillis / 1000);
+            timespec.set(JAVA_LONG, 8, (timeoutMillis % 1000) * 1_000_000);
+            arg = waitArg;
+            argSize = IoUringNative.GETEVENTS_ARG_SIZE;
+        }
+        int submitted = IoUringNative.ioUringEnter(s, ringFd, unsubmitted, minComplete, flags, arg, argSize);
+        if (submitted < 0) {
+            int errno = s.errno();
+            if (errno == Native.EINTR || errno == IoUringNative.ETIME || errno == Native.EAGAIN || errno == IoUringNative.EBUSY) {
+                // interrupted, timed out, or completions to reap first; nothing lost either way
+                syncUnsubmitted();
+                return;
+            }
+            throw Native.newIOException("io_uring_enter", errno);
+        }
+        syncUnsubmitted();
+    }
+
+    private void syncUnsubmitted() {
+        int head = (int) IoUringNative.INT_HANDLE.getAcquire(sqRing, sqHeadOffset);
+        unsubmitted = sqTail - head;
+    }
+
+    /**
+     * Completions posted and not yet consumed.
+     */
+    int completionsReady() {
+        int head = (int) IoUringNative.INT_HANDLE.getAcquire(cqRing, cqHeadOffset);
+        int tail = (int) IoUringNative.INT_HANDLE.getAcquire(cqRing, cqTailOffset);
+        return tail - head;
+    }
+
+    /**
+     * Hands every posted completion to {@code handler} and frees its slot.
+     *
+     * @return the number of completions consumed
+     */
+    int drainCompletions(CompletionHandler handler) {
+        int head = (int) IoUringNative.INT_HANDLE.getAcquire(cqRing, cqHeadOffset);
+        int tail = (int) IoUringNative.INT_HANDLE.getAcquire(cqRing, cqTailOffset);
+        int count = 0;
+        while (head != tail) {
+            long cqe = cqesOffset + (long) (head & cqMask) * IoUringNative.CQE_SIZE;
+            long userData = cqRing.get(JAVA_LONG, cqe + IoUringNative.CQE_USER_DATA);
+            int res = cqRing.get(JAVA_INT, cqe + IoUringNative.CQE_RES);
+            int flags = cqRing.get(JAVA_INT, cqe + IoUringNative.CQE_FLAGS);
+            head++;
+            count++;
+            // release the slot before the handler runs; it may submit and complete more
+            IoUringNative.INT_HANDLE.setRelease(cqRing, cqHeadOffset, head);
+            handler.complete(userData, res, flags);
+            if (head == tail) {
+                tail = (int) IoUringNative.INT_HANDLE.getAcquire(cqRing, cqTailOffset);
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Native.Scratch s = Native.scratch();
+        IoUringNative.munmap(s, sqes);
+        IoUringNative.munmap(s, sqRing);
+        if (cqRing != sqRing) {
+            IoUringNative.munmap(s, cqRing);
+        }
+        Native.close(s, ringFd);
+        arena.close();
+    }
+}
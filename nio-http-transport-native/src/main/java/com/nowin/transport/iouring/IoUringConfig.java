@@ -0,0 +1,107 @@
+package com.nowin.transport.iouring;
+
+/**
+ * Settings of the io_uring transport. The defaults can be overridden with
+ * {@code nowin.iouring.*} system properties when the transport is picked up
+ * through {@code server.transport=io_uring}, or by passing a config to
+ * {@link IoUringTransportFactory#IoUringTransportFactory(IoUringConfig)}.
+ */
+public class IoUringConfig {
+
+    private static final int MAX_RING_ENTRIES = 32768;
+
+    private int ringSize = 1024;
+    private int receiveBufferSize = 8192;
+    private int receiveBuffers = 256;
+    private int sendBufferSize = 65536;
+
+    /**
+     * Reads {@code nowin.iouring.ringSize}, {@code nowin.iouring.receiveBufferSize},
+     * {@code nowin.iouring.receiveBuffers} and {@code nowin.iouring.sendBufferSize}.
+     */
+    public static IoUringConfig fromSystemProperties() {
+        IoUringConfig config = new IoUringConfig();
+        config.setRingSize(Integer.getInteger("nowin.iouring.ringSize", config.ringSize));
+        config.setReceiveBufferSize(Integer.getInteger("nowin.iouring.receiveBufferSize", config.receiveBufferSize));
+        config.setReceiveBuffers(Integer.getInteger("nowin.iouring.receiveBuffers", config.receiveBuffers));
+        config.setSendBufferSize(Integer.getInteger("nowin.iouring.sendBufferSize", config.sendBufferSize));
+        return config;
+    }
+
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    /**
+     * Submission queue entries per event loop; the completion queue is
+     * twice as large. Operations queued beyond it are submitted early.
+     */
+    public IoUringConfig setRingSize(int ringSize) {
+        this.ringSize = ringSize;
+        return this;
+    }
+
+    public int getReceiveBufferSize() {
+        return receiveBufferSize;
+    }
+
+    /**
+     * Size of each buffer the kernel receives into.
+     */
+    public IoUringConfig setReceiveBufferSize(int receiveBufferSize) {
+        this.receiveBufferSize = receiveBufferSize;
+        return this;
+    }
+
+    public int getReceiveBuffers() {
+        return receiveBuffers;
+    }
+
+    /**
+     * Receive buffers shared by the connections of one event loop, a power
+     * of two. A connection holds one only while its bytes are unread; when
+     * all are held, further receives wait for one to be returned.
+     */
+    public IoUringConfig setReceiveBuffers(int receiveBuffers) {
+        this.receiveBuffers = receiveBuffers;
+        return this;
+    }
+
+    public int getSendBufferSize() {
+        return sendBufferSize;
+    }
+
+    /**
+     * Bytes a connection may have staged for sending; a write that finds
+     * it full returns 0 until a send completes.
+     */
+    public IoUringConfig setSendBufferSize(int sendBufferSize) {
+        this.sendBufferSize = sendBufferSize;
+        return this;
+    }
+
+    public void validate() {
+        if (ringSize < 1 || ringSize > MAX_RING_ENTRIES) {
+            throw new IllegalArgumentException("Ring size must be between 1 and " + MAX_RING_ENTRIES + ", got: " + ringSize);
+        }
+        if (receiveBufferSize < 1) {
+            throw new IllegalArgumentException("Receive buffer size must be >= 1, got: " + receiveBufferSize);
+        }
+        if (receiveBuffers < 1 || receiveBuffers > MAX_RING_ENTRIES || Integer.bitCount(receiveBuffers) != 1) {
+            throw new IllegalArgumentException("Receive buffers must be a power of two up to " + MAX_RING_ENTRIES + ", got: " + receiveBuffers);
+        }
+        if (sendBufferSize < 1) {
+            throw new IllegalArgumentException("Send buffer size must be >= 1, got: " + sendBufferSize);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IoUringConfig{" +
+                "ringSize=" + ringSize +
+                ", receiveBufferSize=" + receiveBufferSize +
+                ", receiveBuffers=" + receiveBuffers +
+                ", sendBufferSize=" + sendBufferSize +
+                '}';
+    }
+}
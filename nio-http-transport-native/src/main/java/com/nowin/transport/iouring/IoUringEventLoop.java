@@ -0,0 +1,551 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.pipeline.Channel;
+import com.nowin.transport.SingleThreadEventLoop;
+import com.nowin.transport.TransportAcceptHandler;
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.unix.Native;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Event loop driven by an io_uring instance.
+ * <p>
+ * Receives, sends, accepts and splices are queued as submission entries
+ * while the loop runs and go to the kernel together in the one
+ * {@code io_uring_enter} that also waits for the next completions, so a
+ * busy loop makes one system call per pass however many connections it
+ * serves. Completions update the state of their channel, and the
+ * {@link IoUringSelectionKey} readiness derived from it drives the same
+ * {@link #handleRead}/{@link #handleWrite} paths, and pipeline, as the
+ * other transports. Wakeups arrive as the completion of a read on an
+ * {@code eventfd}.
+ */
+public class IoUringEventLoop extends SingleThreadEventLoop {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoUringEventLoop.class);
+
+    // Operation codes in the low byte of user_data
+    static final int OP_RECV = 1;
+    static final int OP_SEND = 2;
+    static final int OP_ACCEPT = 3;
+    static final int OP_SPLICE_IN = 4;
+    static final int OP_SPLICE_OUT = 5;
+    static final int OP_CANCEL = 6;
+    private static final long WAKEUP_USER_DATA = -1L;
+
+    private static final long CLOSE_LINGER_MILLIS = 10_000;
+    private static final long SHUTDOWN_DRAIN_MILLIS = 1_000;
+    private static final int MAX_POOLED_SEND_BUFFERS = 64;
+
+    private final IoUringConfig config;
+    private final IoUring ring;
+    private final BufferRing bufferRing;
+    private final int eventFd;
+    private final Arena arena = Arena.ofShared();
+    private final MemorySegment wakeupValue;
+    private final MemorySegment drainValue;
+    private final AtomicInteger channelCount = new AtomicInteger();
+    // Guards eventFd against a wakeup racing the loop closing it
+    private final Object eventFdLock = new Object();
+    private boolean eventFdClosed;
+    private volatile boolean terminated;
+    // Event loop only
+    private AbstractIoUringChannel[] channels = new AbstractIoUringChannel[256];
+    private int[] freeSlots = new int[256];
+    private int freeSlotCount;
+    private int nextSlot;
+    private final ArrayDeque<IoUringSelectionKey> readyKeys = new ArrayDeque<>();
+    private final ArrayDeque<IoUringSocketChannel> pendingFlushes = new ArrayDeque<>();
+    private final ArrayDeque<IoUringSocketChannel> starvedReceivers = new ArrayDeque<>();
+    private final ArrayDeque<MemorySegment> sendBuffers = new ArrayDeque<>();
+    private final IoUring.CompletionHandler completionHandler = this::complete;
+
+    public IoUringEventLoop(IoUringConfig config) {
+        super("IoUringEventLoop");
+        this.config = config;
+        this.wakeupValue = arena.allocate(JAVA_LONG);
+        this.wakeupValue.set(JAVA_LONG, 0, 1L);
+        this.drainValue = arena.allocate(JAVA_LONG);
+        IoUring ring = null;
+        BufferRing bufferRing = null;
+        try {
+            ring = IoUring.open(config.getRingSize());
+            bufferRing = BufferRing.register(ring, config.getReceiveBuffers(), config.getReceiveBufferSize());
+        } catch (IOException e) {
+            if (ring != null) {
+                ring.close();
+            }
+            arena.close();
+            throw new RuntimeException("failed to set up io_uring", e);
+        }
+        this.ring = ring;
+        this.bufferRing = bufferRing;
+        Native.Scratch s = Native.scratch();
+        this.eventFd = Native.eventfd(s, 0, Native.EFD_CLOEXEC);
+        if (eventFd < 0) {
+            IOException cause = Native.newIOException("eventfd", s.errno());
+            bufferRing.close();
+            ring.close();
+            arena.close();
+            throw new RuntimeException("failed to set up io_uring", cause);
+        }
+        armWakeup();
+    }
+
+    /**
+     * Sets up and tears down a minimal ring with a buffer ring registered,
+     * the kernel features every loop relies on.
+     */
+    static void probe() throws IOException {
+        try (IoUring ring = IoUring.open(2); BufferRing buffers = BufferRing.register(ring, 1, 64)) {
+            logger.debug("io_uring available, features 0x{}", Integer.toHexString(ring.features()));
+        }
+    }
+
+    static long userData(int slot, int tag, int op) {
+        return ((long) slot << 16) | (tag << 8) | op;
+    }
+
+    /**
+     * Flushes the sends staged since the last pass, then submits everything
+     * queued and waits for a completion.
+     */
+    @Override
+    protected int select(long timeoutMillis) throws IOException {
+        flushPendingSends();
+        ring.submitAndWait(Math.max(1, timeoutMillis));
+        return ring.completionsReady();
+    }
+
+    @Override
+    protected int selectNow() throws IOException {
+        flushPendingSends();
+        ring.submit();
+        return ring.completionsReady();
+    }
+
+    @Override
+    protected boolean hasPendingIo() {
+        return !readyKeys.isEmpty() || ring.completionsReady() > 0;
+    }
+
+    @Override
+    protected void processSelected() {
+        ring.drainCompletions(completionHandler);
+        processReadyKeys();
+    }
+
+    private void complete(long userData, int res, int flags) {
+        if (userData == WAKEUP_USER_DATA) {
+            if (!terminated) {
+                armWakeup();
+            }
+            return;
+        }
+        int slot = (int) (userData >>> 16);
+        AbstractIoUringChannel channel = slot < channels.length ? channels[slot] : null;
+        if (channel == null) {
+            return;
+        }
+        channel.inflight--;
+        int op = (int) (userData & 0xff);
+        if (op != OP_CANCEL) {
+            try {
+                channel.completed(op, (int) (userData >>> 8) & 0xff, res, flags);
+            } catch (IOException | RuntimeException e) {
+                logger.debug("Completion of op {} on {} failed: {}", op, channel, e.toString());
+            }
+        }
+        if (channel.closing) {
+            finishCloseIfDrained(channel);
+            return;
+        }
+        IoUringSelectionKey key = channel.key();
+        if (key != null) {
+            enqueueIfReady(key);
+        }
+    }
+
+    /**
+     * Runs the keys made ready before this pass; keys made ready while
+     * doing so wait for the next one, after tasks and timers.
+     */
+    private void processReadyKeys() {
+        for (int i = readyKeys.size(); i > 0; i--) {
+            IoUringSelectionKey key = readyKeys.poll();
+            key.queued = false;
+            if (!key.isValid()) {
+                continue;
+            }
+            int ops = key.pendingOps();
+            if (ops != 0) {
+                processKey(key, ops);
+            }
+        }
+    }
+
+    private void processKey(IoUringSelectionKey key, int ops) {
+        Object attachment = key.attachment();
+        key.readyOps = ops;
+        try {
+            if ((ops & TransportSelectionKey.OP_ACCEPT) != 0) {
+                ((TransportAcceptHandler) attachment).acceptReady(key);
+            }
+            if ((ops & TransportSelectionKey.OP_READ) != 0) {
+                handleRead((Channel) attachment);
+                if (!key.isValid()) {
+                    return;
+                }
+            }
+            if ((ops & TransportSelectionKey.OP_WRITE) != 0) {
+                handleWrite((Channel) attachment);
+            }
+        } catch (Exception e) {
+            handleChannelFailure(attachment, e);
+        } finally {
+            key.readyOps = 0;
+        }
+        // e.g. the accept batch ran out with connections still queued
+        enqueueIfReady(key);
+    }
+
+    private void enqueueIfReady(IoUringSelectionKey key) {
+        if (key.isValid() && !key.queued && key.pendingOps() != 0) {
+            key.queued = true;
+            readyKeys.add(key);
+        }
+    }
+
+    void interestOpsChanged(IoUringSelectionKey key) {
+        if (!inEventLoop()) {
+            execute(() -> interestOpsChanged(key));
+            return;
+        }
+        if (!key.isValid()) {
+            return;
+        }
+        try {
+            key.ioUringChannel().interestChanged(key.interestOps());
+        } catch (IOException e) {
+            logger.debug("Interest change on {} failed: {}", key, e.toString());
+        }
+        enqueueIfReady(key);
+    }
+
+    @Override
+    public void register(TransportChannel channel, int ops, Object attachment) {
+        if (inEventLoop()) {
+            register0(channel, ops, attachment);
+        } else {
+            execute(() -> register0(channel, ops, attachment));
+        }
+    }
+
+    private void register0(TransportChannel channel, int ops, Object attachment) {
+        if (!(channel instanceof AbstractIoUringChannel ioUringChannel)) {
+            throw new IllegalArgumentException("Not an io_uring channel: " + channel);
+        }
+        // set before the open check, so a concurrent close either sees it and defers to us or closed first
+        ioUringChannel.setEventLoop(this);
+        if (!ioUringChannel.isOpen()) {
+            return;
+        }
+        ioUringChannel.slot = allocateSlot(ioUringChannel);
+        IoUringSelectionKey key = new IoUringSelectionKey(this, ioUringChannel, ops, attachment);
+        ioUringChannel.setSelectionKey(key);
+        channelCount.incrementAndGet();
+        try {
+            ioUringChannel.registered();
+        } catch (IOException e) {
+            throw new RuntimeException("failed to register channel", e);
+        }
+        enqueueIfReady(key);
+    }
+
+    private int allocateSlot(AbstractIoUringChannel channel) {
+        int slot;
+        if (freeSlotCount > 0) {
+            slot = freeSlots[--freeSlotCount];
+        } else {
+            slot = nextSlot++;
+            if (slot >= channels.length) {
+                channels = Arrays.copyOf(channels, channels.length * 2);
+            }
+        }
+        channels[slot] = channel;
+        return slot;
+    }
+
+    private void freeSlot(AbstractIoUringChannel channel) {
+        int slot = channel.slot;
+        if (slot < 0) {
+            return;
+        }
+        channels[slot] = null;
+        channel.slot = -1;
+        if (freeSlotCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeSlots.length * 2);
+        }
+        freeSlots[freeSlotCount++] = slot;
+    }
+
+    void cancel(IoUringSelectionKey key) {
+        channelCount.decrementAndGet();
+    }
+
+    /**
+     * Closes a channel registered with this loop, once the operations it
+     * has in flight complete; sends already staged are given
+     * {@value #CLOSE_LINGER_MILLIS}ms to finish before the socket is shut
+     * down under them.
+     */
+    void close(AbstractIoUringChannel channel) throws IOException {
+        if (terminated) {
+            channel.closeNow();
+            return;
+        }
+        if (!inEventLoop()) {
+            execute(() -> closeQuietly(channel));
+            return;
+        }
+        if (channel.slot < 0) {
+            channel.closeNow();
+            return;
+        }
+        if (channel.closing) {
+            return;
+        }
+        channel.closing = true;
+        channel.beginClose();
+        if (!finishCloseIfDrained(channel)) {
+            schedule(() -> {
+                if (channel.slot >= 0 && channel.closing) {
+                    logger.debug("{} did not drain in {}ms, shutting it down", channel, CLOSE_LINGER_MILLIS);
+                    Native.shutdown(Native.scratch(), channel.fd(), Native.SHUT_RDWR);
+                }
+            }, CLOSE_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void closeQuietly(AbstractIoUringChannel channel) {
+        try {
+            close(channel);
+        } catch (IOException e) {
+            logger.debug("Error closing {}: {}", channel, e.toString());
+        }
+    }
+
+    private boolean finishCloseIfDrained(AbstractIoUringChannel channel) {
+        if (channel.inflight > 0 || !channel.drained() || channel.slot < 0) {
+            return false;
+        }
+        freeSlot(channel);
+        try {
+            channel.closeNow();
+        } catch (IOException e) {
+            logger.debug("Error closing {}: {}", channel, e.toString());
+        }
+        return true;
+    }
+
+    // Operations submitted on behalf of channels
+
+    /**
+     * A submission entry for {@code op} on {@code channel}, counted as in
+     * flight until its completion is processed.
+     */
+    MemorySegment sqe(AbstractIoUringChannel channel, byte opcode, int tag, int op) throws IOException {
+        MemorySegment sqe = ring.nextSqe();
+        IoUring.prepare(sqe, opcode, channel.fd(), 0, 0, 0, userData(channel.slot, tag, op));
+        channel.inflight++;
+        return sqe;
+    }
+
+    /**
+     * Asks the kernel to cancel the operation {@code op} of {@code channel}.
+     */
+    void cancelOperation(AbstractIoUringChannel channel, int tag, int op) throws IOException {
+        MemorySegment sqe = sqe(channel, IoUringNative.IORING_OP_ASYNC_CANCEL, 0, OP_CANCEL);
+        sqe.set(JAVA_INT, IoUringNative.SQE_FD, -1);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_ADDR, userData(channel.slot, tag, op));
+    }
+
+    /**
+     * Submits a receive that picks a buffer from the provided ring when
+     * data arrives.
+     */
+    void submitRecv(IoUringSocketChannel channel) throws IOException {
+        MemorySegment sqe = sqe(channel, IoUringNative.IORING_OP_RECV, 0, OP_RECV);
+        sqe.set(JAVA_BYTE, IoUringNative.SQE_FLAGS, IoUringNative.IOSQE_BUFFER_SELECT);
+        sqe.set(JAVA_INT, IoUringNative.SQE_LEN, bufferRing.bufferSize());
+        sqe.set(JAVA_SHORT, IoUringNative.SQE_BUF_GROUP, BufferRing.GROUP_ID);
+    }
+
+    MemorySegment receiveBuffer(int id, int length) {
+        return bufferRing.buffer(id, length);
+    }
+
+    /**
+     * Returns a receive buffer and restarts a receive that found none.
+     */
+    void recycleReceiveBuffer(int id) {
+        bufferRing.recycle(id);
+        IoUringSocketChannel starved;
+        while ((starved = starvedReceivers.poll()) != null) {
+            if (starved.resumeReceive()) {
+                break;
+            }
+        }
+    }
+
+    void receiveStarved(IoUringSocketChannel channel) {
+        starvedReceivers.add(channel);
+    }
+
+    void flushLater(IoUringSocketChannel channel) {
+        pendingFlushes.add(channel);
+    }
+
+    private void flushPendingSends() {
+        IoUringSocketChannel channel;
+        while ((channel = pendingFlushes.poll()) != null) {
+            try {
+                channel.flush();
+            } catch (IOException e) {
+                logger.debug("Send on {} failed: {}", channel, e.toString());
+            }
+        }
+    }
+
+    MemorySegment acquireSendBuffer() {
+        MemorySegment buffer = sendBuffers.poll();
+        return buffer != null ? buffer : Arena.ofAuto().allocate(config.getSendBufferSize(), 64);
+    }
+
+    void releaseSendBuffer(MemorySegment buffer) {
+        if (sendBuffers.size() < MAX_POOLED_SEND_BUFFERS) {
+            sendBuffers.push(buffer);
+        }
+    }
+
+    IoUringConfig config() {
+        return config;
+    }
+
+    // Wakeups
+
+    private void armWakeup() {
+        try {
+            MemorySegment sqe = ring.nextSqe();
+            IoUring.prepare(sqe, IoUringNative.IORING_OP_READ, eventFd, drainValue.address(), 8, -1, WAKEUP_USER_DATA);
+        } catch (IOException e) {
+            logger.error("Failed to arm the wakeup read", e);
+        }
+    }
+
+    @Override
+    protected void wakeupSelector() {
+        synchronized (eventFdLock) {
+            if (!eventFdClosed) {
+                Native.write(Native.scratch(), eventFd, wakeupValue, 8);
+            }
+        }
+    }
+
+    /**
+     * Interest changes reach the loop through {@link #execute}, which
+     * wakes it, so there is nothing else to wake for.
+     */
+    @Override
+    public void wakeup() {
+    }
+
+    /**
+     * Shuts every socket down so operations in flight complete, waits
+     * briefly for their completions, then closes the sockets and the ring.
+     * Memory the kernel may still write into is leaked rather than freed if
+     * an operation is still outstanding.
+     */
+    @Override
+    protected void closeSelector() {
+        Native.Scratch s = Native.scratch();
+        for (AbstractIoUringChannel channel : channels) {
+            if (channel != null) {
+                channel.closing = true;
+                Native.shutdown(s, channel.fd(), Native.SHUT_RDWR);
+            }
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_DRAIN_MILLIS);
+        int outstanding = inflightOperations();
+        while (outstanding > 0 && System.nanoTime() - deadline < 0) {
+            try {
+                ring.submitAndWait(10);
+            } catch (IOException e) {
+                logger.debug("io_uring_enter failed while draining: {}", e.toString());
+                break;
+            }
+            ring.drainCompletions(completionHandler);
+            outstanding = inflightOperations();
+        }
+        // from here on, closing a channel closes its descriptor on the calling thread
+        terminated = true;
+        for (AbstractIoUringChannel channel : channels) {
+            if (channel == null) {
+                continue;
+            }
+            freeSlot(channel);
+            try {
+                if (channel.isOpen()) {
+                    channel.close();
+                } else {
+                    channel.closeNow();
+                }
+            } catch (IOException e) {
+                logger.debug("Error closing {}: {}", channel, e.toString());
+            }
+        }
+        synchronized (eventFdLock) {
+            eventFdClosed = true;
+            Native.close(s, eventFd);
+        }
+        if (outstanding > 0) {
+            logger.warn("IoUringEventLoop {} closed with {} operations outstanding", getId(), outstanding);
+            ring.close();
+            return;
+        }
+        bufferRing.close();
+        ring.close();
+        arena.close();
+        logger.info("IoUringEventLoop {} closed", getId());
+    }
+
+    private int inflightOperations() {
+        int total = 0;
+        for (AbstractIoUringChannel channel : channels) {
+            if (channel != null) {
+                total += channel.inflight;
+            }
+        }
+        return total;
+    }
+
+    @Override
+    public int getChannelCount() {
+        return channelCount.get();
+    }
+}
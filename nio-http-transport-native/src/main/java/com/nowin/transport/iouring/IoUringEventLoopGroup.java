@@ -0,0 +1,48 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.TransportEventLoop;
+import com.nowin.transport.TransportEventLoopGroup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class IoUringEventLoopGroup implements TransportEventLoopGroup {
+
+    private final List<IoUringEventLoop> eventLoops;
+    private final int nThreads;
+    // next() is called from the acceptor and from application threads
+    private final AtomicInteger next = new AtomicInteger();
+
+    public IoUringEventLoopGroup(int nThreads, IoUringConfig config) {
+        this.nThreads = nThreads;
+        this.eventLoops = new ArrayList<>(nThreads);
+        for (int i = 0; i < nThreads; i++) {
+            eventLoops.add(new IoUringEventLoop(config));
+        }
+    }
+
+    @Override
+    public void start() {
+        for (IoUringEventLoop loop : eventLoops) {
+            loop.start();
+        }
+    }
+
+    @Override
+    public TransportEventLoop next() {
+        return eventLoops.get(Math.floorMod(next.getAndIncrement(), nThreads));
+    }
+
+    @Override
+    public void shutdown() {
+        for (IoUringEventLoop loop : eventLoops) {
+            loop.shutdown();
+        }
+    }
+
+    @Override
+    public List<TransportEventLoop> getEventLoops() {
+        return new ArrayList<>(eventLoops);
+    }
+}
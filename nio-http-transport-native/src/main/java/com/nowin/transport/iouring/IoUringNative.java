@@ -0,0 +1,167 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.unix.Native;
+
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * The {@code io_uring} system calls, which libc does not wrap, and the
+ * layouts of the structures shared with the kernel; everything else comes
+ * from {@link Native}.
+ */
+final class IoUringNative {
+
+    private static final long SYS_IO_URING_SETUP = 425;
+    private static final long SYS_IO_URING_ENTER = 426;
+    private static final long SYS_IO_URING_REGISTER = 427;
+
+    static final int IORING_SETUP_SUBMIT_ALL = 1 << 7;
+    static final int IORING_FEAT_SINGLE_MMAP = 1;
+    static final int IORING_FEAT_NODROP = 1 << 1;
+    static final int IORING_FEAT_EXT_ARG = 1 << 8;
+    static final int IORING_ENTER_GETEVENTS = 1;
+    static final int IORING_ENTER_EXT_ARG = 1 << 3;
+    static final int IORING_REGISTER_PBUF_RING = 22;
+    static final int IORING_UNREGISTER_PBUF_RING = 23;
+    static final long IORING_OFF_SQ_RING = 0;
+    static final long IORING_OFF_CQ_RING = 0x8000000L;
+    static final long IORING_OFF_SQES = 0x10000000L;
+
+    static final byte IORING_OP_ACCEPT = 13;
+    static final byte IORING_OP_ASYNC_CANCEL = 14;
+    static final byte IORING_OP_READ = 22;
+    static final byte IORING_OP_SEND = 26;
+    static final byte IORING_OP_RECV = 27;
+    static final byte IORING_OP_SPLICE = 30;
+    static final byte IOSQE_IO_LINK = 1 << 2;
+    static final byte IOSQE_BUFFER_SELECT = 1 << 5;
+    static final int IORING_CQE_F_BUFFER = 1;
+    static final int IORING_CQE_BUFFER_SHIFT = 16;
+    static final int MSG_NOSIGNAL = 0x4000;
+    static final int ETIME = 62;
+    static final int EBUSY = 16;
+
+    static final int PROT_READ_WRITE = 0x3;
+    static final int MAP_SHARED_POPULATE = 0x8001;
+    static final int MAP_PRIVATE_ANONYMOUS = 0x22;
+    static final int F_SETPIPE_SZ = 1031;
+
+    // struct io_uring_params and its sq/cq offset blocks
+    static final long PARAMS_SIZE = 120;
+    static final long PARAMS_SQ_ENTRIES = 0;
+    static final long PARAMS_CQ_ENTRIES = 4;
+    static final long PARAMS_FLAGS = 8;
+    static final long PARAMS_FEATURES = 20;
+    static final long PARAMS_SQ_OFF = 40;
+    static final long PARAMS_CQ_OFF = 80;
+    static final long SQ_OFF_HEAD = 0;
+    static final long SQ_OFF_TAIL = 4;
+    static final long SQ_OFF_RING_MASK = 8;
+    static final long SQ_OFF_ARRAY = 24;
+    static final long CQ_OFF_HEAD = 0;
+    static final long CQ_OFF_TAIL = 4;
+    static final long CQ_OFF_RING_MASK = 8;
+    static final long CQ_OFF_CQES = 20;
+
+    // struct io_uring_sqe
+    static final long SQE_SIZE = 64;
+    static final long SQE_OPCODE = 0;
+    static final long SQE_FLAGS = 1;
+    static final long SQE_FD = 4;
+    static final long SQE_OFF = 8;
+    static final long SQE_ADDR = 16;
+    static final long SQE_LEN = 24;
+    static final long SQE_OP_FLAGS = 28;
+    static final long SQE_USER_DATA = 32;
+    static final long SQE_BUF_GROUP = 40;
+    static final long SQE_SPLICE_FD_IN = 44;
+
+    // struct io_uring_cqe
+    static final long CQE_SIZE = 16;
+    static final long CQE_USER_DATA = 0;
+    static final long CQE_RES = 8;
+    static final long CQE_FLAGS = 12;
+
+    // struct io_uring_buf_reg, struct io_uring_buf and the shared tail of a buffer ring
+    static final long BUF_REG_SIZE = 40;
+    static final long BUF_SIZE = 16;
+    static final long BUF_RING_TAIL = 14;
+
+    // struct io_uring_getevents_arg, struct __kernel_timespec
+    static final long GETEVENTS_ARG_SIZE = 24;
+    static final long GETEVENTS_ARG_TS = 16;
+    static final long TIMESPEC_SIZE = 16;
+
+    /** Kernel-shared ring indexes; read with acquire and published with release semantics. */
+    static final VarHandle INT_HANDLE = MethodHandles.memorySegmentViewVarHandle(JAVA_INT);
+    static final VarHandle SHORT_HANDLE = MethodHandles.memorySegmentViewVarHandle(JAVA_SHORT);
+
+    private static final MethodHandle SYSCALL2 = Native.errnoCall("syscall", JAVA_LONG, 1, JAVA_LONG, JAVA_LONG, JAVA_LONG);
+    private static final MethodHandle SYSCALL4 = Native.errnoCall("syscall", JAVA_LONG, 1,
+            JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG);
+    private static final MethodHandle SYSCALL6 = Native.errnoCall("syscall", JAVA_LONG, 1,
+            JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG, JAVA_LONG);
+    private static final MethodHandle MMAP = Native.errnoCall("mmap", ADDRESS, ADDRESS, JAVA_LONG, JAVA_INT, JAVA_INT, JAVA_INT, JAVA_LONG);
+    private static final MethodHandle MUNMAP = Native.errnoCall("munmap", JAVA_INT, ADDRESS, JAVA_LONG);
+
+    private IoUringNative() {
+    }
+
+    static int ioUringSetup(Native.Scratch s, int entries, MemorySegment params) {
+        try {
+            return (int) (long) SYSCALL2.invokeExact(s.capture, SYS_IO_URING_SETUP, (long) entries, params.address());
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    static int ioUringEnter(Native.Scratch s, int ringFd, int toSubmit, int minComplete, int flags, MemorySegment arg, long argSize) {
+        try {
+            return (int) (long) SYSCALL6.invokeExact(s.capture, SYS_IO_URING_ENTER, (long) ringFd, (long) toSubmit,
+                    (long) minComplete, (long) flags, arg.address(), argSize);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    static int ioUringRegister(Native.Scratch s, int ringFd, int opcode, MemorySegment arg, int count) {
+        try {
+            return (int) (long) SYSCALL4.invokeExact(s.capture, SYS_IO_URING_REGISTER, (long) ringFd, (long) opcode,
+                    arg.address(), (long) count);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+
+    /**
+     * @return the mapping, sized to {@code length}, or {@code null} on failure
+     */
+    static MemorySegment mmap(Native.Scratch s, long length, int prot, int flags, int fd, long offset) {
+        MemorySegment address;
+        try {
+            address = (MemorySegment) MMAP.invokeExact(s.capture, MemorySegment.NULL, length, prot, flags, fd, offset);
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+        if (address.address() == -1L) {
+            return null;
+        }
+        return address.reinterpret(length);
+    }
+
+    static int munmap(Native.Scratch s, MemorySegment mapping) {
+        try {
+            return (int) MUNMAP.invokeExact(s.capture, mapping, mapping.byteSize());
+        } catch (Throwable t) {
+            throw Native.rethrow(t);
+        }
+    }
+}
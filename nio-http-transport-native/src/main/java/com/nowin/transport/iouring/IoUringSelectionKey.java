@@ -0,0 +1,112 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.TransportChannel;
+import com.nowin.transport.TransportSelectionKey;
+
+/**
+ * Registration of a channel with an {@link IoUringEventLoop}.
+ * <p>
+ * io_uring reports completed operations, not readiness, so the ready set is
+ * derived from what the channel holds: a received buffer or end of stream
+ * makes it readable, room to stage more output makes it writable, and an
+ * accepted connection makes a listener acceptable. The loop processes a key
+ * when an operation completes, or when interest is turned on for an op the
+ * channel is already ready for.
+ */
+public class IoUringSelectionKey implements TransportSelectionKey {
+
+    private final IoUringEventLoop eventLoop;
+    private final AbstractIoUringChannel channel;
+    private volatile Object attachment;
+    private volatile int interestOps;
+    private volatile boolean valid = true;
+
+    // Event loop only
+    int readyOps;
+    boolean queued;
+
+    IoUringSelectionKey(IoUringEventLoop eventLoop, AbstractIoUringChannel channel, int interestOps, Object attachment) {
+        this.eventLoop = eventLoop;
+        this.channel = channel;
+        this.interestOps = interestOps;
+        this.attachment = attachment;
+    }
+
+    AbstractIoUringChannel ioUringChannel() {
+        return channel;
+    }
+
+    /**
+     * Ops both wanted and ready; event loop only.
+     */
+    int pendingOps() {
+        return interestOps & channel.readyOps();
+    }
+
+    @Override
+    public TransportChannel channel() {
+        return channel;
+    }
+
+    @Override
+    public boolean isValid() {
+        return valid;
+    }
+
+    @Override
+    public void cancel() {
+        synchronized (this) {
+            if (!valid) {
+                return;
+            }
+            valid = false;
+        }
+        eventLoop.cancel(this);
+    }
+
+    @Override
+    public int interestOps() {
+        return interestOps;
+    }
+
+    @Override
+    public void interestOps(int ops) {
+        if (interestOps == ops) {
+            return;
+        }
+        interestOps = ops;
+        if (valid) {
+            eventLoop.interestOpsChanged(this);
+        }
+    }
+
+    @Override
+    public boolean isReadable() {
+        return (readyOps & OP_READ) != 0;
+    }
+
+    @Override
+    public boolean isWritable() {
+        return (readyOps & OP_WRITE) != 0;
+    }
+
+    @Override
+    public boolean isAcceptable() {
+        return (readyOps & OP_ACCEPT) != 0;
+    }
+
+    @Override
+    public Object attachment() {
+        return attachment;
+    }
+
+    @Override
+    public void attach(Object attachment) {
+        this.attachment = attachment;
+    }
+
+    @Override
+    public String toString() {
+        return "IoUringSelectionKey[" + channel + ", interestOps=" + interestOps + (valid ? "" : ", cancelled") + "]";
+    }
+}
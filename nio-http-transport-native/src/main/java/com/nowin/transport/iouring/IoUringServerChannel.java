@@ -0,0 +1,194 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.AbstractUnixChannel;
+import com.nowin.transport.unix.Native;
+import com.nowin.transport.unix.SocketAddresses;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.net.InetSocketAddress;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Listening socket with a batch of {@code IORING_OP_ACCEPT}s in flight
+ * while {@code OP_ACCEPT} is wanted, each with its own address buffer.
+ * Accepted connections queue up until the accept handler collects them
+ * through {@link #accept()}, and each completion re-arms its accept.
+ */
+public class IoUringServerChannel extends AbstractIoUringChannel implements TransportServerChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoUringServerChannel.class);
+    // Same default as ServerSocketChannel
+    private static final int DEFAULT_BACKLOG = 50;
+    private static final int ACCEPT_BATCH = 16;
+    // Room for a sockaddr_storage and its socklen_t
+    private static final long ACCEPT_SLOT_SIZE = Native.SOCKADDR_STORAGE_SIZE + 8;
+    private static final long ACCEPT_RETRY_MILLIS = 100;
+
+    private volatile boolean bound;
+    // Event loop only
+    private final ArrayDeque<IoUringSocketChannel> accepted = new ArrayDeque<>();
+    private final boolean[] acceptArmed = new boolean[ACCEPT_BATCH];
+    private MemorySegment acceptAddresses;
+    private boolean retryScheduled;
+
+    IoUringServerChannel() throws IOException {
+        this(AbstractUnixChannel.openSocket(false));
+    }
+
+    private IoUringServerChannel(int[] socket) {
+        super(socket[0], socket[1]);
+    }
+
+    @Override
+    public void bind(InetSocketAddress address, int backlog) throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        int length = SocketAddresses.encode(address, family, s.sockaddr);
+        if (Native.bind(s, fd, s.sockaddr, length) != 0) {
+            throw Native.newIOException("bind " + address, s.errno());
+        }
+        if (Native.listen(s, fd, backlog < 1 ? DEFAULT_BACKLOG : backlog) != 0) {
+            throw Native.newIOException("listen", s.errno());
+        }
+        bound = true;
+    }
+
+    @Override
+    public void bind(InetSocketAddress address) throws IOException {
+        bind(address, 0);
+    }
+
+    /**
+     * @return a connection accepted by a completed operation, or null if
+     * none is queued
+     */
+    @Override
+    public TransportSocketChannel accept() throws IOException {
+        ensureOpen();
+        return accepted.poll();
+    }
+
+    @Override
+    int readyOps() {
+        return accepted.isEmpty() ? 0 : TransportSelectionKey.OP_ACCEPT;
+    }
+
+    @Override
+    void registered() throws IOException {
+        acceptAddresses = Arena.ofAuto().allocate(ACCEPT_SLOT_SIZE * ACCEPT_BATCH, 8);
+        interestChanged(key().interestOps());
+    }
+
+    @Override
+    void interestChanged(int interestOps) throws IOException {
+        if ((interestOps & TransportSelectionKey.OP_ACCEPT) == 0 || closing) {
+            return;
+        }
+        for (int tag = 0; tag < ACCEPT_BATCH; tag++) {
+            if (!acceptArmed[tag]) {
+                submitAccept(tag);
+            }
+        }
+    }
+
+    private void submitAccept(int tag) throws IOException {
+        long base = acceptAddresses.address() + tag * ACCEPT_SLOT_SIZE;
+        acceptAddresses.set(JAVA_INT, tag * ACCEPT_SLOT_SIZE + Native.SOCKADDR_STORAGE_SIZE, Native.SOCKADDR_STORAGE_SIZE);
+        MemorySegment sqe = eventLoop().sqe(this, IoUringNative.IORING_OP_ACCEPT, tag, IoUringEventLoop.OP_ACCEPT);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_ADDR, base);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_OFF, base + Native.SOCKADDR_STORAGE_SIZE);
+        sqe.set(JAVA_INT, IoUringNative.SQE_OP_FLAGS, Native.SOCK_CLOEXEC);
+        acceptArmed[tag] = true;
+    }
+
+    @Override
+    void completed(int op, int tag, int res, int flags) throws IOException {
+        acceptArmed[tag] = false;
+        if (res >= 0) {
+            MemorySegment address = acceptAddresses.asSlice(tag * ACCEPT_SLOT_SIZE, Native.SOCKADDR_STORAGE_SIZE);
+            accepted.add(new IoUringSocketChannel(res, family, SocketAddresses.decode(address)));
+        } else if (res != -Native.ECONNABORTED && res != -Native.EINTR && res != -Native.EAGAIN) {
+            if (res != -Native.ECANCELED && isOpen()) {
+                // e.g. out of descriptors: back off instead of failing every accept in a loop
+                logger.warn("accept failed on {}: {}", this, Native.strerror(-res));
+                scheduleRetry();
+            }
+            return;
+        }
+        IoUringSelectionKey key = key();
+        if (isOpen() && !closing && key != null && key.isValid() && (key.interestOps() & TransportSelectionKey.OP_ACCEPT) != 0) {
+            submitAccept(tag);
+        }
+    }
+
+    private void scheduleRetry() {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        eventLoop().schedule(() -> {
+            retryScheduled = false;
+            IoUringSelectionKey key = key();
+            if (key != null && key.isValid()) {
+                try {
+                    interestChanged(key.interestOps());
+                } catch (IOException e) {
+                    logger.debug("Re-arming accepts on {} failed: {}", this, e.toString());
+                }
+            }
+        }, ACCEPT_RETRY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Shuts the socket down first, from the calling thread: that stops
+     * listening at once and fails the accepts in flight, so the close
+     * completes on the loop without waiting for a connection.
+     */
+    @Override
+    protected void doClose() throws IOException {
+        Native.shutdown(Native.scratch(), fd, Native.SHUT_RDWR);
+        super.doClose();
+    }
+
+    @Override
+    void beginClose() throws IOException {
+        for (int tag = 0; tag < ACCEPT_BATCH; tag++) {
+            if (acceptArmed[tag]) {
+                eventLoop().cancelOperation(this, tag, IoUringEventLoop.OP_ACCEPT);
+            }
+        }
+    }
+
+    @Override
+    void release() {
+        IoUringSocketChannel channel;
+        while ((channel = accepted.poll()) != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                logger.debug("Error closing {}: {}", channel, e.toString());
+            }
+        }
+    }
+
+    @Override
+    public boolean isBound() {
+        return bound;
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return null;
+    }
+}
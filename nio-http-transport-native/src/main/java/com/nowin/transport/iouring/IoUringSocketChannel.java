@@ -0,0 +1,453 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.TransportSelectionKey;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.Native;
+import com.nowin.transport.unix.ReopenedFile;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Connected socket whose I/O completes asynchronously on its
+ * {@link IoUringEventLoop}.
+ * <p>
+ * One receive is kept in flight; the kernel picks it a buffer from the
+ * loop's {@link BufferRing} when data arrives, and {@link #read} copies
+ * from it. {@link #write} copies into a staging buffer that the loop sends
+ * from with one {@code IORING_OP_SEND} per pass, reporting the bytes as
+ * written once staged. File bodies are spliced from the page cache through
+ * a pipe with a linked pair of {@code IORING_OP_SPLICE}s. All of it runs
+ * on the event loop thread.
+ */
+public class IoUringSocketChannel extends AbstractIoUringChannel implements TransportSocketChannel {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoUringSocketChannel.class);
+    // Bytes spliced per linked pair; the pipe is sized so a chunk never fills it
+    private static final int SPLICE_CHUNK = 64 * 1024;
+    private static final int PIPE_SIZE = 2 * SPLICE_CHUNK;
+
+    private final InetSocketAddress remoteAddress;
+
+    // Receive state
+    private boolean recvInFlight;
+    private boolean recvStarved;
+    private int recvBuffer = -1;
+    private int recvOffset;
+    private int recvLimit;
+    private boolean endOfStream;
+    private int readError;
+
+    // Send state: staged bytes are [stagedStart, stagedEnd) of sendBuffer
+    private MemorySegment sendBuffer;
+    private int stagedStart;
+    private int stagedEnd;
+    private int sendInFlight;
+    private boolean flushQueued;
+    private int writeError;
+
+    // Splice state: the file range not yet in the pipe, and what the pipe holds
+    private final ReopenedFile spliceSource = new ReopenedFile();
+    private int spliceFd = -1;
+    private int pipeRead = -1;
+    private int pipeWrite = -1;
+    private long splicePosition;
+    private long spliceRemaining;
+    private int pipeBytes;
+    private int spliceOps;
+
+    IoUringSocketChannel(int fd, int family, InetSocketAddress remoteAddress) {
+        super(fd, family);
+        this.remoteAddress = remoteAddress;
+    }
+
+    @Override
+    public TransportSelectionKey selectionKey() {
+        return key();
+    }
+
+    @Override
+    int readyOps() {
+        int ops = 0;
+        if (recvBuffer >= 0 || endOfStream || readError != 0) {
+            ops |= TransportSelectionKey.OP_READ;
+        }
+        if (writeError != 0 || (stagedStart == stagedEnd && !spliceActive())) {
+            ops |= TransportSelectionKey.OP_WRITE;
+        }
+        return ops;
+    }
+
+    @Override
+    void registered() throws IOException {
+        submitRecv();
+    }
+
+    @Override
+    void completed(int op, int tag, int res, int flags) throws IOException {
+        switch (op) {
+            case IoUringEventLoop.OP_RECV -> recvCompleted(res, flags);
+            case IoUringEventLoop.OP_SEND -> sendCompleted(res);
+            case IoUringEventLoop.OP_SPLICE_IN -> spliceInCompleted(res);
+            case IoUringEventLoop.OP_SPLICE_OUT -> spliceOutCompleted(res);
+            default -> logger.debug("Unexpected completion of op {} on {}", op, this);
+        }
+    }
+
+    // Receiving
+
+    private void submitRecv() throws IOException {
+        if (recvInFlight || recvStarved || recvBuffer >= 0 || endOfStream || readError != 0 || closing) {
+            return;
+        }
+        eventLoop().submitRecv(this);
+        recvInFlight = true;
+    }
+
+    private void recvCompleted(int res, int flags) throws IOException {
+        recvInFlight = false;
+        if ((flags & IoUringNative.IORING_CQE_F_BUFFER) != 0) {
+            int id = flags >>> IoUringNative.IORING_CQE_BUFFER_SHIFT;
+            if (res > 0 && !closing) {
+                recvBuffer = id;
+                recvOffset = 0;
+                recvLimit = res;
+                return;
+            }
+            eventLoop().recycleReceiveBuffer(id);
+        }
+        if (res == 0) {
+            endOfStream = true;
+        } else if (res == -Native.ENOBUFS) {
+            // every buffer is held by a connection with unread bytes; wait for one to be returned
+            recvStarved = true;
+            eventLoop().receiveStarved(this);
+        } else if (res == -Native.ECANCELED) {
+            // cancelled by close
+        } else if (res < 0) {
+            readError = -res;
+        }
+    }
+
+    /**
+     * Resubmits the receive that found no buffer.
+     *
+     * @return whether a receive was submitted
+     */
+    boolean resumeReceive() {
+        if (!recvStarved) {
+            return false;
+        }
+        recvStarved = false;
+        if (closing) {
+            return false;
+        }
+        try {
+            submitRecv();
+            return true;
+        } catch (IOException e) {
+            readError = Native.EIO;
+            return false;
+        }
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (recvBuffer < 0) {
+            if (readError != 0) {
+                throw Native.newIOException("recv", readError);
+            }
+            return endOfStream ? -1 : 0;
+        }
+        int n = Math.min(dst.remaining(), recvLimit - recvOffset);
+        if (n == 0) {
+            return 0;
+        }
+        MemorySegment source = eventLoop().receiveBuffer(recvBuffer, recvLimit);
+        MemorySegment.copy(source, recvOffset, MemorySegment.ofBuffer(dst), 0, n);
+        dst.position(dst.position() + n);
+        recvOffset += n;
+        if (recvOffset == recvLimit) {
+            int id = recvBuffer;
+            recvBuffer = -1;
+            eventLoop().recycleReceiveBuffer(id);
+            submitRecv();
+        }
+        return n;
+    }
+
+    // Sending
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+        checkWritable();
+        return stage(src);
+    }
+
+    /**
+     * Stages buffers in order until one does not fit.
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkWritable();
+        long total = 0;
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer src = srcs[i];
+            if (!src.hasRemaining()) {
+                continue;
+            }
+            total += stage(src);
+            if (src.hasRemaining()) {
+                break;
+            }
+        }
+        return total;
+    }
+
+    private void checkWritable() throws IOException {
+        ensureOpen();
+        if (writeError != 0) {
+            throw Native.newIOException("send", writeError);
+        }
+    }
+
+    private int stage(ByteBuffer src) {
+        if (spliceActive()) {
+            return 0; // after the file bytes in flight
+        }
+        if (sendBuffer == null) {
+            sendBuffer = eventLoop().acquireSendBuffer();
+        }
+        int capacity = (int) sendBuffer.byteSize();
+        if (stagedEnd == capacity && sendInFlight == 0 && stagedStart > 0) {
+            MemorySegment.copy(sendBuffer, stagedStart, sendBuffer, 0, stagedEnd - stagedStart);
+            stagedEnd -= stagedStart;
+            stagedStart = 0;
+        }
+        int n = Math.min(src.remaining(), capacity - stagedEnd);
+        if (n == 0) {
+            return 0;
+        }
+        MemorySegment.copy(Native.segment(src), 0, sendBuffer, stagedEnd, n);
+        src.position(src.position() + n);
+        stagedEnd += n;
+        if (sendInFlight == 0 && !flushQueued) {
+            flushQueued = true;
+            eventLoop().flushLater(this);
+        }
+        return n;
+    }
+
+    /**
+     * Submits a send of everything staged; called by the loop before it
+     * enters the kernel, so writes made during one pass leave together.
+     */
+    void flush() throws IOException {
+        flushQueued = false;
+        if (sendInFlight > 0 || stagedStart == stagedEnd || writeError != 0 || slot < 0) {
+            return;
+        }
+        int length = stagedEnd - stagedStart;
+        MemorySegment sqe = eventLoop().sqe(this, IoUringNative.IORING_OP_SEND, 0, IoUringEventLoop.OP_SEND);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_ADDR, sendBuffer.address() + stagedStart);
+        sqe.set(JAVA_INT, IoUringNative.SQE_LEN, length);
+        sqe.set(JAVA_INT, IoUringNative.SQE_OP_FLAGS, IoUringNative.MSG_NOSIGNAL);
+        sendInFlight = length;
+    }
+
+    private void sendCompleted(int res) throws IOException {
+        sendInFlight = 0;
+        if (res < 0) {
+            writeFailed(-res);
+            return;
+        }
+        stagedStart += res;
+        if (stagedStart < stagedEnd) {
+            flush();
+            return;
+        }
+        stagedStart = stagedEnd = 0;
+        releaseSendBuffer();
+    }
+
+    private void writeFailed(int errno) {
+        if (writeError == 0) {
+            writeError = errno == Native.ECANCELED ? Native.EPIPE : errno;
+        }
+        stagedStart = stagedEnd = 0;
+    }
+
+    private void releaseSendBuffer() {
+        if (sendBuffer != null && sendInFlight == 0) {
+            eventLoop().releaseSendBuffer(sendBuffer);
+            sendBuffer = null;
+            stagedStart = stagedEnd = 0;
+        }
+    }
+
+    // Splicing
+
+    private boolean spliceActive() {
+        return spliceOps > 0 || pipeBytes > 0 || (spliceRemaining > 0 && writeError == 0);
+    }
+
+    /**
+     * Splices up to one chunk of {@code file} to the socket through a
+     * pipe, from a descriptor {@link ReopenedFile} opens by {@code path};
+     * without one, the bytes are staged like any other write. The chunk is
+     * reported as written as soon as it is submitted; the channel becomes
+     * writable again once it has left.
+     */
+    @Override
+    public long transferFrom(FileChannel file, Path path, Object fileKey, long position, long count)
+            throws IOException {
+        checkWritable();
+        if (count <= 0 || spliceActive() || stagedStart != stagedEnd) {
+            return 0;
+        }
+        int in = spliceSource.descriptorFor(file, path, fileKey);
+        if (in < 0 || !openPipe()) {
+            return TransportSocketChannel.super.transferFrom(file, path, fileKey, position, count);
+        }
+        spliceFd = in;
+        splicePosition = position;
+        spliceRemaining = Math.min(count, SPLICE_CHUNK);
+        submitSplicePair();
+        return spliceRemaining;
+    }
+
+    private boolean openPipe() {
+        if (pipeRead >= 0) {
+            return true;
+        }
+        Native.Scratch s = Native.scratch();
+        if (Native.pipe2(s, s.value, Native.O_CLOEXEC) != 0) {
+            logger.debug("pipe2 failed, copying instead: {}", Native.strerror(s.errno()));
+            return false;
+        }
+        pipeRead = s.value.get(JAVA_INT, 0);
+        pipeWrite = s.value.get(JAVA_INT, 4);
+        // a chunk starting mid-page spans one page more than it holds
+        Native.fcntl(s, pipeWrite, IoUringNative.F_SETPIPE_SZ, PIPE_SIZE);
+        return true;
+    }
+
+    /**
+     * File to pipe, linked to pipe to socket: the second starts only once
+     * the first has completed in full.
+     */
+    private void submitSplicePair() throws IOException {
+        int length = (int) spliceRemaining;
+        MemorySegment in = eventLoop().sqe(this, IoUringNative.IORING_OP_SPLICE, 0, IoUringEventLoop.OP_SPLICE_IN);
+        prepareSplice(in, pipeWrite, spliceFd, splicePosition, length);
+        in.set(JAVA_BYTE, IoUringNative.SQE_FLAGS, IoUringNative.IOSQE_IO_LINK);
+        spliceOps++;
+        submitSpliceOut(length);
+    }
+
+    private void submitSpliceOut(int length) throws IOException {
+        MemorySegment out = eventLoop().sqe(this, IoUringNative.IORING_OP_SPLICE, 0, IoUringEventLoop.OP_SPLICE_OUT);
+        prepareSplice(out, fd, pipeRead, -1, length);
+        spliceOps++;
+    }
+
+    private static void prepareSplice(MemorySegment sqe, int out, int in, long inOffset, int length) {
+        sqe.set(JAVA_INT, IoUringNative.SQE_FD, out);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_OFF, -1L);
+        sqe.set(JAVA_LONG, IoUringNative.SQE_ADDR, inOffset);
+        sqe.set(JAVA_INT, IoUringNative.SQE_LEN, length);
+        sqe.set(JAVA_INT, IoUringNative.SQE_SPLICE_FD_IN, in);
+    }
+
+    private void spliceInCompleted(int res) {
+        spliceOps--;
+        if (res > 0) {
+            pipeBytes += res;
+            splicePosition += res;
+            spliceRemaining -= res;
+        } else if (writeError == 0) {
+            // zero means the file shrank under the body that was promised
+            writeError = res == 0 ? Native.EIO : -res;
+        }
+    }
+
+    private void spliceOutCompleted(int res) throws IOException {
+        spliceOps--;
+        if (res == -Native.ECANCELED && writeError == 0 && !closing) {
+            // a short file-to-pipe splice broke the link; send what it moved, then go on
+            if (pipeBytes > 0) {
+                submitSpliceOut(pipeBytes);
+            }
+            return;
+        }
+        if (res <= 0) {
+            if (writeError == 0) {
+                writeError = res == 0 ? Native.EPIPE : -res;
+            }
+            return;
+        }
+        pipeBytes -= res;
+        if (writeError != 0) {
+            return;
+        }
+        if (pipeBytes > 0) {
+            submitSpliceOut(pipeBytes);
+        } else if (spliceRemaining > 0) {
+            submitSplicePair();
+        }
+    }
+
+    // Closing
+
+    @Override
+    void beginClose() throws IOException {
+        if (recvInFlight) {
+            eventLoop().cancelOperation(this, 0, IoUringEventLoop.OP_RECV);
+        }
+    }
+
+    @Override
+    boolean drained() {
+        if (writeError != 0) {
+            return true;
+        }
+        return stagedStart == stagedEnd && !spliceActive();
+    }
+
+    @Override
+    void release() {
+        IoUringEventLoop loop = eventLoop();
+        if (recvBuffer >= 0 && loop != null) {
+            loop.recycleReceiveBuffer(recvBuffer);
+        }
+        recvBuffer = -1;
+        recvStarved = false;
+        if (sendBuffer != null && loop != null) {
+            loop.releaseSendBuffer(sendBuffer);
+        }
+        sendBuffer = null;
+        spliceSource.close();
+        Native.Scratch s = Native.scratch();
+        if (pipeRead >= 0) {
+            Native.close(s, pipeRead);
+            Native.close(s, pipeWrite);
+            pipeRead = pipeWrite = -1;
+        }
+    }
+
+    @Override
+    public InetSocketAddress getRemoteAddress() {
+        return remoteAddress;
+    }
+}
@@ -0,0 +1,100 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.transport.TransportEventLoopGroup;
+import com.nowin.transport.TransportFactory;
+import com.nowin.transport.TransportServerChannel;
+import com.nowin.transport.TransportSocketChannel;
+import com.nowin.transport.unix.Platform;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+/**
+ * Linux io_uring transport, selected with {@code server.transport=io_uring}.
+ * <p>
+ * Like the epoll transport it binds system calls through the Foreign
+ * Function &amp; Memory API, so the JVM must run with {@code --enable-preview}.
+ * It also needs a kernel with provided buffer rings (5.19 or later) and
+ * io_uring not disabled by {@code kernel.io_uring_disabled} or a seccomp
+ * policy, as it is in many containers; {@link #isAvailable()} sets up a
+ * small ring to find out, and the server falls back to NIO when it fails.
+ */
+public class IoUringTransportFactory implements TransportFactory {
+
+    private static final Logger logger = LoggerFactory.getLogger(IoUringTransportFactory.class);
+    private static volatile Boolean available;
+
+    private final IoUringConfig config;
+
+    /**
+     * Used by {@link java.util.ServiceLoader}; reads {@code nowin.iouring.*}
+     * system properties.
+     */
+    public IoUringTransportFactory() {
+        this(IoUringConfig.fromSystemProperties());
+    }
+
+    public IoUringTransportFactory(IoUringConfig config) {
+        config.validate();
+        this.config = config;
+    }
+
+    @Override
+    public String name() {
+        return "io_uring";
+    }
+
+    @Override
+    public boolean isAvailable() {
+        Boolean result = available;
+        if (result == null) {
+            result = probe();
+            available = result;
+        }
+        return result;
+    }
+
+    /**
+     * Loads the native bindings and sets up a throwaway ring; a linkage
+     * failure, such as running without {@code --enable-preview}, or a
+     * kernel that refuses the ring means the transport is unavailable.
+     */
+    private static boolean probe() {
+        String reason = Platform.unsupportedReason();
+        if (reason != null) {
+            logger.debug("io_uring transport unavailable: {}", reason);
+            return false;
+        }
+        try {
+            IoUringEventLoop.probe();
+            return true;
+        } catch (Throwable t) {
+            logger.warn("io_uring transport unavailable: {}", t.toString());
+            return false;
+        }
+    }
+
+    public IoUringConfig getConfig() {
+        return config;
+    }
+
+    @Override
+    public TransportEventLoopGroup createEventLoopGroup(int nThreads) {
+        return new IoUringEventLoopGroup(nThreads, config);
+    }
+
+    @Override
+    public TransportServerChannel createServerChannel() throws IOException {
+        return new IoUringServerChannel();
+    }
+
+    /**
+     * Outbound connections are not part of this transport; the server only
+     * accepts.
+     */
+    @Override
+    public TransportSocketChannel createSocketChannel() {
+        throw new UnsupportedOperationException("The io_uring transport does not open client connections");
+    }
+}
@@ -0,0 +1,207 @@
+package com.nowin.transport.unix;
+
+import com.nowin.transport.TransportChannel;
+
+import java.io.IOException;
+import java.lang.foreign.MemorySegment;
+import java.net.InetSocketAddress;
+import java.net.SocketOption;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+
+/**
+ * A socket file descriptor owned by a native transport: lifecycle,
+ * blocking mode and socket options shared by listening and connected
+ * channels.
+ */
+public abstract class AbstractUnixChannel implements TransportChannel {
+
+    protected final int fd;
+    protected final int family;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private volatile boolean blocking;
+
+    protected AbstractUnixChannel(int fd, int family, boolean blocking) {
+        this.fd = fd;
+        this.family = family;
+        this.blocking = blocking;
+    }
+
+    /**
+     * Opens a stream socket, dual-stack IPv6 where available.
+     *
+     * @return the descriptor and its address family
+     */
+    public static int[] openSocket(boolean nonBlocking) throws IOException {
+        Native.Scratch s = Native.scratch();
+        int type = Native.SOCK_STREAM | Native.SOCK_CLOEXEC | (nonBlocking ? Native.SOCK_NONBLOCK : 0);
+        int fd = Native.socket(s, Native.AF_INET6, type, 0);
+        if (fd >= 0) {
+            MemorySegment value = s.value;
+            value.set(JAVA_INT, 0, 0);
+            if (Native.setsockopt(s, fd, Native.IPPROTO_IPV6, Native.IPV6_V6ONLY, value, 4) == 0) {
+                return new int[] {fd, Native.AF_INET6};
+            }
+            Native.close(s, fd);
+        }
+        fd = Native.socket(s, Native.AF_INET, type, 0);
+        if (fd < 0) {
+            throw Native.newIOException("socket", s.errno());
+        }
+        return new int[] {fd, Native.AF_INET};
+    }
+
+    public int fd() {
+        return fd;
+    }
+
+    protected void ensureOpen() throws ClosedChannelException {
+        if (closed.get()) {
+            throw new ClosedChannelException();
+        }
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed.compareAndSet(false, true)) {
+            doClose();
+        }
+    }
+
+    /**
+     * Called once by the first {@link #close()}; releases the descriptor,
+     * by default right away.
+     */
+    protected void doClose() throws IOException {
+        closeDescriptor();
+    }
+
+    protected void closeDescriptor() throws IOException {
+        Native.Scratch s = Native.scratch();
+        if (Native.close(s, fd) != 0) {
+            throw Native.newIOException("close", s.errno());
+        }
+    }
+
+    @Override
+    public InetSocketAddress getLocalAddress() throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        s.socklen.set(JAVA_INT, 0, Native.SOCKADDR_STORAGE_SIZE);
+        if (Native.getsockname(s, fd, s.sockaddr, s.socklen) != 0) {
+            throw Native.newIOException("getsockname", s.errno());
+        }
+        return SocketAddresses.decode(s.sockaddr);
+    }
+
+    @Override
+    public void configureBlocking(boolean block) throws IOException {
+        ensureOpen();
+        if (block == blocking) {
+            // sockets are opened and accepted in the mode the transport wants; skip the syscalls
+            return;
+        }
+        Native.Scratch s = Native.scratch();
+        int flags = Native.fcntl(s, fd, Native.F_GETFL, 0);
+        if (flags < 0) {
+            throw Native.newIOException("fcntl", s.errno());
+        }
+        flags = block ? flags & ~Native.O_NONBLOCK : flags | Native.O_NONBLOCK;
+        if (Native.fcntl(s, fd, Native.F_SETFL, flags) < 0) {
+            throw Native.newIOException("fcntl", s.errno());
+        }
+        blocking = block;
+    }
+
+    public boolean isBlocking() {
+        return blocking;
+    }
+
+    @Override
+    public <T> void setOption(SocketOption<T> option, T value) throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        MemorySegment buffer = s.value;
+        int level = level(option);
+        int name = optionName(option);
+        int length = 4;
+        if (name == Native.SO_LINGER && level == Native.SOL_SOCKET) {
+            int linger = (Integer) value;
+            buffer.set(JAVA_INT, 0, linger >= 0 ? 1 : 0);
+            buffer.set(JAVA_INT, 4, Math.max(0, linger));
+            length = 8;
+        } else if (value instanceof Boolean flag) {
+            buffer.set(JAVA_INT, 0, flag ? 1 : 0);
+        } else if (value instanceof Integer number) {
+            buffer.set(JAVA_INT, 0, number);
+        } else {
+            throw new IllegalArgumentException("Invalid value for " + option.name() + ": " + value);
+        }
+        if (Native.setsockopt(s, fd, level, name, buffer, length) != 0) {
+            throw Native.newIOException("setsockopt " + option.name(), s.errno());
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getOption(SocketOption<T> option) throws IOException {
+        ensureOpen();
+        Native.Scratch s = Native.scratch();
+        int level = level(option);
+        int name = optionName(option);
+        s.socklen.set(JAVA_INT, 0, 8);
+        if (Native.getsockopt(s, fd, level, name, s.value, s.socklen) != 0) {
+            throw Native.newIOException("getsockopt " + option.name(), s.errno());
+        }
+        int raw = s.value.get(JAVA_INT, 0);
+        if (name == Native.SO_LINGER && level == Native.SOL_SOCKET) {
+            return (T) Integer.valueOf(raw != 0 ? s.value.get(JAVA_INT, 4) : -1);
+        }
+        if (option.type() == Boolean.class) {
+            return (T) Boolean.valueOf(raw != 0);
+        }
+        return (T) Integer.valueOf(raw);
+    }
+
+    /**
+     * Maps standard, {@code jdk.net} and transport-specific options by name,
+     * since the extended ones are not visible to this module at compile time.
+     */
+    private static int level(SocketOption<?> option) {
+        return switch (option.name()) {
+            case "SO_REUSEADDR", "SO_REUSEPORT", "SO_KEEPALIVE", "SO_RCVBUF", "SO_SNDBUF", "SO_LINGER" -> Native.SOL_SOCKET;
+            case "TCP_NODELAY", "TCP_CORK", "TCP_NOTSENT_LOWAT", "TCP_KEEPIDLE", "TCP_KEEPINTERVAL", "TCP_KEEPCOUNT" -> Native.IPPROTO_TCP;
+            default -> throw new UnsupportedOperationException("'" + option.name() + "' not supported");
+        };
+    }
+
+    private static int optionName(SocketOption<?> option) {
+        return switch (option.name()) {
+            case "SO_REUSEADDR" -> Native.SO_REUSEADDR;
+            case "SO_REUSEPORT" -> Native.SO_REUSEPORT;
+            case "SO_KEEPALIVE" -> Native.SO_KEEPALIVE;
+            case "SO_RCVBUF" -> Native.SO_RCVBUF;
+            case "SO_SNDBUF" -> Native.SO_SNDBUF;
+            case "SO_LINGER" -> Native.SO_LINGER;
+            case "TCP_NODELAY" -> Native.TCP_NODELAY;
+            case "TCP_CORK" -> Native.TCP_CORK;
+            case "TCP_NOTSENT_LOWAT" -> Native.TCP_NOTSENT_LOWAT;
+            case "TCP_KEEPIDLE" -> Native.TCP_KEEPIDLE;
+            case "TCP_KEEPINTERVAL" -> Native.TCP_KEEPINTVL;
+            case "TCP_KEEPCOUNT" -> Native.TCP_KEEPCNT;
+            default -> throw new UnsupportedOperationException("'" + option.name() + "' not supported");
+        };
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "[fd=" + fd + (isOpen() ? "" : ", closed") + "]";
+    }
+}
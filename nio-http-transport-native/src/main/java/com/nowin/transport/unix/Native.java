@@ -0,0 +1,362 @@
+package com.nowin.transport.unix;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.foreign.SymbolLookup;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.VarHandle;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+
+import static java.lang.foreign.ValueLayout.ADDRESS;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+/**
+ * Linux system calls shared by the native transports, bound through the
+ * Foreign Function &amp; Memory API. Internal to the transports; not part of
+ * the public API.
+ * <p>
+ * Every call returns the raw libc result; on {@code -1} the caller reads
+ * {@link Scratch#errno()} from the calling thread's scratch memory, which
+ * the linker fills in right after the call. Constants are the generic Linux
+ * values shared by x86_64 and aarch64, the two architectures
+ * {@link Platform} accepts.
+ */
+public final class Native {
+
+    public static final int AF_INET = 2;
+    public static final int AF_INET6 = 10;
+    public static final int SOCK_STREAM = 1;
+    public static final int SOCK_NONBLOCK = 0x800;
+    public static final int SOCK_CLOEXEC = 0x80000;
+    public static final int SHUT_RDWR = 2;
+
+    public static final int SOL_SOCKET = 1;
+    public static final int SO_REUSEADDR = 2;
+    public static final int SO_SNDBUF = 7;
+    public static final int SO_RCVBUF = 8;
+    public static final int SO_KEEPALIVE = 9;
+    public static final int SO_LINGER = 13;
+    public static final int SO_REUSEPORT = 15;
+    public static final int IPPROTO_TCP = 6;
+    public static final int TCP_NODELAY = 1;
+    public static final int TCP_CORK = 3;
+    public static final int TCP_KEEPIDLE = 4;
+    public static final int TCP_KEEPINTVL = 5;
+    public static final int TCP_KEEPCNT = 6;
+    public static final int TCP_NOTSENT_LOWAT = 25;
+    public static final int IPPROTO_IPV6 = 41;
+    public static final int IPV6_V6ONLY = 26;
+
+    public static final int EFD_NONBLOCK = 0x800;
+    public static final int EFD_CLOEXEC = 0x80000;
+
+    public static final int O_RDONLY = 0;
+    public static final int O_NONBLOCK = 0x800;
+    public static final int O_CLOEXEC = 0x80000;
+    public static final int F_GETFL = 3;
+    public static final int F_SETFL = 4;
+    public static final int SEEK_END = 2;
+
+    public static final int EINTR = 4;
+    public static final int EIO = 5;
+    public static final int EAGAIN = 11;
+    public static final int EPIPE = 32;
+    public static final int EINVAL = 22;
+    public static final int ENOTCONN = 107;
+    public static final int ECONNRESET = 104;
+    public static final int ETIMEDOUT = 110;
+    public static final int ECONNABORTED = 103;
+    public static final int ECANCELED = 125;
+    public static final int ENOBUFS = 105;
+
+    public static final long IOVEC_SIZE = 16;
+    public static final int SOCKADDR_STORAGE_SIZE = 128;
+
+    private static final Linker LINKER = Linker.nativeLinker();
+    private static final SymbolLookup LIBC = LINKER.defaultLookup();
+    private static final StructLayout CAPTURE_LAYOUT = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = CAPTURE_LAYOUT.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+    private static final Linker.Option ERRNO_OPTION = Linker.Option.captureCallState("errno");
+
+    private static final MethodHandle SOCKET = errnoCall("socket", JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT);
+    private static final MethodHandle BIND = errnoCall("bind", JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT);
+    private static final MethodHandle LISTEN = errnoCall("listen", JAVA_INT, JAVA_INT, JAVA_INT);
+    private static final MethodHandle ACCEPT4 = errnoCall("accept4", JAVA_INT, JAVA_INT, ADDRESS, ADDRESS, JAVA_INT);
+    private static final MethodHandle SHUTDOWN = errnoCall("shutdown", JAVA_INT, JAVA_INT, JAVA_INT);
+    private static final MethodHandle GETSOCKNAME = errnoCall("getsockname", JAVA_INT, JAVA_INT, ADDRESS, ADDRESS);
+    private static final MethodHandle SETSOCKOPT = errnoCall("setsockopt", JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS, JAVA_INT);
+    private static final MethodHandle GETSOCKOPT = errnoCall("getsockopt", JAVA_INT, JAVA_INT, JAVA_INT, JAVA_INT, ADDRESS, ADDRESS);
+    private static final MethodHandle READ = errnoCall("read", JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG);
+    private static final MethodHandle WRITE = errnoCall("write", JAVA_LONG, JAVA_INT, ADDRESS, JAVA_LONG);
+    private static final MethodHandle WRITEV = errnoCall("writev", JAVA_LONG, JAVA_INT, ADDRESS, JAVA_INT);
+    private static final MethodHandle SENDFILE = errnoCall("sendfile", JAVA_LONG, JAVA_INT, JAVA_INT, ADDRESS, JAVA_LONG);
+    private static final MethodHandle OPEN = errnoCall("open", JAVA_INT, 2, ADDRESS, JAVA_INT, JAVA_INT);
+    private static final MethodHandle FCNTL = errnoCall("fcntl", JAVA_INT, 2, JAVA_INT, JAVA_INT, JAVA_INT);
+    private static final MethodHandle LSEEK = errnoCall("lseek", JAVA_LONG, JAVA_INT, JAVA_LONG, JAVA_INT);
+    private static final MethodHandle PIPE2 = errnoCall("pipe2", JAVA_INT, ADDRESS, JAVA_INT);
+    private static final MethodHandle CLOSE = errnoCall("close", JAVA_INT, JAVA_INT);
+    private static final MethodHandle EVENTFD = errnoCall("eventfd", JAVA_INT, JAVA_INT, JAVA_INT);
+    private static final MethodHandle STRERROR = LINKER.downcallHandle(symbol("strerror"), FunctionDescriptor.of(ADDRESS, JAVA_INT));
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private Native() {
+    }
+
+    /**
+     * Binds a libc function whose {@code errno} is captured into
+     * {@link Scratch}; the returned handle takes the capture segment first.
+     */
+    public static MethodHandle errnoCall(String name, ValueLayout result, ValueLayout... args) {
+        return LINKER.downcallHandle(symbol(name), FunctionDescriptor.of(result, args), ERRNO_OPTION);
+    }
+
+    /**
+     * Variant of {@link #errnoCall(String, ValueLayout, ValueLayout...)} for
+     * variadic functions, such as {@code open} or {@code syscall}.
+     */
+    public static MethodHandle errnoCall(String name, ValueLayout result, int firstVariadicArg, ValueLayout... args) {
+        return LINKER.downcallHandle(symbol(name), FunctionDescriptor.of(result, args),
+                ERRNO_OPTION, Linker.Option.firstVariadicArg(firstVariadicArg));
+    }
+
+    private static MemorySegment symbol(String name) {
+        return LIBC.find(name).orElseThrow(() -> new UnsatisfiedLinkError("libc symbol not found: " + name));
+    }
+
+    /**
+     * Per-thread native memory for syscall arguments: the errno capture
+     * area, an iovec array, a sockaddr, small option values and a bounce
+     * area for heap buffers.
+     */
+    public static final class Scratch {
+        public static final int MAX_IOV = 64;
+        public static final int BOUNCE_SIZE = 64 * 1024;
+
+        public final MemorySegment capture;
+        public final MemorySegment iov;
+        public final MemorySegment sockaddr;
+        public final MemorySegment socklen;
+        public final MemorySegment value;
+        public final MemorySegment offset;
+        public final MemorySegment bounce;
+
+        private Scratch() {
+            Arena arena = Arena.ofAuto();
+            capture = arena.allocate(CAPTURE_LAYOUT);
+            iov = arena.allocate(IOVEC_SIZE * MAX_IOV, 8);
+            sockaddr = arena.allocate(SOCKADDR_STORAGE_SIZE, 8);
+            socklen = arena.allocate(JAVA_INT);
+            value = arena.allocate(16, 8);
+            offset = arena.allocate(JAVA_LONG);
+            bounce = arena.allocate(BOUNCE_SIZE, 8);
+        }
+
+        public int errno() {
+            return (int) ERRNO.get(capture);
+        }
+    }
+
+    public static Scratch scratch() {
+        return SCRATCH.get();
+    }
+
+    public static int socket(Scratch s, int domain, int type, int protocol) {
+        try {
+            return (int) SOCKET.invokeExact(s.capture, domain, type, protocol);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int bind(Scratch s, int fd, MemorySegment addr, int len) {
+        try {
+            return (int) BIND.invokeExact(s.capture, fd, addr, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int listen(Scratch s, int fd, int backlog) {
+        try {
+            return (int) LISTEN.invokeExact(s.capture, fd, backlog);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int accept4(Scratch s, int fd, MemorySegment addr, MemorySegment len, int flags) {
+        try {
+            return (int) ACCEPT4.invokeExact(s.capture, fd, addr, len, flags);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int shutdown(Scratch s, int fd, int how) {
+        try {
+            return (int) SHUTDOWN.invokeExact(s.capture, fd, how);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int getsockname(Scratch s, int fd, MemorySegment addr, MemorySegment len) {
+        try {
+            return (int) GETSOCKNAME.invokeExact(s.capture, fd, addr, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int setsockopt(Scratch s, int fd, int level, int name, MemorySegment value, int len) {
+        try {
+            return (int) SETSOCKOPT.invokeExact(s.capture, fd, level, name, value, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int getsockopt(Scratch s, int fd, int level, int name, MemorySegment value, MemorySegment len) {
+        try {
+            return (int) GETSOCKOPT.invokeExact(s.capture, fd, level, name, value, len);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static long read(Scratch s, int fd, MemorySegment buf, long count) {
+        try {
+            return (long) READ.invokeExact(s.capture, fd, buf, count);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static long write(Scratch s, int fd, MemorySegment buf, long count) {
+        try {
+            return (long) WRITE.invokeExact(s.capture, fd, buf, count);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static long writev(Scratch s, int fd, MemorySegment iov, int iovcnt) {
+        try {
+            return (long) WRITEV.invokeExact(s.capture, fd, iov, iovcnt);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static long sendfile(Scratch s, int outFd, int inFd, MemorySegment offset, long count) {
+        try {
+            return (long) SENDFILE.invokeExact(s.capture, outFd, inFd, offset, count);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int open(Scratch s, MemorySegment path, int flags) {
+        try {
+            return (int) OPEN.invokeExact(s.capture, path, flags, 0);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int fcntl(Scratch s, int fd, int cmd, int arg) {
+        try {
+            return (int) FCNTL.invokeExact(s.capture, fd, cmd, arg);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static long lseek(Scratch s, int fd, long offset, int whence) {
+        try {
+            return (long) LSEEK.invokeExact(s.capture, fd, offset, whence);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * @param fds two ints receiving the read and write ends
+     */
+    public static int pipe2(Scratch s, MemorySegment fds, int flags) {
+        try {
+            return (int) PIPE2.invokeExact(s.capture, fds, flags);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int close(Scratch s, int fd) {
+        try {
+            return (int) CLOSE.invokeExact(s.capture, fd);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    public static int eventfd(Scratch s, int initval, int flags) {
+        try {
+            return (int) EVENTFD.invokeExact(s.capture, initval, flags);
+        } catch (Throwable t) {
+            throw rethrow(t);
+        }
+    }
+
+    /**
+     * View of a buffer's remaining bytes; native memory only for direct
+     * buffers, but heap buffers, read-only ones included, can be copied from.
+     */
+    public static MemorySegment segment(ByteBuffer buffer) {
+        return MemorySegment.ofBuffer(buffer);
+    }
+
+    public static String strerror(int errno) {
+        try {
+            MemorySegment message = (MemorySegment) STRERROR.invokeExact(errno);
+            return message.reinterpret(256).getUtf8String(0);
+        } catch (Throwable t) {
+            return "errno " + errno;
+        }
+    }
+
+    /**
+     * Translates {@code errno} from a failed {@code op} into the exception
+     * NIO would throw; peer resets surface as {@link SocketException} so
+     * {@link com.nowin.util.ConnectionExceptions} treats them as disconnects.
+     */
+    public static IOException newIOException(String op, int errno) {
+        String message = strerror(errno);
+        return switch (errno) {
+            case EPIPE, ECONNRESET, ENOTCONN, ETIMEDOUT, ECONNABORTED -> new SocketException(message);
+            default -> new IOException(op + " failed: " + message);
+        };
+    }
+
+    /**
+     * Unwraps what {@code invokeExact} threw; downcalls themselves throw no
+     * checked exceptions.
+     */
+    public static RuntimeException rethrow(Throwable t) {
+        if (t instanceof RuntimeException e) {
+            return e;
+        }
+        if (t instanceof Error e) {
+            throw e;
+        }
+        return new IllegalStateException(t);
+    }
+}
@@ -0,0 +1,29 @@
+package com.nowin.transport.unix;
+
+import java.util.Locale;
+
+/**
+ * Platform check for the native transports. Uses no preview API, so it
+ * can run before {@link Native} is loaded.
+ */
+public final class Platform {
+
+    private Platform() {
+    }
+
+    /**
+     * Why the native transports cannot run here, or null if the OS and
+     * architecture match the constants and struct layouts they use.
+     */
+    public static String unsupportedReason() {
+        String os = System.getProperty("os.name", "").toLowerCase(Locale.ROOT);
+        String arch = System.getProperty("os.arch", "");
+        if (!os.startsWith("linux")) {
+            return "not Linux (" + os + ")";
+        }
+        if (!arch.equals("amd64") && !arch.equals("x86_64") && !arch.equals("aarch64")) {
+            return "unsupported architecture " + arch;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,92 @@
+package com.nowin.transport.unix;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * One-entry cache of a descriptor opened on the file behind a
+ * {@link FileChannel}. The JDK does not expose a channel's descriptor, so
+ * the file is opened again by path, once per body, and checked to be the
+ * same file, by device and inode, with the same size; {@code sendfile} and
+ * {@code splice} then read from it. A path that now names another file,
+ * e.g. after an atomic replace or a symlink swap, is not read from, since
+ * the response headers already describe the original.
+ * Not thread-safe; owned by one connection.
+ */
+public final class ReopenedFile {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReopenedFile.class);
+
+    private FileChannel source;
+    private int fd = -1;
+
+    /**
+     * @param fileKey the {@link BasicFileAttributes#fileKey() key} of the file
+     *                {@code file} was opened on
+     * @return a descriptor on the same file as {@code file}, or -1 when
+     * there is no path or key, or the path no longer names that file as it
+     * was, in which case the caller copies instead
+     */
+    public int descriptorFor(FileChannel file, Path path, Object fileKey) throws IOException {
+        if (file != source) {
+            reopen(file, path, fileKey);
+        }
+        return fd;
+    }
+
+    private void reopen(FileChannel file, Path path, Object fileKey) throws IOException {
+        close();
+        source = file;
+        if (path == null || fileKey == null) {
+            return;
+        }
+        Native.Scratch s = Native.scratch();
+        int in;
+        try (Arena arena = Arena.ofConfined()) {
+            in = Native.open(s, arena.allocateUtf8String(path.toString()), Native.O_RDONLY | Native.O_CLOEXEC);
+        }
+        if (in < 0) {
+            logger.debug("{} not reopened, copying instead: {}", path, Native.strerror(s.errno()));
+            return;
+        }
+        if (!fileKey.equals(fileKey(in))) {
+            logger.debug("{} was replaced since it was opened, copying instead", path);
+            Native.close(s, in);
+            return;
+        }
+        if (Native.lseek(s, in, 0, Native.SEEK_END) != file.size()) {
+            logger.debug("{} changed since it was opened, copying instead", path);
+            Native.close(s, in);
+            return;
+        }
+        fd = in;
+    }
+
+    /**
+     * The key of the file open on {@code fd}: a stat through its
+     * {@code /proc} link is an {@code fstat}, and yields a key comparable
+     * with the one the JDK reported for the original.
+     */
+    private static Object fileKey(int fd) {
+        try {
+            return Files.readAttributes(Path.of("/proc/self/fd/" + fd), BasicFileAttributes.class).fileKey();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    public void close() {
+        if (fd >= 0) {
+            Native.close(Native.scratch(), fd);
+            fd = -1;
+        }
+        source = null;
+    }
+}
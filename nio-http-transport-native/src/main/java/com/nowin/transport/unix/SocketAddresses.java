@@ -0,0 +1,90 @@
+package com.nowin.transport.unix;
+
+import java.lang.foreign.MemorySegment;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+
+import static java.lang.foreign.ValueLayout.JAVA_BYTE;
+import static java.lang.foreign.ValueLayout.JAVA_INT;
+import static java.lang.foreign.ValueLayout.JAVA_SHORT;
+
+/**
+ * Converts between {@link InetSocketAddress} and {@code sockaddr_in} /
+ * {@code sockaddr_in6}. Sockets are dual-stack {@code AF_INET6} where the
+ * host allows it, as in the JDK, so IPv4 addresses are written as
+ * IPv4-mapped IPv6 addresses and read back as {@link Inet4Address}.
+ */
+public final class SocketAddresses {
+
+    private static final int SOCKADDR_IN_SIZE = 16;
+    private static final int SOCKADDR_IN6_SIZE = 28;
+
+    private SocketAddresses() {
+    }
+
+    /**
+     * Writes {@code address} for a socket of {@code family}.
+     *
+     * @return the sockaddr length
+     */
+    public static int encode(InetSocketAddress address, int family, MemorySegment sockaddr) {
+        InetAddress ip = address.getAddress();
+        if (ip == null) {
+            throw new IllegalArgumentException("Unresolved address: " + address);
+        }
+        sockaddr.fill((byte) 0);
+        sockaddr.set(JAVA_SHORT, 0, (short) family);
+        // network byte order on a little-endian host
+        sockaddr.set(JAVA_SHORT, 2, Short.reverseBytes((short) address.getPort()));
+        byte[] raw = ip.getAddress();
+        if (family == Native.AF_INET) {
+            if (!(ip instanceof Inet4Address)) {
+                throw new IllegalArgumentException("IPv6 address on an IPv4 socket: " + address);
+            }
+            MemorySegment.copy(raw, 0, sockaddr, JAVA_BYTE, 4, 4);
+            return SOCKADDR_IN_SIZE;
+        }
+        if (ip instanceof Inet4Address) {
+            if (ip.isAnyLocalAddress()) {
+                // 0.0.0.0 on a dual-stack socket is ::, as the JDK binds it
+                return SOCKADDR_IN6_SIZE;
+            }
+            sockaddr.set(JAVA_BYTE, 18, (byte) 0xff);
+            sockaddr.set(JAVA_BYTE, 19, (byte) 0xff);
+            MemorySegment.copy(raw, 0, sockaddr, JAVA_BYTE, 20, 4);
+        } else {
+            MemorySegment.copy(raw, 0, sockaddr, JAVA_BYTE, 8, 16);
+            sockaddr.set(JAVA_INT, 24, ((Inet6Address) ip).getScopeId());
+        }
+        return SOCKADDR_IN6_SIZE;
+    }
+
+    public static InetSocketAddress decode(MemorySegment sockaddr) {
+        int family = sockaddr.get(JAVA_SHORT, 0);
+        int port = Short.toUnsignedInt(Short.reverseBytes(sockaddr.get(JAVA_SHORT, 2)));
+        try {
+            if (family == Native.AF_INET) {
+                byte[] raw = new byte[4];
+                MemorySegment.copy(sockaddr, JAVA_BYTE, 4, raw, 0, 4);
+                return new InetSocketAddress(InetAddress.getByAddress(raw), port);
+            }
+            if (family == Native.AF_INET6) {
+                byte[] raw = new byte[16];
+                MemorySegment.copy(sockaddr, JAVA_BYTE, 8, raw, 0, 16);
+                // getByAddress turns IPv4-mapped addresses back into Inet4Address
+                InetAddress ip = InetAddress.getByAddress(raw);
+                int scopeId = sockaddr.get(JAVA_INT, 24);
+                if (ip instanceof Inet6Address && scopeId != 0) {
+                    ip = Inet6Address.getByAddress(null, raw, scopeId);
+                }
+                return new InetSocketAddress(ip, port);
+            }
+        } catch (UnknownHostException e) {
+            throw new IllegalStateException(e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,170 @@
+package com.nowin.transport.epoll;
+
+import com.nowin.ServerBootstrap;
+import com.nowin.handler.FileRequestHandler;
+import com.nowin.http.MimeTypeResolver;
+import com.nowin.server.NioHttpServer;
+import com.nowin.server.ServerConfig;
+import com.nowin.server.VirtualHost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class EpollTransportIntegrationTest {
+
+    private NioHttpServer server;
+    private Path tempDir;
+
+    @BeforeAll
+    static void requireEpoll() {
+        assumeTrue(new EpollTransportFactory().isAvailable(), "epoll transport not available on this JVM");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null) {
+            server.shutdown();
+        }
+        if (tempDir != null) {
+            try (var files = Files.walk(tempDir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testServesRequests(boolean edgeTriggered) throws Exception {
+        int port = start(edgeTriggered, new ServerConfig().setWorkerThreads(2));
+
+        assertEquals("epoll", server.getTransportFactory().name());
+        for (int i = 0; i < 10; i++) {
+            String response = new String(get(port, "/ping"), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testPipelinedRequestsOnOneConnection(boolean edgeTriggered) throws Exception {
+        int port = start(edgeTriggered, new ServerConfig());
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            String request = "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            socket.getOutputStream().write((request.repeat(5)
+                    + "GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertEquals(6, response.split("HTTP/1.1 200", -1).length - 1, response);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testLargeResponseBody(boolean edgeTriggered) throws Exception {
+        int port = start(edgeTriggered, new ServerConfig());
+
+        byte[] response = get(port, "/large");
+        String text = new String(response, StandardCharsets.US_ASCII);
+        assertTrue(text.startsWith("HTTP/1.1 200"), text.substring(0, Math.min(200, text.length())));
+        assertTrue(text.endsWith("x".repeat(64)));
+        assertTrue(response.length > 1024 * 1024);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testFileBodyIsSentIntact(boolean edgeTriggered) throws Exception {
+        tempDir = Files.createTempDirectory("nio-http-epoll-test");
+        byte[] content = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(tempDir.resolve("large.bin"), content);
+        int port = start(edgeTriggered, new ServerConfig());
+
+        byte[] response = get(port, "/large.bin");
+        int bodyStart = indexOf(response, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII)) + 4;
+        String head = new String(response, 0, bodyStart, StandardCharsets.US_ASCII);
+        assertTrue(head.startsWith("HTTP/1.1 200"), head);
+        assertArrayEquals(content, Arrays.copyOfRange(response, bodyStart, response.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    void testReusePortAcceptors(boolean edgeTriggered) throws Exception {
+        int port = start(edgeTriggered, new ServerConfig().setWorkerThreads(3).setReusePort(true));
+
+        for (int i = 0; i < 12; i++) {
+            String response = new String(get(port, "/ping"), StandardCharsets.US_ASCII);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    private int start(boolean edgeTriggered, ServerConfig config) throws Exception {
+        int port = findAvailablePort();
+        ServerBootstrap bootstrap = ServerBootstrap.create()
+                .config(config.setPort(port))
+                .transportFactory(new EpollTransportFactory(new EpollConfig().setEdgeTriggered(edgeTriggered)))
+                .addRoute("/ping", (request, response) -> response.setBody("pong"))
+                .addRoute("/large", (request, response) -> response.setBody("x".repeat(2 * 1024 * 1024)));
+        if (tempDir != null) {
+            VirtualHost virtualHost = new VirtualHost("localhost", tempDir);
+            FileRequestHandler fileHandler = new FileRequestHandler(new MimeTypeResolver());
+            bootstrap.addVirtualHost(virtualHost)
+                    .setDefaultVirtualHost(virtualHost)
+                    .addRoute("/*", fileHandler::handle);
+        }
+        server = bootstrap.startSync();
+        return port;
+    }
+
+    private static byte[] get(int port, String path) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                received.write(buffer, 0, read);
+            }
+            return received.toByteArray();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.nowin.transport.iouring;
+
+import com.nowin.ServerBootstrap;
+import com.nowin.handler.FileRequestHandler;
+import com.nowin.http.MimeTypeResolver;
+import com.nowin.server.NioHttpServer;
+import com.nowin.server.ServerConfig;
+import com.nowin.server.VirtualHost;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class IoUringTransportIntegrationTest {
+
+    private NioHttpServer server;
+    private Path tempDir;
+
+    @BeforeAll
+    static void requireIoUring() {
+        assumeTrue(new IoUringTransportFactory().isAvailable(), "io_uring transport not available on this JVM or kernel");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        if (server != null) {
+            server.shutdown();
+        }
+        if (tempDir != null) {
+            try (var files = Files.walk(tempDir)) {
+                files.sorted((a, b) -> b.compareTo(a)).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testServesRequests(boolean smallBuffers) throws Exception {
+        int port = start(smallBuffers, new ServerConfig().setWorkerThreads(2));
+
+        assertEquals("io_uring", server.getTransportFactory().name());
+        for (int i = 0; i < 10; i++) {
+            String response = new String(get(port, "/ping"), StandardCharsets.US_ASCII);
+            assertTrue(response.startsWith("HTTP/1.1 200"), response);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testPipelinedRequestsOnOneConnection(boolean smallBuffers) throws Exception {
+        int port = start(smallBuffers, new ServerConfig());
+
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            String request = "GET /ping HTTP/1.1\r\nHost: localhost\r\n\r\n";
+            socket.getOutputStream().write((request.repeat(5)
+                    + "GET /ping HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            String response = new String(socket.getInputStream().readAllBytes(), StandardCharsets.US_ASCII);
+            assertEquals(6, response.split("HTTP/1.1 200", -1).length - 1, response);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testLargeResponseBody(boolean smallBuffers) throws Exception {
+        int port = start(smallBuffers, new ServerConfig());
+
+        byte[] response = get(port, "/large");
+        String text = new String(response, StandardCharsets.US_ASCII);
+        assertTrue(text.startsWith("HTTP/1.1 200"), text.substring(0, Math.min(200, text.length())));
+        assertTrue(text.endsWith("x".repeat(64)));
+        assertTrue(response.length > 1024 * 1024);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testFileBodyIsSentIntact(boolean smallBuffers) throws Exception {
+        tempDir = Files.createTempDirectory("nio-http-iouring-test");
+        byte[] content = new byte[3 * 1024 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31 + (i >>> 11));
+        }
+        Files.write(tempDir.resolve("large.bin"), content);
+        int port = start(smallBuffers, new ServerConfig());
+
+        byte[] response = get(port, "/large.bin");
+        int bodyStart = indexOf(response, "\r\n\r\n".getBytes(StandardCharsets.US_ASCII)) + 4;
+        String head = new String(response, 0, bodyStart, StandardCharsets.US_ASCII);
+        assertTrue(head.startsWith("HTTP/1.1 200"), head);
+        assertArrayEquals(content, Arrays.copyOfRange(response, bodyStart, response.length));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testReusePortAcceptors(boolean smallBuffers) throws Exception {
+        int port = start(smallBuffers, new ServerConfig().setWorkerThreads(3).setReusePort(true));
+
+        for (int i = 0; i < 12; i++) {
+            String response = new String(get(port, "/ping"), StandardCharsets.US_ASCII);
+            assertTrue(response.endsWith("pong"), response);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void testConcurrentConnections(boolean smallBuffers) throws Exception {
+        int port = start(smallBuffers, new ServerConfig().setWorkerThreads(2));
+
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<byte[]>> responses = new ArrayList<>();
+            for (int i = 0; i < 32; i++) {
+                responses.add(clients.submit(() -> get(port, "/ping")));
+            }
+            for (Future<byte[]> response : responses) {
+                String text = new String(response.get(10, TimeUnit.SECONDS), StandardCharsets.US_ASCII);
+                assertTrue(text.endsWith("pong"), text);
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    void testShutdownReleasesPort() throws Exception {
+        int port = start(false, new ServerConfig());
+        assertTrue(new String(get(port, "/ping"), StandardCharsets.US_ASCII).endsWith("pong"));
+
+        server.shutdown();
+        server = null;
+        try (ServerSocket socket = new ServerSocket()) {
+            socket.bind(new InetSocketAddress(port));
+        }
+    }
+
+    /**
+     * Small buffers exercise staging that fills up, and receives that find
+     * every buffer taken.
+     */
+    private static IoUringConfig config(boolean smallBuffers) {
+        IoUringConfig config = new IoUringConfig();
+        if (smallBuffers) {
+            config.setSendBufferSize(4096).setReceiveBufferSize(512).setReceiveBuffers(2);
+        }
+        return config;
+    }
+
+    private int start(boolean smallBuffers, ServerConfig config) throws Exception {
+        int port = findAvailablePort();
+        ServerBootstrap bootstrap = ServerBootstrap.create()
+                .config(config.setPort(port))
+                .transportFactory(new IoUringTransportFactory(config(smallBuffers)))
+                .addRoute("/ping", (request, response) -> response.setBody("pong"))
+                .addRoute("/large", (request, response) -> response.setBody("x".repeat(2 * 1024 * 1024)));
+        if (tempDir != null) {
+            VirtualHost virtualHost = new VirtualHost("localhost", tempDir);
+            FileRequestHandler fileHandler = new FileRequestHandler(new MimeTypeResolver());
+            bootstrap.addVirtualHost(virtualHost)
+                    .setDefaultVirtualHost(virtualHost)
+                    .addRoute("/*", fileHandler::handle);
+        }
+        server = bootstrap.startSync();
+        return port;
+    }
+
+    private static byte[] get(int port, String path) throws IOException {
+        try (Socket socket = new Socket("localhost", port)) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII));
+            InputStream in = socket.getInputStream();
+            ByteArrayOutputStream received = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                received.write(buffer, 0, read);
+            }
+            return received.toByteArray();
+        }
+    }
+
+    private static int indexOf(byte[] data, byte[] pattern) {
+        outer:
+        for (int i = 0; i <= data.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (data[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    private static int findAvailablePort() throws IOException {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package com.nowin.transport.unix;
+
+import com.nowin.http.FileChannelBody;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class ReopenedFileTest {
+
+    @TempDir
+    Path dir;
+
+    private final ReopenedFile reopened = new ReopenedFile();
+    private FileChannelBody body;
+
+    @BeforeAll
+    static void requireLinux() {
+        String reason = Platform.unsupportedReason();
+        assumeTrue(reason == null, reason);
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        reopened.close();
+        if (body != null) {
+            body.close();
+        }
+    }
+
+    @Test
+    void testUnchangedFileIsReopened() throws Exception {
+        Path file = Files.writeString(dir.resolve("index.html"), "original");
+        body = FileChannelBody.open(file, 0, 8);
+
+        assertTrue(descriptorFor() >= 0);
+    }
+
+    @Test
+    void testFileReplacedWithOneOfTheSameSizeIsNotReopened() throws Exception {
+        Path file = Files.writeString(dir.resolve("index.html"), "original");
+        body = FileChannelBody.open(file, 0, 8);
+
+        Path replacement = Files.writeString(dir.resolve("index.html.tmp"), "replaced");
+        Files.move(replacement, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        assertEquals(-1, descriptorFor());
+    }
+
+    @Test
+    void testSwappedSymlinkIsNotReopened() throws Exception {
+        Path first = Files.writeString(dir.resolve("v1.html"), "version1");
+        Path second = Files.writeString(dir.resolve("v2.html"), "version2");
+        Path link = Files.createSymbolicLink(dir.resolve("index.html"), first);
+        body = FileChannelBody.open(link, 0, 8);
+
+        Files.delete(link);
+        Files.createSymbolicLink(link, second);
+
+        assertEquals(-1, descriptorFor());
+    }
+
+    private int descriptorFor() throws IOException {
+        return reopened.descriptorFor(body.fileChannel(), body.path(), body.fileKey());
+    }
+}
@@ -6,7 +6,6 @@ import com.nowin.http.HttpResponse;
 import com.nowin.http.MimeTypeResolver;
 
 import java.io.IOException;
-import java.nio.channels.FileChannel;
 import java.nio.file.Path;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
@@ -44,7 +43,7 @@ final class WebDavFileResponder {
         response.setStatusCode(200);
         response.setHeader("Content-Length", String.valueOf(fileSize));
         if (!headOnly) {
-            response.setBody(new FileChannelBody(FileChannel.open(path), 0, fileSize));
+            response.setBody(FileChannelBody.open(path, 0, fileSize));
         }
     }
 
@@ -142,7 +141,7 @@ final class WebDavFileResponder {
         response.setHeader("Content-Range", "bytes " + byteRange.start() + "-" + byteRange.end() + "/" + fileSize);
         response.setHeader("Content-Length", String.valueOf(contentLength));
         if (!headOnly) {
-            response.setBody(new FileChannelBody(FileChannel.open(path), byteRange.start(), contentLength));
+            response.setBody(FileChannelBody.open(path, byteRange.start(), contentLength));
         }
         return true;
     }